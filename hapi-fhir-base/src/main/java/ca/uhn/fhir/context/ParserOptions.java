@@ -42,6 +42,7 @@ public class ParserOptions {
 	private Set<String> myDontStripVersionsFromReferencesAtPaths = Collections.emptySet();
 	private boolean myOverrideResourceIdWithBundleEntryFullUrl = true;
 	private boolean myAutoContainReferenceTargetsWithNoId = true;
+	private boolean myStreamingJsonParse = false;
 
 	/**
 	 * If set to {@literal true} (which is the default), contained resources may be specified by
@@ -205,4 +206,46 @@ public class ParserOptions {
 		return this;
 	}
 
+	/**
+	 * If set to <code>true</code> (default is <code>false</code>), the JSON parser will feed the
+	 * parsed model directly from the JSON token stream instead of first reading the complete
+	 * document into an intermediate tree. Only the scalar values of the object currently being
+	 * parsed are buffered, so the memory required to parse large documents (e.g. transaction
+	 * Bundles with many entries) is roughly halved.
+	 * <p>
+	 * Parse errors are reported to the configured {@link ca.uhn.fhir.parser.IParserErrorHandler}
+	 * in the same way as they are in the default mode, although if a document contains several
+	 * errors they may be reported in a different order. Resource objects whose <code>resourceType</code>
+	 * property is not the first property in the object are still parsed correctly, but are
+	 * buffered in memory before being processed.
+	 * </p>
+	 *
+	 * @since 6.8.0
+	 */
+	public boolean isStreamingJsonParse() {
+		return myStreamingJsonParse;
+	}
+
+	/**
+	 * If set to <code>true</code> (default is <code>false</code>), the JSON parser will feed the
+	 * parsed model directly from the JSON token stream instead of first reading the complete
+	 * document into an intermediate tree. Only the scalar values of the object currently being
+	 * parsed are buffered, so the memory required to parse large documents (e.g. transaction
+	 * Bundles with many entries) is roughly halved.
+	 * <p>
+	 * Parse errors are reported to the configured {@link ca.uhn.fhir.parser.IParserErrorHandler}
+	 * in the same way as they are in the default mode, although if a document contains several
+	 * errors they may be reported in a different order. Resource objects whose <code>resourceType</code>
+	 * property is not the first property in the object are still parsed correctly, but are
+	 * buffered in memory before being processed.
+	 * </p>
+	 *
+	 * @return Returns a reference to <code>this</code> parser so that method calls can be chained together
+	 * @since 6.8.0
+	 */
+	public ParserOptions setStreamingJsonParse(boolean theStreamingJsonParse) {
+		myStreamingJsonParse = theStreamingJsonParse;
+		return this;
+	}
+
 }
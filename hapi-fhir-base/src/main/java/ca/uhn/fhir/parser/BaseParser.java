@@ -574,7 +574,7 @@ public abstract class BaseParser implements IParser {
 		return myOmitResourceId;
 	}
 
-	private boolean isOverrideResourceIdWithBundleEntryFullUrl() {
+	boolean isOverrideResourceIdWithBundleEntryFullUrl() {
 		Boolean overrideResourceIdWithBundleEntryFullUrl = myOverrideResourceIdWithBundleEntryFullUrl;
 		if (overrideResourceIdWithBundleEntryFullUrl != null) {
 			return overrideResourceIdWithBundleEntryFullUrl;
@@ -647,42 +647,64 @@ public abstract class BaseParser implements IParser {
 		if ("Bundle".equals(def.getName())) {
 
 			if (isOverrideResourceIdWithBundleEntryFullUrl()) {
-				BundleUtil.processEntries(myContext, (IBaseBundle) retVal, t -> {
-					String fullUrl = t.getFullUrl();
-					if (fullUrl != null) {
-						IBaseResource resource = t.getResource();
-						if (resource != null) {
-							IIdType resourceId = resource.getIdElement();
-							if (isBlank(resourceId.getValue())) {
-								resourceId.setValue(fullUrl);
-							} else {
-								if (fullUrl.startsWith("urn:") && fullUrl.length() > resourceId.getIdPart().length() && fullUrl.charAt(fullUrl.length() - resourceId.getIdPart().length() - 1) == ':' && fullUrl.endsWith(resourceId.getIdPart())) {
-									resourceId.setValue(fullUrl);
-								} else {
-									IIdType fullUrlId = myContext.getVersion().newIdType();
-									fullUrlId.setValue(fullUrl);
-									if (myContext.getVersion().getVersion().isOlderThan(FhirVersionEnum.DSTU3)) {
-										IIdType newId = fullUrlId;
-										if (!newId.hasVersionIdPart() && resourceId.hasVersionIdPart()) {
-											newId = newId.withVersion(resourceId.getVersionIdPart());
-										}
-										resourceId.setValue(newId.getValue());
-									} else if (StringUtils.equals(fullUrlId.getIdPart(), resourceId.getIdPart())) {
-										if (fullUrlId.hasBaseUrl()) {
-											IIdType newResourceId = resourceId.withServerBase(fullUrlId.getBaseUrl(), resourceId.getResourceType());
-											resourceId.setValue(newResourceId.getValue());
-										}
-									}
+				overrideResourceIdsWithBundleEntryFullUrl((IBaseBundle) retVal);
+			}
+
+		}
+
+		return retVal;
+	}
+
+	/**
+	 * Sets the ID of each entry resource in the given Bundle based on its <code>Bundle.entry.fullUrl</code>
+	 */
+	void overrideResourceIdsWithBundleEntryFullUrl(IBaseBundle theBundle) {
+		BundleUtil.processEntries(myContext, theBundle, t -> {
+			String fullUrl = t.getFullUrl();
+			if (fullUrl != null) {
+				IBaseResource resource = t.getResource();
+				if (resource != null) {
+					IIdType resourceId = resource.getIdElement();
+					if (isBlank(resourceId.getValue())) {
+						resourceId.setValue(fullUrl);
+					} else {
+						if (fullUrl.startsWith("urn:") && fullUrl.length() > resourceId.getIdPart().length() && fullUrl.charAt(fullUrl.length() - resourceId.getIdPart().length() - 1) == ':' && fullUrl.endsWith(resourceId.getIdPart())) {
+							resourceId.setValue(fullUrl);
+						} else {
+							IIdType fullUrlId = myContext.getVersion().newIdType();
+							fullUrlId.setValue(fullUrl);
+							if (myContext.getVersion().getVersion().isOlderThan(FhirVersionEnum.DSTU3)) {
+								IIdType newId = fullUrlId;
+								if (!newId.hasVersionIdPart() && resourceId.hasVersionIdPart()) {
+									newId = newId.withVersion(resourceId.getVersionIdPart());
+								}
+								resourceId.setValue(newId.getValue());
+							} else if (StringUtils.equals(fullUrlId.getIdPart(), resourceId.getIdPart())) {
+								if (fullUrlId.hasBaseUrl()) {
+									IIdType newResourceId = resourceId.withServerBase(fullUrlId.getBaseUrl(), resourceId.getResourceType());
+									resourceId.setValue(newResourceId.getValue());
 								}
 							}
 						}
 					}
-				});
+				}
 			}
+		});
+	}
 
-		}
+	@Override
+	public <T extends IBaseBundle> IBundleEntryIterator<T> parseBundleEntries(Class<T> theBundleType, InputStream theInputStream) throws DataFormatException {
+		return parseBundleEntries(theBundleType, new InputStreamReader(theInputStream, Constants.CHARSET_UTF8));
+	}
 
-		return retVal;
+	/**
+	 * Subclasses which are able to parse Bundle entries incrementally should override this method. The
+	 * default implementation parses the complete Bundle and then iterates over its entries.
+	 */
+	@Override
+	public <T extends IBaseBundle> IBundleEntryIterator<T> parseBundleEntries(Class<T> theBundleType, Reader theReader) throws DataFormatException {
+		T bundle = parseResource(theBundleType, theReader);
+		return BundleUtil.toBundleEntryIterator(myContext, bundle);
 	}
 
 	@SuppressWarnings("cast")
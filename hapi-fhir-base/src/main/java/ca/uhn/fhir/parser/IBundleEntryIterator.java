@@ -0,0 +1,46 @@
+/*
+ * #%L
+ * HAPI FHIR - Core Library
+ * %%
+ * Copyright (C) 2014 - 2023 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ca.uhn.fhir.parser;
+
+import org.hl7.fhir.instance.model.api.IBase;
+import org.hl7.fhir.instance.model.api.IBaseBundle;
+
+import java.util.Iterator;
+
+/**
+ * An iterator over the <code>Bundle.entry</code> elements of a Bundle which is
+ * being parsed incrementally. Entries are only parsed as the iterator is advanced,
+ * so only the current entry needs to be held in memory.
+ *
+ * @see IParser#parseBundleEntries(Class, java.io.Reader)
+ * @since 6.8.0
+ */
+public interface IBundleEntryIterator<T extends IBaseBundle> extends Iterator<IBase> {
+
+	/**
+	 * Returns a Bundle containing all of the elements of the Bundle being parsed
+	 * except for <code>Bundle.entry</code>. Elements which appear before the entries
+	 * in the source document are available as soon as the iterator has been created,
+	 * and elements which appear after them are available once {@link #hasNext()} has
+	 * returned <code>false</code>.
+	 */
+	T getBundle();
+
+}
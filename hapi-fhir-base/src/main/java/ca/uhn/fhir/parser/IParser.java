@@ -26,6 +26,7 @@ import ca.uhn.fhir.model.api.IResource;
 import ca.uhn.fhir.rest.api.EncodingEnum;
 import org.hl7.fhir.instance.model.api.IAnyResource;
 import org.hl7.fhir.instance.model.api.IBase;
+import org.hl7.fhir.instance.model.api.IBaseBundle;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.instance.model.api.IIdType;
 
@@ -275,6 +276,46 @@ public interface IParser {
 	 */
 	IBaseResource parseResource(String theMessageString) throws ConfigurationException, DataFormatException;
 
+	/**
+	 * Parses a Bundle incrementally, returning an iterator over its <code>Bundle.entry</code> elements.
+	 * Parsers which support streaming only parse each entry as the iterator is advanced, which allows very
+	 * large Bundles to be processed without holding the whole document in memory. Other parsers
+	 * parse the complete Bundle up front.
+	 * <p>
+	 * Each returned entry belongs to a Bundle of the given type, and the resource ID of the
+	 * entry resource is populated from <code>Bundle.entry.fullUrl</code> in the same way as it is by
+	 * {@link #parseResource(Class, Reader)}.
+	 * </p>
+	 *
+	 * @param theBundleType The Bundle type to use (e.g. <code>org.hl7.fhir.r4.model.Bundle.class</code>)
+	 * @param theReader     The reader to parse input from. Note that the Reader will not be closed by the parser, and it must
+	 *                      not be closed until the iterator has been exhausted.
+	 * @throws DataFormatException If the Bundle can not be parsed because the data is not recognized or invalid for any reason.
+	 *                             When parsing incrementally, this may also be thrown by the iterator methods.
+	 * @since 6.8.0
+	 */
+	<T extends IBaseBundle> IBundleEntryIterator<T> parseBundleEntries(Class<T> theBundleType, Reader theReader) throws DataFormatException;
+
+	/**
+	 * Parses a Bundle incrementally, returning an iterator over its <code>Bundle.entry</code> elements.
+	 * Parsers which support streaming only parse each entry as the iterator is advanced, which allows very
+	 * large Bundles to be processed without holding the whole document in memory. Other parsers
+	 * parse the complete Bundle up front.
+	 * <p>
+	 * Each returned entry belongs to a Bundle of the given type, and the resource ID of the
+	 * entry resource is populated from <code>Bundle.entry.fullUrl</code> in the same way as it is by
+	 * {@link #parseResource(Class, InputStream)}.
+	 * </p>
+	 *
+	 * @param theBundleType  The Bundle type to use (e.g. <code>org.hl7.fhir.r4.model.Bundle.class</code>)
+	 * @param theInputStream The InputStream to parse input from, <b>with an implied charset of UTF-8</b>. Note that the InputStream will
+	 *                       not be closed by the parser, and it must not be closed until the iterator has been exhausted.
+	 * @throws DataFormatException If the Bundle can not be parsed because the data is not recognized or invalid for any reason.
+	 *                             When parsing incrementally, this may also be thrown by the iterator methods.
+	 * @since 6.8.0
+	 */
+	<T extends IBaseBundle> IBundleEntryIterator<T> parseBundleEntries(Class<T> theBundleType, InputStream theInputStream) throws DataFormatException;
+
 	/**
 	 * If provided, specifies the elements which should NOT be encoded. Valid values for this
 	 * field would include:
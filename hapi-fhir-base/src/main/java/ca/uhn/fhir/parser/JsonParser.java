@@ -55,11 +55,17 @@ import ca.uhn.fhir.parser.json.JsonLikeStructure;
 import ca.uhn.fhir.parser.json.jackson.JacksonStructure;
 import ca.uhn.fhir.rest.api.EncodingEnum;
 import ca.uhn.fhir.util.ElementUtil;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.NullNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Validate;
 import org.apache.commons.text.WordUtils;
 import org.hl7.fhir.instance.model.api.IBase;
 import org.hl7.fhir.instance.model.api.IBaseBooleanDatatype;
+import org.hl7.fhir.instance.model.api.IBaseBundle;
 import org.hl7.fhir.instance.model.api.IBaseDecimalDatatype;
 import org.hl7.fhir.instance.model.api.IBaseExtension;
 import org.hl7.fhir.instance.model.api.IBaseHasExtensions;
@@ -77,9 +83,12 @@ import java.io.Writer;
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
 
 import static ca.uhn.fhir.context.BaseRuntimeElementDefinition.ChildTypeEnum.ID_DATATYPE;
 import static ca.uhn.fhir.context.BaseRuntimeElementDefinition.ChildTypeEnum.PRIMITIVE_DATATYPE;
@@ -221,6 +230,10 @@ public class JsonParser extends BaseParser implements IJsonLikeParser {
 
 	@Override
 	public <T extends IBaseResource> T doParseResource(Class<T> theResourceType, Reader theReader) {
+		if (getContext().getParserOptions().isStreamingJsonParse()) {
+			return doParseResourceStreaming(theResourceType, theReader);
+		}
+
 		JsonLikeStructure jsonStructure = new JacksonStructure();
 		jsonStructure.load(theReader);
 
@@ -253,6 +266,226 @@ public class JsonParser extends BaseParser implements IJsonLikeParser {
 		return retVal;
 	}
 
+	/**
+	 * Parses a resource directly from the JSON token stream without building an intermediate
+	 * tree for the whole document. Each JSON object is processed as it is read: object-valued
+	 * children (and arrays of objects) are streamed straight into the {@link ParserState},
+	 * while the scalar children, primitive arrays, <code>_</code>-prefixed alternates and extensions
+	 * of the object currently being read are buffered and handed to the regular tree-based
+	 * {@link #parseChildren(BaseJsonLikeObject, ParserState)} once the object ends, so that
+	 * all validation and error handler behaviour is shared with the non-streaming mode.
+	 *
+	 * @see ca.uhn.fhir.context.ParserOptions#setStreamingJsonParse(boolean)
+	 */
+	private <T extends IBaseResource> T doParseResourceStreaming(Class<T> theResourceType, Reader theReader) {
+		try (com.fasterxml.jackson.core.JsonParser jsonParser = JacksonStructure.createStreamingParser(theReader)) {
+			JsonToken token = jsonParser.nextToken();
+			if (token == null) {
+				throw new DataFormatException(Msg.code(2369) + "Did not find any content to parse");
+			}
+			if (token != JsonToken.START_OBJECT) {
+				throw new DataFormatException(Msg.code(2370) + "Content does not appear to be FHIR JSON, first token was: " + token + " (must be an object)");
+			}
+
+			T retVal;
+			token = jsonParser.nextToken();
+			if (token == JsonToken.FIELD_NAME && "resourceType".equals(jsonParser.currentName())) {
+				jsonParser.nextToken();
+				String resourceType = jsonParser.currentToken() == JsonToken.VALUE_STRING ? jsonParser.getText() : null;
+				if (isBlank(resourceType)) {
+					throw new DataFormatException(Msg.code(2371) + "Invalid JSON content detected, missing required element: 'resourceType'");
+				}
+
+				ParserState<? extends IBaseResource> state = ParserState.getPreResourceInstance(this, theResourceType, getContext(), true, getErrorHandler());
+				state.enteringNewElement(null, resourceType);
+
+				streamChildren(jsonParser, state);
+
+				state.endingElement();
+				state.endingElement();
+
+				@SuppressWarnings("unchecked")
+				T resource = (T) state.getObject();
+				retVal = resource;
+			} else {
+				// The resourceType isn't the first property so we need the whole object to find it
+				JacksonStructure jsonStructure = new JacksonStructure();
+				jsonStructure.setNativeObject(bufferObject(jsonParser));
+				retVal = doParseResource(theResourceType, jsonStructure);
+			}
+
+			if (jsonParser.nextToken() != null) {
+				throw new DataFormatException(Msg.code(2372) + "Failed to parse JSON encoded FHIR content: Found unexpected content after the end of the resource");
+			}
+
+			return retVal;
+		} catch (IOException e) {
+			if (defaultString(e.getMessage()).startsWith("Unexpected char 39")) {
+				throw new DataFormatException(Msg.code(2373) + "Failed to parse JSON encoded FHIR content: " + e.getMessage() + " - " +
+					"This may indicate that single quotes are being used as JSON escapes where double quotes are required", e);
+			}
+			throw new DataFormatException(Msg.code(2374) + "Failed to parse JSON encoded FHIR content: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Streams the remaining properties of the current JSON object into the given state. When this
+	 * method is called the next token must be either a property name or the end of the object, and
+	 * when it returns the current token is the end of the object.
+	 */
+	private void streamChildren(com.fasterxml.jackson.core.JsonParser theJsonParser, ParserState<?> theState) throws IOException {
+		ObjectNode deferred = JacksonStructure.newObjectNode();
+		Set<String> streamedNames = null;
+
+		while (theJsonParser.nextToken() == JsonToken.FIELD_NAME) {
+			String nextName = theJsonParser.currentName();
+			JsonToken valueToken = theJsonParser.nextToken();
+
+			if (isStreamableChildName(nextName) && (valueToken == JsonToken.START_OBJECT || valueToken == JsonToken.START_ARRAY)) {
+				String alternateName = '_' + nextName;
+				JsonNode alternate = deferred.remove(alternateName);
+
+				if (valueToken == JsonToken.START_OBJECT) {
+					BaseJsonLikeValue alternateVal = alternate != null ? JacksonStructure.wrapNode(alternate) : null;
+					streamObject(theJsonParser, theState, nextName, alternateVal, false);
+				} else if (theJsonParser.nextToken() == JsonToken.START_OBJECT) {
+					BaseJsonLikeArray alternateArray = null;
+					if (alternate != null) {
+						if (alternate.isArray()) {
+							alternateArray = JacksonStructure.wrapNode(alternate).getAsArray();
+						} else {
+							getErrorHandler().incorrectJsonType(null, alternateName, ValueType.ARRAY, null, JacksonStructure.wrapNode(alternate).getJsonType(), null);
+						}
+					}
+					for (int i = 0; theJsonParser.currentToken() != JsonToken.END_ARRAY; i++) {
+						BaseJsonLikeValue nextAlternate = null;
+						if (alternateArray != null && alternateArray.size() >= (i + 1)) {
+							nextAlternate = alternateArray.get(i);
+						}
+						if (theJsonParser.currentToken() == JsonToken.START_OBJECT) {
+							streamObject(theJsonParser, theState, nextName, nextAlternate, true);
+						} else {
+							parseChildren(theState, nextName, JacksonStructure.wrapNode(readTree(theJsonParser)), nextAlternate, alternateName, true);
+						}
+						theJsonParser.nextToken();
+					}
+				} else {
+					// An array of primitives (or an empty array) is buffered so that it can be paired with its alternate
+					ArrayNode array = deferred.arrayNode();
+					while (theJsonParser.currentToken() != JsonToken.END_ARRAY) {
+						array.add(readTree(theJsonParser));
+						theJsonParser.nextToken();
+					}
+					if (alternate != null) {
+						deferred.set(alternateName, alternate);
+					}
+					deferred.set(nextName, array);
+					continue;
+				}
+
+				if (streamedNames == null) {
+					streamedNames = new HashSet<>();
+				}
+				streamedNames.add(nextName);
+				continue;
+			}
+
+			if (nextName.startsWith("_") && streamedNames != null && streamedNames.contains(nextName.substring(1))) {
+				// The element this alternate belongs to has already been streamed into the model
+				theJsonParser.skipChildren();
+				getErrorHandler().unknownElement(null, nextName);
+				continue;
+			}
+
+			deferred.set(nextName, readTree(theJsonParser));
+		}
+
+		if (!deferred.isEmpty()) {
+			parseChildren(JacksonStructure.wrapNode(deferred).getAsObject(), theState);
+		}
+	}
+
+	private void streamObject(com.fasterxml.jackson.core.JsonParser theJsonParser, ParserState<?> theState, String theName, BaseJsonLikeValue theAlternateVal, boolean theInArray) throws IOException {
+		if (!theInArray && theState.elementIsRepeating(theName)) {
+			getErrorHandler().incorrectJsonType(null, theName, ValueType.ARRAY, null, ValueType.OBJECT, null);
+		}
+
+		String alternateName = '_' + theName;
+		theState.enteringNewElement(null, theName);
+		parseAlternates(theAlternateVal, theState, alternateName, alternateName);
+
+		if (theState.isPreResource()) {
+			String resourceType = null;
+			ObjectNode buffered = null;
+			if (theJsonParser.nextToken() == JsonToken.FIELD_NAME && "resourceType".equals(theJsonParser.currentName())) {
+				if (theJsonParser.nextToken() == JsonToken.VALUE_STRING) {
+					resourceType = theJsonParser.getText();
+				}
+			} else {
+				buffered = bufferObject(theJsonParser);
+				JsonNode resourceTypeNode = buffered.get("resourceType");
+				if (resourceTypeNode != null && resourceTypeNode.isTextual()) {
+					resourceType = resourceTypeNode.asText();
+				}
+			}
+			if (resourceType == null) {
+				throw new DataFormatException(Msg.code(2375) + "Missing required element 'resourceType' from JSON resource object, unable to parse");
+			}
+
+			theState.enteringNewElement(null, resourceType);
+			if (buffered != null) {
+				parseChildren(JacksonStructure.wrapNode(buffered).getAsObject(), theState);
+			} else {
+				streamChildren(theJsonParser, theState);
+			}
+			theState.endingElement();
+		} else {
+			streamChildren(theJsonParser, theState);
+		}
+
+		theState.endingElement();
+	}
+
+	/**
+	 * Buffers the rest of the current JSON object. The current token must be either a
+	 * property name or the end of the object.
+	 */
+	private static ObjectNode bufferObject(com.fasterxml.jackson.core.JsonParser theJsonParser) throws IOException {
+		ObjectNode retVal = JacksonStructure.newObjectNode();
+		while (theJsonParser.currentToken() == JsonToken.FIELD_NAME) {
+			String nextName = theJsonParser.currentName();
+			theJsonParser.nextToken();
+			retVal.set(nextName, readTree(theJsonParser));
+			theJsonParser.nextToken();
+		}
+		return retVal;
+	}
+
+	private static JsonNode readTree(com.fasterxml.jackson.core.JsonParser theJsonParser) throws IOException {
+		JsonNode retVal = theJsonParser.readValueAsTree();
+		return retVal != null ? retVal : NullNode.getInstance();
+	}
+
+	/**
+	 * Extensions, comments, alternates and IDs are always buffered and handled by the
+	 * tree-based parsing code, since they are small and need special treatment
+	 */
+	private static boolean isStreamableChildName(String theName) {
+		if (theName.isEmpty() || theName.charAt(0) == '_') {
+			return false;
+		}
+		switch (theName) {
+			case "extension":
+			case "modifierExtension":
+			case "fhir_comments":
+			case "resourceType":
+			case "id":
+				return false;
+			default:
+				return true;
+		}
+	}
+
 	private void encodeChildElementToStreamWriter(RuntimeResourceDefinition theResDef, IBaseResource theResource, BaseJsonLikeWriter theEventWriter, IBase theNextValue,
 																 BaseRuntimeElementDefinition<?> theChildDef, String theChildName, boolean theContainedResource, CompositeChildElement theChildElem,
 																 boolean theForceEmpty, EncodeContext theEncodeContext) throws IOException {
@@ -1414,6 +1647,128 @@ public class JsonParser extends BaseParser implements IJsonLikeParser {
 		theWriter.write(theName, theValue);
 	}
 
+	@Override
+	public <T extends IBaseBundle> IBundleEntryIterator<T> parseBundleEntries(Class<T> theBundleType, Reader theReader) throws DataFormatException {
+		try {
+			return new JsonBundleEntryIterator<>(theBundleType, theReader);
+		} catch (IOException e) {
+			throw new DataFormatException(Msg.code(2376) + "Failed to parse JSON encoded FHIR content: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Reads the JSON token stream of a Bundle, buffering only the non-entry properties
+	 * and a single entry at a time. Each entry is parsed as a single-entry Bundle so that
+	 * it is processed exactly as it would be if the whole Bundle was parsed at once.
+	 */
+	private class JsonBundleEntryIterator<T extends IBaseBundle> implements IBundleEntryIterator<T> {
+
+		private final Class<T> myBundleType;
+		private final RuntimeResourceDefinition myBundleDefinition;
+		private final com.fasterxml.jackson.core.JsonParser myJsonParser;
+		private final ObjectNode myHeader = JacksonStructure.newObjectNode();
+		private T myBundle;
+		private IBase myNext;
+		private boolean myInEntries;
+		private boolean myFinished;
+
+		JsonBundleEntryIterator(Class<T> theBundleType, Reader theReader) throws IOException {
+			myBundleType = theBundleType;
+			myBundleDefinition = getContext().getResourceDefinition(theBundleType);
+			myJsonParser = JacksonStructure.createStreamingParser(theReader);
+
+			JsonToken token = myJsonParser.nextToken();
+			if (token != JsonToken.START_OBJECT) {
+				throw new DataFormatException(Msg.code(2377) + "Content does not appear to be FHIR JSON, first token was: " + token + " (must be an object)");
+			}
+			readHeader();
+		}
+
+		@Override
+		public T getBundle() {
+			if (myBundle == null) {
+				myBundle = parseBundle(myHeader);
+			}
+			return myBundle;
+		}
+
+		@Override
+		public boolean hasNext() {
+			try {
+				while (myNext == null && !myFinished) {
+					if (!myInEntries) {
+						readHeader();
+						continue;
+					}
+
+					if (myJsonParser.nextToken() == JsonToken.END_ARRAY) {
+						myInEntries = false;
+						continue;
+					}
+
+					ObjectNode singleEntryBundle = JacksonStructure.newObjectNode();
+					singleEntryBundle.put("resourceType", myBundleDefinition.getName());
+					singleEntryBundle.putArray("entry").add(readTree(myJsonParser));
+
+					T bundle = parseBundle(singleEntryBundle);
+					List<IBase> entries = myBundleDefinition.getChildByName("entry").getAccessor().getValues(bundle);
+					if (!entries.isEmpty()) {
+						myNext = entries.get(0);
+					}
+				}
+			} catch (IOException e) {
+				throw new DataFormatException(Msg.code(2378) + "Failed to parse JSON encoded FHIR content: " + e.getMessage(), e);
+			}
+			return myNext != null;
+		}
+
+		@Override
+		public IBase next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException(Msg.code(2379) + "No more Bundle entries");
+			}
+			IBase retVal = myNext;
+			myNext = null;
+			return retVal;
+		}
+
+		/**
+		 * Buffers properties until either the entry array starts or the Bundle ends
+		 */
+		private void readHeader() throws IOException {
+			while (myJsonParser.nextToken() == JsonToken.FIELD_NAME) {
+				String nextName = myJsonParser.currentName();
+				JsonToken valueToken = myJsonParser.nextToken();
+				if ("entry".equals(nextName) && valueToken == JsonToken.START_ARRAY) {
+					myInEntries = true;
+					return;
+				}
+				myHeader.set(nextName, readTree(myJsonParser));
+				myBundle = null;
+			}
+
+			myFinished = true;
+			if (myJsonParser.nextToken() != null) {
+				throw new DataFormatException(Msg.code(2380) + "Failed to parse JSON encoded FHIR content: Found unexpected content after the end of the resource");
+			}
+			myJsonParser.close();
+		}
+
+		private T parseBundle(ObjectNode theObject) {
+			if (!theObject.has("resourceType")) {
+				theObject.put("resourceType", myBundleDefinition.getName());
+			}
+			JacksonStructure jsonStructure = new JacksonStructure();
+			jsonStructure.setNativeObject(theObject);
+			T retVal = doParseResource(myBundleType, jsonStructure);
+			if (isOverrideResourceIdWithBundleEntryFullUrl()) {
+				overrideResourceIdsWithBundleEntryFullUrl(retVal);
+			}
+			return retVal;
+		}
+
+	}
+
 	private class HeldExtension implements Comparable<HeldExtension> {
 
 		private CompositeChildElement myChildElem;
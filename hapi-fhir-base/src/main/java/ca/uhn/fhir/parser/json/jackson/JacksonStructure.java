@@ -31,6 +31,7 @@ import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.fasterxml.jackson.databind.json.JsonMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.DecimalNode;
@@ -51,6 +52,7 @@ import java.util.Map;
 public class JacksonStructure implements JsonLikeStructure {
 
 	private static final ObjectMapper OBJECT_MAPPER = createObjectMapper();
+	private static final ObjectReader STREAMING_READER = OBJECT_MAPPER.reader().without(DeserializationFeature.FAIL_ON_TRAILING_TOKENS);
 	private JacksonWriter jacksonWriter;
 	private ROOT_TYPE rootType = null;
 	private JsonNode nativeRoot = null;
@@ -147,6 +149,40 @@ public class JacksonStructure implements JsonLikeStructure {
 		throw new DataFormatException(Msg.code(1862) + "Content must be a valid JSON Object. It must start with '{'.");
 	}
 
+	/**
+	 * Creates a Jackson token parser for the given reader, configured identically to the
+	 * parser used by {@link #load(Reader)}. Subtrees read from the returned parser using
+	 * {@link JsonParser#readValueAsTree()} will therefore have the same number handling
+	 * as a fully loaded structure.
+	 *
+	 * @since 6.8.0
+	 */
+	public static JsonParser createStreamingParser(Reader theReader) throws IOException {
+		JsonParser retVal = OBJECT_MAPPER.getFactory().createParser(theReader);
+		// Subtrees are read from the middle of the stream, so trailing tokens are expected
+		retVal.setCodec(STREAMING_READER);
+		return retVal;
+	}
+
+	/**
+	 * Creates a new empty Jackson object node using the same node factory as {@link #load(Reader)}
+	 *
+	 * @since 6.8.0
+	 */
+	public static ObjectNode newObjectNode() {
+		return OBJECT_MAPPER.createObjectNode();
+	}
+
+	/**
+	 * Wraps a Jackson node which was read from a streaming parser so that it can be
+	 * consumed by code which works against the JSON-like abstraction.
+	 *
+	 * @since 6.8.0
+	 */
+	public static BaseJsonLikeValue wrapNode(JsonNode theNode) {
+		return new JacksonJsonValue(theNode);
+	}
+
 	private enum ROOT_TYPE {OBJECT, ARRAY}
 
 	private static class JacksonJsonObject extends BaseJsonLikeObject {
@@ -145,7 +145,8 @@ public @interface Operation {
 	 * meaning that it applies to all resource types. Operations with this flag set should be
 	 * placed in Plain Providers (i.e. they don't need to be placed in a resource-type-specific
 	 * <code>IResourceProvider</code> instance) and should have a parameter annotated with
-	 * {@link IdParam}.
+	 * {@link IdParam}. If that parameter is marked as {@link IdParam#optional() optional}, the
+	 * operation may also be invoked at the type level for any resource type.
 	 */
 	boolean global() default false;
 
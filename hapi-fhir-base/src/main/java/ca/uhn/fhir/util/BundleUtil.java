@@ -25,6 +25,7 @@ import ca.uhn.fhir.context.BaseRuntimeElementDefinition;
 import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.context.RuntimeResourceDefinition;
 import ca.uhn.fhir.i18n.Msg;
+import ca.uhn.fhir.parser.IBundleEntryIterator;
 import ca.uhn.fhir.rest.api.PatchTypeEnum;
 import ca.uhn.fhir.rest.api.RequestTypeEnum;
 import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
@@ -46,6 +47,7 @@ import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
@@ -532,6 +534,65 @@ public class BundleUtil {
 		return new BundleEntryParts(fullUrl, requestType, url, resource, conditionalUrl);
 	}
 
+	/**
+	 * Returns an iterator over the entries of the given Bundle, whose
+	 * {@link IBundleEntryIterator#getBundle()} returns a shallow copy of the Bundle without
+	 * its entries. The given Bundle is not modified. This is used to supply an already
+	 * parsed Bundle where an incrementally parsed one is expected.
+	 *
+	 * @since 6.8.0
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T extends IBaseBundle> IBundleEntryIterator<T> toBundleEntryIterator(FhirContext theContext, T theBundle) {
+		RuntimeResourceDefinition def = theContext.getResourceDefinition(theBundle);
+		T bundle = (T) def.newInstance();
+		List<IBase> entries = new ArrayList<>();
+		for (BaseRuntimeChildDefinition nextChild : def.getChildren()) {
+			List<IBase> values = nextChild.getAccessor().getValues(theBundle);
+			if ("entry".equals(nextChild.getElementName())) {
+				entries.addAll(values);
+			} else {
+				values.forEach(t -> nextChild.getMutator().addValue(bundle, t));
+			}
+		}
+
+		Iterator<IBase> entryIterator = entries.iterator();
+		return new IBundleEntryIterator<T>() {
+			@Override
+			public T getBundle() {
+				return bundle;
+			}
+
+			@Override
+			public boolean hasNext() {
+				return entryIterator.hasNext();
+			}
+
+			@Override
+			public IBase next() {
+				return entryIterator.next();
+			}
+		};
+	}
+
+	/**
+	 * Reads all of the remaining entries from the given iterator, adds them back to the
+	 * Bundle returned by {@link IBundleEntryIterator#getBundle()}, and returns that Bundle.
+	 *
+	 * @since 6.8.0
+	 */
+	public static <T extends IBaseBundle> T toBundle(FhirContext theContext, IBundleEntryIterator<T> theEntries) {
+		List<IBase> entries = new ArrayList<>();
+		theEntries.forEachRemaining(entries::add);
+
+		T retVal = theEntries.getBundle();
+		BaseRuntimeChildDefinition entryChild = theContext.getResourceDefinition(retVal).getChildByName("entry");
+		for (IBase next : entries) {
+			entryChild.getMutator().addValue(retVal, next);
+		}
+		return retVal;
+	}
+
 	/**
 	 * Extract all of the resources from a given bundle
 	 */
@@ -107,6 +107,15 @@ public class HapiExtensions {
 	 */
 	public static final String EXT_SEARCHPARAM_PHONETIC_ENCODER = "http://hapifhir.io/fhir/StructureDefinition/searchparameter-phonetic-encoder";
 
+	/**
+	 * URL for boolean extension added to <code>Bundle.total</code> when the value is an
+	 * estimate of the number of matching resources rather than an exact count (i.e. when
+	 * the search was performed with <code>_total=estimated</code>)
+	 *
+	 * @since 6.8.0
+	 */
+	public static final String EXT_BUNDLE_TOTAL_ESTIMATED = "http://hapifhir.io/fhir/StructureDefinition/bundle-total-estimated";
+
 	/**
 	 * URL for boolean extension added to all placeholder resources
 	 */
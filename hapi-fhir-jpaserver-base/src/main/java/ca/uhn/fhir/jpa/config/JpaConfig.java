@@ -33,6 +33,7 @@ import ca.uhn.fhir.jpa.api.dao.DaoRegistry;
 import ca.uhn.fhir.jpa.api.model.ExpungeOptions;
 import ca.uhn.fhir.jpa.api.svc.IDeleteExpungeSvc;
 import ca.uhn.fhir.jpa.api.svc.IIdHelperService;
+import ca.uhn.fhir.jpa.api.svc.IResourceCompressionDictionarySvc;
 import ca.uhn.fhir.jpa.api.svc.ISearchUrlJobMaintenanceSvc;
 import ca.uhn.fhir.jpa.binary.interceptor.BinaryStorageInterceptor;
 import ca.uhn.fhir.jpa.binary.provider.BinaryAccessProvider;
@@ -55,6 +56,8 @@ import ca.uhn.fhir.jpa.dao.ISearchBuilder;
 import ca.uhn.fhir.jpa.dao.JpaStorageResourceParser;
 import ca.uhn.fhir.jpa.dao.MatchResourceUrlService;
 import ca.uhn.fhir.jpa.dao.ObservationLastNIndexPersistSvc;
+import ca.uhn.fhir.jpa.dao.ParsedResourceCache;
+import ca.uhn.fhir.jpa.dao.ResourceCompressionDictionarySvcImpl;
 import ca.uhn.fhir.jpa.dao.SearchBuilderFactory;
 import ca.uhn.fhir.jpa.dao.TransactionProcessor;
 import ca.uhn.fhir.jpa.dao.data.IResourceSearchUrlDao;
@@ -67,6 +70,7 @@ import ca.uhn.fhir.jpa.dao.expunge.JpaResourceExpungeService;
 import ca.uhn.fhir.jpa.dao.expunge.ResourceTableFKProvider;
 import ca.uhn.fhir.jpa.dao.index.DaoResourceLinkResolver;
 import ca.uhn.fhir.jpa.dao.index.DaoSearchParamSynchronizer;
+import ca.uhn.fhir.jpa.dao.index.ResourceIndexBatchWriter;
 import ca.uhn.fhir.jpa.dao.index.IdHelperService;
 import ca.uhn.fhir.jpa.dao.index.SearchParamWithInlineReferencesExtractor;
 import ca.uhn.fhir.jpa.dao.mdm.JpaMdmLinkImplFactory;
@@ -100,6 +104,8 @@ import ca.uhn.fhir.jpa.partition.RequestPartitionHelperSvc;
 import ca.uhn.fhir.jpa.provider.DiffProvider;
 import ca.uhn.fhir.jpa.provider.InstanceReindexProvider;
 import ca.uhn.fhir.jpa.provider.ProcessMessageProvider;
+import ca.uhn.fhir.jpa.provider.SearchExplainProvider;
+import ca.uhn.fhir.jpa.provider.SearchIndexAdvisorProvider;
 import ca.uhn.fhir.jpa.provider.SubscriptionTriggeringProvider;
 import ca.uhn.fhir.jpa.provider.TerminologyUploaderProvider;
 import ca.uhn.fhir.jpa.provider.ValueSetOperationProvider;
@@ -111,8 +117,13 @@ import ca.uhn.fhir.jpa.search.PersistedJpaBundleProvider;
 import ca.uhn.fhir.jpa.search.PersistedJpaBundleProviderFactory;
 import ca.uhn.fhir.jpa.search.PersistedJpaSearchFirstPageBundleProvider;
 import ca.uhn.fhir.jpa.search.ResourceSearchUrlSvc;
+import ca.uhn.fhir.jpa.search.SearchExplainSvc;
+import ca.uhn.fhir.jpa.search.SearchIndexAdvisorSvc;
+import ca.uhn.fhir.jpa.search.SearchKeysetPagingSvc;
+import ca.uhn.fhir.jpa.search.SearchPagePrefetchSvc;
 import ca.uhn.fhir.jpa.search.SearchStrategyFactory;
 import ca.uhn.fhir.jpa.search.SearchUrlJobMaintenanceSvcImpl;
+import ca.uhn.fhir.jpa.search.SynchronousSearchResultCache;
 import ca.uhn.fhir.jpa.search.SynchronousSearchSvcImpl;
 import ca.uhn.fhir.jpa.search.builder.QueryStack;
 import ca.uhn.fhir.jpa.search.builder.predicate.ComboNonUniqueSearchParameterPredicateBuilder;
@@ -139,6 +150,7 @@ import ca.uhn.fhir.jpa.search.builder.sql.SqlObjectFactory;
 import ca.uhn.fhir.jpa.search.builder.tasks.SearchTask;
 import ca.uhn.fhir.jpa.search.cache.DatabaseSearchCacheSvcImpl;
 import ca.uhn.fhir.jpa.search.cache.DatabaseSearchResultCacheSvcImpl;
+import ca.uhn.fhir.jpa.search.cache.ChunkedDatabaseSearchResultCacheSvcImpl;
 import ca.uhn.fhir.jpa.search.cache.ISearchCacheSvc;
 import ca.uhn.fhir.jpa.search.cache.ISearchResultCacheSvc;
 import ca.uhn.fhir.jpa.search.elastic.IndexNamePrefixLayoutStrategy;
@@ -298,6 +310,16 @@ public class JpaConfig {
 		return new JpaStorageResourceParser();
 	}
 
+	@Bean
+	public ParsedResourceCache parsedResourceCache() {
+		return new ParsedResourceCache();
+	}
+
+	@Bean
+	public IResourceCompressionDictionarySvc resourceCompressionDictionarySvc() {
+		return new ResourceCompressionDictionarySvcImpl();
+	}
+
 	@Bean
 	public TransactionProcessor transactionProcessor() {
 		return new TransactionProcessor();
@@ -350,7 +372,10 @@ public class JpaConfig {
 	}
 
 	@Bean
-	public ISearchResultCacheSvc searchResultCacheSvc() {
+	public ISearchResultCacheSvc searchResultCacheSvc(JpaStorageSettings theStorageSettings) {
+		if (theStorageSettings.isSearchResultChunkStorageEnabled()) {
+			return new ChunkedDatabaseSearchResultCacheSvcImpl();
+		}
 		return new DatabaseSearchResultCacheSvcImpl();
 	}
 
@@ -392,6 +417,28 @@ public class JpaConfig {
 		return new InstanceReindexProvider(theInstanceReindexService);
 	}
 
+	@Bean
+	public SearchIndexAdvisorSvc searchIndexAdvisorSvc() {
+		return new SearchIndexAdvisorSvc();
+	}
+
+	@Bean
+	@Lazy
+	public SearchIndexAdvisorProvider searchIndexAdvisorProvider(FhirContext theFhirContext, SearchIndexAdvisorSvc theSearchIndexAdvisorSvc) {
+		return new SearchIndexAdvisorProvider(theFhirContext, theSearchIndexAdvisorSvc);
+	}
+
+	@Bean
+	public SearchExplainSvc searchExplainSvc() {
+		return new SearchExplainSvc();
+	}
+
+	@Bean
+	@Lazy
+	public SearchExplainProvider searchExplainProvider(FhirContext theFhirContext, SearchExplainSvc theSearchExplainSvc, MatchUrlService theMatchUrlService) {
+		return new SearchExplainProvider(theFhirContext, theSearchExplainSvc, theMatchUrlService);
+	}
+
 	@Bean
 	public ResourceReindexer resourceReindexer(FhirContext theFhirContext) {
 		return new ResourceReindexer(theFhirContext);
@@ -748,6 +795,11 @@ public class JpaConfig {
 		return new DaoSearchParamSynchronizer();
 	}
 
+	@Bean
+	public ResourceIndexBatchWriter resourceIndexBatchWriter() {
+		return new ResourceIndexBatchWriter();
+	}
+
 	@Bean
 	public ResourceTableFKProvider resourceTableFKProvider() {
 		return new ResourceTableFKProvider();
@@ -778,6 +830,21 @@ public class JpaConfig {
 		return new SynchronousSearchSvcImpl();
 	}
 
+	@Bean
+	public SynchronousSearchResultCache synchronousSearchResultCache() {
+		return new SynchronousSearchResultCache();
+	}
+
+	@Bean
+	public SearchPagePrefetchSvc searchPagePrefetchSvc() {
+		return new SearchPagePrefetchSvc();
+	}
+
+	@Bean
+	public SearchKeysetPagingSvc searchKeysetPagingSvc() {
+		return new SearchKeysetPagingSvc();
+	}
+
 
 	@Bean
 	public VersionCanonicalizer versionCanonicalizer(FhirContext theFhirContext) {
@@ -38,7 +38,11 @@ import ca.uhn.fhir.jpa.search.ISynchronousSearchSvc;
 import ca.uhn.fhir.jpa.search.PersistedJpaBundleProviderFactory;
 import ca.uhn.fhir.jpa.search.SearchCoordinatorSvcImpl;
 import ca.uhn.fhir.jpa.search.SearchStrategyFactory;
+import ca.uhn.fhir.jpa.search.SearchWorkloadCollector;
 import ca.uhn.fhir.jpa.search.builder.SearchBuilder;
+import ca.uhn.fhir.jpa.search.builder.SearchIncludeExecutor;
+import ca.uhn.fhir.jpa.search.builder.SearchParamSelectivitySvc;
+import ca.uhn.fhir.jpa.search.builder.SearchResourceLoadExecutor;
 import ca.uhn.fhir.jpa.search.builder.sql.SqlObjectFactory;
 import ca.uhn.fhir.jpa.search.builder.tasks.SearchContinuationTask;
 import ca.uhn.fhir.jpa.search.builder.tasks.SearchTask;
@@ -109,7 +113,7 @@ public class SearchConfig {
 
 	@Bean
 	public ISearchCoordinatorSvc searchCoordinatorSvc() {
-		return new SearchCoordinatorSvcImpl(
+		SearchCoordinatorSvcImpl retVal = new SearchCoordinatorSvcImpl(
 			myContext,
 			myStorageSettings,
 			myInterceptorBroadcaster,
@@ -125,6 +129,8 @@ public class SearchConfig {
 			exceptionService(),
 			myBeanFactory
 		);
+		retVal.setSearchWorkloadCollector(searchWorkloadCollector());
+		return retVal;
 	}
 
 	@Bean
@@ -132,6 +138,26 @@ public class SearchConfig {
 		return new ExceptionService(myContext);
 	}
 
+	@Bean
+	public SearchResourceLoadExecutor searchResourceLoadExecutor() {
+		return new SearchResourceLoadExecutor();
+	}
+
+	@Bean
+	public SearchIncludeExecutor searchIncludeExecutor() {
+		return new SearchIncludeExecutor();
+	}
+
+	@Bean
+	public SearchParamSelectivitySvc searchParamSelectivitySvc() {
+		return new SearchParamSelectivitySvc();
+	}
+
+	@Bean
+	public SearchWorkloadCollector searchWorkloadCollector() {
+		return new SearchWorkloadCollector();
+	}
+
 	@Bean(name = ISearchBuilder.SEARCH_BUILDER_BEAN_NAME)
 	@Scope("prototype")
 	public ISearchBuilder newSearchBuilder(IDao theDao, String theResourceName, Class<? extends IBaseResource> theResourceType) {
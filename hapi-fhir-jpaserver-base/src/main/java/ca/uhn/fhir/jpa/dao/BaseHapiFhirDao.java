@@ -35,8 +35,10 @@ import ca.uhn.fhir.jpa.api.config.JpaStorageSettings;
 import ca.uhn.fhir.jpa.api.dao.DaoRegistry;
 import ca.uhn.fhir.jpa.api.dao.IDao;
 import ca.uhn.fhir.jpa.api.dao.IJpaDao;
+import ca.uhn.fhir.jpa.api.model.CompressionDictionary;
 import ca.uhn.fhir.jpa.api.model.DaoMethodOutcome;
 import ca.uhn.fhir.jpa.api.svc.IIdHelperService;
+import ca.uhn.fhir.jpa.api.svc.IResourceCompressionDictionarySvc;
 import ca.uhn.fhir.jpa.api.svc.ISearchCoordinatorSvc;
 import ca.uhn.fhir.jpa.dao.data.IForcedIdDao;
 import ca.uhn.fhir.jpa.dao.data.IResourceHistoryTableDao;
@@ -242,6 +244,10 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> extends BaseStora
 	@Autowired
 	private MemoryCacheService myMemoryCacheService;
 	@Autowired(required = false)
+	private ParsedResourceCache myParsedResourceCache;
+	@Autowired(required = false)
+	private IResourceCompressionDictionarySvc myResourceCompressionDictionarySvc;
+	@Autowired(required = false)
 	private IFulltextSearchSvc myFulltextSearchSvc;
 	@Autowired
 	private PlatformTransactionManager myTransactionManager;
@@ -563,6 +569,7 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> extends BaseStora
 		byte[] resourceBinary;
 		String resourceText;
 		ResourceEncodingEnum encoding;
+		CompressionDictionary compressionDictionary = null;
 		boolean changed = false;
 
 		if (theEntity.getDeleted() == null) {
@@ -586,6 +593,12 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> extends BaseStora
 					encoding = myStorageSettings.getResourceEncoding();
 
 					String resourceType = theEntity.getResourceType();
+					if (encoding == ResourceEncodingEnum.JSOND) {
+						compressionDictionary = getCurrentCompressionDictionary(resourceType);
+						if (compressionDictionary == null) {
+							encoding = ResourceEncodingEnum.JSONC;
+						}
+					}
 
 					List<String> excludeElements = new ArrayList<>(8);
 					IBaseMetaType meta = theResource.getMeta();
@@ -601,10 +614,11 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> extends BaseStora
 						resourceText = encodedResource;
 						resourceBinary = null;
 						encoding = ResourceEncodingEnum.JSON;
+						compressionDictionary = null;
 						hashCode = sha256.hashUnencodedChars(encodedResource);
 					} else {
 						resourceText = null;
-						resourceBinary = getResourceBinary(encoding, encodedResource);
+						resourceBinary = getResourceBinary(encoding, encodedResource, compressionDictionary);
 						hashCode = sha256.hashBytes(resourceBinary);
 					}
 
@@ -677,6 +691,7 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> extends BaseStora
 
 		EncodedResource retVal = new EncodedResource();
 		retVal.setEncoding(encoding);
+		retVal.setCompressionDictionaryId(compressionDictionary != null ? compressionDictionary.getId() : null);
 		retVal.setResourceBinary(resourceBinary);
 		retVal.setResourceText(resourceText);
 		retVal.setChanged(changed);
@@ -689,10 +704,11 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> extends BaseStora
 	 *
 	 * @param encoding        the encoding to used
 	 * @param encodedResource the resource to encode
+	 * @param theCompressionDictionary the dictionary to compress with, required if the encoding is {@link ResourceEncodingEnum#JSOND}
 	 * @return byte array of the resource
 	 */
 	@Nonnull
-	private byte[] getResourceBinary(ResourceEncodingEnum encoding, String encodedResource) {
+	protected byte[] getResourceBinary(ResourceEncodingEnum encoding, String encodedResource, @Nullable CompressionDictionary theCompressionDictionary) {
 		byte[] resourceBinary;
 		switch (encoding) {
 			case JSON:
@@ -701,6 +717,13 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> extends BaseStora
 			case JSONC:
 				resourceBinary = GZipUtil.compress(encodedResource);
 				break;
+			case BJSON:
+				resourceBinary = BinaryJsonUtil.encode(encodedResource);
+				break;
+			case JSOND:
+				Validate.notNull(theCompressionDictionary, "No compression dictionary supplied for JSOND encoding");
+				resourceBinary = DictionaryCompressionUtil.compress(encodedResource, theCompressionDictionary.getDictionary());
+				break;
 			default:
 			case DEL:
 			case ESR:
@@ -980,6 +1003,16 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> extends BaseStora
 
 		ResourceIndexedSearchParams newParams = null;
 
+		/*
+		 * If we have a digest of the index rows currently stored for this resource, we
+		 * only load the existing resource links for now (since these are used when
+		 * extracting the new links). The other existing rows are only loaded if the
+		 * digest of the new index values turns out to be different.
+		 */
+		boolean useSearchIndexDigest = myStorageSettings.isSearchIndexDigestEnabled() && entity.getSearchParamIndexDigest() != null && !theForceUpdate;
+		String searchIndexDigest = null;
+		boolean searchIndexUnchanged = false;
+
 		EncodedResource changed;
 		if (theDeletedTimestampOrNull != null) {
 			// DELETE
@@ -998,7 +1031,11 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> extends BaseStora
 			IdentityHashMap<ResourceTable, ResourceIndexedSearchParams> existingSearchParams = theTransactionDetails.getOrCreateUserData(HapiTransactionService.XACT_USERDATA_KEY_EXISTING_SEARCH_PARAMS, () -> new IdentityHashMap<>());
 			existingParams = existingSearchParams.get(entity);
 			if (existingParams == null) {
-				existingParams = new ResourceIndexedSearchParams(entity);
+				if (useSearchIndexDigest) {
+					existingParams = ResourceIndexedSearchParams.withResourceLinksOnly(entity);
+				} else {
+					existingParams = new ResourceIndexedSearchParams(entity);
+				}
 				/*
 				 * If we have lots of resource links, this proactively fetches the targets so
 				 * that we don't look them up one-by-one when comparing the new set to the
@@ -1038,6 +1075,11 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> extends BaseStora
 				// Extract search params for resource
 				mySearchParamWithInlineReferencesExtractor.populateFromResource(requestPartitionId, newParams, theTransactionDetails, entity, theResource, existingParams, theRequest, thePerformIndexing);
 
+				if (myStorageSettings.isSearchIndexDigestEnabled()) {
+					searchIndexDigest = newParams.calculateIndexDigest();
+					searchIndexUnchanged = useSearchIndexDigest && searchIndexDigest.equals(entity.getSearchParamIndexDigest());
+				}
+
 				// Actually persist the ResourceTable and ResourceHistoryTable entities
 				changed = populateResourceIntoEntity(theTransactionDetails, theRequest, theResource, entity, true);
 
@@ -1129,7 +1171,7 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> extends BaseStora
 		 * index table for resource links (reference indexes) because we index
 		 * those by path and not by parameter name.
 		 */
-		if (thePerformIndexing && newParams != null) {
+		if (thePerformIndexing && newParams != null && !searchIndexUnchanged) {
 			AddRemoveCount presenceCount = mySearchParamPresenceSvc.updatePresence(entity, newParams.mySearchParamPresentEntities);
 
 			// Interceptor broadcast: JPA_PERFTRACE_INFO
@@ -1154,9 +1196,13 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> extends BaseStora
 			if (newParams == null) {
 				myExpungeService.deleteAllSearchParams(JpaPid.fromId(entity.getId()));
 				entity.clearAllParamsPopulated();
+				entity.setSearchParamIndexDigest(null);
+			} else if (searchIndexUnchanged) {
+				ourLog.debug("Search index digest for {} has not changed, skipping index synchronization", entity.getIdDt().toUnqualifiedVersionless().getValue());
 			} else {
 
 				// Synchronize search param indexes
+				existingParams.loadNonLinkParams(entity);
 				AddRemoveCount searchParamAddRemoveCount = myDaoSearchParamSynchronizer.synchronizeSearchParamsToDatabase(newParams, entity, existingParams);
 
 				newParams.populateResourceTableParamCollections(entity);
@@ -1176,6 +1222,8 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> extends BaseStora
 
 				// Synchronize composite params
 				mySearchParamWithInlineReferencesExtractor.storeUniqueComboParameters(newParams, entity, existingParams);
+
+				entity.setSearchParamIndexDigest(searchIndexDigest);
 			}
 		}
 
@@ -1232,10 +1280,17 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> extends BaseStora
 
 			// Check if resource is the same
 			ResourceEncodingEnum encoding = myStorageSettings.getResourceEncoding();
+			CompressionDictionary compressionDictionary = null;
+			if (encoding == ResourceEncodingEnum.JSOND) {
+				compressionDictionary = getCurrentCompressionDictionary(historyEntity.getResourceType());
+				if (compressionDictionary == null) {
+					encoding = ResourceEncodingEnum.JSONC;
+				}
+			}
 			List<String> excludeElements = new ArrayList<>(8);
 			getExcludedElements(historyEntity.getResourceType(), excludeElements, theResource.getMeta());
 			String encodedResourceString = encodeResource(theResource, encoding, excludeElements, myContext);
-			byte[] resourceBinary = getResourceBinary(encoding, encodedResourceString);
+			byte[] resourceBinary = getResourceBinary(encoding, encodedResourceString, compressionDictionary);
 			boolean changed = !Arrays.equals(historyEntity.getResource(), resourceBinary);
 
 			historyEntity.setUpdated(theTransactionDetails.getTransactionDate());
@@ -1250,6 +1305,7 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> extends BaseStora
 				populateEncodedResource(encodedResource, encodedResourceString, null, ResourceEncodingEnum.JSON);
 			} else {
 				populateEncodedResource(encodedResource, null, resourceBinary, encoding);
+				encodedResource.setCompressionDictionaryId(compressionDictionary != null ? compressionDictionary.getId() : null);
 			}
 		}
 		/*
@@ -1257,15 +1313,41 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> extends BaseStora
 		 */
 		historyEntity = myEntityManager.merge(historyEntity);
 		historyEntity.setEncoding(encodedResource.getEncoding());
+		historyEntity.setCompressionDictionaryId(encodedResource.getCompressionDictionaryId());
 		historyEntity.setResource(encodedResource.getResourceBinary());
 		historyEntity.setResourceTextVc(encodedResource.getResourceText());
 		myResourceHistoryTableDao.save(historyEntity);
 
+		// The body of an existing version has changed, so it must not be served from the cache
+		if (myParsedResourceCache != null) {
+			myParsedResourceCache.invalidate(historyEntity.getResourceId(), historyEntity.getVersion());
+		}
+
 		myJpaStorageResourceParser.updateResourceMetadata(historyEntity, theResource);
 
 		return historyEntity;
 	}
 
+	/**
+	 * Returns the dictionary to use when storing resources of the given type with the
+	 * {@link ResourceEncodingEnum#JSOND} encoding, or <code>null</code> if none has been trained yet
+	 */
+	@Nullable
+	protected CompressionDictionary getCurrentCompressionDictionary(String theResourceType) {
+		if (myResourceCompressionDictionarySvc == null) {
+			return null;
+		}
+		return myResourceCompressionDictionarySvc.getCurrentDictionary(theResourceType);
+	}
+
+	@Nullable
+	protected CompressionDictionary getCompressionDictionary(@Nullable Long theCompressionDictionaryId) {
+		if (theCompressionDictionaryId == null || myResourceCompressionDictionarySvc == null) {
+			return null;
+		}
+		return myResourceCompressionDictionarySvc.getDictionary(theCompressionDictionaryId);
+	}
+
 	private void populateEncodedResource(EncodedResource encodedResource, String encodedResourceString, byte[] theResourceBinary, ResourceEncodingEnum theEncoding) {
 		encodedResource.setResourceText(encodedResourceString);
 		encodedResource.setResourceBinary(theResourceBinary);
@@ -1296,6 +1378,7 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> extends BaseStora
 
 		final ResourceHistoryTable historyEntry = theEntity.toHistory(versionedTags);
 		historyEntry.setEncoding(theChanged.getEncoding());
+		historyEntry.setCompressionDictionaryId(theChanged.getCompressionDictionaryId());
 		historyEntry.setResource(theChanged.getResourceBinary());
 		historyEntry.setResourceTextVc(theChanged.getResourceText());
 
@@ -1657,6 +1740,14 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> extends BaseStora
 	}
 
 	public static String decodeResource(byte[] theResourceBytes, ResourceEncodingEnum theResourceEncoding) {
+		return decodeResource(theResourceBytes, theResourceEncoding, null);
+	}
+
+	/**
+	 * @param theCompressionDictionary The dictionary the resource was compressed with, required if the encoding is {@link ResourceEncodingEnum#JSOND}
+	 * @since 6.8.0
+	 */
+	public static String decodeResource(byte[] theResourceBytes, ResourceEncodingEnum theResourceEncoding, @Nullable CompressionDictionary theCompressionDictionary) {
 		String resourceText = null;
 		switch (theResourceEncoding) {
 			case JSON:
@@ -1665,6 +1756,15 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> extends BaseStora
 			case JSONC:
 				resourceText = GZipUtil.decompress(theResourceBytes);
 				break;
+			case BJSON:
+				resourceText = BinaryJsonUtil.decode(theResourceBytes);
+				break;
+			case JSOND:
+				if (theCompressionDictionary == null) {
+					throw new InternalErrorException(Msg.code(2396) + "No compression dictionary available to decode resource");
+				}
+				resourceText = DictionaryCompressionUtil.decompress(theResourceBytes, theCompressionDictionary.getDictionary());
+				break;
 			case DEL:
 			case ESR:
 				break;
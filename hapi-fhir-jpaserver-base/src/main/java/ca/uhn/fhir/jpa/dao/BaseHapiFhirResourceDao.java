@@ -38,6 +38,7 @@ import ca.uhn.fhir.jpa.api.dao.IFhirResourceDao;
 import ca.uhn.fhir.jpa.api.dao.IFhirSystemDao;
 import ca.uhn.fhir.jpa.api.dao.ReindexOutcome;
 import ca.uhn.fhir.jpa.api.dao.ReindexParameters;
+import ca.uhn.fhir.jpa.api.model.CompressionDictionary;
 import ca.uhn.fhir.jpa.api.model.DaoMethodOutcome;
 import ca.uhn.fhir.jpa.api.model.DeleteConflictList;
 import ca.uhn.fhir.jpa.api.model.DeleteMethodOutcome;
@@ -107,6 +108,7 @@ import ca.uhn.fhir.rest.server.exceptions.UnprocessableEntityException;
 import ca.uhn.fhir.rest.server.provider.ProviderConstants;
 import ca.uhn.fhir.rest.server.servlet.ServletRequestDetails;
 import ca.uhn.fhir.rest.server.util.CompositeInterceptorBroadcaster;
+import ca.uhn.fhir.rest.server.util.ResourceBodyPassthroughUtil;
 import ca.uhn.fhir.util.ObjectUtil;
 import ca.uhn.fhir.util.ReflectionUtil;
 import ca.uhn.fhir.util.StopWatch;
@@ -118,6 +120,7 @@ import ca.uhn.fhir.validation.IValidatorModule;
 import ca.uhn.fhir.validation.ValidationOptions;
 import ca.uhn.fhir.validation.ValidationResult;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.hash.Hashing;
 import org.apache.commons.lang3.Validate;
 import org.hl7.fhir.instance.model.api.IBaseCoding;
 import org.hl7.fhir.instance.model.api.IBaseMetaType;
@@ -1312,6 +1315,15 @@ public abstract class BaseHapiFhirResourceDao<T extends IBaseResource> extends B
 
 	@Override
 	public T read(IIdType theId, RequestDetails theRequest, boolean theDeletedOk) {
+		return doRead(theId, theRequest, theDeletedOk, false);
+	}
+
+	@Override
+	public T readAllowingBodyPassthrough(IIdType theId, RequestDetails theRequest) {
+		return doRead(theId, theRequest, false, isResourceBodyPassthroughPossible(theRequest));
+	}
+
+	private T doRead(IIdType theId, RequestDetails theRequest, boolean theDeletedOk, boolean theBodyPassthrough) {
 		validateResourceTypeAndThrowInvalidRequestException(theId);
 		TransactionDetails transactionDetails = new TransactionDetails();
 
@@ -1321,17 +1333,22 @@ public abstract class BaseHapiFhirResourceDao<T extends IBaseResource> extends B
 			.withRequest(theRequest)
 			.withTransactionDetails(transactionDetails)
 			.withRequestPartitionId(requestPartitionId)
-			.execute(() -> doReadInTransaction(theId, theRequest, theDeletedOk, requestPartitionId));
+			.execute(() -> doReadInTransaction(theId, theRequest, theDeletedOk, requestPartitionId, theBodyPassthrough));
 	}
 
-	private T doReadInTransaction(IIdType theId, RequestDetails theRequest, boolean theDeletedOk, RequestPartitionId theRequestPartitionId) {
+	private T doReadInTransaction(IIdType theId, RequestDetails theRequest, boolean theDeletedOk, RequestPartitionId theRequestPartitionId, boolean theBodyPassthrough) {
 		assert TransactionSynchronizationManager.isActualTransactionActive();
 
 		StopWatch w = new StopWatch();
 		BaseHasResource entity = readEntity(theId, true, theRequest, theRequestPartitionId);
 		validateResourceType(entity);
 
-		T retVal = myJpaStorageResourceParser.toResource(myResourceType, entity, null, false);
+		T retVal;
+		if (theBodyPassthrough) {
+			retVal = myJpaStorageResourceParser.toResourceWithPassthroughBody(myResourceType, entity, theRequest);
+		} else {
+			retVal = myJpaStorageResourceParser.toResource(myResourceType, entity, null, false);
+		}
 
 		if (theDeletedOk == false) {
 			if (isDeleted(entity)) {
@@ -1348,6 +1365,22 @@ public abstract class BaseHapiFhirResourceDao<T extends IBaseResource> extends B
 		return retVal;
 	}
 
+	/**
+	 * The stored resource body can only be streamed straight to the client if nothing
+	 * will need to look at (or modify) the resource contents on the way out
+	 */
+	private boolean isResourceBodyPassthroughPossible(RequestDetails theRequest) {
+		if (!getStorageSettings().isResourceBodyPassthroughEnabled()) {
+			return false;
+		}
+		if (CompositeInterceptorBroadcaster.hasHooks(Pointcut.STORAGE_PREACCESS_RESOURCES, myInterceptorBroadcaster, theRequest)
+			|| CompositeInterceptorBroadcaster.hasHooks(Pointcut.STORAGE_PRESHOW_RESOURCES, myInterceptorBroadcaster, theRequest)
+			|| CompositeInterceptorBroadcaster.hasHooks(Pointcut.SERVER_OUTGOING_RESPONSE, myInterceptorBroadcaster, theRequest)) {
+			return false;
+		}
+		return ResourceBodyPassthroughUtil.isPassthroughPossible(theRequest) && myResourceName.equals(theRequest.getResourceName());
+	}
+
 	private T invokeStoragePreShowResources(RequestDetails theRequest, T retVal) {
 		retVal = invokeStoragePreShowResources(myInterceptorBroadcaster, theRequest, retVal);
 		return retVal;
@@ -1454,15 +1487,35 @@ public abstract class BaseHapiFhirResourceDao<T extends IBaseResource> extends B
 
 	private void reindexOptimizeStorageHistoryEntity(ResourceTable entity, ResourceHistoryTable historyEntity) {
 		boolean changed = false;
-		if (historyEntity.getEncoding() == ResourceEncodingEnum.JSONC || historyEntity.getEncoding() == ResourceEncodingEnum.JSON) {
+		if (isTextEncoding(historyEntity.getEncoding())) {
 			byte[] resourceBytes = historyEntity.getResource();
 			if (resourceBytes != null) {
-				String resourceText = decodeResource(resourceBytes, historyEntity.getEncoding());
+				String resourceText = decodeResource(resourceBytes, historyEntity.getEncoding(), getCompressionDictionary(historyEntity.getCompressionDictionaryId()));
+				ResourceEncodingEnum storageEncoding = myStorageSettings.getResourceEncoding();
+				CompressionDictionary storageDictionary = null;
+				if (storageEncoding == ResourceEncodingEnum.JSOND) {
+					storageDictionary = getCurrentCompressionDictionary(entity.getResourceType());
+					if (storageDictionary == null) {
+						storageEncoding = ResourceEncodingEnum.JSONC;
+					}
+				}
+				boolean dictionaryChanged = storageDictionary != null && !Long.valueOf(storageDictionary.getId()).equals(historyEntity.getCompressionDictionaryId());
 				if (myStorageSettings.getInlineResourceTextBelowSize() > 0 && resourceText.length() < myStorageSettings.getInlineResourceTextBelowSize()) {
 					ourLog.debug("Storing text of resource {} version {} as inline VARCHAR", entity.getResourceId(), historyEntity.getVersion());
 					historyEntity.setResourceTextVc(resourceText);
 					historyEntity.setResource(null);
 					historyEntity.setEncoding(ResourceEncodingEnum.JSON);
+					historyEntity.setCompressionDictionaryId(null);
+					changed = true;
+				} else if ((historyEntity.getEncoding() != storageEncoding || dictionaryChanged) && isTextEncoding(storageEncoding)) {
+					ourLog.debug("Re-encoding text of resource {} version {} from {} to {}", entity.getResourceId(), historyEntity.getVersion(), historyEntity.getEncoding(), storageEncoding);
+					byte[] newResourceBytes = getResourceBinary(storageEncoding, resourceText, storageDictionary);
+					historyEntity.setResource(newResourceBytes);
+					historyEntity.setEncoding(storageEncoding);
+					historyEntity.setCompressionDictionaryId(storageDictionary != null ? storageDictionary.getId() : null);
+					if (historyEntity.getVersion() == entity.getVersion()) {
+						entity.setHashSha256(Hashing.sha256().hashBytes(newResourceBytes).toString());
+					}
 					changed = true;
 				}
 			}
@@ -1479,6 +1532,13 @@ public abstract class BaseHapiFhirResourceDao<T extends IBaseResource> extends B
 		}
 	}
 
+	private static boolean isTextEncoding(ResourceEncodingEnum theEncoding) {
+		return theEncoding == ResourceEncodingEnum.JSON
+			|| theEncoding == ResourceEncodingEnum.JSONC
+			|| theEncoding == ResourceEncodingEnum.BJSON
+			|| theEncoding == ResourceEncodingEnum.JSOND;
+	}
+
 	private BaseHasResource readEntity(IIdType theId, boolean theCheckForForcedId, RequestDetails theRequest, RequestPartitionId requestPartitionId) {
 		validateResourceTypeAndThrowInvalidRequestException(theId);
 
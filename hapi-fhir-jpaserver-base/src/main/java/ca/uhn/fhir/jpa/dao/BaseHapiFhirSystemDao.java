@@ -42,6 +42,7 @@ import ca.uhn.fhir.jpa.search.PersistedJpaBundleProviderFactory;
 import ca.uhn.fhir.jpa.search.builder.SearchBuilder;
 import ca.uhn.fhir.jpa.util.QueryChunker;
 import ca.uhn.fhir.jpa.util.ResourceCountCache;
+import ca.uhn.fhir.parser.IBundleEntryIterator;
 import ca.uhn.fhir.rest.api.server.IBundleProvider;
 import ca.uhn.fhir.rest.api.server.RequestDetails;
 import ca.uhn.fhir.rest.api.server.storage.IResourcePersistentId;
@@ -169,6 +170,13 @@ public abstract class BaseHapiFhirSystemDao<T extends IBaseBundle, MT> extends B
 		return myTransactionProcessor.transaction(theRequestDetails, theRequest, true);
 	}
 
+	@SuppressWarnings("unchecked")
+	@Override
+	public T batchIncrementally(RequestDetails theRequestDetails, IBundleEntryIterator<?> theRequestEntries) {
+		HapiTransactionService.noTransactionAllowed();
+		return (T) myTransactionProcessor.batchIncrementally(theRequestDetails, theRequestEntries);
+	}
+
 	@Override
 	public <P extends IResourcePersistentId> void preFetchResources(List<P> theResolvedIds, boolean thePreFetchIndexes) {
 		HapiTransactionService.requireTransaction();
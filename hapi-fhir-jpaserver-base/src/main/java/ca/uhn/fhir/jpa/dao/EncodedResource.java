@@ -27,6 +27,7 @@ class EncodedResource {
 	private byte[] myResource;
 	private ResourceEncodingEnum myEncoding;
 	private String myResourceText;
+	private Long myCompressionDictionaryId;
 
 	public ResourceEncodingEnum getEncoding() {
 		return myEncoding;
@@ -36,6 +37,14 @@ class EncodedResource {
 		myEncoding = theEncoding;
 	}
 
+	public Long getCompressionDictionaryId() {
+		return myCompressionDictionaryId;
+	}
+
+	public void setCompressionDictionaryId(Long theCompressionDictionaryId) {
+		myCompressionDictionaryId = theCompressionDictionaryId;
+	}
+
 	public byte[] getResourceBinary() {
 		return myResource;
 	}
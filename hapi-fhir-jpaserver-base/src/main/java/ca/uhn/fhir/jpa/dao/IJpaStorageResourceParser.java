@@ -22,6 +22,8 @@ package ca.uhn.fhir.jpa.dao;
 import ca.uhn.fhir.jpa.model.entity.BaseTag;
 import ca.uhn.fhir.jpa.model.entity.IBaseResourceEntity;
 import ca.uhn.fhir.jpa.model.entity.ResourceTag;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.server.util.ResourceBodyPassthroughUtil;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 
 import javax.annotation.Nullable;
@@ -35,6 +37,17 @@ public interface IJpaStorageResourceParser extends IStorageResourceParser {
 	 */
 	<R extends IBaseResource> R toResource(Class<R> theResourceType, IBaseResourceEntity theEntity, Collection<ResourceTag> theTagList, boolean theForHistoryOperation);
 
+	/**
+	 * Convert a storage entity into a FHIR resource model instance for a plain read through the
+	 * REST server. If the stored resource body can be streamed to the client without being parsed,
+	 * the returned resource contains only the resource ID and metadata, and the stored body is
+	 * attached under {@link ResourceBodyPassthroughUtil#RESOURCE_BODY_USER_DATA_KEY}. Otherwise
+	 * this behaves like {@link #toResource(Class, IBaseResourceEntity, Collection, boolean)}.
+	 *
+	 * @since 6.8.0
+	 */
+	<R extends IBaseResource> R toResourceWithPassthroughBody(Class<R> theResourceType, IBaseResourceEntity theEntity, RequestDetails theRequestDetails);
+
 	/**
 	 * Populate the metadata (Resource.meta.*) from a storage entity and other related
 	 * objects pulled from the database
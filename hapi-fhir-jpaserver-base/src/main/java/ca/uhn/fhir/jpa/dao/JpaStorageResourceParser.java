@@ -25,6 +25,8 @@ import ca.uhn.fhir.context.RuntimeResourceDefinition;
 import ca.uhn.fhir.i18n.Msg;
 import ca.uhn.fhir.jpa.api.config.JpaStorageSettings;
 import ca.uhn.fhir.jpa.api.dao.IDao;
+import ca.uhn.fhir.jpa.api.model.CompressionDictionary;
+import ca.uhn.fhir.jpa.api.svc.IResourceCompressionDictionarySvc;
 import ca.uhn.fhir.jpa.dao.data.IResourceHistoryTableDao;
 import ca.uhn.fhir.jpa.entity.PartitionEntity;
 import ca.uhn.fhir.jpa.entity.ResourceSearchView;
@@ -54,9 +56,12 @@ import ca.uhn.fhir.parser.DataFormatException;
 import ca.uhn.fhir.parser.IParser;
 import ca.uhn.fhir.parser.LenientErrorHandler;
 import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.server.util.ResourceBodyPassthroughUtil;
 import ca.uhn.fhir.util.MetaUtil;
 import org.apache.commons.lang3.Validate;
 import org.hl7.fhir.instance.model.api.IAnyResource;
+import org.hl7.fhir.instance.model.api.IBaseBinary;
 import org.hl7.fhir.instance.model.api.IBaseCoding;
 import org.hl7.fhir.instance.model.api.IBaseMetaType;
 import org.hl7.fhir.instance.model.api.IBaseResource;
@@ -91,6 +96,10 @@ public class JpaStorageResourceParser implements IJpaStorageResourceParser {
 	private IPartitionLookupSvc myPartitionLookupSvc;
 	@Autowired
 	private ExternallyStoredResourceServiceRegistry myExternallyStoredResourceServiceRegistry;
+	@Autowired
+	private ParsedResourceCache myParsedResourceCache;
+	@Autowired
+	private IResourceCompressionDictionarySvc myResourceCompressionDictionarySvc;
 
 	@Override
 	public IBaseResource toResource(IBasePersistedResource theEntity, boolean theForHistoryOperation) {
@@ -101,11 +110,21 @@ public class JpaStorageResourceParser implements IJpaStorageResourceParser {
 
 	@Override
 	public <R extends IBaseResource> R toResource(Class<R> theResourceType, IBaseResourceEntity theEntity, Collection<ResourceTag> theTagList, boolean theForHistoryOperation) {
+		return toResource(theResourceType, theEntity, theTagList, theForHistoryOperation, null);
+	}
+
+	@Override
+	public <R extends IBaseResource> R toResourceWithPassthroughBody(Class<R> theResourceType, IBaseResourceEntity theEntity, RequestDetails theRequestDetails) {
+		return toResource(theResourceType, theEntity, null, false, theRequestDetails);
+	}
+
+	private <R extends IBaseResource> R toResource(Class<R> theResourceType, IBaseResourceEntity theEntity, Collection<ResourceTag> theTagList, boolean theForHistoryOperation, @Nullable RequestDetails thePassthroughRequest) {
 
 		// 1. get resource, it's encoding and the tags if any
 		byte[] resourceBytes;
 		String resourceText;
 		ResourceEncodingEnum resourceEncoding;
+		Long compressionDictionaryId;
 		@Nullable
 		Collection<? extends BaseTag> tagList = Collections.emptyList();
 		long version;
@@ -117,6 +136,7 @@ public class JpaStorageResourceParser implements IJpaStorageResourceParser {
 			resourceBytes = history.getResource();
 			resourceText = history.getResourceTextVc();
 			resourceEncoding = history.getEncoding();
+			compressionDictionaryId = history.getCompressionDictionaryId();
 			switch (myStorageSettings.getTagStorageMode()) {
 				case VERSIONED:
 				default:
@@ -159,6 +179,7 @@ public class JpaStorageResourceParser implements IJpaStorageResourceParser {
 
 			resourceBytes = history.getResource();
 			resourceEncoding = history.getEncoding();
+			compressionDictionaryId = history.getCompressionDictionaryId();
 			resourceText = history.getResourceTextVc();
 			switch (myStorageSettings.getTagStorageMode()) {
 				case VERSIONED:
@@ -182,6 +203,7 @@ public class JpaStorageResourceParser implements IJpaStorageResourceParser {
 			resourceBytes = view.getResource();
 			resourceText = view.getResourceTextVc();
 			resourceEncoding = view.getEncoding();
+			compressionDictionaryId = view.getCompressionDictionaryId();
 			version = view.getVersion();
 			provenanceRequestId = view.getProvenanceRequestId();
 			provenanceSourceUri = view.getProvenanceSourceUri();
@@ -201,22 +223,47 @@ public class JpaStorageResourceParser implements IJpaStorageResourceParser {
 			return null;
 		}
 
-		// 2. get The text
-		String decodedResourceText = decodedResourceText(resourceBytes, resourceText, resourceEncoding);
-
-		// 3. Use the appropriate custom type if one is specified in the context
+		// 2. Use the appropriate custom type if one is specified in the context
 		Class<R> resourceType = determineTypeToParse(theResourceType, tagList);
 
-		// 4. parse the text to FHIR
-		R retVal = parseResource(theEntity, resourceEncoding, decodedResourceText, resourceType);
+		// 3. Use a copy of the previously parsed body if it is cached
+		boolean cacheable = thePassthroughRequest == null && isCacheable(theEntity, resourceEncoding, resourceType);
+		R retVal = null;
+		if (cacheable) {
+			retVal = myParsedResourceCache.get(theEntity.getResourceId(), version, resourceType);
+		}
+
+		String decodedResourceText = null;
+		boolean passthrough = false;
+		if (retVal == null) {
+
+			// 4. get The text
+			decodedResourceText = decodedResourceText(resourceBytes, resourceText, resourceEncoding, compressionDictionaryId);
 
-		// 5. fill MetaData
+			// 5. parse the text to FHIR, unless the stored text can be passed through to the client as-is
+			passthrough = thePassthroughRequest != null && isPassthroughBody(theEntity, resourceEncoding, decodedResourceText, resourceType, theResourceType, thePassthroughRequest);
+			if (passthrough) {
+				//noinspection unchecked
+				retVal = (R) myFhirContext.getResourceDefinition(theResourceType).newInstance();
+			} else {
+				retVal = parseResource(theEntity, resourceEncoding, decodedResourceText, resourceType);
+				if (cacheable) {
+					myParsedResourceCache.put(theEntity.getResourceId(), version, retVal);
+				}
+			}
+
+		}
+
+		// 6. fill MetaData
 		retVal = populateResourceMetadata(theEntity, theForHistoryOperation, tagList, version, retVal);
+		if (passthrough) {
+			retVal.setUserData(ResourceBodyPassthroughUtil.RESOURCE_BODY_USER_DATA_KEY, decodedResourceText);
+		}
 
-		// 6. Handle source (provenance)
+		// 7. Handle source (provenance)
 		MetaUtil.populateResourceSource(myFhirContext, provenanceSourceUri, provenanceRequestId, retVal);
 
-		// 7. Add partition information
+		// 8. Add partition information
 		populateResourcePartitionInformation(theEntity, retVal);
 
 		return retVal;
@@ -234,6 +281,39 @@ public class JpaStorageResourceParser implements IJpaStorageResourceParser {
 		}
 	}
 
+	private boolean isPassthroughBody(IBaseResourceEntity theEntity, ResourceEncodingEnum theResourceEncoding, String theDecodedResourceText, Class<? extends IBaseResource> theTypeToParse, Class<? extends IBaseResource> theResourceType, RequestDetails theRequestDetails) {
+		if (!isJsonEncoding(theResourceEncoding)) {
+			return false;
+		}
+		if (theEntity.getDeleted() != null || theEntity.getFhirVersion() != myFhirContext.getVersion().getVersion()) {
+			return false;
+		}
+		// Custom types for profiles may add behaviour, so those are always parsed
+		if (!theTypeToParse.equals(theResourceType) || IBaseBinary.class.isAssignableFrom(theResourceType)) {
+			return false;
+		}
+		return ResourceBodyPassthroughUtil.isPassthroughBody(theRequestDetails, myFhirContext.getResourceType(theResourceType), theDecodedResourceText);
+	}
+
+	/**
+	 * Only plain JSON bodies are cached. Copies of custom types would come back as the base type, so
+	 * those are always parsed.
+	 */
+	private boolean isCacheable(IBaseResourceEntity theEntity, ResourceEncodingEnum theResourceEncoding, Class<? extends IBaseResource> theTypeToParse) {
+		return myParsedResourceCache.isEnabled()
+			&& isJsonEncoding(theResourceEncoding)
+			&& theEntity.getDeleted() == null
+			&& theEntity.getFhirVersion() == myFhirContext.getVersion().getVersion()
+			&& theTypeToParse.equals(myFhirContext.getResourceDefinition(theTypeToParse).getImplementingClass());
+	}
+
+	private static boolean isJsonEncoding(ResourceEncodingEnum theResourceEncoding) {
+		return theResourceEncoding == ResourceEncodingEnum.JSON
+			|| theResourceEncoding == ResourceEncodingEnum.JSONC
+			|| theResourceEncoding == ResourceEncodingEnum.BJSON
+			|| theResourceEncoding == ResourceEncodingEnum.JSOND;
+	}
+
 	@SuppressWarnings("unchecked")
 	private <R extends IBaseResource> R parseResource(IBaseResourceEntity theEntity, ResourceEncodingEnum theResourceEncoding, String theDecodedResourceText, Class<R> theResourceType) {
 		R retVal;
@@ -486,10 +566,14 @@ public class JpaStorageResourceParser implements IJpaStorageResourceParser {
 		return FhirContext.forCached(theVersion);
 	}
 
-	private static String decodedResourceText(byte[] resourceBytes, String resourceText, ResourceEncodingEnum resourceEncoding) {
+	private String decodedResourceText(byte[] resourceBytes, String resourceText, ResourceEncodingEnum resourceEncoding, Long theCompressionDictionaryId) {
 		String decodedResourceText;
 		if (resourceText != null) {
 			decodedResourceText = resourceText;
+		} else if (resourceEncoding == ResourceEncodingEnum.JSOND) {
+			Validate.notNull(theCompressionDictionaryId, "No compression dictionary ID for JSOND encoded resource");
+			CompressionDictionary dictionary = myResourceCompressionDictionarySvc.getDictionary(theCompressionDictionaryId);
+			decodedResourceText = decodeResource(resourceBytes, resourceEncoding, dictionary);
 		} else {
 			decodedResourceText = decodeResource(resourceBytes, resourceEncoding);
 		}
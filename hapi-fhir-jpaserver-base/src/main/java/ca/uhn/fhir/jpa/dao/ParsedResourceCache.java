@@ -0,0 +1,266 @@
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2023 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ca.uhn.fhir.jpa.dao;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.jpa.api.config.JpaStorageSettings;
+import ca.uhn.fhir.sl.cache.Cache;
+import ca.uhn.fhir.sl.cache.CacheFactory;
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cache of parsed resource bodies, keyed by resource PID and version. Since the body
+ * stored for a given resource version never changes (except through an update with
+ * history rewrite, which invalidates the entry), a cached entry can be used instead
+ * of decoding and parsing the stored text again.
+ * <p>
+ * Cached instances are never handed out directly. Callers always receive a copy, since
+ * the storage layer populates metadata into the returned resource and callers are free
+ * to modify it. Entries are only added once the transaction that read them has committed,
+ * so that a version which is rolled back is never cached.
+ * </p>
+ *
+ * @see JpaStorageSettings#setParsedResourceCacheMaximumSize(long)
+ * @since 6.8.0
+ */
+public class ParsedResourceCache {
+
+	private static final long EXPIRE_AFTER_WRITE_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+	@Autowired
+	private JpaStorageSettings myStorageSettings;
+	@Autowired
+	private FhirContext myFhirContext;
+	/**
+	 * Puts which are waiting for their transaction to complete, by resource PID. Invalidating a
+	 * resource version marks its pending puts as stale, so that a body which was read before the
+	 * invalidation but whose transaction commits after it is not added back to the cache.
+	 * Guarded by <code>this</code>.
+	 */
+	private final Map<Long, List<PendingPut>> myPendingPuts = new HashMap<>();
+	private volatile Cache<Key, IBaseResource> myCache;
+	private volatile long myCacheMaximumSize;
+
+	/**
+	 * Returns <code>true</code> if the cache is enabled
+	 */
+	public boolean isEnabled() {
+		return myStorageSettings.getParsedResourceCacheMaximumSize() > 0;
+	}
+
+	/**
+	 * Returns a copy of the cached resource body for the given resource version, or <code>null</code>
+	 * if nothing is cached or the cached body is not of the given type
+	 */
+	@Nullable
+	public <R extends IBaseResource> R get(Long theResourcePid, long theVersion, Class<R> theResourceType) {
+		Cache<Key, IBaseResource> cache = getCache();
+		if (cache == null) {
+			return null;
+		}
+		IBaseResource cached = cache.getIfPresent(new Key(theResourcePid, theVersion));
+		if (cached == null || !cached.getClass().equals(theResourceType)) {
+			return null;
+		}
+		return theResourceType.cast(myFhirContext.newTerser().clone(cached));
+	}
+
+	/**
+	 * Stores a copy of the given freshly parsed resource body (i.e. before any metadata has been
+	 * populated into it) for the given resource version. If a transaction is active, the entry is
+	 * only stored once it commits.
+	 */
+	public void put(Long theResourcePid, long theVersion, IBaseResource theParsedResource) {
+		if (getCache() == null) {
+			return;
+		}
+		Key key = new Key(theResourcePid, theVersion);
+		IBaseResource copy = myFhirContext.newTerser().clone(theParsedResource);
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			PendingPut pendingPut = addPendingPut(key, copy);
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				@Override
+				public void afterCompletion(int theStatus) {
+					completePendingPut(pendingPut, theStatus == STATUS_COMMITTED);
+				}
+			});
+		} else {
+			doPut(key, copy);
+		}
+	}
+
+	/**
+	 * Removes the given resource version from the cache. If a transaction is active, the entry is
+	 * removed immediately and again once the transaction commits.
+	 */
+	public void invalidate(Long theResourcePid, long theVersion) {
+		if (getCache() == null) {
+			return;
+		}
+		Key key = new Key(theResourcePid, theVersion);
+		doInvalidate(key);
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				@Override
+				public void afterCompletion(int theStatus) {
+					doInvalidate(key);
+				}
+			});
+		}
+	}
+
+	public synchronized void invalidateAll() {
+		myPendingPuts.values().forEach(t -> t.forEach(PendingPut::markStale));
+		if (myCache != null) {
+			myCache.invalidateAll();
+		}
+	}
+
+	private synchronized PendingPut addPendingPut(Key theKey, IBaseResource theResource) {
+		PendingPut retVal = new PendingPut(theKey, theResource);
+		myPendingPuts.computeIfAbsent(theKey.myResourcePid, t -> new ArrayList<>()).add(retVal);
+		return retVal;
+	}
+
+	private synchronized void completePendingPut(PendingPut thePendingPut, boolean theCommitted) {
+		Long resourcePid = thePendingPut.myKey.myResourcePid;
+		List<PendingPut> pendingPuts = myPendingPuts.get(resourcePid);
+		if (pendingPuts != null) {
+			pendingPuts.remove(thePendingPut);
+			if (pendingPuts.isEmpty()) {
+				myPendingPuts.remove(resourcePid);
+			}
+		}
+		if (theCommitted && !thePendingPut.myStale) {
+			doPut(thePendingPut.myKey, thePendingPut.myResource);
+		}
+	}
+
+	private synchronized void doPut(Key theKey, IBaseResource theResource) {
+		Cache<Key, IBaseResource> cache = getCache();
+		if (cache != null) {
+			cache.put(theKey, theResource);
+		}
+	}
+
+	private synchronized void doInvalidate(Key theKey) {
+		List<PendingPut> pendingPuts = myPendingPuts.get(theKey.myResourcePid);
+		if (pendingPuts != null) {
+			pendingPuts
+				.stream()
+				.filter(t -> t.myKey.equals(theKey))
+				.forEach(PendingPut::markStale);
+		}
+		Cache<Key, IBaseResource> cache = getCache();
+		if (cache != null) {
+			cache.invalidate(theKey);
+		}
+	}
+
+	/**
+	 * The cache is (re)created whenever the configured size changes, so that the
+	 * setting can be changed at runtime
+	 */
+	@Nullable
+	private Cache<Key, IBaseResource> getCache() {
+		long maximumSize = myStorageSettings.getParsedResourceCacheMaximumSize();
+		if (maximumSize != myCacheMaximumSize) {
+			synchronized (this) {
+				if (maximumSize != myCacheMaximumSize) {
+					myCache = maximumSize > 0 ? CacheFactory.build(EXPIRE_AFTER_WRITE_MILLIS, maximumSize) : null;
+					myCacheMaximumSize = maximumSize;
+				}
+			}
+		}
+		return myCache;
+	}
+
+	private static class PendingPut {
+
+		private final Key myKey;
+		private final IBaseResource myResource;
+		private boolean myStale;
+
+		private PendingPut(Key theKey, IBaseResource theResource) {
+			myKey = theKey;
+			myResource = theResource;
+		}
+
+		private void markStale() {
+			myStale = true;
+		}
+	}
+
+	private static class Key {
+
+		private final Long myResourcePid;
+		private final long myVersion;
+		private final int myHashCode;
+
+		private Key(Long theResourcePid, long theVersion) {
+			myResourcePid = theResourcePid;
+			myVersion = theVersion;
+			myHashCode = new HashCodeBuilder().append(myResourcePid).append(myVersion).toHashCode();
+		}
+
+		@Override
+		public boolean equals(Object theO) {
+			if (this == theO) {
+				return true;
+			}
+			if (!(theO instanceof Key)) {
+				return false;
+			}
+			Key key = (Key) theO;
+			return new EqualsBuilder()
+				.append(myResourcePid, key.myResourcePid)
+				.append(myVersion, key.myVersion)
+				.isEquals();
+		}
+
+		@Override
+		public int hashCode() {
+			return myHashCode;
+		}
+
+		@Override
+		public String toString() {
+			return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+				.append("pid", myResourcePid)
+				.append("version", myVersion)
+				.toString();
+		}
+	}
+
+}
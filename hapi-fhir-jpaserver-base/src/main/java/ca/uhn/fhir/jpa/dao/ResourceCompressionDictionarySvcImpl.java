@@ -0,0 +1,155 @@
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2023 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ca.uhn.fhir.jpa.dao;
+
+import ca.uhn.fhir.i18n.Msg;
+import ca.uhn.fhir.jpa.api.model.CompressionDictionary;
+import ca.uhn.fhir.jpa.api.svc.IResourceCompressionDictionarySvc;
+import ca.uhn.fhir.jpa.dao.data.IResourceCompressionDictionaryDao;
+import ca.uhn.fhir.jpa.dao.data.IResourceHistoryTableDao;
+import ca.uhn.fhir.jpa.dao.tx.IHapiTransactionService;
+import ca.uhn.fhir.jpa.entity.ResourceCompressionDictionaryEntity;
+import ca.uhn.fhir.jpa.model.entity.ResourceEncodingEnum;
+import ca.uhn.fhir.jpa.model.entity.ResourceHistoryTable;
+import ca.uhn.fhir.jpa.util.MemoryCacheService;
+import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
+import org.apache.commons.lang3.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+
+import static org.apache.commons.lang3.StringUtils.isNotBlank;
+
+public class ResourceCompressionDictionarySvcImpl implements IResourceCompressionDictionarySvc {
+
+	/**
+	 * A dictionary trained from fewer resources than this is unlikely to be representative
+	 */
+	public static final int MINIMUM_SAMPLE_COUNT = 10;
+	private static final Logger ourLog = LoggerFactory.getLogger(ResourceCompressionDictionarySvcImpl.class);
+
+	@Autowired
+	private IResourceCompressionDictionaryDao myResourceCompressionDictionaryDao;
+	@Autowired
+	private IResourceHistoryTableDao myResourceHistoryTableDao;
+	@Autowired
+	private IHapiTransactionService myTransactionService;
+	@Autowired
+	private MemoryCacheService myMemoryCacheService;
+
+	@Nullable
+	@Override
+	public CompressionDictionary getCurrentDictionary(@Nonnull String theResourceType) {
+		Optional<CompressionDictionary> retVal = myMemoryCacheService.get(MemoryCacheService.CacheEnum.CURRENT_COMPRESSION_DICTIONARY, theResourceType, t -> myTransactionService
+			.withSystemRequest()
+			.execute(() -> myResourceCompressionDictionaryDao
+				.findMostRecentForResourceType(PageRequest.of(0, 1), t)
+				.stream()
+				.findFirst()
+				.map(ResourceCompressionDictionarySvcImpl::toDictionary)));
+		return retVal.orElse(null);
+	}
+
+	@Nonnull
+	@Override
+	public CompressionDictionary getDictionary(long theDictionaryId) {
+		return myMemoryCacheService.get(MemoryCacheService.CacheEnum.COMPRESSION_DICTIONARY, theDictionaryId, t -> myTransactionService
+			.withSystemRequest()
+			.execute(() -> myResourceCompressionDictionaryDao
+				.findById(t)
+				.map(ResourceCompressionDictionarySvcImpl::toDictionary)
+				.orElseThrow(() -> new InternalErrorException(Msg.code(2395) + "Unknown compression dictionary ID: " + t))));
+	}
+
+	@Nullable
+	@Override
+	public CompressionDictionary trainDictionary(@Nonnull String theResourceType, int theSampleSize) {
+		Validate.notBlank(theResourceType, "theResourceType must not be blank");
+		Validate.isTrue(theSampleSize > 0, "theSampleSize must be greater than 0");
+
+		List<String> samples = myTransactionService
+			.withSystemRequest()
+			.execute(() -> fetchSamples(theResourceType, theSampleSize));
+		if (samples.size() < MINIMUM_SAMPLE_COUNT) {
+			ourLog.info("Not training a compression dictionary for {} - Only {} resource versions are available", theResourceType, samples.size());
+			return null;
+		}
+
+		byte[] dictionary = DictionaryCompressionUtil.trainDictionary(samples, DictionaryCompressionUtil.MAXIMUM_DICTIONARY_SIZE);
+		if (dictionary.length == 0) {
+			ourLog.info("Not training a compression dictionary for {} - Sampled resource versions have no text in common", theResourceType);
+			return null;
+		}
+
+		CompressionDictionary retVal = myTransactionService
+			.withSystemRequest()
+			.execute(() -> {
+				ResourceCompressionDictionaryEntity entity = new ResourceCompressionDictionaryEntity();
+				entity.setResourceType(theResourceType);
+				entity.setCreated(new Date());
+				entity.setSampleCount(samples.size());
+				entity.setDictionary(dictionary);
+				entity = myResourceCompressionDictionaryDao.save(entity);
+
+				CompressionDictionary newDictionary = toDictionary(entity);
+				myMemoryCacheService.putAfterCommit(MemoryCacheService.CacheEnum.COMPRESSION_DICTIONARY, newDictionary.getId(), newDictionary);
+				myMemoryCacheService.putAfterCommit(MemoryCacheService.CacheEnum.CURRENT_COMPRESSION_DICTIONARY, theResourceType, Optional.of(newDictionary));
+				return newDictionary;
+			});
+
+		ourLog.info("Trained compression dictionary {} for {} from {} resource versions ({} bytes)", retVal.getId(), theResourceType, samples.size(), dictionary.length);
+		return retVal;
+	}
+
+	private List<String> fetchSamples(String theResourceType, int theSampleSize) {
+		List<ResourceHistoryTable> versions = myResourceHistoryTableDao
+			.findMostRecentForResourceType(PageRequest.of(0, theSampleSize), theResourceType, ResourceEncodingEnum.DEL)
+			.getContent();
+
+		List<String> retVal = new ArrayList<>(versions.size());
+		for (ResourceHistoryTable next : versions) {
+			String text = next.getResourceTextVc();
+			if (text == null && next.getEncoding() != ResourceEncodingEnum.ESR && next.getResource() != null) {
+				CompressionDictionary dictionary = null;
+				if (next.getEncoding() == ResourceEncodingEnum.JSOND) {
+					dictionary = getDictionary(next.getCompressionDictionaryId());
+				}
+				text = BaseHapiFhirDao.decodeResource(next.getResource(), next.getEncoding(), dictionary);
+			}
+			if (isNotBlank(text)) {
+				retVal.add(text);
+			}
+		}
+		return retVal;
+	}
+
+	private static CompressionDictionary toDictionary(ResourceCompressionDictionaryEntity theEntity) {
+		return new CompressionDictionary(theEntity.getId(), theEntity.getResourceType(), theEntity.getDictionary());
+	}
+
+}
@@ -19,6 +19,7 @@
  */
 package ca.uhn.fhir.jpa.dao.data;
 
+import ca.uhn.fhir.jpa.model.entity.ResourceEncodingEnum;
 import ca.uhn.fhir.jpa.model.entity.ResourceHistoryTable;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Slice;
@@ -67,6 +68,13 @@ public interface IResourceHistoryTableDao extends JpaRepository<ResourceHistoryT
 		"WHERE v.myResourceVersion != t.myVersion")
 	Slice<Long> findIdsOfPreviousVersionsOfResources(Pageable thePage);
 
+	/**
+	 * Returns the most recently stored versions of the given resource type, excluding
+	 * deleted versions. Used to sample resource bodies when training compression dictionaries.
+	 */
+	@Query("SELECT t FROM ResourceHistoryTable t WHERE t.myResourceType = :restype AND t.myEncoding != :deletedEncoding ORDER BY t.myId DESC")
+	Slice<ResourceHistoryTable> findMostRecentForResourceType(Pageable thePage, @Param("restype") String theResourceType, @Param("deletedEncoding") ResourceEncodingEnum theDeletedEncoding);
+
 	@Modifying
 	@Query("UPDATE ResourceHistoryTable r SET r.myResourceVersion = :newVersion WHERE r.myResourceId = :id AND r.myResourceVersion = :oldVersion")
 	void updateVersion(@Param("id") long theId, @Param("oldVersion") long theOldVersion, @Param("newVersion") long theNewVersion);
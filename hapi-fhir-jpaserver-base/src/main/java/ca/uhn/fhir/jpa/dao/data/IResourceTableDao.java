@@ -50,6 +50,12 @@ public interface IResourceTableDao extends JpaRepository<ResourceTable, Long>, I
 	@Query("SELECT t.myResourceType as type, COUNT(t.myResourceType) as count FROM ResourceTable t GROUP BY t.myResourceType")
 	List<Map<?, ?>> getResourceCounts();
 
+	@Query("SELECT MAX(t.myUpdated) FROM ResourceTable t WHERE t.myResourceType = :restype AND t.myDeleted IS NULL")
+	Date findLastUpdatedForResourceType(@Param("restype") String theResourceName);
+
+	@Query("SELECT MAX(t.myDeleted) FROM ResourceTable t WHERE t.myResourceType = :restype AND t.myDeleted IS NOT NULL")
+	Date findLastDeletedForResourceType(@Param("restype") String theResourceName);
+
 	@Query("SELECT t.myId FROM ResourceTable t WHERE t.myUpdated >= :low AND t.myUpdated <= :high ORDER BY t.myUpdated DESC")
 	Slice<Long> findIdsOfResourcesWithinUpdatedRangeOrderedFromNewest(Pageable thePage, @Param("low") Date theLow, @Param("high") Date theHigh);
 
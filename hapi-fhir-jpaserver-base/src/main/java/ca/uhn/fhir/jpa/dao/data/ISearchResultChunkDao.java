@@ -0,0 +1,49 @@
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2023 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ca.uhn.fhir.jpa.dao.data;
+
+import ca.uhn.fhir.jpa.entity.SearchResultChunk;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+
+public interface ISearchResultChunkDao extends JpaRepository<SearchResultChunk, Long>, IHapiFhirJpaRepository {
+
+	/**
+	 * Finds the chunks containing any of the results with an order between <code>theFrom</code> (inclusive)
+	 * and <code>theTo</code> (exclusive)
+	 */
+	@Query("SELECT c FROM SearchResultChunk c WHERE c.mySearchPid = :search AND c.myFirstOrder < :to AND c.myFirstOrder + c.myPidCount > :from ORDER BY c.myFirstOrder ASC")
+	List<SearchResultChunk> findForSearchInRange(@Param("search") Long theSearchPid, @Param("from") int theFrom, @Param("to") int theTo);
+
+	@Query("SELECT c FROM SearchResultChunk c WHERE c.mySearchPid = :search ORDER BY c.myFirstOrder ASC")
+	List<SearchResultChunk> findForSearch(@Param("search") Long theSearchPid);
+
+	@Query("SELECT count(c) FROM SearchResultChunk c WHERE c.mySearchPid = :search")
+	long countForSearch(@Param("search") Long theSearchPid);
+
+	@Modifying
+	@Query("DELETE FROM SearchResultChunk c WHERE c.mySearchPid = :search")
+	void deleteForSearch(@Param("search") Long theSearchPid);
+
+}
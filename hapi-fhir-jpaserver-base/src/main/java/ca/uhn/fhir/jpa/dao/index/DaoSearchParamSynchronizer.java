@@ -19,11 +19,13 @@
  */
 package ca.uhn.fhir.jpa.dao.index;
 
+import ca.uhn.fhir.jpa.api.config.JpaStorageSettings;
 import ca.uhn.fhir.jpa.model.entity.BaseResourceIndex;
 import ca.uhn.fhir.jpa.model.entity.ResourceTable;
 import ca.uhn.fhir.jpa.searchparam.extractor.ResourceIndexedSearchParams;
 import ca.uhn.fhir.jpa.util.AddRemoveCount;
 import com.google.common.annotations.VisibleForTesting;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import javax.persistence.EntityManager;
@@ -38,6 +40,10 @@ import java.util.List;
 public class DaoSearchParamSynchronizer {
 	@PersistenceContext(type = PersistenceContextType.TRANSACTION)
 	protected EntityManager myEntityManager;
+	@Autowired
+	private JpaStorageSettings myStorageSettings;
+	@Autowired
+	private ResourceIndexBatchWriter myResourceIndexBatchWriter;
 
 	public AddRemoveCount synchronizeSearchParamsToDatabase(ResourceIndexedSearchParams theParams, ResourceTable theEntity, ResourceIndexedSearchParams existingParams) {
 		AddRemoveCount retVal = new AddRemoveCount();
@@ -64,6 +70,20 @@ public class DaoSearchParamSynchronizer {
 		myEntityManager = theEntityManager;
 	}
 
+	@VisibleForTesting
+	public void setStorageSettings(JpaStorageSettings theStorageSettings) {
+		myStorageSettings = theStorageSettings;
+	}
+
+	@VisibleForTesting
+	public void setResourceIndexBatchWriter(ResourceIndexBatchWriter theResourceIndexBatchWriter) {
+		myResourceIndexBatchWriter = theResourceIndexBatchWriter;
+	}
+
+	private boolean isBatchIndexWrites() {
+		return myStorageSettings != null && myStorageSettings.isBatchIndexWritesEnabled() && myResourceIndexBatchWriter != null;
+	}
+
 	private <T extends BaseResourceIndex> void synchronize(ResourceTable theEntity, AddRemoveCount theAddRemoveCount, Collection<T> theNewParams, Collection<T> theExistingParams) {
 		Collection<T> newParams = theNewParams;
 		for (T next : newParams) {
@@ -81,13 +101,28 @@ public class DaoSearchParamSynchronizer {
 		List<T> paramsToAdd = subtract(newParams, theExistingParams);
 		tryToReuseIndexEntities(paramsToRemove, paramsToAdd);
 
+		/*
+		 * If batched index writes are enabled, new rows and removed rows are queued and
+		 * written together when the session is flushed. Reused rows (which already have
+		 * an ID) are still updated through Hibernate, unless they are themselves still
+		 * queued for insert in which case the queued entity has already been modified.
+		 */
+		boolean batchIndexWrites = isBatchIndexWrites();
 		for (T next : paramsToRemove) {
-			myEntityManager.remove(next);
+			if (batchIndexWrites) {
+				myResourceIndexBatchWriter.queueDelete(myEntityManager, next);
+			} else {
+				myEntityManager.remove(next);
+			}
 			theEntity.getParamsQuantity().remove(next);
 			theEntity.getParamsQuantityNormalized().remove(next);
 		}
 		for (T next : paramsToAdd) {
-			myEntityManager.merge(next);
+			if (batchIndexWrites && next.getId() == null) {
+				myResourceIndexBatchWriter.queueInsert(myEntityManager, next);
+			} else if (!batchIndexWrites || !myResourceIndexBatchWriter.isQueuedForInsert(myEntityManager, next)) {
+				myEntityManager.merge(next);
+			}
 		}
 
 		// TODO:  are there any unintended consequences to fixing this bug?
@@ -0,0 +1,379 @@
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2023 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ca.uhn.fhir.jpa.dao.index;
+
+import ca.uhn.fhir.jpa.model.entity.BaseResourceIndex;
+import com.google.common.collect.Lists;
+import org.hibernate.FlushMode;
+import org.hibernate.HibernateException;
+import org.hibernate.action.spi.AfterTransactionCompletionProcess;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.engine.jdbc.spi.JdbcCoordinator;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.AutoFlushEvent;
+import org.hibernate.event.spi.AutoFlushEventListener;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.FlushEvent;
+import org.hibernate.event.spi.FlushEventListener;
+import org.hibernate.internal.util.collections.ArrayHelper;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.hibernate.type.Type;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PrePersist;
+import java.io.Serializable;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Collects new and removed search index rows (see {@link BaseResourceIndex}) for the current
+ * Hibernate session, and writes them when the session is flushed using one multi-row
+ * <code>INSERT</code> statement and one <code>DELETE ... WHERE ... IN (...)</code> statement
+ * per index table, instead of one statement per row.
+ * <p>
+ * Queued rows are written after Hibernate has flushed its own pending changes, so the
+ * resource rows they refer to always exist by the time they are written. A query which
+ * triggers an automatic flush also writes any queued rows, so queries in the same
+ * transaction see them.
+ * </p>
+ * <p>
+ * Entities written by this class are never attached to the Hibernate session.
+ * </p>
+ *
+ * @see ca.uhn.fhir.jpa.api.config.JpaStorageSettings#setBatchIndexWritesEnabled(boolean)
+ * @since 6.8.0
+ */
+public class ResourceIndexBatchWriter {
+
+	/**
+	 * SQL Server allows at most 1000 rows in a VALUES list and 2100 parameters in a statement
+	 */
+	static final int MAX_ROWS_PER_STATEMENT = 500;
+	static final int MAX_PARAMETERS_PER_STATEMENT = 2000;
+	private static final Logger ourLog = LoggerFactory.getLogger(ResourceIndexBatchWriter.class);
+	private final Map<SessionImplementor, PendingWrites> myPendingWrites = new ConcurrentHashMap<>();
+	private final Map<Class<?>, List<Method>> myPrePersistMethods = new ConcurrentHashMap<>();
+
+	@Autowired
+	private EntityManagerFactory myEntityManagerFactory;
+
+	@PostConstruct
+	public void start() {
+		SessionFactoryImplementor sessionFactory = myEntityManagerFactory.unwrap(SessionFactoryImplementor.class);
+		EventListenerRegistry registry = sessionFactory.getServiceRegistry().getService(EventListenerRegistry.class);
+		registry.appendListeners(EventType.FLUSH, new MyFlushEventListener());
+		registry.appendListeners(EventType.AUTO_FLUSH, new MyAutoFlushEventListener());
+	}
+
+	/**
+	 * Assigns an ID to the given index entity and queues it to be inserted when the
+	 * session is next flushed
+	 */
+	public void queueInsert(EntityManager theEntityManager, BaseResourceIndex theEntity) {
+		SessionImplementor session = theEntityManager.unwrap(SessionImplementor.class);
+		AbstractEntityPersister persister = getPersister(session, theEntity);
+
+		invokePrePersistCallbacks(theEntity);
+		Serializable id = persister.getIdentifierGenerator().generate(session, theEntity);
+		persister.setIdentifier(theEntity, id, session);
+
+		getOrCreatePendingWrites(session)
+			.getInserts(persister.getEntityName())
+			.put(id, theEntity);
+	}
+
+	/**
+	 * Queues the given index entity to be deleted when the session is next flushed. If
+	 * the entity is queued for insert, it is simply removed from the queue instead.
+	 */
+	public void queueDelete(EntityManager theEntityManager, BaseResourceIndex theEntity) {
+		SessionImplementor session = theEntityManager.unwrap(SessionImplementor.class);
+		AbstractEntityPersister persister = getPersister(session, theEntity);
+		Serializable id = persister.getIdentifier(theEntity, session);
+		if (id == null) {
+			return;
+		}
+
+		PendingWrites pendingWrites = getOrCreatePendingWrites(session);
+		if (pendingWrites.getInserts(persister.getEntityName()).remove(id) != null) {
+			return;
+		}
+
+		if (session.contains(theEntity)) {
+			session.evict(theEntity);
+		}
+		pendingWrites.getDeletes(persister.getEntityName()).add(id);
+	}
+
+	/**
+	 * Returns <code>true</code> if the given entity is queued for insert in the current session
+	 */
+	public boolean isQueuedForInsert(EntityManager theEntityManager, BaseResourceIndex theEntity) {
+		if (theEntity.getId() == null) {
+			return false;
+		}
+		SessionImplementor session = theEntityManager.unwrap(SessionImplementor.class);
+		PendingWrites pendingWrites = myPendingWrites.get(session);
+		if (pendingWrites == null) {
+			return false;
+		}
+		String entityName = getPersister(session, theEntity).getEntityName();
+		return pendingWrites.getInserts(entityName).get(theEntity.getId()) == theEntity;
+	}
+
+	private PendingWrites getOrCreatePendingWrites(SessionImplementor theSession) {
+		return myPendingWrites.computeIfAbsent(theSession, t -> {
+			t.getActionQueue().registerProcess((AfterTransactionCompletionProcess) (theSuccess, theSessionImplementor) -> myPendingWrites.remove(t));
+			return new PendingWrites();
+		});
+	}
+
+	private void invokePrePersistCallbacks(BaseResourceIndex theEntity) {
+		List<Method> methods = myPrePersistMethods.computeIfAbsent(theEntity.getClass(), ResourceIndexBatchWriter::findPrePersistMethods);
+		for (Method next : methods) {
+			try {
+				next.invoke(theEntity);
+			} catch (IllegalAccessException | InvocationTargetException e) {
+				throw new HibernateException("Failed to invoke @PrePersist method " + next, e);
+			}
+		}
+	}
+
+	private void flushPendingWrites(SessionImplementor theSession) {
+		PendingWrites pendingWrites = myPendingWrites.get(theSession);
+		if (pendingWrites == null || pendingWrites.isEmpty()) {
+			return;
+		}
+
+		Map<String, Set<Serializable>> deletes = new LinkedHashMap<>(pendingWrites.myDeletes);
+		Map<String, Map<Serializable, BaseResourceIndex>> inserts = new LinkedHashMap<>(pendingWrites.myInserts);
+		pendingWrites.myDeletes.clear();
+		pendingWrites.myInserts.clear();
+
+		// Make sure any rows Hibernate has batched up are written first
+		JdbcCoordinator jdbcCoordinator = theSession.getJdbcCoordinator();
+		jdbcCoordinator.executeBatch();
+
+		Dialect dialect = theSession.getJdbcServices().getDialect();
+		for (Map.Entry<String, Set<Serializable>> next : deletes.entrySet()) {
+			AbstractEntityPersister persister = (AbstractEntityPersister) theSession.getFactory().getMetamodel().entityPersister(next.getKey());
+			writeDeletes(theSession, dialect, persister, next.getValue());
+		}
+		for (Map.Entry<String, Map<Serializable, BaseResourceIndex>> next : inserts.entrySet()) {
+			AbstractEntityPersister persister = (AbstractEntityPersister) theSession.getFactory().getMetamodel().entityPersister(next.getKey());
+			writeInserts(theSession, dialect, persister, next.getValue().values());
+		}
+	}
+
+	private void writeDeletes(SessionImplementor theSession, Dialect theDialect, AbstractEntityPersister thePersister, Collection<Serializable> theIds) {
+		if (theIds.isEmpty()) {
+			return;
+		}
+
+		int rowsPerStatement = MAX_ROWS_PER_STATEMENT;
+		if (theDialect.getInExpressionCountLimit() > 0) {
+			rowsPerStatement = Math.min(rowsPerStatement, theDialect.getInExpressionCountLimit());
+		}
+
+		Type idType = thePersister.getIdentifierType();
+		for (List<Serializable> nextChunk : Lists.partition(new ArrayList<>(theIds), rowsPerStatement)) {
+			StringBuilder sql = new StringBuilder();
+			sql.append("delete from ").append(thePersister.getTableName());
+			sql.append(" where ").append(thePersister.getIdentifierColumnNames()[0]).append(" in (");
+			sql.append(String.join(",", Collections.nCopies(nextChunk.size(), "?")));
+			sql.append(")");
+
+			executeStatement(theSession, sql.toString(), false, theStatement -> {
+				int index = 1;
+				for (Serializable nextId : nextChunk) {
+					idType.nullSafeSet(theStatement, nextId, index++, theSession);
+				}
+			});
+		}
+		ourLog.debug("Deleted {} rows from {}", theIds.size(), thePersister.getTableName());
+	}
+
+	private void writeInserts(SessionImplementor theSession, Dialect theDialect, AbstractEntityPersister thePersister, Collection<BaseResourceIndex> theEntities) {
+		if (theEntities.isEmpty()) {
+			return;
+		}
+
+		/*
+		 * The columns are listed in the same order Hibernate uses for its own insert
+		 * statement: the insertable property columns followed by the ID columns
+		 */
+		boolean[] propertyInsertability = thePersister.getPropertyInsertability();
+		boolean[][] columnInsertability = thePersister.getPropertyColumnInsertable();
+		Type[] propertyTypes = thePersister.getPropertyTypes();
+		List<String> columns = new ArrayList<>();
+		for (int i = 0; i < propertyInsertability.length; i++) {
+			if (propertyInsertability[i]) {
+				String[] propertyColumns = thePersister.getPropertyColumnNames(i);
+				for (int j = 0; j < propertyColumns.length; j++) {
+					if (columnInsertability[i][j]) {
+						columns.add(propertyColumns[j]);
+					}
+				}
+			}
+		}
+		Collections.addAll(columns, thePersister.getIdentifierColumnNames());
+
+		String valuesRow = "(" + String.join(",", Collections.nCopies(columns.size(), "?")) + ")";
+		String insertPrefix = "insert into " + thePersister.getTableName() + " (" + String.join(",", columns) + ") values ";
+
+		// Databases without multi-row VALUES support (e.g. Oracle) get a JDBC batch instead
+		boolean multiRow = theDialect.supportsValuesList();
+		int rowsPerStatement = multiRow ? Math.max(1, Math.min(MAX_ROWS_PER_STATEMENT, MAX_PARAMETERS_PER_STATEMENT / columns.size())) : MAX_ROWS_PER_STATEMENT;
+
+		for (List<BaseResourceIndex> nextChunk : Lists.partition(new ArrayList<>(theEntities), rowsPerStatement)) {
+			String sql = multiRow ? insertPrefix + String.join(",", Collections.nCopies(nextChunk.size(), valuesRow)) : insertPrefix + valuesRow;
+
+			executeStatement(theSession, sql, !multiRow, theStatement -> {
+				int index = 1;
+				for (BaseResourceIndex nextEntity : nextChunk) {
+					if (!multiRow) {
+						index = 1;
+					}
+					Object[] values = thePersister.getPropertyValues(nextEntity);
+					for (int i = 0; i < propertyInsertability.length; i++) {
+						if (propertyInsertability[i]) {
+							propertyTypes[i].nullSafeSet(theStatement, values[i], index, columnInsertability[i], theSession);
+							index += ArrayHelper.countTrue(columnInsertability[i]);
+						}
+					}
+					Serializable id = thePersister.getIdentifier(nextEntity, theSession);
+					thePersister.getIdentifierType().nullSafeSet(theStatement, id, index, theSession);
+					index += thePersister.getIdentifierColumnSpan();
+					if (!multiRow) {
+						theStatement.addBatch();
+					}
+				}
+			});
+		}
+		ourLog.debug("Inserted {} rows into {}", theEntities.size(), thePersister.getTableName());
+	}
+
+	private void executeStatement(SessionImplementor theSession, String theSql, boolean theBatch, IStatementBinder theBinder) {
+		JdbcCoordinator jdbcCoordinator = theSession.getJdbcCoordinator();
+		PreparedStatement statement = jdbcCoordinator.getStatementPreparer().prepareStatement(theSql);
+		try {
+			theBinder.bind(statement);
+			if (theBatch) {
+				statement.executeBatch();
+			} else {
+				jdbcCoordinator.getResultSetReturn().executeUpdate(statement);
+			}
+		} catch (SQLException e) {
+			throw theSession.getJdbcServices().getSqlExceptionHelper().convert(e, "Failed to write search index rows", theSql);
+		} finally {
+			jdbcCoordinator.getLogicalConnection().getResourceRegistry().release(statement);
+			jdbcCoordinator.afterStatementExecution();
+		}
+	}
+
+	private static AbstractEntityPersister getPersister(SessionImplementor theSession, BaseResourceIndex theEntity) {
+		return (AbstractEntityPersister) theSession.getEntityPersister(null, theEntity);
+	}
+
+	private static List<Method> findPrePersistMethods(Class<?> theType) {
+		List<Method> retVal = new ArrayList<>();
+		for (Class<?> type = theType; type != null && type != Object.class; type = type.getSuperclass()) {
+			for (Method next : type.getDeclaredMethods()) {
+				if (next.isAnnotationPresent(PrePersist.class)) {
+					next.setAccessible(true);
+					retVal.add(0, next);
+				}
+			}
+		}
+		return retVal;
+	}
+
+	@FunctionalInterface
+	private interface IStatementBinder {
+		void bind(PreparedStatement theStatement) throws SQLException;
+	}
+
+	private static class PendingWrites {
+
+		private final Map<String, Map<Serializable, BaseResourceIndex>> myInserts = new LinkedHashMap<>();
+		private final Map<String, Set<Serializable>> myDeletes = new LinkedHashMap<>();
+
+		Map<Serializable, BaseResourceIndex> getInserts(String theEntityName) {
+			return myInserts.computeIfAbsent(theEntityName, t -> new LinkedHashMap<>());
+		}
+
+		Set<Serializable> getDeletes(String theEntityName) {
+			return myDeletes.computeIfAbsent(theEntityName, t -> new LinkedHashSet<>());
+		}
+
+		boolean isEmpty() {
+			return myInserts.values().stream().allMatch(Map::isEmpty) && myDeletes.values().stream().allMatch(Set::isEmpty);
+		}
+	}
+
+	/**
+	 * Appended after Hibernate's own flush listener, so this runs once Hibernate has
+	 * written the resource rows that the queued index rows refer to
+	 */
+	private class MyFlushEventListener implements FlushEventListener {
+		@Override
+		public void onFlush(FlushEvent theEvent) throws HibernateException {
+			flushPendingWrites(theEvent.getSession());
+		}
+	}
+
+	/**
+	 * Hibernate only auto-flushes before a query if it thinks the query touches a table with
+	 * pending changes, and it doesn't know about our queued rows. If any rows are queued, we
+	 * flush the whole session so that the rows they depend on are written first.
+	 */
+	private class MyAutoFlushEventListener implements AutoFlushEventListener {
+		@Override
+		public void onAutoFlush(AutoFlushEvent theEvent) throws HibernateException {
+			SessionImplementor session = theEvent.getSession();
+			if (session.getHibernateFlushMode().lessThan(FlushMode.AUTO)) {
+				return;
+			}
+			PendingWrites pendingWrites = myPendingWrites.get(session);
+			if (pendingWrites != null && !pendingWrites.isEmpty()) {
+				session.flush();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,108 @@
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2023 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ca.uhn.fhir.jpa.entity;
+
+import ca.uhn.fhir.jpa.model.entity.ResourceTable;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Lob;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * A compression dictionary trained for a resource type, used by the
+ * JSOND resource encoding. Rows in this table are never modified once created.
+ *
+ * @since 6.8.0
+ */
+@Entity
+@Table(name = ResourceCompressionDictionaryEntity.HFJ_RES_COMP_DICT, indexes = {
+	@Index(name = "IDX_RESCOMPDICT_TYPE", columnList = "RES_TYPE,PID")
+})
+public class ResourceCompressionDictionaryEntity implements Serializable {
+
+	public static final String HFJ_RES_COMP_DICT = "HFJ_RES_COMP_DICT";
+	private static final long serialVersionUID = 1L;
+
+	@Id
+	@GeneratedValue(strategy = GenerationType.AUTO, generator = "SEQ_RESCOMPDICT_PID")
+	@SequenceGenerator(name = "SEQ_RESCOMPDICT_PID", sequenceName = "SEQ_RESCOMPDICT_PID")
+	@Column(name = "PID")
+	private Long myId;
+	@Column(name = "RES_TYPE", length = ResourceTable.RESTYPE_LEN, nullable = false)
+	private String myResourceType;
+	@Temporal(TemporalType.TIMESTAMP)
+	@Column(name = "CREATED", nullable = false)
+	private Date myCreated;
+	@Column(name = "SAMPLE_COUNT", nullable = false)
+	private int mySampleCount;
+	@Lob
+	@Column(name = "DICT_DATA", nullable = false)
+	private byte[] myDictionary;
+
+	public Long getId() {
+		return myId;
+	}
+
+	public String getResourceType() {
+		return myResourceType;
+	}
+
+	public void setResourceType(String theResourceType) {
+		myResourceType = theResourceType;
+	}
+
+	public Date getCreated() {
+		return myCreated;
+	}
+
+	public void setCreated(Date theCreated) {
+		myCreated = theCreated;
+	}
+
+	/**
+	 * The number of resource versions the dictionary was trained from
+	 */
+	public int getSampleCount() {
+		return mySampleCount;
+	}
+
+	public void setSampleCount(int theSampleCount) {
+		mySampleCount = theSampleCount;
+	}
+
+	public byte[] getDictionary() {
+		return myDictionary;
+	}
+
+	public void setDictionary(byte[] theDictionary) {
+		myDictionary = theDictionary;
+	}
+
+}
@@ -59,6 +59,7 @@ import java.util.Date;
 	"               h.res_text          as res_text,       " +
 	"               h.res_text_vc       as res_text_vc,    " +
 	"               h.res_encoding      as res_encoding,   " +
+	"               h.res_comp_dict_id  as res_comp_dict_id," +
 	"               h.PARTITION_ID      as PARTITION_ID,   " +
 	"               p.SOURCE_URI        as PROV_SOURCE_URI," +
 	"               p.REQUEST_ID        as PROV_REQUEST_ID," +
@@ -106,6 +107,8 @@ public class ResourceSearchView implements IBaseResourceEntity, Serializable {
 	@Column(name = "RES_ENCODING")
 	@Enumerated(EnumType.STRING)
 	private ResourceEncodingEnum myEncoding;
+	@Column(name = "RES_COMP_DICT_ID")
+	private Long myCompressionDictionaryId;
 	@Column(name = "FORCED_PID", length = ForcedId.MAX_FORCED_ID_LENGTH)
 	private String myForcedPid;
 	@Column(name = "PARTITION_ID")
@@ -225,4 +228,8 @@ public class ResourceSearchView implements IBaseResourceEntity, Serializable {
 		return myEncoding;
 	}
 
+	public Long getCompressionDictionaryId() {
+		return myCompressionDictionaryId;
+	}
+
 }
@@ -123,6 +123,8 @@ public class Search implements ICachedSearchDetails, Serializable {
 	private Long myResourceId;
 	@Column(name = "RESOURCE_TYPE", length = 200, nullable = true)
 	private String myResourceType;
+	@Column(name = "RESULTS_CHUNKED", nullable = true)
+	private Boolean myResultsChunked;
 	/**
 	 * Note that this field may have the request partition IDs prepended to it
 	 */
@@ -323,6 +325,18 @@ public class Search implements ICachedSearchDetails, Serializable {
 	/**
 	 * Note that this field may have the request partition IDs prepended to it
 	 */
+	/**
+	 * Returns <code>true</code> if the results of this search are stored as
+	 * {@link SearchResultChunk chunks} instead of as one {@link SearchResult} row per PID
+	 */
+	public boolean isResultsChunked() {
+		return Boolean.TRUE.equals(myResultsChunked);
+	}
+
+	public void setResultsChunked(boolean theResultsChunked) {
+		myResultsChunked = theResultsChunked;
+	}
+
 	public String getSearchQueryString() {
 		return mySearchQueryString;
 	}
@@ -0,0 +1,126 @@
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2023 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ca.uhn.fhir.jpa.entity;
+
+import org.apache.commons.lang3.Validate;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Lob;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+import java.io.Serializable;
+
+/**
+ * A contiguous block of search result PIDs, stored as a single row in encoded form
+ * (see {@link ca.uhn.fhir.jpa.search.cache.SearchResultChunkCodec}) instead of as
+ * one {@link SearchResult} row per PID.
+ *
+ * @since 6.8.0
+ */
+@Entity
+@Table(name = SearchResultChunk.HFJ_SEARCH_RESULT_CHUNK, uniqueConstraints = {
+	@UniqueConstraint(name = "IDX_SEARCHRESCHUNK_ORDER", columnNames = {"SEARCH_PID", "FIRST_ORDER"})
+})
+public class SearchResultChunk implements Serializable {
+
+	public static final String HFJ_SEARCH_RESULT_CHUNK = "HFJ_SEARCH_RESULT_CHUNK";
+	private static final long serialVersionUID = 1L;
+
+	@GeneratedValue(strategy = GenerationType.AUTO, generator = "SEQ_SEARCH_RES_CHUNK")
+	@SequenceGenerator(name = "SEQ_SEARCH_RES_CHUNK", sequenceName = "SEQ_SEARCH_RES_CHUNK")
+	@Id
+	@Column(name = "PID")
+	private Long myId;
+	@Column(name = "SEARCH_PID", nullable = false, updatable = false)
+	private Long mySearchPid;
+	@Column(name = "FIRST_ORDER", nullable = false, updatable = false)
+	private int myFirstOrder;
+	@Column(name = "PID_COUNT", nullable = false, updatable = false)
+	private int myPidCount;
+	@Lob
+	@Column(name = "PID_DATA", nullable = false, updatable = false)
+	private byte[] myPidData;
+
+	/**
+	 * Constructor
+	 */
+	public SearchResultChunk() {
+		// nothing
+	}
+
+	/**
+	 * Constructor
+	 */
+	public SearchResultChunk(Search theSearch) {
+		Validate.notNull(theSearch.getId());
+		mySearchPid = theSearch.getId();
+	}
+
+	public Long getId() {
+		return myId;
+	}
+
+	public Long getSearchPid() {
+		return mySearchPid;
+	}
+
+	/**
+	 * The search order (zero based index within the search results) of the first PID in this chunk
+	 */
+	public int getFirstOrder() {
+		return myFirstOrder;
+	}
+
+	public void setFirstOrder(int theFirstOrder) {
+		myFirstOrder = theFirstOrder;
+	}
+
+	public int getPidCount() {
+		return myPidCount;
+	}
+
+	public void setPidCount(int thePidCount) {
+		myPidCount = thePidCount;
+	}
+
+	public byte[] getPidData() {
+		return myPidData;
+	}
+
+	public void setPidData(byte[] thePidData) {
+		myPidData = thePidData;
+	}
+
+	@Override
+	public String toString() {
+		return new ToStringBuilder(this)
+			.append("search", mySearchPid)
+			.append("firstOrder", myFirstOrder)
+			.append("pidCount", myPidCount)
+			.toString();
+	}
+
+}
@@ -302,6 +302,42 @@ public class HapiFhirJpaMigrationTasks extends BaseMigrationTasks<VersionEnum> {
 			.addColumn("20230622.4", "WARNING_MSG")
 			.nullable()
 			.type(ColumnTypeEnum.STRING, 4000);
+
+		// Trained compression dictionaries for the JSOND resource encoding
+		version.addIdGenerator("20230701.1", "SEQ_RESCOMPDICT_PID");
+		Builder.BuilderAddTableByColumns resCompDict = version.addTableByColumns("20230701.2", "HFJ_RES_COMP_DICT", "PID");
+		resCompDict.addColumn("PID").nonNullable().type(ColumnTypeEnum.LONG);
+		resCompDict.addColumn("RES_TYPE").nonNullable().type(ColumnTypeEnum.STRING, ResourceTable.RESTYPE_LEN);
+		resCompDict.addColumn("CREATED").nonNullable().type(ColumnTypeEnum.DATE_TIMESTAMP);
+		resCompDict.addColumn("SAMPLE_COUNT").nonNullable().type(ColumnTypeEnum.INT);
+		resCompDict.addColumn("DICT_DATA").nonNullable().type(ColumnTypeEnum.BLOB);
+		resCompDict.addIndex("20230701.3", "IDX_RESCOMPDICT_TYPE").unique(false).withColumns("RES_TYPE", "PID");
+
+		version
+			.onTable("HFJ_RES_VER")
+			.addColumn("20230701.4", "RES_COMP_DICT_ID")
+			.nullable()
+			.type(ColumnTypeEnum.LONG);
+
+		version
+			.onTable("HFJ_RESOURCE")
+			.addColumn("20230702.1", "SP_INDEX_DIGEST")
+			.nullable()
+			.type(ColumnTypeEnum.STRING, 64);
+
+		// Search results stored as encoded chunks of PIDs
+		version.addIdGenerator("20230703.1", "SEQ_SEARCH_RES_CHUNK");
+		Builder.BuilderAddTableByColumns searchResChunk = version.addTableByColumns("20230703.2", "HFJ_SEARCH_RESULT_CHUNK", "PID");
+		searchResChunk.addColumn("PID").nonNullable().type(ColumnTypeEnum.LONG);
+		searchResChunk.addColumn("SEARCH_PID").nonNullable().type(ColumnTypeEnum.LONG);
+		searchResChunk.addColumn("FIRST_ORDER").nonNullable().type(ColumnTypeEnum.INT);
+		searchResChunk.addColumn("PID_COUNT").nonNullable().type(ColumnTypeEnum.INT);
+		searchResChunk.addColumn("PID_DATA").nonNullable().type(ColumnTypeEnum.BLOB);
+		searchResChunk.addIndex("20230703.3", "IDX_SEARCHRESCHUNK_ORDER").unique(true).withColumns("SEARCH_PID", "FIRST_ORDER");
+		version.onTable("HFJ_SEARCH")
+			.addColumn("20230703.4", "RESULTS_CHUNKED")
+			.nullable()
+			.type(ColumnTypeEnum.BOOLEAN);
 	}
 
 	protected void init660() {
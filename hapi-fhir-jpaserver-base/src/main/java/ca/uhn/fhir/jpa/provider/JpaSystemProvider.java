@@ -23,6 +23,7 @@ import ca.uhn.fhir.batch2.jobs.reindex.ReindexProvider;
 import ca.uhn.fhir.jpa.api.dao.IFhirSystemDao;
 import ca.uhn.fhir.jpa.model.util.JpaConstants;
 import ca.uhn.fhir.model.api.annotation.Description;
+import ca.uhn.fhir.parser.IBundleEntryIterator;
 import ca.uhn.fhir.rest.annotation.Operation;
 import ca.uhn.fhir.rest.annotation.OperationParam;
 import ca.uhn.fhir.rest.annotation.Transaction;
@@ -30,6 +31,7 @@ import ca.uhn.fhir.rest.annotation.TransactionParam;
 import ca.uhn.fhir.rest.api.server.RequestDetails;
 import ca.uhn.fhir.rest.server.provider.ProviderConstants;
 import ca.uhn.fhir.rest.server.servlet.ServletRequestDetails;
+import ca.uhn.fhir.util.BundleUtil;
 import ca.uhn.fhir.util.ParametersUtil;
 import org.hl7.fhir.instance.model.api.IBaseBundle;
 import org.hl7.fhir.instance.model.api.IBaseParameters;
@@ -125,11 +127,24 @@ public final class JpaSystemProvider<T, MT> extends BaseJpaSystemProvider<T, MT>
 
 	@SuppressWarnings("unchecked")
 	@Transaction
-	public IBaseBundle transaction(RequestDetails theRequestDetails, @TransactionParam IBaseBundle theResources) {
+	public IBaseBundle transaction(RequestDetails theRequestDetails, @TransactionParam IBundleEntryIterator<?> theResources) {
 		startRequest(((ServletRequestDetails) theRequestDetails).getServletRequest());
 		try {
 			IFhirSystemDao<T, MT> dao = getDao();
-			return (IBaseBundle) dao.transaction(theRequestDetails, (T) theResources);
+
+			/*
+			 * If the server is parsing the request Bundle incrementally and this is a batch, process
+			 * the entries as they are parsed. Anything else needs the complete Bundle.
+			 */
+			if (theRequestDetails.getServer().isIncrementalBundleEntryParsing()) {
+				String bundleType = BundleUtil.getBundleType(getContext(), theResources.getBundle());
+				if ("batch".equals(bundleType)) {
+					return (IBaseBundle) dao.batchIncrementally(theRequestDetails, theResources);
+				}
+			}
+
+			IBaseBundle bundle = BundleUtil.toBundle(getContext(), theResources);
+			return (IBaseBundle) dao.transaction(theRequestDetails, (T) bundle);
 		} finally {
 			endRequest(((ServletRequestDetails) theRequestDetails).getServletRequest());
 		}
@@ -0,0 +1,135 @@
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2023 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ca.uhn.fhir.jpa.provider;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.RuntimeResourceDefinition;
+import ca.uhn.fhir.i18n.Msg;
+import ca.uhn.fhir.jpa.model.util.JpaConstants;
+import ca.uhn.fhir.jpa.search.SearchExplainSvc;
+import ca.uhn.fhir.jpa.searchparam.MatchUrlService;
+import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
+import ca.uhn.fhir.model.api.annotation.Description;
+import ca.uhn.fhir.rest.annotation.IdParam;
+import ca.uhn.fhir.rest.annotation.Operation;
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
+import ca.uhn.fhir.util.ParametersUtil;
+import ca.uhn.fhir.util.UrlUtil;
+import com.google.common.primitives.Ints;
+import org.apache.commons.lang3.Validate;
+import org.hl7.fhir.instance.model.api.IBaseParameters;
+import org.hl7.fhir.instance.model.api.IIdType;
+
+import javax.annotation.Nonnull;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Provides the <code>$explain</code> operation, which can be invoked at the type level for any
+ * resource type with the same parameters as a search (e.g. <code>GET [base]/Patient/$explain?family=smith</code>).
+ * The search is executed, and instead of the results the response contains the generated SQL, the
+ * database execution plan, and the time spent in each phase of the search.
+ * <p>
+ * This operation exposes details about the database schema and the stored data, so it is not
+ * registered by default and should only be made available to administrators.
+ * </p>
+ *
+ * @see SearchExplainSvc
+ * @since 6.8.0
+ */
+public class SearchExplainProvider {
+
+	private static final Set<String> ourIgnoredParameters = Set.of(Constants.PARAM_FORMAT, Constants.PARAM_PRETTY);
+
+	private final FhirContext myFhirContext;
+	private final SearchExplainSvc mySearchExplainSvc;
+	private final MatchUrlService myMatchUrlService;
+
+	/**
+	 * Constructor
+	 */
+	public SearchExplainProvider(@Nonnull FhirContext theFhirContext, @Nonnull SearchExplainSvc theSearchExplainSvc, @Nonnull MatchUrlService theMatchUrlService) {
+		Validate.notNull(theFhirContext);
+		Validate.notNull(theSearchExplainSvc);
+		Validate.notNull(theMatchUrlService);
+		myFhirContext = theFhirContext;
+		mySearchExplainSvc = theSearchExplainSvc;
+		myMatchUrlService = theMatchUrlService;
+	}
+
+	@Operation(name = JpaConstants.OPERATION_EXPLAIN, idempotent = true, global = true)
+	@Description(shortDefinition = "Executes a search using the given search parameters and reports the generated SQL, the database execution plan and the time spent in each phase of the search")
+	public IBaseParameters explain(
+		@IdParam(optional = true) IIdType theId,
+		RequestDetails theRequestDetails
+	) {
+		if (theId != null) {
+			throw new InvalidRequestException(Msg.code(2403) + "The " + JpaConstants.OPERATION_EXPLAIN + " operation can only be invoked at the type level");
+		}
+
+		String resourceType = theRequestDetails.getResourceName();
+		String query = toQueryString(theRequestDetails.getParameters());
+		RuntimeResourceDefinition resourceDefinition = myFhirContext.getResourceDefinition(resourceType);
+		SearchParameterMap params = myMatchUrlService.translateMatchUrl(resourceType + "?" + query, resourceDefinition, MatchUrlService.processIncludes());
+
+		SearchExplainSvc.SearchExplanation explanation = mySearchExplainSvc.explain(resourceType, params, theRequestDetails);
+
+		IBaseParameters retVal = ParametersUtil.newInstance(myFhirContext);
+		ParametersUtil.addParameterToParametersCode(myFhirContext, retVal, "resourceType", explanation.getResourceType());
+		ParametersUtil.addParameterToParametersString(myFhirContext, retVal, "query", query);
+		if (explanation.getSql() != null) {
+			ParametersUtil.addParameterToParametersString(myFhirContext, retVal, "sql", explanation.getSql());
+		}
+		for (String next : explanation.getPlan()) {
+			ParametersUtil.addParameterToParametersString(myFhirContext, retVal, "plan", next);
+		}
+		ParametersUtil.addParameterToParametersInteger(myFhirContext, retVal, "matchCount", explanation.getMatchCount());
+		ParametersUtil.addParameterToParametersInteger(myFhirContext, retVal, "includeCount", explanation.getIncludeCount());
+		ParametersUtil.addParameterToParametersInteger(myFhirContext, retVal, "pidQueryMillis", Ints.saturatedCast(explanation.getPidQueryMillis()));
+		ParametersUtil.addParameterToParametersInteger(myFhirContext, retVal, "includeLoadMillis", Ints.saturatedCast(explanation.getIncludeLoadMillis()));
+		ParametersUtil.addParameterToParametersInteger(myFhirContext, retVal, "resourceFetchMillis", Ints.saturatedCast(explanation.getResourceFetchMillis()));
+		ParametersUtil.addParameterToParametersInteger(myFhirContext, retVal, "parseMillis", Ints.saturatedCast(explanation.getParseMillis()));
+		ParametersUtil.addParameterToParametersInteger(myFhirContext, retVal, "serializationMillis", Ints.saturatedCast(explanation.getSerializationMillis()));
+		ParametersUtil.addParameterToParametersInteger(myFhirContext, retVal, "serializedBytes", Ints.saturatedCast(explanation.getSerializedBytes()));
+		ParametersUtil.addParameterToParametersInteger(myFhirContext, retVal, "totalMillis", Ints.saturatedCast(explanation.getTotalMillis()));
+		return retVal;
+	}
+
+	private static String toQueryString(Map<String, String[]> theParameters) {
+		StringBuilder b = new StringBuilder();
+		for (Map.Entry<String, String[]> next : theParameters.entrySet()) {
+			if (ourIgnoredParameters.contains(next.getKey())) {
+				continue;
+			}
+			for (String nextValue : next.getValue()) {
+				if (b.length() > 0) {
+					b.append('&');
+				}
+				b.append(UrlUtil.escapeUrlParam(next.getKey()));
+				b.append('=');
+				b.append(UrlUtil.escapeUrlParam(nextValue));
+			}
+		}
+		return b.toString();
+	}
+
+}
@@ -0,0 +1,106 @@
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2023 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ca.uhn.fhir.jpa.provider;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.jpa.model.util.JpaConstants;
+import ca.uhn.fhir.jpa.search.SearchIndexAdvisorSvc;
+import ca.uhn.fhir.model.api.annotation.Description;
+import ca.uhn.fhir.rest.annotation.Operation;
+import ca.uhn.fhir.rest.annotation.OperationParam;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.util.ParametersUtil;
+import com.google.common.primitives.Ints;
+import org.apache.commons.lang3.Validate;
+import org.hl7.fhir.instance.model.api.IBase;
+import org.hl7.fhir.instance.model.api.IBaseParameters;
+import org.hl7.fhir.instance.model.api.IPrimitiveType;
+
+import javax.annotation.Nonnull;
+import java.util.List;
+
+/**
+ * Provides the <code>$search-index-advisor</code> operation, which recommends combo search
+ * parameters based on the search workload recorded by the server.
+ *
+ * @see SearchIndexAdvisorSvc
+ * @since 6.8.0
+ */
+public class SearchIndexAdvisorProvider {
+
+	private static final int DEFAULT_MINIMUM_SEARCH_COUNT = 10;
+	private static final int DEFAULT_CANDIDATE_COUNT = 10;
+
+	private final FhirContext myFhirContext;
+	private final SearchIndexAdvisorSvc mySearchIndexAdvisorSvc;
+
+	/**
+	 * Constructor
+	 */
+	public SearchIndexAdvisorProvider(@Nonnull FhirContext theFhirContext, @Nonnull SearchIndexAdvisorSvc theSearchIndexAdvisorSvc) {
+		Validate.notNull(theFhirContext);
+		Validate.notNull(theSearchIndexAdvisorSvc);
+		myFhirContext = theFhirContext;
+		mySearchIndexAdvisorSvc = theSearchIndexAdvisorSvc;
+	}
+
+	@Operation(name = JpaConstants.OPERATION_SEARCH_INDEX_ADVISOR, idempotent = false)
+	@Description(shortDefinition = "Recommends combo search parameters based on the recorded search workload, and optionally creates them")
+	public IBaseParameters searchIndexAdvisor(
+		@OperationParam(name = "minimumSearchCount", typeName = "integer", min = 0, max = 1) IPrimitiveType<Integer> theMinimumSearchCount,
+		@OperationParam(name = "count", typeName = "integer", min = 0, max = 1) IPrimitiveType<Integer> theCount,
+		@OperationParam(name = "create", typeName = "boolean", min = 0, max = 1) IPrimitiveType<Boolean> theCreate,
+		RequestDetails theRequestDetails
+	) {
+		int minimumSearchCount = theMinimumSearchCount != null && theMinimumSearchCount.getValue() != null ? theMinimumSearchCount.getValue() : DEFAULT_MINIMUM_SEARCH_COUNT;
+		int count = theCount != null && theCount.getValue() != null ? theCount.getValue() : DEFAULT_CANDIDATE_COUNT;
+		boolean create = theCreate != null && Boolean.TRUE.equals(theCreate.getValue());
+
+		List<SearchIndexAdvisorSvc.ComboCandidate> candidates = mySearchIndexAdvisorSvc.rankCandidates(minimumSearchCount);
+		if (candidates.size() > count) {
+			candidates = candidates.subList(0, count);
+		}
+
+		IBaseParameters retVal = ParametersUtil.newInstance(myFhirContext);
+		for (SearchIndexAdvisorSvc.ComboCandidate next : candidates) {
+			String reindexJobId = null;
+			if (create) {
+				reindexJobId = mySearchIndexAdvisorSvc.createComboSearchParameter(next, theRequestDetails);
+			}
+
+			IBase candidate = ParametersUtil.addParameterToParameters(myFhirContext, retVal, "candidate");
+			ParametersUtil.addPartCode(myFhirContext, candidate, "resourceType", next.getResourceType());
+			for (String nextParamName : next.getParamNames()) {
+				ParametersUtil.addPartString(myFhirContext, candidate, "parameter", nextParamName);
+			}
+			ParametersUtil.addPartInteger(myFhirContext, candidate, "searchCount", Ints.saturatedCast(next.getSearchCount()));
+			ParametersUtil.addPartInteger(myFhirContext, candidate, "averageMillis", Ints.saturatedCast(next.getAverageMillis()));
+			ParametersUtil.addPartDecimal(myFhirContext, candidate, "estimatedSavingsMillis", (double) next.getEstimatedSavingsMillis());
+			if (next.getCreatedSearchParameterId() != null) {
+				ParametersUtil.addPartString(myFhirContext, candidate, "searchParameter", next.getCreatedSearchParameterId().getValue());
+			}
+			if (reindexJobId != null) {
+				ParametersUtil.addPartString(myFhirContext, candidate, "reindexJobId", reindexJobId);
+			}
+		}
+		return retVal;
+	}
+
+}
@@ -40,6 +40,7 @@ import ca.uhn.fhir.jpa.entity.SearchTypeEnum;
 import ca.uhn.fhir.jpa.model.dao.JpaPid;
 import ca.uhn.fhir.jpa.model.entity.BaseHasResource;
 import ca.uhn.fhir.jpa.model.entity.ResourceHistoryTable;
+import ca.uhn.fhir.jpa.model.search.SearchStatusEnum;
 import ca.uhn.fhir.jpa.partition.IRequestPartitionHelperSvc;
 import ca.uhn.fhir.jpa.search.cache.ISearchCacheSvc;
 import ca.uhn.fhir.jpa.search.cache.SearchCacheStatusEnum;
@@ -64,6 +65,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 import java.util.ArrayList;
@@ -107,6 +109,8 @@ public class PersistedJpaBundleProvider implements IBundleProvider {
 	private MemoryCacheService myMemoryCacheService;
 	@Autowired
 	private IJpaStorageResourceParser myJpaStorageResourceParser;
+	@Autowired
+	private SearchPagePrefetchSvc mySearchPagePrefetchSvc;
 	/*
 	 * Non autowired fields (will be different for every instance
 	 * of this class, since it's a prototype
@@ -233,6 +237,25 @@ public class PersistedJpaBundleProvider implements IBundleProvider {
 		final ISearchBuilder sb = mySearchBuilderFactory.newSearchBuilder(dao, resourceName, resourceType);
 
 		RequestPartitionId requestPartitionId = getRequestPartitionId();
+		SearchPagePrefetchSvc.PrefetchedPage prefetchedPage = null;
+		if (mySearchPagePrefetchSvc != null) {
+			prefetchedPage = mySearchPagePrefetchSvc.take(myUuid, requestPartitionId, theFromIndex, theToIndex);
+		}
+
+		if (prefetchedPage != null) {
+			SearchPagePrefetchSvc.PrefetchedPage page = prefetchedPage;
+			final List<JpaPid> pidsSubList = new ArrayList<>(page.getResourcePids());
+			return myTxService
+				.withRequest(myRequest)
+				.withRequestPartitionId(requestPartitionId)
+				.execute(() -> {
+					if (mySearchPagePrefetchSvc.isUnchanged(page)) {
+						return toResourceList(sb, pidsSubList, page.getResources());
+					}
+					return toResourceList(sb, pidsSubList);
+				});
+		}
+
 		final List<JpaPid> pidsSubList = mySearchCoordinatorSvc.getResources(myUuid, theFromIndex, theToIndex, myRequest, requestPartitionId);
 		return myTxService
 			.withRequest(myRequest)
@@ -242,6 +265,29 @@ public class PersistedJpaBundleProvider implements IBundleProvider {
 			});
 	}
 
+	/**
+	 * If prefetching is enabled, starts loading the page following the given one in the
+	 * background. This is only done if the search has already found enough results to
+	 * fill that page, so prefetching never resumes a search.
+	 */
+	protected void prefetchNextPage(int theFromIndex, int theToIndex) {
+		Search search = getSearchEntity();
+		if (mySearchPagePrefetchSvc == null || search == null || search.getSearchType() == SearchTypeEnum.HISTORY || myStorageSettings.getSearchPagePrefetchMaximumSize() == 0) {
+			return;
+		}
+
+		int nextToIndex = theToIndex + (theToIndex - theFromIndex);
+		if (search.getTotalCount() != null) {
+			nextToIndex = Math.min(nextToIndex, search.getTotalCount());
+		}
+		int available = search.getNumFound() - search.getNumBlocked();
+		if (theToIndex >= available || (search.getStatus() != SearchStatusEnum.FINISHED && nextToIndex > available)) {
+			return;
+		}
+
+		mySearchPagePrefetchSvc.prefetch(myUuid, search.getResourceType(), getRequestPartitionId(), theToIndex, nextToIndex);
+	}
+
 	/**
 	 * Returns false if the entity can't be found
 	 */
@@ -350,6 +396,8 @@ public class PersistedJpaBundleProvider implements IBundleProvider {
 				 */
 				if (retVal.size() < theToIndex - theFromIndex) {
 					mySearchEntity = null;
+				} else {
+					prefetchNextPage(theFromIndex, theToIndex);
 				}
 				return retVal;
 		}
@@ -418,6 +466,14 @@ public class PersistedJpaBundleProvider implements IBundleProvider {
 	// Note: Leave as protected, HSPC depends on this
 	@SuppressWarnings("WeakerAccess")
 	protected List<IBaseResource> toResourceList(ISearchBuilder theSearchBuilder, List<JpaPid> thePids) {
+		return toResourceList(theSearchBuilder, thePids, null);
+	}
+
+	/**
+	 * @param thePrefetchedResources If not <code>null</code>, the already loaded resources for the given PIDs,
+	 *                               in which case only the includes are loaded
+	 */
+	private List<IBaseResource> toResourceList(ISearchBuilder theSearchBuilder, List<JpaPid> thePids, @Nullable List<IBaseResource> thePrefetchedResources) {
 
 		List<JpaPid> includedPidList = new ArrayList<>();
 		if (mySearchEntity.getSearchType() == SearchTypeEnum.SEARCH) {
@@ -459,7 +515,14 @@ public class PersistedJpaBundleProvider implements IBundleProvider {
 
 		// Execute the query and make sure we return distinct results
 		List<IBaseResource> resources = new ArrayList<>();
-		theSearchBuilder.loadResourcesByPid(thePids, includedPidList, resources, false, myRequest);
+		if (thePrefetchedResources == null) {
+			theSearchBuilder.loadResourcesByPid(thePids, includedPidList, resources, false, myRequest);
+		} else {
+			resources.addAll(thePrefetchedResources);
+			if (!includedPidList.isEmpty()) {
+				theSearchBuilder.loadResourcesByPid(includedPidList, includedPidList, resources, false, myRequest);
+			}
+		}
 
 		resources = ServerInterceptorUtil.fireStoragePreshowResource(resources, myRequest, myInterceptorBroadcaster);
 
@@ -30,6 +30,7 @@ import ca.uhn.fhir.jpa.util.QueryParameterUtils;
 import ca.uhn.fhir.model.api.ResourceMetadataKeyEnum;
 import ca.uhn.fhir.model.valueset.BundleEntrySearchModeEnum;
 import ca.uhn.fhir.rest.api.server.RequestDetails;
+import com.google.common.primitives.Ints;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -109,6 +110,10 @@ public class PersistedJpaSearchFirstPageBundleProvider extends PersistedJpaBundl
 		}
 		ourLog.trace("Loaded resources to return");
 
+		if (totalCountMatch >= totalCountWanted) {
+			prefetchNextPage(theFromIndex, theToIndex);
+		}
+
 		return retVal;
 	}
 
@@ -131,4 +136,17 @@ public class PersistedJpaSearchFirstPageBundleProvider extends PersistedJpaBundl
 		return super.size();
 	}
 
+	@Override
+	public Integer getEstimatedSize() {
+		if (size() != null) {
+			return null;
+		}
+		Long estimatedCount = mySearchTask.getEstimatedCount();
+		if (estimatedCount == null) {
+			return null;
+		}
+		// The estimate can't be lower than the number of results we've already seen
+		return Ints.saturatedCast(Math.max(estimatedCount, getSearchEntity().getNumFound()));
+	}
+
 }
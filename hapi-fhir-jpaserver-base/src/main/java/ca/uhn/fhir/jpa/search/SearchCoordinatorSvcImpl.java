@@ -119,6 +119,7 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc<JpaPid> {
 	private long myMaxMillisToWaitForRemoteResults = DateUtils.MILLIS_PER_MINUTE;
 	private boolean myNeverUseLocalSearchForUnitTests;
 	private int mySyncSize = DEFAULT_SYNC_SIZE;
+	private SearchWorkloadCollector mySearchWorkloadCollector;
 
 	/**
 	 * Constructor
@@ -158,6 +159,15 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc<JpaPid> {
 		myStorageInterceptorHooks = new StorageInterceptorHooksFacade(myInterceptorBroadcaster);
 	}
 
+	/**
+	 * If set, searches will be recorded in the given collector when workload collection is enabled
+	 *
+	 * @see JpaStorageSettings#setSearchWorkloadCollectionEnabled(boolean)
+	 */
+	public void setSearchWorkloadCollector(SearchWorkloadCollector theSearchWorkloadCollector) {
+		mySearchWorkloadCollector = theSearchWorkloadCollector;
+	}
+
 	@VisibleForTesting
 	Set<String> getActiveSearchIds() {
 		return myIdToSearchTask.keySet();
@@ -320,6 +330,21 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc<JpaPid> {
 
 	@Override
 	public IBundleProvider registerSearch(final IFhirResourceDao<?> theCallingDao, final SearchParameterMap theParams, String theResourceType, CacheControlDirective theCacheControlDirective, RequestDetails theRequestDetails, RequestPartitionId theRequestPartitionId) {
+		if (mySearchWorkloadCollector == null || !mySearchWorkloadCollector.isEnabled()) {
+			return doRegisterSearch(theCallingDao, theParams, theResourceType, theCacheControlDirective, theRequestDetails, theRequestPartitionId);
+		}
+
+		StopWatch sw = new StopWatch();
+		IBundleProvider retVal = doRegisterSearch(theCallingDao, theParams, theResourceType, theCacheControlDirective, theRequestDetails, theRequestPartitionId);
+		if (retVal instanceof PersistedJpaSearchFirstPageBundleProvider) {
+			// Wait for the first page so that the recorded time reflects what the client sees
+			retVal.size();
+		}
+		mySearchWorkloadCollector.recordSearch(theResourceType, theParams, sw.getMillis());
+		return retVal;
+	}
+
+	private IBundleProvider doRegisterSearch(final IFhirResourceDao<?> theCallingDao, final SearchParameterMap theParams, String theResourceType, CacheControlDirective theCacheControlDirective, RequestDetails theRequestDetails, RequestPartitionId theRequestPartitionId) {
 		final String searchUuid = UUID.randomUUID().toString();
 
 		final String queryString = theParams.toNormalizedQueryString(myContext);
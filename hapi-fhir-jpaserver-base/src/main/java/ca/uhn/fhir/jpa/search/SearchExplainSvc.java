@@ -0,0 +1,352 @@
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2023 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ca.uhn.fhir.jpa.search;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.i18n.Msg;
+import ca.uhn.fhir.interceptor.model.RequestPartitionId;
+import ca.uhn.fhir.jpa.api.config.JpaStorageSettings;
+import ca.uhn.fhir.jpa.api.dao.DaoRegistry;
+import ca.uhn.fhir.jpa.api.dao.IFhirResourceDao;
+import ca.uhn.fhir.jpa.dao.IJpaStorageResourceParser;
+import ca.uhn.fhir.jpa.dao.IResultIterator;
+import ca.uhn.fhir.jpa.dao.ISearchBuilder;
+import ca.uhn.fhir.jpa.dao.SearchBuilderFactory;
+import ca.uhn.fhir.jpa.dao.data.IResourceSearchViewDao;
+import ca.uhn.fhir.jpa.dao.data.IResourceTagDao;
+import ca.uhn.fhir.jpa.dao.tx.HapiTransactionService;
+import ca.uhn.fhir.jpa.entity.ResourceSearchView;
+import ca.uhn.fhir.jpa.model.dao.JpaPid;
+import ca.uhn.fhir.jpa.model.entity.ResourceTag;
+import ca.uhn.fhir.jpa.model.search.SearchRuntimeDetails;
+import ca.uhn.fhir.jpa.partition.IRequestPartitionHelperSvc;
+import ca.uhn.fhir.jpa.search.builder.SearchBuilder;
+import ca.uhn.fhir.jpa.search.builder.sql.GeneratedSql;
+import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
+import ca.uhn.fhir.jpa.util.QueryChunker;
+import ca.uhn.fhir.jpa.util.SqlQuery;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
+import ca.uhn.fhir.util.BundleBuilder;
+import ca.uhn.fhir.util.StopWatch;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import javax.annotation.Nullable;
+import javax.persistence.EntityManager;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * Executes a search and reports how it was processed: the SQL used to find the matching
+ * resource PIDs, the execution plan the database chose for that SQL, and the time spent in
+ * each phase of the search.
+ * <p>
+ * The phases are timed separately, so unlike a normal search the resources are fetched
+ * and parsed sequentially on the calling thread. The search result cache is bypassed, and
+ * the resources themselves are not returned, only the size of their serialized form.
+ * </p>
+ *
+ * @since 6.8.0
+ */
+public class SearchExplainSvc {
+
+	@Autowired
+	private FhirContext myFhirContext;
+	@Autowired
+	private DaoRegistry myDaoRegistry;
+	@Autowired
+	private SearchBuilderFactory<JpaPid> mySearchBuilderFactory;
+	@Autowired
+	private IRequestPartitionHelperSvc myRequestPartitionHelperSvc;
+	@Autowired
+	private HapiTransactionService myTxService;
+	@Autowired
+	private JpaStorageSettings myStorageSettings;
+	@Autowired
+	private EntityManager myEntityManager;
+	@Autowired
+	private IResourceSearchViewDao myResourceSearchViewDao;
+	@Autowired
+	private IResourceTagDao myResourceTagDao;
+	@Autowired
+	private IJpaStorageResourceParser myJpaStorageResourceParser;
+
+	/**
+	 * Executes the given search and returns a report describing how it was processed
+	 *
+	 * @param theResourceType The resource type to search for
+	 * @param theParams       The search parameters. At most <code>_count</code> matches are loaded, and never
+	 *                        more than the server's maximum page size.
+	 */
+	public SearchExplanation explain(String theResourceType, SearchParameterMap theParams, RequestDetails theRequestDetails) {
+		StopWatch totalStopWatch = new StopWatch();
+
+		IFhirResourceDao<?> dao = myDaoRegistry.getResourceDao(theResourceType);
+		int maxPageSize = getMaximumPageSize(theRequestDetails);
+		int maxResults = theParams.getCount() != null ? Math.min(theParams.getCount(), maxPageSize) : maxPageSize;
+		theParams.setLoadSynchronous(true);
+
+		RequestPartitionId requestPartitionId = myRequestPartitionHelperSvc.determineReadPartitionForRequestForSearchType(theRequestDetails, theResourceType, theParams, null);
+
+		SearchExplanation retVal = new SearchExplanation(theResourceType);
+		List<IBaseResource> resources = myTxService
+			.withRequest(theRequestDetails)
+			.withRequestPartitionId(requestPartitionId)
+			.readOnly()
+			.execute(() -> {
+
+				// Generated SQL and the database plan for it
+				ISearchBuilder<JpaPid> sqlSearchBuilder = mySearchBuilderFactory.newSearchBuilder(dao, theResourceType, dao.getResourceType());
+				if (sqlSearchBuilder instanceof SearchBuilder) {
+					sqlSearchBuilder.setMaxResultsToFetch(maxResults);
+					GeneratedSql generatedSql = ((SearchBuilder) sqlSearchBuilder).generateSearchSql(theParams, theRequestDetails, requestPartitionId);
+					if (generatedSql != null && !generatedSql.isMatchNothing()) {
+						List<String> bindVariables = generatedSql.getBindVariables().stream().map(String::valueOf).collect(Collectors.toList());
+						retVal.setSql(new SqlQuery(generatedSql.getSql(), bindVariables, 0, 0, null, 0, requestPartitionId).getSql(true, true));
+						retVal.setPlan(((SearchBuilder) sqlSearchBuilder).explainSearchSql(generatedSql));
+					}
+				}
+
+				// Phase: PID query
+				StopWatch sw = new StopWatch();
+				ISearchBuilder<JpaPid> searchBuilder = mySearchBuilderFactory.newSearchBuilder(dao, theResourceType, dao.getResourceType());
+				searchBuilder.setMaxResultsToFetch(maxResults);
+				SearchRuntimeDetails searchRuntimeDetails = new SearchRuntimeDetails(theRequestDetails, UUID.randomUUID().toString());
+				searchRuntimeDetails.setLoadSynchronous(true);
+				List<JpaPid> pids = new ArrayList<>();
+				try (IResultIterator<JpaPid> resultIter = searchBuilder.createQuery(theParams, searchRuntimeDetails, theRequestDetails, requestPartitionId)) {
+					while (resultIter.hasNext() && pids.size() < maxResults) {
+						pids.add(resultIter.next());
+					}
+				} catch (IOException e) {
+					throw new InternalErrorException(Msg.code(2402) + e);
+				}
+				retVal.setMatchCount(pids.size());
+				retVal.setPidQueryMillis(sw.getMillisAndRestart());
+
+				// Phase: _include and _revinclude
+				Set<JpaPid> allPids = new LinkedHashSet<>(pids);
+				Integer maxIncludes = myStorageSettings.getMaximumIncludesToLoadPerPage();
+				Set<JpaPid> includedPids = searchBuilder.loadIncludes(myFhirContext, myEntityManager, pids, theParams.getRevIncludes(), true, theParams.getLastUpdated(), "(explain)", theRequestDetails, maxIncludes);
+				allPids.addAll(includedPids);
+				if (maxIncludes != null) {
+					maxIncludes -= includedPids.size();
+				}
+				if (theParams.getEverythingMode() == null && (maxIncludes == null || maxIncludes > 0)) {
+					allPids.addAll(searchBuilder.loadIncludes(myFhirContext, myEntityManager, allPids, theParams.getIncludes(), false, theParams.getLastUpdated(), "(explain)", theRequestDetails, maxIncludes));
+				}
+				retVal.setIncludeCount(allPids.size() - pids.size());
+				retVal.setIncludeLoadMillis(sw.getMillisAndRestart());
+
+				// Phase: Fetch the stored resource bodies and tags
+				List<ResourceSearchView> entities = new ArrayList<>();
+				new QueryChunker<Long>().chunk(JpaPid.toLongList(allPids), t -> entities.addAll(myResourceSearchViewDao.findByResourceIds(t)));
+				List<Long> pidsWithTags = entities.stream().filter(ResourceSearchView::isHasTags).map(ResourceSearchView::getId).collect(Collectors.toList());
+				Map<Long, Collection<ResourceTag>> tags = new HashMap<>();
+				new QueryChunker<Long>().chunk(pidsWithTags, t -> {
+					for (ResourceTag next : myResourceTagDao.findByResourceIds(t)) {
+						tags.computeIfAbsent(next.getResourceId(), id -> new ArrayList<>()).add(next);
+					}
+				});
+				retVal.setResourceFetchMillis(sw.getMillisAndRestart());
+
+				// Phase: Parse
+				List<IBaseResource> parsed = new ArrayList<>(entities.size());
+				for (ResourceSearchView next : entities) {
+					if (next.getDeleted() != null) {
+						continue;
+					}
+					Class<? extends IBaseResource> resourceType = myFhirContext.getResourceDefinition(next.getResourceType()).getImplementingClass();
+					IBaseResource resource = myJpaStorageResourceParser.toResource(resourceType, next, tags.get(next.getId()), false);
+					if (resource != null) {
+						parsed.add(resource);
+					}
+				}
+				retVal.setParseMillis(sw.getMillis());
+				return parsed;
+			});
+
+		// Phase: Serialize
+		StopWatch sw = new StopWatch();
+		BundleBuilder bundleBuilder = new BundleBuilder(myFhirContext);
+		bundleBuilder.setType("searchset");
+		resources.forEach(bundleBuilder::addCollectionEntry);
+		String encoded = myFhirContext.newJsonParser().encodeResourceToString(bundleBuilder.getBundle());
+		retVal.setSerializedBytes(encoded.getBytes(StandardCharsets.UTF_8).length);
+		retVal.setSerializationMillis(sw.getMillis());
+
+		retVal.setTotalMillis(totalStopWatch.getMillis());
+		return retVal;
+	}
+
+	/**
+	 * Returns the maximum page size of the server handling the request, or the largest page the
+	 * search builder loads at once if the server doesn't limit the page size
+	 */
+	private static int getMaximumPageSize(RequestDetails theRequestDetails) {
+		if (theRequestDetails != null && theRequestDetails.getServer() != null) {
+			Integer maxPageSize = theRequestDetails.getServer().getMaximumPageSize();
+			if (maxPageSize != null) {
+				return maxPageSize;
+			}
+		}
+		return SearchBuilder.getMaximumPageSize();
+	}
+
+	public static class SearchExplanation {
+
+		private final String myResourceType;
+		private String mySql;
+		private List<String> myPlan;
+		private int myMatchCount;
+		private int myIncludeCount;
+		private long myPidQueryMillis;
+		private long myIncludeLoadMillis;
+		private long myResourceFetchMillis;
+		private long myParseMillis;
+		private long mySerializationMillis;
+		private long mySerializedBytes;
+		private long myTotalMillis;
+
+		public SearchExplanation(String theResourceType) {
+			myResourceType = theResourceType;
+		}
+
+		public String getResourceType() {
+			return myResourceType;
+		}
+
+		/**
+		 * Returns the SQL used to find the matching resource PIDs, with the bind variables
+		 * inlined, or <code>null</code> if the search does not use SQL against the index tables
+		 * (e.g. a fulltext search) or is known to match nothing without querying the database.
+		 */
+		@Nullable
+		public String getSql() {
+			return mySql;
+		}
+
+		public void setSql(String theSql) {
+			mySql = theSql;
+		}
+
+		/**
+		 * Returns the rows of the database execution plan for {@link #getSql()}, or an empty list
+		 * if the plan could not be obtained (EXPLAIN is only supported on Postgres, MySQL, MariaDB and H2)
+		 */
+		public List<String> getPlan() {
+			if (myPlan == null) {
+				return Collections.emptyList();
+			}
+			return myPlan;
+		}
+
+		public void setPlan(List<String> thePlan) {
+			myPlan = thePlan;
+		}
+
+		public int getMatchCount() {
+			return myMatchCount;
+		}
+
+		public void setMatchCount(int theMatchCount) {
+			myMatchCount = theMatchCount;
+		}
+
+		public int getIncludeCount() {
+			return myIncludeCount;
+		}
+
+		public void setIncludeCount(int theIncludeCount) {
+			myIncludeCount = theIncludeCount;
+		}
+
+		public long getPidQueryMillis() {
+			return myPidQueryMillis;
+		}
+
+		public void setPidQueryMillis(long thePidQueryMillis) {
+			myPidQueryMillis = thePidQueryMillis;
+		}
+
+		public long getIncludeLoadMillis() {
+			return myIncludeLoadMillis;
+		}
+
+		public void setIncludeLoadMillis(long theIncludeLoadMillis) {
+			myIncludeLoadMillis = theIncludeLoadMillis;
+		}
+
+		public long getResourceFetchMillis() {
+			return myResourceFetchMillis;
+		}
+
+		public void setResourceFetchMillis(long theResourceFetchMillis) {
+			myResourceFetchMillis = theResourceFetchMillis;
+		}
+
+		public long getParseMillis() {
+			return myParseMillis;
+		}
+
+		public void setParseMillis(long theParseMillis) {
+			myParseMillis = theParseMillis;
+		}
+
+		public long getSerializationMillis() {
+			return mySerializationMillis;
+		}
+
+		public void setSerializationMillis(long theSerializationMillis) {
+			mySerializationMillis = theSerializationMillis;
+		}
+
+		/**
+		 * Returns the size in bytes of the search results (matches and includes) encoded as a JSON Bundle
+		 */
+		public long getSerializedBytes() {
+			return mySerializedBytes;
+		}
+
+		public void setSerializedBytes(long theSerializedBytes) {
+			mySerializedBytes = theSerializedBytes;
+		}
+
+		public long getTotalMillis() {
+			return myTotalMillis;
+		}
+
+		public void setTotalMillis(long theTotalMillis) {
+			myTotalMillis = theTotalMillis;
+		}
+	}
+
+}
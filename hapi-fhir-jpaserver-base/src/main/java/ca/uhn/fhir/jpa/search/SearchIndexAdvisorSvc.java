@@ -0,0 +1,245 @@
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2023 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ca.uhn.fhir.jpa.search;
+
+import ca.uhn.fhir.batch2.api.IJobCoordinator;
+import ca.uhn.fhir.batch2.jobs.reindex.ReindexAppCtx;
+import ca.uhn.fhir.batch2.jobs.reindex.ReindexJobParameters;
+import ca.uhn.fhir.batch2.model.JobInstanceStartRequest;
+import ca.uhn.fhir.context.ComboSearchParamType;
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.RuntimeSearchParam;
+import ca.uhn.fhir.jpa.api.config.JpaStorageSettings;
+import ca.uhn.fhir.jpa.api.dao.DaoRegistry;
+import ca.uhn.fhir.jpa.api.dao.IFhirResourceDao;
+import ca.uhn.fhir.jpa.searchparam.util.JpaParamUtil;
+import ca.uhn.fhir.rest.api.RestSearchParameterTypeEnum;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.server.util.ISearchParamRegistry;
+import ca.uhn.fhir.util.ExtensionUtil;
+import ca.uhn.fhir.util.FhirTerser;
+import ca.uhn.fhir.util.HapiExtensions;
+import org.hl7.fhir.instance.model.api.IBase;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.instance.model.api.IIdType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Uses the search workload recorded by the {@link SearchWorkloadCollector} to recommend
+ * non-unique combo search parameters, and optionally creates them.
+ * <p>
+ * Each recorded combination of search parameters is reduced to the parameters which can be
+ * part of a combo index (token and string parameters). Combinations with at least two such
+ * parameters which are not already covered by an active combo search parameter are candidates,
+ * and candidates are ranked by the total time spent on searches which the combo index could
+ * have served. This is an upper bound on the time which the index could save.
+ * </p>
+ *
+ * @since 6.8.0
+ */
+public class SearchIndexAdvisorSvc {
+
+	private static final Logger ourLog = LoggerFactory.getLogger(SearchIndexAdvisorSvc.class);
+
+	@Autowired
+	private SearchWorkloadCollector mySearchWorkloadCollector;
+	@Autowired
+	private ISearchParamRegistry mySearchParamRegistry;
+	@Autowired
+	private DaoRegistry myDaoRegistry;
+	@Autowired
+	private FhirContext myFhirContext;
+	@Autowired
+	private JpaStorageSettings myStorageSettings;
+	@Autowired
+	private IJobCoordinator myJobCoordinator;
+
+	/**
+	 * Returns the candidate combo search parameters, with the highest estimated savings first
+	 *
+	 * @param theMinimumSearchCount Candidates which could have served fewer searches than this are ignored
+	 */
+	public List<ComboCandidate> rankCandidates(int theMinimumSearchCount) {
+		Map<String, ComboCandidate> candidates = new LinkedHashMap<>();
+		for (SearchWorkloadCollector.SearchWorkloadEntry next : mySearchWorkloadCollector.getEntries()) {
+			if (next.getComboEligibleSearchCount() == 0) {
+				continue;
+			}
+
+			List<RuntimeSearchParam> components = new ArrayList<>();
+			for (String nextParamName : next.getParamNames()) {
+				RuntimeSearchParam searchParam = mySearchParamRegistry.getActiveSearchParam(next.getResourceType(), nextParamName);
+				if (searchParam != null && searchParam.getUri() != null && isComboComponentType(searchParam.getParamType())) {
+					components.add(searchParam);
+				}
+			}
+			if (components.size() < 2 || isCoveredByExistingCombo(next.getResourceType(), components)) {
+				continue;
+			}
+
+			List<String> paramNames = components.stream().map(RuntimeSearchParam::getName).collect(Collectors.toList());
+			String key = next.getResourceType() + "?" + String.join("&", paramNames);
+			candidates
+				.computeIfAbsent(key, t -> new ComboCandidate(next.getResourceType(), components))
+				.add(next.getComboEligibleSearchCount(), next.getComboEligibleTotalMillis());
+		}
+
+		return candidates
+			.values()
+			.stream()
+			.filter(t -> t.getSearchCount() >= theMinimumSearchCount)
+			.sorted(Comparator.comparing(ComboCandidate::getEstimatedSavingsMillis).reversed())
+			.collect(Collectors.toList());
+	}
+
+	/**
+	 * Creates a non-unique combo search parameter for the given candidate, and ensures that
+	 * existing resources are reindexed so that the new index is populated.
+	 *
+	 * @return The reindex job instance ID, or <code>null</code> if the reindex was started automatically
+	 * 	by the creation of the search parameter (see {@link JpaStorageSettings#setMarkResourcesForReindexingUponSearchParameterChange(boolean)})
+	 */
+	@Nullable
+	public String createComboSearchParameter(ComboCandidate theCandidate, RequestDetails theRequestDetails) {
+		String code = "combo-" + String.join("-", theCandidate.getParamNames());
+
+		FhirTerser terser = myFhirContext.newTerser();
+		IBaseResource searchParameter = myFhirContext.getResourceDefinition("SearchParameter").newInstance();
+		terser.setElement(searchParameter, "name", code);
+		terser.setElement(searchParameter, "status", "active");
+		terser.setElement(searchParameter, "description", "Combo index for " + theCandidate.getResourceType() + " searches using " + String.join(", ", theCandidate.getParamNames()));
+		terser.setElement(searchParameter, "code", code);
+		terser.addElement(searchParameter, "base", theCandidate.getResourceType());
+		terser.setElement(searchParameter, "type", "composite");
+		for (RuntimeSearchParam next : theCandidate.getComponents()) {
+			IBase component = terser.addElement(searchParameter, "component");
+			terser.setElement(component, "definition", next.getUri());
+			terser.setElement(component, "expression", theCandidate.getResourceType());
+		}
+		ExtensionUtil.setExtension(myFhirContext, searchParameter, HapiExtensions.EXT_SP_UNIQUE, "boolean", false);
+
+		@SuppressWarnings("unchecked")
+		IFhirResourceDao<IBaseResource> dao = myDaoRegistry.getResourceDao("SearchParameter");
+		IIdType id = dao.create(searchParameter, theRequestDetails).getId();
+		theCandidate.setCreatedSearchParameterId(id.toUnqualifiedVersionless());
+		ourLog.info("Created combo search parameter {} for {} parameters {}", id.toUnqualifiedVersionless().getValue(), theCandidate.getResourceType(), theCandidate.getParamNames());
+
+		if (myStorageSettings.isMarkResourcesForReindexingUponSearchParameterChange()) {
+			return null;
+		}
+
+		ReindexJobParameters params = new ReindexJobParameters();
+		params.addUrl(theCandidate.getResourceType() + "?");
+		JobInstanceStartRequest request = new JobInstanceStartRequest();
+		request.setJobDefinitionId(ReindexAppCtx.JOB_REINDEX);
+		request.setParameters(params);
+		return myJobCoordinator.startInstance(theRequestDetails, request).getInstanceId();
+	}
+
+	private boolean isCoveredByExistingCombo(String theResourceType, List<RuntimeSearchParam> theComponents) {
+		Set<String> paramNames = theComponents.stream().map(RuntimeSearchParam::getName).collect(Collectors.toSet());
+		for (RuntimeSearchParam next : mySearchParamRegistry.getActiveComboSearchParams(theResourceType)) {
+			Set<String> comboParamNames = new HashSet<>();
+			JpaParamUtil.resolveComponentParameters(mySearchParamRegistry, next).forEach(t -> comboParamNames.add(t.getName()));
+			if (paramNames.containsAll(comboParamNames)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean isComboComponentType(RestSearchParameterTypeEnum theParamType) {
+		return theParamType == RestSearchParameterTypeEnum.TOKEN || theParamType == RestSearchParameterTypeEnum.STRING;
+	}
+
+	/**
+	 * A recommended {@link ComboSearchParamType#NON_UNIQUE} combo search parameter
+	 */
+	public static class ComboCandidate {
+
+		private final String myResourceType;
+		private final List<RuntimeSearchParam> myComponents;
+		private long mySearchCount;
+		private long myTotalMillis;
+		private IIdType myCreatedSearchParameterId;
+
+		public ComboCandidate(String theResourceType, List<RuntimeSearchParam> theComponents) {
+			myResourceType = theResourceType;
+			myComponents = theComponents;
+		}
+
+		void add(long theSearchCount, long theTotalMillis) {
+			mySearchCount += theSearchCount;
+			myTotalMillis += theTotalMillis;
+		}
+
+		public String getResourceType() {
+			return myResourceType;
+		}
+
+		public List<RuntimeSearchParam> getComponents() {
+			return myComponents;
+		}
+
+		public List<String> getParamNames() {
+			return myComponents.stream().map(RuntimeSearchParam::getName).collect(Collectors.toList());
+		}
+
+		/**
+		 * The number of recorded searches which the combo index could have served
+		 */
+		public long getSearchCount() {
+			return mySearchCount;
+		}
+
+		public long getAverageMillis() {
+			return mySearchCount > 0 ? myTotalMillis / mySearchCount : 0;
+		}
+
+		/**
+		 * The total time spent on searches which the combo index could have served
+		 */
+		public long getEstimatedSavingsMillis() {
+			return myTotalMillis;
+		}
+
+		@Nullable
+		public IIdType getCreatedSearchParameterId() {
+			return myCreatedSearchParameterId;
+		}
+
+		void setCreatedSearchParameterId(IIdType theCreatedSearchParameterId) {
+			myCreatedSearchParameterId = theCreatedSearchParameterId;
+		}
+	}
+
+}
@@ -0,0 +1,272 @@
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2023 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ca.uhn.fhir.jpa.search;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.RuntimeSearchParam;
+import ca.uhn.fhir.interceptor.model.RequestPartitionId;
+import ca.uhn.fhir.jpa.api.config.JpaStorageSettings;
+import ca.uhn.fhir.jpa.model.config.PartitionSettings;
+import ca.uhn.fhir.jpa.model.entity.BaseResourceIndexedSearchParam;
+import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
+import ca.uhn.fhir.jpa.util.MemoryCacheService;
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.api.RestSearchParameterTypeEnum;
+import ca.uhn.fhir.rest.api.SortOrderEnum;
+import ca.uhn.fhir.rest.api.SortSpec;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.server.util.ISearchParamRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import javax.annotation.Nullable;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.PersistenceContextType;
+import java.util.Date;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+
+import static org.apache.commons.lang3.StringUtils.isBlank;
+import static org.apache.commons.lang3.StringUtils.isNotBlank;
+
+/**
+ * Supports keyset (seek) paging for searches which are paged using <code>_offset</code>.
+ * <p>
+ * When a page of a search sorted on <code>_lastUpdated</code> or on a date search parameter
+ * has been fetched, the sort value and resource ID of the last result are remembered against
+ * the search UUID and the offset of the following page. The search UUID is added to the request
+ * as the {@link #PARAM_KEYSET_ID} parameter, so that it is included in the paging links returned
+ * to the client. If the client then requests the following page using those links, the query
+ * continues after the remembered position instead of using an SQL <code>OFFSET</code>, which would
+ * require the database to walk over every earlier result again.
+ * </p>
+ * <p>
+ * Positions are never shared between clients, and a position is only used for the exact offset and
+ * search it was recorded for. Any other request uses regular offset paging.
+ * </p>
+ *
+ * @see JpaStorageSettings#setKeysetPagingEnabled(boolean)
+ * @since 6.8.0
+ */
+public class SearchKeysetPagingSvc {
+
+	/**
+	 * Request parameter holding the UUID of the search whose positions a page continues from
+	 */
+	public static final String PARAM_KEYSET_ID = "_keysetId";
+	private static final Logger ourLog = LoggerFactory.getLogger(SearchKeysetPagingSvc.class);
+
+	@Autowired
+	private JpaStorageSettings myStorageSettings;
+	@Autowired
+	private ISearchParamRegistry mySearchParamRegistry;
+	@Autowired
+	private PartitionSettings myPartitionSettings;
+	@Autowired
+	private MemoryCacheService myMemoryCacheService;
+	@Autowired
+	private FhirContext myFhirContext;
+	@PersistenceContext(type = PersistenceContextType.TRANSACTION)
+	private EntityManager myEntityManager;
+
+	/**
+	 * Can the given search use keyset paging? This requires an offset search with an explicit
+	 * page size, sorted on a single column which is either <code>_lastUpdated</code> or a
+	 * date search parameter.
+	 */
+	public boolean isKeysetPagingCandidate(String theResourceType, SearchParameterMap theParams) {
+		if (!myStorageSettings.isKeysetPagingEnabled()) {
+			return false;
+		}
+		if (theParams.getOffset() == null || theParams.getCount() == null || theParams.getEverythingMode() != null || theParams.isLastN()) {
+			return false;
+		}
+		if (theParams.containsKey(Constants.PARAM_CONTENT) || theParams.containsKey(Constants.PARAM_TEXT)) {
+			return false;
+		}
+
+		SortSpec sort = theParams.getSort();
+		if (sort == null || sort.getChain() != null || isBlank(sort.getParamName())) {
+			return false;
+		}
+		if (Constants.PARAM_LASTUPDATED.equals(sort.getParamName())) {
+			return true;
+		}
+		RuntimeSearchParam param = mySearchParamRegistry.getActiveSearchParam(theResourceType, sort.getParamName());
+		return param != null && param.getParamType() == RestSearchParameterTypeEnum.DATE;
+	}
+
+	/**
+	 * Returns the position to continue from for the page of results starting at the offset in
+	 * the given parameters, or <code>null</code> if no position was recorded for that offset of
+	 * the search identified by the request and regular offset paging should be used.
+	 */
+	@Nullable
+	public KeysetPosition getPosition(RequestDetails theRequest, String theResourceType, SearchParameterMap theParams, RequestPartitionId theRequestPartitionId) {
+		Integer offset = theParams.getOffset();
+		String keysetId = getKeysetId(theRequest);
+		if (offset == null || offset == 0 || keysetId == null) {
+			return null;
+		}
+
+		KeysetPosition retVal = myMemoryCacheService.getIfPresent(MemoryCacheService.CacheEnum.KEYSET_PAGING_POSITION, createKey(keysetId, offset));
+		if (retVal == null) {
+			return null;
+		}
+
+		// The client may have changed the other parameters of the search while keeping the ID
+		if (retVal.getOffset() != offset || !retVal.getSearch().equals(createSearchKey(theResourceType, theParams, theRequestPartitionId))) {
+			ourLog.debug("Ignoring keyset position {} recorded for a different offset or search", retVal);
+			return null;
+		}
+		return retVal;
+	}
+
+	/**
+	 * Remembers the position of the last result on a page so that the page starting at
+	 * <code>theNextOffset</code> of the same search can continue from it. If the request does
+	 * not already identify a search, <code>theSearchUuid</code> is added to its parameters so that
+	 * it is included in the paging links. Must be called within a transaction.
+	 */
+	public void storePosition(RequestDetails theRequest, @Nullable String theSearchUuid, String theResourceType, SearchParameterMap theParams, RequestPartitionId theRequestPartitionId, int theNextOffset, long theLastResourcePid) {
+		if (theRequest == null) {
+			return;
+		}
+
+		SortSpec sort = theParams.getSort();
+		boolean ascending = sort.getOrder() != SortOrderEnum.DESC;
+
+		List<Date> values;
+		if (Constants.PARAM_LASTUPDATED.equals(sort.getParamName())) {
+			values = myEntityManager
+				.createQuery("SELECT r.myUpdated FROM ResourceTable r WHERE r.myId = :pid", Date.class)
+				.setParameter("pid", theLastResourcePid)
+				.getResultList();
+			if (values.isEmpty()) {
+				return;
+			}
+		} else {
+			// This must match the aggregate used when sorting on a date parameter in an offset search
+			String function = ascending ? "MIN" : "MAX";
+			long hashIdentity = BaseResourceIndexedSearchParam.calculateHashIdentity(myPartitionSettings, theRequestPartitionId, theResourceType, sort.getParamName());
+			values = myEntityManager
+				.createQuery("SELECT " + function + "(d.myValueLow) FROM ResourceIndexedSearchParamDate d WHERE d.myResourcePid = :pid AND d.myHashIdentity = :hash", Date.class)
+				.setParameter("pid", theLastResourcePid)
+				.setParameter("hash", hashIdentity)
+				.getResultList();
+		}
+
+		String keysetId = getKeysetId(theRequest);
+		if (keysetId == null) {
+			keysetId = theSearchUuid != null ? theSearchUuid : UUID.randomUUID().toString();
+			theRequest.addParameter(PARAM_KEYSET_ID, new String[]{keysetId});
+		}
+
+		Date lastSortValue = values.isEmpty() ? null : values.get(0);
+		String search = createSearchKey(theResourceType, theParams, theRequestPartitionId);
+		KeysetPosition position = new KeysetPosition(lastSortValue, theLastResourcePid, theNextOffset, search);
+		ourLog.trace("Storing keyset position {} for search {}", position, keysetId);
+		myMemoryCacheService.put(MemoryCacheService.CacheEnum.KEYSET_PAGING_POSITION, createKey(keysetId, theNextOffset), position);
+	}
+
+	@Nullable
+	private static String getKeysetId(RequestDetails theRequest) {
+		if (theRequest == null) {
+			return null;
+		}
+		String[] values = theRequest.getParameters().get(PARAM_KEYSET_ID);
+		if (values != null && values.length > 0 && isNotBlank(values[0])) {
+			return values[0];
+		}
+		return null;
+	}
+
+	private static String createKey(String theKeysetId, int theOffset) {
+		return theKeysetId + " " + theOffset;
+	}
+
+	private String createSearchKey(String theResourceType, SearchParameterMap theParams, RequestPartitionId theRequestPartitionId) {
+		String queryString;
+		Integer offset = theParams.getOffset();
+		try {
+			theParams.setOffset(null);
+			queryString = theParams.toNormalizedQueryString(myFhirContext);
+		} finally {
+			theParams.setOffset(offset);
+		}
+
+		String partition = theRequestPartitionId != null ? RequestPartitionId.stringifyForKey(theRequestPartitionId) : "";
+		return theResourceType + " " + partition + " " + queryString;
+	}
+
+	/**
+	 * The sort value and resource ID of the last result on a page, along with the offset of the
+	 * following page and the search they were recorded for
+	 */
+	public static final class KeysetPosition {
+
+		private final Date myLastSortValue;
+		private final long myLastResourcePid;
+		private final int myOffset;
+		private final String mySearch;
+
+		public KeysetPosition(@Nullable Date theLastSortValue, long theLastResourcePid, int theOffset, String theSearch) {
+			myLastSortValue = theLastSortValue;
+			myLastResourcePid = theLastResourcePid;
+			myOffset = theOffset;
+			mySearch = Objects.requireNonNull(theSearch);
+		}
+
+		/**
+		 * May be <code>null</code> if the last result had no value for the sort parameter
+		 */
+		@Nullable
+		public Date getLastSortValue() {
+			return myLastSortValue;
+		}
+
+		public long getLastResourcePid() {
+			return myLastResourcePid;
+		}
+
+		/**
+		 * The offset of the page which continues from this position
+		 */
+		public int getOffset() {
+			return myOffset;
+		}
+
+		/**
+		 * The resource type, partition and normalized query of the search
+		 */
+		public String getSearch() {
+			return mySearch;
+		}
+
+		@Override
+		public String toString() {
+			return myLastSortValue + "/" + myLastResourcePid + "@" + myOffset;
+		}
+	}
+
+}
@@ -0,0 +1,352 @@
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2023 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ca.uhn.fhir.jpa.search;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.interceptor.model.RequestPartitionId;
+import ca.uhn.fhir.jpa.api.config.JpaStorageSettings;
+import ca.uhn.fhir.jpa.api.dao.DaoRegistry;
+import ca.uhn.fhir.jpa.api.dao.IDao;
+import ca.uhn.fhir.jpa.api.dao.IFhirResourceDao;
+import ca.uhn.fhir.jpa.api.svc.ISearchCoordinatorSvc;
+import ca.uhn.fhir.jpa.dao.ISearchBuilder;
+import ca.uhn.fhir.jpa.dao.SearchBuilderFactory;
+import ca.uhn.fhir.jpa.dao.data.IResourceTableDao;
+import ca.uhn.fhir.jpa.dao.tx.HapiTransactionService;
+import ca.uhn.fhir.jpa.model.dao.JpaPid;
+import ca.uhn.fhir.jpa.util.QueryChunker;
+import ca.uhn.fhir.sl.cache.Cache;
+import ca.uhn.fhir.sl.cache.CacheFactory;
+import ca.uhn.fhir.util.ThreadPoolUtil;
+import com.google.common.annotations.VisibleForTesting;
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.apache.commons.lang3.time.DateUtils;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Loads the matching resources for the next page of a persisted search in the background,
+ * while the client is still processing the current page, and holds them in a short-lived,
+ * size-bounded in-memory cache keyed by search UUID, request partition and page range.
+ * <p>
+ * Prefetched resources are handed to exactly one request, and are only used if none of them
+ * have changed since they were loaded. Includes and resource access interceptors are not
+ * applied when prefetching, since they depend on the request which actually fetches the page.
+ * </p>
+ *
+ * @see JpaStorageSettings#setSearchPagePrefetchMaximumSize(int)
+ * @since 6.8.0
+ */
+public class SearchPagePrefetchSvc {
+
+	private static final Logger ourLog = LoggerFactory.getLogger(SearchPagePrefetchSvc.class);
+	private static final long EXPIRE_AFTER_WRITE_MILLIS = DateUtils.MILLIS_PER_MINUTE;
+	private static final int THREAD_COUNT = 2;
+
+	@Autowired
+	private JpaStorageSettings myStorageSettings;
+	@Autowired
+	private ISearchCoordinatorSvc<JpaPid> mySearchCoordinatorSvc;
+	@Autowired
+	private HapiTransactionService myTxService;
+	@Autowired
+	private SearchBuilderFactory<JpaPid> mySearchBuilderFactory;
+	@Autowired
+	private DaoRegistry myDaoRegistry;
+	@Autowired
+	private FhirContext myFhirContext;
+	@Autowired
+	private IResourceTableDao myResourceTableDao;
+
+	private Cache<Key, Future<PrefetchedPage>> myCache;
+	private int myCacheMaximumSize;
+	private ThreadPoolTaskExecutor myExecutor;
+
+	/**
+	 * Starts loading the given page of a search in the background, unless prefetching is disabled,
+	 * the page is already being prefetched, or too many pages are already waiting to be prefetched
+	 */
+	public void prefetch(@Nonnull String theSearchUuid, @Nonnull String theResourceType, RequestPartitionId theRequestPartitionId, int theFromIndex, int theToIndex) {
+		if (theToIndex <= theFromIndex) {
+			return;
+		}
+
+		Key key = new Key(theSearchUuid, theRequestPartitionId, theFromIndex, theToIndex);
+		synchronized (this) {
+			Cache<Key, Future<PrefetchedPage>> cache = getCache();
+			if (cache == null || cache.getIfPresent(key) != null) {
+				return;
+			}
+
+			try {
+				Future<PrefetchedPage> future = myExecutor.submit(() -> loadPage(key, theResourceType));
+				cache.put(key, future);
+				ourLog.debug("Prefetching results {}-{} of search {}", theFromIndex, theToIndex, theSearchUuid);
+			} catch (TaskRejectedException e) {
+				ourLog.debug("Not prefetching results {}-{} of search {}, too many pages are already being prefetched", theFromIndex, theToIndex, theSearchUuid);
+			}
+		}
+	}
+
+	/**
+	 * Removes the given page from the cache and returns it, waiting for it to finish loading if
+	 * the prefetch is in progress. Returns <code>null</code> if the page was not prefetched, if its
+	 * prefetch has not started yet, or if the prefetch failed.
+	 */
+	@Nullable
+	public PrefetchedPage take(@Nonnull String theSearchUuid, RequestPartitionId theRequestPartitionId, int theFromIndex, int theToIndex) {
+		Key key = new Key(theSearchUuid, theRequestPartitionId, theFromIndex, theToIndex);
+		Future<PrefetchedPage> future;
+		synchronized (this) {
+			if (myCache == null) {
+				return null;
+			}
+			future = myCache.getIfPresent(key);
+			if (future == null) {
+				return null;
+			}
+			myCache.invalidate(key);
+		}
+
+		// Loading the page ourselves is faster than waiting for a prefetch which hasn't started yet
+		if (future.cancel(false)) {
+			return null;
+		}
+
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		} catch (ExecutionException e) {
+			ourLog.warn("Failed to prefetch results {}-{} of search {}: {}", theFromIndex, theToIndex, theSearchUuid, e.getCause().toString());
+			return null;
+		}
+	}
+
+	/**
+	 * Returns <code>true</code> if none of the resources in the given page have been updated or
+	 * deleted since it was prefetched. This should be called in the transaction which uses the page.
+	 */
+	public boolean isUnchanged(@Nonnull PrefetchedPage thePage) {
+		AtomicBoolean retVal = new AtomicBoolean(true);
+		new QueryChunker<Long>().chunk(thePage.myResourceVersions.keySet(), pids -> {
+			if (!retVal.get()) {
+				return;
+			}
+			Collection<Object[]> currentVersions = myResourceTableDao.getResourceVersionsForPid(pids);
+			if (currentVersions.size() != pids.size()) {
+				retVal.set(false);
+				return;
+			}
+			for (Object[] next : currentVersions) {
+				Long pid = (Long) next[0];
+				Long version = (Long) next[2];
+				if (!version.equals(thePage.myResourceVersions.get(pid))) {
+					retVal.set(false);
+					return;
+				}
+			}
+		});
+		return retVal.get();
+	}
+
+	/**
+	 * Returns <code>true</code> if no pages are currently being prefetched
+	 */
+	@VisibleForTesting
+	public synchronized boolean isIdleForUnitTest() {
+		return myExecutor == null || (myExecutor.getActiveCount() == 0 && myExecutor.getThreadPoolExecutor().getQueue().isEmpty());
+	}
+
+	public synchronized void invalidateAll() {
+		if (myCache != null) {
+			myCache.invalidateAll();
+		}
+	}
+
+	@PreDestroy
+	public synchronized void stop() {
+		if (myExecutor != null) {
+			myExecutor.shutdown();
+			myExecutor = null;
+		}
+		myCache = null;
+		myCacheMaximumSize = 0;
+	}
+
+	/**
+	 * Loads the given page, returning <code>null</code> if the loaded resources can't be matched
+	 * to their PIDs, in which case the page is loaded normally when it is requested
+	 */
+	@Nullable
+	private PrefetchedPage loadPage(Key theKey, String theResourceType) {
+		List<JpaPid> pids = mySearchCoordinatorSvc.getResources(theKey.mySearchUuid, theKey.myFromIndex, theKey.myToIndex, null, theKey.myRequestPartitionId);
+
+		IFhirResourceDao<?> dao = myDaoRegistry.getResourceDao(theResourceType);
+		Class<? extends IBaseResource> resourceType = myFhirContext.getResourceDefinition(theResourceType).getImplementingClass();
+		ISearchBuilder<JpaPid> searchBuilder = mySearchBuilderFactory.newSearchBuilder(dao, theResourceType, resourceType);
+
+		List<IBaseResource> loadedResources = new ArrayList<>(pids.size());
+		myTxService
+			.withSystemRequest()
+			.withRequestPartitionId(theKey.myRequestPartitionId)
+			.readOnly()
+			.execute(() -> searchBuilder.loadResourcesByPid(pids, Collections.emptyList(), loadedResources, false, null));
+
+		// Resources which have been deleted are not loaded, so match the resources to the PIDs rather than relying on their position
+		Map<Long, IBaseResource> pidToResource = new HashMap<>();
+		for (IBaseResource next : loadedResources) {
+			if (next != null) {
+				Long pid = IDao.RESOURCE_PID.get(next);
+				if (pid == null) {
+					ourLog.debug("Not prefetching results {}-{} of search {}, loaded resource {} has no PID", theKey.myFromIndex, theKey.myToIndex, theKey.mySearchUuid, next.getIdElement().getValue());
+					return null;
+				}
+				pidToResource.put(pid, next);
+			}
+		}
+
+		List<IBaseResource> resources = new ArrayList<>(pids.size());
+		Map<Long, Long> resourceVersions = new HashMap<>();
+		for (JpaPid next : pids) {
+			IBaseResource resource = pidToResource.get(next.getId());
+			resources.add(resource);
+			if (resource != null) {
+				resourceVersions.put(next.getId(), resource.getIdElement().getVersionIdPartAsLong());
+			}
+		}
+		return new PrefetchedPage(pids, resources, resourceVersions);
+	}
+
+	private Cache<Key, Future<PrefetchedPage>> getCache() {
+		int maximumSize = myStorageSettings.getSearchPagePrefetchMaximumSize();
+		if (maximumSize != myCacheMaximumSize) {
+			if (myExecutor != null) {
+				myExecutor.shutdown();
+				myExecutor = null;
+			}
+			myCache = null;
+			if (maximumSize > 0) {
+				myCache = CacheFactory.build(EXPIRE_AFTER_WRITE_MILLIS, maximumSize);
+				myExecutor = ThreadPoolUtil.newThreadPool(THREAD_COUNT, THREAD_COUNT, "search-page-prefetch-", maximumSize);
+				// Prefetching is optional, so never block the requesting thread if the queue is full
+				myExecutor.getThreadPoolExecutor().setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+			}
+			myCacheMaximumSize = maximumSize;
+		}
+		return myCache;
+	}
+
+	/**
+	 * The resources matched by a page of search results, loaded in advance
+	 */
+	public static class PrefetchedPage {
+
+		private final List<JpaPid> myResourcePids;
+		private final List<IBaseResource> myResources;
+		private final Map<Long, Long> myResourceVersions;
+
+		private PrefetchedPage(List<JpaPid> theResourcePids, List<IBaseResource> theResources, Map<Long, Long> theResourceVersions) {
+			myResourcePids = theResourcePids;
+			myResources = theResources;
+			myResourceVersions = theResourceVersions;
+		}
+
+		/**
+		 * The PIDs of the resources matched by the page, in search result order
+		 */
+		public List<JpaPid> getResourcePids() {
+			return myResourcePids;
+		}
+
+		/**
+		 * The loaded resources, in the same order as {@link #getResourcePids()}. Entries are
+		 * <code>null</code> for resources which had been deleted when the page was loaded.
+		 */
+		public List<IBaseResource> getResources() {
+			return myResources;
+		}
+	}
+
+	private static class Key {
+
+		private final String mySearchUuid;
+		private final RequestPartitionId myRequestPartitionId;
+		private final int myFromIndex;
+		private final int myToIndex;
+		private final int myHashCode;
+
+		private Key(String theSearchUuid, RequestPartitionId theRequestPartitionId, int theFromIndex, int theToIndex) {
+			mySearchUuid = theSearchUuid;
+			myRequestPartitionId = theRequestPartitionId;
+			myFromIndex = theFromIndex;
+			myToIndex = theToIndex;
+			myHashCode = new HashCodeBuilder()
+				.append(mySearchUuid)
+				.append(myRequestPartitionId)
+				.append(myFromIndex)
+				.append(myToIndex)
+				.toHashCode();
+		}
+
+		@Override
+		public boolean equals(Object theO) {
+			if (this == theO) {
+				return true;
+			}
+			if (!(theO instanceof Key)) {
+				return false;
+			}
+			Key key = (Key) theO;
+			return new EqualsBuilder()
+				.append(mySearchUuid, key.mySearchUuid)
+				.append(myRequestPartitionId, key.myRequestPartitionId)
+				.append(myFromIndex, key.myFromIndex)
+				.append(myToIndex, key.myToIndex)
+				.isEquals();
+		}
+
+		@Override
+		public int hashCode() {
+			return myHashCode;
+		}
+	}
+
+}
@@ -0,0 +1,265 @@
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2023 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ca.uhn.fhir.jpa.search;
+
+import ca.uhn.fhir.jpa.api.config.JpaStorageSettings;
+import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
+import ca.uhn.fhir.model.api.IQueryParameterType;
+import com.google.common.annotations.VisibleForTesting;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.apache.commons.lang3.StringUtils.isNotBlank;
+
+/**
+ * Records the combinations of search parameters used by searches against the server, along with
+ * how often each combination is used and how long the searches take. Parameter combinations are
+ * normalized to the resource type and the sorted set of parameter names, so that searches for
+ * different values of the same parameters are counted together.
+ *
+ * @see JpaStorageSettings#setSearchWorkloadCollectionEnabled(boolean)
+ * @see SearchIndexAdvisorSvc
+ * @since 6.8.0
+ */
+public class SearchWorkloadCollector {
+
+	/**
+	 * Once this many distinct parameter combinations have been recorded, searches using new
+	 * combinations are no longer recorded
+	 */
+	public static final int MAX_COMBINATIONS = 1000;
+
+	private final Map<WorkloadKey, WorkloadStats> myCombinations = new ConcurrentHashMap<>();
+	@Autowired
+	private JpaStorageSettings myStorageSettings;
+
+	public boolean isEnabled() {
+		return myStorageSettings.isSearchWorkloadCollectionEnabled();
+	}
+
+	/**
+	 * Records a search
+	 *
+	 * @param theResourceType The resource type being searched
+	 * @param theParams       The search parameters
+	 * @param theMillis       The time taken to return the first page of results
+	 */
+	public void recordSearch(String theResourceType, SearchParameterMap theParams, long theMillis) {
+		if (!isEnabled() || theParams.isEmpty() || theParams.getEverythingMode() != null) {
+			return;
+		}
+
+		List<String> paramNames = new ArrayList<>(theParams.keySet());
+		Collections.sort(paramNames);
+		WorkloadKey key = new WorkloadKey(theResourceType, paramNames);
+
+		WorkloadStats stats = myCombinations.get(key);
+		if (stats == null) {
+			if (myCombinations.size() >= MAX_COMBINATIONS) {
+				return;
+			}
+			stats = myCombinations.computeIfAbsent(key, t -> new WorkloadStats());
+		}
+
+		stats.mySearchCount.increment();
+		stats.myTotalMillis.add(theMillis);
+		stats.myMaxMillis.accumulate(theMillis);
+		if (isComboEligible(theParams)) {
+			stats.myComboEligibleSearchCount.increment();
+			stats.myComboEligibleTotalMillis.add(theMillis);
+		}
+	}
+
+	/**
+	 * Returns a snapshot of the recorded parameter combinations
+	 */
+	public List<SearchWorkloadEntry> getEntries() {
+		List<SearchWorkloadEntry> retVal = new ArrayList<>(myCombinations.size());
+		for (Map.Entry<WorkloadKey, WorkloadStats> next : myCombinations.entrySet()) {
+			WorkloadStats stats = next.getValue();
+			retVal.add(new SearchWorkloadEntry(
+				next.getKey().myResourceType,
+				next.getKey().myParamNames,
+				stats.mySearchCount.sum(),
+				stats.myTotalMillis.sum(),
+				stats.myMaxMillis.get(),
+				stats.myComboEligibleSearchCount.sum(),
+				stats.myComboEligibleTotalMillis.sum()));
+		}
+		return retVal;
+	}
+
+	/**
+	 * Discards all recorded statistics
+	 */
+	public void clear() {
+		myCombinations.clear();
+	}
+
+	@VisibleForTesting
+	public void setStorageSettingsForUnitTest(JpaStorageSettings theStorageSettings) {
+		myStorageSettings = theStorageSettings;
+	}
+
+	/**
+	 * A search can only be served by a combo index if every parameter has exactly
+	 * one value and no modifiers
+	 */
+	private static boolean isComboEligible(SearchParameterMap theParams) {
+		if (!theParams.isAllParametersHaveNoModifier()) {
+			return false;
+		}
+		for (List<List<IQueryParameterType>> nextAndList : theParams.values()) {
+			if (nextAndList.size() != 1 || nextAndList.get(0).size() != 1) {
+				return false;
+			}
+			IQueryParameterType next = nextAndList.get(0).get(0);
+			if (next.getMissing() != null || isNotBlank(next.getQueryParameterQualifier())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static class WorkloadKey {
+
+		private final String myResourceType;
+		private final List<String> myParamNames;
+
+		private WorkloadKey(String theResourceType, List<String> theParamNames) {
+			myResourceType = theResourceType;
+			myParamNames = Collections.unmodifiableList(theParamNames);
+		}
+
+		@Override
+		public boolean equals(Object theO) {
+			if (this == theO) {
+				return true;
+			}
+			if (!(theO instanceof WorkloadKey)) {
+				return false;
+			}
+			WorkloadKey that = (WorkloadKey) theO;
+			return myResourceType.equals(that.myResourceType) && myParamNames.equals(that.myParamNames);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(myResourceType, myParamNames);
+		}
+	}
+
+	private static class WorkloadStats {
+
+		private final LongAdder mySearchCount = new LongAdder();
+		private final LongAdder myTotalMillis = new LongAdder();
+		private final LongAccumulator myMaxMillis = new LongAccumulator(Math::max, 0);
+		private final LongAdder myComboEligibleSearchCount = new LongAdder();
+		private final LongAdder myComboEligibleTotalMillis = new LongAdder();
+
+	}
+
+	/**
+	 * Statistics for a single combination of search parameters
+	 */
+	public static class SearchWorkloadEntry {
+
+		private final String myResourceType;
+		private final List<String> myParamNames;
+		private final long mySearchCount;
+		private final long myTotalMillis;
+		private final long myMaxMillis;
+		private final long myComboEligibleSearchCount;
+		private final long myComboEligibleTotalMillis;
+
+		public SearchWorkloadEntry(String theResourceType, List<String> theParamNames, long theSearchCount, long theTotalMillis, long theMaxMillis, long theComboEligibleSearchCount, long theComboEligibleTotalMillis) {
+			myResourceType = theResourceType;
+			myParamNames = theParamNames;
+			mySearchCount = theSearchCount;
+			myTotalMillis = theTotalMillis;
+			myMaxMillis = theMaxMillis;
+			myComboEligibleSearchCount = theComboEligibleSearchCount;
+			myComboEligibleTotalMillis = theComboEligibleTotalMillis;
+		}
+
+		public String getResourceType() {
+			return myResourceType;
+		}
+
+		/**
+		 * The names of the search parameters, in alphabetical order
+		 */
+		public List<String> getParamNames() {
+			return myParamNames;
+		}
+
+		public long getSearchCount() {
+			return mySearchCount;
+		}
+
+		public long getTotalMillis() {
+			return myTotalMillis;
+		}
+
+		public long getAverageMillis() {
+			return mySearchCount > 0 ? myTotalMillis / mySearchCount : 0;
+		}
+
+		public long getMaxMillis() {
+			return myMaxMillis;
+		}
+
+		/**
+		 * The number of searches in which every parameter had exactly one value and no
+		 * modifiers, meaning that the search could have been served by a combo index
+		 */
+		public long getComboEligibleSearchCount() {
+			return myComboEligibleSearchCount;
+		}
+
+		/**
+		 * The total time taken by the searches counted by {@link #getComboEligibleSearchCount()}
+		 */
+		public long getComboEligibleTotalMillis() {
+			return myComboEligibleTotalMillis;
+		}
+
+		@Override
+		public String toString() {
+			return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+				.append("resourceType", myResourceType)
+				.append("paramNames", myParamNames)
+				.append("searchCount", mySearchCount)
+				.append("averageMillis", getAverageMillis())
+				.toString();
+		}
+	}
+
+}
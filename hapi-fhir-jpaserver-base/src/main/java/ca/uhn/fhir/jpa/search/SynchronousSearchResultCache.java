@@ -0,0 +1,382 @@
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2023 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ca.uhn.fhir.jpa.search;
+
+import ca.uhn.fhir.IHapiBootOrder;
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.interceptor.api.Hook;
+import ca.uhn.fhir.interceptor.api.IInterceptorService;
+import ca.uhn.fhir.interceptor.api.Pointcut;
+import ca.uhn.fhir.interceptor.model.RequestPartitionId;
+import ca.uhn.fhir.jpa.api.config.JpaStorageSettings;
+import ca.uhn.fhir.jpa.dao.data.IResourceTableDao;
+import ca.uhn.fhir.jpa.model.dao.JpaPid;
+import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
+import ca.uhn.fhir.model.api.IQueryParameterType;
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.api.SortSpec;
+import ca.uhn.fhir.rest.param.ReferenceParam;
+import ca.uhn.fhir.rest.param.TokenParam;
+import ca.uhn.fhir.rest.param.TokenParamModifier;
+import ca.uhn.fhir.sl.cache.Cache;
+import ca.uhn.fhir.sl.cache.CacheFactory;
+import com.google.common.annotations.VisibleForTesting;
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.apache.commons.lang3.time.DateUtils;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.Nullable;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.apache.commons.lang3.StringUtils.isNotBlank;
+
+/**
+ * In-memory cache of the resource IDs matched by synchronous searches, keyed by resource type,
+ * request partition and normalized search URL.
+ * <p>
+ * Each resource type has a generation counter which is incremented whenever a resource of that
+ * type changes, and a cached entry is only used if it was created during the current generation.
+ * Changes made on this server increment the counter as soon as they are made and again once their
+ * transaction completes, so that a search running concurrently with the change can't cache results
+ * which predate it.
+ * </p>
+ * <p>
+ * Changes made on other servers are detected by periodically reading the most recent update and
+ * deletion times for the resource type, which the <code>HFJ_RESOURCE</code> indexes can answer
+ * without scanning the table. If either has changed since the last check, the counter is
+ * incremented. Resources which are expunged by other servers without first being deleted are
+ * not detected, and are only dropped from the cache when the entries expire.
+ * </p>
+ *
+ * @see JpaStorageSettings#setSynchronousSearchResultCacheMaximumSize(long)
+ * @since 6.8.0
+ */
+public class SynchronousSearchResultCache {
+
+	private static final long EXPIRE_AFTER_WRITE_MILLIS = TimeUnit.MINUTES.toMillis(10);
+	private static final long DEFAULT_REMOTE_CHECK_INTERVAL_MILLIS = DateUtils.MILLIS_PER_MINUTE;
+	private static final Set<String> PARAMS_DEPENDING_ON_OTHER_TYPES = Set.of(Constants.PARAM_HAS, Constants.PARAM_LIST, Constants.PARAM_FILTER, Constants.PARAM_CONTENT, Constants.PARAM_TEXT);
+
+	@Autowired
+	private JpaStorageSettings myStorageSettings;
+	@Autowired
+	private FhirContext myFhirContext;
+	@Autowired
+	private IInterceptorService myInterceptorService;
+	@Autowired
+	private IResourceTableDao myResourceTableDao;
+
+	private final Map<String, AtomicLong> myResourceTypeToGeneration = new ConcurrentHashMap<>();
+	private final Map<String, RemoteChangeMarker> myResourceTypeToRemoteChangeMarker = new ConcurrentHashMap<>();
+	private volatile Cache<Key, Entry> myCache;
+	private volatile long myCacheMaximumSize;
+	private long myRemoteCheckIntervalMillis = DEFAULT_REMOTE_CHECK_INTERVAL_MILLIS;
+
+	@EventListener(classes = {ContextRefreshedEvent.class})
+	@Order(IHapiBootOrder.REGISTER_INTERCEPTORS)
+	public void start() {
+		myInterceptorService.registerInterceptor(this);
+	}
+
+	@PreDestroy
+	public void stop() {
+		myInterceptorService.unregisterInterceptor(this);
+	}
+
+	/**
+	 * Creates a key for the given search, or returns <code>null</code> if the cache is disabled or
+	 * the results of the search can not be cached
+	 */
+	@Nullable
+	public Key newKey(String theResourceType, SearchParameterMap theParams, @Nullable Integer theLoadSynchronousUpTo, RequestPartitionId theRequestPartitionId) {
+		if (theResourceType == null || getCache() == null || !isCacheable(theParams)) {
+			return null;
+		}
+		String queryString = theParams.toNormalizedQueryString(myFhirContext);
+		return new Key(theResourceType, theRequestPartitionId, queryString, theLoadSynchronousUpTo, theParams.getLoadSynchronousUpTo());
+	}
+
+	/**
+	 * Returns the current generation for the resource type of the given key. This should be called before
+	 * the search is performed, and the value passed to {@link #put(Key, long, List)}. Must be called
+	 * within a transaction.
+	 */
+	public long getGeneration(Key theKey) {
+		checkForRemoteChanges(theKey.myResourceType);
+		return getGenerationCounter(theKey.myResourceType).get();
+	}
+
+	/**
+	 * Returns the cached results for the given search, or <code>null</code> if none are cached or
+	 * resources of the searched type have changed since they were cached. Must be called within a
+	 * transaction.
+	 */
+	@Nullable
+	public List<JpaPid> get(Key theKey) {
+		Cache<Key, Entry> cache = getCache();
+		if (cache == null) {
+			return null;
+		}
+		Entry entry = cache.getIfPresent(theKey);
+		if (entry == null || entry.myGeneration != getGeneration(theKey)) {
+			return null;
+		}
+		List<JpaPid> retVal = new ArrayList<>(entry.myResourcePids.length);
+		for (long next : entry.myResourcePids) {
+			retVal.add(JpaPid.fromId(next));
+		}
+		return retVal;
+	}
+
+	/**
+	 * Stores the results of a search
+	 *
+	 * @param theGeneration The value returned by {@link #getGeneration(Key)} before the search was performed
+	 */
+	public void put(Key theKey, long theGeneration, List<JpaPid> theResourcePids) {
+		Cache<Key, Entry> cache = getCache();
+		if (cache == null) {
+			return;
+		}
+		long[] resourcePids = new long[theResourcePids.size()];
+		for (int i = 0; i < resourcePids.length; i++) {
+			resourcePids[i] = theResourcePids.get(i).getId();
+		}
+		cache.put(theKey, new Entry(theGeneration, resourcePids));
+	}
+
+	/**
+	 * Discards all cached results for the given resource type
+	 */
+	public void invalidate(String theResourceType) {
+		getGenerationCounter(theResourceType).incrementAndGet();
+	}
+
+	public synchronized void invalidateAll() {
+		myResourceTypeToGeneration.values().forEach(AtomicLong::incrementAndGet);
+		myResourceTypeToRemoteChangeMarker.clear();
+		if (myCache != null) {
+			myCache.invalidateAll();
+		}
+	}
+
+	@Hook(Pointcut.STORAGE_PRECOMMIT_RESOURCE_CREATED)
+	public void resourceCreated(IBaseResource theResource) {
+		handleResourceChange(theResource);
+	}
+
+	@Hook(Pointcut.STORAGE_PRECOMMIT_RESOURCE_UPDATED)
+	public void resourceUpdated(IBaseResource theNewResource) {
+		handleResourceChange(theNewResource);
+	}
+
+	@Hook(Pointcut.STORAGE_PRECOMMIT_RESOURCE_DELETED)
+	public void resourceDeleted(IBaseResource theResource) {
+		handleResourceChange(theResource);
+	}
+
+	private void handleResourceChange(IBaseResource theResource) {
+		if (theResource == null || myCache == null) {
+			return;
+		}
+		String resourceType = myFhirContext.getResourceType(theResource);
+		invalidate(resourceType);
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				@Override
+				public void afterCompletion(int theStatus) {
+					invalidate(resourceType);
+				}
+			});
+		}
+	}
+
+	private AtomicLong getGenerationCounter(String theResourceType) {
+		return myResourceTypeToGeneration.computeIfAbsent(theResourceType, t -> new AtomicLong());
+	}
+
+	/**
+	 * Changes made on other servers don't pass through the hooks above, so at most once per interval
+	 * the most recent update and deletion times for the resource type are read, and the generation is
+	 * incremented if they have changed. The first check for a type always increments it, since anything
+	 * cached before then may have missed remote changes.
+	 */
+	private void checkForRemoteChanges(String theResourceType) {
+		RemoteChangeMarker marker = myResourceTypeToRemoteChangeMarker.computeIfAbsent(theResourceType, t -> new RemoteChangeMarker());
+		synchronized (marker) {
+			long now = System.currentTimeMillis();
+			if (marker.myLastChecked != 0 && now - marker.myLastChecked < myRemoteCheckIntervalMillis) {
+				return;
+			}
+			Date lastUpdated = myResourceTableDao.findLastUpdatedForResourceType(theResourceType);
+			Date lastDeleted = myResourceTableDao.findLastDeletedForResourceType(theResourceType);
+			if (marker.myLastChecked == 0 || !Objects.equals(lastUpdated, marker.myLastUpdated) || !Objects.equals(lastDeleted, marker.myLastDeleted)) {
+				invalidate(theResourceType);
+			}
+			marker.myLastUpdated = lastUpdated;
+			marker.myLastDeleted = lastDeleted;
+			marker.myLastChecked = now;
+		}
+	}
+
+	@VisibleForTesting
+	public void setRemoteCheckIntervalForUnitTests(long theRemoteCheckIntervalMillis) {
+		myRemoteCheckIntervalMillis = theRemoteCheckIntervalMillis;
+	}
+
+	/**
+	 * The cache is (re)created whenever the configured size changes, so that the
+	 * setting can be changed at runtime
+	 */
+	@Nullable
+	private Cache<Key, Entry> getCache() {
+		long maximumSize = myStorageSettings.getSynchronousSearchResultCacheMaximumSize();
+		if (maximumSize != myCacheMaximumSize) {
+			synchronized (this) {
+				if (maximumSize != myCacheMaximumSize) {
+					myCache = maximumSize > 0 ? CacheFactory.build(EXPIRE_AFTER_WRITE_MILLIS, maximumSize) : null;
+					myCacheMaximumSize = maximumSize;
+				}
+			}
+		}
+		return myCache;
+	}
+
+	/**
+	 * Only searches whose results depend solely on the indexes of the searched resource
+	 * type can be invalidated by watching that type
+	 */
+	private static boolean isCacheable(SearchParameterMap theParams) {
+		if (theParams.getEverythingMode() != null || theParams.isDeleteExpunge()) {
+			return false;
+		}
+		for (SortSpec sort = theParams.getSort(); sort != null; sort = sort.getChain()) {
+			if (sort.getParamName() != null && sort.getParamName().contains(".")) {
+				return false;
+			}
+		}
+		for (Map.Entry<String, List<List<IQueryParameterType>>> nextEntry : theParams.entrySet()) {
+			if (PARAMS_DEPENDING_ON_OTHER_TYPES.contains(nextEntry.getKey())) {
+				return false;
+			}
+			for (List<IQueryParameterType> nextOrList : nextEntry.getValue()) {
+				for (IQueryParameterType next : nextOrList) {
+					if (next instanceof ReferenceParam && isNotBlank(((ReferenceParam) next).getChain())) {
+						return false;
+					}
+					if (next instanceof TokenParam && isTerminologyModifier(((TokenParam) next).getModifier())) {
+						return false;
+					}
+				}
+			}
+		}
+		return true;
+	}
+
+	private static boolean isTerminologyModifier(TokenParamModifier theModifier) {
+		return theModifier == TokenParamModifier.IN
+			|| theModifier == TokenParamModifier.NOT_IN
+			|| theModifier == TokenParamModifier.ABOVE
+			|| theModifier == TokenParamModifier.BELOW;
+	}
+
+	private static class RemoteChangeMarker {
+
+		private long myLastChecked;
+		private Date myLastUpdated;
+		private Date myLastDeleted;
+	}
+
+	private static class Entry {
+
+		private final long myGeneration;
+		private final long[] myResourcePids;
+
+		private Entry(long theGeneration, long[] theResourcePids) {
+			myGeneration = theGeneration;
+			myResourcePids = theResourcePids;
+		}
+	}
+
+	public static class Key {
+
+		private final String myResourceType;
+		private final RequestPartitionId myRequestPartitionId;
+		private final String myQueryString;
+		private final Integer myLoadSynchronousUpTo;
+		private final Integer myParamsLoadSynchronousUpTo;
+		private final int myHashCode;
+
+		private Key(String theResourceType, RequestPartitionId theRequestPartitionId, String theQueryString, Integer theLoadSynchronousUpTo, Integer theParamsLoadSynchronousUpTo) {
+			myResourceType = theResourceType;
+			myRequestPartitionId = theRequestPartitionId;
+			myQueryString = theQueryString;
+			myLoadSynchronousUpTo = theLoadSynchronousUpTo;
+			myParamsLoadSynchronousUpTo = theParamsLoadSynchronousUpTo;
+			myHashCode = new HashCodeBuilder()
+				.append(myResourceType)
+				.append(myRequestPartitionId)
+				.append(myQueryString)
+				.append(myLoadSynchronousUpTo)
+				.append(myParamsLoadSynchronousUpTo)
+				.toHashCode();
+		}
+
+		@Override
+		public boolean equals(Object theO) {
+			if (this == theO) {
+				return true;
+			}
+			if (!(theO instanceof Key)) {
+				return false;
+			}
+			Key key = (Key) theO;
+			return new EqualsBuilder()
+				.append(myResourceType, key.myResourceType)
+				.append(myRequestPartitionId, key.myRequestPartitionId)
+				.append(myQueryString, key.myQueryString)
+				.append(myLoadSynchronousUpTo, key.myLoadSynchronousUpTo)
+				.append(myParamsLoadSynchronousUpTo, key.myParamsLoadSynchronousUpTo)
+				.isEquals();
+		}
+
+		@Override
+		public int hashCode() {
+			return myHashCode;
+		}
+	}
+
+}
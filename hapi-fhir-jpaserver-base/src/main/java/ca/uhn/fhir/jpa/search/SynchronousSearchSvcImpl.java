@@ -47,6 +47,7 @@ import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
 import ca.uhn.fhir.rest.server.interceptor.ServerInterceptorUtil;
 import ca.uhn.fhir.rest.server.servlet.ServletRequestDetails;
 import ca.uhn.fhir.rest.server.util.CompositeInterceptorBroadcaster;
+import com.google.common.primitives.Ints;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.springframework.beans.factory.annotation.Autowired;
 
@@ -58,6 +59,7 @@ import java.util.Set;
 import java.util.UUID;
 
 import static ca.uhn.fhir.jpa.util.SearchParameterMapCalculator.isWantCount;
+import static ca.uhn.fhir.jpa.util.SearchParameterMapCalculator.isWantEstimatedCount;
 import static ca.uhn.fhir.jpa.util.SearchParameterMapCalculator.isWantOnlyCount;
 import static java.util.Objects.nonNull;
 
@@ -88,6 +90,9 @@ public class SynchronousSearchSvcImpl implements ISynchronousSearchSvc {
 	@Autowired
 	private IRequestPartitionHelperSvc myRequestPartitionHelperSvc;
 
+	@Autowired
+	private SynchronousSearchResultCache mySynchronousSearchResultCache;
+
 	private int mySyncSize = 250;
 
 	@Override
@@ -98,6 +103,7 @@ public class SynchronousSearchSvcImpl implements ISynchronousSearchSvc {
 		boolean theParamWantOnlyCount = isWantOnlyCount(theParams);
 		boolean theParamOrConfigWantCount = nonNull(theParams.getSearchTotalMode()) ? isWantCount(theParams) : isWantCount(myStorageSettings.getDefaultTotalMode());
 		boolean wantCount = theParamWantOnlyCount || theParamOrConfigWantCount;
+		boolean wantEstimatedCount = !wantCount && (nonNull(theParams.getSearchTotalMode()) ? isWantEstimatedCount(theParams.getSearchTotalMode()) : isWantEstimatedCount(myStorageSettings.getDefaultTotalMode()));
 
 		// Execute the query and make sure we return distinct results
 		return myTxService
@@ -127,25 +133,46 @@ public class SynchronousSearchSvcImpl implements ISynchronousSearchSvc {
 				ourLog.trace("Got count {}", count);
 			}
 
+			Long estimatedCount = null;
+			if (wantEstimatedCount) {
+				ourLog.trace("Performing estimated count");
+				estimatedCount = theSb.createEstimatedCountQuery(theParams, theSearchUuid, theRequestDetails, theRequestPartitionId);
+				ourLog.trace("Got estimated count {}", estimatedCount);
+			}
+
 			if (theParamWantOnlyCount) {
 				SimpleBundleProvider bundleProvider = new SimpleBundleProvider();
 				bundleProvider.setSize(count.intValue());
 				return bundleProvider;
 			}
 
-			try (IResultIterator<JpaPid> resultIter = theSb.createQuery(theParams, searchRuntimeDetails, theRequestDetails, theRequestPartitionId)) {
-				while (resultIter.hasNext()) {
-					pids.add(resultIter.next());
-					if (theLoadSynchronousUpTo != null && pids.size() >= theLoadSynchronousUpTo) {
-						break;
-					}
-					if (theParams.getLoadSynchronousUpTo() != null && pids.size() >= theParams.getLoadSynchronousUpTo()) {
-						break;
+			SynchronousSearchResultCache.Key cacheKey = null;
+			if (mySynchronousSearchResultCache != null) {
+				cacheKey = mySynchronousSearchResultCache.newKey(theSb.getResourceName(), theParams, theLoadSynchronousUpTo, theRequestPartitionId);
+			}
+			List<JpaPid> cachedPids = cacheKey != null ? mySynchronousSearchResultCache.get(cacheKey) : null;
+			if (cachedPids != null) {
+				ourLog.trace("Using {} cached results", cachedPids.size());
+				pids.addAll(cachedPids);
+			} else {
+				long cacheGeneration = cacheKey != null ? mySynchronousSearchResultCache.getGeneration(cacheKey) : 0;
+				try (IResultIterator<JpaPid> resultIter = theSb.createQuery(theParams, searchRuntimeDetails, theRequestDetails, theRequestPartitionId)) {
+					while (resultIter.hasNext()) {
+						pids.add(resultIter.next());
+						if (theLoadSynchronousUpTo != null && pids.size() >= theLoadSynchronousUpTo) {
+							break;
+						}
+						if (theParams.getLoadSynchronousUpTo() != null && pids.size() >= theParams.getLoadSynchronousUpTo()) {
+							break;
+						}
 					}
+				} catch (IOException e) {
+					ourLog.error("IO failure during database access", e);
+					throw new InternalErrorException(Msg.code(1164) + e);
+				}
+				if (cacheKey != null) {
+					mySynchronousSearchResultCache.put(cacheKey, cacheGeneration, pids);
 				}
-			} catch (IOException e) {
-				ourLog.error("IO failure during database access", e);
-				throw new InternalErrorException(Msg.code(1164) + e);
 			}
 
 			JpaPreResourceAccessDetails accessDetails = new JpaPreResourceAccessDetails(pids, () -> theSb);
@@ -208,6 +235,11 @@ public class SynchronousSearchSvcImpl implements ISynchronousSearchSvc {
 					bundleProvider.setSize(getTotalCount(queryCount, theParams.getOffset(), resources.size()));
 				} else {
 					bundleProvider.setSize(null);
+					if (estimatedCount != null) {
+						// The estimate can't be lower than the number of results we've already seen
+						long loaded = getTotalCount(queryCount, theParams.getOffset(), resources.size());
+						bundleProvider.setEstimatedSize(Ints.saturatedCast(Math.max(estimatedCount, loaded)));
+					}
 				}
 			}
 
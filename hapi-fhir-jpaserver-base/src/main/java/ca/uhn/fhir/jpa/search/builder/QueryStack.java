@@ -102,6 +102,7 @@ import com.healthmarketscience.sqlbuilder.Subquery;
 import com.healthmarketscience.sqlbuilder.UnionQuery;
 import com.healthmarketscience.sqlbuilder.dbspec.basic.DbColumn;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.Validate;
 import org.apache.commons.lang3.tuple.Triple;
 import org.hl7.fhir.instance.model.api.IAnyResource;
 import org.slf4j.Logger;
@@ -113,6 +114,7 @@ import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Date;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
@@ -151,6 +153,8 @@ public class QueryStack {
 	private Map<String, BaseJoiningPredicateBuilder> myParamNameToPredicateBuilderMap;
 	// used for _offset queries with sort, should be removed once the fix is applied to the async path too.
 	private boolean myUseAggregate;
+	private DbColumn myDateSortColumn;
+	private boolean myDateSortColumnNullable;
 
 	/**
 	 * Constructor
@@ -212,6 +216,8 @@ public class QueryStack {
 		addSortCustomJoin(firstPredicateBuilder, datePredicateBuilder, hashIdentityPredicate);
 
 		mySqlBuilder.addSortDate(datePredicateBuilder.getColumnValueLow(), theAscending, myUseAggregate);
+		myDateSortColumn = datePredicateBuilder.getColumnValueLow();
+		myDateSortColumnNullable = true;
 	}
 
 	public void addSortOnLastUpdated(boolean theAscending) {
@@ -223,6 +229,27 @@ public class QueryStack {
 			resourceTablePredicateBuilder = mySqlBuilder.addResourceTablePredicateBuilder(firstPredicateBuilder.getResourceIdColumn());
 		}
 		mySqlBuilder.addSortDate(resourceTablePredicateBuilder.getColumnLastUpdated(), theAscending, myUseAggregate);
+		myDateSortColumn = resourceTablePredicateBuilder.getColumnLastUpdated();
+		myDateSortColumnNullable = false;
+	}
+
+	/**
+	 * Adds the resource ID as a final sort column so that the order of results is stable, and
+	 * if a position is supplied, only returns results which sort after that position (keyset
+	 * paging). This must be called after {@link #addSortOnDate(String, String, boolean)} or
+	 * {@link #addSortOnLastUpdated(boolean)}.
+	 *
+	 * @param theAscending       Is the sort ascending
+	 * @param theLastSortValue   The sort value of the last result on the previous page (may be null if that result had no value)
+	 * @param theLastResourcePid The resource ID of the last result on the previous page, or null if this is not a continuation
+	 */
+	public void addKeysetPaging(boolean theAscending, @Nullable Date theLastSortValue, @Nullable Long theLastResourcePid) {
+		Validate.notNull(myDateSortColumn, "No date sort has been added");
+		BaseJoiningPredicateBuilder firstPredicateBuilder = mySqlBuilder.getOrCreateFirstPredicateBuilder();
+		mySqlBuilder.addSortNumeric(firstPredicateBuilder.getResourceIdColumn(), theAscending);
+		if (theLastResourcePid != null) {
+			mySqlBuilder.addKeysetPagingPredicate(myDateSortColumn, myDateSortColumnNullable, theAscending, myUseAggregate, theLastSortValue, theLastResourcePid);
+		}
 	}
 
 	public void addSortOnNumber(String theResourceName, String theParamName, boolean theAscending) {
@@ -1526,6 +1553,25 @@ public class QueryStack {
 		return false;
 	}
 
+	/**
+	 * Creates a predicate for a token parameter with no modifiers as
+	 * <code>RES_ID IN (SELECT RES_ID FROM HFJ_SPIDX_TOKEN WHERE ...)</code> for each AND
+	 * group, instead of joining the token table to the root table
+	 */
+	public Condition createPredicateTokenUsingSubselect(String theResourceName, RuntimeSearchParam theSearchParam, List<List<IQueryParameterType>> theAndOrParams, RequestPartitionId theRequestPartitionId) {
+		DbColumn resourceIdColumn = mySqlBuilder.getOrCreateFirstPredicateBuilder().getResourceIdColumn();
+
+		List<Condition> andPredicates = new ArrayList<>();
+		for (List<IQueryParameterType> nextAnd : theAndOrParams) {
+			SearchQueryBuilder sqlBuilder = mySqlBuilder.newChildSqlBuilder();
+			TokenPredicateBuilder tokenSelector = sqlBuilder.addTokenPredicateBuilder(null);
+			Condition predicate = tokenSelector.createPredicateToken(nextAnd, theResourceName, null, theSearchParam, theRequestPartitionId);
+			sqlBuilder.addPredicate(tokenSelector.combineWithRequestPartitionIdPredicate(theRequestPartitionId, predicate));
+			andPredicates.add(new InCondition(resourceIdColumn, new Subquery(sqlBuilder.getSelect())));
+		}
+		return toAndPredicate(andPredicates);
+	}
+
 	public Condition createPredicateToken(@Nullable DbColumn theSourceJoinColumn, String theResourceName,
 													  String theSpnamePrefix, RuntimeSearchParam theSearchParam, List<? extends IQueryParameterType> theList,
 													  SearchFilterParser.CompareOperation theOperation, RequestPartitionId theRequestPartitionId) {
@@ -44,6 +44,7 @@ import ca.uhn.fhir.jpa.dao.ISearchBuilder;
 import ca.uhn.fhir.jpa.dao.data.IResourceSearchViewDao;
 import ca.uhn.fhir.jpa.dao.data.IResourceTagDao;
 import ca.uhn.fhir.jpa.dao.search.ResourceNotFoundInIndexException;
+import ca.uhn.fhir.jpa.dao.tx.IHapiTransactionService;
 import ca.uhn.fhir.jpa.entity.ResourceSearchView;
 import ca.uhn.fhir.jpa.interceptor.JpaPreResourceAccessDetails;
 import ca.uhn.fhir.jpa.model.config.PartitionSettings;
@@ -55,6 +56,7 @@ import ca.uhn.fhir.jpa.model.search.SearchBuilderLoadIncludesParameters;
 import ca.uhn.fhir.jpa.model.search.SearchRuntimeDetails;
 import ca.uhn.fhir.jpa.model.search.StorageProcessingMessage;
 import ca.uhn.fhir.jpa.search.SearchConstants;
+import ca.uhn.fhir.jpa.search.SearchKeysetPagingSvc;
 import ca.uhn.fhir.jpa.search.builder.sql.GeneratedSql;
 import ca.uhn.fhir.jpa.search.builder.sql.SearchQueryBuilder;
 import ca.uhn.fhir.jpa.search.builder.sql.SearchQueryExecutor;
@@ -84,6 +86,7 @@ import ca.uhn.fhir.rest.param.ParameterUtil;
 import ca.uhn.fhir.rest.param.ReferenceParam;
 import ca.uhn.fhir.rest.param.StringParam;
 import ca.uhn.fhir.rest.param.TokenParam;
+import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
 import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
 import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
 import ca.uhn.fhir.rest.server.servlet.ServletRequestDetails;
@@ -92,17 +95,24 @@ import ca.uhn.fhir.rest.server.util.ISearchParamRegistry;
 import ca.uhn.fhir.util.StopWatch;
 import ca.uhn.fhir.util.StringUtil;
 import ca.uhn.fhir.util.UrlUtil;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Streams;
 import com.healthmarketscience.sqlbuilder.Condition;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Validate;
 import org.apache.commons.lang3.math.NumberUtils;
 import org.apache.commons.lang3.tuple.Pair;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.dialect.H2Dialect;
+import org.hibernate.dialect.MySQLDialect;
+import org.hibernate.dialect.PostgreSQL81Dialect;
 import org.hl7.fhir.instance.model.api.IAnyResource;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.dao.DataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.SingleColumnRowMapper;
 import org.springframework.transaction.support.TransactionSynchronizationManager;
@@ -116,6 +126,7 @@ import javax.persistence.Query;
 import javax.persistence.Tuple;
 import javax.persistence.TypedQuery;
 import javax.persistence.criteria.CriteriaBuilder;
+import java.sql.ResultSetMetaData;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -127,6 +138,11 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 import static ca.uhn.fhir.jpa.search.builder.QueryStack.LOCATION_POSITION;
@@ -152,6 +168,7 @@ public class SearchBuilder implements ISearchBuilder<JpaPid> {
 	public static final String RESOURCE_VERSION_ALIAS = "resource_version";
 	private static final Logger ourLog = LoggerFactory.getLogger(SearchBuilder.class);
 	private static final JpaPid NO_MORE = JpaPid.fromId(-1L);
+	private static final Pattern ourExplainRowsPattern = Pattern.compile("rows=(\\d+)");
 	private static final String MY_TARGET_RESOURCE_PID = "myTargetResourcePid";
 	private static final String MY_SOURCE_RESOURCE_PID = "mySourceResourcePid";
 	private static final String MY_TARGET_RESOURCE_TYPE = "myTargetResourceType";
@@ -190,6 +207,17 @@ public class SearchBuilder implements ISearchBuilder<JpaPid> {
 	private IElasticsearchSvc myIElasticsearchSvc;
 	@Autowired
 	private IJpaStorageResourceParser myJpaStorageResourceParser;
+	@Autowired(required = false)
+	private SearchResourceLoadExecutor mySearchResourceLoadExecutor;
+	@Autowired(required = false)
+	private IHapiTransactionService myHapiTransactionService;
+	@Autowired(required = false)
+	private SearchKeysetPagingSvc mySearchKeysetPagingSvc;
+	@Autowired(required = false)
+	private SearchIncludeExecutor mySearchIncludeExecutor;
+	@Autowired(required = false)
+	private SearchParamSelectivitySvc mySearchParamSelectivitySvc;
+	private boolean myKeysetPaging;
 
 	/**
 	 * Constructor
@@ -262,6 +290,24 @@ public class SearchBuilder implements ISearchBuilder<JpaPid> {
 			paramNames.add(Constants.PARAM_TAG);
 		}
 
+		// Put the most selective parameters first
+		SearchParamSelectivitySvc.PredicatePlan predicatePlan = null;
+		if (isSelectivityBasedPredicateOrderingSupported(searchContainedMode)) {
+			predicatePlan = mySearchParamSelectivitySvc.planPredicates(myResourceName, paramNames, myParams, myRequestPartitionId);
+			paramNames = new ArrayList<>(predicatePlan.getParamNames());
+
+			// Interceptor broadcast: JPA_PERFTRACE_INFO
+			if (CompositeInterceptorBroadcaster.hasHooks(Pointcut.JPA_PERFTRACE_INFO, myInterceptorBroadcaster, theRequest)) {
+				StorageProcessingMessage msg = new StorageProcessingMessage()
+					.setMessage("Search predicate plan for " + myResourceName + ": " + predicatePlan.describe());
+				HookParams params = new HookParams()
+					.add(RequestDetails.class, theRequest)
+					.addIfMatchesType(ServletRequestDetails.class, theRequest)
+					.add(StorageProcessingMessage.class, msg);
+				CompositeInterceptorBroadcaster.doCallHooks(myInterceptorBroadcaster, theRequest, Pointcut.JPA_PERFTRACE_INFO, params);
+			}
+		}
+
 		// Handle each parameter
 		for (String nextParamName : paramNames) {
 			if (myParams.isLastN() && LastNParameterHelper.isLastNParameter(nextParamName, myContext)) {
@@ -269,13 +315,26 @@ public class SearchBuilder implements ISearchBuilder<JpaPid> {
 				continue;
 			}
 			List<List<IQueryParameterType>> andOrParams = myParams.get(nextParamName);
-			Condition predicate = theQueryStack.searchForIdsWithAndOr(null, myResourceName, nextParamName, andOrParams, theRequest, myRequestPartitionId, searchContainedMode);
+			Condition predicate;
+			if (predicatePlan != null && predicatePlan.isSubselect(nextParamName)) {
+				RuntimeSearchParam searchParam = mySearchParamRegistry.getActiveSearchParam(myResourceName, nextParamName);
+				predicate = theQueryStack.createPredicateTokenUsingSubselect(myResourceName, searchParam, andOrParams, myRequestPartitionId);
+			} else {
+				predicate = theQueryStack.searchForIdsWithAndOr(null, myResourceName, nextParamName, andOrParams, theRequest, myRequestPartitionId, searchContainedMode);
+			}
 			if (predicate != null) {
 				theSearchSqlBuilder.addPredicate(predicate);
 			}
 		}
 	}
 
+	private boolean isSelectivityBasedPredicateOrderingSupported(SearchContainedModeEnum theSearchContainedMode) {
+		return myStorageSettings.isSelectivityBasedPredicateOrderingEnabled() &&
+			mySearchParamSelectivitySvc != null &&
+			theSearchContainedMode == SearchContainedModeEnum.FALSE &&
+			!myParams.isLastN();
+	}
+
 	/**
 	 * A search is a candidate for Composite Unique SP if unique indexes are enabled, there is no EverythingMode, and the
 	 * parameters all have no modifiers.
@@ -309,6 +368,130 @@ public class SearchBuilder implements ISearchBuilder<JpaPid> {
 		}
 	}
 
+	@Override
+	public Long createEstimatedCountQuery(SearchParameterMap theParams, String theSearchUuid, RequestDetails theRequest, @Nonnull RequestPartitionId theRequestPartitionId) {
+		assert theRequestPartitionId != null;
+		assert TransactionSynchronizationManager.isActualTransactionActive();
+
+		init(theParams, theSearchUuid, theRequestPartitionId);
+
+		if (myParams.getEverythingMode() != null || myParams.isLastN() || checkUseHibernateSearch()) {
+			return null;
+		}
+
+		/*
+		 * Start with an upper bound based on the cached resource counts and the
+		 * per-hash index row counts, since this is cheap
+		 */
+		Long retVal = null;
+		if (mySearchParamSelectivitySvc != null) {
+			retVal = mySearchParamSelectivitySvc.estimateSearchCount(myResourceName, myParams, theRequestPartitionId);
+		}
+
+		/*
+		 * If the database can tell us how many rows it expects the actual query to
+		 * return without running it, use that too
+		 */
+		if (myDialectProvider.getDialect() instanceof PostgreSQL81Dialect) {
+			GeneratedSql generatedSql = createChunkedSql(theParams.clone(), null, null, null, false, theRequest, null, null);
+			if (generatedSql.isMatchNothing()) {
+				return 0L;
+			}
+			Long plannerEstimate = estimateRowsUsingQueryPlanner(generatedSql);
+			if (plannerEstimate != null && (retVal == null || plannerEstimate < retVal)) {
+				retVal = plannerEstimate;
+			}
+		}
+
+		return retVal;
+	}
+
+	/**
+	 * Asks the database for the number of rows its query planner expects the given
+	 * SQL to return. The query itself is not executed.
+	 */
+	@Nullable
+	private Long estimateRowsUsingQueryPlanner(GeneratedSql theGeneratedSql) {
+		JdbcTemplate jdbcTemplate = new JdbcTemplate(myEntityManagerFactory.getDataSource());
+		Object[] args = theGeneratedSql.getBindVariables().toArray(new Object[0]);
+		try {
+			List<String> plan = jdbcTemplate.query("EXPLAIN " + theGeneratedSql.getSql(), args, new SingleColumnRowMapper<>(String.class));
+			if (!plan.isEmpty()) {
+				Matcher matcher = ourExplainRowsPattern.matcher(plan.get(0));
+				if (matcher.find()) {
+					return Long.parseLong(matcher.group(1));
+				}
+			}
+		} catch (DataAccessException e) {
+			ourLog.warn("Failed to obtain query plan for estimated count: {}", e.toString());
+		}
+		return null;
+	}
+
+	/**
+	 * Generates (but does not execute) the SQL which would be used to fetch the
+	 * first chunk of matching resource PIDs for the given parameters.
+	 *
+	 * @return Returns <code>null</code> if the search is not performed using SQL against the
+	 * index tables, e.g. because it is an <code>$everything</code>, <code>$lastn</code> or fulltext search.
+	 * @since 6.8.0
+	 */
+	@Nullable
+	public GeneratedSql generateSearchSql(SearchParameterMap theParams, RequestDetails theRequest, @Nonnull RequestPartitionId theRequestPartitionId) {
+		assert theRequestPartitionId != null;
+
+		init(theParams, null, theRequestPartitionId);
+
+		if (myParams.getEverythingMode() != null || myParams.isLastN() || checkUseHibernateSearch()) {
+			return null;
+		}
+
+		return createChunkedSql(myParams.clone(), myParams.getSort(), myParams.getOffset(), null, false, theRequest, null, myMaxResultsToFetch);
+	}
+
+	/**
+	 * Asks the database for its execution plan for the given SQL. The query itself
+	 * is not executed.
+	 *
+	 * @return Returns one string per row of the plan, or <code>null</code> if the database
+	 * dialect is not supported or the plan could not be obtained
+	 * @since 6.8.0
+	 */
+	@Nullable
+	public List<String> explainSearchSql(GeneratedSql theGeneratedSql) {
+		Dialect dialect = myDialectProvider.getDialect();
+		if (!(dialect instanceof PostgreSQL81Dialect) && !(dialect instanceof H2Dialect) && !(dialect instanceof MySQLDialect)) {
+			return null;
+		}
+
+		JdbcTemplate jdbcTemplate = new JdbcTemplate(myEntityManagerFactory.getDataSource());
+		Object[] args = theGeneratedSql.getBindVariables().toArray(new Object[0]);
+		try {
+			return jdbcTemplate.query("EXPLAIN " + theGeneratedSql.getSql(), args, (theResultSet, theRowNum) -> {
+				ResultSetMetaData metaData = theResultSet.getMetaData();
+				if (metaData.getColumnCount() == 1) {
+					return theResultSet.getString(1);
+				}
+
+				// MySQL and MariaDB return the plan as a table with one column per attribute
+				StringBuilder b = new StringBuilder();
+				for (int i = 1; i <= metaData.getColumnCount(); i++) {
+					String value = theResultSet.getString(i);
+					if (value != null) {
+						if (b.length() > 0) {
+							b.append(' ');
+						}
+						b.append(metaData.getColumnLabel(i)).append('=').append(value);
+					}
+				}
+				return b.toString();
+			});
+		} catch (DataAccessException e) {
+			ourLog.warn("Failed to obtain query plan for search: {}", e.toString());
+			return null;
+		}
+	}
+
 	/**
 	 * @param thePidSet May be null
 	 */
@@ -528,6 +711,16 @@ public class SearchBuilder implements ISearchBuilder<JpaPid> {
 	}
 
 	private Optional<SearchQueryExecutor> createChunkedQuery(SearchParameterMap theParams, SortSpec sort, Integer theOffset, Integer theMaximumResults, boolean theCountOnlyFlag, RequestDetails theRequest, List<Long> thePidList) {
+		GeneratedSql generatedSql = createChunkedSql(theParams, sort, theOffset, theMaximumResults, theCountOnlyFlag, theRequest, thePidList, myMaxResultsToFetch);
+		if (generatedSql.isMatchNothing()) {
+			return Optional.empty();
+		}
+
+		SearchQueryExecutor executor = mySqlBuilderFactory.newSearchQueryExecutor(generatedSql, myMaxResultsToFetch);
+		return Optional.of(executor);
+	}
+
+	private GeneratedSql createChunkedSql(SearchParameterMap theParams, SortSpec sort, Integer theOffset, Integer theMaximumResults, boolean theCountOnlyFlag, RequestDetails theRequest, List<Long> thePidList, Integer theMaxResultsToFetch) {
 		String sqlBuilderResourceName = myParams.getEverythingMode() == null ? myResourceName : null;
 		SearchQueryBuilder sqlBuilder = new SearchQueryBuilder(myContext, myStorageSettings, myPartitionSettings, myRequestPartitionId, sqlBuilderResourceName, mySqlBuilderFactory, myDialectProvider, theCountOnlyFlag);
 		QueryStack queryStack3 = new QueryStack(theParams, myStorageSettings, myContext, sqlBuilder, mySearchParamRegistry, myPartitionSettings);
@@ -652,17 +845,24 @@ public class SearchBuilder implements ISearchBuilder<JpaPid> {
 			createSort(queryStack3, sort, theParams);
 		}
 
-
 		/*
-		 * Now perform the search
+		 * Keyset paging - If we know where the previous page ended, continue from
+		 * there instead of using an offset
 		 */
-		GeneratedSql generatedSql = sqlBuilder.generate(theOffset, myMaxResultsToFetch);
-		if (generatedSql.isMatchNothing()) {
-			return Optional.empty();
+		Integer offset = theOffset;
+		myKeysetPaging = sort != null && thePidList == null && mySearchKeysetPagingSvc != null && mySearchKeysetPagingSvc.isKeysetPagingCandidate(myResourceName, theParams);
+		if (myKeysetPaging) {
+			boolean ascending = sort.getOrder() != SortOrderEnum.DESC;
+			SearchKeysetPagingSvc.KeysetPosition position = mySearchKeysetPagingSvc.getPosition(theRequest, myResourceName, theParams, myRequestPartitionId);
+			if (position != null) {
+				queryStack3.addKeysetPaging(ascending, position.getLastSortValue(), position.getLastResourcePid());
+				offset = null;
+			} else {
+				queryStack3.addKeysetPaging(ascending, null, null);
+			}
 		}
 
-		SearchQueryExecutor executor = mySqlBuilderFactory.newSearchQueryExecutor(generatedSql, myMaxResultsToFetch);
-		return Optional.of(executor);
+		return sqlBuilder.generate(offset, theMaxResultsToFetch);
 	}
 
 	private Collection<String> extractTypeSourceResourcesFromParams() {
@@ -1066,10 +1266,67 @@ public class SearchBuilder implements ISearchBuilder<JpaPid> {
 			}
 		}
 
+		if (isLoadingInParallelSupported(thePids)) {
+			doLoadPidsInParallel(thePids, theIncludedPids, theResourceListToPopulate, theForHistoryOperation, theDetails, position);
+			return;
+		}
+
 		// We only chunk because some jdbc drivers can't handle long param lists.
 		new QueryChunker<JpaPid>().chunk(thePids, t -> doLoadPids(t, theIncludedPids, theResourceListToPopulate, theForHistoryOperation, position));
 	}
 
+	/**
+	 * Worker threads use their own transactions, so they would not see anything written (but not
+	 * yet committed) by a read-write transaction on the calling thread, e.g. a search inside a
+	 * FHIR transaction. We therefore only load in parallel from read-only transactions.
+	 */
+	private boolean isLoadingInParallelSupported(Collection<JpaPid> thePids) {
+		return myStorageSettings.getSearchResourceLoadThreadCount() > 1 &&
+			thePids.size() > myStorageSettings.getSearchResourceLoadBatchSize() &&
+			mySearchResourceLoadExecutor != null &&
+			myHapiTransactionService != null &&
+			(!TransactionSynchronizationManager.isActualTransactionActive() || TransactionSynchronizationManager.isCurrentTransactionReadOnly());
+	}
+
+	/**
+	 * Splits the PIDs into sub-batches which are each fetched and parsed on a separate thread,
+	 * in a separate read-only transaction. Each sub-batch is still chunked, since the batch size
+	 * may exceed what the JDBC driver accepts in a single IN list. Every resource goes into its own
+	 * pre-allocated slot in the list to populate, so the result order is the same as for a
+	 * sequential load.
+	 */
+	private void doLoadPidsInParallel(Collection<JpaPid> thePids, Collection<JpaPid> theIncludedPids, List<IBaseResource> theResourceListToPopulate, boolean theForHistoryOperation,
+												 RequestDetails theDetails, Map<JpaPid, Integer> thePosition) {
+		AsyncTaskExecutor executor = mySearchResourceLoadExecutor.getExecutor();
+		int batchSize = myStorageSettings.getSearchResourceLoadBatchSize();
+
+		List<Future<?>> futures = new ArrayList<>();
+		for (List<JpaPid> nextBatch : Lists.partition(new ArrayList<>(thePids), batchSize)) {
+			Runnable task = () -> myHapiTransactionService
+				.withRequest(theDetails)
+				.withRequestPartitionId(myRequestPartitionId)
+				.readOnly()
+				.execute(() -> new QueryChunker<JpaPid>().chunk(nextBatch, t -> doLoadPids(t, theIncludedPids, theResourceListToPopulate, theForHistoryOperation, thePosition)));
+			futures.add(executor.submit(task));
+		}
+
+		try {
+			for (Future<?> next : futures) {
+				next.get();
+			}
+		} catch (InterruptedException e) {
+			futures.forEach(t -> t.cancel(true));
+			Thread.currentThread().interrupt();
+			throw new InternalErrorException(Msg.code(2384) + "Interrupted while loading search results: " + e.getMessage(), e);
+		} catch (ExecutionException e) {
+			futures.forEach(t -> t.cancel(true));
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new InternalErrorException(Msg.code(2385) + "Failed to load search results: " + e.getCause(), e.getCause());
+		}
+	}
+
 	/**
 	 * Check if we can load the resources from Hibernate Search instead of the database.
 	 * We assume this is faster.
@@ -1142,12 +1399,9 @@ public class SearchBuilder implements ISearchBuilder<JpaPid> {
 		boolean reverseMode = theParameters.isReverseMode();
 		EntityManager entityManager = theParameters.getEntityManager();
 		Integer maxCount = theParameters.getMaxCount();
-		FhirContext fhirContext = theParameters.getFhirContext();
 		DateRangeParam lastUpdated = theParameters.getLastUpdated();
 		RequestDetails request = theParameters.getRequestDetails();
 		String searchIdOrDescription = theParameters.getSearchIdOrDescription();
-		List<String> desiredResourceTypes = theParameters.getDesiredResourceTypes();
-		boolean hasDesiredResourceTypes = desiredResourceTypes != null && !desiredResourceTypes.isEmpty();
 		if (CompositeInterceptorBroadcaster.hasHooks(Pointcut.JPA_PERFTRACE_RAW_SQL, myInterceptorBroadcaster, theParameters.getRequestDetails())) {
 			CurrentThreadCaptureQueriesListener.startCapturing();
 		}
@@ -1157,13 +1411,6 @@ public class SearchBuilder implements ISearchBuilder<JpaPid> {
 		if (currentIncludes == null || currentIncludes.isEmpty()) {
 			return new HashSet<>();
 		}
-		String searchPidFieldName = reverseMode ? MY_TARGET_RESOURCE_PID : MY_SOURCE_RESOURCE_PID;
-		String findPidFieldName = reverseMode ? MY_SOURCE_RESOURCE_PID : MY_TARGET_RESOURCE_PID;
-		String findResourceTypeFieldName = reverseMode ? MY_SOURCE_RESOURCE_TYPE : MY_TARGET_RESOURCE_TYPE;
-		String findVersionFieldName = null;
-		if (!reverseMode && myStorageSettings.isRespectVersionsForSearchIncludes()) {
-			findVersionFieldName = MY_TARGET_RESOURCE_VERSION;
-		}
 
 		List<JpaPid> nextRoundMatches = new ArrayList<>(matches);
 		HashSet<JpaPid> allAdded = new HashSet<>();
@@ -1179,201 +1426,14 @@ public class SearchBuilder implements ISearchBuilder<JpaPid> {
 
 			HashSet<JpaPid> pidsToInclude = new HashSet<>();
 
-			for (Iterator<Include> iter = includes.iterator(); iter.hasNext(); ) {
-				Include nextInclude = iter.next();
-				if (nextInclude.isRecurse() == false) {
-					iter.remove();
-				}
-
-				// Account for _include=*
-				boolean matchAll = "*".equals(nextInclude.getValue());
-
-				// Account for _include=[resourceType]:*
-				String wantResourceType = null;
-				if (!matchAll) {
-					if ("*".equals(nextInclude.getParamName())) {
-						wantResourceType = nextInclude.getParamType();
-						matchAll = true;
-					}
-				}
-
-				if (matchAll) {
-					StringBuilder sqlBuilder = new StringBuilder();
-					sqlBuilder.append("SELECT r.").append(findPidFieldName);
-					sqlBuilder.append(", r.").append(findResourceTypeFieldName);
-					if (findVersionFieldName != null) {
-						sqlBuilder.append(", r.").append(findVersionFieldName);
-					}
-					sqlBuilder.append(" FROM ResourceLink r WHERE ");
-
-					sqlBuilder.append("r.");
-					sqlBuilder.append(searchPidFieldName); // (rev mode) target_resource_id | source_resource_id
-					sqlBuilder.append(" IN (:target_pids)");
-
-					/*
-					 * We need to set the resource type in 2 cases only:
-					 * 1) we are in $everything mode
-					 * 		(where we only want to fetch specific resource types, regardless of what is
-					 * 		available to fetch)
-					 * 2) we are doing revincludes
-					 *
-					 *	Technically if the request is a qualified star (e.g. _include=Observation:*) we
-					 * should always be checking the source resource type on the resource link. We don't
-					 * actually index that column though by default, so in order to try and be efficient
-					 * we don't actually include it for includes (but we do for revincludes). This is
-					 * because for an include, it doesn't really make sense to include a different
-					 * resource type than the one you are searching on.
-					 */
-					if (wantResourceType != null
-						&& (reverseMode || (myParams != null && myParams.getEverythingMode() != null))
-					) {
-						// because mySourceResourceType is not part of the HFJ_RES_LINK
-						// index, this might not be the most optimal performance.
-						// but it is for an $everything operation (and maybe we should update the index)
-						sqlBuilder.append(" AND r.mySourceResourceType = :want_resource_type");
-					} else {
-						wantResourceType = null;
-					}
-
-					// When calling $everything on a Patient instance, we don't want to recurse into new Patient resources
-					// (e.g. via Provenance, List, or Group) when in an $everything operation
-					if (myParams != null && myParams.getEverythingMode() == SearchParameterMap.EverythingModeEnum.PATIENT_INSTANCE) {
-						sqlBuilder.append(" AND r.myTargetResourceType != 'Patient'");
-						sqlBuilder.append(" AND r.mySourceResourceType != 'Provenance'");
-					}
-					if (hasDesiredResourceTypes) {
-						sqlBuilder.append(" AND r.myTargetResourceType IN (:desired_target_resource_types)");
-					}
-
-					String sql = sqlBuilder.toString();
-					List<Collection<JpaPid>> partitions = partition(nextRoundMatches, getMaximumPageSize());
-					for (Collection<JpaPid> nextPartition : partitions) {
-						TypedQuery<?> q = entityManager.createQuery(sql, Object[].class);
-						q.setParameter("target_pids", JpaPid.toLongList(nextPartition));
-						if (wantResourceType != null) {
-							q.setParameter("want_resource_type", wantResourceType);
-						}
-						if (maxCount != null) {
-							q.setMaxResults(maxCount);
-						}
-						if (hasDesiredResourceTypes) {
-							q.setParameter("desired_target_resource_types", String.join(", ", desiredResourceTypes));
-						}
-						List<?> results = q.getResultList();
-						for (Object nextRow : results) {
-							if (nextRow == null) {
-								// This can happen if there are outgoing references which are canonical or point to
-								// other servers
-								continue;
-							}
-
-							Long version = null;
-							Long resourceLink = (Long) ((Object[]) nextRow)[0];
-							String resourceType = (String) ((Object[]) nextRow)[1];
-							if (findVersionFieldName != null) {
-								version = (Long) ((Object[]) nextRow)[2];
-							}
+			List<Include> roundIncludes = new ArrayList<>(includes);
+			includes.removeIf(t -> !t.isRecurse());
 
-							if (resourceLink != null) {
-								JpaPid pid = JpaPid.fromIdAndVersionAndResourceType(resourceLink, version, resourceType);
-								pidsToInclude.add(pid);
-							}
-						}
-					}
-				} else {
-					List<String> paths;
-
-					// Start replace
-					RuntimeSearchParam param;
-					String resType = nextInclude.getParamType();
-					if (isBlank(resType)) {
-						continue;
-					}
-					RuntimeResourceDefinition def = fhirContext.getResourceDefinition(resType);
-					if (def == null) {
-						ourLog.warn("Unknown resource type in include/revinclude=" + nextInclude.getValue());
-						continue;
-					}
-
-					String paramName = nextInclude.getParamName();
-					if (isNotBlank(paramName)) {
-						param = mySearchParamRegistry.getActiveSearchParam(resType, paramName);
-					} else {
-						param = null;
-					}
-					if (param == null) {
-						ourLog.warn("Unknown param name in include/revinclude=" + nextInclude.getValue());
-						continue;
-					}
-
-					paths = param.getPathsSplitForResourceType(resType);
-					// end replace
-
-					Set<String> targetResourceTypes = computeTargetResourceTypes(nextInclude, param);
-
-					for (String nextPath : paths) {
-						String findPidFieldSqlColumn = findPidFieldName.equals(MY_SOURCE_RESOURCE_PID) ? "src_resource_id" : "target_resource_id";
-						String fieldsToLoad = "r." + findPidFieldSqlColumn + " AS " + RESOURCE_ID_ALIAS;
-						if (findVersionFieldName != null) {
-							fieldsToLoad += ", r.target_resource_version AS " + RESOURCE_VERSION_ALIAS;
-						}
-						
-						// Query for includes lookup has 2 cases
-						// Case 1: Where target_resource_id is available in hfj_res_link table for local references
-						// Case 2: Where target_resource_id is null in hfj_res_link table and referred by a canonical url in target_resource_url
-
-						// Case 1:
-						Map<String, Object> localReferenceQueryParams = new HashMap<>();
-
-						String searchPidFieldSqlColumn = searchPidFieldName.equals(MY_TARGET_RESOURCE_PID) ? "target_resource_id" : "src_resource_id";
-						StringBuilder localReferenceQuery = new StringBuilder("SELECT " + fieldsToLoad +
-							" FROM hfj_res_link r " +
-							" WHERE r.src_path = :src_path AND " +
-							" r.target_resource_id IS NOT NULL AND " +
-							" r." + searchPidFieldSqlColumn + " IN (:target_pids) ");
-						localReferenceQueryParams.put("src_path", nextPath);
-						// we loop over target_pids later.
-						if (targetResourceTypes != null) {
-							if (targetResourceTypes.size() == 1) {
-								localReferenceQuery.append(" AND r.target_resource_type = :target_resource_type ");
-								localReferenceQueryParams.put("target_resource_type", targetResourceTypes.iterator().next());
-							} else {
-								localReferenceQuery.append(" AND r.target_resource_type in (:target_resource_types) ");
-								localReferenceQueryParams.put("target_resource_types", targetResourceTypes);
-							}
-						}
-
-						// Case 2:
-						Pair<String, Map<String, Object>> canonicalQuery = buildCanonicalUrlQuery(findVersionFieldName, searchPidFieldSqlColumn, targetResourceTypes);
-
-						//@formatter:on
-
-						String sql = localReferenceQuery + " UNION " + canonicalQuery.getLeft();
-
-						List<Collection<JpaPid>> partitions = partition(nextRoundMatches, getMaximumPageSize());
-						for (Collection<JpaPid> nextPartition : partitions) {
-							Query q = entityManager.createNativeQuery(sql, Tuple.class);
-							q.setParameter("target_pids", JpaPid.toLongList(nextPartition));
-							localReferenceQueryParams.forEach(q::setParameter);
-							canonicalQuery.getRight().forEach(q::setParameter);
-
-							if (maxCount != null) {
-								q.setMaxResults(maxCount);
-							}
-							@SuppressWarnings("unchecked")
-							List<Tuple> results = q.getResultList();
-							for (Tuple result : results) {
-								if (result != null) {
-									Long resourceId = NumberUtils.createLong(String.valueOf(result.get(RESOURCE_ID_ALIAS)));
-									Long resourceVersion = null;
-									if (findVersionFieldName != null && result.get(RESOURCE_VERSION_ALIAS) != null) {
-										resourceVersion = NumberUtils.createLong(String.valueOf(result.get(RESOURCE_VERSION_ALIAS)));
-									}
-									pidsToInclude.add(JpaPid.fromIdAndVersion(resourceId, resourceVersion));
-								}
-							}
-						}
-					}
+			if (isLoadingIncludesInParallelSupported(roundIncludes, request)) {
+				pidsToInclude.addAll(loadIncludesInParallel(theParameters, roundIncludes, nextRoundMatches));
+			} else {
+				for (Include nextInclude : roundIncludes) {
+					pidsToInclude.addAll(loadIncludePids(entityManager, theParameters, nextInclude, nextRoundMatches));
 				}
 			}
 
@@ -1429,6 +1489,270 @@ public class SearchBuilder implements ISearchBuilder<JpaPid> {
 		return allAdded;
 	}
 
+	/**
+	 * Worker threads use their own transactions, so as with {@link #isLoadingInParallelSupported(Collection)}
+	 * we only resolve includes in parallel from read-only transactions. Queries issued by worker
+	 * threads would also not be captured for the {@link Pointcut#JPA_PERFTRACE_RAW_SQL} pointcut.
+	 */
+	private boolean isLoadingIncludesInParallelSupported(List<Include> theIncludes, RequestDetails theRequest) {
+		return myStorageSettings.getSearchIncludeThreadCount() > 1 &&
+			theIncludes.size() > 1 &&
+			mySearchIncludeExecutor != null &&
+			myHapiTransactionService != null &&
+			(!TransactionSynchronizationManager.isActualTransactionActive() || TransactionSynchronizationManager.isCurrentTransactionReadOnly()) &&
+			!CompositeInterceptorBroadcaster.hasHooks(Pointcut.JPA_PERFTRACE_RAW_SQL, myInterceptorBroadcaster, theRequest);
+	}
+
+	/**
+	 * Resolves each include on a separate thread, in a separate read-only transaction, and
+	 * merges the results
+	 */
+	private Set<JpaPid> loadIncludesInParallel(SearchBuilderLoadIncludesParameters<JpaPid> theParameters, List<Include> theIncludes, Collection<JpaPid> theMatches) {
+		AsyncTaskExecutor executor = mySearchIncludeExecutor.getExecutor();
+
+		List<Future<Set<JpaPid>>> futures = new ArrayList<>();
+		for (Include nextInclude : theIncludes) {
+			Callable<Set<JpaPid>> task = () -> myHapiTransactionService
+				.withRequest(theParameters.getRequestDetails())
+				.withRequestPartitionId(myRequestPartitionId)
+				.readOnly()
+				.execute(() -> loadIncludePids(myEntityManager, theParameters, nextInclude, theMatches));
+			futures.add(executor.submit(task));
+		}
+
+		Set<JpaPid> retVal = new HashSet<>();
+		try {
+			for (Future<Set<JpaPid>> next : futures) {
+				retVal.addAll(next.get());
+			}
+		} catch (InterruptedException e) {
+			futures.forEach(t -> t.cancel(true));
+			Thread.currentThread().interrupt();
+			throw new InternalErrorException(Msg.code(2400) + "Interrupted while loading search includes: " + e.getMessage(), e);
+		} catch (ExecutionException e) {
+			futures.forEach(t -> t.cancel(true));
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new InternalErrorException(Msg.code(2401) + "Failed to load search includes: " + e.getCause(), e.getCause());
+		}
+		return retVal;
+	}
+
+	/**
+	 * Performs the queries for a single <code>_include</code> or <code>_revinclude</code> against
+	 * the given matches
+	 */
+	private Set<JpaPid> loadIncludePids(EntityManager theEntityManager, SearchBuilderLoadIncludesParameters<JpaPid> theParameters, Include theInclude, Collection<JpaPid> theMatches) {
+		boolean reverseMode = theParameters.isReverseMode();
+		Integer maxCount = theParameters.getMaxCount();
+		FhirContext fhirContext = theParameters.getFhirContext();
+		List<String> desiredResourceTypes = theParameters.getDesiredResourceTypes();
+		boolean hasDesiredResourceTypes = desiredResourceTypes != null && !desiredResourceTypes.isEmpty();
+		String searchPidFieldName = reverseMode ? MY_TARGET_RESOURCE_PID : MY_SOURCE_RESOURCE_PID;
+		String findPidFieldName = reverseMode ? MY_SOURCE_RESOURCE_PID : MY_TARGET_RESOURCE_PID;
+		String findResourceTypeFieldName = reverseMode ? MY_SOURCE_RESOURCE_TYPE : MY_TARGET_RESOURCE_TYPE;
+		String findVersionFieldName = null;
+		if (!reverseMode && myStorageSettings.isRespectVersionsForSearchIncludes()) {
+			findVersionFieldName = MY_TARGET_RESOURCE_VERSION;
+		}
+
+		Set<JpaPid> retVal = new HashSet<>();
+
+		// Account for _include=*
+		boolean matchAll = "*".equals(theInclude.getValue());
+
+		// Account for _include=[resourceType]:*
+		String wantResourceType = null;
+		if (!matchAll) {
+			if ("*".equals(theInclude.getParamName())) {
+				wantResourceType = theInclude.getParamType();
+				matchAll = true;
+			}
+		}
+
+		if (matchAll) {
+			StringBuilder sqlBuilder = new StringBuilder();
+			sqlBuilder.append("SELECT r.").append(findPidFieldName);
+			sqlBuilder.append(", r.").append(findResourceTypeFieldName);
+			if (findVersionFieldName != null) {
+				sqlBuilder.append(", r.").append(findVersionFieldName);
+			}
+			sqlBuilder.append(" FROM ResourceLink r WHERE ");
+
+			sqlBuilder.append("r.");
+			sqlBuilder.append(searchPidFieldName); // (rev mode) target_resource_id | source_resource_id
+			sqlBuilder.append(" IN (:target_pids)");
+
+			/*
+			 * We need to set the resource type in 2 cases only:
+			 * 1) we are in $everything mode
+			 * 		(where we only want to fetch specific resource types, regardless of what is
+			 * 		available to fetch)
+			 * 2) we are doing revincludes
+			 *
+			 *	Technically if the request is a qualified star (e.g. _include=Observation:*) we
+			 * should always be checking the source resource type on the resource link. We don't
+			 * actually index that column though by default, so in order to try and be efficient
+			 * we don't actually include it for includes (but we do for revincludes). This is
+			 * because for an include, it doesn't really make sense to include a different
+			 * resource type than the one you are searching on.
+			 */
+			if (wantResourceType != null
+				&& (reverseMode || (myParams != null && myParams.getEverythingMode() != null))
+			) {
+				// because mySourceResourceType is not part of the HFJ_RES_LINK
+				// index, this might not be the most optimal performance.
+				// but it is for an $everything operation (and maybe we should update the index)
+				sqlBuilder.append(" AND r.mySourceResourceType = :want_resource_type");
+			} else {
+				wantResourceType = null;
+			}
+
+			// When calling $everything on a Patient instance, we don't want to recurse into new Patient resources
+			// (e.g. via Provenance, List, or Group) when in an $everything operation
+			if (myParams != null && myParams.getEverythingMode() == SearchParameterMap.EverythingModeEnum.PATIENT_INSTANCE) {
+				sqlBuilder.append(" AND r.myTargetResourceType != 'Patient'");
+				sqlBuilder.append(" AND r.mySourceResourceType != 'Provenance'");
+			}
+			if (hasDesiredResourceTypes) {
+				sqlBuilder.append(" AND r.myTargetResourceType IN (:desired_target_resource_types)");
+			}
+
+			String sql = sqlBuilder.toString();
+			List<Collection<JpaPid>> partitions = partition(theMatches, getMaximumPageSize());
+			for (Collection<JpaPid> nextPartition : partitions) {
+				TypedQuery<?> q = theEntityManager.createQuery(sql, Object[].class);
+				q.setParameter("target_pids", JpaPid.toLongList(nextPartition));
+				if (wantResourceType != null) {
+					q.setParameter("want_resource_type", wantResourceType);
+				}
+				if (maxCount != null) {
+					q.setMaxResults(maxCount);
+				}
+				if (hasDesiredResourceTypes) {
+					q.setParameter("desired_target_resource_types", String.join(", ", desiredResourceTypes));
+				}
+				List<?> results = q.getResultList();
+				for (Object nextRow : results) {
+					if (nextRow == null) {
+						// This can happen if there are outgoing references which are canonical or point to
+						// other servers
+						continue;
+					}
+
+					Long version = null;
+					Long resourceLink = (Long) ((Object[]) nextRow)[0];
+					String resourceType = (String) ((Object[]) nextRow)[1];
+					if (findVersionFieldName != null) {
+						version = (Long) ((Object[]) nextRow)[2];
+					}
+
+					if (resourceLink != null) {
+						JpaPid pid = JpaPid.fromIdAndVersionAndResourceType(resourceLink, version, resourceType);
+						retVal.add(pid);
+					}
+				}
+			}
+		} else {
+			List<String> paths;
+
+			// Start replace
+			RuntimeSearchParam param;
+			String resType = theInclude.getParamType();
+			if (isBlank(resType)) {
+				return retVal;
+			}
+			RuntimeResourceDefinition def = fhirContext.getResourceDefinition(resType);
+			if (def == null) {
+				ourLog.warn("Unknown resource type in include/revinclude=" + theInclude.getValue());
+				return retVal;
+			}
+
+			String paramName = theInclude.getParamName();
+			if (isNotBlank(paramName)) {
+				param = mySearchParamRegistry.getActiveSearchParam(resType, paramName);
+			} else {
+				param = null;
+			}
+			if (param == null) {
+				ourLog.warn("Unknown param name in include/revinclude=" + theInclude.getValue());
+				return retVal;
+			}
+
+			paths = param.getPathsSplitForResourceType(resType);
+			// end replace
+
+			Set<String> targetResourceTypes = computeTargetResourceTypes(theInclude, param);
+
+			for (String nextPath : paths) {
+				String findPidFieldSqlColumn = findPidFieldName.equals(MY_SOURCE_RESOURCE_PID) ? "src_resource_id" : "target_resource_id";
+				String fieldsToLoad = "r." + findPidFieldSqlColumn + " AS " + RESOURCE_ID_ALIAS;
+				if (findVersionFieldName != null) {
+					fieldsToLoad += ", r.target_resource_version AS " + RESOURCE_VERSION_ALIAS;
+				}
+				
+				// Query for includes lookup has 2 cases
+				// Case 1: Where target_resource_id is available in hfj_res_link table for local references
+				// Case 2: Where target_resource_id is null in hfj_res_link table and referred by a canonical url in target_resource_url
+
+				// Case 1:
+				Map<String, Object> localReferenceQueryParams = new HashMap<>();
+
+				String searchPidFieldSqlColumn = searchPidFieldName.equals(MY_TARGET_RESOURCE_PID) ? "target_resource_id" : "src_resource_id";
+				StringBuilder localReferenceQuery = new StringBuilder("SELECT " + fieldsToLoad +
+					" FROM hfj_res_link r " +
+					" WHERE r.src_path = :src_path AND " +
+					" r.target_resource_id IS NOT NULL AND " +
+					" r." + searchPidFieldSqlColumn + " IN (:target_pids) ");
+				localReferenceQueryParams.put("src_path", nextPath);
+				// we loop over target_pids later.
+				if (targetResourceTypes != null) {
+					if (targetResourceTypes.size() == 1) {
+						localReferenceQuery.append(" AND r.target_resource_type = :target_resource_type ");
+						localReferenceQueryParams.put("target_resource_type", targetResourceTypes.iterator().next());
+					} else {
+						localReferenceQuery.append(" AND r.target_resource_type in (:target_resource_types) ");
+						localReferenceQueryParams.put("target_resource_types", targetResourceTypes);
+					}
+				}
+
+				// Case 2:
+				Pair<String, Map<String, Object>> canonicalQuery = buildCanonicalUrlQuery(findVersionFieldName, searchPidFieldSqlColumn, targetResourceTypes);
+
+				//@formatter:on
+
+				String sql = localReferenceQuery + " UNION " + canonicalQuery.getLeft();
+
+				List<Collection<JpaPid>> partitions = partition(theMatches, getMaximumPageSize());
+				for (Collection<JpaPid> nextPartition : partitions) {
+					Query q = theEntityManager.createNativeQuery(sql, Tuple.class);
+					q.setParameter("target_pids", JpaPid.toLongList(nextPartition));
+					localReferenceQueryParams.forEach(q::setParameter);
+					canonicalQuery.getRight().forEach(q::setParameter);
+
+					if (maxCount != null) {
+						q.setMaxResults(maxCount);
+					}
+					@SuppressWarnings("unchecked")
+					List<Tuple> results = q.getResultList();
+					for (Tuple result : results) {
+						if (result != null) {
+							Long resourceId = NumberUtils.createLong(String.valueOf(result.get(RESOURCE_ID_ALIAS)));
+							Long resourceVersion = null;
+							if (findVersionFieldName != null && result.get(RESOURCE_VERSION_ALIAS) != null) {
+								resourceVersion = NumberUtils.createLong(String.valueOf(result.get(RESOURCE_VERSION_ALIAS)));
+							}
+							retVal.add(JpaPid.fromIdAndVersion(resourceId, resourceVersion));
+						}
+					}
+				}
+			}
+		}
+
+		return retVal;
+	}
+
 	/**
 	 * Given a
 	 * @param request
@@ -1662,6 +1986,7 @@ public class SearchBuilder implements ISearchBuilder<JpaPid> {
 		return myResourceType;
 	}
 
+	@Override
 	public String getResourceName() {
 		return myResourceName;
 	}
@@ -1750,6 +2075,7 @@ public class SearchBuilder implements ISearchBuilder<JpaPid> {
 		private boolean myFetchIncludesForEverythingOperation;
 		private int mySkipCount = 0;
 		private int myNonSkipCount = 0;
+		private Long myLastResourcePid;
 		private List<ISearchQueryExecutor> myQueryList = new ArrayList<>();
 
 		private QueryIterator(SearchRuntimeDetails theSearchRuntimeDetails, RequestDetails theRequest) {
@@ -1813,6 +2139,7 @@ public class SearchBuilder implements ISearchBuilder<JpaPid> {
 							}
 
 							Long nextLong = myResultsIterator.next();
+							myLastResourcePid = nextLong;
 							if (myHavePerfTraceFoundIdHook) {
 								HookParams params = new HookParams()
 									.add(Integer.class, System.identityHashCode(this))
@@ -1853,6 +2180,14 @@ public class SearchBuilder implements ISearchBuilder<JpaPid> {
 						}
 					}
 
+					if (myNext == null && myKeysetPaging) {
+						// If this page was full, remember where it ended so that the next page can continue from there
+						if (myLastResourcePid != null && myMaxResultsToFetch != null && mySkipCount + myNonSkipCount == myMaxResultsToFetch) {
+							mySearchKeysetPagingSvc.storePosition(myRequest, mySearchUuid, myResourceName, myParams, myRequestPartitionId, myOffset + myMaxResultsToFetch, myLastResourcePid);
+						}
+						myKeysetPaging = false;
+					}
+
 					if (myNext == null) {
 						// if we got here, it means the current PjaPid has already been processed
 						// and we will decide (here) if we need to fetch related resources recursively
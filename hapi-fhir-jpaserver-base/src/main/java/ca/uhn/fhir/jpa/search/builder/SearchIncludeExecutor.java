@@ -0,0 +1,71 @@
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2023 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ca.uhn.fhir.jpa.search.builder;
+
+import ca.uhn.fhir.jpa.api.config.JpaStorageSettings;
+import ca.uhn.fhir.util.ThreadPoolUtil;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Holds the shared thread pool used by {@link SearchBuilder} to resolve the
+ * <code>_include</code> and <code>_revinclude</code> parameters of a search in parallel.
+ *
+ * @see JpaStorageSettings#setSearchIncludeThreadCount(int)
+ * @since 6.8.0
+ */
+public class SearchIncludeExecutor {
+	/**
+	 * The number of include queries which may be queued for each thread before the calling
+	 * thread runs include queries itself
+	 */
+	private static final int QUEUE_CAPACITY_PER_THREAD = 10;
+
+	@Autowired
+	private JpaStorageSettings myStorageSettings;
+	private ThreadPoolTaskExecutor myExecutor;
+
+	/**
+	 * Returns the executor, creating it using the thread count configured in
+	 * {@link JpaStorageSettings#getSearchIncludeThreadCount()} if needed. The queue
+	 * is bounded, and once it is full include queries are run by the submitting thread.
+	 */
+	public synchronized AsyncTaskExecutor getExecutor() {
+		if (myExecutor == null) {
+			int threadCount = myStorageSettings.getSearchIncludeThreadCount();
+			myExecutor = ThreadPoolUtil.newThreadPool(threadCount, threadCount, "search-include-", threadCount * QUEUE_CAPACITY_PER_THREAD);
+			myExecutor.getThreadPoolExecutor().setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+		}
+		return myExecutor;
+	}
+
+	@PreDestroy
+	public synchronized void stop() {
+		if (myExecutor != null) {
+			myExecutor.shutdown();
+			myExecutor = null;
+		}
+	}
+
+}
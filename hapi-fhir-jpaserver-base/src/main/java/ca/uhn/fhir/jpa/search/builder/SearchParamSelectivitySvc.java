@@ -0,0 +1,556 @@
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2023 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ca.uhn.fhir.jpa.search.builder;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.RuntimeSearchParam;
+import ca.uhn.fhir.interceptor.model.RequestPartitionId;
+import ca.uhn.fhir.jpa.api.config.JpaStorageSettings;
+import ca.uhn.fhir.jpa.config.HibernatePropertiesProvider;
+import ca.uhn.fhir.jpa.dao.tx.IHapiTransactionService;
+import ca.uhn.fhir.jpa.model.config.PartitionSettings;
+import ca.uhn.fhir.jpa.model.entity.BaseResourceIndexedSearchParam;
+import ca.uhn.fhir.jpa.model.entity.ResourceIndexedSearchParamString;
+import ca.uhn.fhir.jpa.model.entity.ResourceIndexedSearchParamToken;
+import ca.uhn.fhir.jpa.model.entity.ResourceIndexedSearchParamUri;
+import ca.uhn.fhir.jpa.search.builder.predicate.BaseJoiningPredicateBuilder;
+import ca.uhn.fhir.jpa.search.builder.sql.GeneratedSql;
+import ca.uhn.fhir.jpa.search.builder.sql.SearchQueryBuilder;
+import ca.uhn.fhir.jpa.search.builder.sql.SqlObjectFactory;
+import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
+import ca.uhn.fhir.jpa.util.MemoryCacheService;
+import ca.uhn.fhir.jpa.util.ResourceCountCache;
+import ca.uhn.fhir.model.api.IQueryParameterType;
+import ca.uhn.fhir.rest.api.RestSearchParameterTypeEnum;
+import ca.uhn.fhir.rest.param.StringParam;
+import ca.uhn.fhir.rest.param.TokenParam;
+import ca.uhn.fhir.rest.param.UriParam;
+import ca.uhn.fhir.rest.server.util.ISearchParamRegistry;
+import ca.uhn.fhir.util.ThreadPoolUtil;
+import com.google.common.annotations.VisibleForTesting;
+import com.healthmarketscience.sqlbuilder.BinaryCondition;
+import org.apache.commons.lang3.time.DateUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import javax.annotation.Nullable;
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.PersistenceContextType;
+import javax.persistence.Query;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.function.Function;
+
+import static org.apache.commons.lang3.StringUtils.isBlank;
+import static org.apache.commons.lang3.StringUtils.isNotBlank;
+
+/**
+ * Estimates how many index rows match each parameter of a search, and uses these estimates
+ * to decide the order in which {@link SearchBuilder} adds the parameter predicates to the
+ * generated SQL, and whether a token parameter is joined or expressed as a subselect.
+ * <p>
+ * Estimates are obtained by counting the index rows matching the hash for a parameter value
+ * (or, where a predicate can't be reduced to a single hash, the rows for the parameter as a
+ * whole), up to {@link #MAX_ROWS_TO_COUNT}. Rows are counted using a <code>COUNT(*)</code> over a
+ * subquery limited to that many rows, so the database stops scanning the index once the limit
+ * is reached and no row data is returned. Counts are cached per request partition in the
+ * {@link MemoryCacheService}. Once a cached count is older than {@link #REFRESH_AFTER_MILLIS} it is
+ * still used, and is resampled on a background thread rather than by the searching thread.
+ * </p>
+ *
+ * @see ca.uhn.fhir.jpa.api.config.JpaStorageSettings#setSelectivityBasedPredicateOrderingEnabled(boolean)
+ * @since 6.8.0
+ */
+public class SearchParamSelectivitySvc {
+
+	/**
+	 * Index rows are only counted up to this limit
+	 */
+	public static final int MAX_ROWS_TO_COUNT = 10000;
+
+	/**
+	 * Cached counts older than this are resampled in the background
+	 */
+	public static final long REFRESH_AFTER_MILLIS = 5 * DateUtils.MILLIS_PER_MINUTE;
+
+	/**
+	 * A token parameter matching at least this many rows, and at least {@link #DEFAULT_SUBSELECT_RATIO}
+	 * times as many rows as the most selective parameter, is expressed as a subselect
+	 */
+	private static final long DEFAULT_SUBSELECT_MINIMUM_ROWS = 1000;
+	private static final long DEFAULT_SUBSELECT_RATIO = 100;
+	private static final int REFRESH_QUEUE_CAPACITY = 100;
+	private static final Logger ourLog = LoggerFactory.getLogger(SearchParamSelectivitySvc.class);
+
+	@PersistenceContext(type = PersistenceContextType.TRANSACTION)
+	private EntityManager myEntityManager;
+	@Autowired
+	private FhirContext myFhirContext;
+	@Autowired
+	private JpaStorageSettings myStorageSettings;
+	@Autowired
+	private SqlObjectFactory mySqlBuilderFactory;
+	@Autowired
+	private HibernatePropertiesProvider myDialectProvider;
+	@Autowired
+	private ISearchParamRegistry mySearchParamRegistry;
+	@Autowired
+	private PartitionSettings myPartitionSettings;
+	@Autowired
+	private MemoryCacheService myMemoryCacheService;
+	@Autowired
+	private IHapiTransactionService myTransactionService;
+	@Autowired(required = false)
+	private ResourceCountCache myResourceCountCache;
+	private long mySubselectMinimumRows = DEFAULT_SUBSELECT_MINIMUM_ROWS;
+	private long mySubselectRatio = DEFAULT_SUBSELECT_RATIO;
+	private long myRefreshAfterMillis = REFRESH_AFTER_MILLIS;
+	private final Set<String> myRefreshesInProgress = ConcurrentHashMap.newKeySet();
+	private ThreadPoolTaskExecutor myRefreshExecutor;
+
+	/**
+	 * Orders the given parameters so that those with the lowest estimated row counts come
+	 * first. Parameters for which no estimate is available (e.g. chained parameters or
+	 * parameters with modifiers) keep their original position. If fewer than two parameters
+	 * can be estimated there is nothing to reorder, so no rows are counted at all.
+	 */
+	public PredicatePlan planPredicates(String theResourceName, List<String> theParamNames, SearchParameterMap theParams, RequestPartitionId theRequestPartitionId) {
+		Map<String, List<List<RowCountQuery>>> queries = new LinkedHashMap<>();
+		List<Integer> estimatedPositions = new ArrayList<>();
+		for (int i = 0; i < theParamNames.size(); i++) {
+			String nextParamName = theParamNames.get(i);
+			List<List<RowCountQuery>> nextQueries = toRowCountQueries(theResourceName, nextParamName, theParams.get(nextParamName), theRequestPartitionId);
+			if (nextQueries != null) {
+				queries.put(nextParamName, nextQueries);
+				estimatedPositions.add(i);
+			}
+		}
+
+		if (queries.size() < 2) {
+			return new PredicatePlan(theParamNames, Collections.emptyMap(), Collections.emptySet());
+		}
+
+		Map<String, Long> estimates = new LinkedHashMap<>();
+		for (Map.Entry<String, List<List<RowCountQuery>>> next : queries.entrySet()) {
+			estimates.put(next.getKey(), estimateRowCount(next.getValue()));
+		}
+
+		List<String> estimatedParamNames = new ArrayList<>(estimates.keySet());
+		estimatedParamNames.sort(Comparator.comparing(estimates::get));
+
+		List<String> paramNames = new ArrayList<>(theParamNames);
+		for (int i = 0; i < estimatedPositions.size(); i++) {
+			paramNames.set(estimatedPositions.get(i), estimatedParamNames.get(i));
+		}
+
+		Set<String> subselectParamNames = new HashSet<>();
+		if (!estimatedParamNames.isEmpty()) {
+			long minimumEstimate = estimates.get(estimatedParamNames.get(0));
+			for (String nextParamName : estimatedParamNames) {
+				long estimate = estimates.get(nextParamName);
+				RuntimeSearchParam searchParam = mySearchParamRegistry.getActiveSearchParam(theResourceName, nextParamName);
+				if (paramNames.indexOf(nextParamName) > 0 &&
+					searchParam.getParamType() == RestSearchParameterTypeEnum.TOKEN &&
+					estimate >= mySubselectMinimumRows &&
+					estimate >= minimumEstimate * mySubselectRatio) {
+					subselectParamNames.add(nextParamName);
+				}
+			}
+		}
+
+		return new PredicatePlan(paramNames, estimates, subselectParamNames);
+	}
+
+	/**
+	 * Returns an upper bound on the number of resources matching the given search, for use
+	 * with <code>_total=estimated</code>. This is the smallest of the cached number of
+	 * resources of the given type, and the estimated number of index rows matching each
+	 * parameter (where this is known to be below {@link #MAX_ROWS_TO_COUNT}).
+	 * <p>
+	 * The cached resource counts cover all partitions, so they are only used when the search
+	 * is not restricted to specific partitions, and only for resource types which have been
+	 * counted.
+	 * </p>
+	 *
+	 * @return The estimate, or <code>null</code> if nothing is known about the search
+	 */
+	@Nullable
+	public Long estimateSearchCount(String theResourceName, SearchParameterMap theParams, RequestPartitionId theRequestPartitionId) {
+		Long retVal = null;
+		if (myResourceCountCache != null && (!myPartitionSettings.isPartitioningEnabled() || theRequestPartitionId.isAllPartitions())) {
+			Map<String, Long> resourceCounts = myResourceCountCache.get();
+			if (resourceCounts != null) {
+				retVal = resourceCounts.get(theResourceName);
+			}
+		}
+
+		for (String nextParamName : theParams.keySet()) {
+			Long estimate = estimateRowCount(theResourceName, nextParamName, theParams.get(nextParamName), theRequestPartitionId);
+			if (estimate != null && estimate < MAX_ROWS_TO_COUNT && (retVal == null || estimate < retVal)) {
+				retVal = estimate;
+			}
+		}
+		return retVal;
+	}
+
+	@VisibleForTesting
+	public void setSubselectThresholdsForUnitTests(long theMinimumRows, long theRatio) {
+		mySubselectMinimumRows = theMinimumRows;
+		mySubselectRatio = theRatio;
+	}
+
+	@VisibleForTesting
+	public void setRefreshAfterMillisForUnitTests(long theRefreshAfterMillis) {
+		myRefreshAfterMillis = theRefreshAfterMillis;
+	}
+
+	/**
+	 * Returns <code>true</code> if no cached counts are currently being resampled
+	 */
+	@VisibleForTesting
+	public boolean isIdleForUnitTest() {
+		return myRefreshesInProgress.isEmpty();
+	}
+
+	@PreDestroy
+	public synchronized void stop() {
+		if (myRefreshExecutor != null) {
+			myRefreshExecutor.shutdown();
+			myRefreshExecutor = null;
+		}
+	}
+
+	/**
+	 * Returns the estimated number of index rows matching the given parameter, capped at
+	 * {@link #MAX_ROWS_TO_COUNT}, or <code>null</code> if no estimate is available
+	 */
+	@Nullable
+	public Long estimateRowCount(String theResourceName, String theParamName, @Nullable List<List<IQueryParameterType>> theAndOrParams, RequestPartitionId theRequestPartitionId) {
+		List<List<RowCountQuery>> queries = toRowCountQueries(theResourceName, theParamName, theAndOrParams, theRequestPartitionId);
+		if (queries == null) {
+			return null;
+		}
+		return estimateRowCount(queries);
+	}
+
+	private long estimateRowCount(List<List<RowCountQuery>> theAndOrQueries) {
+		Long retVal = null;
+		for (List<RowCountQuery> nextAnd : theAndOrQueries) {
+			long orTotal = 0;
+			for (RowCountQuery nextOr : nextAnd) {
+				orTotal = Math.min(orTotal + countRows(nextOr), MAX_ROWS_TO_COUNT);
+			}
+			if (retVal == null || orTotal < retVal) {
+				retVal = orTotal;
+			}
+		}
+		return retVal;
+	}
+
+	/**
+	 * Returns the index row counts needed to estimate the given parameter, grouped the same way
+	 * as the parameter values, or <code>null</code> if no estimate is available. No rows are
+	 * counted by this method.
+	 */
+	@Nullable
+	private List<List<RowCountQuery>> toRowCountQueries(String theResourceName, String theParamName, @Nullable List<List<IQueryParameterType>> theAndOrParams, RequestPartitionId theRequestPartitionId) {
+		if (theAndOrParams == null || theAndOrParams.isEmpty() || theParamName.startsWith("_")) {
+			return null;
+		}
+		RuntimeSearchParam searchParam = mySearchParamRegistry.getActiveSearchParam(theResourceName, theParamName);
+		if (searchParam == null) {
+			return null;
+		}
+
+		List<List<RowCountQuery>> retVal = new ArrayList<>(theAndOrParams.size());
+		for (List<IQueryParameterType> nextAnd : theAndOrParams) {
+			List<RowCountQuery> orQueries = new ArrayList<>(nextAnd.size());
+			for (IQueryParameterType nextOr : nextAnd) {
+				RowCountQuery query = toRowCountQuery(theResourceName, searchParam, nextOr, theRequestPartitionId);
+				if (query == null) {
+					return null;
+				}
+				orQueries.add(query);
+			}
+			retVal.add(orQueries);
+		}
+		return retVal;
+	}
+
+	@Nullable
+	private RowCountQuery toRowCountQuery(String theResourceName, RuntimeSearchParam theSearchParam, IQueryParameterType theParam, RequestPartitionId theRequestPartitionId) {
+		if (theParam.getMissing() != null) {
+			return null;
+		}
+		String paramName = theSearchParam.getName();
+		switch (theSearchParam.getParamType()) {
+			case TOKEN: {
+				if (!(theParam instanceof TokenParam) || ((TokenParam) theParam).getModifier() != null) {
+					return null;
+				}
+				TokenParam param = (TokenParam) theParam;
+				String system = param.getSystem();
+				String value = param.getValue();
+				if (isBlank(value)) {
+					if (isBlank(system)) {
+						return null;
+					}
+					long hash = ResourceIndexedSearchParamToken.calculateHashSystem(myPartitionSettings, theRequestPartitionId, theResourceName, paramName, system);
+					return new RowCountQuery(IndexTable.TOKEN, theResourceName, theRequestPartitionId, "HASH_SYS", hash);
+				}
+				if (system == null) {
+					long hash = ResourceIndexedSearchParamToken.calculateHashValue(myPartitionSettings, theRequestPartitionId, theResourceName, paramName, value);
+					return new RowCountQuery(IndexTable.TOKEN, theResourceName, theRequestPartitionId, "HASH_VALUE", hash);
+				}
+				long hash = ResourceIndexedSearchParamToken.calculateHashSystemAndValue(myPartitionSettings, theRequestPartitionId, theResourceName, paramName, system, value);
+				return new RowCountQuery(IndexTable.TOKEN, theResourceName, theRequestPartitionId, "HASH_SYS_AND_VALUE", hash);
+			}
+			case STRING: {
+				if (theParam instanceof StringParam && ((StringParam) theParam).isExact()) {
+					long hash = ResourceIndexedSearchParamString.calculateHashExact(myPartitionSettings, theRequestPartitionId, theResourceName, paramName, ((StringParam) theParam).getValue());
+					return new RowCountQuery(IndexTable.STRING, theResourceName, theRequestPartitionId, "HASH_EXACT", hash);
+				}
+				return rowCountQueryForParam(IndexTable.STRING, theResourceName, paramName, theRequestPartitionId);
+			}
+			case URI: {
+				if (theParam instanceof UriParam && ((UriParam) theParam).getQualifier() == null && isNotBlank(((UriParam) theParam).getValue())) {
+					long hash = ResourceIndexedSearchParamUri.calculateHashUri(myPartitionSettings, theRequestPartitionId, theResourceName, paramName, ((UriParam) theParam).getValue());
+					return new RowCountQuery(IndexTable.URI, theResourceName, theRequestPartitionId, "HASH_URI", hash);
+				}
+				return rowCountQueryForParam(IndexTable.URI, theResourceName, paramName, theRequestPartitionId);
+			}
+			case DATE:
+				return rowCountQueryForParam(IndexTable.DATE, theResourceName, paramName, theRequestPartitionId);
+			case NUMBER:
+				return rowCountQueryForParam(IndexTable.NUMBER, theResourceName, paramName, theRequestPartitionId);
+			case QUANTITY:
+				return rowCountQueryForParam(IndexTable.QUANTITY, theResourceName, paramName, theRequestPartitionId);
+			default:
+				return null;
+		}
+	}
+
+	/**
+	 * Counts all index rows for the given parameter, which is an upper bound on the rows
+	 * matching any predicate on that parameter
+	 */
+	private RowCountQuery rowCountQueryForParam(IndexTable theTable, String theResourceName, String theParamName, RequestPartitionId theRequestPartitionId) {
+		long hash = BaseResourceIndexedSearchParam.calculateHashIdentity(myPartitionSettings, theRequestPartitionId, theResourceName, theParamName);
+		return new RowCountQuery(theTable, theResourceName, theRequestPartitionId, "HASH_IDENTITY", hash);
+	}
+
+	/**
+	 * Returns the cached count for the given query, counting the rows if there is none. A
+	 * cached count which is due to be resampled is returned as is, and resampled in the background.
+	 */
+	private long countRows(RowCountQuery theQuery) {
+		String key = theQuery.getCacheKey();
+		RowCount retVal = myMemoryCacheService.get(MemoryCacheService.CacheEnum.SEARCH_PARAM_SELECTIVITY, key, t -> doCountRows(theQuery));
+		if (System.currentTimeMillis() - retVal.getCountedAtMillis() >= myRefreshAfterMillis) {
+			refreshInBackground(theQuery);
+		}
+		return retVal.getCount();
+	}
+
+	private void refreshInBackground(RowCountQuery theQuery) {
+		String key = theQuery.getCacheKey();
+		if (!myRefreshesInProgress.add(key)) {
+			return;
+		}
+
+		try {
+			getRefreshExecutor().execute(() -> {
+				try {
+					RowCount count = myTransactionService
+						.withSystemRequest()
+						.withRequestPartitionId(theQuery.myRequestPartitionId)
+						.readOnly()
+						.execute(() -> doCountRows(theQuery));
+					myMemoryCacheService.put(MemoryCacheService.CacheEnum.SEARCH_PARAM_SELECTIVITY, key, count);
+				} catch (Exception e) {
+					ourLog.warn("Failed to refresh search parameter selectivity estimate {}: {}", key, e.toString());
+				} finally {
+					myRefreshesInProgress.remove(key);
+				}
+			});
+		} catch (TaskRejectedException e) {
+			ourLog.debug("Not refreshing search parameter selectivity estimate {}, too many refreshes are already queued", key);
+			myRefreshesInProgress.remove(key);
+		}
+	}
+
+	private synchronized ThreadPoolTaskExecutor getRefreshExecutor() {
+		if (myRefreshExecutor == null) {
+			myRefreshExecutor = ThreadPoolUtil.newThreadPool(1, 1, "search-param-selectivity-", REFRESH_QUEUE_CAPACITY);
+			// Refreshing is optional, so never block the searching thread if the queue is full
+			myRefreshExecutor.getThreadPoolExecutor().setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+		}
+		return myRefreshExecutor;
+	}
+
+	private RowCount doCountRows(RowCountQuery theQuery) {
+		SearchQueryBuilder sqlBuilder = new SearchQueryBuilder(myFhirContext, myStorageSettings, myPartitionSettings, theQuery.myRequestPartitionId, theQuery.myResourceName, mySqlBuilderFactory, myDialectProvider, false);
+		BaseJoiningPredicateBuilder predicateBuilder = theQuery.myTable.addTo(sqlBuilder);
+		sqlBuilder.addPredicate(BinaryCondition.equalTo(predicateBuilder.getTable().findColumn(theQuery.myHashColumn), sqlBuilder.generatePlaceholder(theQuery.myHash)));
+		GeneratedSql limitedSql = sqlBuilder.generate(null, MAX_ROWS_TO_COUNT);
+
+		Query query = myEntityManager.createNativeQuery("SELECT COUNT(*) FROM (" + limitedSql.getSql() + ") r");
+		List<Object> bindVariables = limitedSql.getBindVariables();
+		for (int i = 0; i < bindVariables.size(); i++) {
+			query.setParameter(i + 1, bindVariables.get(i));
+		}
+		long count = ((Number) query.getSingleResult()).longValue();
+		return new RowCount(count, System.currentTimeMillis());
+	}
+
+	private enum IndexTable {
+		DATE(t -> t.addDatePredicateBuilder(null)),
+		NUMBER(t -> t.addNumberPredicateBuilder(null)),
+		QUANTITY(t -> t.addQuantityPredicateBuilder(null)),
+		STRING(t -> t.addStringPredicateBuilder(null)),
+		TOKEN(t -> t.addTokenPredicateBuilder(null)),
+		URI(t -> t.addUriPredicateBuilder(null));
+
+		private final Function<SearchQueryBuilder, BaseJoiningPredicateBuilder> myFactory;
+
+		IndexTable(Function<SearchQueryBuilder, BaseJoiningPredicateBuilder> theFactory) {
+			myFactory = theFactory;
+		}
+
+		BaseJoiningPredicateBuilder addTo(SearchQueryBuilder theSqlBuilder) {
+			return myFactory.apply(theSqlBuilder);
+		}
+	}
+
+	/**
+	 * A count of the index rows in one table matching one hash value
+	 */
+	private static class RowCountQuery {
+
+		private final IndexTable myTable;
+		private final String myResourceName;
+		private final RequestPartitionId myRequestPartitionId;
+		private final String myHashColumn;
+		private final long myHash;
+
+		private RowCountQuery(IndexTable theTable, String theResourceName, RequestPartitionId theRequestPartitionId, String theHashColumn, long theHash) {
+			myTable = theTable;
+			myResourceName = theResourceName;
+			myRequestPartitionId = theRequestPartitionId;
+			myHashColumn = theHashColumn;
+			myHash = theHash;
+		}
+
+		/**
+		 * The hash may not include the partition, but the counted rows are always restricted to it
+		 */
+		private String getCacheKey() {
+			String partition = myRequestPartitionId != null ? RequestPartitionId.stringifyForKey(myRequestPartitionId) : "";
+			return myTable.name() + " " + myHashColumn + " " + myHash + " " + partition;
+		}
+	}
+
+	/**
+	 * A cached row count, and when it was counted
+	 */
+	private static class RowCount {
+
+		private final long myCount;
+		private final long myCountedAtMillis;
+
+		private RowCount(long theCount, long theCountedAtMillis) {
+			myCount = theCount;
+			myCountedAtMillis = theCountedAtMillis;
+		}
+
+		long getCount() {
+			return myCount;
+		}
+
+		long getCountedAtMillis() {
+			return myCountedAtMillis;
+		}
+	}
+
+	/**
+	 * The order in which the parameters of a search should be added to the query, and which
+	 * parameters should be expressed as a subselect
+	 */
+	public static class PredicatePlan {
+
+		private final List<String> myParamNames;
+		private final Map<String, Long> myEstimates;
+		private final Set<String> mySubselectParamNames;
+
+		public PredicatePlan(List<String> theParamNames, Map<String, Long> theEstimates, Set<String> theSubselectParamNames) {
+			myParamNames = Collections.unmodifiableList(theParamNames);
+			myEstimates = Collections.unmodifiableMap(theEstimates);
+			mySubselectParamNames = Collections.unmodifiableSet(theSubselectParamNames);
+		}
+
+		public List<String> getParamNames() {
+			return myParamNames;
+		}
+
+		public boolean isSubselect(String theParamName) {
+			return mySubselectParamNames.contains(theParamName);
+		}
+
+		@Nullable
+		public Long getEstimate(String theParamName) {
+			return myEstimates.get(theParamName);
+		}
+
+		/**
+		 * Returns a description of the plan, e.g.
+		 * <code>status (~12 rows, join), code (~10000+ rows, subselect), subject (no estimate, join)</code>
+		 */
+		public String describe() {
+			List<String> parts = new ArrayList<>();
+			for (String next : myParamNames) {
+				Long estimate = myEstimates.get(next);
+				String estimateString;
+				if (estimate == null) {
+					estimateString = "no estimate";
+				} else if (estimate >= MAX_ROWS_TO_COUNT) {
+					estimateString = "~" + estimate + "+ rows";
+				} else {
+					estimateString = "~" + estimate + " rows";
+				}
+				parts.add(next + " (" + estimateString + ", " + (isSubselect(next) ? "subselect" : "join") + ")");
+			}
+			return String.join(", ", parts);
+		}
+	}
+
+}
@@ -56,6 +56,7 @@ import com.healthmarketscience.sqlbuilder.FunctionCall;
 import com.healthmarketscience.sqlbuilder.InCondition;
 import com.healthmarketscience.sqlbuilder.OrderObject;
 import com.healthmarketscience.sqlbuilder.SelectQuery;
+import com.healthmarketscience.sqlbuilder.UnaryCondition;
 import com.healthmarketscience.sqlbuilder.dbspec.Join;
 import com.healthmarketscience.sqlbuilder.dbspec.basic.DbColumn;
 import com.healthmarketscience.sqlbuilder.dbspec.basic.DbJoin;
@@ -861,6 +862,52 @@ public class SearchQueryBuilder {
 		}
 	}
 
+	/**
+	 * Adds a predicate which only matches results sorting after the given position, for a search
+	 * sorted on the given column and then on the resource ID. This is used for keyset paging.
+	 *
+	 * @param theSortColumn         The column the search is sorted on
+	 * @param theSortColumnNullable Can the sort column (or aggregate) be null
+	 * @param theAscending          Is the sort ascending
+	 * @param theUseAggregate       Is the sort on an aggregate of the column (i.e. the query is grouped by resource ID)
+	 * @param theLastSortValue      The sort value of the last result on the previous page
+	 * @param theLastResourcePid    The resource ID of the last result on the previous page
+	 */
+	public void addKeysetPagingPredicate(DbColumn theSortColumn, boolean theSortColumnNullable, boolean theAscending, boolean theUseAggregate, @Nullable Object theLastSortValue, long theLastResourcePid) {
+		Object sortExpression = theSortColumn;
+		if (theUseAggregate) {
+			sortExpression = theAscending ? FunctionCall.min().addColumnParams(theSortColumn) : FunctionCall.max().addColumnParams(theSortColumn);
+		}
+
+		// MySQL and MSSQL put nulls first when sorting in ascending order, other databases put them last (see addSortDate)
+		boolean nullsLast = !theAscending || !(dialectIsMySql || dialectIsMsSql);
+
+		DbColumn resourceIdColumn = getOrCreateFirstPredicateBuilder().getResourceIdColumn();
+		String resourceIdPlaceholder = generatePlaceholder(theLastResourcePid);
+		Condition resourceIdAfter = theAscending ? BinaryCondition.greaterThan(resourceIdColumn, resourceIdPlaceholder) : BinaryCondition.lessThan(resourceIdColumn, resourceIdPlaceholder);
+
+		Condition condition;
+		if (theLastSortValue != null) {
+			String sortValuePlaceholder = generatePlaceholder(theLastSortValue);
+			Condition sortValueAfter = theAscending ? BinaryCondition.greaterThan(sortExpression, sortValuePlaceholder) : BinaryCondition.lessThan(sortExpression, sortValuePlaceholder);
+			condition = ComboCondition.or(sortValueAfter, ComboCondition.and(BinaryCondition.equalTo(sortExpression, sortValuePlaceholder), resourceIdAfter));
+			if (theSortColumnNullable && nullsLast) {
+				condition = ComboCondition.or(condition, UnaryCondition.isNull(sortExpression));
+			}
+		} else {
+			condition = ComboCondition.and(UnaryCondition.isNull(sortExpression), resourceIdAfter);
+			if (!nullsLast) {
+				condition = ComboCondition.or(condition, UnaryCondition.isNotNull(sortExpression));
+			}
+		}
+
+		if (theUseAggregate) {
+			mySelect.addHaving(condition);
+		} else {
+			addPredicate(condition);
+		}
+	}
+
 	private void addSort(DbColumn theTheColumnValueNormalized, boolean theTheAscending, OrderObject.NullOrder theNullOrder, boolean theUseAggregate) {
 		OrderObject.Dir direction = theTheAscending ? OrderObject.Dir.ASCENDING : OrderObject.Dir.DESCENDING;
 		Object columnToOrder = theTheColumnValueNormalized;
@@ -61,6 +61,7 @@ import org.springframework.transaction.annotation.Isolation;
 import org.springframework.transaction.annotation.Propagation;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Iterator;
@@ -71,6 +72,7 @@ import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
 import static ca.uhn.fhir.jpa.util.SearchParameterMapCalculator.isWantCount;
+import static ca.uhn.fhir.jpa.util.SearchParameterMapCalculator.isWantEstimatedCount;
 import static ca.uhn.fhir.jpa.util.SearchParameterMapCalculator.isWantOnlyCount;
 import static java.util.Objects.nonNull;
 import static org.apache.commons.lang3.ObjectUtils.defaultIfNull;
@@ -122,6 +124,7 @@ public class SearchTask implements Callable<Void> {
 	private boolean myAdditionalPrefetchThresholdsRemaining;
 	private List<JpaPid> myPreviouslyAddedResourcePids;
 	private Integer myMaxResultsToFetch;
+	private volatile Long myEstimatedCount;
 	/**
 	 * Constructor
 	 */
@@ -189,6 +192,16 @@ public class SearchTask implements Callable<Void> {
 		return mySearch;
 	}
 
+	/**
+	 * Returns the estimated number of matching resources, if the search was performed
+	 * with <code>_total=estimated</code> and an estimate could be produced. This is
+	 * available once {@link #awaitInitialSync()} has returned.
+	 */
+	@Nullable
+	public Long getEstimatedCount() {
+		return myEstimatedCount;
+	}
+
 	public CountDownLatch getInitialCollectionLatch() {
 		return myInitialCollectionLatch;
 	}
@@ -530,6 +543,13 @@ public class SearchTask implements Callable<Void> {
 			}
 		}
 
+		boolean myParamOrDefaultWantEstimatedCount = nonNull(myParams.getSearchTotalMode()) ? isWantEstimatedCount(myParams.getSearchTotalMode()) : isWantEstimatedCount(myStorageSettings.getDefaultTotalMode());
+		if (myParamOrDefaultWantEstimatedCount) {
+			ourLog.trace("Performing estimated count");
+			myEstimatedCount = newSearchBuilder().createEstimatedCountQuery(myParams.clone(), mySearch.getUuid(), myRequest, myRequestPartitionId);
+			ourLog.trace("Got estimated count {}", myEstimatedCount);
+		}
+
 		ourLog.trace("Done count");
 		ISearchBuilder sb = newSearchBuilder();
 
@@ -0,0 +1,157 @@
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2023 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ca.uhn.fhir.jpa.search.cache;
+
+import ca.uhn.fhir.interceptor.model.RequestPartitionId;
+import ca.uhn.fhir.jpa.api.config.JpaStorageSettings;
+import ca.uhn.fhir.jpa.dao.data.ISearchResultChunkDao;
+import ca.uhn.fhir.jpa.dao.tx.IHapiTransactionService;
+import ca.uhn.fhir.jpa.entity.Search;
+import ca.uhn.fhir.jpa.entity.SearchResultChunk;
+import ca.uhn.fhir.jpa.model.dao.JpaPid;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Lists;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Search result cache which stores the results of each call to
+ * {@link #storeResults(Search, List, List, RequestDetails, RequestPartitionId)} as a small number of
+ * {@link SearchResultChunk} rows holding the encoded PIDs, instead of one
+ * {@link ca.uhn.fhir.jpa.entity.SearchResult} row per PID. Fetching a page of results only loads
+ * and decodes the chunks which overlap with that page.
+ * <p>
+ * This implementation is only registered if {@link JpaStorageSettings#isSearchResultChunkStorageEnabled()}
+ * is enabled when the server starts. New searches only store their results as chunks while the setting
+ * is enabled, and {@link Search#isResultsChunked()} records which form each search started with so that
+ * later batches of results, reads and deletes only ever touch the table which holds its results.
+ * </p>
+ *
+ * @since 6.8.0
+ */
+public class ChunkedDatabaseSearchResultCacheSvcImpl extends DatabaseSearchResultCacheSvcImpl {
+
+	public static final int DEFAULT_MAX_PIDS_PER_CHUNK = 10000;
+	private static final Logger ourLog = LoggerFactory.getLogger(ChunkedDatabaseSearchResultCacheSvcImpl.class);
+	private static int ourMaximumPidsPerChunk = DEFAULT_MAX_PIDS_PER_CHUNK;
+
+	@Autowired
+	private ISearchResultChunkDao mySearchResultChunkDao;
+	@Autowired
+	private IHapiTransactionService myTransactionService;
+	@Autowired
+	private JpaStorageSettings myStorageSettings;
+
+	@Override
+	public List<JpaPid> fetchResultPids(Search theSearch, int theFrom, int theTo, RequestDetails theRequestDetails, RequestPartitionId theRequestPartitionId) {
+		if (!theSearch.isResultsChunked()) {
+			return super.fetchResultPids(theSearch, theFrom, theTo, theRequestDetails, theRequestPartitionId);
+		}
+
+		return myTransactionService
+			.withRequest(theRequestDetails)
+			.withRequestPartitionId(theRequestPartitionId)
+			.execute(() -> {
+				if (theTo <= theFrom) {
+					return Collections.emptyList();
+				}
+
+				List<SearchResultChunk> chunks = mySearchResultChunkDao.findForSearchInRange(theSearch.getId(), theFrom, theTo);
+				List<Long> pids = new ArrayList<>(theTo - theFrom);
+				for (SearchResultChunk next : chunks) {
+					int from = Math.max(theFrom - next.getFirstOrder(), 0);
+					int to = Math.min(theTo - next.getFirstOrder(), next.getPidCount());
+					pids.addAll(SearchResultChunkCodec.decode(next.getPidData(), from, to));
+				}
+
+				ourLog.debug("fetchResultPids for range {}-{} returned {} pids from {} chunks", theFrom, theTo, pids.size(), chunks.size());
+				return JpaPid.fromLongList(pids);
+			});
+	}
+
+	@Override
+	public List<JpaPid> fetchAllResultPids(Search theSearch, RequestDetails theRequestDetails, RequestPartitionId theRequestPartitionId) {
+		if (!theSearch.isResultsChunked()) {
+			return super.fetchAllResultPids(theSearch, theRequestDetails, theRequestPartitionId);
+		}
+
+		return myTransactionService
+			.withRequest(theRequestDetails)
+			.withRequestPartitionId(theRequestPartitionId)
+			.execute(() -> {
+				List<Long> pids = new ArrayList<>();
+				for (SearchResultChunk next : mySearchResultChunkDao.findForSearch(theSearch.getId())) {
+					pids.addAll(SearchResultChunkCodec.decode(next.getPidData()));
+				}
+				ourLog.trace("fetchAllResultPids returned {} pids", pids.size());
+				return JpaPid.fromLongList(pids);
+			});
+	}
+
+	@Override
+	public void storeResults(Search theSearch, List<JpaPid> thePreviouslyStoredResourcePids, List<JpaPid> theNewResourcePids, RequestDetails theRequestDetails, RequestPartitionId theRequestPartitionId) {
+		if (theNewResourcePids.isEmpty()) {
+			return;
+		}
+
+		// A search keeps storing its results in the form it started with, even if the setting has changed since.
+		// The flag is persisted along with the rest of the search by the caller.
+		if (thePreviouslyStoredResourcePids.isEmpty() && myStorageSettings.isSearchResultChunkStorageEnabled()) {
+			theSearch.setResultsChunked(true);
+		}
+		if (!theSearch.isResultsChunked()) {
+			super.storeResults(theSearch, thePreviouslyStoredResourcePids, theNewResourcePids, theRequestDetails, theRequestPartitionId);
+			return;
+		}
+
+		myTransactionService
+			.withRequest(theRequestDetails)
+			.withRequestPartitionId(theRequestPartitionId)
+			.execute(() -> {
+				ourLog.debug("Storing {} results with {} previous for search", theNewResourcePids.size(), thePreviouslyStoredResourcePids.size());
+
+				List<SearchResultChunk> chunksToSave = new ArrayList<>();
+				int order = thePreviouslyStoredResourcePids.size();
+				for (List<JpaPid> nextPartition : Lists.partition(theNewResourcePids, ourMaximumPidsPerChunk)) {
+					List<Long> pids = JpaPid.toLongList(nextPartition);
+					SearchResultChunk chunk = new SearchResultChunk(theSearch);
+					chunk.setFirstOrder(order);
+					chunk.setPidCount(pids.size());
+					chunk.setPidData(SearchResultChunkCodec.encode(pids));
+					chunksToSave.add(chunk);
+					order += pids.size();
+				}
+
+				mySearchResultChunkDao.saveAll(chunksToSave);
+			});
+	}
+
+	@VisibleForTesting
+	public static void setMaximumPidsPerChunkForUnitTest(int theMaximumPidsPerChunk) {
+		ourMaximumPidsPerChunk = theMaximumPidsPerChunk;
+	}
+
+}
@@ -24,6 +24,7 @@ import ca.uhn.fhir.interceptor.model.RequestPartitionId;
 import ca.uhn.fhir.jpa.api.config.JpaStorageSettings;
 import ca.uhn.fhir.jpa.dao.data.ISearchDao;
 import ca.uhn.fhir.jpa.dao.data.ISearchIncludeDao;
+import ca.uhn.fhir.jpa.dao.data.ISearchResultChunkDao;
 import ca.uhn.fhir.jpa.dao.data.ISearchResultDao;
 import ca.uhn.fhir.jpa.dao.tx.HapiTransactionService;
 import ca.uhn.fhir.jpa.dao.tx.IHapiTransactionService;
@@ -77,6 +78,8 @@ public class DatabaseSearchCacheSvcImpl implements ISearchCacheSvc {
 	@Autowired
 	private ISearchIncludeDao mySearchIncludeDao;
 	@Autowired
+	private ISearchResultChunkDao mySearchResultChunkDao;
+	@Autowired
 	private IHapiTransactionService myTransactionService;
 	@Autowired
 	private JpaStorageSettings myStorageSettings;
@@ -149,6 +152,10 @@ public class DatabaseSearchCacheSvcImpl implements ISearchCacheSvc {
 			// We should only reuse our search if it was created within the permitted window
 			// Date.after() is unreliable.  Instant.isAfter() always works.
 			if (queryString.equals(nextCandidateSearch.getSearchQueryString()) && nextCandidateSearch.getCreated().toInstant().isAfter(theCreatedAfter)) {
+				// Results stored as chunks may not be readable while chunk storage is disabled
+				if (nextCandidateSearch.isResultsChunked() && !myStorageSettings.isSearchResultChunkStorageEnabled()) {
+					continue;
+				}
 				return Optional.of(nextCandidateSearch);
 			}
 		}
@@ -227,6 +234,9 @@ public class DatabaseSearchCacheSvcImpl implements ISearchCacheSvc {
 	private void deleteSearch(final Long theSearchPid) {
 		mySearchDao.findById(theSearchPid).ifPresent(searchToDelete -> {
 			mySearchIncludeDao.deleteForSearch(searchToDelete.getId());
+			if (searchToDelete.isResultsChunked()) {
+				mySearchResultChunkDao.deleteForSearch(searchToDelete.getId());
+			}
 
 			/*
 			 * Note, we're only deleting up to 500 results in an individual search here. This
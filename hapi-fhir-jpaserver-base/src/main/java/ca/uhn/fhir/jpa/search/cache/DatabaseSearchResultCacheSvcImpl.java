@@ -25,6 +25,7 @@ import ca.uhn.fhir.jpa.dao.tx.IHapiTransactionService;
 import ca.uhn.fhir.jpa.entity.Search;
 import ca.uhn.fhir.jpa.entity.SearchResult;
 import ca.uhn.fhir.jpa.model.dao.JpaPid;
+import ca.uhn.fhir.jpa.search.ExceptionService;
 import ca.uhn.fhir.rest.api.server.RequestDetails;
 import com.google.common.collect.Lists;
 import org.slf4j.Logger;
@@ -46,8 +47,12 @@ public class DatabaseSearchResultCacheSvcImpl implements ISearchResultCacheSvc {
 	@Autowired
 	private IHapiTransactionService myTransactionService;
 
+	@Autowired
+	private ExceptionService myExceptionSvc;
+
 	@Override
 	public List<JpaPid> fetchResultPids(Search theSearch, int theFrom, int theTo, RequestDetails theRequestDetails, RequestPartitionId theRequestPartitionId) {
+		failIfResultsChunked(theSearch);
 		return myTransactionService
 			.withRequest(theRequestDetails)
 			.withRequestPartitionId(theRequestPartitionId)
@@ -69,6 +74,7 @@ public class DatabaseSearchResultCacheSvcImpl implements ISearchResultCacheSvc {
 
 	@Override
 	public List<JpaPid> fetchAllResultPids(Search theSearch, RequestDetails theRequestDetails, RequestPartitionId theRequestPartitionId) {
+		failIfResultsChunked(theSearch);
 		return myTransactionService
 			.withRequest(theRequestDetails)
 			.withRequestPartitionId(theRequestPartitionId)
@@ -104,4 +110,14 @@ public class DatabaseSearchResultCacheSvcImpl implements ISearchResultCacheSvc {
 			});
 	}
 
+	/**
+	 * Searches which stored their results as chunks while chunk storage was enabled can't be
+	 * read once the server has been restarted without it, so they are treated as expired.
+	 */
+	private void failIfResultsChunked(Search theSearch) {
+		if (theSearch.isResultsChunked()) {
+			throw myExceptionSvc.newUnknownSearchException(theSearch.getUuid());
+		}
+	}
+
 }
@@ -0,0 +1,119 @@
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2023 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ca.uhn.fhir.jpa.search.cache;
+
+import ca.uhn.fhir.i18n.Msg;
+import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Encodes a list of resource PIDs in a compact binary form for storage in a
+ * {@link ca.uhn.fhir.jpa.entity.SearchResultChunk}.
+ * <p>
+ * The format is a version byte, followed by the number of PIDs and then the difference
+ * between each PID and the previous one (the first PID is relative to 0). All numbers are
+ * written as variable length integers, and the differences are zigzag encoded since search
+ * results are not necessarily in ascending PID order. Results sorted by PID (or by anything
+ * correlated with creation order) therefore typically need only one or two bytes per PID.
+ * </p>
+ *
+ * @since 6.8.0
+ */
+public final class SearchResultChunkCodec {
+
+	private static final int FORMAT_VERSION = 1;
+
+	/**
+	 * Non instantiable
+	 */
+	private SearchResultChunkCodec() {
+		super();
+	}
+
+	public static byte[] encode(List<Long> thePids) {
+		ByteArrayOutputStream os = new ByteArrayOutputStream(2 + thePids.size() * 2);
+		os.write(FORMAT_VERSION);
+		writeVarLong(os, thePids.size());
+		long previous = 0;
+		for (Long next : thePids) {
+			long delta = next - previous;
+			writeVarLong(os, (delta << 1) ^ (delta >> 63));
+			previous = next;
+		}
+		return os.toByteArray();
+	}
+
+	public static List<Long> decode(byte[] theData) {
+		return decode(theData, 0, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Decodes the PIDs at index <code>theFrom</code> (inclusive) to <code>theTo</code> (exclusive)
+	 * within the encoded list. Decoding stops once <code>theTo</code> has been reached.
+	 */
+	public static List<Long> decode(byte[] theData, int theFrom, int theTo) {
+		int[] position = new int[]{0};
+		if (theData.length == 0 || theData[0] != FORMAT_VERSION) {
+			throw new InternalErrorException(Msg.code(2397) + "Unknown search result chunk format");
+		}
+		position[0] = 1;
+
+		long count = readVarLong(theData, position);
+		int to = (int) Math.min(count, theTo);
+		List<Long> retVal = new ArrayList<>(Math.max(0, to - theFrom));
+		long previous = 0;
+		for (int i = 0; i < to; i++) {
+			long zigzag = readVarLong(theData, position);
+			previous += (zigzag >>> 1) ^ -(zigzag & 1);
+			if (i >= theFrom) {
+				retVal.add(previous);
+			}
+		}
+		return retVal;
+	}
+
+	private static void writeVarLong(ByteArrayOutputStream theOutputStream, long theValue) {
+		long value = theValue;
+		while ((value & ~0x7FL) != 0) {
+			theOutputStream.write((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		theOutputStream.write((int) value);
+	}
+
+	private static long readVarLong(byte[] theData, int[] thePosition) {
+		long retVal = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			if (thePosition[0] >= theData.length) {
+				throw new InternalErrorException(Msg.code(2398) + "Unexpected end of search result chunk");
+			}
+			byte next = theData[thePosition[0]++];
+			retVal |= (long) (next & 0x7F) << shift;
+			if ((next & 0x80) == 0) {
+				return retVal;
+			}
+		}
+		throw new InternalErrorException(Msg.code(2399) + "Invalid search result chunk");
+	}
+
+}
@@ -35,6 +35,10 @@ public class SearchParameterMapCalculator {
 		return SearchTotalModeEnum.ACCURATE.equals(theSearchTotalModeEnum);
 	}
 
+	static public boolean isWantEstimatedCount(SearchTotalModeEnum theSearchTotalModeEnum) {
+		return SearchTotalModeEnum.ESTIMATED.equals(theSearchTotalModeEnum);
+	}
+
 	static public boolean isWantOnlyCount(SearchParameterMap myParams) {
 		return SummaryEnum.COUNT.equals(myParams.getSummaryMode())
 			| INTEGER_0.equals(myParams.getCount());
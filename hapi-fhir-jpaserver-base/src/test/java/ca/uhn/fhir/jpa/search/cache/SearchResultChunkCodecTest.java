@@ -0,0 +1,76 @@
+package ca.uhn.fhir.jpa.search.cache;
+
+import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class SearchResultChunkCodecTest {
+
+	@Test
+	public void testRoundTrip() {
+		List<List<Long>> inputs = Arrays.asList(
+			Collections.emptyList(),
+			Arrays.asList(1L),
+			Arrays.asList(1L, 2L, 3L, 1000L, 1001L),
+			Arrays.asList(1000L, 1L, 500L, 2L),
+			Arrays.asList(0L, Long.MAX_VALUE, Long.MIN_VALUE, -1L, 0L)
+		);
+		for (List<Long> next : inputs) {
+			assertEquals(next, SearchResultChunkCodec.decode(SearchResultChunkCodec.encode(next)));
+		}
+	}
+
+	@Test
+	public void testRoundTripLarge() {
+		Random random = new Random(0);
+		List<Long> pids = new ArrayList<>();
+		long pid = 1000000L;
+		for (int i = 0; i < 10000; i++) {
+			pid += 1 + random.nextInt(50);
+			pids.add(pid);
+		}
+
+		byte[] encoded = SearchResultChunkCodec.encode(pids);
+		assertEquals(pids, SearchResultChunkCodec.decode(encoded));
+
+		// Small deltas should need about one byte each, vs one database row per PID otherwise
+		assertThat(encoded.length, lessThan(pids.size() * 2));
+
+		Collections.shuffle(pids, random);
+		assertEquals(pids, SearchResultChunkCodec.decode(SearchResultChunkCodec.encode(pids)));
+	}
+
+	@Test
+	public void testDecodeRange() {
+		List<Long> pids = Arrays.asList(10L, 5L, 20L, 21L, 22L, 3L);
+		byte[] encoded = SearchResultChunkCodec.encode(pids);
+
+		assertEquals(Arrays.asList(10L, 5L), SearchResultChunkCodec.decode(encoded, 0, 2));
+		assertEquals(Arrays.asList(21L, 22L, 3L), SearchResultChunkCodec.decode(encoded, 3, 6));
+		assertEquals(Arrays.asList(22L, 3L), SearchResultChunkCodec.decode(encoded, 4, 100));
+		assertEquals(Collections.emptyList(), SearchResultChunkCodec.decode(encoded, 2, 2));
+	}
+
+	@Test
+	public void testDecodeInvalid() {
+		InternalErrorException e = assertThrows(InternalErrorException.class, () -> SearchResultChunkCodec.decode(new byte[]{99, 1, 2}));
+		assertThat(e.getMessage(), containsString("Unknown search result chunk format"));
+
+		byte[] encoded = SearchResultChunkCodec.encode(Arrays.asList(1L, 100000L, 200000L));
+		byte[] truncated = Arrays.copyOf(encoded, encoded.length - 1);
+		e = assertThrows(InternalErrorException.class, () -> SearchResultChunkCodec.decode(truncated));
+		assertThat(e.getMessage(), containsString("Unexpected end of search result chunk"));
+	}
+
+}
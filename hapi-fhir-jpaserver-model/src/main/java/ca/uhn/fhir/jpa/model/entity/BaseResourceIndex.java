@@ -19,10 +19,13 @@
  */
 package ca.uhn.fhir.jpa.model.entity;
 
+import com.google.common.hash.Hasher;
 import org.apache.commons.lang3.ObjectUtils;
 
+import javax.annotation.Nullable;
 import javax.persistence.MappedSuperclass;
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
 
 @MappedSuperclass
 public abstract class BaseResourceIndex extends BasePartitionable implements Serializable {
@@ -57,4 +60,27 @@ public abstract class BaseResourceIndex extends BasePartitionable implements Ser
 
 	public abstract <T extends BaseResourceIndex> void copyMutableValuesFrom(T theSource);
 
+	/**
+	 * Adds the indexed values of this row to the given hasher. The row ID, the owning resource
+	 * and the hashes which are derived from the indexed values are not included. This is used to
+	 * detect whether the index rows for a resource have changed without loading the existing rows.
+	 *
+	 * @since 6.8.0
+	 */
+	public abstract void hashIndexValues(Hasher theHasher);
+
+	/**
+	 * Adds a single value to the given hasher, in a form which can't be confused with
+	 * a different sequence of values
+	 */
+	protected static void hashIndexValue(Hasher theHasher, @Nullable Object theValue) {
+		if (theValue == null) {
+			theHasher.putInt(-1);
+		} else {
+			String value = theValue.toString();
+			theHasher.putInt(value.length());
+			theHasher.putString(value, StandardCharsets.UTF_8);
+		}
+	}
+
 }
@@ -144,6 +144,13 @@ public abstract class BaseResourceIndexedSearchParam extends BaseResourceIndex {
 		return this;
 	}
 
+	@Override
+	public void hashIndexValues(Hasher theHasher) {
+		hashIndexValue(theHasher, getResourceType());
+		hashIndexValue(theHasher, getParamName());
+		hashIndexValue(theHasher, isMissing());
+	}
+
 	public abstract IQueryParameterType toQueryParameterType();
 
 	public boolean matches(IQueryParameterType theParam) {
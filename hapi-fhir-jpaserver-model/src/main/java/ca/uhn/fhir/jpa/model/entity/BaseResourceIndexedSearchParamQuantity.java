@@ -21,6 +21,7 @@ package ca.uhn.fhir.jpa.model.entity;
 
 import ca.uhn.fhir.interceptor.model.RequestPartitionId;
 import ca.uhn.fhir.jpa.model.config.PartitionSettings;
+import com.google.common.hash.Hasher;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
 import org.hibernate.search.mapper.pojo.mapping.definition.annotation.FullTextField;
 
@@ -127,6 +128,13 @@ public abstract class BaseResourceIndexedSearchParamQuantity extends BaseResourc
 		myUnits = theUnits;
 	}
 
+	@Override
+	public void hashIndexValues(Hasher theHasher) {
+		super.hashIndexValues(theHasher);
+		hashIndexValue(theHasher, getSystem());
+		hashIndexValue(theHasher, getUnits());
+	}
+
 	@Override
 	public int hashCode() {
 		HashCodeBuilder b = new HashCodeBuilder();
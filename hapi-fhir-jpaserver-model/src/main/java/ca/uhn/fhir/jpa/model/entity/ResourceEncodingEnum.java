@@ -40,6 +40,21 @@ public enum ResourceEncodingEnum {
 	 */
 	JSONC,
 
+	/**
+	 * Json in a compact binary form, using a shared dictionary of element names
+	 *
+	 * @since 6.8.0
+	 */
+	BJSON,
+
+	/**
+	 * Json Compressed using a preset dictionary trained for the resource type. The dictionary
+	 * is referenced by {@link ResourceHistoryTable#getCompressionDictionaryId()}.
+	 *
+	 * @since 6.8.0
+	 */
+	JSOND,
+
 	/**
 	 * Resource was deleted - No contents expected
 	 */
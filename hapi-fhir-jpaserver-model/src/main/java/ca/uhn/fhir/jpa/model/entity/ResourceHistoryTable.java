@@ -80,6 +80,9 @@ public class ResourceHistoryTable extends BaseHasResource implements Serializabl
 	@Enumerated(EnumType.STRING)
 	@OptimisticLock(excluded = true)
 	private ResourceEncodingEnum myEncoding;
+	@Column(name = "RES_COMP_DICT_ID", nullable = true)
+	@OptimisticLock(excluded = true)
+	private Long myCompressionDictionaryId;
 	@OneToOne(mappedBy = "myResourceHistoryTable", cascade = {CascadeType.REMOVE})
 	private ResourceHistoryProvenanceEntity myProvenance;
 	// TODO: This was added in 6.8.0 - In the future we should drop ResourceHistoryProvenanceEntity
@@ -122,6 +125,23 @@ public class ResourceHistoryTable extends BaseHasResource implements Serializabl
 			.toString();
 	}
 
+	/**
+	 * Returns the ID of the compression dictionary used to compress the resource text. This
+	 * is only set if the encoding is {@link ResourceEncodingEnum#JSOND}.
+	 *
+	 * @since 6.8.0
+	 */
+	public Long getCompressionDictionaryId() {
+		return myCompressionDictionaryId;
+	}
+
+	/**
+	 * @since 6.8.0
+	 */
+	public void setCompressionDictionaryId(Long theCompressionDictionaryId) {
+		myCompressionDictionaryId = theCompressionDictionaryId;
+	}
+
 	public String getResourceTextVc() {
 		return myResourceTextVc;
 	}
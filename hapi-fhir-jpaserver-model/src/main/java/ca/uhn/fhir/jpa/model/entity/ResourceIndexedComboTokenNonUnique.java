@@ -21,6 +21,7 @@ package ca.uhn.fhir.jpa.model.entity;
 
 import ca.uhn.fhir.interceptor.model.RequestPartitionId;
 import ca.uhn.fhir.jpa.model.config.PartitionSettings;
+import com.google.common.hash.Hasher;
 import org.apache.commons.lang3.builder.CompareToBuilder;
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
@@ -149,6 +150,11 @@ public class ResourceIndexedComboTokenNonUnique extends BaseResourceIndex implem
 		setHashComplete(calculateHashComplete(partitionSettings, partitionId, queryString));
 	}
 
+	@Override
+	public void hashIndexValues(Hasher theHasher) {
+		hashIndexValue(theHasher, getIndexString());
+	}
+
 	@Override
 	public int hashCode() {
 		return new HashCodeBuilder(17, 37)
@@ -21,6 +21,7 @@ package ca.uhn.fhir.jpa.model.entity;
 
 import ca.uhn.fhir.jpa.model.config.PartitionSettings;
 import ca.uhn.fhir.model.api.IQueryParameterType;
+import com.google.common.hash.Hasher;
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
 import org.apache.commons.lang3.builder.ToStringBuilder;
@@ -165,6 +166,13 @@ public class ResourceIndexedSearchParamCoords extends BaseResourceIndexedSearchP
 		return this;
 	}
 
+	@Override
+	public void hashIndexValues(Hasher theHasher) {
+		super.hashIndexValues(theHasher);
+		hashIndexValue(theHasher, getLatitude());
+		hashIndexValue(theHasher, getLongitude());
+	}
+
 	@Override
 	public int hashCode() {
 		HashCodeBuilder b = new HashCodeBuilder();
@@ -40,6 +40,7 @@ import javax.persistence.Temporal;
 import javax.persistence.TemporalType;
 import javax.persistence.Transient;
 
+import com.google.common.hash.Hasher;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
@@ -288,6 +289,15 @@ public class ResourceIndexedSearchParamDate extends BaseResourceIndexedSearchPar
 		return this;
 	}
 
+	@Override
+	public void hashIndexValues(Hasher theHasher) {
+		super.hashIndexValues(theHasher);
+		hashIndexValue(theHasher, getTimeFromDate(getValueLow()));
+		hashIndexValue(theHasher, getTimeFromDate(getValueHigh()));
+		hashIndexValue(theHasher, getValueLowDateOrdinal());
+		hashIndexValue(theHasher, getValueHighDateOrdinal());
+	}
+
 	@Override
 	public int hashCode() {
 		HashCodeBuilder b = new HashCodeBuilder();
@@ -22,6 +22,7 @@ package ca.uhn.fhir.jpa.model.entity;
 import ca.uhn.fhir.jpa.model.config.PartitionSettings;
 import ca.uhn.fhir.model.api.IQueryParameterType;
 import ca.uhn.fhir.rest.param.NumberParam;
+import com.google.common.hash.Hasher;
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
 import org.apache.commons.lang3.builder.ToStringBuilder;
@@ -162,6 +163,12 @@ public class ResourceIndexedSearchParamNumber extends BaseResourceIndexedSearchP
 		myValue = theValue;
 	}
 
+	@Override
+	public void hashIndexValues(Hasher theHasher) {
+		super.hashIndexValues(theHasher);
+		hashIndexValue(theHasher, getValue());
+	}
+
 	@Override
 	public int hashCode() {
 		HashCodeBuilder b = new HashCodeBuilder();
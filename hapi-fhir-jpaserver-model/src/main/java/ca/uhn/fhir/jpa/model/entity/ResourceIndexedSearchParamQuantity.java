@@ -22,6 +22,7 @@ package ca.uhn.fhir.jpa.model.entity;
 import ca.uhn.fhir.jpa.model.config.PartitionSettings;
 import ca.uhn.fhir.model.api.IQueryParameterType;
 import ca.uhn.fhir.rest.param.QuantityParam;
+import com.google.common.hash.Hasher;
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 import org.apache.commons.lang3.builder.ToStringStyle;
@@ -121,6 +122,12 @@ public class ResourceIndexedSearchParamQuantity extends BaseResourceIndexedSearc
 		myId = theId;
 	}
 	
+	@Override
+	public void hashIndexValues(Hasher theHasher) {
+		super.hashIndexValues(theHasher);
+		hashIndexValue(theHasher, getValue());
+	}
+
 	@Override
 	public IQueryParameterType toQueryParameterType() {
 		return new QuantityParam(null, getValue(), getSystem(), getUnits());
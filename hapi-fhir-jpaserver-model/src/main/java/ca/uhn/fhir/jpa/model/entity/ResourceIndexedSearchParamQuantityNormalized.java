@@ -23,6 +23,7 @@ import ca.uhn.fhir.jpa.model.config.PartitionSettings;
 import ca.uhn.fhir.jpa.model.util.UcumServiceUtil;
 import ca.uhn.fhir.model.api.IQueryParameterType;
 import ca.uhn.fhir.rest.param.QuantityParam;
+import com.google.common.hash.Hasher;
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 import org.apache.commons.lang3.builder.ToStringStyle;
@@ -134,6 +135,12 @@ public class ResourceIndexedSearchParamQuantityNormalized extends BaseResourceIn
 		myId = theId;
 	}
 
+	@Override
+	public void hashIndexValues(Hasher theHasher) {
+		super.hashIndexValues(theHasher);
+		hashIndexValue(theHasher, getValue());
+	}
+
 	@Override
 	public IQueryParameterType toQueryParameterType() {
 		return new QuantityParam(null, getValue(), getSystem(), getUnits());
@@ -19,6 +19,7 @@
  */
 package ca.uhn.fhir.jpa.model.entity;
 
+import com.google.common.hash.Hasher;
 import org.apache.commons.lang3.Validate;
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
@@ -259,6 +260,20 @@ public class ResourceLink extends BaseResourceIndex {
 		// nothing right now
 	}
 
+	@Override
+	public void hashIndexValues(Hasher theHasher) {
+		hashIndexValue(theHasher, mySourcePath);
+		hashIndexValue(theHasher, myTargetResourceType);
+		hashIndexValue(theHasher, myTargetResourceUrl);
+		hashIndexValue(theHasher, myTargetResourceVersion);
+		// See equals(Object) for why the target ID is used if the PID is not known
+		if (getTargetResourcePid() == null) {
+			hashIndexValue(theHasher, getTargetResourceId());
+		} else {
+			hashIndexValue(theHasher, getTargetResourcePid());
+		}
+	}
+
 	@Override
 	public int hashCode() {
 		HashCodeBuilder b = new HashCodeBuilder();
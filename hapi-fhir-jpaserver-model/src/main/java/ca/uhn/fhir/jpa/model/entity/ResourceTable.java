@@ -111,6 +111,13 @@ public class ResourceTable extends BaseHasResource implements Serializable, IBas
 	@OptimisticLock(excluded = true)
 	private String myHashSha256;
 
+	/**
+	 * @since 6.8.0
+	 */
+	@Column(name = "SP_INDEX_DIGEST", length = 64, nullable = true)
+	@OptimisticLock(excluded = true)
+	private String mySearchParamIndexDigest;
+
 	@Column(name = "SP_HAS_LINKS")
 	@OptimisticLock(excluded = true)
 	private boolean myHasLinks;
@@ -389,6 +396,23 @@ public class ResourceTable extends BaseHasResource implements Serializable, IBas
 		myHashSha256 = theHashSha256;
 	}
 
+	/**
+	 * A digest of the search index rows currently stored for this resource, or
+	 * <code>null</code> if it is not known
+	 *
+	 * @since 6.8.0
+	 */
+	public String getSearchParamIndexDigest() {
+		return mySearchParamIndexDigest;
+	}
+
+	/**
+	 * @since 6.8.0
+	 */
+	public void setSearchParamIndexDigest(String theSearchParamIndexDigest) {
+		mySearchParamIndexDigest = theSearchParamIndexDigest;
+	}
+
 	@Override
 	public Long getId() {
 		return myId;
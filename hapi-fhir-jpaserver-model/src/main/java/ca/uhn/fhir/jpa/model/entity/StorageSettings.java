@@ -129,6 +129,31 @@ public class StorageSettings {
 	 */
 	private boolean myQualifySubscriptionMatchingChannelName = true;
 
+	/**
+	 * Since 6.8.0
+	 */
+	private boolean myPrecompiledSearchParamExtractionEnabled = false;
+
+	/**
+	 * Since 6.8.0
+	 */
+	private long myDatabaseSubscriptionMatchingBatchWindowMillis = 0;
+
+	/**
+	 * Since 6.8.0
+	 */
+	private int myRestHookDeliveryQueueSize = 0;
+
+	/**
+	 * Since 6.8.0
+	 */
+	private int myRestHookDeliveryThreadsPerEndpoint = 1;
+
+	/**
+	 * Since 6.8.0
+	 */
+	private long myRestHookDeliveryCoalesceMillis = 0;
+
 	/**
 	 * If set to true, the server will prevent the creation of Subscriptions which cannot be evaluated IN-MEMORY. This can improve
 	 * overall server performance.
@@ -1282,6 +1307,175 @@ public class StorageSettings {
 	}
 
 
+	/**
+	 * If enabled, search parameter expressions which are simple paths (e.g. <code>Patient.name.family</code>,
+	 * optionally followed by a type filter such as <code>(Observation.value as Quantity)</code>) are compiled into
+	 * a plan for each resource type, and extracted from resources by navigating the HAPI FHIR model directly
+	 * in a single pass that visits shared path prefixes only once. Any other expressions are evaluated using
+	 * the FHIRPath engine as usual. This reduces the CPU cost of indexing resources.
+	 * <p>
+	 * Default is <code>false</code>
+	 * </p>
+	 *
+	 * @since 6.8.0
+	 */
+	public boolean isPrecompiledSearchParamExtractionEnabled() {
+		return myPrecompiledSearchParamExtractionEnabled;
+	}
+
+	/**
+	 * If enabled, search parameter expressions which are simple paths (e.g. <code>Patient.name.family</code>,
+	 * optionally followed by a type filter such as <code>(Observation.value as Quantity)</code>) are compiled into
+	 * a plan for each resource type, and extracted from resources by navigating the HAPI FHIR model directly
+	 * in a single pass that visits shared path prefixes only once. Any other expressions are evaluated using
+	 * the FHIRPath engine as usual. This reduces the CPU cost of indexing resources.
+	 * <p>
+	 * Default is <code>false</code>
+	 * </p>
+	 *
+	 * @since 6.8.0
+	 */
+	public void setPrecompiledSearchParamExtractionEnabled(boolean thePrecompiledSearchParamExtractionEnabled) {
+		myPrecompiledSearchParamExtractionEnabled = thePrecompiledSearchParamExtractionEnabled;
+	}
+
+	/**
+	 * If set to a value greater than zero, subscription criteria which can not be evaluated in-memory and
+	 * are matched against the database are matched in batches. Resources which are matched against the same
+	 * subscription by concurrent subscription matching consumers within this many milliseconds of each other
+	 * are matched using a single search of the form <code>[criteria]&amp;_id=[id1],[id2],...</code> instead of
+	 * one search per resource. This reduces the number of queries issued during bulk loads, at the cost of
+	 * delaying the matching of each resource by up to this many milliseconds.
+	 * <p>
+	 * Default is <code>0</code> (disabled)
+	 * </p>
+	 *
+	 * @since 6.8.0
+	 */
+	public long getDatabaseSubscriptionMatchingBatchWindowMillis() {
+		return myDatabaseSubscriptionMatchingBatchWindowMillis;
+	}
+
+	/**
+	 * If set to a value greater than zero, subscription criteria which can not be evaluated in-memory and
+	 * are matched against the database are matched in batches. Resources which are matched against the same
+	 * subscription by concurrent subscription matching consumers within this many milliseconds of each other
+	 * are matched using a single search of the form <code>[criteria]&amp;_id=[id1],[id2],...</code> instead of
+	 * one search per resource. This reduces the number of queries issued during bulk loads, at the cost of
+	 * delaying the matching of each resource by up to this many milliseconds.
+	 * <p>
+	 * Default is <code>0</code> (disabled)
+	 * </p>
+	 *
+	 * @since 6.8.0
+	 */
+	public void setDatabaseSubscriptionMatchingBatchWindowMillis(long theDatabaseSubscriptionMatchingBatchWindowMillis) {
+		myDatabaseSubscriptionMatchingBatchWindowMillis = theDatabaseSubscriptionMatchingBatchWindowMillis;
+	}
+
+	/**
+	 * If set to a value greater than zero, rest-hook subscription notifications are delivered asynchronously
+	 * instead of on the delivery channel thread. Each endpoint has its own queue, which can hold up to this
+	 * many pending deliveries, and its own delivery threads, so that a slow endpoint only delays the deliveries
+	 * to itself. If the queue for an endpoint is full, the notification is rejected without waiting, and is retried
+	 * by the delivery channel (or reported as failed) as if the delivery itself had failed.
+	 * <p>
+	 * A failed asynchronous delivery is retried by the endpoint's delivery thread, using the retry count from the
+	 * subscription's retry configuration, or for up to a minute if it has none. The
+	 * <code>SUBSCRIPTION_AFTER_DELIVERY_FAILED</code> pointcut is invoked for each failed attempt.
+	 * </p>
+	 * <p>
+	 * Default is <code>0</code> (deliveries are synchronous)
+	 * </p>
+	 *
+	 * @since 6.8.0
+	 */
+	public int getRestHookDeliveryQueueSize() {
+		return myRestHookDeliveryQueueSize;
+	}
+
+	/**
+	 * If set to a value greater than zero, rest-hook subscription notifications are delivered asynchronously
+	 * instead of on the delivery channel thread. Each endpoint has its own queue, which can hold up to this
+	 * many pending deliveries, and its own delivery threads, so that a slow endpoint only delays the deliveries
+	 * to itself. If the queue for an endpoint is full, the notification is rejected without waiting, and is retried
+	 * by the delivery channel (or reported as failed) as if the delivery itself had failed.
+	 * <p>
+	 * A failed asynchronous delivery is retried by the endpoint's delivery thread, using the retry count from the
+	 * subscription's retry configuration, or for up to a minute if it has none. The
+	 * <code>SUBSCRIPTION_AFTER_DELIVERY_FAILED</code> pointcut is invoked for each failed attempt.
+	 * </p>
+	 * <p>
+	 * Default is <code>0</code> (deliveries are synchronous)
+	 * </p>
+	 *
+	 * @since 6.8.0
+	 */
+	public void setRestHookDeliveryQueueSize(int theRestHookDeliveryQueueSize) {
+		myRestHookDeliveryQueueSize = theRestHookDeliveryQueueSize;
+	}
+
+	/**
+	 * When rest-hook notifications are delivered asynchronously (see {@link #setRestHookDeliveryQueueSize(int)}),
+	 * specifies the number of threads, and therefore the maximum number of concurrent connections, used to deliver
+	 * notifications to each endpoint. If this is greater than <code>1</code>, notifications to an endpoint may
+	 * be delivered out of order.
+	 * <p>
+	 * Default is <code>1</code>
+	 * </p>
+	 *
+	 * @since 6.8.0
+	 */
+	public int getRestHookDeliveryThreadsPerEndpoint() {
+		return myRestHookDeliveryThreadsPerEndpoint;
+	}
+
+	/**
+	 * When rest-hook notifications are delivered asynchronously (see {@link #setRestHookDeliveryQueueSize(int)}),
+	 * specifies the number of threads, and therefore the maximum number of concurrent connections, used to deliver
+	 * notifications to each endpoint. If this is greater than <code>1</code>, notifications to an endpoint may
+	 * be delivered out of order.
+	 * <p>
+	 * Default is <code>1</code>
+	 * </p>
+	 *
+	 * @since 6.8.0
+	 */
+	public void setRestHookDeliveryThreadsPerEndpoint(int theRestHookDeliveryThreadsPerEndpoint) {
+		Validate.isTrue(theRestHookDeliveryThreadsPerEndpoint > 0, "theRestHookDeliveryThreadsPerEndpoint must be greater than 0");
+		myRestHookDeliveryThreadsPerEndpoint = theRestHookDeliveryThreadsPerEndpoint;
+	}
+
+	/**
+	 * When rest-hook notifications are delivered asynchronously (see {@link #setRestHookDeliveryQueueSize(int)}) and
+	 * this is set to a value greater than zero, the notifications for a subscription which would each be sent as a
+	 * separate create, update or delete request are instead collected for this many milliseconds, and delivered
+	 * together as a single <code>batch</code> Bundle.
+	 * <p>
+	 * Default is <code>0</code> (notifications are not coalesced)
+	 * </p>
+	 *
+	 * @since 6.8.0
+	 */
+	public long getRestHookDeliveryCoalesceMillis() {
+		return myRestHookDeliveryCoalesceMillis;
+	}
+
+	/**
+	 * When rest-hook notifications are delivered asynchronously (see {@link #setRestHookDeliveryQueueSize(int)}) and
+	 * this is set to a value greater than zero, the notifications for a subscription which would each be sent as a
+	 * separate create, update or delete request are instead collected for this many milliseconds, and delivered
+	 * together as a single <code>batch</code> Bundle.
+	 * <p>
+	 * Default is <code>0</code> (notifications are not coalesced)
+	 * </p>
+	 *
+	 * @since 6.8.0
+	 */
+	public void setRestHookDeliveryCoalesceMillis(long theRestHookDeliveryCoalesceMillis) {
+		myRestHookDeliveryCoalesceMillis = theRestHookDeliveryCoalesceMillis;
+	}
+
 
 	private static void validateTreatBaseUrlsAsLocal(String theUrl) {
 		Validate.notBlank(theUrl, "Base URL must not be null or empty");
@@ -97,6 +97,18 @@ public class JpaConstants {
 	 * Operation name for the $get-resource-counts operation
 	 */
 	public static final String OPERATION_GET_RESOURCE_COUNTS = "$get-resource-counts";
+	/**
+	 * Operation name for the $search-index-advisor operation
+	 *
+	 * @since 6.8.0
+	 */
+	public static final String OPERATION_SEARCH_INDEX_ADVISOR = "$search-index-advisor";
+	/**
+	 * Operation name for the $explain operation
+	 *
+	 * @since 6.8.0
+	 */
+	public static final String OPERATION_EXPLAIN = "$explain";
 	/**
 	 * Operation name for the $validate operation
 	 */
@@ -81,10 +81,12 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 import static ca.uhn.fhir.rest.api.RestSearchParameterTypeEnum.DATE;
@@ -158,6 +160,7 @@ public abstract class BaseSearchParamExtractor implements ISearchParamExtractor
 	private BaseRuntimeChildDefinition myPatientCommunicationLanguageValueChild;
 	private BaseRuntimeChildDefinition myCodeableReferenceConcept;
 	private BaseRuntimeChildDefinition myCodeableReferenceReference;
+	private final Map<String, SearchParamExtractionPlan> myExtractionPlans = new ConcurrentHashMap<>();
 
 	/**
 	 * Constructor
@@ -1333,6 +1336,7 @@ public abstract class BaseSearchParamExtractor implements ISearchParamExtractor
 
 		cleanUpContainedResourceReferences(theResource, theSearchParamType, filteredSearchParams);
 
+		List<RuntimeSearchParam> searchParamsToExtract = new ArrayList<>(filteredSearchParams.size());
 		for (RuntimeSearchParam nextSpDef : filteredSearchParams) {
 			if (nextSpDef.getParamType() != theSearchParamType) {
 				continue;
@@ -1343,11 +1347,58 @@ public abstract class BaseSearchParamExtractor implements ISearchParamExtractor
 				continue;
 			}
 
-			extractSearchParam(nextSpDef, theResource, theExtractor, retVal, theWantLocalReferences);
+			searchParamsToExtract.add(nextSpDef);
+		}
+
+		SearchParamExtractionPlan.Result planResult = evaluateExtractionPlan(theResource, theSearchParamType, searchParams, searchParamsToExtract);
+
+		for (RuntimeSearchParam nextSpDef : searchParamsToExtract) {
+			extractSearchParam(nextSpDef, nextSpDef.getPath(), theResource, theExtractor, retVal, theWantLocalReferences, planResult);
 		}
 		return retVal;
 	}
 
+	/**
+	 * If pre-compiled extraction is enabled, evaluates the compiled paths of the given search parameters
+	 * against the resource in a single pass. The plan for each resource type and search parameter type
+	 * is compiled the first time it is needed, and recompiled if a search parameter with a new expression
+	 * shows up.
+	 *
+	 * @return The extracted values, or <code>null</code> if pre-compiled extraction is not being used
+	 */
+	@Nullable
+	private SearchParamExtractionPlan.Result evaluateExtractionPlan(IBaseResource theResource, RestSearchParameterTypeEnum theSearchParamType, Collection<RuntimeSearchParam> theAllSearchParams, List<RuntimeSearchParam> theSearchParamsToExtract) {
+		if (!myStorageSettings.isPrecompiledSearchParamExtractionEnabled() || theSearchParamsToExtract.isEmpty()) {
+			return null;
+		}
+		if (!myContext.getVersion().getVersion().isEqualOrNewerThan(FhirVersionEnum.R4)) {
+			return null;
+		}
+
+		List<String> expressions = new ArrayList<>(theSearchParamsToExtract.size());
+		for (RuntimeSearchParam next : theSearchParamsToExtract) {
+			if (isNotBlank(next.getPath())) {
+				expressions.add(next.getPath());
+			}
+		}
+
+		String resourceType = myContext.getResourceType(theResource);
+		String planKey = resourceType + "/" + theSearchParamType.name();
+		SearchParamExtractionPlan plan = myExtractionPlans.get(planKey);
+		if (plan == null || !plan.containsAllExpressions(expressions)) {
+			Set<String> allExpressions = new HashSet<>(expressions);
+			for (RuntimeSearchParam next : theAllSearchParams) {
+				if (next.getParamType() == theSearchParamType && isNotBlank(next.getPath())) {
+					allExpressions.add(next.getPath());
+				}
+			}
+			plan = SearchParamExtractionPlan.compile(myContext, resourceType, allExpressions, this::split);
+			myExtractionPlans.put(planKey, plan);
+		}
+
+		return plan.evaluate(theResource, expressions);
+	}
+
 
 	/**
 	 * Helper function to determine if a set of SPs for a resource uses a resolve as part of its fhir path.
@@ -1395,6 +1446,14 @@ public abstract class BaseSearchParamExtractor implements ISearchParamExtractor
 	 * Allows composite SPs to use sub-paths.
 	 */
 	private <T> void extractSearchParam(RuntimeSearchParam theSearchParameterDef, String thePathExpression, IBase theResource, IExtractor<T> theExtractor, SearchParamSet<T> theSetToPopulate, boolean theWantLocalReferences) {
+		extractSearchParam(theSearchParameterDef, thePathExpression, theResource, theExtractor, theSetToPopulate, theWantLocalReferences, null);
+	}
+
+	/**
+	 * @param thePlanResult If provided, values for paths which were compiled into an extraction plan are taken
+	 *                      from here instead of being evaluated using FHIRPath
+	 */
+	private <T> void extractSearchParam(RuntimeSearchParam theSearchParameterDef, String thePathExpression, IBase theResource, IExtractor<T> theExtractor, SearchParamSet<T> theSetToPopulate, boolean theWantLocalReferences, @Nullable SearchParamExtractionPlan.Result thePlanResult) {
 		if (isBlank(thePathExpression)) {
 			return;
 		}
@@ -1402,7 +1461,11 @@ public abstract class BaseSearchParamExtractor implements ISearchParamExtractor
 		String[] splitPaths = split(thePathExpression);
 		for (String nextPath : splitPaths) {
 			nextPath = trim(nextPath);
-			for (IBase nextObject : extractValues(nextPath, theResource)) {
+			List<IBase> values = thePlanResult != null ? thePlanResult.getValues(nextPath) : null;
+			if (values == null) {
+				values = extractValues(nextPath, theResource);
+			}
+			for (IBase nextObject : values) {
 				if (nextObject != null) {
 					String typeName = toRootTypeName(nextObject);
 					if (!myIgnoredForSearchDatatypes.contains(typeName)) {
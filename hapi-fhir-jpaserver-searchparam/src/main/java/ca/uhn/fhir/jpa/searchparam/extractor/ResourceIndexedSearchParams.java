@@ -32,9 +32,12 @@ import ca.uhn.fhir.rest.api.RestSearchParameterTypeEnum;
 import ca.uhn.fhir.rest.param.QuantityParam;
 import ca.uhn.fhir.rest.param.ReferenceParam;
 import ca.uhn.fhir.rest.server.util.ResourceSearchParams;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import org.apache.commons.lang3.StringUtils;
 
 import javax.annotation.Nonnull;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -42,6 +45,7 @@ import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.function.Predicate;
 
 import static org.apache.commons.lang3.StringUtils.compare;
@@ -65,11 +69,50 @@ public final class ResourceIndexedSearchParams {
 	final public Collection<ResourceIndexedSearchParamComposite>  myCompositeParams = new HashSet<>();
 
 	private static final Set<String> myIgnoredParams = Set.of(Constants.PARAM_TEXT, Constants.PARAM_CONTENT);
+	private boolean myNonLinkParamsLoaded = true;
 
 	public ResourceIndexedSearchParams() {
 	}
 
 	public ResourceIndexedSearchParams(ResourceTable theEntity) {
+		addResourceLinksFrom(theEntity);
+		addNonLinkParamsFrom(theEntity);
+	}
+
+	/**
+	 * Creates an instance containing only the resource links currently stored for the given
+	 * entity. The other index rows are not loaded until {@link #loadNonLinkParams(ResourceTable)}
+	 * is called.
+	 *
+	 * @since 6.8.0
+	 */
+	public static ResourceIndexedSearchParams withResourceLinksOnly(ResourceTable theEntity) {
+		ResourceIndexedSearchParams retVal = new ResourceIndexedSearchParams();
+		retVal.addResourceLinksFrom(theEntity);
+		retVal.myNonLinkParamsLoaded = false;
+		return retVal;
+	}
+
+	/**
+	 * If this instance was created using {@link #withResourceLinksOnly(ResourceTable)}, loads
+	 * the remaining index rows currently stored for the given entity. Otherwise does nothing.
+	 *
+	 * @since 6.8.0
+	 */
+	public void loadNonLinkParams(ResourceTable theEntity) {
+		if (!myNonLinkParamsLoaded) {
+			addNonLinkParamsFrom(theEntity);
+			myNonLinkParamsLoaded = true;
+		}
+	}
+
+	private void addResourceLinksFrom(ResourceTable theEntity) {
+		if (theEntity.isHasLinks()) {
+			myLinks.addAll(theEntity.getResourceLinks());
+		}
+	}
+
+	private void addNonLinkParamsFrom(ResourceTable theEntity) {
 		if (theEntity.isParamsStringPopulated()) {
 			myStringParams.addAll(theEntity.getParamsString());
 		}
@@ -94,9 +137,6 @@ public final class ResourceIndexedSearchParams {
 		if (theEntity.isParamsCoordsPopulated()) {
 			myCoordsParams.addAll(theEntity.getParamsCoords());
 		}
-		if (theEntity.isHasLinks()) {
-			myLinks.addAll(theEntity.getResourceLinks());
-		}
 
 		if (theEntity.isParamsComboStringUniquePresent()) {
 			myComboStringUniques.addAll(theEntity.getParamsComboStringUnique());
@@ -111,6 +151,50 @@ public final class ResourceIndexedSearchParams {
 		return myLinks;
 	}
 
+	/**
+	 * Calculates a digest of the values of all of the index rows in this object which are
+	 * stored in the database (including combo parameters and search parameter presence rows).
+	 * The digest does not depend on the order of the rows, and duplicate rows are ignored.
+	 * If two instances have the same digest, storing one in place of the other would not
+	 * change any index rows.
+	 *
+	 * @since 6.8.0
+	 */
+	public String calculateIndexDigest() {
+		Set<String> rowHashes = new TreeSet<>();
+		addRowHashes(rowHashes, "string", myStringParams);
+		addRowHashes(rowHashes, "token", myTokenParams);
+		addRowHashes(rowHashes, "number", myNumberParams);
+		addRowHashes(rowHashes, "quantity", myQuantityParams);
+		addRowHashes(rowHashes, "quantityNormalized", myQuantityNormalizedParams);
+		addRowHashes(rowHashes, "date", myDateParams);
+		addRowHashes(rowHashes, "uri", myUriParams);
+		addRowHashes(rowHashes, "coords", myCoordsParams);
+		addRowHashes(rowHashes, "link", myLinks);
+		addRowHashes(rowHashes, "comboTokenNonUnique", myComboTokenNonUnique);
+		for (ResourceIndexedComboStringUnique next : myComboStringUniques) {
+			rowHashes.add(Hashing.murmur3_128().newHasher().putString("comboStringUnique:" + next.getIndexString(), StandardCharsets.UTF_8).hash().toString());
+		}
+		for (SearchParamPresentEntity next : mySearchParamPresentEntities) {
+			rowHashes.add(Hashing.murmur3_128().newHasher().putString("present:" + next.getParamName() + ":" + next.isPresent(), StandardCharsets.UTF_8).hash().toString());
+		}
+
+		Hasher hasher = Hashing.sha256().newHasher();
+		for (String next : rowHashes) {
+			hasher.putString(next, StandardCharsets.UTF_8);
+		}
+		return hasher.hash().toString();
+	}
+
+	private static void addRowHashes(Set<String> theRowHashes, String theType, Collection<? extends BaseResourceIndex> theRows) {
+		for (BaseResourceIndex next : theRows) {
+			Hasher hasher = Hashing.murmur3_128().newHasher();
+			hasher.putString(theType, StandardCharsets.UTF_8);
+			next.hashIndexValues(hasher);
+			theRowHashes.add(hasher.hash().toString());
+		}
+	}
+
 	public void populateResourceTableSearchParamsPresentFlags(ResourceTable theEntity) {
 		theEntity.setParamsStringPopulated(myStringParams.isEmpty() == false);
 		theEntity.setParamsTokenPopulated(myTokenParams.isEmpty() == false);
@@ -0,0 +1,471 @@
+/*
+ * #%L
+ * HAPI FHIR Search Parameters
+ * %%
+ * Copyright (C) 2014 - 2023 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ca.uhn.fhir.jpa.searchparam.extractor;
+
+import ca.uhn.fhir.context.BaseRuntimeChildDatatypeDefinition;
+import ca.uhn.fhir.context.BaseRuntimeChildDefinition;
+import ca.uhn.fhir.context.BaseRuntimeElementCompositeDefinition;
+import ca.uhn.fhir.context.BaseRuntimeElementDefinition;
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.RuntimeChildChoiceDefinition;
+import ca.uhn.fhir.context.RuntimeChildNarrativeDefinition;
+import ca.uhn.fhir.context.RuntimeChildResourceBlockDefinition;
+import ca.uhn.fhir.context.RuntimeChildResourceDefinition;
+import ca.uhn.fhir.context.RuntimeResourceDefinition;
+import org.hl7.fhir.instance.model.api.IBase;
+import org.hl7.fhir.instance.model.api.IBaseExtension;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.apache.commons.lang3.StringUtils.isBlank;
+import static org.apache.commons.lang3.StringUtils.trim;
+
+/**
+ * A pre-compiled plan for extracting the values of a collection of search parameter
+ * expressions from resources of a single type.
+ * <p>
+ * Expressions which are simple paths (e.g. <code>Patient.name.family</code>), optionally
+ * followed by a type filter (e.g. <code>(Observation.value as Quantity)</code> or
+ * <code>Observation.value.as(Quantity)</code>) are compiled into a tree of element
+ * accessors, so that evaluating the plan against a resource visits each shared path
+ * prefix (e.g. <code>Patient.name</code> for both <code>Patient.name.family</code>
+ * and <code>Patient.name.given</code>) only once, without going through the FHIRPath
+ * engine. Any other expression (e.g. one using <code>where(..)</code> or
+ * <code>resolve()</code>) is not compiled, and callers are expected to fall back to
+ * FHIRPath for it.
+ * </p>
+ * <p>
+ * Plans are immutable and thread safe once compiled.
+ * </p>
+ *
+ * @since 6.8.0
+ */
+public class SearchParamExtractionPlan {
+
+	private static final String NAME = "[A-Za-z][A-Za-z0-9]*";
+	private static final Pattern SIMPLE_PATH = Pattern.compile(NAME + "(?:\\." + NAME + ")*");
+	private static final Pattern AS_OPERATOR = Pattern.compile("(" + SIMPLE_PATH.pattern() + ")\\s+as\\s+(" + NAME + ")");
+	private static final Pattern AS_FUNCTION = Pattern.compile("(" + SIMPLE_PATH.pattern() + ")\\.as\\(\\s*(" + NAME + ")\\s*\\)");
+
+	/**
+	 * Element names which FHIRPath treats differently from the HAPI FHIR model, so we
+	 * never try to compile paths through them
+	 */
+	private static final Set<String> UNSUPPORTED_ELEMENT_NAMES = Set.of("id", "extension", "modifierExtension", "contained", "text");
+
+	private final FhirContext myContext;
+	private final String myResourceType;
+	private final Node myRoot;
+	private final Map<String, Integer> myPathToIndex;
+	private final Map<String, int[]> myExpressionToPathIndexes;
+
+	private SearchParamExtractionPlan(FhirContext theContext, String theResourceType, Node theRoot, Map<String, Integer> thePathToIndex, Map<String, int[]> theExpressionToPathIndexes) {
+		myContext = theContext;
+		myResourceType = theResourceType;
+		myRoot = theRoot;
+		myPathToIndex = thePathToIndex;
+		myExpressionToPathIndexes = theExpressionToPathIndexes;
+	}
+
+	public String getResourceType() {
+		return myResourceType;
+	}
+
+	/**
+	 * Returns <code>true</code> if the given (single, already split) path was compiled into this plan
+	 */
+	public boolean isCompiled(String thePath) {
+		return myPathToIndex.containsKey(thePath);
+	}
+
+	/**
+	 * Returns <code>true</code> if all of the given search parameter expressions were
+	 * supplied when this plan was compiled (whether or not they could actually be compiled)
+	 */
+	public boolean containsAllExpressions(Collection<String> theExpressions) {
+		for (String next : theExpressions) {
+			if (!myExpressionToPathIndexes.containsKey(next)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Evaluates the compiled paths belonging to the given search parameter expressions
+	 * against a resource in a single pass.
+	 *
+	 * @param theResource    The resource, which must be of the type this plan was compiled for
+	 * @param theExpressions The search parameter expressions (unsplit) whose values are wanted
+	 */
+	@Nonnull
+	public Result evaluate(IBase theResource, Collection<String> theExpressions) {
+		BitSet wanted = new BitSet(myPathToIndex.size());
+		for (String next : theExpressions) {
+			int[] indexes = myExpressionToPathIndexes.get(next);
+			if (indexes != null) {
+				for (int nextIndex : indexes) {
+					wanted.set(nextIndex);
+				}
+			}
+		}
+
+		Result retVal = new Result(myPathToIndex);
+		if (!wanted.isEmpty()) {
+			myRoot.evaluate(myContext, Collections.singletonList(theResource), wanted, retVal);
+		}
+		return retVal;
+	}
+
+	/**
+	 * Compiles a plan for the given search parameter expressions.
+	 *
+	 * @param theContext      The FHIR context
+	 * @param theResourceType The resource type the expressions apply to
+	 * @param theExpressions  The search parameter expressions (which may each contain several paths)
+	 * @param theSplitter     Splits an expression into its individual paths
+	 */
+	@Nonnull
+	public static SearchParamExtractionPlan compile(FhirContext theContext, String theResourceType, Collection<String> theExpressions, Function<String, String[]> theSplitter) {
+		RuntimeResourceDefinition resourceDefinition = theContext.getResourceDefinition(theResourceType);
+		Node root = new Node(null, null, resourceDefinition);
+		Map<String, Integer> pathToIndex = new HashMap<>();
+		Map<String, int[]> expressionToPathIndexes = new HashMap<>();
+
+		for (String nextExpression : theExpressions) {
+			if (isBlank(nextExpression) || expressionToPathIndexes.containsKey(nextExpression)) {
+				continue;
+			}
+
+			List<Integer> indexes = new ArrayList<>();
+			for (String nextPath : theSplitter.apply(nextExpression)) {
+				nextPath = trim(nextPath);
+				Integer index = pathToIndex.get(nextPath);
+				if (index == null && compilePath(theContext, root, nextPath, pathToIndex.size())) {
+					index = pathToIndex.size();
+					pathToIndex.put(nextPath, index);
+				}
+				if (index != null) {
+					indexes.add(index);
+				}
+			}
+			expressionToPathIndexes.put(nextExpression, indexes.stream().mapToInt(t -> t).toArray());
+		}
+
+		return new SearchParamExtractionPlan(theContext, resourceDefinition.getName(), root, Collections.unmodifiableMap(pathToIndex), Collections.unmodifiableMap(expressionToPathIndexes));
+	}
+
+	private static boolean compilePath(FhirContext theContext, Node theRoot, String thePath, int theIndex) {
+		String path = thePath;
+		String typeFilter = null;
+
+		Matcher asFunction = AS_FUNCTION.matcher(path);
+		if (asFunction.matches()) {
+			path = asFunction.group(1);
+			typeFilter = asFunction.group(2);
+		} else {
+			String unwrapped = path;
+			if (unwrapped.startsWith("(") && unwrapped.endsWith(")")) {
+				unwrapped = unwrapped.substring(1, unwrapped.length() - 1).trim();
+			}
+			Matcher asOperator = AS_OPERATOR.matcher(unwrapped);
+			if (asOperator.matches()) {
+				path = asOperator.group(1);
+				typeFilter = asOperator.group(2);
+			}
+		}
+
+		if (!SIMPLE_PATH.matcher(path).matches()) {
+			return false;
+		}
+		if (typeFilter != null && theContext.getElementDefinition(typeFilter) == null) {
+			return false;
+		}
+
+		String[] parts = path.split("\\.");
+		if (parts.length < 2 || !parts[0].equals(theRoot.myDefinition.getName())) {
+			return false;
+		}
+
+		// Make sure every step can be resolved before we modify the tree
+		BaseRuntimeElementDefinition<?> definition = theRoot.myDefinition;
+		List<BaseRuntimeChildDefinition> children = new ArrayList<>();
+		for (int i = 1; i < parts.length; i++) {
+			BaseRuntimeChildDefinition child = null;
+			if (definition != null) {
+				child = findChild(definition, parts[i]);
+				if (child == null) {
+					return false;
+				}
+				definition = getChildElementDefinition(child);
+			} else if (UNSUPPORTED_ELEMENT_NAMES.contains(parts[i])) {
+				return false;
+			}
+			children.add(child);
+		}
+
+		Node node = theRoot;
+		for (int i = 1; i < parts.length; i++) {
+			node = node.getOrCreateChild(parts[i], children.get(i - 1));
+		}
+		node.addPath(theIndex, typeFilter);
+
+		for (Node next = node; next != null; next = next.myParent) {
+			next.mySubtreePathIndexes.set(theIndex);
+		}
+		return true;
+	}
+
+	/**
+	 * Finds a child which FHIRPath would navigate to for the given name, or returns <code>null</code> if
+	 * there isn't one (or if it is a kind of child we don't know how to navigate identically to FHIRPath)
+	 */
+	@Nullable
+	private static BaseRuntimeChildDefinition findChild(BaseRuntimeElementDefinition<?> theDefinition, String theName) {
+		if (!(theDefinition instanceof BaseRuntimeElementCompositeDefinition) || UNSUPPORTED_ELEMENT_NAMES.contains(theName)) {
+			return null;
+		}
+		BaseRuntimeElementCompositeDefinition<?> composite = (BaseRuntimeElementCompositeDefinition<?>) theDefinition;
+		BaseRuntimeChildDefinition retVal = composite.getChildByName(theName);
+		if (retVal == null) {
+			retVal = composite.getChildByName(theName + "[x]");
+		}
+		if (retVal == null || !theName.equals(retVal.getElementName())) {
+			return null;
+		}
+
+		if (retVal.getClass() == RuntimeChildChoiceDefinition.class
+			|| retVal instanceof RuntimeChildResourceBlockDefinition
+			|| retVal instanceof RuntimeChildResourceDefinition
+			|| (retVal instanceof BaseRuntimeChildDatatypeDefinition && !(retVal instanceof RuntimeChildNarrativeDefinition))) {
+			return retVal;
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the definition of the values held by the given child, or <code>null</code> if
+	 * this can only be determined at runtime (i.e. for choice elements)
+	 */
+	@Nullable
+	private static BaseRuntimeElementDefinition<?> getChildElementDefinition(BaseRuntimeChildDefinition theChild) {
+		if (theChild instanceof RuntimeChildChoiceDefinition) {
+			return null;
+		}
+		return theChild.getChildByName(theChild.getElementName());
+	}
+
+	/**
+	 * The values extracted by evaluating a plan
+	 */
+	public static class Result {
+
+		private final Map<String, Integer> myPathToIndex;
+		private final Map<Integer, List<IBase>> myIndexToValues = new HashMap<>();
+		private final BitSet myFallbackIndexes = new BitSet();
+
+		private Result(Map<String, Integer> thePathToIndex) {
+			myPathToIndex = thePathToIndex;
+		}
+
+		/**
+		 * Returns the values for the given (single, already split) path, or <code>null</code>
+		 * if the path was not compiled or was not requested, in which case the caller should
+		 * evaluate it using FHIRPath instead
+		 */
+		@Nullable
+		public List<IBase> getValues(String thePath) {
+			Integer index = myPathToIndex.get(thePath);
+			if (index == null || myFallbackIndexes.get(index)) {
+				return null;
+			}
+			return myIndexToValues.get(index);
+		}
+
+		private void setValues(int theIndex, List<IBase> theValues) {
+			List<IBase> values = new ArrayList<>(theValues.size());
+			for (IBase next : theValues) {
+				if (next instanceof IBaseExtension) {
+					next = ((IBaseExtension<?, ?>) next).getValue();
+				}
+				values.add(next);
+			}
+			myIndexToValues.put(theIndex, values);
+		}
+
+		private void setFallback(BitSet theIndexes) {
+			myFallbackIndexes.or(theIndexes);
+		}
+
+	}
+
+	private static class Node {
+
+		private final Node myParent;
+		private final String myName;
+		private final BitSet mySubtreePathIndexes = new BitSet();
+		private final Map<String, Node> myChildren = new LinkedHashMap<>();
+		private final List<Integer> myPathIndexes = new ArrayList<>();
+		private final Map<Integer, String> myPathIndexToTypeFilter = new HashMap<>();
+		/**
+		 * The definition of the values at this node, or <code>null</code> if it varies (i.e. below a choice element)
+		 */
+		private final BaseRuntimeElementDefinition<?> myDefinition;
+		/**
+		 * The child used to navigate from the parent node's values to this node's values, or <code>null</code>
+		 * if it has to be resolved from the runtime type of each parent value
+		 */
+		private final BaseRuntimeChildDefinition myChild;
+		private final Map<Class<?>, ChildResolution> myRuntimeChildren;
+
+		private Node(Node theParent, String theName, BaseRuntimeElementDefinition<?> theDefinition) {
+			this(theParent, theName, null, theDefinition);
+		}
+
+		private Node(Node theParent, String theName, BaseRuntimeChildDefinition theChild, BaseRuntimeElementDefinition<?> theDefinition) {
+			myParent = theParent;
+			myName = theName;
+			myChild = theChild;
+			myDefinition = theDefinition;
+			myRuntimeChildren = theChild == null && theParent != null ? new ConcurrentHashMap<>() : null;
+		}
+
+		private Node getOrCreateChild(String theName, BaseRuntimeChildDefinition theChild) {
+			return myChildren.computeIfAbsent(theName, t -> new Node(this, theName, theChild, theChild != null ? getChildElementDefinition(theChild) : null));
+		}
+
+		private void addPath(int theIndex, String theTypeFilter) {
+			myPathIndexes.add(theIndex);
+			if (theTypeFilter != null) {
+				myPathIndexToTypeFilter.put(theIndex, theTypeFilter);
+			}
+		}
+
+		private void evaluate(FhirContext theContext, List<IBase> theValues, BitSet theWanted, Result theResult) {
+			for (Integer nextIndex : myPathIndexes) {
+				if (!theWanted.get(nextIndex)) {
+					continue;
+				}
+				String typeFilter = myPathIndexToTypeFilter.get(nextIndex);
+				if (typeFilter == null) {
+					theResult.setValues(nextIndex, theValues);
+				} else if (theValues.size() > 1) {
+					// FHIRPath's "as" operator rejects collections with more than one item, so let it decide what to do
+					theResult.setFallback(bitSetOf(nextIndex));
+				} else {
+					List<IBase> filtered = new ArrayList<>(1);
+					for (IBase next : theValues) {
+						if (typeFilter.equals(theContext.getElementDefinition(next.getClass()).getName())) {
+							filtered.add(next);
+						}
+					}
+					theResult.setValues(nextIndex, filtered);
+				}
+			}
+
+			for (Node nextChild : myChildren.values()) {
+				if (!nextChild.mySubtreePathIndexes.intersects(theWanted)) {
+					continue;
+				}
+				List<IBase> childValues = new ArrayList<>();
+				boolean fallback = false;
+				for (IBase nextValue : theValues) {
+					BaseRuntimeChildDefinition child = nextChild.myChild;
+					if (child == null) {
+						ChildResolution resolution = nextChild.resolveRuntimeChild(theContext, nextValue);
+						if (resolution.myUnsupported) {
+							fallback = true;
+							break;
+						}
+						child = resolution.myChild;
+					}
+					if (child != null) {
+						for (IBase next : child.getAccessor().getValues(nextValue)) {
+							if (next != null) {
+								childValues.add(next);
+							}
+						}
+					}
+				}
+
+				if (fallback) {
+					theResult.setFallback(nextChild.mySubtreePathIndexes);
+				} else {
+					nextChild.evaluate(theContext, childValues, theWanted, theResult);
+				}
+			}
+		}
+
+		private ChildResolution resolveRuntimeChild(FhirContext theContext, IBase theValue) {
+			return myRuntimeChildren.computeIfAbsent(theValue.getClass(), t -> {
+				BaseRuntimeElementDefinition<?> definition = theContext.getElementDefinition(theValue.getClass());
+				if (!(definition instanceof BaseRuntimeElementCompositeDefinition)) {
+					return ChildResolution.NONE;
+				}
+				BaseRuntimeChildDefinition child = ((BaseRuntimeElementCompositeDefinition<?>) definition).getChildByName(myName);
+				if (child == null) {
+					child = ((BaseRuntimeElementCompositeDefinition<?>) definition).getChildByName(myName + "[x]");
+				}
+				if (child == null || !myName.equals(child.getElementName())) {
+					return ChildResolution.NONE;
+				}
+				child = findChild(definition, myName);
+				return child != null ? new ChildResolution(child, false) : ChildResolution.UNSUPPORTED;
+			});
+		}
+
+		private static BitSet bitSetOf(int theIndex) {
+			BitSet retVal = new BitSet();
+			retVal.set(theIndex);
+			return retVal;
+		}
+
+	}
+
+	private static class ChildResolution {
+
+		private static final ChildResolution NONE = new ChildResolution(null, false);
+		private static final ChildResolution UNSUPPORTED = new ChildResolution(null, true);
+
+		private final BaseRuntimeChildDefinition myChild;
+		private final boolean myUnsupported;
+
+		private ChildResolution(BaseRuntimeChildDefinition theChild, boolean theUnsupported) {
+			myChild = theChild;
+			myUnsupported = theUnsupported;
+		}
+
+	}
+
+}
@@ -22,12 +22,16 @@ package ca.uhn.fhir.jpa.searchparam.matcher;
 import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.context.RuntimeResourceDefinition;
 import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
+import ca.uhn.fhir.jpa.searchparam.extractor.ISearchParamExtractor;
 import ca.uhn.fhir.jpa.searchparam.extractor.ResourceIndexedSearchParams;
 import ca.uhn.fhir.rest.api.server.RequestDetails;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.util.Set;
+import java.util.stream.Collectors;
+
 @Service
 public class SearchParamMatcher {
 	@Autowired
@@ -49,4 +53,30 @@ public class SearchParamMatcher {
 		RuntimeResourceDefinition resourceDefinition = myFhirContext.getResourceDefinition(theResource);
 		return myInMemoryResourceMatcher.match(theSearchParameterMap, theResource, resourceDefinition, resourceIndexedSearchParams);
 	}
+
+	/**
+	 * Matches a resource against criteria which have already been parsed, using search parameters which have already
+	 * been extracted from the resource (e.g. by {@link #extractIndexedSearchParams(IBaseResource, Set)}). This allows
+	 * the same resource to be efficiently matched against many criteria.
+	 *
+	 * @param theIndexedSearchParams The search parameters of the resource, which must include all of the parameters used by the criteria
+	 * @since 6.8.0
+	 */
+	public InMemoryMatchResult matchIndexedSearchParams(SearchParameterMap theSearchParameterMap, IBaseResource theResource, ResourceIndexedSearchParams theIndexedSearchParams) {
+		RuntimeResourceDefinition resourceDefinition = myFhirContext.getResourceDefinition(theResource);
+		return myInMemoryResourceMatcher.match(theSearchParameterMap, theResource, resourceDefinition, theIndexedSearchParams);
+	}
+
+	/**
+	 * Extracts the search parameters with the given names from a resource
+	 *
+	 * @since 6.8.0
+	 */
+	public ResourceIndexedSearchParams extractIndexedSearchParams(IBaseResource theResource, Set<String> theParamNames) {
+		ISearchParamExtractor.ISearchParamFilter filter = theSearchParams -> theSearchParams
+			.stream()
+			.filter(t -> theParamNames.contains(t.getName()))
+			.collect(Collectors.toList());
+		return myIndexedSearchParamExtractor.extractIndexedSearchParams(theResource, null, filter);
+	}
 }
@@ -1,5 +1,8 @@
 package ca.uhn.fhir.jpa.searchparam.extractor;
 
+import ca.uhn.fhir.jpa.model.config.PartitionSettings;
+import ca.uhn.fhir.jpa.model.entity.ResourceIndexedSearchParamString;
+import ca.uhn.fhir.jpa.model.entity.ResourceIndexedSearchParamToken;
 import ca.uhn.fhir.jpa.model.entity.StorageSettings;
 import ca.uhn.fhir.jpa.model.entity.ResourceLink;
 import ca.uhn.fhir.jpa.model.entity.ResourceTable;
@@ -14,7 +17,9 @@ import java.util.Set;
 
 import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.Matchers.empty;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -74,6 +79,31 @@ public class ResourceIndexedSearchParamsTest {
 		assertTrue(result);
 	}
 
+	@Test
+	public void testCalculateIndexDigest() {
+		PartitionSettings partitionSettings = new PartitionSettings();
+		ResourceIndexedSearchParams params1 = new ResourceIndexedSearchParams();
+		params1.myStringParams.add(new ResourceIndexedSearchParamString(partitionSettings, myStorageSettings, "Patient", "family", "SIMPSON", "Simpson"));
+		params1.myStringParams.add(new ResourceIndexedSearchParamString(partitionSettings, myStorageSettings, "Patient", "given", "HOMER", "Homer"));
+		params1.myTokenParams.add(new ResourceIndexedSearchParamToken(partitionSettings, "Patient", "identifier", "http://foo", "123"));
+
+		// Same rows in a different order, with a duplicate
+		ResourceIndexedSearchParams params2 = new ResourceIndexedSearchParams();
+		params2.myTokenParams.add(new ResourceIndexedSearchParamToken(partitionSettings, "Patient", "identifier", "http://foo", "123"));
+		params2.myStringParams.add(new ResourceIndexedSearchParamString(partitionSettings, myStorageSettings, "Patient", "given", "HOMER", "Homer"));
+		params2.myStringParams.add(new ResourceIndexedSearchParamString(partitionSettings, myStorageSettings, "Patient", "family", "SIMPSON", "Simpson"));
+		params2.myStringParams.add(new ResourceIndexedSearchParamString(partitionSettings, myStorageSettings, "Patient", "family", "SIMPSON", "Simpson"));
+		assertEquals(params1.calculateIndexDigest(), params2.calculateIndexDigest());
+
+		// Same value in a different parameter
+		params2.myStringParams.clear();
+		params2.myStringParams.add(new ResourceIndexedSearchParamString(partitionSettings, myStorageSettings, "Patient", "given", "SIMPSON", "Simpson"));
+		params2.myStringParams.add(new ResourceIndexedSearchParamString(partitionSettings, myStorageSettings, "Patient", "family", "HOMER", "Homer"));
+		assertNotEquals(params1.calculateIndexDigest(), params2.calculateIndexDigest());
+
+		assertNotEquals(params1.calculateIndexDigest(), new ResourceIndexedSearchParams().calculateIndexDigest());
+	}
+
 	private ReferenceParam getReferenceParam(String theId) {
 		ReferenceParam retVal = new ReferenceParam();
 		retVal.setValue(theId);
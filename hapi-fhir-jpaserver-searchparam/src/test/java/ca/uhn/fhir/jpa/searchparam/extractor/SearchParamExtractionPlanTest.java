@@ -0,0 +1,125 @@
+package ca.uhn.fhir.jpa.searchparam.extractor;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.jpa.model.config.PartitionSettings;
+import ca.uhn.fhir.jpa.model.entity.StorageSettings;
+import ca.uhn.fhir.rest.server.util.FhirContextSearchParamRegistry;
+import org.hl7.fhir.instance.model.api.IBase;
+import org.hl7.fhir.r4.model.DateTimeType;
+import org.hl7.fhir.r4.model.Observation;
+import org.hl7.fhir.r4.model.Patient;
+import org.hl7.fhir.r4.model.Quantity;
+import org.hl7.fhir.r4.model.StringType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SearchParamExtractionPlanTest {
+
+	private static final FhirContext ourCtx = FhirContext.forR4Cached();
+	private SearchParamExtractorR4 mySearchParamExtractor;
+
+	@BeforeEach
+	public void before() {
+		mySearchParamExtractor = new SearchParamExtractorR4(new StorageSettings(), new PartitionSettings(), ourCtx, new FhirContextSearchParamRegistry(ourCtx));
+	}
+
+	@Test
+	public void testCompile() {
+		List<String> expressions = Arrays.asList(
+			"Patient.name",
+			"Patient.name.family | Patient.name.given",
+			"Patient.deceased",
+			"Patient.link.other.where(resolve() is Patient)",
+			"Patient.extension('http://foo').value",
+			"Patient.nameFamily",
+			"Patient.managingOrganization.reference",
+			"Observation.code"
+		);
+		SearchParamExtractionPlan plan = SearchParamExtractionPlan.compile(ourCtx, "Patient", expressions, mySearchParamExtractor::split);
+
+		assertTrue(plan.isCompiled("Patient.name"));
+		assertTrue(plan.isCompiled("Patient.name.family"));
+		assertTrue(plan.isCompiled("Patient.name.given"));
+		assertTrue(plan.isCompiled("Patient.deceased"));
+		assertTrue(plan.isCompiled("Patient.managingOrganization.reference"));
+		assertFalse(plan.isCompiled("Patient.link.other.where(resolve() is Patient)"));
+		assertFalse(plan.isCompiled("Patient.extension('http://foo').value"));
+		assertFalse(plan.isCompiled("Patient.nameFamily"));
+		assertFalse(plan.isCompiled("Observation.code"));
+
+		assertTrue(plan.containsAllExpressions(Arrays.asList("Patient.name", "Observation.code")));
+		assertFalse(plan.containsAllExpressions(Arrays.asList("Patient.name", "Patient.gender")));
+	}
+
+	@Test
+	public void testEvaluateMatchesFhirPath() {
+		Patient patient = new Patient();
+		patient.addName().setFamily("Simpson").addGiven("Homer").addGiven("Jay");
+		patient.addName().setFamily("Simpson").addGiven("Max");
+		patient.addName().setText("No family");
+		patient.setDeceased(new DateTimeType("2023-01-01"));
+		patient.getManagingOrganization().setReference("Organization/123");
+
+		List<String> paths = Arrays.asList(
+			"Patient.name",
+			"Patient.name.family",
+			"Patient.name.given",
+			"Patient.deceased",
+			"(Patient.deceased as dateTime)",
+			"Patient.deceased.as(boolean)",
+			"Patient.managingOrganization.reference",
+			"Patient.telecom.value"
+		);
+		SearchParamExtractionPlan plan = SearchParamExtractionPlan.compile(ourCtx, "Patient", paths, mySearchParamExtractor::split);
+		SearchParamExtractionPlan.Result result = plan.evaluate(patient, paths);
+
+		for (String next : paths) {
+			assertTrue(plan.isCompiled(next), next);
+			List<IBase> expected = mySearchParamExtractor.extractValues(next, patient);
+			List<IBase> actual = result.getValues(next);
+			assertEquals(expected.size(), actual.size(), next);
+			for (int i = 0; i < expected.size(); i++) {
+				assertSame(expected.get(i), actual.get(i), next);
+			}
+		}
+		assertEquals(3, result.getValues("Patient.name.given").size());
+		assertEquals(0, result.getValues("Patient.deceased.as(boolean)").size());
+	}
+
+	@Test
+	public void testEvaluateOnlyRequestedExpressions() {
+		Patient patient = new Patient();
+		patient.addName().setFamily("Simpson");
+
+		List<String> paths = Arrays.asList("Patient.name.family", "Patient.name.given");
+		SearchParamExtractionPlan plan = SearchParamExtractionPlan.compile(ourCtx, "Patient", paths, mySearchParamExtractor::split);
+		SearchParamExtractionPlan.Result result = plan.evaluate(patient, List.of("Patient.name.family"));
+
+		assertEquals(1, result.getValues("Patient.name.family").size());
+		assertNull(result.getValues("Patient.name.given"));
+	}
+
+	@Test
+	public void testEvaluateTypeFilterOnMultipleValuesFallsBackToFhirPath() {
+		Observation obs = new Observation();
+		obs.addComponent().setValue(new Quantity(1));
+		obs.addComponent().setValue(new StringType("a"));
+
+		List<String> paths = Arrays.asList("(Observation.component.value as Quantity)", "Observation.component.value");
+		SearchParamExtractionPlan plan = SearchParamExtractionPlan.compile(ourCtx, "Observation", paths, mySearchParamExtractor::split);
+		SearchParamExtractionPlan.Result result = plan.evaluate(obs, paths);
+
+		assertNull(result.getValues("(Observation.component.value as Quantity)"));
+		assertEquals(2, result.getValues("Observation.component.value").size());
+	}
+
+}
@@ -31,7 +31,9 @@ import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
@@ -50,22 +52,44 @@ public class SearchParamExtractorMegaTest {
 	@ParameterizedTest
 	@MethodSource("provideContexts")
 	public void testAllCombinations(FhirContext theFhirContext) throws Exception {
+		BaseSearchParamExtractor extractor = createExtractor(theFhirContext, new StorageSettings());
+
+		process(theFhirContext, extractor, null);
+
+	}
+
+	/**
+	 * Same as {@link #testAllCombinations(FhirContext)} but also makes sure that extracting
+	 * with pre-compiled extraction plans produces exactly the same indexes as FHIRPath
+	 */
+	@ParameterizedTest
+	@MethodSource("provideContexts")
+	public void testAllCombinations_PrecompiledExtraction(FhirContext theFhirContext) throws Exception {
+		BaseSearchParamExtractor extractor = createExtractor(theFhirContext, new StorageSettings());
+		StorageSettings storageSettings = new StorageSettings();
+		storageSettings.setPrecompiledSearchParamExtractionEnabled(true);
+		BaseSearchParamExtractor precompiledExtractor = createExtractor(theFhirContext, storageSettings);
+
+		process(theFhirContext, extractor, precompiledExtractor);
+	}
+
+	private BaseSearchParamExtractor createExtractor(FhirContext theFhirContext, StorageSettings theStorageSettings) {
 		PartitionSettings partitionSettings = new PartitionSettings();
 
 		ISearchParamRegistry searchParamRegistry = new FhirContextSearchParamRegistry(theFhirContext);
 		BaseSearchParamExtractor extractor;
 		switch (theFhirContext.getVersion().getVersion()) {
 			case DSTU2:
-				extractor = new SearchParamExtractorDstu2(new StorageSettings(), partitionSettings, theFhirContext, searchParamRegistry);
+				extractor = new SearchParamExtractorDstu2(theStorageSettings, partitionSettings, theFhirContext, searchParamRegistry);
 				break;
 			case DSTU3:
-				extractor = new SearchParamExtractorDstu3(new StorageSettings(), partitionSettings, theFhirContext, searchParamRegistry);
+				extractor = new SearchParamExtractorDstu3(theStorageSettings, partitionSettings, theFhirContext, searchParamRegistry);
 				break;
 			case R4:
-				extractor = new SearchParamExtractorR4(new StorageSettings(), partitionSettings, theFhirContext, searchParamRegistry);
+				extractor = new SearchParamExtractorR4(theStorageSettings, partitionSettings, theFhirContext, searchParamRegistry);
 				break;
 			case R5:
-				extractor = new SearchParamExtractorR5(new StorageSettings(), partitionSettings, theFhirContext, searchParamRegistry);
+				extractor = new SearchParamExtractorR5(theStorageSettings, partitionSettings, theFhirContext, searchParamRegistry);
 				break;
 			case R4B:
 			case DSTU2_HL7ORG:
@@ -73,12 +97,10 @@ public class SearchParamExtractorMegaTest {
 			default:
 				throw new UnsupportedOperationException();
 		}
-
-		process(theFhirContext, extractor);
-
+		return extractor;
 	}
 
-	private void process(FhirContext theCtx, BaseSearchParamExtractor theExtractor) throws Exception {
+	private void process(FhirContext theCtx, BaseSearchParamExtractor theExtractor, BaseSearchParamExtractor theComparisonExtractor) throws Exception {
 		AtomicInteger indexesCounter = new AtomicInteger();
 
 		for (String nextResourceName : theCtx.getResourceTypes()) {
@@ -87,13 +109,13 @@ public class SearchParamExtractorMegaTest {
 			List<BaseRuntimeElementDefinition<?>> elementStack = new ArrayList<>();
 			List<BaseRuntimeChildDefinition> childStack = new ArrayList<>();
 
-			processElement(theCtx, theExtractor, resourceDefinition, elementStack, childStack, indexesCounter);
+			processElement(theCtx, theExtractor, theComparisonExtractor, resourceDefinition, elementStack, childStack, indexesCounter);
 		}
 
 		ourLog.info("Found {} indexes", indexesCounter.get());
 	}
 
-	private void processElement(FhirContext theCtx, BaseSearchParamExtractor theExtractor, BaseRuntimeElementDefinition<?> theElementDef, List<BaseRuntimeElementDefinition<?>> theElementStack, List<BaseRuntimeChildDefinition> theChildStack, AtomicInteger theIndexesCounter) throws Exception {
+	private void processElement(FhirContext theCtx, BaseSearchParamExtractor theExtractor, BaseSearchParamExtractor theComparisonExtractor, BaseRuntimeElementDefinition<?> theElementDef, List<BaseRuntimeElementDefinition<?>> theElementStack, List<BaseRuntimeChildDefinition> theChildStack, AtomicInteger theIndexesCounter) throws Exception {
 		if (theElementDef.getName().equals("ElementDefinition")) {
 			return;
 		}
@@ -113,10 +135,10 @@ public class SearchParamExtractorMegaTest {
 
 				if (nextChild instanceof RuntimeChildResourceBlockDefinition) {
 					BaseRuntimeElementDefinition<?> def = nextChild.getChildByName(nextChild.getElementName());
-					processElement(theCtx, theExtractor, def, theElementStack, theChildStack, theIndexesCounter);
+					processElement(theCtx, theExtractor, theComparisonExtractor, def, theElementStack, theChildStack, theIndexesCounter);
 				} else if (nextChild instanceof BaseRuntimeChildDatatypeDefinition) {
 					BaseRuntimeElementDefinition<?> def = nextChild.getChildByName(nextChild.getElementName());
-					processElement(theCtx, theExtractor, def, theElementStack, theChildStack, theIndexesCounter);
+					processElement(theCtx, theExtractor, theComparisonExtractor, def, theElementStack, theChildStack, theIndexesCounter);
 				} else if (nextChild instanceof RuntimeChildExtension) {
 					ourLog.trace("Ignoring RuntimeChildExtension");
 				} else if (nextChild instanceof RuntimeChildContainedResources) {
@@ -127,7 +149,7 @@ public class SearchParamExtractorMegaTest {
 					RuntimeChildChoiceDefinition choice = (RuntimeChildChoiceDefinition) nextChild;
 					for (String nextOption : choice.getValidChildNames()) {
 						BaseRuntimeElementDefinition<?> def = nextChild.getChildByName(nextOption);
-						processElement(theCtx, theExtractor, def, theElementStack, theChildStack, theIndexesCounter);
+						processElement(theCtx, theExtractor, theComparisonExtractor, def, theElementStack, theChildStack, theIndexesCounter);
 					}
 				} else if (nextChild instanceof RuntimeChildDirectResource) {
 					ourLog.trace("Ignoring RuntimeChildDirectResource");
@@ -138,7 +160,7 @@ public class SearchParamExtractorMegaTest {
 				theChildStack.remove(theChildStack.size() - 1);
 			}
 		} else if (theElementDef instanceof RuntimePrimitiveDatatypeDefinition) {
-			handlePathToPrimitive(theCtx, theExtractor, theElementStack, theChildStack, theIndexesCounter);
+			handlePathToPrimitive(theCtx, theExtractor, theComparisonExtractor, theElementStack, theChildStack, theIndexesCounter);
 		} else if (theElementDef instanceof RuntimePrimitiveDatatypeNarrativeDefinition) {
 			ourLog.trace("Ignoring RuntimePrimitiveDatatypeNarrativeDefinition");
 		} else if (theElementDef instanceof RuntimePrimitiveDatatypeXhtmlHl7OrgDefinition) {
@@ -150,7 +172,7 @@ public class SearchParamExtractorMegaTest {
 		theElementStack.remove(theElementStack.size() - 1);
 	}
 
-	private void handlePathToPrimitive(FhirContext theCtx, BaseSearchParamExtractor theExtractor, List<BaseRuntimeElementDefinition<?>> theElementStack, List<BaseRuntimeChildDefinition> theChildStack, AtomicInteger theIndexesCounter) {
+	private void handlePathToPrimitive(FhirContext theCtx, BaseSearchParamExtractor theExtractor, BaseSearchParamExtractor theComparisonExtractor, List<BaseRuntimeElementDefinition<?>> theElementStack, List<BaseRuntimeChildDefinition> theChildStack, AtomicInteger theIndexesCounter) {
 		IBase previousObject = null;
 		IBaseResource resource = null;
 		StringBuilder path = new StringBuilder(theElementStack.get(0).getName());
@@ -245,6 +267,21 @@ public class SearchParamExtractorMegaTest {
 			assertEquals(0, warnings.size(), () -> String.join("\n", warnings));
 			theIndexesCounter.addAndGet(set.size());
 		}
+
+		if (theComparisonExtractor != null) {
+			String description = path.toString();
+			assertEquals(theExtractor.extractSearchParamDates(resource), theComparisonExtractor.extractSearchParamDates(resource), description);
+			assertEquals(theExtractor.extractSearchParamNumber(resource), theComparisonExtractor.extractSearchParamNumber(resource), description);
+			assertEquals(theExtractor.extractSearchParamStrings(resource), theComparisonExtractor.extractSearchParamStrings(resource), description);
+			assertEquals(theExtractor.extractSearchParamQuantity(resource), theComparisonExtractor.extractSearchParamQuantity(resource), description);
+			assertEquals(theExtractor.extractSearchParamTokens(resource), theComparisonExtractor.extractSearchParamTokens(resource), description);
+			assertEquals(theExtractor.extractSearchParamUri(resource), theComparisonExtractor.extractSearchParamUri(resource), description);
+			assertEquals(toStrings(theExtractor.extractResourceLinks(resource, false)), toStrings(theComparisonExtractor.extractResourceLinks(resource, false)), description);
+		}
+	}
+
+	private static Set<String> toStrings(Set<?> theValues) {
+		return theValues.stream().map(Object::toString).collect(Collectors.toSet());
 	}
 
 	public static List<FhirContext> provideContexts() {
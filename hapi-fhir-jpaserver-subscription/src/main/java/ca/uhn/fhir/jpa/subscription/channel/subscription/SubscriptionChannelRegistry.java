@@ -33,6 +33,7 @@ import com.google.common.collect.Multimap;
 import com.google.common.collect.MultimapBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.messaging.MessageChannel;
 import org.springframework.messaging.MessageHandler;
@@ -116,7 +117,23 @@ public class SubscriptionChannelRegistry {
 			settings);
 	}
 
+	/**
+	 * Removes a subscription which is no longer active. Once no subscriptions use its channel, the channel is
+	 * closed and any messages stored for it are deleted.
+	 */
 	public synchronized void remove(ActiveSubscription theActiveSubscription) {
+		remove(theActiveSubscription, true);
+	}
+
+	/**
+	 * Removes a subscription because the server is stopping. Once no subscriptions use its channel, the channel
+	 * is closed, but any messages stored for it are kept so that they can be delivered after a restart.
+	 */
+	public synchronized void removeForShutdown(ActiveSubscription theActiveSubscription) {
+		remove(theActiveSubscription, false);
+	}
+
+	private void remove(ActiveSubscription theActiveSubscription, boolean theDeleteChannel) {
 		String channelName = theActiveSubscription.getChannelName();
 		ourLog.info("Removing subscription {} from channel {}", theActiveSubscription.getId(), channelName);
 		boolean removed = myActiveSubscriptionByChannelName.remove(channelName, theActiveSubscription.getId());
@@ -127,12 +144,24 @@ public class SubscriptionChannelRegistry {
 
 		// This was the last one.  Close and remove the channel
 		if (!myActiveSubscriptionByChannelName.containsKey(channelName)) {
+			// Destroy the sender first, so that a channel shared by the sender and the receiver is closed
+			// while the receiver still has its delivery handlers
+			IChannelProducer sender = myChannelNameToSender.remove(channelName);
+			if (sender instanceof DisposableBean) {
+				try {
+					((DisposableBean) sender).destroy();
+				} catch (Exception e) {
+					ourLog.error("Failed to destroy sending channel {}", channelName, e);
+				}
+			}
 			SubscriptionChannelWithHandlers channel = myDeliveryReceiverChannels.get(channelName);
 			if (channel != null) {
 				channel.close();
 			}
 			myDeliveryReceiverChannels.closeAndRemove(channelName);
-			myChannelNameToSender.remove(channelName);
+			if (theDeleteChannel) {
+				mySubscriptionDeliveryChannelFactory.deleteDeliveryChannel(channelName);
+			}
 		}
 
 	}
@@ -69,12 +69,14 @@ public class SubscriptionChannelWithHandlers implements Closeable {
 
 	@Override
 	public void close() {
-		for (MessageHandler messageHandler : myDeliveryHandlerSet) {
-			removeHandler(messageHandler);
-		}
+		// Destroy the channel before removing the handlers, so that a channel which waits for the messages
+		// being delivered when it is destroyed does not consume messages with no handler to deliver them
 		if (mySubscribableChannel instanceof DisposableBean) {
 			tryDestroyChannel((DisposableBean) mySubscribableChannel);
 		}
+		for (MessageHandler messageHandler : myDeliveryHandlerSet) {
+			removeHandler(messageHandler);
+		}
 	}
 
 	private void tryDestroyChannel(DisposableBean theSubscribableChannel) {
@@ -21,6 +21,7 @@ package ca.uhn.fhir.jpa.subscription.match.config;
 
 import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.interceptor.api.IInterceptorBroadcaster;
+import ca.uhn.fhir.jpa.model.entity.StorageSettings;
 import ca.uhn.fhir.jpa.searchparam.matcher.SearchParamMatcher;
 import ca.uhn.fhir.jpa.subscription.channel.api.IChannelFactory;
 import ca.uhn.fhir.jpa.subscription.channel.subscription.SubscriptionChannelRegistry;
@@ -29,7 +30,9 @@ import ca.uhn.fhir.jpa.subscription.channel.subscription.SubscriptionDeliveryHan
 import ca.uhn.fhir.jpa.subscription.match.deliver.email.IEmailSender;
 import ca.uhn.fhir.jpa.subscription.match.deliver.email.SubscriptionDeliveringEmailSubscriber;
 import ca.uhn.fhir.jpa.subscription.match.deliver.message.SubscriptionDeliveringMessageSubscriber;
+import ca.uhn.fhir.jpa.subscription.match.deliver.resthook.AsyncRestHookDeliverySvc;
 import ca.uhn.fhir.jpa.subscription.match.deliver.resthook.SubscriptionDeliveringRestHookSubscriber;
+import ca.uhn.fhir.jpa.subscription.match.matcher.matching.BatchingDaoSubscriptionMatcher;
 import ca.uhn.fhir.jpa.subscription.match.matcher.matching.CompositeInMemoryDaoSubscriptionMatcher;
 import ca.uhn.fhir.jpa.subscription.match.matcher.matching.DaoSubscriptionMatcher;
 import ca.uhn.fhir.jpa.subscription.match.matcher.matching.ISubscriptionMatcher;
@@ -109,6 +112,11 @@ public class SubscriptionProcessorConfig {
 		return new SubscriptionMatchDeliverer(theFhirContext, theInterceptorBroadcaster, theSubscriptionChannelRegistry);
 	}
 
+	@Bean
+	public AsyncRestHookDeliverySvc asyncRestHookDeliverySvc(StorageSettings theStorageSettings) {
+		return new AsyncRestHookDeliverySvc(theStorageSettings);
+	}
+
 	@Bean
 	@Scope("prototype")
 	public SubscriptionDeliveringRestHookSubscriber subscriptionDeliveringRestHookSubscriber() {
@@ -134,7 +142,7 @@ public class SubscriptionProcessorConfig {
 
 	@Bean
 	public DaoSubscriptionMatcher daoSubscriptionMatcher() {
-		return new DaoSubscriptionMatcher();
+		return new BatchingDaoSubscriptionMatcher();
 	}
 
 	@Bean
@@ -0,0 +1,425 @@
+/*-
+ * #%L
+ * HAPI FHIR Subscription Server
+ * %%
+ * Copyright (C) 2014 - 2023 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ca.uhn.fhir.jpa.subscription.match.deliver.resthook;
+
+import ca.uhn.fhir.i18n.Msg;
+import ca.uhn.fhir.jpa.model.entity.StorageSettings;
+import ca.uhn.fhir.jpa.subscription.model.ChannelRetryConfiguration;
+import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
+import ca.uhn.fhir.util.ThreadPoolUtil;
+import com.google.common.annotations.VisibleForTesting;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.apache.commons.lang3.time.DateUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.retry.RetryPolicy;
+import org.springframework.retry.backoff.ExponentialBackOffPolicy;
+import org.springframework.retry.policy.SimpleRetryPolicy;
+import org.springframework.retry.policy.TimeoutRetryPolicy;
+import org.springframework.retry.support.RetryTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import javax.annotation.Nullable;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Delivers rest-hook notifications asynchronously when {@link StorageSettings#getRestHookDeliveryQueueSize()} is
+ * greater than zero. Each endpoint has its own bounded queue and its own delivery threads, so a slow endpoint only
+ * delays the deliveries to itself, and holds at most {@link StorageSettings#getRestHookDeliveryThreadsPerEndpoint()}
+ * connections. Submitting a delivery never blocks. If the queue for an endpoint is full, the delivery is rejected
+ * with an exception, so that the delivery channel retries the message or reports it as failed.
+ * <p>
+ * A failed delivery is retried with an exponential backoff by the thread delivering it, so later deliveries to the
+ * same endpoint wait for it. The number of retries comes from the subscription's retry configuration, and if the
+ * subscription has none, the delivery is retried for up to a minute as it would be by the delivery channel.
+ * Deliveries to an endpoint are only made in order if the endpoint has a single delivery thread.
+ * </p>
+ * <p>
+ * If {@link StorageSettings#getRestHookDeliveryCoalesceMillis()} is greater than zero, notifications which are
+ * submitted with the same batch key are collected for that long and delivered together. Each endpoint schedules
+ * the delivery of its own batches. A batch which can't be queued because the endpoint's queue is full is tried
+ * again after another coalesce interval.
+ * </p>
+ *
+ * @since 6.8.0
+ */
+public class AsyncRestHookDeliverySvc {
+	/**
+	 * The maximum number of notifications which are delivered together
+	 */
+	static final int MAX_COALESCED_BATCH_SIZE = 100;
+	private static final long DEFAULT_RETRY_INITIAL_INTERVAL_MILLIS = 1000;
+	private static final long MIN_REQUEUE_DELAY_MILLIS = 100;
+	private static final long MAX_RETRY_INTERVAL_MILLIS = 30 * DateUtils.MILLIS_PER_SECOND;
+	private static final Logger ourLog = LoggerFactory.getLogger(AsyncRestHookDeliverySvc.class);
+	private static final AtomicInteger ourNextEndpointId = new AtomicInteger(0);
+
+	private final StorageSettings myStorageSettings;
+	private final ConcurrentHashMap<String, EndpointQueue> myEndpointQueues = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<String, CoalescedBatch<?>> myCoalescedBatches = new ConcurrentHashMap<>();
+	private long myRetryInitialIntervalMillis = DEFAULT_RETRY_INITIAL_INTERVAL_MILLIS;
+
+	/**
+	 * Constructor
+	 */
+	public AsyncRestHookDeliverySvc(StorageSettings theStorageSettings) {
+		myStorageSettings = theStorageSettings;
+	}
+
+	/**
+	 * Returns <code>true</code> if rest-hook notifications should be delivered using this service
+	 */
+	public boolean isEnabled() {
+		return myStorageSettings.getRestHookDeliveryQueueSize() > 0;
+	}
+
+	/**
+	 * Returns <code>true</code> if notifications may be submitted using {@link #submitCoalesced(String, String, ChannelRetryConfiguration, Object, Consumer)}
+	 */
+	public boolean isCoalescingEnabled() {
+		return isEnabled() && myStorageSettings.getRestHookDeliveryCoalesceMillis() > 0;
+	}
+
+	/**
+	 * Queues a delivery to an endpoint. A delivery which throws an exception is retried, and the exception is logged
+	 * once no retries remain.
+	 *
+	 * @param theEndpointUrl         The endpoint the delivery is made to
+	 * @param theRetryConfiguration The subscription's retry configuration, or <code>null</code> if it has none
+	 * @param theDelivery            Performs the delivery
+	 * @throws InternalErrorException If the queue for the endpoint is full
+	 */
+	public void submit(String theEndpointUrl, @Nullable ChannelRetryConfiguration theRetryConfiguration, Runnable theDelivery) {
+		EndpointQueue endpointQueue = getEndpointQueue(theEndpointUrl);
+		if (!endpointQueue.offer(newRetryingDelivery(theEndpointUrl, theRetryConfiguration, theDelivery))) {
+			throw newQueueFullException(theEndpointUrl);
+		}
+	}
+
+	/**
+	 * Adds a notification to the batch of notifications with the same endpoint and batch key. The batch is queued
+	 * for delivery to the endpoint once the coalesce interval has passed since the first notification was added,
+	 * or immediately if it holds {@link #MAX_COALESCED_BATCH_SIZE} notifications.
+	 *
+	 * @param theEndpointUrl The endpoint the batch is delivered to
+	 * @param theBatchKey    Identifies the notifications which can be delivered together (e.g. the subscription ID)
+	 * @param theRetryConfiguration The subscription's retry configuration, or <code>null</code> if it has none
+	 * @param theItem        The notification
+	 * @param theDelivery    Delivers a batch of notifications. This is only invoked by the first notification added to a batch.
+	 * @throws InternalErrorException If the notification would start a new batch and the queue for the endpoint is full
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> void submitCoalesced(String theEndpointUrl, String theBatchKey, @Nullable ChannelRetryConfiguration theRetryConfiguration, T theItem, Consumer<List<T>> theDelivery) {
+		String key = theEndpointUrl + " " + theBatchKey;
+		EndpointQueue endpointQueue = getEndpointQueue(theEndpointUrl);
+
+		// A new batch will need space in the queue, so reject the notification now while the delivery channel can still retry it
+		if (!myCoalescedBatches.containsKey(key) && !endpointQueue.hasCapacity()) {
+			endpointQueue.myRejectedCount.incrementAndGet();
+			throw newQueueFullException(theEndpointUrl);
+		}
+
+		List<CoalescedBatch<T>> createdBatch = new ArrayList<>(1);
+		List<CoalescedBatch<T>> fullBatch = new ArrayList<>(1);
+
+		// Notifications are only added to a batch while it is in the map, so once a batch has been
+		// removed its contents can no longer change
+		myCoalescedBatches.compute(key, (k, existing) -> {
+			CoalescedBatch<T> batch = (CoalescedBatch<T>) existing;
+			if (batch == null) {
+				batch = new CoalescedBatch<>(theEndpointUrl, theRetryConfiguration, theDelivery);
+				createdBatch.add(batch);
+			}
+			batch.myItems.add(theItem);
+			if (batch.myItems.size() >= MAX_COALESCED_BATCH_SIZE) {
+				fullBatch.add(batch);
+				return null;
+			}
+			return batch;
+		});
+
+		if (!fullBatch.isEmpty()) {
+			queueBatch(fullBatch.get(0));
+		} else if (!createdBatch.isEmpty()) {
+			CoalescedBatch<T> batch = createdBatch.get(0);
+			endpointQueue.schedule(() -> flush(key, batch), myStorageSettings.getRestHookDeliveryCoalesceMillis());
+		}
+	}
+
+	private void flush(String theKey, CoalescedBatch<?> theBatch) {
+		if (myCoalescedBatches.remove(theKey, theBatch)) {
+			queueBatch(theBatch);
+		}
+	}
+
+	/**
+	 * Queues a batch which is no longer accepting notifications. The notifications in it have already been
+	 * acknowledged to the delivery channel, so if the queue is full the batch is tried again later rather than
+	 * rejected.
+	 */
+	private void queueBatch(CoalescedBatch<?> theBatch) {
+		EndpointQueue endpointQueue = getEndpointQueue(theBatch.myEndpointUrl);
+		if (!endpointQueue.offer(newRetryingDelivery(theBatch.myEndpointUrl, theBatch.myRetryConfiguration, theBatch::deliver))) {
+			ourLog.debug("Rest-hook delivery queue for endpoint {} is full, retrying batch of {} notifications later", theBatch.myEndpointUrl, theBatch.myItems.size());
+			long delay = Math.max(myStorageSettings.getRestHookDeliveryCoalesceMillis(), MIN_REQUEUE_DELAY_MILLIS);
+			endpointQueue.schedule(() -> queueBatch(theBatch), delay);
+		}
+	}
+
+	private Runnable newRetryingDelivery(String theEndpointUrl, @Nullable ChannelRetryConfiguration theRetryConfiguration, Runnable theDelivery) {
+		RetryTemplate retryTemplate = newRetryTemplate(theRetryConfiguration);
+		return () -> retryTemplate.execute(context -> {
+			if (context.getRetryCount() > 0) {
+				ourLog.info("Retrying rest-hook delivery to endpoint {}, attempt {}", theEndpointUrl, context.getRetryCount() + 1);
+			}
+			theDelivery.run();
+			return null;
+		});
+	}
+
+	private static InternalErrorException newQueueFullException(String theEndpointUrl) {
+		return new InternalErrorException(Msg.code(2415) + "Rest-hook delivery queue for endpoint " + theEndpointUrl + " is full");
+	}
+
+	private RetryTemplate newRetryTemplate(@Nullable ChannelRetryConfiguration theRetryConfiguration) {
+		RetryPolicy retryPolicy;
+		if (theRetryConfiguration != null && theRetryConfiguration.getRetryCount() != null) {
+			retryPolicy = new SimpleRetryPolicy(theRetryConfiguration.getRetryCount() + 1);
+		} else {
+			TimeoutRetryPolicy timeoutRetryPolicy = new TimeoutRetryPolicy();
+			timeoutRetryPolicy.setTimeout(DateUtils.MILLIS_PER_MINUTE);
+			retryPolicy = timeoutRetryPolicy;
+		}
+
+		ExponentialBackOffPolicy backOffPolicy = new ExponentialBackOffPolicy();
+		backOffPolicy.setInitialInterval(myRetryInitialIntervalMillis);
+		backOffPolicy.setMultiplier(2);
+		backOffPolicy.setMaxInterval(Math.max(myRetryInitialIntervalMillis, MAX_RETRY_INTERVAL_MILLIS));
+
+		RetryTemplate retVal = new RetryTemplate();
+		retVal.setRetryPolicy(retryPolicy);
+		retVal.setBackOffPolicy(backOffPolicy);
+		retVal.setThrowLastExceptionOnExhausted(true);
+		return retVal;
+	}
+
+	/**
+	 * Returns the delivery statistics for each endpoint which notifications have been delivered to
+	 */
+	public List<EndpointStatistics> getEndpointStatistics() {
+		return myEndpointQueues
+			.values()
+			.stream()
+			.map(EndpointQueue::getStatistics)
+			.collect(Collectors.toList());
+	}
+
+	@VisibleForTesting
+	void setRetryInitialIntervalMillisForUnitTests(long theRetryInitialIntervalMillis) {
+		myRetryInitialIntervalMillis = theRetryInitialIntervalMillis;
+	}
+
+	@PreDestroy
+	public void stop() {
+		myEndpointQueues.values().forEach(t -> {
+			t.myFlushExecutor.shutdownNow();
+			t.myExecutor.shutdown();
+		});
+		myEndpointQueues.clear();
+	}
+
+	private EndpointQueue getEndpointQueue(String theEndpointUrl) {
+		int queueSize = myStorageSettings.getRestHookDeliveryQueueSize();
+		int threadCount = myStorageSettings.getRestHookDeliveryThreadsPerEndpoint();
+
+		EndpointQueue retVal = myEndpointQueues.get(theEndpointUrl);
+		if (retVal != null && retVal.myQueueSize == queueSize && retVal.myThreadCount == threadCount) {
+			return retVal;
+		}
+
+		return myEndpointQueues.compute(theEndpointUrl, (k, existing) -> {
+			if (existing != null) {
+				if (existing.myQueueSize == queueSize && existing.myThreadCount == threadCount) {
+					return existing;
+				}
+				// The settings have changed, so replace the queue once the queued deliveries and scheduled batches have completed
+				existing.myExecutor.shutdown();
+				existing.myFlushExecutor.shutdown();
+			}
+			return new EndpointQueue(theEndpointUrl, queueSize, threadCount);
+		});
+	}
+
+	private static class EndpointQueue {
+
+		private final String myEndpointUrl;
+		private final int myQueueSize;
+		private final int myThreadCount;
+		private final ThreadPoolTaskExecutor myExecutor;
+		private final ScheduledExecutorService myFlushExecutor;
+		private final AtomicLong myDeliveredCount = new AtomicLong();
+		private final AtomicLong myFailedCount = new AtomicLong();
+		private final AtomicLong myRejectedCount = new AtomicLong();
+
+		private EndpointQueue(String theEndpointUrl, int theQueueSize, int theThreadCount) {
+			myEndpointUrl = theEndpointUrl;
+			myQueueSize = theQueueSize;
+			myThreadCount = theThreadCount;
+			int endpointId = ourNextEndpointId.getAndIncrement();
+			myExecutor = ThreadPoolUtil.newThreadPool(theThreadCount, theThreadCount, "rest-hook-delivery-" + endpointId + "-", theQueueSize);
+			// Never block the delivery channel thread if the queue is full
+			myExecutor.getThreadPoolExecutor().setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+			BasicThreadFactory threadFactory = new BasicThreadFactory.Builder()
+				.namingPattern("rest-hook-delivery-" + endpointId + "-flush-%d")
+				.daemon(true)
+				.build();
+			myFlushExecutor = Executors.newSingleThreadScheduledExecutor(threadFactory);
+		}
+
+		private boolean hasCapacity() {
+			return myExecutor.getThreadPoolExecutor().getQueue().remainingCapacity() > 0;
+		}
+
+		/**
+		 * Queues the delivery, returning <code>false</code> if the queue is full
+		 */
+		private boolean offer(Runnable theDelivery) {
+			try {
+				myExecutor.execute(() -> {
+					try {
+						theDelivery.run();
+						myDeliveredCount.incrementAndGet();
+					} catch (Exception e) {
+						myFailedCount.incrementAndGet();
+						ourLog.error("Failure delivering rest-hook notification to endpoint {}, no retries remain", myEndpointUrl, e);
+					}
+				});
+				return true;
+			} catch (TaskRejectedException e) {
+				myRejectedCount.incrementAndGet();
+				ourLog.debug("Rest-hook delivery queue for endpoint {} is full", myEndpointUrl);
+				return false;
+			}
+		}
+
+		private void schedule(Runnable theTask, long theDelayMillis) {
+			myFlushExecutor.schedule(theTask, theDelayMillis, TimeUnit.MILLISECONDS);
+		}
+
+		private EndpointStatistics getStatistics() {
+			int queued = myExecutor.getThreadPoolExecutor().getQueue().size();
+			int active = myExecutor.getActiveCount();
+			return new EndpointStatistics(myEndpointUrl, queued, active, myDeliveredCount.get(), myFailedCount.get(), myRejectedCount.get());
+		}
+	}
+
+	private static class CoalescedBatch<T> {
+
+		private final String myEndpointUrl;
+		private final ChannelRetryConfiguration myRetryConfiguration;
+		private final Consumer<List<T>> myDelivery;
+		private final List<T> myItems = new ArrayList<>();
+
+		private CoalescedBatch(String theEndpointUrl, ChannelRetryConfiguration theRetryConfiguration, Consumer<List<T>> theDelivery) {
+			myEndpointUrl = theEndpointUrl;
+			myRetryConfiguration = theRetryConfiguration;
+			myDelivery = theDelivery;
+		}
+
+		private void deliver() {
+			myDelivery.accept(myItems);
+		}
+	}
+
+	/**
+	 * Delivery statistics for a single endpoint, which can be used to monitor backpressure
+	 */
+	public static class EndpointStatistics {
+
+		private final String myEndpointUrl;
+		private final int myQueuedCount;
+		private final int myActiveCount;
+		private final long myDeliveredCount;
+		private final long myFailedCount;
+		private final long myRejectedCount;
+
+		public EndpointStatistics(String theEndpointUrl, int theQueuedCount, int theActiveCount, long theDeliveredCount, long theFailedCount, long theRejectedCount) {
+			myEndpointUrl = theEndpointUrl;
+			myQueuedCount = theQueuedCount;
+			myActiveCount = theActiveCount;
+			myDeliveredCount = theDeliveredCount;
+			myFailedCount = theFailedCount;
+			myRejectedCount = theRejectedCount;
+		}
+
+		public String getEndpointUrl() {
+			return myEndpointUrl;
+		}
+
+		/**
+		 * The number of deliveries waiting in the queue for the endpoint
+		 */
+		public int getQueuedCount() {
+			return myQueuedCount;
+		}
+
+		/**
+		 * The number of deliveries currently in progress
+		 */
+		public int getActiveCount() {
+			return myActiveCount;
+		}
+
+		/**
+		 * The number of deliveries which have completed successfully. A batch of coalesced notifications counts as one delivery.
+		 */
+		public long getDeliveredCount() {
+			return myDeliveredCount;
+		}
+
+		/**
+		 * The number of deliveries which have failed, after they have been retried
+		 */
+		public long getFailedCount() {
+			return myFailedCount;
+		}
+
+		/**
+		 * The number of times a delivery or coalesced batch could not be queued because the queue for the endpoint
+		 * was full
+		 */
+		public long getRejectedCount() {
+			return myRejectedCount;
+		}
+	}
+
+}
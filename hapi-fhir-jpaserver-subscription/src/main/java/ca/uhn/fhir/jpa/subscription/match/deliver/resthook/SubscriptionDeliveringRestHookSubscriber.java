@@ -27,7 +27,9 @@ import ca.uhn.fhir.interceptor.model.RequestPartitionId;
 import ca.uhn.fhir.jpa.api.dao.DaoRegistry;
 import ca.uhn.fhir.jpa.api.dao.IFhirResourceDao;
 import ca.uhn.fhir.jpa.subscription.match.deliver.BaseSubscriptionDeliverySubscriber;
+import ca.uhn.fhir.jpa.subscription.match.registry.ActiveSubscription;
 import ca.uhn.fhir.jpa.subscription.model.CanonicalSubscription;
+import ca.uhn.fhir.jpa.subscription.model.ChannelRetryConfiguration;
 import ca.uhn.fhir.jpa.subscription.model.ResourceDeliveryMessage;
 import ca.uhn.fhir.rest.api.EncodingEnum;
 import ca.uhn.fhir.rest.api.RequestTypeEnum;
@@ -45,7 +47,9 @@ import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
 import ca.uhn.fhir.rest.server.messaging.BaseResourceModifiedMessage;
 import ca.uhn.fhir.util.Logs;
 import ca.uhn.fhir.util.StopWatch;
+import ca.uhn.fhir.util.BundleBuilder;
 import ca.uhn.fhir.util.BundleUtil;
+import com.google.common.annotations.VisibleForTesting;
 import org.hl7.fhir.instance.model.api.IBaseBundle;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.instance.model.api.IIdType;
@@ -62,6 +66,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
 
@@ -71,6 +76,8 @@ public class SubscriptionDeliveringRestHookSubscriber extends BaseSubscriptionDe
 
 	@Autowired
 	private DaoRegistry myDaoRegistry;
+	@Autowired(required = false)
+	private AsyncRestHookDeliverySvc myAsyncRestHookDeliverySvc;
 
 	/**
 	 * Constructor
@@ -254,17 +261,105 @@ public class SubscriptionDeliveringRestHookSubscriber extends BaseSubscriptionDe
 			}
 		}
 
+		if (client != null && myAsyncRestHookDeliverySvc != null && myAsyncRestHookDeliverySvc.isEnabled()) {
+			deliverPayloadAsync(theMessage, subscription, payloadType, client);
+			return;
+		}
+
 		deliverPayload(theMessage, subscription, payloadType, client);
 
+		callAfterRestHookDeliveryHook(theMessage);
+	}
+
+	private void callAfterRestHookDeliveryHook(ResourceDeliveryMessage theMessage) {
 		// Interceptor call: SUBSCRIPTION_AFTER_REST_HOOK_DELIVERY
-		params = new HookParams()
-			.add(CanonicalSubscription.class, subscription)
+		HookParams params = new HookParams()
+			.add(CanonicalSubscription.class, theMessage.getSubscription())
 			.add(ResourceDeliveryMessage.class, theMessage);
-		if (!getInterceptorBroadcaster().callHooks(Pointcut.SUBSCRIPTION_AFTER_REST_HOOK_DELIVERY, params)) {
-			//noinspection UnnecessaryReturnStatement
-			return;
+		getInterceptorBroadcaster().callHooks(Pointcut.SUBSCRIPTION_AFTER_REST_HOOK_DELIVERY, params);
+	}
+
+	/**
+	 * Queues the delivery of the payload using the {@link AsyncRestHookDeliverySvc}. Notifications which would be
+	 * delivered as individual create, update or delete requests are coalesced into a single batch Bundle if
+	 * coalescing is enabled.
+	 */
+	private void deliverPayloadAsync(ResourceDeliveryMessage theMsg, CanonicalSubscription theSubscription, EncodingEnum thePayloadType, IGenericClient theClient) {
+		IBaseResource payloadResource = getAndMassagePayload(theMsg, theSubscription);
+		String endpointUrl = theSubscription.getEndpointUrl();
+		ChannelRetryConfiguration retryConfiguration = getRetryConfiguration(theSubscription);
+
+		if (myAsyncRestHookDeliverySvc.isCoalescingEnabled() && isCoalescable(theMsg, theSubscription, thePayloadType, payloadResource)) {
+			PendingNotification notification = new PendingNotification(theMsg, payloadResource);
+			String subscriptionId = theSubscription.getIdElement(myFhirContext).toUnqualifiedVersionless().getValue();
+			myAsyncRestHookDeliverySvc.submitCoalesced(endpointUrl, subscriptionId, retryConfiguration, notification, t -> doCoalescedDelivery(t, theSubscription, thePayloadType, theClient));
+		} else {
+			myAsyncRestHookDeliverySvc.submit(endpointUrl, retryConfiguration, () -> runAsyncDelivery(List.of(theMsg), () -> doDelivery(theMsg, theSubscription, thePayloadType, theClient, payloadResource)));
 		}
+	}
 
+	@Nullable
+	private ChannelRetryConfiguration getRetryConfiguration(CanonicalSubscription theSubscription) {
+		ActiveSubscription activeSubscription = mySubscriptionRegistry.get(theSubscription.getIdElement(myFhirContext).getIdPart());
+		return activeSubscription != null ? activeSubscription.getRetryConfigurationParameters() : null;
+	}
+
+	private boolean isCoalescable(ResourceDeliveryMessage theMsg, CanonicalSubscription theSubscription, EncodingEnum thePayloadType, IBaseResource thePayloadResource) {
+		if (theSubscription.isTopicSubscription() || isNotBlank(theSubscription.getPayloadSearchCriteria()) || thePayloadType == null) {
+			return false;
+		}
+		switch (theMsg.getOperationType()) {
+			case CREATE:
+			case UPDATE:
+				return thePayloadResource != null;
+			case DELETE:
+				return true;
+			default:
+				return false;
+		}
+	}
+
+	private void doCoalescedDelivery(List<PendingNotification> theNotifications, CanonicalSubscription theSubscription, EncodingEnum thePayloadType, IGenericClient theClient) {
+		List<ResourceDeliveryMessage> messages = theNotifications.stream().map(t -> t.myMessage).collect(Collectors.toList());
+		runAsyncDelivery(messages, () -> {
+			BundleBuilder builder = new BundleBuilder(myFhirContext);
+			for (PendingNotification next : theNotifications) {
+				if (next.myMessage.getOperationType() == BaseResourceModifiedMessage.OperationTypeEnum.DELETE) {
+					builder.addTransactionDeleteEntry(next.myMessage.getPayloadId(myFhirContext));
+				} else {
+					builder.addTransactionUpdateEntry(next.myPayloadResource);
+				}
+			}
+			builder.setType("batch");
+
+			StopWatch sw = new StopWatch();
+			theClient.transaction().withBundle(builder.getBundle()).encoded(thePayloadType).execute();
+
+			Logs.getSubscriptionTroubleshootingLog().debug("Delivered {} coalesced rest-hook payloads for {} in {}", theNotifications.size(), theSubscription.getIdElement(myFhirContext).toUnqualifiedVersionless().getValue(), sw);
+		});
+	}
+
+	/**
+	 * Performs an asynchronous delivery, invoking the pointcuts which would have been invoked on the delivery
+	 * channel thread had the delivery been synchronous
+	 */
+	private void runAsyncDelivery(List<ResourceDeliveryMessage> theMessages, Runnable theDelivery) {
+		try {
+			theDelivery.run();
+		} catch (RuntimeException e) {
+			for (ResourceDeliveryMessage next : theMessages) {
+				// Interceptor call: SUBSCRIPTION_AFTER_DELIVERY_FAILED
+				HookParams hookParams = new HookParams()
+					.add(ResourceDeliveryMessage.class, next)
+					.add(Exception.class, e);
+				getInterceptorBroadcaster().callHooks(Pointcut.SUBSCRIPTION_AFTER_DELIVERY_FAILED, hookParams);
+			}
+			throw e;
+		}
+
+		for (ResourceDeliveryMessage next : theMessages) {
+			callAfterRestHookDeliveryHook(next);
+		}
 	}
 
 	/**
@@ -288,6 +383,11 @@ public class SubscriptionDeliveringRestHookSubscriber extends BaseSubscriptionDe
 		}
 	}
 
+	@VisibleForTesting
+	public void setAsyncRestHookDeliverySvcForUnitTest(AsyncRestHookDeliverySvc theAsyncRestHookDeliverySvc) {
+		myAsyncRestHookDeliverySvc = theAsyncRestHookDeliverySvc;
+	}
+
 	public static List<Header> parseHeadersFromSubscription(CanonicalSubscription subscription) {
 		List<Header> headers = null;
 		if (subscription != null) {
@@ -315,4 +415,15 @@ public class SubscriptionDeliveringRestHookSubscriber extends BaseSubscriptionDe
 		return headers;
 	}
 
+	private static class PendingNotification {
+
+		private final ResourceDeliveryMessage myMessage;
+		private final IBaseResource myPayloadResource;
+
+		private PendingNotification(ResourceDeliveryMessage theMessage, IBaseResource thePayloadResource) {
+			myMessage = theMessage;
+			myPayloadResource = thePayloadResource;
+		}
+	}
+
 }
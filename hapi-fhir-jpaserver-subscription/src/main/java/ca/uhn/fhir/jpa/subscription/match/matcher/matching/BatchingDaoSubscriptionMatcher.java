@@ -0,0 +1,167 @@
+/*-
+ * #%L
+ * HAPI FHIR Subscription Server
+ * %%
+ * Copyright (C) 2014 - 2023 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ca.uhn.fhir.jpa.subscription.match.matcher.matching;
+
+import ca.uhn.fhir.i18n.Msg;
+import ca.uhn.fhir.jpa.model.entity.StorageSettings;
+import ca.uhn.fhir.jpa.searchparam.matcher.InMemoryMatchResult;
+import ca.uhn.fhir.jpa.subscription.model.CanonicalSubscription;
+import ca.uhn.fhir.jpa.subscription.model.ResourceModifiedMessage;
+import ca.uhn.fhir.rest.api.server.IBundleProvider;
+import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Database subscription matcher which, if {@link StorageSettings#getDatabaseSubscriptionMatchingBatchWindowMillis()}
+ * is greater than zero, matches resources against the same subscription in batches. The first consumer thread to
+ * match a resource against a subscription waits for the batch window (or until the batch is full) while other
+ * consumer threads add their resources to the batch, and then performs a single search of the form
+ * <code>[criteria]&amp;_id=[id1],[id2],...</code> whose results are shared with the other threads.
+ *
+ * @since 6.8.0
+ */
+public class BatchingDaoSubscriptionMatcher extends DaoSubscriptionMatcher {
+	/**
+	 * The maximum number of resources which are matched by a single search
+	 */
+	static final int MAX_BATCH_SIZE = 100;
+	private static final Logger ourLog = LoggerFactory.getLogger(BatchingDaoSubscriptionMatcher.class);
+
+	private final ConcurrentHashMap<String, Batch> myOpenBatches = new ConcurrentHashMap<>();
+	@Autowired
+	StorageSettings myStorageSettings;
+
+	@Override
+	public InMemoryMatchResult match(CanonicalSubscription theSubscription, ResourceModifiedMessage theMsg) {
+		long windowMillis = myStorageSettings.getDatabaseSubscriptionMatchingBatchWindowMillis();
+		if (windowMillis <= 0) {
+			return super.match(theSubscription, theMsg);
+		}
+
+		String resourceId = theMsg.getPayloadId(myCtx).getIdPart();
+		String key = theSubscription.getIdElementString() + " " + theSubscription.getCriteriaString();
+
+		// Resources are only ever added to a batch while it is in the map, so once the leader has
+		// removed the batch from the map its contents can no longer change
+		Batch[] createdBatch = new Batch[1];
+		Batch batch = myOpenBatches.compute(key, (k, existing) -> {
+			if (existing != null && existing.add(resourceId)) {
+				return existing;
+			}
+			createdBatch[0] = new Batch(theSubscription);
+			createdBatch[0].add(resourceId);
+			return createdBatch[0];
+		});
+
+		Set<String> matchedIds;
+		if (batch == createdBatch[0]) {
+			matchedIds = searchAsLeader(key, batch, windowMillis);
+		} else {
+			try {
+				matchedIds = batch.myMatchedIds.join();
+			} catch (CompletionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof Error) {
+					throw (Error) cause;
+				}
+				if (cause instanceof RuntimeException) {
+					throw (RuntimeException) cause;
+				}
+				throw new InternalErrorException(Msg.code(2411) + "Failed to match resource " + resourceId + " against subscription " + theSubscription.getIdElementString() + ": " + cause, cause);
+			}
+		}
+
+		return InMemoryMatchResult.fromBoolean(matchedIds.contains(resourceId));
+	}
+
+	private Set<String> searchAsLeader(String theKey, Batch theBatch, long theWindowMillis) {
+		try {
+			theBatch.myFull.await(theWindowMillis, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			// Other threads are waiting for this batch so the search is still performed
+			Thread.currentThread().interrupt();
+		}
+		myOpenBatches.remove(theKey, theBatch);
+
+		Set<String> retVal;
+		try {
+			retVal = search(theBatch);
+		} catch (RuntimeException | Error e) {
+			// Other threads are waiting for this batch, so they must always be released
+			theBatch.myMatchedIds.completeExceptionally(e);
+			throw e;
+		}
+		theBatch.myMatchedIds.complete(retVal);
+		return retVal;
+	}
+
+	private Set<String> search(Batch theBatch) {
+		Set<String> resourceIds = theBatch.getResourceIds();
+		String criteria = theBatch.mySubscription.getCriteriaString() + "&_id=" + String.join(",", resourceIds);
+
+		IBundleProvider results = performSearch(criteria, theBatch.mySubscription, resourceIds.size());
+		Set<String> retVal = new HashSet<>(results.getAllResourceIds());
+
+		ourLog.debug("Subscription check found {} results for {} resources for query: {}", retVal.size(), resourceIds.size(), criteria);
+		return retVal;
+	}
+
+	private static class Batch {
+
+		private final CanonicalSubscription mySubscription;
+		private final Set<String> myResourceIds = new LinkedHashSet<>();
+		private final CountDownLatch myFull = new CountDownLatch(1);
+		private final CompletableFuture<Set<String>> myMatchedIds = new CompletableFuture<>();
+
+		private Batch(CanonicalSubscription theSubscription) {
+			mySubscription = theSubscription;
+		}
+
+		/**
+		 * @return Returns <code>false</code> if the batch is already full
+		 */
+		private synchronized boolean add(String theResourceId) {
+			if (myResourceIds.size() >= MAX_BATCH_SIZE) {
+				return false;
+			}
+			myResourceIds.add(theResourceId);
+			if (myResourceIds.size() >= MAX_BATCH_SIZE) {
+				myFull.countDown();
+			}
+			return true;
+		}
+
+		private synchronized Set<String> getResourceIds() {
+			return new LinkedHashSet<>(myResourceIds);
+		}
+	}
+
+}
@@ -0,0 +1,131 @@
+/*-
+ * #%L
+ * HAPI FHIR Subscription Server
+ * %%
+ * Copyright (C) 2014 - 2023 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ca.uhn.fhir.jpa.subscription.match.matcher.matching;
+
+import ca.uhn.fhir.context.RuntimeResourceDefinition;
+import ca.uhn.fhir.context.RuntimeSearchParam;
+import ca.uhn.fhir.jpa.searchparam.MatchUrlService;
+import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
+import ca.uhn.fhir.rest.server.util.ISearchParamRegistry;
+import ca.uhn.fhir.util.UrlUtil;
+import org.apache.http.NameValuePair;
+
+import javax.annotation.Nullable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static org.apache.commons.lang3.StringUtils.indexOfAny;
+
+/**
+ * Subscription criteria which have been parsed into a {@link SearchParameterMap} once, so that
+ * the criteria URL doesn't need to be parsed again for every resource matched against them.
+ * <p>
+ * The parsed criteria depend on the definitions of the search parameters they use, so they
+ * remember which definitions were active when they were parsed and are only
+ * {@link #isCurrent(String, ISearchParamRegistry) current} as long as the search parameter
+ * registry still returns the same definitions.
+ * </p>
+ *
+ * @since 6.8.0
+ */
+public class CompiledSubscriptionCriteria {
+
+	private final String myCriteria;
+	private final RuntimeResourceDefinition myResourceDefinition;
+	private final SearchParameterMap mySearchParameterMap;
+	private final Map<String, RuntimeSearchParam> myParamNameToSearchParam;
+
+	private CompiledSubscriptionCriteria(String theCriteria, RuntimeResourceDefinition theResourceDefinition, @Nullable SearchParameterMap theSearchParameterMap, Map<String, RuntimeSearchParam> theParamNameToSearchParam) {
+		myCriteria = theCriteria;
+		myResourceDefinition = theResourceDefinition;
+		mySearchParameterMap = theSearchParameterMap;
+		myParamNameToSearchParam = theParamNameToSearchParam;
+	}
+
+	public String getCriteria() {
+		return myCriteria;
+	}
+
+	public RuntimeResourceDefinition getResourceDefinition() {
+		return myResourceDefinition;
+	}
+
+	/**
+	 * Returns the parsed criteria, or <code>null</code> if the criteria can't be parsed for in-memory matching
+	 */
+	@Nullable
+	public SearchParameterMap getSearchParameterMap() {
+		return mySearchParameterMap;
+	}
+
+	/**
+	 * Returns the names of the search parameters used by the criteria
+	 */
+	public Set<String> getParamNames() {
+		return Collections.unmodifiableSet(myParamNameToSearchParam.keySet());
+	}
+
+	/**
+	 * Returns <code>true</code> if these are the compiled form of the given criteria, and the search
+	 * parameter definitions they were compiled with are still the active ones
+	 */
+	public boolean isCurrent(String theCriteria, ISearchParamRegistry theSearchParamRegistry) {
+		if (!myCriteria.equals(theCriteria)) {
+			return false;
+		}
+		String resourceName = myResourceDefinition.getName();
+		for (Map.Entry<String, RuntimeSearchParam> next : myParamNameToSearchParam.entrySet()) {
+			if (theSearchParamRegistry.getActiveSearchParam(resourceName, next.getKey()) != next.getValue()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Parses subscription criteria
+	 *
+	 * @throws ca.uhn.fhir.rest.server.exceptions.InvalidRequestException If the criteria are invalid (e.g. they use an unknown search parameter)
+	 */
+	public static CompiledSubscriptionCriteria compile(String theCriteria, RuntimeResourceDefinition theResourceDefinition, MatchUrlService theMatchUrlService, ISearchParamRegistry theSearchParamRegistry) {
+		Map<String, RuntimeSearchParam> paramNameToSearchParam = new HashMap<>();
+		for (NameValuePair next : UrlUtil.translateMatchUrl(theCriteria)) {
+			String paramName = next.getName();
+			int qualifierIdx = indexOfAny(paramName, '.', ':');
+			if (qualifierIdx != -1) {
+				paramName = paramName.substring(0, qualifierIdx);
+			}
+			paramNameToSearchParam.put(paramName, theSearchParamRegistry.getActiveSearchParam(theResourceDefinition.getName(), paramName));
+		}
+
+		SearchParameterMap searchParameterMap;
+		try {
+			searchParameterMap = theMatchUrlService.translateMatchUrl(theCriteria, theResourceDefinition);
+			searchParameterMap.clean();
+		} catch (UnsupportedOperationException e) {
+			searchParameterMap = null;
+		}
+
+		return new CompiledSubscriptionCriteria(theCriteria, theResourceDefinition, searchParameterMap, paramNameToSearchParam);
+	}
+
+}
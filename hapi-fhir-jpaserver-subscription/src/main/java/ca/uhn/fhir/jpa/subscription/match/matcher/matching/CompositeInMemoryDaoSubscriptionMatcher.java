@@ -21,13 +21,19 @@ package ca.uhn.fhir.jpa.subscription.match.matcher.matching;
 
 import ca.uhn.fhir.jpa.api.config.JpaStorageSettings;
 import ca.uhn.fhir.jpa.model.entity.StorageSettings;
+import ca.uhn.fhir.jpa.searchparam.extractor.ResourceIndexedSearchParams;
 import ca.uhn.fhir.jpa.searchparam.matcher.InMemoryMatchResult;
+import ca.uhn.fhir.jpa.subscription.match.registry.ActiveSubscription;
 import ca.uhn.fhir.jpa.subscription.model.CanonicalSubscription;
 import ca.uhn.fhir.jpa.subscription.model.ResourceModifiedMessage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import javax.annotation.Nullable;
+import java.util.Collection;
+import java.util.function.Supplier;
+
 public class CompositeInMemoryDaoSubscriptionMatcher implements ISubscriptionMatcher {
 	private Logger ourLog = LoggerFactory.getLogger(CompositeInMemoryDaoSubscriptionMatcher.class);
 
@@ -43,9 +49,27 @@ public class CompositeInMemoryDaoSubscriptionMatcher implements ISubscriptionMat
 
 	@Override
 	public InMemoryMatchResult match(CanonicalSubscription theSubscription, ResourceModifiedMessage theMsg) {
+		return match(theSubscription, theMsg, () -> myInMemorySubscriptionMatcher.match(theSubscription, theMsg));
+	}
+
+	@Nullable
+	@Override
+	public ResourceIndexedSearchParams extractIndexedSearchParams(ResourceModifiedMessage theMsg, Collection<ActiveSubscription> theSubscriptions) {
+		if (myStorageSettings.isEnableInMemorySubscriptionMatching()) {
+			return myInMemorySubscriptionMatcher.extractIndexedSearchParams(theMsg, theSubscriptions);
+		}
+		return null;
+	}
+
+	@Override
+	public InMemoryMatchResult match(ActiveSubscription theSubscription, ResourceModifiedMessage theMsg, @Nullable ResourceIndexedSearchParams theIndexedSearchParams) {
+		return match(theSubscription.getSubscription(), theMsg, () -> myInMemorySubscriptionMatcher.match(theSubscription, theMsg, theIndexedSearchParams));
+	}
+
+	private InMemoryMatchResult match(CanonicalSubscription theSubscription, ResourceModifiedMessage theMsg, Supplier<InMemoryMatchResult> theInMemoryMatch) {
 		InMemoryMatchResult result;
 		if (myStorageSettings.isEnableInMemorySubscriptionMatching()) {
-			result = myInMemorySubscriptionMatcher.match(theSubscription, theMsg);
+			result = theInMemoryMatch.get();
 			if (result.supported()) {
 				result.setInMemory(true);
 			} else {
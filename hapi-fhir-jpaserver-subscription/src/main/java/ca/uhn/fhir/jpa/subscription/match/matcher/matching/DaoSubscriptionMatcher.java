@@ -46,7 +46,7 @@ public class DaoSubscriptionMatcher implements ISubscriptionMatcher {
 	MatchUrlService myMatchUrlService;
 
 	@Autowired
-	private FhirContext myCtx;
+	FhirContext myCtx;
 
 	@Override
 	public InMemoryMatchResult match(CanonicalSubscription theSubscription, ResourceModifiedMessage theMsg) {
@@ -56,7 +56,7 @@ public class DaoSubscriptionMatcher implements ISubscriptionMatcher {
 		// Run the subscriptions query and look for matches, add the id as part of the criteria to avoid getting matches of previous resources rather than the recent resource
 		criteria += "&_id=" + id.toUnqualifiedVersionless().getValue();
 
-		IBundleProvider results = performSearch(criteria, theSubscription);
+		IBundleProvider results = performSearch(criteria, theSubscription, 1);
 
 		ourLog.debug("Subscription check found {} results for query: {}", results.size(), criteria);
 
@@ -66,13 +66,13 @@ public class DaoSubscriptionMatcher implements ISubscriptionMatcher {
 	/**
 	 * Search based on a query criteria
 	 */
-	private IBundleProvider performSearch(String theCriteria, CanonicalSubscription theSubscription) {
+	IBundleProvider performSearch(String theCriteria, CanonicalSubscription theSubscription, int theLoadSynchronousUpTo) {
 		IFhirResourceDao<?> subscriptionDao = myDaoRegistry.getSubscriptionDao();
 		RuntimeResourceDefinition responseResourceDef = subscriptionDao.validateCriteriaAndReturnResourceDefinition(theCriteria);
 		SearchParameterMap responseCriteriaUrl = myMatchUrlService.translateMatchUrl(theCriteria, responseResourceDef);
 
 		IFhirResourceDao<? extends IBaseResource> responseDao = myDaoRegistry.getResourceDao(responseResourceDef.getImplementingClass());
-		responseCriteriaUrl.setLoadSynchronousUpTo(1);
+		responseCriteriaUrl.setLoadSynchronousUpTo(theLoadSynchronousUpTo);
 
 		return responseDao.search(responseCriteriaUrl, SubscriptionUtil.createRequestDetailForPartitionedRequest(theSubscription));
 	}
@@ -19,10 +19,41 @@
  */
 package ca.uhn.fhir.jpa.subscription.match.matcher.matching;
 
+import ca.uhn.fhir.jpa.searchparam.extractor.ResourceIndexedSearchParams;
 import ca.uhn.fhir.jpa.searchparam.matcher.InMemoryMatchResult;
+import ca.uhn.fhir.jpa.subscription.match.registry.ActiveSubscription;
 import ca.uhn.fhir.jpa.subscription.model.CanonicalSubscription;
 import ca.uhn.fhir.jpa.subscription.model.ResourceModifiedMessage;
 
+import javax.annotation.Nullable;
+import java.util.Collection;
+
 public interface ISubscriptionMatcher {
 	InMemoryMatchResult match(CanonicalSubscription subscription, ResourceModifiedMessage msg);
+
+	/**
+	 * Extracts the indexed search parameters of the modified resource which are needed to match it against
+	 * all of the given subscriptions, so that they only need to be extracted once per message. The result
+	 * can be passed to {@link #match(ActiveSubscription, ResourceModifiedMessage, ResourceIndexedSearchParams)}
+	 * for any of these subscriptions.
+	 *
+	 * @return The extracted search parameters, or <code>null</code> if this matcher doesn't use them
+	 * @since 6.8.0
+	 */
+	@Nullable
+	default ResourceIndexedSearchParams extractIndexedSearchParams(ResourceModifiedMessage theMsg, Collection<ActiveSubscription> theSubscriptions) {
+		return null;
+	}
+
+	/**
+	 * Matches an active subscription against a modified resource
+	 *
+	 * @param theIndexedSearchParams The search parameters returned by {@link #extractIndexedSearchParams(ResourceModifiedMessage, Collection)}
+	 *                               for a collection including this subscription, or <code>null</code> if they should
+	 *                               be extracted for this subscription only
+	 * @since 6.8.0
+	 */
+	default InMemoryMatchResult match(ActiveSubscription theSubscription, ResourceModifiedMessage theMsg, @Nullable ResourceIndexedSearchParams theIndexedSearchParams) {
+		return match(theSubscription.getSubscription(), theMsg);
+	}
 }
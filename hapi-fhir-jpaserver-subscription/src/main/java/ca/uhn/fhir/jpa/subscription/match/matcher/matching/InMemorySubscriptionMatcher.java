@@ -20,16 +20,29 @@
 package ca.uhn.fhir.jpa.subscription.match.matcher.matching;
 
 import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.RuntimeResourceDefinition;
 import ca.uhn.fhir.i18n.Msg;
+import ca.uhn.fhir.jpa.searchparam.MatchUrlService;
+import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
+import ca.uhn.fhir.jpa.searchparam.extractor.ResourceIndexedSearchParams;
 import ca.uhn.fhir.jpa.searchparam.matcher.InMemoryMatchResult;
 import ca.uhn.fhir.jpa.searchparam.matcher.SearchParamMatcher;
+import ca.uhn.fhir.jpa.subscription.match.matcher.subscriber.SubscriptionCriteriaParser;
+import ca.uhn.fhir.jpa.subscription.match.registry.ActiveSubscription;
 import ca.uhn.fhir.jpa.subscription.model.CanonicalSubscription;
 import ca.uhn.fhir.jpa.subscription.model.ResourceModifiedMessage;
 import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
+import ca.uhn.fhir.rest.server.util.ISearchParamRegistry;
+import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import javax.annotation.Nullable;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
 public class InMemorySubscriptionMatcher implements ISubscriptionMatcher {
 	private static final Logger ourLog = LoggerFactory.getLogger(InMemorySubscriptionMatcher.class);
 
@@ -37,15 +50,92 @@ public class InMemorySubscriptionMatcher implements ISubscriptionMatcher {
 	private FhirContext myContext;
 	@Autowired
 	private SearchParamMatcher mySearchParamMatcher;
+	@Autowired
+	private MatchUrlService myMatchUrlService;
+	@Autowired
+	private ISearchParamRegistry mySearchParamRegistry;
 
 	@Override
 	public InMemoryMatchResult match(CanonicalSubscription theSubscription, ResourceModifiedMessage theMsg) {
 		try {
 			return mySearchParamMatcher.match(theSubscription.getCriteriaString(), theMsg.getNewPayload(myContext), null);
 		} catch (Exception e) {
-			ourLog.error("Failure in in-memory matcher", e);
-			throw new InternalErrorException(Msg.code(1) + "Failure performing memory-match for resource ID[" + theMsg.getPayloadId(myContext) + "] for subscription ID[" + theSubscription.getIdElementString() + "]: " + e.getMessage(), e);
+			throw newMatchFailureException(theSubscription, theMsg, e);
+		}
+	}
+
+	@Nullable
+	@Override
+	public ResourceIndexedSearchParams extractIndexedSearchParams(ResourceModifiedMessage theMsg, Collection<ActiveSubscription> theSubscriptions) {
+		IBaseResource payload = theMsg.getNewPayload(myContext);
+		if (payload == null) {
+			return null;
 		}
+		RuntimeResourceDefinition resourceDefinition = myContext.getResourceDefinition(payload);
+
+		Set<String> paramNames = new HashSet<>();
+		for (ActiveSubscription next : theSubscriptions) {
+			SubscriptionCriteriaParser.SubscriptionCriteria criteria = next.getCriteria();
+			if (criteria == null || criteria.getType() != SubscriptionCriteriaParser.TypeEnum.SEARCH_EXPRESSION || !criteria.getApplicableResourceTypes().contains(resourceDefinition.getName())) {
+				continue;
+			}
+			try {
+				paramNames.addAll(getCompiledCriteria(next, resourceDefinition).getParamNames());
+			} catch (Exception e) {
+				// Invalid criteria are reported when the subscription is matched
+				ourLog.debug("Failed to compile criteria for subscription {}: {}", next.getId(), e.getMessage());
+			}
+		}
+
+		if (paramNames.isEmpty()) {
+			return null;
+		}
+		return mySearchParamMatcher.extractIndexedSearchParams(payload, paramNames);
+	}
+
+	@Override
+	public InMemoryMatchResult match(ActiveSubscription theActiveSubscription, ResourceModifiedMessage theMsg, @Nullable ResourceIndexedSearchParams theIndexedSearchParams) {
+		CanonicalSubscription subscription = theActiveSubscription.getSubscription();
+		IBaseResource payload = theMsg.getNewPayload(myContext);
+		if (payload == null) {
+			return match(subscription, theMsg);
+		}
+
+		try {
+			RuntimeResourceDefinition resourceDefinition = myContext.getResourceDefinition(payload);
+			CompiledSubscriptionCriteria compiledCriteria = getCompiledCriteria(theActiveSubscription, resourceDefinition);
+			SearchParameterMap searchParameterMap = compiledCriteria.getSearchParameterMap();
+			if (searchParameterMap == null) {
+				return InMemoryMatchResult.unsupportedFromReason(InMemoryMatchResult.PARSE_FAIL);
+			}
+
+			ResourceIndexedSearchParams indexedSearchParams = theIndexedSearchParams;
+			if (indexedSearchParams == null) {
+				indexedSearchParams = mySearchParamMatcher.extractIndexedSearchParams(payload, compiledCriteria.getParamNames());
+			}
+			return mySearchParamMatcher.matchIndexedSearchParams(searchParameterMap, payload, indexedSearchParams);
+		} catch (Exception e) {
+			throw newMatchFailureException(subscription, theMsg, e);
+		}
+	}
+
+	/**
+	 * Returns the compiled criteria cached on the subscription, compiling them if the subscription
+	 * or any of the search parameters they use have changed since they were last compiled
+	 */
+	private CompiledSubscriptionCriteria getCompiledCriteria(ActiveSubscription theActiveSubscription, RuntimeResourceDefinition theResourceDefinition) {
+		String criteria = theActiveSubscription.getSubscription().getCriteriaString();
+		CompiledSubscriptionCriteria retVal = theActiveSubscription.getCompiledCriteria();
+		if (retVal == null || retVal.getResourceDefinition() != theResourceDefinition || !retVal.isCurrent(criteria, mySearchParamRegistry)) {
+			retVal = CompiledSubscriptionCriteria.compile(criteria, theResourceDefinition, myMatchUrlService, mySearchParamRegistry);
+			theActiveSubscription.setCompiledCriteria(retVal);
+		}
+		return retVal;
+	}
+
+	private InternalErrorException newMatchFailureException(CanonicalSubscription theSubscription, ResourceModifiedMessage theMsg, Exception theCause) {
+		ourLog.error("Failure in in-memory matcher", theCause);
+		return new InternalErrorException(Msg.code(1) + "Failure performing memory-match for resource ID[" + theMsg.getPayloadId(myContext) + "] for subscription ID[" + theSubscription.getIdElementString() + "]: " + theCause.getMessage(), theCause);
 	}
 
 }
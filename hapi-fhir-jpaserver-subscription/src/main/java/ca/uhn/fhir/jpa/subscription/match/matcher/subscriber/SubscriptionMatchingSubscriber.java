@@ -23,6 +23,7 @@ import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.interceptor.api.HookParams;
 import ca.uhn.fhir.interceptor.api.IInterceptorBroadcaster;
 import ca.uhn.fhir.interceptor.api.Pointcut;
+import ca.uhn.fhir.jpa.searchparam.extractor.ResourceIndexedSearchParams;
 import ca.uhn.fhir.jpa.searchparam.matcher.InMemoryMatchResult;
 import ca.uhn.fhir.jpa.subscription.match.matcher.matching.ISubscriptionMatcher;
 import ca.uhn.fhir.jpa.subscription.match.registry.ActiveSubscription;
@@ -40,7 +41,11 @@ import org.springframework.messaging.MessageHandler;
 import org.springframework.messaging.MessagingException;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 
 import static ca.uhn.fhir.rest.server.messaging.BaseResourceMessage.OperationTypeEnum.DELETE;
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
@@ -111,13 +116,36 @@ public class SubscriptionMatchingSubscriber implements MessageHandler {
 	private void doMatchActiveSubscriptionsAndDeliver(ResourceModifiedMessage theMsg) {
 		IIdType resourceId = theMsg.getPayloadId(myFhirContext);
 
-		Collection<ActiveSubscription> subscriptions = mySubscriptionRegistry.getAllNonTopicSubscriptions();
+		Collection<ActiveSubscription> subscriptions;
+		if (isNotBlank(theMsg.getSubscriptionId())) {
+			ActiveSubscription subscription = mySubscriptionRegistry.get(theMsg.getSubscriptionId());
+			if (subscription != null && !subscription.getSubscription().isTopicSubscription()) {
+				subscriptions = Collections.singletonList(subscription);
+			} else {
+				subscriptions = Collections.emptyList();
+			}
+		} else {
+			IBaseResource payload = theMsg.getNewPayload(myFhirContext);
+			subscriptions = mySubscriptionRegistry.getNonTopicSubscriptionCandidates(resourceId.getResourceType(), payload);
+		}
 
 		ourLog.trace("Testing {} subscriptions for applicability", subscriptions.size());
-		boolean anySubscriptionsMatchedResource = false;
-
+		List<ActiveSubscription> applicableSubscriptions = new ArrayList<>(subscriptions.size());
 		for (ActiveSubscription nextActiveSubscription : subscriptions) {
-			anySubscriptionsMatchedResource |= processSubscription(theMsg, resourceId, nextActiveSubscription);
+			if (isSubscriptionApplicable(theMsg, resourceId, nextActiveSubscription)) {
+				applicableSubscriptions.add(nextActiveSubscription);
+			}
+		}
+
+		// Extract the search parameters needed by all the applicable subscriptions only once
+		ResourceIndexedSearchParams indexedSearchParams = null;
+		if (applicableSubscriptions.stream().anyMatch(t -> t.getCriteria().getType() == SubscriptionCriteriaParser.TypeEnum.SEARCH_EXPRESSION)) {
+			indexedSearchParams = mySubscriptionMatcher.extractIndexedSearchParams(theMsg, applicableSubscriptions);
+		}
+
+		boolean anySubscriptionsMatchedResource = false;
+		for (ActiveSubscription nextActiveSubscription : applicableSubscriptions) {
+			anySubscriptionsMatchedResource |= processSubscription(theMsg, resourceId, nextActiveSubscription, indexedSearchParams);
 		}
 
 		if (!anySubscriptionsMatchedResource) {
@@ -129,10 +157,9 @@ public class SubscriptionMatchingSubscriber implements MessageHandler {
 	}
 
 	/**
-	 * Returns true if subscription matched, and processing completed successfully, and the message was sent to the delivery channel. False otherwise.
-	 *
+	 * Returns true if the subscription should be matched against the resource
 	 */
-	private boolean processSubscription(ResourceModifiedMessage theMsg, IIdType theResourceId, ActiveSubscription theActiveSubscription) {
+	private boolean isSubscriptionApplicable(ResourceModifiedMessage theMsg, IIdType theResourceId, ActiveSubscription theActiveSubscription) {
 		// skip if the partitions don't match
 		CanonicalSubscription subscription = theActiveSubscription.getSubscription();
 		if (subscription != null && theMsg.getPartitionId() != null &&
@@ -144,7 +171,6 @@ public class SubscriptionMatchingSubscriber implements MessageHandler {
 
 		if (isNotBlank(theMsg.getSubscriptionId())) {
 			if (!theMsg.getSubscriptionId().equals(nextSubscriptionId)) {
-				// TODO KHS we should use a hash to look it up instead of this full table scan
 				ourLog.debug("Ignoring subscription {} because it is not {}", nextSubscriptionId, theMsg.getSubscriptionId());
 				return false;
 			}
@@ -161,9 +187,17 @@ public class SubscriptionMatchingSubscriber implements MessageHandler {
 			}
 		}
 
+		return true;
+	}
+
+	/**
+	 * Returns true if subscription matched, and processing completed successfully, and the message was sent to the delivery channel. False otherwise.
+	 *
+	 */
+	private boolean processSubscription(ResourceModifiedMessage theMsg, IIdType theResourceId, ActiveSubscription theActiveSubscription, @Nullable ResourceIndexedSearchParams theIndexedSearchParams) {
 		InMemoryMatchResult matchResult;
 		if (theActiveSubscription.getCriteria().getType() == SubscriptionCriteriaParser.TypeEnum.SEARCH_EXPRESSION) {
-			matchResult = mySubscriptionMatcher.match(theActiveSubscription.getSubscription(), theMsg);
+			matchResult = mySubscriptionMatcher.match(theActiveSubscription, theMsg, theIndexedSearchParams);
 			if (!matchResult.matched()) {
 				ourLog.trace("Subscription {} was not matched by resource {} {}",
 					theActiveSubscription.getId(),
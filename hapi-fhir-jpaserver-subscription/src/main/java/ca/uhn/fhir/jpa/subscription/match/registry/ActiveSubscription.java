@@ -19,6 +19,7 @@
  */
 package ca.uhn.fhir.jpa.subscription.match.registry;
 
+import ca.uhn.fhir.jpa.subscription.match.matcher.matching.CompiledSubscriptionCriteria;
 import ca.uhn.fhir.jpa.subscription.match.matcher.subscriber.SubscriptionCriteriaParser;
 import ca.uhn.fhir.jpa.subscription.model.CanonicalSubscription;
 import ca.uhn.fhir.jpa.subscription.model.CanonicalSubscriptionChannelType;
@@ -29,6 +30,7 @@ import java.util.concurrent.atomic.AtomicLong;
 public class ActiveSubscription {
 
 	private SubscriptionCriteriaParser.SubscriptionCriteria myCriteria;
+	private volatile CompiledSubscriptionCriteria myCompiledCriteria;
 
 	private final String myChannelName;
 	private final String myId;
@@ -55,6 +57,24 @@ public class ActiveSubscription {
 	public final void setSubscription(CanonicalSubscription theSubscription) {
 		mySubscription = theSubscription;
 		myCriteria = SubscriptionCriteriaParser.parse(theSubscription.getCriteriaString());
+		myCompiledCriteria = null;
+	}
+
+	/**
+	 * Returns the criteria as last compiled by the in-memory matcher, or <code>null</code> if they
+	 * haven't been compiled since the subscription was last changed
+	 *
+	 * @since 6.8.0
+	 */
+	public CompiledSubscriptionCriteria getCompiledCriteria() {
+		return myCompiledCriteria;
+	}
+
+	/**
+	 * @since 6.8.0
+	 */
+	public void setCompiledCriteria(CompiledSubscriptionCriteria theCompiledCriteria) {
+		myCompiledCriteria = theCompiledCriteria;
 	}
 
 	public String getChannelName() {
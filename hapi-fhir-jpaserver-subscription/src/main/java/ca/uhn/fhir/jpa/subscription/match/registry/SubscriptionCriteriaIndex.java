@@ -0,0 +1,250 @@
+/*-
+ * #%L
+ * HAPI FHIR Subscription Server
+ * %%
+ * Copyright (C) 2014 - 2023 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ca.uhn.fhir.jpa.subscription.match.registry;
+
+import ca.uhn.fhir.jpa.subscription.match.matcher.subscriber.SubscriptionCriteriaParser;
+import ca.uhn.fhir.model.primitive.IdDt;
+import org.apache.commons.lang3.StringUtils;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import static org.apache.commons.lang3.StringUtils.isBlank;
+
+/**
+ * Index of the active non-topic subscriptions, used to find the subscriptions that could
+ * possibly match a modified resource without testing every registered subscription.
+ * <p>
+ * A search expression subscription whose criteria test a token or reference search parameter
+ * for equality with a single value (e.g. <code>Observation?patient=Patient/123</code> or
+ * <code>Encounter?status=finished</code>) is keyed by that value, and is only a candidate for
+ * resources having that value. All other subscriptions are candidates for every resource of
+ * the types they apply to. Candidates must still be tested against their criteria.
+ * </p>
+ * <p>
+ * Modifications are expected to be made by a single thread at a time (the registry
+ * synchronizes them), while lookups may happen concurrently.
+ * </p>
+ */
+class SubscriptionCriteriaIndex {
+
+	private final Map<String, ActiveSubscription> myStarTypeSubscriptions = new ConcurrentHashMap<>();
+	private final Map<String, TypeIndex> myResourceTypeToIndex = new ConcurrentHashMap<>();
+	private final Map<String, IndexEntry> mySubscriptionIdToEntry = new ConcurrentHashMap<>();
+
+	/**
+	 * Adds a subscription to the index
+	 *
+	 * @param theSubscription The subscription
+	 * @param theParamName    The name of the search parameter to key the subscription by, or <code>null</code> if it can't be keyed
+	 * @param theValueKey     The value key (see {@link #toTokenCriteriaKey(String)} and {@link #toReferenceCriteriaKey(String)}) to key the subscription by
+	 */
+	void add(ActiveSubscription theSubscription, @Nullable String theParamName, @Nullable String theValueKey) {
+		SubscriptionCriteriaParser.SubscriptionCriteria criteria = theSubscription.getCriteria();
+		if (criteria == null || theSubscription.getSubscription().isTopicSubscription()) {
+			return;
+		}
+
+		String subscriptionId = theSubscription.getId();
+		remove(subscriptionId);
+
+		IndexEntry entry;
+		if (criteria.getType() == SubscriptionCriteriaParser.TypeEnum.STARTYPE_EXPRESSION) {
+			entry = new IndexEntry(null, null, null);
+			myStarTypeSubscriptions.put(subscriptionId, theSubscription);
+		} else if (theParamName != null && theValueKey != null && criteria.getApplicableResourceTypes().size() == 1) {
+			entry = new IndexEntry(criteria.getApplicableResourceTypes(), theParamName, theValueKey);
+			String resourceType = criteria.getApplicableResourceTypes().iterator().next();
+			myResourceTypeToIndex
+				.computeIfAbsent(resourceType, t -> new TypeIndex())
+				.myParamNameToValueKeyToSubscriptions
+				.computeIfAbsent(theParamName, t -> new ConcurrentHashMap<>())
+				.computeIfAbsent(theValueKey, t -> new ConcurrentHashMap<>())
+				.put(subscriptionId, theSubscription);
+		} else {
+			entry = new IndexEntry(criteria.getApplicableResourceTypes(), null, null);
+			for (String nextResourceType : criteria.getApplicableResourceTypes()) {
+				myResourceTypeToIndex
+					.computeIfAbsent(nextResourceType, t -> new TypeIndex())
+					.myUnkeyedSubscriptions
+					.put(subscriptionId, theSubscription);
+			}
+		}
+		mySubscriptionIdToEntry.put(subscriptionId, entry);
+	}
+
+	void remove(String theSubscriptionId) {
+		IndexEntry entry = mySubscriptionIdToEntry.remove(theSubscriptionId);
+		if (entry == null) {
+			return;
+		}
+
+		if (entry.myResourceTypes == null) {
+			myStarTypeSubscriptions.remove(theSubscriptionId);
+			return;
+		}
+
+		for (String nextResourceType : entry.myResourceTypes) {
+			TypeIndex typeIndex = myResourceTypeToIndex.get(nextResourceType);
+			if (typeIndex == null) {
+				continue;
+			}
+			if (entry.myParamName == null) {
+				typeIndex.myUnkeyedSubscriptions.remove(theSubscriptionId);
+			} else {
+				Map<String, Map<String, ActiveSubscription>> valueKeyToSubscriptions = typeIndex.myParamNameToValueKeyToSubscriptions.get(entry.myParamName);
+				if (valueKeyToSubscriptions != null) {
+					// Drop emptied buckets so that churning patient-scoped subscriptions don't leave them behind
+					valueKeyToSubscriptions.computeIfPresent(entry.myValueKey, (k, v) -> {
+						v.remove(theSubscriptionId);
+						return v.isEmpty() ? null : v;
+					});
+					if (valueKeyToSubscriptions.isEmpty()) {
+						typeIndex.myParamNameToValueKeyToSubscriptions.remove(entry.myParamName);
+					}
+				}
+			}
+			if (typeIndex.isEmpty()) {
+				myResourceTypeToIndex.remove(nextResourceType);
+			}
+		}
+	}
+
+	/**
+	 * Returns the subscriptions that could possibly match a resource of the given type
+	 *
+	 * @param theResourceType     The resource type
+	 * @param theValueKeyExtractor Function which is called with the name of each keyed search parameter for the resource type, and
+	 *                             returns the value keys of the resource for that parameter (see {@link #toTokenKey(String)} and
+	 *                             {@link #toReferenceKey(String)}), or <code>null</code> if they can't be determined, in which case
+	 *                             all subscriptions keyed by that parameter are returned
+	 */
+	List<ActiveSubscription> getCandidates(String theResourceType, Function<String, Collection<String>> theValueKeyExtractor) {
+		List<ActiveSubscription> retVal = new ArrayList<>(myStarTypeSubscriptions.values());
+
+		TypeIndex typeIndex = myResourceTypeToIndex.get(theResourceType);
+		if (typeIndex != null) {
+			retVal.addAll(typeIndex.myUnkeyedSubscriptions.values());
+			for (Map.Entry<String, Map<String, Map<String, ActiveSubscription>>> nextParam : typeIndex.myParamNameToValueKeyToSubscriptions.entrySet()) {
+				Map<String, Map<String, ActiveSubscription>> valueKeyToSubscriptions = nextParam.getValue();
+				Collection<String> valueKeys = theValueKeyExtractor.apply(nextParam.getKey());
+				if (valueKeys == null) {
+					valueKeyToSubscriptions.values().forEach(t -> retVal.addAll(t.values()));
+				} else {
+					for (String nextValueKey : valueKeys) {
+						Map<String, ActiveSubscription> subscriptions = valueKeyToSubscriptions.get(nextValueKey);
+						if (subscriptions != null) {
+							retVal.addAll(subscriptions.values());
+						}
+					}
+				}
+			}
+		}
+
+		return retVal;
+	}
+
+	/**
+	 * Returns the value key for a token search parameter value in subscription criteria, or
+	 * <code>null</code> if the value can't be used as a key. Token values are matched
+	 * case-insensitively and a system is not required to match, so only the code is used.
+	 */
+	@Nullable
+	static String toTokenCriteriaKey(String theCriteriaValue) {
+		if (isBlank(theCriteriaValue) || StringUtils.containsAny(theCriteriaValue, ',', '\\')) {
+			return null;
+		}
+		String code = theCriteriaValue;
+		int pipeIdx = code.indexOf('|');
+		if (pipeIdx != -1) {
+			code = code.substring(pipeIdx + 1);
+		}
+		return toTokenKey(code);
+	}
+
+	/**
+	 * Returns the value key for a token value extracted from a resource
+	 */
+	@Nullable
+	static String toTokenKey(@Nullable String theCode) {
+		if (isBlank(theCode)) {
+			return null;
+		}
+		return theCode.toLowerCase(Locale.ROOT);
+	}
+
+	/**
+	 * Returns the value key for a reference search parameter value in subscription criteria, or
+	 * <code>null</code> if the value can't be used as a key. References are matched on their ID
+	 * part, so absolute and canonical URLs are not keyed.
+	 */
+	@Nullable
+	static String toReferenceCriteriaKey(String theCriteriaValue) {
+		if (isBlank(theCriteriaValue) || StringUtils.containsAny(theCriteriaValue, ',', '\\', ':', '|', '?')) {
+			return null;
+		}
+		return toReferenceKey(theCriteriaValue);
+	}
+
+	/**
+	 * Returns the value key for a reference extracted from a resource
+	 */
+	@Nullable
+	static String toReferenceKey(@Nullable String theReference) {
+		if (isBlank(theReference)) {
+			return null;
+		}
+		String idPart = new IdDt(theReference).getIdPart();
+		return isBlank(idPart) ? null : idPart;
+	}
+
+	private static class TypeIndex {
+
+		private final Map<String, ActiveSubscription> myUnkeyedSubscriptions = new ConcurrentHashMap<>();
+		private final Map<String, Map<String, Map<String, ActiveSubscription>>> myParamNameToValueKeyToSubscriptions = new ConcurrentHashMap<>();
+
+		private boolean isEmpty() {
+			return myUnkeyedSubscriptions.isEmpty() && myParamNameToValueKeyToSubscriptions.isEmpty();
+		}
+
+	}
+
+	private static class IndexEntry {
+
+		private final Set<String> myResourceTypes;
+		private final String myParamName;
+		private final String myValueKey;
+
+		private IndexEntry(@Nullable Set<String> theResourceTypes, @Nullable String theParamName, @Nullable String theValueKey) {
+			myResourceTypes = theResourceTypes;
+			myParamName = theParamName;
+			myValueKey = theValueKey;
+		}
+
+	}
+
+}
@@ -19,15 +19,22 @@
  */
 package ca.uhn.fhir.jpa.subscription.match.registry;
 
+import ca.uhn.fhir.context.RuntimeSearchParam;
 import ca.uhn.fhir.interceptor.api.HookParams;
 import ca.uhn.fhir.interceptor.api.IInterceptorBroadcaster;
 import ca.uhn.fhir.interceptor.api.Pointcut;
+import ca.uhn.fhir.jpa.model.entity.ResourceIndexedSearchParamToken;
+import ca.uhn.fhir.jpa.searchparam.extractor.ISearchParamExtractor;
 import ca.uhn.fhir.jpa.subscription.channel.subscription.ISubscriptionDeliveryChannelNamer;
 import ca.uhn.fhir.jpa.subscription.channel.subscription.SubscriptionChannelRegistry;
+import ca.uhn.fhir.jpa.subscription.match.matcher.subscriber.SubscriptionCriteriaParser;
 import ca.uhn.fhir.jpa.subscription.model.CanonicalSubscription;
 import ca.uhn.fhir.jpa.subscription.model.ChannelRetryConfiguration;
+import ca.uhn.fhir.rest.server.util.ISearchParamRegistry;
 import ca.uhn.fhir.util.HapiExtensions;
+import ca.uhn.fhir.util.UrlUtil;
 import org.apache.commons.lang3.Validate;
+import org.apache.commons.lang3.tuple.Pair;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.instance.model.api.IIdType;
 import org.hl7.fhir.r4.model.Subscription;
@@ -35,11 +42,16 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import javax.annotation.Nullable;
 import javax.annotation.PreDestroy;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
 
 /**
  * Cache of active subscriptions.  When a new subscription is added to the cache, a new Spring Channel is created
@@ -50,6 +62,7 @@ import java.util.Optional;
 public class SubscriptionRegistry {
 	private static final Logger ourLog = LoggerFactory.getLogger(SubscriptionRegistry.class);
 	private final ActiveSubscriptionCache myActiveSubscriptionCache = new ActiveSubscriptionCache();
+	private final SubscriptionCriteriaIndex myCriteriaIndex = new SubscriptionCriteriaIndex();
 	@Autowired
 	private SubscriptionCanonicalizer mySubscriptionCanonicalizer;
 	@Autowired
@@ -58,6 +71,10 @@ public class SubscriptionRegistry {
 	private SubscriptionChannelRegistry mySubscriptionChannelRegistry;
 	@Autowired
 	private IInterceptorBroadcaster myInterceptorBroadcaster;
+	@Autowired
+	private ISearchParamRegistry mySearchParamRegistry;
+	@Autowired
+	private ISearchParamExtractor mySearchParamExtractor;
 
 	/**
 	 * Constructor
@@ -126,6 +143,7 @@ public class SubscriptionRegistry {
 		// add to our registries
 		mySubscriptionChannelRegistry.add(activeSubscription);
 		myActiveSubscriptionCache.put(subscriptionId, activeSubscription);
+		addToCriteriaIndex(activeSubscription);
 
 		ourLog.info("Registered active subscription Subscription/{} - Have {} registered", subscriptionId, myActiveSubscriptionCache.size());
 
@@ -136,11 +154,21 @@ public class SubscriptionRegistry {
 	}
 
 	public synchronized void unregisterSubscriptionIfRegistered(String theSubscriptionId) {
+		unregisterSubscriptionIfRegistered(theSubscriptionId, false);
+	}
+
+	private void unregisterSubscriptionIfRegistered(String theSubscriptionId, boolean theShutdown) {
 		Validate.notNull(theSubscriptionId);
 
 		ActiveSubscription activeSubscription = myActiveSubscriptionCache.remove(theSubscriptionId);
 		if (activeSubscription != null) {
-			mySubscriptionChannelRegistry.remove(activeSubscription);
+			myCriteriaIndex.remove(theSubscriptionId);
+			if (theShutdown) {
+				// Keep any messages stored for the channel so that they are delivered after a restart
+				mySubscriptionChannelRegistry.removeForShutdown(activeSubscription);
+			} else {
+				mySubscriptionChannelRegistry.remove(activeSubscription);
+			}
 			ourLog.info("Unregistered active subscription {} - Have {} registered", theSubscriptionId, myActiveSubscriptionCache.size());
 
 			// Interceptor call: SUBSCRIPTION_AFTER_ACTIVE_SUBSCRIPTION_UNREGISTERED
@@ -152,16 +180,20 @@ public class SubscriptionRegistry {
 	@PreDestroy
 	public synchronized void unregisterAllSubscriptions() {
 		// Once to set flag
-		unregisterAllSubscriptionsNotInCollection(Collections.emptyList());
+		unregisterAllSubscriptionsNotInCollection(Collections.emptyList(), true);
 		// Twice to remove
-		unregisterAllSubscriptionsNotInCollection(Collections.emptyList());
+		unregisterAllSubscriptionsNotInCollection(Collections.emptyList(), true);
 	}
 
 	synchronized void unregisterAllSubscriptionsNotInCollection(Collection<String> theAllIds) {
+		unregisterAllSubscriptionsNotInCollection(theAllIds, false);
+	}
+
+	private void unregisterAllSubscriptionsNotInCollection(Collection<String> theAllIds, boolean theShutdown) {
 
 		List<String> idsToDelete = myActiveSubscriptionCache.markAllSubscriptionsNotInCollectionForDeletionAndReturnIdsToDelete(theAllIds);
 		for (String id : idsToDelete) {
-			unregisterSubscriptionIfRegistered(id);
+			unregisterSubscriptionIfRegistered(id, theShutdown);
 		}
 	}
 
@@ -199,6 +231,7 @@ public class SubscriptionRegistry {
 		Validate.notNull(activeSubscription);
 		CanonicalSubscription canonicalized = mySubscriptionCanonicalizer.canonicalize(theSubscription);
 		activeSubscription.setSubscription(canonicalized);
+		addToCriteriaIndex(activeSubscription);
 
 		// Interceptor call: SUBSCRIPTION_AFTER_ACTIVE_SUBSCRIPTION_REGISTERED
 		HookParams params = new HookParams()
@@ -217,4 +250,111 @@ public class SubscriptionRegistry {
 	public synchronized List<ActiveSubscription> getAllNonTopicSubscriptions() {
 		return myActiveSubscriptionCache.getAllNonTopicSubscriptions();
 	}
+
+	/**
+	 * Returns the active non-topic subscriptions which could possibly match a modified resource. Subscriptions
+	 * whose criteria test a token or reference search parameter for equality (e.g. <code>Observation?patient=Patient/123</code>)
+	 * are only returned if the resource has the tested value, so callers must still test each returned
+	 * subscription against its criteria.
+	 *
+	 * @param theResourceType The type of the modified resource
+	 * @param theResource     The modified resource, or <code>null</code> if it isn't available, in which case all
+	 *                        subscriptions applicable to the resource type are returned
+	 * @since 6.8.0
+	 */
+	public List<ActiveSubscription> getNonTopicSubscriptionCandidates(String theResourceType, @Nullable IBaseResource theResource) {
+		return myCriteriaIndex.getCandidates(theResourceType, paramName -> extractCriteriaIndexValueKeys(theResourceType, paramName, theResource));
+	}
+
+	private void addToCriteriaIndex(ActiveSubscription theActiveSubscription) {
+		if (theActiveSubscription.getSubscription().isTopicSubscription()) {
+			myCriteriaIndex.remove(theActiveSubscription.getId());
+			return;
+		}
+		Pair<String, String> key = determineCriteriaIndexKey(theActiveSubscription.getCriteria());
+		if (key != null) {
+			myCriteriaIndex.add(theActiveSubscription, key.getKey(), key.getValue());
+		} else {
+			myCriteriaIndex.add(theActiveSubscription, null, null);
+		}
+	}
+
+	/**
+	 * Returns the search parameter name and value key to index a subscription by, or <code>null</code>
+	 * if the criteria don't contain an equality test on a token or reference search parameter
+	 */
+	@Nullable
+	private Pair<String, String> determineCriteriaIndexKey(@Nullable SubscriptionCriteriaParser.SubscriptionCriteria theCriteria) {
+		if (theCriteria == null || theCriteria.getType() != SubscriptionCriteriaParser.TypeEnum.SEARCH_EXPRESSION) {
+			return null;
+		}
+		String criteria = theCriteria.getCriteria();
+		int questionMarkIdx = criteria.indexOf('?');
+		if (questionMarkIdx == -1) {
+			return null;
+		}
+
+		String resourceType = theCriteria.getApplicableResourceTypes().iterator().next();
+		Map<String, String[]> parameters = new TreeMap<>(UrlUtil.parseQueryString(criteria.substring(questionMarkIdx + 1)));
+		for (Map.Entry<String, String[]> nextParameter : parameters.entrySet()) {
+			String paramName = nextParameter.getKey();
+			// Skip special parameters, modifiers and chains
+			if (paramName.startsWith("_") || paramName.contains(":") || paramName.contains(".")) {
+				continue;
+			}
+
+			RuntimeSearchParam searchParam = mySearchParamRegistry.getActiveSearchParam(resourceType, paramName);
+			if (searchParam == null) {
+				continue;
+			}
+
+			for (String nextValue : nextParameter.getValue()) {
+				String valueKey;
+				switch (searchParam.getParamType()) {
+					case TOKEN:
+						valueKey = SubscriptionCriteriaIndex.toTokenCriteriaKey(nextValue);
+						break;
+					case REFERENCE:
+						valueKey = SubscriptionCriteriaIndex.toReferenceCriteriaKey(nextValue);
+						break;
+					default:
+						valueKey = null;
+						break;
+				}
+				if (valueKey != null) {
+					return Pair.of(paramName, valueKey);
+				}
+			}
+		}
+
+		return null;
+	}
+
+	@Nullable
+	private Collection<String> extractCriteriaIndexValueKeys(String theResourceType, String theParamName, @Nullable IBaseResource theResource) {
+		RuntimeSearchParam searchParam = mySearchParamRegistry.getActiveSearchParam(theResourceType, theParamName);
+		if (theResource == null || searchParam == null) {
+			return null;
+		}
+
+		switch (searchParam.getParamType()) {
+			case TOKEN:
+				return mySearchParamExtractor
+					.extractSearchParamTokens(theResource, searchParam)
+					.stream()
+					.filter(t -> t instanceof ResourceIndexedSearchParamToken)
+					.map(t -> SubscriptionCriteriaIndex.toTokenKey(((ResourceIndexedSearchParamToken) t).getValue()))
+					.filter(Objects::nonNull)
+					.collect(Collectors.toSet());
+			case REFERENCE:
+				return mySearchParamExtractor
+					.extractParamValuesAsStrings(searchParam, theResource)
+					.stream()
+					.map(SubscriptionCriteriaIndex::toReferenceKey)
+					.filter(Objects::nonNull)
+					.collect(Collectors.toSet());
+			default:
+				return null;
+		}
+	}
 }
@@ -0,0 +1,220 @@
+package ca.uhn.fhir.jpa.subscription.match.deliver.resthook;
+
+import ca.uhn.fhir.jpa.model.entity.StorageSettings;
+import ca.uhn.fhir.jpa.subscription.model.ChannelRetryConfiguration;
+import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AsyncRestHookDeliverySvcTest {
+
+	private static final String SLOW_ENDPOINT = "http://slow/fhir";
+	private static final String FAST_ENDPOINT = "http://fast/fhir";
+
+	private final StorageSettings myStorageSettings = new StorageSettings();
+	private AsyncRestHookDeliverySvc mySvc;
+
+	@BeforeEach
+	public void before() {
+		myStorageSettings.setRestHookDeliveryQueueSize(10);
+		mySvc = new AsyncRestHookDeliverySvc(myStorageSettings);
+		mySvc.setRetryInitialIntervalMillisForUnitTests(10);
+	}
+
+	@AfterEach
+	public void after() {
+		mySvc.stop();
+	}
+
+	@Test
+	public void testEnabled() {
+		assertTrue(mySvc.isEnabled());
+		assertFalse(mySvc.isCoalescingEnabled());
+
+		myStorageSettings.setRestHookDeliveryCoalesceMillis(100);
+		assertTrue(mySvc.isCoalescingEnabled());
+
+		myStorageSettings.setRestHookDeliveryQueueSize(0);
+		assertFalse(mySvc.isEnabled());
+		assertFalse(mySvc.isCoalescingEnabled());
+	}
+
+	@Test
+	public void testSlowEndpointDoesNotDelayOtherEndpoints() throws InterruptedException {
+		CountDownLatch slowEndpointLatch = new CountDownLatch(1);
+		CountDownLatch fastEndpointLatch = new CountDownLatch(1);
+
+		mySvc.submit(SLOW_ENDPOINT, null, () -> awaitLatch(slowEndpointLatch));
+		mySvc.submit(SLOW_ENDPOINT, null, () -> awaitLatch(slowEndpointLatch));
+		mySvc.submit(FAST_ENDPOINT, null, fastEndpointLatch::countDown);
+		mySvc.submit(FAST_ENDPOINT, newRetryConfiguration(0), () -> {
+			throw new IllegalStateException("FAILED");
+		});
+
+		assertTrue(fastEndpointLatch.await(10, TimeUnit.SECONDS));
+		await().until(() -> getStatistics(FAST_ENDPOINT).getFailedCount() == 1);
+		AsyncRestHookDeliverySvc.EndpointStatistics fast = getStatistics(FAST_ENDPOINT);
+		assertEquals(1, fast.getDeliveredCount());
+		assertEquals(0, fast.getQueuedCount());
+
+		await().until(() -> getStatistics(SLOW_ENDPOINT).getActiveCount() == 1);
+		AsyncRestHookDeliverySvc.EndpointStatistics slow = getStatistics(SLOW_ENDPOINT);
+		assertEquals(1, slow.getQueuedCount());
+		assertEquals(0, slow.getDeliveredCount());
+
+		slowEndpointLatch.countDown();
+		await().until(() -> getStatistics(SLOW_ENDPOINT).getDeliveredCount() == 2);
+	}
+
+	@Test
+	public void testFullQueueRejectsDelivery() {
+		myStorageSettings.setRestHookDeliveryQueueSize(1);
+		CountDownLatch slowEndpointLatch = new CountDownLatch(1);
+
+		mySvc.submit(SLOW_ENDPOINT, null, () -> awaitLatch(slowEndpointLatch));
+		await().until(() -> getStatistics(SLOW_ENDPOINT).getActiveCount() == 1);
+		mySvc.submit(SLOW_ENDPOINT, null, () -> awaitLatch(slowEndpointLatch));
+
+		// The submitting thread is not blocked, so the delivery channel can retry the message
+		InternalErrorException e = assertThrows(InternalErrorException.class, () -> mySvc.submit(SLOW_ENDPOINT, null, () -> {}));
+		assertThat(e.getMessage(), containsString("Rest-hook delivery queue for endpoint " + SLOW_ENDPOINT + " is full"));
+		assertThrows(InternalErrorException.class, () -> mySvc.submit(SLOW_ENDPOINT, null, () -> {}));
+		assertEquals(2, getStatistics(SLOW_ENDPOINT).getRejectedCount());
+
+		slowEndpointLatch.countDown();
+		await().until(() -> getStatistics(SLOW_ENDPOINT).getDeliveredCount() == 2);
+		mySvc.submit(SLOW_ENDPOINT, null, () -> {});
+		await().until(() -> getStatistics(SLOW_ENDPOINT).getDeliveredCount() == 3);
+	}
+
+	@Test
+	public void testFullQueueDoesNotDelayBatchesForOtherEndpoints() {
+		myStorageSettings.setRestHookDeliveryQueueSize(1);
+		myStorageSettings.setRestHookDeliveryCoalesceMillis(100);
+		CountDownLatch slowEndpointLatch = new CountDownLatch(1);
+		List<List<String>> slowBatches = Collections.synchronizedList(new ArrayList<>());
+		List<List<String>> fastBatches = Collections.synchronizedList(new ArrayList<>());
+
+		// Fill the queue for the slow endpoint, then start a batch which can't be queued when it is due
+		mySvc.submit(SLOW_ENDPOINT, null, () -> awaitLatch(slowEndpointLatch));
+		await().until(() -> getStatistics(SLOW_ENDPOINT).getActiveCount() == 1);
+		mySvc.submitCoalesced(SLOW_ENDPOINT, "Subscription/1", null, "A", slowBatches::add);
+		mySvc.submit(SLOW_ENDPOINT, null, () -> awaitLatch(slowEndpointLatch));
+
+		// A new batch for the full endpoint is rejected, but other endpoints are unaffected
+		assertThrows(InternalErrorException.class, () -> mySvc.submitCoalesced(SLOW_ENDPOINT, "Subscription/2", null, "B", slowBatches::add));
+		mySvc.submitCoalesced(FAST_ENDPOINT, "Subscription/3", null, "C", fastBatches::add);
+		await().until(() -> fastBatches.size() == 1);
+		assertThat(fastBatches.get(0), contains("C"));
+		assertEquals(0, slowBatches.size());
+
+		// The batch for the slow endpoint is queued once there is space
+		await().until(() -> getStatistics(SLOW_ENDPOINT).getRejectedCount() >= 2);
+		slowEndpointLatch.countDown();
+		await().until(() -> slowBatches.size() == 1);
+		assertThat(slowBatches.get(0), contains("A"));
+	}
+
+	@Test
+	public void testFailedDeliveryRetriedBeforeLaterDeliveries() {
+		List<String> deliveries = Collections.synchronizedList(new ArrayList<>());
+		AtomicInteger attempts = new AtomicInteger();
+
+		mySvc.submit(FAST_ENDPOINT, newRetryConfiguration(2), () -> {
+			if (attempts.incrementAndGet() < 3) {
+				throw new IllegalStateException("FAILED");
+			}
+			deliveries.add("A");
+		});
+		mySvc.submit(FAST_ENDPOINT, newRetryConfiguration(2), () -> deliveries.add("B"));
+
+		await().until(() -> getStatistics(FAST_ENDPOINT).getDeliveredCount() == 2);
+		assertThat(deliveries, contains("A", "B"));
+		assertEquals(3, attempts.get());
+		assertEquals(0, getStatistics(FAST_ENDPOINT).getFailedCount());
+	}
+
+	@Test
+	public void testFailedDeliveryRetriedUpToRetryCount() {
+		AtomicInteger attempts = new AtomicInteger();
+
+		mySvc.submit(FAST_ENDPOINT, newRetryConfiguration(1), () -> {
+			attempts.incrementAndGet();
+			throw new IllegalStateException("FAILED");
+		});
+
+		await().until(() -> getStatistics(FAST_ENDPOINT).getFailedCount() == 1);
+		assertEquals(2, attempts.get());
+		assertEquals(0, getStatistics(FAST_ENDPOINT).getDeliveredCount());
+	}
+
+	@Test
+	public void testCoalesce() {
+		myStorageSettings.setRestHookDeliveryCoalesceMillis(500);
+		List<List<String>> batches = Collections.synchronizedList(new ArrayList<>());
+
+		mySvc.submitCoalesced(FAST_ENDPOINT, "Subscription/1", null, "A", batches::add);
+		mySvc.submitCoalesced(FAST_ENDPOINT, "Subscription/1", null, "B", batches::add);
+		mySvc.submitCoalesced(FAST_ENDPOINT, "Subscription/2", null, "C", batches::add);
+		assertEquals(0, batches.size());
+
+		await().until(() -> batches.size() == 2);
+		assertThat(batches.stream().filter(t -> t.size() == 2).findFirst().orElseThrow(), contains("A", "B"));
+		assertThat(batches.stream().filter(t -> t.size() == 1).findFirst().orElseThrow(), contains("C"));
+		assertEquals(2, getStatistics(FAST_ENDPOINT).getDeliveredCount());
+	}
+
+	@Test
+	public void testCoalesceFullBatchDeliveredImmediately() {
+		myStorageSettings.setRestHookDeliveryCoalesceMillis(60000);
+		List<List<Integer>> batches = Collections.synchronizedList(new ArrayList<>());
+
+		for (int i = 0; i < AsyncRestHookDeliverySvc.MAX_COALESCED_BATCH_SIZE + 1; i++) {
+			mySvc.submitCoalesced(FAST_ENDPOINT, "Subscription/1", null, i, batches::add);
+		}
+
+		await().until(() -> batches.size() == 1);
+		assertEquals(AsyncRestHookDeliverySvc.MAX_COALESCED_BATCH_SIZE, batches.get(0).size());
+	}
+
+	private AsyncRestHookDeliverySvc.EndpointStatistics getStatistics(String theEndpointUrl) {
+		return mySvc
+			.getEndpointStatistics()
+			.stream()
+			.filter(t -> t.getEndpointUrl().equals(theEndpointUrl))
+			.findFirst()
+			.orElseThrow();
+	}
+
+	private static ChannelRetryConfiguration newRetryConfiguration(int theRetryCount) {
+		ChannelRetryConfiguration retVal = new ChannelRetryConfiguration();
+		retVal.setRetryCount(theRetryCount);
+		return retVal;
+	}
+
+	private static void awaitLatch(CountDownLatch theLatch) {
+		try {
+			theLatch.await(10, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
@@ -0,0 +1,176 @@
+package ca.uhn.fhir.jpa.subscription.match.matcher.matching;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.RuntimeResourceDefinition;
+import ca.uhn.fhir.jpa.api.dao.DaoRegistry;
+import ca.uhn.fhir.jpa.api.dao.IFhirResourceDao;
+import ca.uhn.fhir.jpa.model.entity.StorageSettings;
+import ca.uhn.fhir.jpa.searchparam.MatchUrlService;
+import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
+import ca.uhn.fhir.jpa.searchparam.matcher.InMemoryMatchResult;
+import ca.uhn.fhir.jpa.subscription.model.CanonicalSubscription;
+import ca.uhn.fhir.jpa.subscription.model.ResourceModifiedMessage;
+import ca.uhn.fhir.rest.server.SimpleBundleProvider;
+import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
+import org.hl7.fhir.r4.model.IdType;
+import org.hl7.fhir.r4.model.Observation;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class BatchingDaoSubscriptionMatcherTest {
+
+	private static final String CRITERIA = "Observation?status=final";
+
+	@Spy
+	private FhirContext myCtx = FhirContext.forR4Cached();
+	@Spy
+	private StorageSettings myStorageSettings = new StorageSettings();
+	@Mock
+	private DaoRegistry myDaoRegistry;
+	@Mock
+	private MatchUrlService myMatchUrlService;
+	@Mock
+	private IFhirResourceDao<?> mySubscriptionDao;
+	@Mock
+	private IFhirResourceDao<Observation> myObservationDao;
+	@InjectMocks
+	private BatchingDaoSubscriptionMatcher myMatcher;
+	private ExecutorService myExecutor;
+
+	@BeforeEach
+	public void before() {
+		myExecutor = Executors.newFixedThreadPool(3);
+		RuntimeResourceDefinition observationDefinition = myCtx.getResourceDefinition("Observation");
+		doReturn(mySubscriptionDao).when(myDaoRegistry).getSubscriptionDao();
+		when(mySubscriptionDao.validateCriteriaAndReturnResourceDefinition(anyString())).thenReturn(observationDefinition);
+		when(myMatchUrlService.translateMatchUrl(anyString(), any())).thenReturn(new SearchParameterMap());
+		when(myDaoRegistry.getResourceDao(Observation.class)).thenReturn(myObservationDao);
+	}
+
+	@AfterEach
+	public void after() {
+		myExecutor.shutdownNow();
+	}
+
+	@Test
+	public void testBatchingDisabled() {
+		when(myObservationDao.search(any(), any())).thenReturn(new SimpleBundleProvider(newObservation("1")));
+
+		assertTrue(myMatcher.match(newSubscription(), newMessage("1")).matched());
+
+		ArgumentCaptor<String> criteriaCaptor = ArgumentCaptor.forClass(String.class);
+		verify(mySubscriptionDao).validateCriteriaAndReturnResourceDefinition(criteriaCaptor.capture());
+		assertEquals(CRITERIA + "&_id=Observation/1", criteriaCaptor.getValue());
+	}
+
+	@Test
+	public void testConcurrentMatchesShareSearch() throws Exception {
+		myStorageSettings.setDatabaseSubscriptionMatchingBatchWindowMillis(1000);
+		when(myObservationDao.search(any(), any())).thenReturn(new SimpleBundleProvider(Arrays.asList(newObservation("1"), newObservation("3"))));
+
+		CanonicalSubscription subscription = newSubscription();
+		List<Future<InMemoryMatchResult>> results = new ArrayList<>();
+		for (String id : List.of("1", "2", "3")) {
+			results.add(myExecutor.submit(() -> myMatcher.match(subscription, newMessage(id))));
+		}
+
+		assertTrue(results.get(0).get().matched());
+		assertFalse(results.get(1).get().matched());
+		assertTrue(results.get(2).get().matched());
+
+		ArgumentCaptor<String> criteriaCaptor = ArgumentCaptor.forClass(String.class);
+		verify(mySubscriptionDao, times(1)).validateCriteriaAndReturnResourceDefinition(criteriaCaptor.capture());
+		String criteria = criteriaCaptor.getValue();
+		assertTrue(criteria.startsWith(CRITERIA + "&_id="));
+		assertThat(Arrays.asList(criteria.substring(criteria.indexOf("&_id=") + 5).split(",")), containsInAnyOrder("1", "2", "3"));
+
+		ArgumentCaptor<SearchParameterMap> mapCaptor = ArgumentCaptor.forClass(SearchParameterMap.class);
+		verify(myObservationDao, times(1)).search(mapCaptor.capture(), any());
+		assertEquals(3, mapCaptor.getValue().getLoadSynchronousUpTo());
+	}
+
+	@Test
+	public void testSearchFailureReportedToAllMatches() {
+		myStorageSettings.setDatabaseSubscriptionMatchingBatchWindowMillis(1000);
+		when(myObservationDao.search(any(), any())).thenThrow(new InternalErrorException("FAILED"));
+
+		CanonicalSubscription subscription = newSubscription();
+		List<Future<InMemoryMatchResult>> results = new ArrayList<>();
+		for (String id : List.of("1", "2")) {
+			results.add(myExecutor.submit(() -> myMatcher.match(subscription, newMessage(id))));
+		}
+
+		for (Future<InMemoryMatchResult> next : results) {
+			ExecutionException e = assertThrows(ExecutionException.class, next::get);
+			assertEquals("FAILED", e.getCause().getMessage());
+		}
+		verify(myObservationDao, times(1)).search(any(), any());
+	}
+
+	@Test
+	public void testSearchErrorReportedToAllMatches() {
+		myStorageSettings.setDatabaseSubscriptionMatchingBatchWindowMillis(1000);
+		when(myObservationDao.search(any(), any())).thenThrow(new OutOfMemoryError("FAILED"));
+
+		CanonicalSubscription subscription = newSubscription();
+		List<Future<InMemoryMatchResult>> results = new ArrayList<>();
+		for (String id : List.of("1", "2")) {
+			results.add(myExecutor.submit(() -> myMatcher.match(subscription, newMessage(id))));
+		}
+
+		for (Future<InMemoryMatchResult> next : results) {
+			ExecutionException e = assertThrows(ExecutionException.class, next::get);
+			assertThat(e.getCause(), instanceOf(OutOfMemoryError.class));
+			assertEquals("FAILED", e.getCause().getMessage());
+		}
+		verify(myObservationDao, times(1)).search(any(), any());
+	}
+
+	private CanonicalSubscription newSubscription() {
+		CanonicalSubscription retVal = new CanonicalSubscription();
+		retVal.setIdElement(new IdType("Subscription/1"));
+		retVal.setCriteriaString(CRITERIA);
+		return retVal;
+	}
+
+	private ResourceModifiedMessage newMessage(String theId) {
+		return new ResourceModifiedMessage(myCtx, newObservation(theId), ResourceModifiedMessage.OperationTypeEnum.CREATE);
+	}
+
+	private static Observation newObservation(String theId) {
+		Observation retVal = new Observation();
+		retVal.setId("Observation/" + theId);
+		return retVal;
+	}
+
+}
@@ -0,0 +1,167 @@
+package ca.uhn.fhir.jpa.subscription.match.registry;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.interceptor.api.IInterceptorBroadcaster;
+import ca.uhn.fhir.jpa.model.config.PartitionSettings;
+import ca.uhn.fhir.jpa.model.entity.StorageSettings;
+import ca.uhn.fhir.jpa.searchparam.extractor.SearchParamExtractorR4;
+import ca.uhn.fhir.jpa.subscription.channel.impl.FileBackedChannelFactory;
+import ca.uhn.fhir.jpa.subscription.channel.subscription.ISubscriptionDeliveryChannelNamer;
+import ca.uhn.fhir.jpa.subscription.channel.subscription.SubscriptionChannelFactory;
+import ca.uhn.fhir.jpa.subscription.channel.subscription.SubscriptionChannelRegistry;
+import ca.uhn.fhir.jpa.subscription.channel.subscription.SubscriptionDeliveryHandlerFactory;
+import ca.uhn.fhir.jpa.subscription.model.CanonicalSubscriptionChannelType;
+import ca.uhn.fhir.jpa.subscription.model.ResourceDeliveryJsonMessage;
+import ca.uhn.fhir.jpa.subscription.model.ResourceDeliveryMessage;
+import ca.uhn.fhir.rest.server.util.FhirContextSearchParamRegistry;
+import org.hl7.fhir.r4.model.IdType;
+import org.hl7.fhir.r4.model.Subscription;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests the lifecycle of {@link FileBackedChannelFactory file-backed} delivery channels as subscriptions are
+ * registered and unregistered
+ */
+public class SubscriptionRegistryFileBackedChannelTest {
+	private static final String CHANNEL_NAME = "subscription-test";
+	private static final String SUBSCRIPTION_ID = "123";
+	private static final FhirContext ourFhirContext = FhirContext.forR4Cached();
+
+	@TempDir
+	File myDirectory;
+	private final List<FileBackedChannelFactory> myChannelFactories = new ArrayList<>();
+	private final List<String> myDeliveredIds = Collections.synchronizedList(new ArrayList<>());
+
+	@AfterEach
+	public void after() {
+		myChannelFactories.forEach(FileBackedChannelFactory::stop);
+	}
+
+	@Test
+	public void testUnprocessedMessagesDeliveredAfterShutdown() throws Exception {
+		// The first two messages block both delivery threads until the server is stopping
+		CountDownLatch releaseLatch = new CountDownLatch(1);
+		SubscriptionChannelRegistry channelRegistry = newSubscriptionChannelRegistry(msg -> {
+			myDeliveredIds.add(getPayloadId(msg.getPayload()));
+			try {
+				releaseLatch.await(30, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		SubscriptionRegistry subscriptionRegistry = newSubscriptionRegistry(channelRegistry);
+		assertTrue(subscriptionRegistry.registerSubscriptionUnlessAlreadyRegistered(createSubscription()));
+
+		sendDeliveryMessage(channelRegistry, "Patient/A");
+		sendDeliveryMessage(channelRegistry, "Patient/B");
+		sendDeliveryMessage(channelRegistry, "Patient/C");
+		await().until(() -> myDeliveredIds.size() == 2);
+
+		// Once the channel has been told to stop, let the blocked deliveries finish
+		Thread shutdownThread = new Thread(subscriptionRegistry::unregisterAllSubscriptions);
+		shutdownThread.start();
+		await().until(() -> shutdownThread.getState() == Thread.State.TIMED_WAITING);
+		releaseLatch.countDown();
+		shutdownThread.join();
+		assertTrue(getChannelDirectory().exists());
+
+		// After a restart, only the message which was not delivered is delivered
+		List<String> deliveredBeforeShutdown = new ArrayList<>(myDeliveredIds);
+		assertThat(deliveredBeforeShutdown, containsInAnyOrder("Patient/A", "Patient/B"));
+		myDeliveredIds.clear();
+		SubscriptionChannelRegistry restartedChannelRegistry = newSubscriptionChannelRegistry(msg -> myDeliveredIds.add(getPayloadId(msg.getPayload())));
+		SubscriptionRegistry restartedSubscriptionRegistry = newSubscriptionRegistry(restartedChannelRegistry);
+		assertTrue(restartedSubscriptionRegistry.registerSubscriptionUnlessAlreadyRegistered(createSubscription()));
+
+		await().until(() -> myDeliveredIds.size() == 1);
+		assertThat(myDeliveredIds, contains("Patient/C"));
+	}
+
+	@Test
+	public void testMessagesDeletedWhenSubscriptionUnregistered() {
+		SubscriptionChannelRegistry channelRegistry = newSubscriptionChannelRegistry(null);
+		SubscriptionRegistry subscriptionRegistry = newSubscriptionRegistry(channelRegistry);
+		assertTrue(subscriptionRegistry.registerSubscriptionUnlessAlreadyRegistered(createSubscription()));
+		assertTrue(getChannelDirectory().exists());
+
+		subscriptionRegistry.unregisterSubscriptionIfRegistered(SUBSCRIPTION_ID);
+
+		assertFalse(getChannelDirectory().exists());
+	}
+
+	private File getChannelDirectory() {
+		return new File(new File(myDirectory, "channels"), CHANNEL_NAME);
+	}
+
+	private void sendDeliveryMessage(SubscriptionChannelRegistry theChannelRegistry, String thePayloadId) {
+		ResourceDeliveryMessage message = new ResourceDeliveryMessage();
+		message.setPayloadId(new IdType(thePayloadId));
+		theChannelRegistry.getDeliverySenderChannel(CHANNEL_NAME).send(new ResourceDeliveryJsonMessage(message));
+	}
+
+	private static String getPayloadId(Object thePayload) {
+		return ((ResourceDeliveryMessage) thePayload).getPayloadId();
+	}
+
+	private SubscriptionChannelRegistry newSubscriptionChannelRegistry(MessageHandler theDeliveryHandler) {
+		FileBackedChannelFactory channelFactory = new FileBackedChannelFactory((name, settings) -> name, myDirectory);
+		channelFactory.setSyncIntervalMillis(10);
+		myChannelFactories.add(channelFactory);
+
+		SubscriptionDeliveryHandlerFactory deliveryHandlerFactory = mock(SubscriptionDeliveryHandlerFactory.class);
+		when(deliveryHandlerFactory.createDeliveryHandler(any(CanonicalSubscriptionChannelType.class))).thenReturn(Optional.ofNullable(theDeliveryHandler));
+
+		SubscriptionChannelRegistry retVal = new SubscriptionChannelRegistry();
+		ReflectionTestUtils.setField(retVal, "mySubscriptionDeliveryHandlerFactory", deliveryHandlerFactory);
+		ReflectionTestUtils.setField(retVal, "mySubscriptionDeliveryChannelFactory", new SubscriptionChannelFactory(channelFactory));
+		return retVal;
+	}
+
+	private SubscriptionRegistry newSubscriptionRegistry(SubscriptionChannelRegistry theChannelRegistry) {
+		FhirContextSearchParamRegistry searchParamRegistry = new FhirContextSearchParamRegistry(ourFhirContext);
+		SubscriptionRegistry retVal = new SubscriptionRegistry();
+		ReflectionTestUtils.setField(retVal, "mySubscriptionCanonicalizer", new SubscriptionCanonicalizer(ourFhirContext));
+		ReflectionTestUtils.setField(retVal, "mySubscriptionDeliveryChannelNamer", (ISubscriptionDeliveryChannelNamer) theSubscription -> CHANNEL_NAME);
+		ReflectionTestUtils.setField(retVal, "mySubscriptionChannelRegistry", theChannelRegistry);
+		ReflectionTestUtils.setField(retVal, "myInterceptorBroadcaster", mock(IInterceptorBroadcaster.class));
+		ReflectionTestUtils.setField(retVal, "mySearchParamRegistry", searchParamRegistry);
+		ReflectionTestUtils.setField(retVal, "mySearchParamExtractor", new SearchParamExtractorR4(new StorageSettings(), new PartitionSettings(), ourFhirContext, searchParamRegistry));
+		return retVal;
+	}
+
+	private static Subscription createSubscription() {
+		Subscription subscription = new Subscription();
+		subscription.setId(SUBSCRIPTION_ID);
+		subscription.setCriteria("Patient");
+		subscription.setStatus(Subscription.SubscriptionStatus.ACTIVE);
+		Subscription.SubscriptionChannelComponent channel = new Subscription.SubscriptionChannelComponent();
+		channel.setType(Subscription.SubscriptionChannelType.RESTHOOK);
+		channel.setPayload("application/json");
+		channel.setEndpoint("http://unused.test.endpoint/");
+		subscription.setChannel(channel);
+		return subscription;
+	}
+
+}
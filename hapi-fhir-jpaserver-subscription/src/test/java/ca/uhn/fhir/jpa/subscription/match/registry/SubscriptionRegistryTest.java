@@ -2,13 +2,22 @@ package ca.uhn.fhir.jpa.subscription.match.registry;
 
 import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.interceptor.api.IInterceptorBroadcaster;
+import ca.uhn.fhir.jpa.model.config.PartitionSettings;
+import ca.uhn.fhir.jpa.model.entity.StorageSettings;
+import ca.uhn.fhir.jpa.searchparam.extractor.ISearchParamExtractor;
+import ca.uhn.fhir.jpa.searchparam.extractor.SearchParamExtractorR4;
 import ca.uhn.fhir.jpa.subscription.channel.subscription.ISubscriptionDeliveryChannelNamer;
 import ca.uhn.fhir.jpa.subscription.channel.subscription.SubscriptionChannelRegistry;
 import ca.uhn.fhir.jpa.subscription.model.CanonicalSubscription;
+import ca.uhn.fhir.rest.server.util.FhirContextSearchParamRegistry;
+import ca.uhn.fhir.rest.server.util.ISearchParamRegistry;
 import ca.uhn.fhir.subscription.SubscriptionTestDataHelper;
 import ca.uhn.fhir.util.HapiExtensions;
 import org.hl7.fhir.r4.model.Extension;
+import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.r4.model.IntegerType;
+import org.hl7.fhir.r4.model.Observation;
+import org.hl7.fhir.r4.model.Reference;
 import org.hl7.fhir.r4.model.Subscription;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
@@ -19,8 +28,11 @@ import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.util.List;
+import java.util.stream.Collectors;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.hasSize;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
@@ -44,6 +56,12 @@ public class SubscriptionRegistryTest {
 	@Mock
 	IInterceptorBroadcaster myInterceptorBroadcaster;
 
+	@Spy
+	ISearchParamRegistry mySearchParamRegistry = new FhirContextSearchParamRegistry(ourFhirContext);
+
+	@Spy
+	ISearchParamExtractor mySearchParamExtractor = new SearchParamExtractorR4(new StorageSettings(), new PartitionSettings(), ourFhirContext, mySearchParamRegistry);
+
 	@InjectMocks
 	SubscriptionRegistry mySubscriptionRegistry;
 
@@ -154,6 +172,52 @@ public class SubscriptionRegistryTest {
 		assertEquals(topicSubscription4Id, subscriptions.get(0).getId());
 	}
 
+	@Test
+	public void getNonTopicSubscriptionCandidates_equalityCriteria_onlyReturnsPossibleMatches() {
+		registerSubscription("patient-123", "Observation?patient=Patient/123");
+		registerSubscription("patient-456", "Observation?subject=Patient/456&code=http://loinc.org|1234-5");
+		registerSubscription("final", "Observation?status=final");
+		registerSubscription("code-text", "Observation?code:text=blood");
+		registerSubscription("multitype", "[Observation,Patient]");
+		registerSubscription("encounter", "Encounter?status=finished");
+
+		Observation observation = new Observation();
+		observation.setId("Observation/1");
+		observation.setSubject(new Reference("Patient/123"));
+		observation.setStatus(Observation.ObservationStatus.AMENDED);
+		observation.getCode().addCoding().setSystem("http://loinc.org").setCode("1234-5");
+		assertThat(getCandidateIds("Observation", observation), containsInAnyOrder("patient-123", "patient-456", "code-text", "multitype"));
+
+		observation.setSubject(new Reference("Patient/789"));
+		observation.setStatus(Observation.ObservationStatus.FINAL);
+		observation.getCode().getCodingFirstRep().setCode("9999-9");
+		assertThat(getCandidateIds("Observation", observation), containsInAnyOrder("final", "code-text", "multitype"));
+
+		// Without the resource every subscription for the type is a candidate
+		assertThat(getCandidateIds("Observation", null), containsInAnyOrder("patient-123", "patient-456", "final", "code-text", "multitype"));
+		assertThat(getCandidateIds("Encounter", null), containsInAnyOrder("encounter"));
+		assertThat(getCandidateIds("Condition", null), empty());
+
+		// Updated and unregistered subscriptions are reindexed
+		registerSubscription("final", "Observation?status=amended");
+		mySubscriptionRegistry.unregisterSubscriptionIfRegistered("code-text");
+		assertThat(getCandidateIds("Observation", observation), containsInAnyOrder("multitype"));
+	}
+
+	private void registerSubscription(String theId, String theCriteria) {
+		Subscription subscription = createSubscription();
+		subscription.setId(theId);
+		subscription.setCriteria(theCriteria);
+		assertTrue(mySubscriptionRegistry.registerSubscriptionUnlessAlreadyRegistered(subscription));
+	}
+
+	private List<String> getCandidateIds(String theResourceType, IBaseResource theResource) {
+		return mySubscriptionRegistry
+			.getNonTopicSubscriptionCandidates(theResourceType, theResource)
+			.stream()
+			.map(ActiveSubscription::getId)
+			.collect(Collectors.toList());
+	}
 
 	private Subscription createSubscription(Extension... theExtensions) {
 		Subscription subscription = new Subscription();
@@ -0,0 +1,177 @@
+package ca.uhn.fhir.jpa.dao.r4;
+
+import ca.uhn.fhir.jpa.api.config.JpaStorageSettings;
+import ca.uhn.fhir.jpa.model.entity.ResourceIndexedSearchParamString;
+import ca.uhn.fhir.jpa.model.entity.ResourceIndexedSearchParamToken;
+import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
+import ca.uhn.fhir.jpa.test.BaseJpaR4Test;
+import ca.uhn.fhir.jpa.util.SqlQuery;
+import ca.uhn.fhir.rest.param.ReferenceParam;
+import ca.uhn.fhir.rest.param.StringParam;
+import ca.uhn.fhir.rest.param.TokenParam;
+import ca.uhn.fhir.util.BundleBuilder;
+import org.hl7.fhir.instance.model.api.IIdType;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.IdType;
+import org.hl7.fhir.r4.model.Observation;
+import org.hl7.fhir.r4.model.Patient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class FhirResourceDaoR4BatchIndexWriteTest extends BaseJpaR4Test {
+
+	@BeforeEach
+	public void beforeEnableBatchIndexWrites() {
+		myStorageSettings.setBatchIndexWritesEnabled(true);
+	}
+
+	@AfterEach
+	public void afterResetBatchIndexWrites() {
+		myStorageSettings.setBatchIndexWritesEnabled(new JpaStorageSettings().isBatchIndexWritesEnabled());
+	}
+
+	@Test
+	public void testCreate_OneInsertPerIndexTable() {
+		Patient patient = new Patient();
+		for (int i = 0; i < 10; i++) {
+			patient.addName().setFamily("Family" + i).addGiven("Given" + i);
+			patient.addIdentifier().setSystem("http://foo").setValue("value" + i);
+		}
+
+		myCaptureQueriesListener.clear();
+		IIdType id = myPatientDao.create(patient, mySrd).getId().toUnqualifiedVersionless();
+
+		assertEquals(1, countInsertsInto("HFJ_SPIDX_STRING"));
+		assertEquals(1, countInsertsInto("HFJ_SPIDX_TOKEN"));
+		runInTransaction(() -> {
+			List<ResourceIndexedSearchParamString> strings = myResourceIndexedSearchParamStringDao.findAll();
+			assertEquals(20, strings.stream().filter(t -> t.getParamName().equals("name")).count());
+			List<ResourceIndexedSearchParamToken> tokens = myResourceIndexedSearchParamTokenDao.findAll();
+			assertEquals(10, tokens.stream().filter(t -> t.getParamName().equals("identifier")).count());
+			assertEquals(id.getIdPartAsLong(), tokens.get(0).getResourcePid());
+		});
+
+		assertThat(searchPatients(SearchParameterMap.newSynchronous(Patient.SP_FAMILY, new StringParam("Family7"))), containsInAnyOrder(id.getValue()));
+		assertThat(searchPatients(SearchParameterMap.newSynchronous(Patient.SP_IDENTIFIER, new TokenParam("http://foo", "value3"))), containsInAnyOrder(id.getValue()));
+	}
+
+	@Test
+	public void testUpdate_RemovedAndAddedRows() {
+		Patient patient = new Patient();
+		patient.addName().setFamily("Simpson").addGiven("Homer").addGiven("Jay");
+		patient.addIdentifier().setSystem("http://foo").setValue("A");
+		IIdType id = myPatientDao.create(patient, mySrd).getId().toUnqualifiedVersionless();
+
+		patient = new Patient();
+		patient.setId(id);
+		patient.addName().setFamily("Flanders");
+		patient.addIdentifier().setSystem("http://foo").setValue("B");
+		patient.addIdentifier().setSystem("http://foo").setValue("C");
+		patient.addIdentifier().setSystem("http://foo").setValue("D");
+		myPatientDao.update(patient, mySrd);
+
+		assertThat(searchPatients(SearchParameterMap.newSynchronous(Patient.SP_FAMILY, new StringParam("Simpson"))), containsInAnyOrder());
+		assertThat(searchPatients(SearchParameterMap.newSynchronous(Patient.SP_GIVEN, new StringParam("Homer"))), containsInAnyOrder());
+		assertThat(searchPatients(SearchParameterMap.newSynchronous(Patient.SP_FAMILY, new StringParam("Flanders"))), containsInAnyOrder(id.getValue()));
+		assertThat(searchPatients(SearchParameterMap.newSynchronous(Patient.SP_IDENTIFIER, new TokenParam("http://foo", "A"))), containsInAnyOrder());
+		assertThat(searchPatients(SearchParameterMap.newSynchronous(Patient.SP_IDENTIFIER, new TokenParam("http://foo", "D"))), containsInAnyOrder(id.getValue()));
+		runInTransaction(() -> {
+			assertEquals(1, myResourceIndexedSearchParamStringDao.findAll().stream().filter(t -> t.getParamName().equals("name")).count());
+			assertEquals(3, myResourceIndexedSearchParamTokenDao.findAll().stream().filter(t -> t.getParamName().equals("identifier")).count());
+		});
+
+		// Removing all of the names and identifiers
+		patient = new Patient();
+		patient.setId(id);
+		patient.setActive(true);
+		myCaptureQueriesListener.clear();
+		myPatientDao.update(patient, mySrd);
+
+		assertEquals(1, countDeletesFrom("HFJ_SPIDX_STRING"));
+		assertEquals(1, countDeletesFrom("HFJ_SPIDX_TOKEN"));
+		runInTransaction(() -> {
+			assertEquals(0, myResourceIndexedSearchParamStringDao.findAll().stream().filter(t -> t.getParamName().equals("name")).count());
+			assertEquals(0, myResourceIndexedSearchParamTokenDao.findAll().stream().filter(t -> t.getParamName().equals("identifier")).count());
+		});
+		assertThat(searchPatients(SearchParameterMap.newSynchronous(Patient.SP_ACTIVE, new TokenParam("true"))), containsInAnyOrder(id.getValue()));
+	}
+
+	@Test
+	public void testTransaction_RowsForAllResourcesWrittenTogether() {
+		BundleBuilder bb = new BundleBuilder(myFhirContext);
+		Patient patient = new Patient();
+		patient.setId(IdType.newRandomUuid());
+		patient.addName().setFamily("Simpson");
+		bb.addTransactionCreateEntry(patient);
+		for (int i = 0; i < 20; i++) {
+			Observation obs = new Observation();
+			obs.setStatus(Observation.ObservationStatus.FINAL);
+			obs.getCode().addCoding().setSystem("http://loinc.org").setCode("code" + i);
+			obs.getSubject().setReference(patient.getId());
+			bb.addTransactionCreateEntry(obs);
+		}
+
+		myCaptureQueriesListener.clear();
+		Bundle outcome = mySystemDao.transaction(mySrd, (Bundle) bb.getBundle());
+
+		assertEquals(1, countInsertsInto("HFJ_SPIDX_TOKEN"));
+		assertEquals(1, countInsertsInto("HFJ_RES_LINK"));
+		String patientId = new IdType(outcome.getEntry().get(0).getResponse().getLocation()).toUnqualifiedVersionless().getValue();
+		SearchParameterMap map = SearchParameterMap.newSynchronous(Observation.SP_SUBJECT, new ReferenceParam(patientId));
+		assertEquals(20, searchObservations(map).size());
+		map = SearchParameterMap.newSynchronous(Observation.SP_CODE, new TokenParam("http://loinc.org", "code5"));
+		map.add(Observation.SP_SUBJECT, new ReferenceParam(patientId));
+		assertEquals(1, searchObservations(map).size());
+	}
+
+	@Test
+	public void testQueryInSameTransaction_SeesQueuedRows() {
+		runInTransaction(() -> {
+			Patient patient = new Patient();
+			patient.addIdentifier().setSystem("http://foo").setValue("A");
+			IIdType id = myPatientDao.create(patient, mySrd).getId().toUnqualifiedVersionless();
+
+			List<ResourceIndexedSearchParamToken> tokens = myResourceIndexedSearchParamTokenDao.findAll();
+			assertEquals(1, tokens.stream().filter(t -> t.getParamName().equals("identifier")).count());
+			assertEquals(id.getIdPartAsLong(), tokens.get(0).getResourcePid());
+		});
+	}
+
+	@Test
+	public void testDelete_RowsRemoved() {
+		IIdType id = createPatient(withFamily("Simpson"), withIdentifier("http://foo", "A"));
+
+		myPatientDao.delete(id, mySrd);
+
+		runInTransaction(() -> {
+			assertEquals(0, myResourceIndexedSearchParamStringDao.findAll().stream().filter(t -> t.getParamName().equals("family")).count());
+			assertEquals(0, myResourceIndexedSearchParamTokenDao.findAll().stream().filter(t -> t.getParamName().equals("identifier")).count());
+		});
+	}
+
+	private List<String> searchPatients(SearchParameterMap theMap) {
+		return toUnqualifiedVersionlessIdValues(myPatientDao.search(theMap, mySrd));
+	}
+
+	private List<String> searchObservations(SearchParameterMap theMap) {
+		return toUnqualifiedVersionlessIdValues(myObservationDao.search(theMap, mySrd));
+	}
+
+	private long countInsertsInto(String theTable) {
+		List<SqlQuery> queries = myCaptureQueriesListener.getInsertQueriesForCurrentThread();
+		return queries.stream().filter(t -> t.getSql(false, false).toLowerCase().contains("into " + theTable.toLowerCase() + " ")).count();
+	}
+
+	private long countDeletesFrom(String theTable) {
+		List<SqlQuery> queries = myCaptureQueriesListener.getDeleteQueriesForCurrentThread();
+		return queries.stream().filter(t -> t.getSql(false, false).toLowerCase().contains("from " + theTable.toLowerCase() + " ")).count();
+	}
+
+}
@@ -0,0 +1,171 @@
+package ca.uhn.fhir.jpa.dao.r4;
+
+import ca.uhn.fhir.batch2.api.IJobCoordinator;
+import ca.uhn.fhir.batch2.jobs.compressiondictionary.TrainCompressionDictionaryAppCtx;
+import ca.uhn.fhir.batch2.jobs.compressiondictionary.TrainCompressionDictionaryJobParameters;
+import ca.uhn.fhir.batch2.jobs.reindex.ReindexAppCtx;
+import ca.uhn.fhir.batch2.jobs.reindex.ReindexJobParameters;
+import ca.uhn.fhir.batch2.model.JobInstanceStartRequest;
+import ca.uhn.fhir.jpa.api.config.JpaStorageSettings;
+import ca.uhn.fhir.jpa.api.dao.ReindexParameters;
+import ca.uhn.fhir.jpa.api.model.CompressionDictionary;
+import ca.uhn.fhir.jpa.api.svc.IResourceCompressionDictionarySvc;
+import ca.uhn.fhir.jpa.batch.models.Batch2JobStartResponse;
+import ca.uhn.fhir.jpa.model.entity.ResourceEncodingEnum;
+import ca.uhn.fhir.jpa.model.entity.ResourceHistoryTable;
+import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
+import ca.uhn.fhir.jpa.test.BaseJpaR4Test;
+import ca.uhn.fhir.rest.param.StringParam;
+import org.hl7.fhir.instance.model.api.IIdType;
+import org.hl7.fhir.r4.model.Patient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class FhirResourceDaoR4CompressionDictionaryTest extends BaseJpaR4Test {
+
+	@Autowired
+	private IJobCoordinator myJobCoordinator;
+	@Autowired
+	private IResourceCompressionDictionarySvc myResourceCompressionDictionarySvc;
+
+	@AfterEach
+	public void afterResetEncoding() {
+		myStorageSettings.setResourceEncoding(new JpaStorageSettings().getResourceEncoding());
+	}
+
+	@Test
+	public void testCreate_NoDictionaryTrained_FallsBackToJsonc() {
+		myStorageSettings.setResourceEncoding(ResourceEncodingEnum.JSOND);
+
+		IIdType id = createPatient(withFamily("Simpson"));
+
+		runInTransaction(() -> {
+			ResourceHistoryTable history = myResourceHistoryTableDao.findAll().get(0);
+			assertEquals(ResourceEncodingEnum.JSONC, history.getEncoding());
+			assertNull(history.getCompressionDictionaryId());
+		});
+		assertEquals("Simpson", myPatientDao.read(id, mySrd).getNameFirstRep().getFamily());
+	}
+
+	@Test
+	public void testTrainDictionary_TooFewSamples() {
+		createPatient(withFamily("Simpson"));
+
+		assertNull(myResourceCompressionDictionarySvc.trainDictionary("Patient", 100));
+		assertNull(myResourceCompressionDictionarySvc.getCurrentDictionary("Patient"));
+	}
+
+	@Test
+	public void testTrainDictionaryJob_ThenStoreAndReadWithDictionary() {
+		for (int i = 0; i < 20; i++) {
+			createPatient(withFamily("Family" + i), withGiven("Given" + i), withActiveTrue());
+			createObservation(withObservationCode("http://loinc.org", "8867-4"), withStatus("final"));
+		}
+
+		trainDictionaries("Patient");
+		CompressionDictionary dictionary = myResourceCompressionDictionarySvc.getCurrentDictionary("Patient");
+		assertNotNull(dictionary);
+		assertNull(myResourceCompressionDictionarySvc.getCurrentDictionary("Observation"));
+
+		myStorageSettings.setResourceEncoding(ResourceEncodingEnum.JSOND);
+		IIdType patientId = createPatient(withFamily("Simpson"), withActiveTrue());
+		IIdType observationId = createObservation(withObservationCode("http://loinc.org", "8867-4"));
+
+		runInTransaction(() -> {
+			ResourceHistoryTable history = myResourceHistoryTableDao.findForIdAndVersionAndFetchProvenance(patientId.getIdPartAsLong(), 1);
+			assertEquals(ResourceEncodingEnum.JSOND, history.getEncoding());
+			assertEquals(dictionary.getId(), history.getCompressionDictionaryId());
+			history = myResourceHistoryTableDao.findForIdAndVersionAndFetchProvenance(observationId.getIdPartAsLong(), 1);
+			assertEquals(ResourceEncodingEnum.JSONC, history.getEncoding());
+		});
+
+		// Read, search and update
+		Patient patient = myPatientDao.read(patientId, mySrd);
+		assertEquals("Simpson", patient.getNameFirstRep().getFamily());
+		SearchParameterMap map = SearchParameterMap.newSynchronous(Patient.SP_FAMILY, new StringParam("Simpson"));
+		List<?> found = myPatientDao.search(map, mySrd).getAllResources();
+		assertEquals(1, found.size());
+		assertEquals("Simpson", ((Patient) found.get(0)).getNameFirstRep().getFamily());
+
+		patient.setActive(false);
+		myPatientDao.update(patient, mySrd);
+		assertEquals(false, myPatientDao.read(patientId, mySrd).getActive());
+		assertEquals(true, myPatientDao.read(patientId.withVersion("1"), mySrd).getActive());
+	}
+
+	@Test
+	public void testReindexOptimizeStorage_ReEncodesWithCurrentDictionary() {
+		for (int i = 0; i < 20; i++) {
+			createPatient(withFamily("Family" + i), withActiveTrue());
+		}
+		trainDictionaries("Patient");
+		long firstDictionaryId = myResourceCompressionDictionarySvc.getCurrentDictionary("Patient").getId();
+
+		myStorageSettings.setResourceEncoding(ResourceEncodingEnum.JSOND);
+		reindexOptimizeStorage();
+		runInTransaction(() -> {
+			for (ResourceHistoryTable history : myResourceHistoryTableDao.findAll()) {
+				assertEquals(ResourceEncodingEnum.JSOND, history.getEncoding());
+				assertEquals(firstDictionaryId, history.getCompressionDictionaryId());
+			}
+		});
+
+		// Training again samples the JSOND rows and replaces the current dictionary
+		trainDictionaries("Patient");
+		long secondDictionaryId = myResourceCompressionDictionarySvc.getCurrentDictionary("Patient").getId();
+		assertNotEquals(firstDictionaryId, secondDictionaryId);
+
+		reindexOptimizeStorage();
+		runInTransaction(() -> {
+			for (ResourceHistoryTable history : myResourceHistoryTableDao.findAll()) {
+				assertEquals(ResourceEncodingEnum.JSOND, history.getEncoding());
+				assertEquals(secondDictionaryId, history.getCompressionDictionaryId());
+			}
+		});
+		assertEquals(20, myPatientDao.search(SearchParameterMap.newSynchronous(), mySrd).getAllResources().size());
+
+		// Switching back to JSONC
+		myStorageSettings.setResourceEncoding(ResourceEncodingEnum.JSONC);
+		reindexOptimizeStorage();
+		runInTransaction(() -> {
+			for (ResourceHistoryTable history : myResourceHistoryTableDao.findAll()) {
+				assertEquals(ResourceEncodingEnum.JSONC, history.getEncoding());
+				assertNull(history.getCompressionDictionaryId());
+			}
+		});
+		assertEquals(20, myPatientDao.search(SearchParameterMap.newSynchronous(), mySrd).getAllResources().size());
+	}
+
+	private void trainDictionaries(String... theResourceTypes) {
+		TrainCompressionDictionaryJobParameters parameters = new TrainCompressionDictionaryJobParameters();
+		for (String next : theResourceTypes) {
+			parameters.addResourceType(next);
+		}
+		JobInstanceStartRequest startRequest = new JobInstanceStartRequest();
+		startRequest.setJobDefinitionId(TrainCompressionDictionaryAppCtx.JOB_TRAIN_COMPRESSION_DICTIONARY);
+		startRequest.setParameters(parameters);
+		Batch2JobStartResponse startResponse = myJobCoordinator.startInstance(startRequest);
+		myBatch2JobHelper.awaitJobCompletion(startResponse);
+	}
+
+	private void reindexOptimizeStorage() {
+		JobInstanceStartRequest startRequest = new JobInstanceStartRequest();
+		startRequest.setJobDefinitionId(ReindexAppCtx.JOB_REINDEX);
+		startRequest.setParameters(
+			new ReindexJobParameters()
+				.setOptimizeStorage(ReindexParameters.OptimizeStorageModeEnum.ALL_VERSIONS)
+				.setReindexSearchParameters(ReindexParameters.ReindexSearchParametersEnum.NONE)
+		);
+		Batch2JobStartResponse startResponse = myJobCoordinator.startInstance(startRequest);
+		myBatch2JobHelper.awaitJobCompletion(startResponse);
+	}
+
+}
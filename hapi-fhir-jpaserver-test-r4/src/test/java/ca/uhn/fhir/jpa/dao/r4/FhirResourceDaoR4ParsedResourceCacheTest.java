@@ -0,0 +1,142 @@
+package ca.uhn.fhir.jpa.dao.r4;
+
+import ca.uhn.fhir.jpa.api.config.JpaStorageSettings;
+import ca.uhn.fhir.jpa.dao.GZipUtil;
+import ca.uhn.fhir.jpa.dao.ParsedResourceCache;
+import ca.uhn.fhir.jpa.model.entity.ResourceHistoryTable;
+import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
+import ca.uhn.fhir.jpa.test.BaseJpaR4Test;
+import ca.uhn.fhir.rest.api.Constants;
+import org.hl7.fhir.r4.model.IdType;
+import org.hl7.fhir.r4.model.Patient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+public class FhirResourceDaoR4ParsedResourceCacheTest extends BaseJpaR4Test {
+
+	@Autowired
+	private ParsedResourceCache myParsedResourceCache;
+
+	@BeforeEach
+	public void beforeEnableCache() {
+		myStorageSettings.setParsedResourceCacheMaximumSize(1000);
+	}
+
+	@AfterEach
+	public void afterResetDao() {
+		myStorageSettings.setParsedResourceCacheMaximumSize(new JpaStorageSettings().getParsedResourceCacheMaximumSize());
+		myStorageSettings.setUpdateWithHistoryRewriteEnabled(new JpaStorageSettings().isUpdateWithHistoryRewriteEnabled());
+		when(mySrd.getHeader(eq(Constants.HEADER_REWRITE_HISTORY))).thenReturn("");
+	}
+
+	@Test
+	public void testRead_ParsedBodyIsCached() {
+		Long id = createPatient();
+
+		// Populate the cache
+		Patient patient = myPatientDao.read(new IdType("Patient/" + id), mySrd);
+		assertTrue(patient.getActive());
+
+		// Callers get a copy, so modifying the returned resource must not affect the cache
+		patient.setActive(false);
+		patient.addName().setFamily("Simpson");
+
+		// Change the stored body without going through the DAO
+		changeStoredBody(id, 1);
+
+		patient = myPatientDao.read(new IdType("Patient/" + id), mySrd);
+		assertTrue(patient.getActive());
+		assertEquals(0, patient.getName().size());
+		assertEquals("1", patient.getIdElement().getVersionIdPart());
+		assertEquals("1", patient.getMeta().getVersionId());
+
+		patient = (Patient) myPatientDao.search(SearchParameterMap.newSynchronous(), mySrd).getAllResources().get(0);
+		assertTrue(patient.getActive());
+
+		// Without the cache the stored body is used
+		myStorageSettings.setParsedResourceCacheMaximumSize(0);
+		patient = myPatientDao.read(new IdType("Patient/" + id), mySrd);
+		assertFalse(patient.getActive());
+	}
+
+	@Test
+	public void testUpdate_NewVersionIsRead() {
+		Long id = createPatient();
+		assertTrue(myPatientDao.read(new IdType("Patient/" + id), mySrd).getActive());
+
+		Patient patient = new Patient();
+		patient.setId("Patient/" + id);
+		patient.setActive(false);
+		myPatientDao.update(patient, mySrd);
+
+		patient = myPatientDao.read(new IdType("Patient/" + id), mySrd);
+		assertFalse(patient.getActive());
+		assertEquals("2", patient.getIdElement().getVersionIdPart());
+
+		patient = myPatientDao.read(new IdType("Patient/" + id + "/_history/1"), mySrd);
+		assertTrue(patient.getActive());
+		assertEquals("1", patient.getIdElement().getVersionIdPart());
+	}
+
+	@Test
+	public void testUpdateWithHistoryRewrite_CachedVersionIsInvalidated() {
+		myStorageSettings.setUpdateWithHistoryRewriteEnabled(true);
+		Long id = createPatient();
+		assertTrue(myPatientDao.read(new IdType("Patient/" + id), mySrd).getActive());
+
+		when(mySrd.isRewriteHistory()).thenReturn(true);
+		Patient patient = new Patient();
+		patient.setId("Patient/" + id + "/_history/1");
+		patient.setActive(false);
+		myPatientDao.update(patient, mySrd);
+
+		patient = myPatientDao.read(new IdType("Patient/" + id), mySrd);
+		assertFalse(patient.getActive());
+		assertEquals("1", patient.getIdElement().getVersionIdPart());
+	}
+
+	@Test
+	public void testInvalidateBeforeCommit_OnlyInvalidatedVersionIsNotCached() {
+		Long id0 = createPatient();
+		Long id1 = createPatient();
+
+		runInTransaction(() -> {
+			myPatientDao.read(new IdType("Patient/" + id0), mySrd);
+			myPatientDao.read(new IdType("Patient/" + id1), mySrd);
+
+			// The first version is invalidated after it was read, but before the read commits
+			myParsedResourceCache.invalidate(id0, 1);
+		});
+
+		changeStoredBody(id0, 1);
+		changeStoredBody(id1, 1);
+
+		assertFalse(myPatientDao.read(new IdType("Patient/" + id0), mySrd).getActive());
+		assertTrue(myPatientDao.read(new IdType("Patient/" + id1), mySrd).getActive());
+	}
+
+	private Long createPatient() {
+		Patient patient = new Patient();
+		patient.setActive(true);
+		return myPatientDao.create(patient, mySrd).getId().getIdPartAsLong();
+	}
+
+	private void changeStoredBody(Long theId, long theVersion) {
+		runInTransaction(() -> {
+			ResourceHistoryTable resVer = myResourceHistoryTableDao.findForIdAndVersionAndFetchProvenance(theId, theVersion);
+			String resourceText = GZipUtil.decompress(resVer.getResource());
+			resourceText = resourceText.replace("\"active\":true", "\"active\":false");
+			resVer.setResource(GZipUtil.compress(resourceText));
+			myResourceHistoryTableDao.save(resVer);
+		});
+	}
+
+}
@@ -0,0 +1,164 @@
+package ca.uhn.fhir.jpa.dao.r4;
+
+import ca.uhn.fhir.jpa.api.config.JpaStorageSettings;
+import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
+import ca.uhn.fhir.jpa.test.BaseJpaR4Test;
+import ca.uhn.fhir.jpa.util.SqlQuery;
+import ca.uhn.fhir.rest.param.ReferenceParam;
+import ca.uhn.fhir.rest.param.StringParam;
+import ca.uhn.fhir.rest.param.TokenParam;
+import org.hl7.fhir.instance.model.api.IIdType;
+import org.hl7.fhir.r4.model.Observation;
+import org.hl7.fhir.r4.model.Patient;
+import org.hl7.fhir.r4.model.StringType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class FhirResourceDaoR4SearchIndexDigestTest extends BaseJpaR4Test {
+
+	@BeforeEach
+	public void beforeEnableDigest() {
+		myStorageSettings.setSearchIndexDigestEnabled(true);
+	}
+
+	@AfterEach
+	public void afterResetDigest() {
+		myStorageSettings.setSearchIndexDigestEnabled(new JpaStorageSettings().isSearchIndexDigestEnabled());
+	}
+
+	@Test
+	public void testUpdateNonIndexedElements_IndexSynchronizationSkipped() {
+		IIdType id = createPatient(withFamily("Simpson"), withGiven("Homer"), withIdentifier("http://foo", "123"), withActiveTrue());
+		String digest = getDigest(id);
+		assertNotNull(digest);
+
+		Patient patient = myPatientDao.read(id, mySrd);
+		patient.getMeta().addTag("http://tags", "tag0", null);
+		patient.addExtension("http://unindexed", new StringType("value"));
+		myCaptureQueriesListener.clear();
+		myPatientDao.update(patient, mySrd);
+
+		assertThat(getIndexTableQueries(myCaptureQueriesListener.getSelectQueriesForCurrentThread()), empty());
+		assertThat(getIndexTableQueries(myCaptureQueriesListener.getInsertQueriesForCurrentThread()), empty());
+		assertThat(getIndexTableQueries(myCaptureQueriesListener.getDeleteQueriesForCurrentThread()), empty());
+		assertEquals(digest, getDigest(id));
+		assertEquals("2", myPatientDao.read(id, mySrd).getIdElement().getVersionIdPart());
+
+		assertThat(searchPatients(SearchParameterMap.newSynchronous(Patient.SP_FAMILY, new StringParam("Simpson"))), containsInAnyOrder(id.getValue()));
+		assertThat(searchPatients(SearchParameterMap.newSynchronous(Patient.SP_IDENTIFIER, new TokenParam("http://foo", "123"))), containsInAnyOrder(id.getValue()));
+	}
+
+	@Test
+	public void testUpdateIndexedElements_IndexesSynchronized() {
+		IIdType id = createPatient(withFamily("Simpson"), withIdentifier("http://foo", "123"));
+		String digest = getDigest(id);
+
+		Patient patient = myPatientDao.read(id, mySrd);
+		patient.getNameFirstRep().setFamily("Flanders");
+		myPatientDao.update(patient, mySrd);
+
+		String newDigest = getDigest(id);
+		assertNotNull(newDigest);
+		assertNotEquals(digest, newDigest);
+		assertThat(searchPatients(SearchParameterMap.newSynchronous(Patient.SP_FAMILY, new StringParam("Simpson"))), empty());
+		assertThat(searchPatients(SearchParameterMap.newSynchronous(Patient.SP_FAMILY, new StringParam("Flanders"))), containsInAnyOrder(id.getValue()));
+
+		// A second update which doesn't change the indexes
+		patient = myPatientDao.read(id, mySrd);
+		patient.getMeta().addTag("http://tags", "tag0", null);
+		myPatientDao.update(patient, mySrd);
+		assertEquals(newDigest, getDigest(id));
+		assertThat(searchPatients(SearchParameterMap.newSynchronous(Patient.SP_IDENTIFIER, new TokenParam("http://foo", "123"))), containsInAnyOrder(id.getValue()));
+	}
+
+	@Test
+	public void testUpdateReferences() {
+		IIdType patientId = createPatient(withFamily("Simpson"));
+		IIdType patientId2 = createPatient(withFamily("Flanders"));
+		IIdType obsId = createObservation(withSubject(patientId), withObservationCode("http://loinc.org", "1234"));
+		String digest = getDigest(obsId);
+
+		// Unchanged reference
+		Observation obs = myObservationDao.read(obsId, mySrd);
+		obs.getMeta().addTag("http://tags", "tag0", null);
+		myCaptureQueriesListener.clear();
+		myObservationDao.update(obs, mySrd);
+		// The existing links are still loaded, since they are used when extracting the new links
+		List<String> selects = getIndexTableQueries(myCaptureQueriesListener.getSelectQueriesForCurrentThread());
+		assertThat(selects.stream().filter(t -> !t.contains("hfj_res_link")).toList(), empty());
+		assertThat(getIndexTableQueries(myCaptureQueriesListener.getInsertQueriesForCurrentThread()), empty());
+		assertThat(getIndexTableQueries(myCaptureQueriesListener.getDeleteQueriesForCurrentThread()), empty());
+		assertEquals(digest, getDigest(obsId));
+
+		// Changed reference
+		obs = myObservationDao.read(obsId, mySrd);
+		obs.getSubject().setReference(patientId2.getValue());
+		myObservationDao.update(obs, mySrd);
+		assertNotEquals(digest, getDigest(obsId));
+
+		assertThat(searchObservations(SearchParameterMap.newSynchronous(Observation.SP_SUBJECT, new ReferenceParam(patientId.getValue()))), empty());
+		assertThat(searchObservations(SearchParameterMap.newSynchronous(Observation.SP_SUBJECT, new ReferenceParam(patientId2.getValue()))), containsInAnyOrder(obsId.getValue()));
+	}
+
+	@Test
+	public void testDigestClearedWhenDisabled() {
+		IIdType id = createPatient(withFamily("Simpson"));
+		assertNotNull(getDigest(id));
+
+		myStorageSettings.setSearchIndexDigestEnabled(false);
+		Patient patient = myPatientDao.read(id, mySrd);
+		patient.getNameFirstRep().setFamily("Flanders");
+		myPatientDao.update(patient, mySrd);
+		assertNull(getDigest(id));
+
+		// Re-enabling after index changes made without a digest must not skip synchronization
+		myStorageSettings.setSearchIndexDigestEnabled(true);
+		patient = myPatientDao.read(id, mySrd);
+		patient.getNameFirstRep().setFamily("Simpson");
+		myPatientDao.update(patient, mySrd);
+		assertNotNull(getDigest(id));
+		assertThat(searchPatients(SearchParameterMap.newSynchronous(Patient.SP_FAMILY, new StringParam("Simpson"))), containsInAnyOrder(id.getValue()));
+		assertThat(searchPatients(SearchParameterMap.newSynchronous(Patient.SP_FAMILY, new StringParam("Flanders"))), empty());
+	}
+
+	@Test
+	public void testDelete_DigestCleared() {
+		IIdType id = createPatient(withFamily("Simpson"));
+		assertNotNull(getDigest(id));
+
+		myPatientDao.delete(id, mySrd);
+		assertNull(getDigest(id));
+	}
+
+	private String getDigest(IIdType theId) {
+		return runInTransaction(() -> myResourceTableDao.findById(theId.getIdPartAsLong()).orElseThrow().getSearchParamIndexDigest());
+	}
+
+	private List<String> getIndexTableQueries(List<SqlQuery> theQueries) {
+		return theQueries
+			.stream()
+			.map(t -> t.getSql(true, false).toLowerCase())
+			.filter(t -> t.contains("hfj_spidx_") || t.contains("hfj_res_link") || t.contains("hfj_res_param_present"))
+			.toList();
+	}
+
+	private List<String> searchPatients(SearchParameterMap theMap) {
+		return toUnqualifiedVersionlessIdValues(myPatientDao.search(theMap, mySrd));
+	}
+
+	private List<String> searchObservations(SearchParameterMap theMap) {
+		return toUnqualifiedVersionlessIdValues(myObservationDao.search(theMap, mySrd));
+	}
+
+}
@@ -0,0 +1,242 @@
+package ca.uhn.fhir.jpa.dao.r4;
+
+import ca.uhn.fhir.jpa.api.config.JpaStorageSettings;
+import ca.uhn.fhir.jpa.search.SearchKeysetPagingSvc;
+import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
+import ca.uhn.fhir.jpa.test.BaseJpaR4Test;
+import ca.uhn.fhir.rest.api.server.IBundleProvider;
+import ca.uhn.fhir.rest.api.server.SystemRequestDetails;
+import ca.uhn.fhir.rest.param.TokenParam;
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.api.SortOrderEnum;
+import ca.uhn.fhir.rest.api.SortSpec;
+import org.hl7.fhir.instance.model.api.IIdType;
+import org.hl7.fhir.r4.model.DateTimeType;
+import org.hl7.fhir.r4.model.Observation;
+import org.hl7.fhir.r4.model.Patient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.not;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+public class FhirResourceDaoR4SearchKeysetPagingTest extends BaseJpaR4Test {
+
+	@BeforeEach
+	public void beforeEnableKeysetPaging() {
+		myStorageSettings.setKeysetPagingEnabled(true);
+	}
+
+	@AfterEach
+	public void afterResetKeysetPaging() {
+		myStorageSettings.setKeysetPagingEnabled(new JpaStorageSettings().isKeysetPagingEnabled());
+	}
+
+	@ParameterizedTest
+	@ValueSource(booleans = {true, false})
+	public void testPageThroughLastUpdated(boolean theAscending) {
+		List<Entry> entries = new ArrayList<>();
+		for (int i = 0; i < 25; i++) {
+			Patient patient = new Patient();
+			patient.setActive(true);
+			IIdType id = myPatientDao.create(patient, mySrd).getId().toUnqualifiedVersionless();
+			Date lastUpdated = myPatientDao.read(id, mySrd).getMeta().getLastUpdated();
+			entries.add(new Entry(id.getValue(), lastUpdated, id.getIdPartAsLong()));
+		}
+
+		List<String> expected = sortEntries(entries, theAscending);
+		List<String> actual = new ArrayList<>();
+		SystemRequestDetails request = null;
+		for (int offset = 0; offset < 30; offset += 10) {
+			SearchParameterMap map = new SearchParameterMap();
+			map.setSort(new SortSpec("_lastUpdated", theAscending ? SortOrderEnum.ASC : SortOrderEnum.DESC));
+			map.setOffset(offset);
+			map.setCount(10);
+
+			request = newPageRequest(map, request);
+			myCaptureQueriesListener.clear();
+			actual.addAll(toUnqualifiedVersionlessIdValues(myPatientDao.search(map, request)));
+
+			String sql = myCaptureQueriesListener.getSelectQueries().get(0).getSql(true, false);
+			if (offset == 0) {
+				assertThat(sql, not(containsString("HAVING")));
+			} else {
+				// Continues from the previous page instead of skipping rows
+				assertThat(sql, containsString("HAVING"));
+				assertThat(sql, not(containsString("offset")));
+			}
+		}
+
+		assertEquals(expected, actual);
+	}
+
+	@ParameterizedTest
+	@ValueSource(booleans = {true, false})
+	public void testPageThroughDateWithDuplicatesAndMissingValues(boolean theAscending) {
+		List<Entry> entries = new ArrayList<>();
+		for (int i = 0; i < 25; i++) {
+			Observation obs = new Observation();
+			obs.setStatus(Observation.ObservationStatus.FINAL);
+			Date date = null;
+			if (i % 6 != 0) {
+				DateTimeType effective = new DateTimeType("2023-07-0" + (1 + (i % 4)));
+				obs.setEffective(effective);
+				date = effective.getValue();
+			}
+			Long pid = myObservationDao.create(obs, mySrd).getId().getIdPartAsLong();
+			entries.add(new Entry("Observation/" + pid, date, pid));
+		}
+
+		List<String> expected = sortEntries(entries, theAscending);
+		List<String> actual = new ArrayList<>();
+		SystemRequestDetails request = null;
+		for (int offset = 0; offset < 25; offset += 7) {
+			SearchParameterMap map = new SearchParameterMap();
+			map.setSort(new SortSpec(Observation.SP_DATE, theAscending ? SortOrderEnum.ASC : SortOrderEnum.DESC));
+			map.setOffset(offset);
+			map.setCount(7);
+
+			request = newPageRequest(map, request);
+			myCaptureQueriesListener.clear();
+			actual.addAll(toUnqualifiedVersionlessIdValues(myObservationDao.search(map, request)));
+			if (offset > 0) {
+				assertThat(myCaptureQueriesListener.getSelectQueries().get(0).getSql(true, false), containsString("HAVING"));
+			}
+		}
+
+		assertEquals(expected, actual);
+	}
+
+	@Test
+	public void testPageRequestedOutOfOrder_FallsBackToOffset() {
+		for (int i = 0; i < 15; i++) {
+			createPatient(withActiveTrue());
+		}
+
+		SearchParameterMap map = new SearchParameterMap();
+		map.setSort(new SortSpec("_lastUpdated"));
+		map.setOffset(10);
+		map.setCount(10);
+
+		myCaptureQueriesListener.clear();
+		assertEquals(5, toUnqualifiedVersionlessIdValues(myPatientDao.search(map, mySrd)).size());
+		String sql = myCaptureQueriesListener.getSelectQueries().get(0).getSql(true, false);
+		assertThat(sql, containsString("offset '10'"));
+		assertThat(sql, not(containsString("HAVING")));
+	}
+
+	@Test
+	public void testPositionOnlyUsedByTheSameSearch() {
+		for (int i = 0; i < 15; i++) {
+			createPatient(withActiveTrue());
+		}
+
+		SearchParameterMap firstPage = newLastUpdatedSearch(0);
+		SystemRequestDetails firstPageRequest = newPageRequest(firstPage, null);
+		myPatientDao.search(firstPage, firstPageRequest);
+		assertNotNull(firstPageRequest.getParameters().get(SearchKeysetPagingSvc.PARAM_KEYSET_ID));
+
+		// Another client which did not fetch the first page
+		myCaptureQueriesListener.clear();
+		assertEquals(5, toUnqualifiedVersionlessIdValues(search(newLastUpdatedSearch(10), null)).size());
+		assertThat(myCaptureQueriesListener.getSelectQueries().get(0).getSql(true, false), containsString("offset '10'"));
+
+		// The same search ID with different search parameters
+		SearchParameterMap changedSearch = newLastUpdatedSearch(10);
+		changedSearch.add(Patient.SP_ACTIVE, new TokenParam("true"));
+		myCaptureQueriesListener.clear();
+		assertEquals(5, toUnqualifiedVersionlessIdValues(search(changedSearch, firstPageRequest)).size());
+		assertThat(myCaptureQueriesListener.getSelectQueries().get(0).getSql(true, false), containsString("offset '10'"));
+
+		// The same search ID at a different offset
+		myCaptureQueriesListener.clear();
+		assertEquals(3, toUnqualifiedVersionlessIdValues(search(newLastUpdatedSearch(12), firstPageRequest)).size());
+		assertThat(myCaptureQueriesListener.getSelectQueries().get(0).getSql(true, false), containsString("offset '12'"));
+
+		// The client which fetched the first page
+		myCaptureQueriesListener.clear();
+		assertEquals(5, toUnqualifiedVersionlessIdValues(search(newLastUpdatedSearch(10), firstPageRequest)).size());
+		String sql = myCaptureQueriesListener.getSelectQueries().get(0).getSql(true, false);
+		assertThat(sql, containsString("HAVING"));
+		assertThat(sql, not(containsString("offset")));
+	}
+
+	@Test
+	public void testDisabled() {
+		myStorageSettings.setKeysetPagingEnabled(false);
+		for (int i = 0; i < 15; i++) {
+			createPatient(withActiveTrue());
+		}
+
+		for (int offset = 0; offset < 20; offset += 10) {
+			SearchParameterMap map = new SearchParameterMap();
+			map.setSort(new SortSpec("_lastUpdated"));
+			map.setOffset(offset);
+			map.setCount(10);
+
+			myCaptureQueriesListener.clear();
+			myPatientDao.search(map, mySrd);
+			assertThat(myCaptureQueriesListener.getSelectQueries().get(0).getSql(true, false), not(containsString("HAVING")));
+		}
+	}
+
+	private static SearchParameterMap newLastUpdatedSearch(int theOffset) {
+		SearchParameterMap retVal = new SearchParameterMap();
+		retVal.setSort(new SortSpec("_lastUpdated"));
+		retVal.setOffset(theOffset);
+		retVal.setCount(10);
+		return retVal;
+	}
+
+	private IBundleProvider search(SearchParameterMap theMap, @Nullable SystemRequestDetails thePreviousPageRequest) {
+		return myPatientDao.search(theMap, newPageRequest(theMap, thePreviousPageRequest));
+	}
+
+	/**
+	 * Creates the request for a page, carrying over the search ID from the paging links of the previous page
+	 */
+	private static SystemRequestDetails newPageRequest(SearchParameterMap theMap, @Nullable SystemRequestDetails thePreviousPageRequest) {
+		SystemRequestDetails retVal = new SystemRequestDetails();
+		retVal.addParameter(Constants.PARAM_OFFSET, new String[]{Integer.toString(theMap.getOffset())});
+		retVal.addParameter(Constants.PARAM_COUNT, new String[]{Integer.toString(theMap.getCount())});
+		if (thePreviousPageRequest != null) {
+			String[] keysetId = thePreviousPageRequest.getParameters().get(SearchKeysetPagingSvc.PARAM_KEYSET_ID);
+			if (keysetId != null) {
+				retVal.addParameter(SearchKeysetPagingSvc.PARAM_KEYSET_ID, keysetId);
+			}
+		}
+		return retVal;
+	}
+
+	private static List<String> sortEntries(List<Entry> theEntries, boolean theAscending) {
+		Comparator<Entry> comparator = Comparator.comparing((Entry t) -> t.myDate, Comparator.nullsLast(theAscending ? Comparator.<Date>naturalOrder() : Comparator.<Date>reverseOrder()));
+		comparator = comparator.thenComparing(t -> t.myPid, theAscending ? Comparator.<Long>naturalOrder() : Comparator.<Long>reverseOrder());
+		return theEntries.stream().sorted(comparator).map(t -> t.myId).collect(Collectors.toList());
+	}
+
+	private static class Entry {
+		private final String myId;
+		private final Date myDate;
+		private final Long myPid;
+
+		private Entry(String theId, Date theDate, Long thePid) {
+			myId = theId;
+			myDate = theDate;
+			myPid = thePid;
+		}
+	}
+
+}
@@ -9,10 +9,12 @@ import ca.uhn.fhir.jpa.model.entity.ResourceTable;
 import ca.uhn.fhir.jpa.model.search.SearchStatusEnum;
 import ca.uhn.fhir.jpa.search.PersistedJpaBundleProvider;
 import ca.uhn.fhir.jpa.search.SearchCoordinatorSvcImpl;
+import ca.uhn.fhir.jpa.search.builder.SearchBuilder;
 import ca.uhn.fhir.jpa.searchparam.MatchUrlService;
 import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
 import ca.uhn.fhir.jpa.test.BaseJpaR4Test;
 import ca.uhn.fhir.jpa.util.QueryParameterUtils;
+import ca.uhn.fhir.jpa.util.SqlQuery;
 import ca.uhn.fhir.rest.api.SearchTotalModeEnum;
 import ca.uhn.fhir.rest.api.SortSpec;
 import ca.uhn.fhir.rest.api.SummaryEnum;
@@ -30,12 +32,15 @@ import ca.uhn.fhir.test.utilities.ProxyUtil;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.hl7.fhir.instance.model.api.IAnyResource;
+import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.instance.model.api.IIdType;
 import org.hl7.fhir.r4.model.BodyStructure;
 import org.hl7.fhir.r4.model.CodeableConcept;
 import org.hl7.fhir.r4.model.Coding;
+import org.hl7.fhir.r4.model.Condition;
 import org.hl7.fhir.r4.model.DateTimeType;
 import org.hl7.fhir.r4.model.Device;
+import org.hl7.fhir.r4.model.Encounter;
 import org.hl7.fhir.r4.model.Enumerations;
 import org.hl7.fhir.r4.model.Extension;
 import org.hl7.fhir.r4.model.IdType;
@@ -65,10 +70,13 @@ import java.util.stream.Collectors;
 import static org.apache.commons.lang3.StringUtils.leftPad;
 import static org.awaitility.Awaitility.await;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
 import static org.hamcrest.Matchers.matchesPattern;
 import static org.hamcrest.Matchers.not;
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -105,6 +113,11 @@ public class FhirResourceDaoR4SearchOptimizedTest extends BaseJpaR4Test {
 		myStorageSettings.setSearchPreFetchThresholds(new JpaStorageSettings().getSearchPreFetchThresholds());
 		myCaptureQueriesListener.setCaptureQueryStackTrace(false);
 		myStorageSettings.setIndexMissingFields(new JpaStorageSettings().getIndexMissingFields());
+		myStorageSettings.setSearchResourceLoadThreadCount(new JpaStorageSettings().getSearchResourceLoadThreadCount());
+		myStorageSettings.setSearchResourceLoadBatchSize(new JpaStorageSettings().getSearchResourceLoadBatchSize());
+		myStorageSettings.setSearchIncludeThreadCount(new JpaStorageSettings().getSearchIncludeThreadCount());
+		myStorageSettings.setAllowExternalReferences(new JpaStorageSettings().isAllowExternalReferences());
+		SearchBuilder.setMaxPageSize50ForTest(false);
 	}
 
 	private void create200Patients() {
@@ -625,6 +638,117 @@ public class FhirResourceDaoR4SearchOptimizedTest extends BaseJpaR4Test {
 	}
 
 
+	@Test
+	public void testFetchResourcesInParallel() {
+		create200Patients();
+
+		myStorageSettings.setSearchResourceLoadThreadCount(4);
+		myStorageSettings.setSearchResourceLoadBatchSize(15);
+
+		List<String> expected = new ArrayList<>();
+		for (int i = 0; i < 200; i++) {
+			expected.add("Patient/PT" + leftPad(Integer.toString(i), 5, '0'));
+		}
+
+		// Synchronous
+		myCaptureQueriesListener.clear();
+		SearchParameterMap params = SearchParameterMap.newSynchronous();
+		params.setSort(new SortSpec(Patient.SP_NAME));
+		IBundleProvider results = myPatientDao.search(params, mySrd);
+		assertEquals(expected, toUnqualifiedVersionlessIdValues(results));
+		long workerQueries = myCaptureQueriesListener
+			.getSelectQueries()
+			.stream()
+			.filter(t -> t.getThreadName().startsWith("search-resource-load-"))
+			.count();
+		assertThat(workerQueries, greaterThanOrEqualTo(14L));
+
+		// Paging
+		params = new SearchParameterMap();
+		params.setSort(new SortSpec(Patient.SP_NAME));
+		results = myPatientDao.search(params, mySrd);
+		assertEquals(expected.subList(0, 100), toUnqualifiedVersionlessIdValues(results, 0, 100, true));
+		assertEquals(expected.subList(100, 200), toUnqualifiedVersionlessIdValues(results, 100, 200, false));
+	}
+
+	@Test
+	public void testFetchResourcesInParallel_BatchLargerThanQueryChunk() {
+		create200Patients();
+		SearchBuilder.setMaxPageSize50ForTest(true);
+
+		myStorageSettings.setSearchResourceLoadThreadCount(2);
+		myStorageSettings.setSearchResourceLoadBatchSize(120);
+
+		myCaptureQueriesListener.clear();
+		SearchParameterMap params = SearchParameterMap.newSynchronous();
+		params.setSort(new SortSpec(Patient.SP_NAME));
+		assertEquals(200, toUnqualifiedVersionlessIdValues(myPatientDao.search(params, mySrd)).size());
+
+		List<SqlQuery> workerQueries = myCaptureQueriesListener
+			.getSelectQueries()
+			.stream()
+			.filter(t -> t.getThreadName().startsWith("search-resource-load-"))
+			.collect(Collectors.toList());
+		assertThat(workerQueries, not(empty()));
+		for (SqlQuery next : workerQueries) {
+			int bindParameterCount = StringUtils.countMatches(next.getSql(false, false), '?');
+			assertThat(next.getSql(false, false), bindParameterCount, lessThanOrEqualTo(SearchBuilder.getMaximumPageSize()));
+		}
+	}
+
+	@Test
+	public void testLoadRevIncludesInParallel() {
+		for (int i = 0; i < 5; i++) {
+			IIdType patientId = createPatient(withId("PT" + i), withActiveTrue());
+			createObservation(withSubject(patientId));
+			createEncounter(withSubject(patientId));
+			Condition condition = new Condition();
+			condition.setSubject(new Reference(patientId));
+			myConditionDao.create(condition, mySrd);
+		}
+
+		SearchParameterMap params = SearchParameterMap.newSynchronous();
+		params.addRevInclude(Observation.INCLUDE_SUBJECT);
+		params.addRevInclude(Encounter.INCLUDE_SUBJECT);
+		params.addRevInclude(Condition.INCLUDE_SUBJECT);
+		List<String> expected = toUnqualifiedVersionlessIdValues(myPatientDao.search(params, mySrd));
+		assertEquals(20, expected.size());
+
+		myStorageSettings.setSearchIncludeThreadCount(3);
+		myCaptureQueriesListener.clear();
+		List<String> actual = toUnqualifiedVersionlessIdValues(myPatientDao.search(params, mySrd));
+		assertThat(actual, containsInAnyOrder(expected.toArray()));
+		long workerQueries = myCaptureQueriesListener
+			.getSelectQueries()
+			.stream()
+			.filter(t -> t.getThreadName().startsWith("search-include-"))
+			.count();
+		assertEquals(3, workerQueries);
+	}
+
+	@Test
+	public void testIncludeAllSkipsDanglingReferencesAcrossPartitions() {
+		myStorageSettings.setAllowExternalReferences(true);
+		SearchBuilder.setMaxPageSize50ForTest(true);
+
+		List<String> expected = new ArrayList<>();
+		for (int i = 0; i < 60; i++) {
+			IIdType patientId = createPatient(withId("PT" + i), withActiveTrue());
+			Observation obs = new Observation();
+			obs.setStatus(Observation.ObservationStatus.FINAL);
+			// The external reference produces an include row with no target resource
+			obs.addPerformer(new Reference("http://example.com/fhir/Practitioner/" + i));
+			obs.setSubject(new Reference(patientId));
+			expected.add(myObservationDao.create(obs, mySrd).getId().toUnqualifiedVersionless().getValue());
+			expected.add(patientId.toUnqualifiedVersionless().getValue());
+		}
+
+		SearchParameterMap params = SearchParameterMap.newSynchronous();
+		params.addInclude(IBaseResource.INCLUDE_ALL);
+		List<String> actual = toUnqualifiedVersionlessIdValues(myObservationDao.search(params, mySrd));
+		assertThat(actual, containsInAnyOrder(expected.toArray()));
+	}
+
 	@Test
 	public void testFetchSecondBatchInManyThreads() throws Throwable {
 		create200Patients();
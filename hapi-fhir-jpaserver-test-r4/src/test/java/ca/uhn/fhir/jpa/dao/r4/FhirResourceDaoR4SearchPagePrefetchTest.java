@@ -0,0 +1,156 @@
+package ca.uhn.fhir.jpa.dao.r4;
+
+import ca.uhn.fhir.jpa.api.config.JpaStorageSettings;
+import ca.uhn.fhir.jpa.search.SearchPagePrefetchSvc;
+import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
+import ca.uhn.fhir.jpa.test.BaseJpaR4Test;
+import ca.uhn.fhir.rest.api.SortSpec;
+import ca.uhn.fhir.rest.api.server.IBundleProvider;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.instance.model.api.IIdType;
+import org.hl7.fhir.r4.model.IdType;
+import org.hl7.fhir.r4.model.Patient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class FhirResourceDaoR4SearchPagePrefetchTest extends BaseJpaR4Test {
+
+	@Autowired
+	private SearchPagePrefetchSvc mySearchPagePrefetchSvc;
+	private final List<String> myPatientIds = new ArrayList<>();
+
+	@BeforeEach
+	public void beforeEnablePrefetch() {
+		myStorageSettings.setSearchPagePrefetchMaximumSize(10);
+		myStorageSettings.setSearchPreFetchThresholds(List.of(-1));
+		for (int i = 0; i < 30; i++) {
+			IIdType id = createPatient(withFamily("Family " + i));
+			myPatientIds.add(id.toUnqualifiedVersionless().getValue());
+		}
+	}
+
+	@AfterEach
+	public void afterDisablePrefetch() {
+		mySearchPagePrefetchSvc.invalidateAll();
+		myStorageSettings.setSearchPagePrefetchMaximumSize(new JpaStorageSettings().getSearchPagePrefetchMaximumSize());
+		myStorageSettings.setSearchPreFetchThresholds(new JpaStorageSettings().getSearchPreFetchThresholds());
+	}
+
+	@Test
+	public void testNextPageIsPrefetched() {
+		String uuid = searchAndFetchFirstPage();
+
+		// The second page was prefetched while the first was being returned, so only the
+		// resource versions are checked when it is fetched
+		awaitPrefetchComplete();
+		myCaptureQueriesListener.clear();
+		List<IBaseResource> page = myPagingProvider.retrieveResultList(mySrd, uuid).getResources(10, 20);
+		assertEquals(myPatientIds.subList(10, 20), toUnqualifiedVersionlessIdValues(page));
+		assertEquals(0, countResourceBodyQueries());
+
+		// And the fetch of the second page prefetches the third one
+		awaitPrefetchComplete();
+		myCaptureQueriesListener.clear();
+		page = myPagingProvider.retrieveResultList(mySrd, uuid).getResources(20, 30);
+		assertEquals(myPatientIds.subList(20, 30), toUnqualifiedVersionlessIdValues(page));
+		assertEquals(0, countResourceBodyQueries());
+	}
+
+	@Test
+	public void testPrefetchDoesNotResumeSearch() {
+		myStorageSettings.setSearchPreFetchThresholds(List.of(15, -1));
+		String uuid = searchAndFetchFirstPage();
+
+		// The first pass of the search only found 15 results, so the second page wasn't prefetched
+		awaitPrefetchComplete();
+		myCaptureQueriesListener.clear();
+		List<IBaseResource> page = myPagingProvider.retrieveResultList(mySrd, uuid).getResources(10, 20);
+		assertEquals(myPatientIds.subList(10, 20), toUnqualifiedVersionlessIdValues(page));
+		assertEquals(1, countResourceBodyQueries());
+
+		// Fetching the second page resumed the search, and once the search has finished
+		// subsequent pages are prefetched again
+		awaitPrefetchComplete();
+		page = myPagingProvider.retrieveResultList(mySrd, uuid).getResources(20, 25);
+		assertEquals(myPatientIds.subList(20, 25), toUnqualifiedVersionlessIdValues(page));
+		awaitPrefetchComplete();
+		myCaptureQueriesListener.clear();
+		page = myPagingProvider.retrieveResultList(mySrd, uuid).getResources(25, 30);
+		assertEquals(myPatientIds.subList(25, 30), toUnqualifiedVersionlessIdValues(page));
+		assertEquals(0, countResourceBodyQueries());
+	}
+
+	@Test
+	public void testChangedResourceIsReloaded() {
+		String uuid = searchAndFetchFirstPage();
+		awaitPrefetchComplete();
+
+		Patient patient = myPatientDao.read(new IdType(myPatientIds.get(15)), mySrd);
+		patient.getNameFirstRep().setFamily("Updated");
+		myPatientDao.update(patient, mySrd);
+
+		myCaptureQueriesListener.clear();
+		List<IBaseResource> page = myPagingProvider.retrieveResultList(mySrd, uuid).getResources(10, 20);
+		assertEquals(myPatientIds.subList(10, 20), toUnqualifiedVersionlessIdValues(page));
+		assertEquals("Updated", ((Patient) page.get(5)).getNameFirstRep().getFamily());
+		assertEquals("2", page.get(5).getIdElement().getVersionIdPart());
+		assertEquals(1, countResourceBodyQueries());
+	}
+
+	@Test
+	public void testResourceDeletedBeforePrefetch() {
+		SearchParameterMap map = new SearchParameterMap();
+		map.setSort(new SortSpec("_id"));
+		IBundleProvider outcome = myPatientDao.search(map, mySrd);
+		myPatientDao.delete(new IdType(myPatientIds.get(12)), mySrd);
+		assertEquals(myPatientIds.subList(0, 10), toUnqualifiedVersionlessIdValues(outcome.getResources(0, 10)));
+		awaitPrefetchComplete();
+
+		myCaptureQueriesListener.clear();
+		List<IBaseResource> page = myPagingProvider.retrieveResultList(mySrd, outcome.getUuid()).getResources(10, 20);
+		List<String> expected = new ArrayList<>(myPatientIds.subList(10, 20));
+		expected.remove(2);
+		assertEquals(expected, toUnqualifiedVersionlessIdValues(page));
+		assertEquals(0, countResourceBodyQueries());
+	}
+
+	@Test
+	public void testPrefetchDisabled() {
+		myStorageSettings.setSearchPagePrefetchMaximumSize(0);
+		String uuid = searchAndFetchFirstPage();
+
+		myCaptureQueriesListener.clear();
+		List<IBaseResource> page = myPagingProvider.retrieveResultList(mySrd, uuid).getResources(10, 20);
+		assertEquals(myPatientIds.subList(10, 20), toUnqualifiedVersionlessIdValues(page));
+		assertEquals(1, countResourceBodyQueries());
+	}
+
+	private String searchAndFetchFirstPage() {
+		SearchParameterMap map = new SearchParameterMap();
+		map.setSort(new SortSpec("_id"));
+		IBundleProvider outcome = myPatientDao.search(map, mySrd);
+		assertEquals(myPatientIds.subList(0, 10), toUnqualifiedVersionlessIdValues(outcome.getResources(0, 10)));
+		return outcome.getUuid();
+	}
+
+	private void awaitPrefetchComplete() {
+		await().until(() -> mySearchPagePrefetchSvc.isIdleForUnitTest());
+	}
+
+	private long countResourceBodyQueries() {
+		return myCaptureQueriesListener
+			.getSelectQueriesForCurrentThread()
+			.stream()
+			.filter(t -> t.getSql(false, false).contains("HFJ_RES_VER"))
+			.count();
+	}
+
+}
@@ -0,0 +1,188 @@
+package ca.uhn.fhir.jpa.dao.r4;
+
+import ca.uhn.fhir.interceptor.api.IAnonymousInterceptor;
+import ca.uhn.fhir.interceptor.api.Pointcut;
+import ca.uhn.fhir.interceptor.model.RequestPartitionId;
+import ca.uhn.fhir.jpa.api.config.JpaStorageSettings;
+import ca.uhn.fhir.jpa.model.config.PartitionSettings;
+import ca.uhn.fhir.jpa.model.entity.ResourceIndexedSearchParamToken;
+import ca.uhn.fhir.jpa.model.search.StorageProcessingMessage;
+import ca.uhn.fhir.jpa.search.builder.SearchParamSelectivitySvc;
+import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
+import ca.uhn.fhir.jpa.test.BaseJpaR4Test;
+import ca.uhn.fhir.rest.param.TokenParam;
+import ca.uhn.fhir.rest.param.TokenParamModifier;
+import org.hl7.fhir.r4.model.Observation;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.not;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class FhirResourceDaoR4SearchPredicateOrderingTest extends BaseJpaR4Test {
+
+	private static final String LOINC = "http://loinc.org";
+
+	@Autowired
+	private SearchParamSelectivitySvc mySearchParamSelectivitySvc;
+	private final List<String> myMessages = new ArrayList<>();
+	private final IAnonymousInterceptor myInterceptor = (thePointcut, theArgs) -> myMessages.add(theArgs.get(StorageProcessingMessage.class).getMessage());
+
+	@BeforeEach
+	public void beforeEnableOrdering() {
+		myStorageSettings.setSelectivityBasedPredicateOrderingEnabled(true);
+
+		for (int i = 0; i < 30; i++) {
+			createObservation(withStatus("final"), withObservationCode(LOINC, "common"));
+		}
+		createObservation(withStatus("final"), withObservationCode(LOINC, "rare"));
+		createObservation(withStatus("final"), withObservationCode(LOINC, "rare"));
+		createObservation(withStatus("amended"), withObservationCode(LOINC, "rare"));
+
+		myInterceptorRegistry.registerAnonymousInterceptor(Pointcut.JPA_PERFTRACE_INFO, myInterceptor);
+	}
+
+	@AfterEach
+	public void afterResetOrdering() {
+		myStorageSettings.setSelectivityBasedPredicateOrderingEnabled(new JpaStorageSettings().isSelectivityBasedPredicateOrderingEnabled());
+		myInterceptorRegistry.unregisterInterceptor(myInterceptor);
+		mySearchParamSelectivitySvc.setSubselectThresholdsForUnitTests(1000, 100);
+		mySearchParamSelectivitySvc.setRefreshAfterMillisForUnitTests(SearchParamSelectivitySvc.REFRESH_AFTER_MILLIS);
+	}
+
+	@Test
+	public void testMostSelectiveParameterFirst() {
+		SearchParameterMap map = SearchParameterMap.newSynchronous();
+		map.add(Observation.SP_STATUS, new TokenParam("final"));
+		map.add(Observation.SP_CODE, new TokenParam(LOINC, "rare"));
+
+		myCaptureQueriesListener.clear();
+		List<String> ids = toUnqualifiedVersionlessIdValues(myObservationDao.search(map, mySrd));
+		assertEquals(2, ids.size());
+		String sql = getSearchSql();
+		assertThat(sql, containsString(Long.toString(codeHash("rare"))));
+		assertThat(sql, containsString(Long.toString(statusHash("final"))));
+		assertThat(sql.indexOf(Long.toString(codeHash("rare"))), lessThan(sql.indexOf(Long.toString(statusHash("final")))));
+		assertThat(sql, not(containsString("IN (SELECT")));
+
+		assertEquals(1, myMessages.size());
+		assertEquals("Search predicate plan for Observation: code (~3 rows, join), status (~32 rows, join)", myMessages.get(0));
+
+		// Same results as with the original ordering
+		myStorageSettings.setSelectivityBasedPredicateOrderingEnabled(false);
+		myCaptureQueriesListener.clear();
+		assertThat(toUnqualifiedVersionlessIdValues(myObservationDao.search(map, mySrd)), containsInAnyOrder(ids.toArray()));
+		sql = getSearchSql();
+		assertThat(sql.indexOf(Long.toString(codeHash("rare"))), greaterThan(sql.indexOf(Long.toString(statusHash("final")))));
+	}
+
+	@Test
+	public void testNonSelectiveTokenUsesSubselect() {
+		mySearchParamSelectivitySvc.setSubselectThresholdsForUnitTests(10, 5);
+
+		SearchParameterMap map = SearchParameterMap.newSynchronous();
+		map.add(Observation.SP_STATUS, new TokenParam("final"));
+		map.add(Observation.SP_CODE, new TokenParam(LOINC, "rare"));
+
+		myCaptureQueriesListener.clear();
+		List<String> ids = toUnqualifiedVersionlessIdValues(myObservationDao.search(map, mySrd));
+		assertEquals(2, ids.size());
+		String sql = getSearchSql();
+		assertThat(sql, containsString("IN (SELECT"));
+		assertEquals("Search predicate plan for Observation: code (~3 rows, join), status (~32 rows, subselect)", myMessages.get(0));
+
+		myStorageSettings.setSelectivityBasedPredicateOrderingEnabled(false);
+		assertThat(toUnqualifiedVersionlessIdValues(myObservationDao.search(map, mySrd)), containsInAnyOrder(ids.toArray()));
+	}
+
+	@Test
+	public void testParameterWithoutEstimateKeepsPosition() {
+		SearchParameterMap map = SearchParameterMap.newSynchronous();
+		map.add(Observation.SP_STATUS, new TokenParam("final"));
+		map.add(Observation.SP_CATEGORY, new TokenParam("foo").setModifier(TokenParamModifier.NOT));
+		map.add(Observation.SP_CODE, new TokenParam(LOINC, "rare"));
+
+		assertEquals(2, myObservationDao.search(map, mySrd).size());
+		assertThat(myMessages, not(empty()));
+		assertEquals("Search predicate plan for Observation: code (~3 rows, join), category (no estimate, join), status (~32 rows, join)", myMessages.get(0));
+	}
+
+	@Test
+	public void testSingleEstimatedParameterCountsNoRows() {
+		SearchParameterMap map = SearchParameterMap.newSynchronous();
+		map.add(Observation.SP_STATUS, new TokenParam("final"));
+		map.add(Observation.SP_CODE, new TokenParam(LOINC, "rare").setModifier(TokenParamModifier.NOT));
+
+		myCaptureQueriesListener.clear();
+		assertEquals(30, myObservationDao.search(map, mySrd).size());
+		assertEquals("Search predicate plan for Observation: status (no estimate, join), code (no estimate, join)", myMessages.get(0));
+		assertEquals(0, countRowCountQueries());
+	}
+
+	@Test
+	public void testStaleEstimateIsRefreshedInBackground() {
+		SearchParameterMap map = SearchParameterMap.newSynchronous();
+		map.add(Observation.SP_STATUS, new TokenParam("final"));
+		map.add(Observation.SP_CODE, new TokenParam(LOINC, "rare"));
+		myObservationDao.search(map, mySrd);
+		assertEquals("Search predicate plan for Observation: code (~3 rows, join), status (~32 rows, join)", myMessages.get(0));
+
+		for (int i = 0; i < 5; i++) {
+			createObservation(withStatus("final"), withObservationCode(LOINC, "rare"));
+		}
+
+		// The stale estimates are used, and recounted by a background thread instead of the searching thread
+		mySearchParamSelectivitySvc.setRefreshAfterMillisForUnitTests(0);
+		myMessages.clear();
+		myCaptureQueriesListener.clear();
+		myObservationDao.search(map, mySrd);
+		assertEquals("Search predicate plan for Observation: code (~3 rows, join), status (~32 rows, join)", myMessages.get(0));
+		assertEquals(0, countRowCountQueries());
+		await().until(() -> mySearchParamSelectivitySvc.isIdleForUnitTest());
+
+		mySearchParamSelectivitySvc.setRefreshAfterMillisForUnitTests(SearchParamSelectivitySvc.REFRESH_AFTER_MILLIS);
+		myMessages.clear();
+		myObservationDao.search(map, mySrd);
+		assertEquals("Search predicate plan for Observation: code (~8 rows, join), status (~37 rows, join)", myMessages.get(0));
+	}
+
+	private long countRowCountQueries() {
+		return myCaptureQueriesListener
+			.getSelectQueriesForCurrentThread()
+			.stream()
+			.filter(t -> t.getSql(true, false).startsWith("SELECT COUNT(*) FROM ("))
+			.count();
+	}
+
+	private String getSearchSql() {
+		return myCaptureQueriesListener
+			.getSelectQueriesForCurrentThread()
+			.stream()
+			.map(t -> t.getSql(true, false))
+			.filter(t -> t.contains("t0.RES_ID"))
+			.filter(t -> !t.startsWith("SELECT COUNT(*)"))
+			.findFirst()
+			.orElseThrow();
+	}
+
+	private static long codeHash(String theCode) {
+		return ResourceIndexedSearchParamToken.calculateHashSystemAndValue(new PartitionSettings(), RequestPartitionId.defaultPartition(), "Observation", Observation.SP_CODE, LOINC, theCode);
+	}
+
+	private static long statusHash(String theStatus) {
+		return ResourceIndexedSearchParamToken.calculateHashValue(new PartitionSettings(), RequestPartitionId.defaultPartition(), "Observation", Observation.SP_STATUS, theStatus);
+	}
+
+}
@@ -0,0 +1,154 @@
+package ca.uhn.fhir.jpa.dao.r4;
+
+import ca.uhn.fhir.jpa.api.config.JpaStorageSettings;
+import ca.uhn.fhir.jpa.search.SynchronousSearchResultCache;
+import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
+import ca.uhn.fhir.jpa.test.BaseJpaR4Test;
+import ca.uhn.fhir.rest.param.ReferenceParam;
+import ca.uhn.fhir.rest.param.TokenParam;
+import org.apache.commons.lang3.time.DateUtils;
+import org.hl7.fhir.instance.model.api.IIdType;
+import org.hl7.fhir.r4.model.Organization;
+import org.hl7.fhir.r4.model.Patient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.Date;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class FhirResourceDaoR4SearchResultCacheTest extends BaseJpaR4Test {
+
+	private static final String SYSTEM = "http://example.com/org";
+
+	@Autowired
+	private SynchronousSearchResultCache mySynchronousSearchResultCache;
+
+	@BeforeEach
+	public void beforeEnableCache() {
+		myStorageSettings.setSynchronousSearchResultCacheMaximumSize(100);
+	}
+
+	@AfterEach
+	public void afterDisableCache() {
+		mySynchronousSearchResultCache.invalidateAll();
+		mySynchronousSearchResultCache.setRemoteCheckIntervalForUnitTests(DateUtils.MILLIS_PER_MINUTE);
+		myStorageSettings.setSynchronousSearchResultCacheMaximumSize(new JpaStorageSettings().getSynchronousSearchResultCacheMaximumSize());
+	}
+
+	@Test
+	public void testRepeatedSearchUsesCache() {
+		IIdType id = createOrganization(withIdentifier(SYSTEM, "A"), withName("Org A"));
+		createOrganization(withIdentifier(SYSTEM, "B"));
+
+		assertThat(searchByIdentifier("A"), containsInAnyOrder(id.toUnqualifiedVersionless().getValue()));
+		assertEquals(1, countTokenIndexQueries());
+
+		// Second search is served from the cache but still loads the resource
+		myCaptureQueriesListener.clear();
+		List<Organization> found = myOrganizationDao.search(identifierMap("A"), mySrd).getAllResources().stream().map(t -> (Organization) t).toList();
+		assertEquals(1, found.size());
+		assertEquals("Org A", found.get(0).getName());
+		assertEquals(0, countTokenIndexQueries());
+
+		// Different values are cached separately
+		assertEquals(1, searchByIdentifier("B").size());
+		assertEquals(1, countTokenIndexQueries());
+	}
+
+	@Test
+	public void testChangeToSearchedTypeInvalidatesCache() {
+		IIdType id = createOrganization(withIdentifier(SYSTEM, "A"));
+		assertEquals(1, searchByIdentifier("A").size());
+
+		// A change to another resource type does not invalidate
+		createPatient(withFamily("Simpson"));
+		assertEquals(1, searchByIdentifier("A").size());
+		assertEquals(0, countTokenIndexQueries());
+
+		// Create
+		IIdType id2 = createOrganization(withIdentifier(SYSTEM, "A"));
+		assertThat(searchByIdentifier("A"), containsInAnyOrder(id.toUnqualifiedVersionless().getValue(), id2.toUnqualifiedVersionless().getValue()));
+		assertEquals(1, countTokenIndexQueries());
+
+		// Update
+		Organization org = new Organization();
+		org.setId(id2.toUnqualifiedVersionless());
+		org.addIdentifier().setSystem(SYSTEM).setValue("B");
+		myOrganizationDao.update(org, mySrd);
+		assertThat(searchByIdentifier("A"), containsInAnyOrder(id.toUnqualifiedVersionless().getValue()));
+
+		// Delete
+		myOrganizationDao.delete(id, mySrd);
+		assertEquals(0, searchByIdentifier("A").size());
+		assertEquals(0, searchByIdentifier("A").size());
+		assertEquals(0, countTokenIndexQueries());
+	}
+
+	@Test
+	public void testChangeOnAnotherServerInvalidatesCache() {
+		mySynchronousSearchResultCache.setRemoteCheckIntervalForUnitTests(0);
+		IIdType id = createOrganization(withIdentifier(SYSTEM, "A"));
+		assertEquals(1, searchByIdentifier("A").size());
+		assertEquals(1, searchByIdentifier("A").size());
+		assertEquals(0, countTokenIndexQueries());
+
+		// Simulate a change made on another server, which doesn't pass through this server's hooks
+		Date updated = DateUtils.addSeconds(new Date(), 1);
+		runInTransaction(() -> myEntityManager
+			.createQuery("UPDATE ResourceTable t SET t.myUpdated = :updated WHERE t.myId = :id")
+			.setParameter("updated", updated)
+			.setParameter("id", id.getIdPartAsLong())
+			.executeUpdate());
+
+		assertEquals(1, searchByIdentifier("A").size());
+		assertEquals(1, countTokenIndexQueries());
+		assertEquals(1, searchByIdentifier("A").size());
+		assertEquals(0, countTokenIndexQueries());
+	}
+
+	@Test
+	public void testChainedSearchNotCached() {
+		IIdType orgId = createOrganization(withIdentifier(SYSTEM, "A"));
+		createPatient(withOrganization(orgId));
+
+		SearchParameterMap map = SearchParameterMap.newSynchronous(Patient.SP_ORGANIZATION, new ReferenceParam("Organization", "identifier", SYSTEM + "|A"));
+		assertEquals(1, myPatientDao.search(map, mySrd).size());
+		myCaptureQueriesListener.clear();
+		assertEquals(1, myPatientDao.search(map, mySrd).size());
+		assertEquals(1, countTokenIndexQueries());
+	}
+
+	@Test
+	public void testCacheDisabled() {
+		myStorageSettings.setSynchronousSearchResultCacheMaximumSize(0);
+		createOrganization(withIdentifier(SYSTEM, "A"));
+
+		assertEquals(1, searchByIdentifier("A").size());
+		assertEquals(1, searchByIdentifier("A").size());
+		assertEquals(1, countTokenIndexQueries());
+	}
+
+	private List<String> searchByIdentifier(String theValue) {
+		myCaptureQueriesListener.clear();
+		return toUnqualifiedVersionlessIdValues(myOrganizationDao.search(identifierMap(theValue), mySrd));
+	}
+
+	private static SearchParameterMap identifierMap(String theValue) {
+		return SearchParameterMap.newSynchronous(Organization.SP_IDENTIFIER, new TokenParam(SYSTEM, theValue));
+	}
+
+	private long countTokenIndexQueries() {
+		return myCaptureQueriesListener
+			.getSelectQueriesForCurrentThread()
+			.stream()
+			.filter(t -> t.getSql(false, false).contains("HFJ_SPIDX_TOKEN"))
+			.count();
+	}
+
+}
@@ -0,0 +1,207 @@
+package ca.uhn.fhir.jpa.dao.r4;
+
+import ca.uhn.fhir.jpa.api.config.JpaStorageSettings;
+import ca.uhn.fhir.jpa.dao.data.ISearchDao;
+import ca.uhn.fhir.jpa.dao.data.ISearchResultChunkDao;
+import ca.uhn.fhir.jpa.dao.data.ISearchResultDao;
+import ca.uhn.fhir.jpa.entity.Search;
+import ca.uhn.fhir.jpa.entity.SearchResultChunk;
+import ca.uhn.fhir.jpa.model.search.SearchStatusEnum;
+import ca.uhn.fhir.jpa.search.cache.ChunkedDatabaseSearchResultCacheSvcImpl;
+import ca.uhn.fhir.jpa.search.cache.DatabaseSearchCacheSvcImpl;
+import ca.uhn.fhir.jpa.search.cache.ISearchResultCacheSvc;
+import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
+import ca.uhn.fhir.jpa.test.BaseJpaR4Test;
+import ca.uhn.fhir.rest.api.SortSpec;
+import ca.uhn.fhir.rest.api.server.IBundleProvider;
+import org.hl7.fhir.r4.model.Patient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.util.AopTestUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.apache.commons.lang3.StringUtils.leftPad;
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@ContextConfiguration(classes = FhirResourceDaoR4SearchResultChunkTest.ChunkStorageConfig.class)
+public class FhirResourceDaoR4SearchResultChunkTest extends BaseJpaR4Test {
+
+	@Autowired
+	private ISearchDao mySearchEntityDao;
+	@Autowired
+	private ISearchResultDao mySearchResultDao;
+	@Autowired
+	private ISearchResultChunkDao mySearchResultChunkDao;
+
+	@BeforeEach
+	public void beforeEnableChunkStorage() {
+		myStorageSettings.setSearchResultChunkStorageEnabled(true);
+		myStorageSettings.setSearchPreFetchThresholds(Arrays.asList(20, 50, -1));
+		ChunkedDatabaseSearchResultCacheSvcImpl.setMaximumPidsPerChunkForUnitTest(15);
+	}
+
+	@AfterEach
+	public void afterResetChunkStorage() {
+		myStorageSettings.setSearchResultChunkStorageEnabled(new JpaStorageSettings().isSearchResultChunkStorageEnabled());
+		myStorageSettings.setSearchPreFetchThresholds(new JpaStorageSettings().getSearchPreFetchThresholds());
+		myStorageSettings.setExpireSearchResultsAfterMillis(new JpaStorageSettings().getExpireSearchResultsAfterMillis());
+		myStorageSettings.setReuseCachedSearchResultsForMillis(new JpaStorageSettings().getReuseCachedSearchResultsForMillis());
+		ChunkedDatabaseSearchResultCacheSvcImpl.setMaximumPidsPerChunkForUnitTest(ChunkedDatabaseSearchResultCacheSvcImpl.DEFAULT_MAX_PIDS_PER_CHUNK);
+		DatabaseSearchCacheSvcImpl searchCacheSvc = AopTestUtils.getTargetObject(mySearchCacheSvc);
+		searchCacheSvc.setCutoffSlackForUnitTest(DatabaseSearchCacheSvcImpl.SEARCH_CLEANUP_JOB_INTERVAL_MILLIS);
+	}
+
+	@Test
+	public void testPageThroughResults() {
+		create200Patients();
+
+		IBundleProvider results = searchSortedByName();
+		String uuid = results.getUuid();
+
+		// Pages which span chunk boundaries
+		assertEquals(expectedIds(0, 10), toUnqualifiedVersionlessIdValues(results, 0, 10, true));
+		assertEquals(expectedIds(10, 35), toUnqualifiedVersionlessIdValues(results, 10, 35, false));
+		assertEquals(expectedIds(45, 60), toUnqualifiedVersionlessIdValues(results, 45, 60, false));
+		assertEquals(expectedIds(190, 200), toUnqualifiedVersionlessIdValues(results, 190, 200, false));
+		assertEquals(expectedIds(0, 200), toUnqualifiedVersionlessIdValues(myDatabaseBackedPagingProvider.retrieveResultList(null, uuid), 0, 200, false));
+		awaitSearchFinished(uuid);
+
+		runInTransaction(() -> {
+			assertEquals(0, mySearchResultDao.count());
+			Search search = mySearchEntityDao.findByUuidAndFetchIncludes(uuid).orElseThrow();
+			List<SearchResultChunk> chunks = mySearchResultChunkDao.findForSearch(search.getId());
+			assertThat(chunks.size(), greaterThan(1));
+			int order = 0;
+			for (SearchResultChunk next : chunks) {
+				assertEquals(order, next.getFirstOrder());
+				order += next.getPidCount();
+			}
+			assertEquals(200, order);
+		});
+	}
+
+	@Test
+	public void testSearchStartedWithRowStorage() {
+		myStorageSettings.setSearchResultChunkStorageEnabled(false);
+		create200Patients();
+
+		IBundleProvider results = searchSortedByName();
+		String uuid = results.getUuid();
+		assertEquals(expectedIds(0, 10), toUnqualifiedVersionlessIdValues(results, 0, 10, true));
+
+		// Enabling chunk storage part way through a search should not split its results across both tables
+		myStorageSettings.setSearchResultChunkStorageEnabled(true);
+		assertEquals(expectedIds(0, 200), toUnqualifiedVersionlessIdValues(myDatabaseBackedPagingProvider.retrieveResultList(null, uuid), 0, 200, false));
+		awaitSearchFinished(uuid);
+		assertEquals(expectedIds(150, 200), toUnqualifiedVersionlessIdValues(results, 150, 200, false));
+
+		runInTransaction(() -> {
+			assertFalse(mySearchEntityDao.findByUuidAndFetchIncludes(uuid).orElseThrow().isResultsChunked());
+			assertEquals(200, mySearchResultDao.count());
+			assertEquals(0, mySearchResultChunkDao.count());
+		});
+	}
+
+	@Test
+	public void testSearchStartedWithChunkStorage() {
+		create200Patients();
+
+		IBundleProvider results = searchSortedByName();
+		String uuid = results.getUuid();
+		assertEquals(expectedIds(0, 10), toUnqualifiedVersionlessIdValues(results, 0, 10, true));
+
+		// Disabling chunk storage part way through a search should neither hide its stored chunks nor split its results
+		myStorageSettings.setSearchResultChunkStorageEnabled(false);
+		assertEquals(expectedIds(0, 200), toUnqualifiedVersionlessIdValues(myDatabaseBackedPagingProvider.retrieveResultList(null, uuid), 0, 200, false));
+		awaitSearchFinished(uuid);
+		assertEquals(expectedIds(10, 35), toUnqualifiedVersionlessIdValues(results, 10, 35, false));
+		assertEquals(expectedIds(150, 200), toUnqualifiedVersionlessIdValues(results, 150, 200, false));
+
+		runInTransaction(() -> {
+			assertTrue(mySearchEntityDao.findByUuidAndFetchIncludes(uuid).orElseThrow().isResultsChunked());
+			assertEquals(0, mySearchResultDao.count());
+			assertThat(mySearchResultChunkDao.count(), greaterThan(0L));
+		});
+	}
+
+	@Test
+	public void testDeleteStaleSearch() throws InterruptedException {
+		create200Patients();
+
+		IBundleProvider results = searchSortedByName();
+		assertEquals(expectedIds(0, 200), toUnqualifiedVersionlessIdValues(results, 0, 200, false));
+		awaitSearchFinished(results.getUuid());
+		runInTransaction(() -> assertThat(mySearchResultChunkDao.count(), greaterThan(0L)));
+
+		DatabaseSearchCacheSvcImpl searchCacheSvc = AopTestUtils.getTargetObject(mySearchCacheSvc);
+		searchCacheSvc.setCutoffSlackForUnitTest(0);
+		Thread.sleep(20);
+		myStorageSettings.setExpireSearchResultsAfterMillis(10);
+		myStorageSettings.setReuseCachedSearchResultsForMillis(null);
+		myStaleSearchDeletingSvc.pollForStaleSearchesAndDeleteThem();
+
+		runInTransaction(() -> {
+			assertEquals(0, mySearchEntityDao.count());
+			assertEquals(0, mySearchResultChunkDao.count());
+		});
+	}
+
+	private IBundleProvider searchSortedByName() {
+		SearchParameterMap params = new SearchParameterMap();
+		params.setSort(new SortSpec(Patient.SP_NAME));
+		return myPatientDao.search(params, mySrd);
+	}
+
+	private void awaitSearchFinished(String theUuid) {
+		await().until(() -> runInTransaction(() -> mySearchEntityDao.findByUuidAndFetchIncludes(theUuid).orElseThrow().getStatus()), t -> t == SearchStatusEnum.FINISHED);
+	}
+
+	private void create200Patients() {
+		runInTransaction(() -> {
+			for (int i = 0; i < 200; i++) {
+				Patient p = new Patient();
+				p.setId("PT" + leftPad(Integer.toString(i), 5, '0'));
+				p.setActive(true);
+				p.addName().setFamily("FAM" + leftPad(Integer.toString(i), 5, '0'));
+				myPatientDao.update(p, mySrd);
+			}
+		});
+	}
+
+	private static List<String> expectedIds(int theFrom, int theTo) {
+		List<String> retVal = new ArrayList<>();
+		for (int i = theFrom; i < theTo; i++) {
+			retVal.add("Patient/PT" + leftPad(Integer.toString(i), 5, '0'));
+		}
+		return retVal;
+	}
+
+	/**
+	 * Chunk storage is only available if it is enabled when the server starts
+	 */
+	@Configuration
+	public static class ChunkStorageConfig {
+
+		@Bean
+		@Primary
+		public ISearchResultCacheSvc chunkedSearchResultCacheSvc() {
+			return new ChunkedDatabaseSearchResultCacheSvcImpl();
+		}
+
+	}
+
+}
@@ -5,6 +5,7 @@ import ca.uhn.fhir.interceptor.api.Pointcut;
 import ca.uhn.fhir.jpa.api.config.JpaStorageSettings;
 import ca.uhn.fhir.jpa.api.model.DaoMethodOutcome;
 import ca.uhn.fhir.jpa.dao.BaseHapiFhirDao;
+import ca.uhn.fhir.jpa.dao.TransactionProcessor;
 import ca.uhn.fhir.jpa.model.entity.NormalizedQuantitySearchLevel;
 import ca.uhn.fhir.jpa.model.entity.ResourceEncodingEnum;
 import ca.uhn.fhir.jpa.model.entity.ResourceHistoryTable;
@@ -15,6 +16,7 @@ import ca.uhn.fhir.jpa.model.entity.TagTypeEnum;
 import ca.uhn.fhir.jpa.provider.r4.SystemProviderR4Test;
 import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
 import ca.uhn.fhir.model.primitive.IdDt;
+import ca.uhn.fhir.parser.IBundleEntryIterator;
 import ca.uhn.fhir.rest.api.Constants;
 import ca.uhn.fhir.rest.api.RestOperationTypeEnum;
 import ca.uhn.fhir.rest.api.server.IBundleProvider;
@@ -83,6 +85,7 @@ import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.CsvSource;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.transaction.TransactionDefinition;
 import org.springframework.transaction.TransactionStatus;
@@ -93,6 +96,7 @@ import org.springframework.transaction.support.TransactionTemplate;
 import javax.annotation.Nonnull;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.StringReader;
 import java.io.UnsupportedEncodingException;
 import java.math.BigDecimal;
 import java.nio.charset.StandardCharsets;
@@ -135,6 +139,9 @@ public class FhirSystemDaoR4Test extends BaseJpaR4SystemTest {
 	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(FhirSystemDaoR4Test.class);
 	private static final String TEST_IDENTIFIER_SYSTEM = "http://some-system.com";
 
+	@Autowired
+	private TransactionProcessor myTransactionProcessor;
+
 	@AfterEach
 	public void after() {
 		JpaStorageSettings defaults = new JpaStorageSettings();
@@ -415,6 +422,52 @@ public class FhirSystemDaoR4Test extends BaseJpaR4SystemTest {
 		assertThat(oo.getIssue().get(0).getDiagnostics(), containsString("Unknown search parameter"));
 	}
 
+	@Test
+	public void testBatchIncrementally() {
+		Bundle request = new Bundle();
+		request.setType(BundleType.BATCH);
+		for (int i = 0; i < 3; i++) {
+			Patient p = new Patient();
+			p.addIdentifier().setSystem("urn:system").setValue("FOO" + i);
+			request
+				.addEntry()
+				.setResource(p)
+				.getRequest()
+				.setMethod(HTTPVerb.POST)
+				.setUrl("Patient");
+		}
+		request
+			.addEntry()
+			.getRequest()
+			.setMethod(HTTPVerb.GET)
+			.setUrl("Patient/BABABABA");
+		String encoded = myFhirContext.newJsonParser().encodeResourceToString(request);
+
+		IBundleEntryIterator<Bundle> entries = myFhirContext.newJsonParser().parseBundleEntries(Bundle.class, new StringReader(encoded));
+		Bundle response = (Bundle) myTransactionProcessor.batchIncrementally(mySrd, entries);
+
+		assertEquals(4, response.getEntry().size());
+		for (int i = 0; i < 3; i++) {
+			assertEquals("201 Created", response.getEntry().get(i).getResponse().getStatus());
+			assertThat(response.getEntry().get(i).getResponse().getLocation(), matchesPattern(".*Patient/[0-9]+.*"));
+		}
+		assertEquals("404 Not Found", response.getEntry().get(3).getResponse().getStatus());
+		assertEquals(3, myPatientDao.search(SearchParameterMap.newSynchronous()).size());
+	}
+
+	@Test
+	public void testBatchIncrementally_NotBatch() {
+		String encoded = "{\"resourceType\": \"Bundle\", \"entry\": [ ], \"type\": \"batch\"}";
+
+		IBundleEntryIterator<Bundle> entries = myFhirContext.newJsonParser().parseBundleEntries(Bundle.class, new StringReader(encoded));
+		try {
+			myTransactionProcessor.batchIncrementally(mySrd, entries);
+			fail();
+		} catch (InvalidRequestException e) {
+			assertEquals(Msg.code(2381) + "Unable to process incremental batch where incoming Bundle.type = null (Bundle.type must be batch and must precede Bundle.entry)", e.getMessage());
+		}
+	}
+
 	@Test
 	public void testCircularCreateAndDelete() {
 		Encounter enc = new Encounter();
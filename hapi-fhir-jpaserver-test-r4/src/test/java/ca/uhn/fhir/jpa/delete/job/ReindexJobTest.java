@@ -13,6 +13,7 @@ import ca.uhn.fhir.jpa.api.config.JpaStorageSettings;
 import ca.uhn.fhir.jpa.api.dao.ReindexParameters;
 import ca.uhn.fhir.jpa.api.model.DaoMethodOutcome;
 import ca.uhn.fhir.jpa.batch.models.Batch2JobStartResponse;
+import ca.uhn.fhir.jpa.model.entity.ResourceEncodingEnum;
 import ca.uhn.fhir.jpa.model.entity.ResourceHistoryTable;
 import ca.uhn.fhir.jpa.model.entity.ResourceTable;
 import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
@@ -41,6 +42,7 @@ import static org.hamcrest.Matchers.blankOrNullString;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.hasSize;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -68,6 +70,7 @@ public class ReindexJobTest extends BaseJpaR4Test {
 	public void after() {
 		myInterceptorRegistry.unregisterAllAnonymousInterceptors();
 		myStorageSettings.setInlineResourceTextBelowSize(new JpaStorageSettings().getInlineResourceTextBelowSize());
+		myStorageSettings.setResourceEncoding(new JpaStorageSettings().getResourceEncoding());
 		myStorageSettings.setStoreMetaSourceInformation(new JpaStorageSettings().getStoreMetaSourceInformation());
 		myStorageSettings.setPreserveRequestIdInResourceBody(new JpaStorageSettings().isPreserveRequestIdInResourceBody());
 	}
@@ -175,6 +178,68 @@ public class ReindexJobTest extends BaseJpaR4Test {
 
 	}
 
+	@Test
+	public void testOptimizeStorage_AllVersions_ReEncode() {
+		// Setup
+		IIdType patientId = createPatient(withActiveTrue());
+		for (int i = 0; i < 10; i++) {
+			Patient p = new Patient();
+			p.setId(patientId.toUnqualifiedVersionless());
+			p.setActive(true);
+			p.addIdentifier().setValue(String.valueOf(i));
+			myPatientDao.update(p, mySrd);
+		}
+		for (int i = 0; i < 9; i++) {
+			createPatient(withActiveTrue());
+		}
+
+		runInTransaction(()->{
+			assertEquals(20, myResourceHistoryTableDao.count());
+			for (ResourceHistoryTable history : myResourceHistoryTableDao.findAll()) {
+				assertEquals(ResourceEncodingEnum.JSONC, history.getEncoding());
+			}
+		});
+
+		myStorageSettings.setResourceEncoding(ResourceEncodingEnum.BJSON);
+
+		// execute
+		JobInstanceStartRequest startRequest = new JobInstanceStartRequest();
+		startRequest.setJobDefinitionId(ReindexAppCtx.JOB_REINDEX);
+		startRequest.setParameters(
+			new ReindexJobParameters()
+				.setOptimizeStorage(ReindexParameters.OptimizeStorageModeEnum.ALL_VERSIONS)
+				.setReindexSearchParameters(ReindexParameters.ReindexSearchParametersEnum.NONE)
+		);
+		Batch2JobStartResponse startResponse = myJobCoordinator.startInstance(startRequest);
+		myBatch2JobHelper.awaitJobCompletion(startResponse);
+
+		// validate
+		runInTransaction(()->{
+			assertEquals(20, myResourceHistoryTableDao.count());
+			for (ResourceHistoryTable history : myResourceHistoryTableDao.findAll()) {
+				assertEquals(ResourceEncodingEnum.BJSON, history.getEncoding());
+				assertNull(history.getResourceTextVc());
+				assertNotNull(history.getResource());
+			}
+		});
+		Patient patient = myPatientDao.read(patientId, mySrd);
+		assertTrue(patient.getActive());
+		assertEquals("9", patient.getIdentifierFirstRep().getValue());
+		patient = myPatientDao.read(patientId.withVersion("2"), mySrd);
+		assertEquals("0", patient.getIdentifierFirstRep().getValue());
+		assertEquals(10, myPatientDao.search(SearchParameterMap.newSynchronous(), mySrd).size());
+
+		// New versions are also stored using the new encoding
+		patient.setId(patientId.toUnqualifiedVersionless());
+		patient.setActive(false);
+		myPatientDao.update(patient, mySrd);
+		runInTransaction(()->{
+			ResourceHistoryTable history = myResourceHistoryTableDao.findForIdAndVersionAndFetchProvenance(patientId.getIdPartAsLong(), 12);
+			assertEquals(ResourceEncodingEnum.BJSON, history.getEncoding());
+		});
+		assertFalse(myPatientDao.read(patientId, mySrd).getActive());
+	}
+
 	@Test
 	public void testOptimizeStorage_AllVersions_CopyProvenanceEntityData() {
 		// Setup
@@ -0,0 +1,179 @@
+package ca.uhn.fhir.jpa.provider.r4;
+
+import ca.uhn.fhir.interceptor.api.Hook;
+import ca.uhn.fhir.interceptor.api.Pointcut;
+import ca.uhn.fhir.jpa.api.config.JpaStorageSettings;
+import ca.uhn.fhir.jpa.dao.GZipUtil;
+import ca.uhn.fhir.jpa.model.entity.ResourceHistoryTable;
+import ca.uhn.fhir.jpa.provider.BaseResourceProviderR4Test;
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.api.RestOperationTypeEnum;
+import ca.uhn.fhir.rest.server.servlet.ServletRequestDetails;
+import ca.uhn.fhir.rest.server.util.ResourceBodyPassthroughUtil;
+import org.apache.commons.io.IOUtils;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.hl7.fhir.r4.model.IdType;
+import org.hl7.fhir.r4.model.Patient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.not;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ResourceProviderResourceBodyPassthroughR4Test extends BaseResourceProviderR4Test {
+
+	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(ResourceProviderResourceBodyPassthroughR4Test.class);
+
+	@BeforeEach
+	public void beforeEnablePassthrough() {
+		myStorageSettings.setResourceBodyPassthroughEnabled(true);
+	}
+
+	@Override
+	@AfterEach
+	public void after() throws Exception {
+		super.after();
+		myStorageSettings.setResourceBodyPassthroughEnabled(new JpaStorageSettings().isResourceBodyPassthroughEnabled());
+		myServer.getRestfulServer().getInterceptorService().unregisterAllInterceptors();
+	}
+
+	@Test
+	public void testRead_SameAsEncodedResource() throws IOException {
+		Patient patient = new Patient();
+		patient.getMeta().addTag("http://tag", "1", null);
+		patient.getMeta().addProfile("http://profile");
+		patient.getMeta().setSource("http://source");
+		patient.setActive(true);
+		patient.addName().setFamily("Simpson").addGiven("Homer");
+		patient.addIdentifier().setSystem("http://foo").setValue("bar");
+		String id = myPatientDao.create(patient, mySrd).getId().toUnqualifiedVersionless().getValue();
+
+		String passthrough = read(id, "");
+
+		myStorageSettings.setResourceBodyPassthroughEnabled(false);
+		String parsed = read(id, "");
+
+		assertEquals(parsed, passthrough);
+		assertThat(passthrough, containsString("\"meta\":{\"versionId\":\"1\""));
+		assertThat(passthrough, containsString("\"family\":\"Simpson\""));
+	}
+
+	@Test
+	public void testRead_StoredBodyIsNotReparsed() throws IOException {
+		Long id = createPatientWithUnknownElementInStoredBody();
+
+		// The tolerant parser drops unknown elements, so seeing it means the body was passed through
+		assertThat(read("Patient/" + id, ""), containsString("\"unknownElement\":\"foo\""));
+		assertThat(read("Patient/" + id + "/_history/1", ""), containsString("\"unknownElement\":\"foo\""));
+
+		// These all require the resource to be parsed
+		assertThat(read("Patient/" + id, "?_pretty=true"), not(containsString("unknownElement")));
+		assertThat(read("Patient/" + id, "?_summary=true"), not(containsString("unknownElement")));
+		assertThat(read("Patient/" + id, "?_elements=name"), not(containsString("unknownElement")));
+		assertThat(read("Patient/" + id, "?_format=xml"), not(containsString("unknownElement")));
+		assertThat(read("Patient/" + id, "?_format=xml"), containsString("<family value=\"Simpson\"/>"));
+
+		myStorageSettings.setResourceBodyPassthroughEnabled(false);
+		assertThat(read("Patient/" + id, ""), not(containsString("unknownElement")));
+	}
+
+	@Test
+	public void testRead_OutgoingResponseHookDisablesPassthrough() throws IOException {
+		Long id = createPatientWithUnknownElementInStoredBody();
+
+		myServer.getRestfulServer().getInterceptorService().registerInterceptor(new Object() {
+			@Hook(Pointcut.SERVER_OUTGOING_RESPONSE)
+			public void outgoingResponse() {
+				// nothing
+			}
+		});
+
+		assertThat(read("Patient/" + id, ""), not(containsString("unknownElement")));
+	}
+
+	@Test
+	public void testDaoRead_NotFromReadMethod_ReturnsFullResource() {
+		Patient patient = new Patient();
+		patient.setActive(true);
+		patient.addName().setFamily("Simpson");
+		Long id = myPatientDao.create(patient, mySrd).getId().getIdPartAsLong();
+
+		// Looks like a plain JSON read, but the DAO is called from somewhere other than the resource provider read
+		MockHttpServletRequest servletRequest = new MockHttpServletRequest();
+		servletRequest.addHeader(Constants.HEADER_ACCEPT, Constants.CT_FHIR_JSON_NEW);
+		ServletRequestDetails requestDetails = new ServletRequestDetails();
+		requestDetails.setServer(myServer.getRestfulServer());
+		requestDetails.setServletRequest(servletRequest);
+		requestDetails.setRestOperationType(RestOperationTypeEnum.READ);
+		requestDetails.setResourceName("Patient");
+		assertTrue(ResourceBodyPassthroughUtil.isPassthroughPossible(requestDetails));
+
+		Patient actual = myPatientDao.read(new IdType("Patient/" + id), requestDetails);
+		assertNull(ResourceBodyPassthroughUtil.getPassthroughBody(actual));
+		assertTrue(actual.getActive());
+		assertEquals("Simpson", actual.getNameFirstRep().getFamily());
+		assertEquals("1", actual.getMeta().getVersionId());
+	}
+
+	@Test
+	public void testDaoReadAllowingBodyPassthrough() {
+		Patient patient = new Patient();
+		patient.setActive(true);
+		Long id = myPatientDao.create(patient, mySrd).getId().getIdPartAsLong();
+
+		MockHttpServletRequest servletRequest = new MockHttpServletRequest();
+		servletRequest.addHeader(Constants.HEADER_ACCEPT, Constants.CT_FHIR_JSON_NEW);
+		ServletRequestDetails requestDetails = new ServletRequestDetails();
+		requestDetails.setServer(myServer.getRestfulServer());
+		requestDetails.setServletRequest(servletRequest);
+		requestDetails.setRestOperationType(RestOperationTypeEnum.READ);
+		requestDetails.setResourceName("Patient");
+
+		Patient actual = myPatientDao.readAllowingBodyPassthrough(new IdType("Patient/" + id), requestDetails);
+		assertThat(ResourceBodyPassthroughUtil.getPassthroughBody(actual), containsString("\"active\":true"));
+		assertEquals("1", actual.getMeta().getVersionId());
+
+		// Reading the same ID again without asking for passthrough returns the full resource
+		actual = myPatientDao.read(new IdType("Patient/" + id), requestDetails);
+		assertNull(ResourceBodyPassthroughUtil.getPassthroughBody(actual));
+		assertTrue(actual.getActive());
+	}
+
+	private Long createPatientWithUnknownElementInStoredBody() {
+		Patient patient = new Patient();
+		patient.setActive(true);
+		patient.addName().setFamily("Simpson");
+		Long id = myPatientDao.create(patient, mySrd).getId().getIdPartAsLong();
+
+		runInTransaction(() -> {
+			ResourceHistoryTable resVer = myResourceHistoryTableDao.findForIdAndVersionAndFetchProvenance(id, 1);
+			String resourceText = GZipUtil.decompress(resVer.getResource());
+			resourceText = resourceText.replace("\"active\":true", "\"active\":true,\"unknownElement\":\"foo\"");
+			resVer.setResource(GZipUtil.compress(resourceText));
+			myResourceHistoryTableDao.save(resVer);
+		});
+		return id;
+	}
+
+	private String read(String theId, String theQueryString) throws IOException {
+		HttpGet httpGet = new HttpGet(myServerBase + "/" + theId + theQueryString);
+		httpGet.addHeader(Constants.HEADER_ACCEPT, Constants.CT_FHIR_JSON_NEW);
+		try (CloseableHttpResponse status = ourHttpClient.execute(httpGet)) {
+			assertEquals(200, status.getStatusLine().getStatusCode());
+			String responseContent = IOUtils.toString(status.getEntity().getContent(), StandardCharsets.UTF_8);
+			ourLog.info("Response content: {}", responseContent);
+			return responseContent;
+		}
+	}
+
+}
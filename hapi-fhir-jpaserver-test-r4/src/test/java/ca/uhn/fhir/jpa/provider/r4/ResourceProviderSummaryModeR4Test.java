@@ -3,10 +3,14 @@ package ca.uhn.fhir.jpa.provider.r4;
 import ca.uhn.fhir.jpa.api.config.JpaStorageSettings;
 import ca.uhn.fhir.jpa.provider.BaseResourceProviderR4Test;
 import ca.uhn.fhir.jpa.search.SearchCoordinatorSvcImpl;
+import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
 import ca.uhn.fhir.jpa.util.QueryParameterUtils;
 import ca.uhn.fhir.rest.api.SearchTotalModeEnum;
 import ca.uhn.fhir.rest.api.SummaryEnum;
+import ca.uhn.fhir.rest.api.server.IBundleProvider;
 import ca.uhn.fhir.rest.gclient.StringClientParam;
+import ca.uhn.fhir.rest.param.TokenParam;
+import ca.uhn.fhir.util.HapiExtensions;
 import com.google.common.collect.Lists;
 import org.hl7.fhir.r4.model.Bundle;
 import org.hl7.fhir.r4.model.Narrative;
@@ -17,6 +21,10 @@ import org.junit.jupiter.api.Test;
 import org.springframework.test.util.AopTestUtils;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @SuppressWarnings("Duplicates")
 public class ResourceProviderSummaryModeR4Test extends BaseResourceProviderR4Test {
@@ -147,6 +155,91 @@ public class ResourceProviderSummaryModeR4Test extends BaseResourceProviderR4Tes
 		assertEquals(10, outcome.getEntry().size());
 	}
 
+	/**
+	 * Estimated total - Should include an estimate of the total marked as such,
+	 * without affecting paging
+	 */
+	@Test
+	public void testSearchWithTotalEstimated() {
+		Bundle outcome = myClient
+			.search()
+			.forResource(Patient.class)
+			.where(Patient.ACTIVE.exactly().code("true"))
+			.totalMode(SearchTotalModeEnum.ESTIMATED)
+			.returnBundle(Bundle.class)
+			.execute();
+
+		assertEquals(new Integer(104), outcome.getTotalElement().getValue());
+		assertEquals("true", outcome.getTotalElement().getExtensionByUrl(HapiExtensions.EXT_BUNDLE_TOTAL_ESTIMATED).getValueAsPrimitive().getValueAsString());
+		assertEquals(10, outcome.getEntry().size());
+		assertNotNull(outcome.getLink(Bundle.LINK_NEXT));
+	}
+
+	/**
+	 * Estimated total via config
+	 */
+	@Test
+	public void testSearchWithTotalEstimatedSpecifiedAsDefault() {
+		myStorageSettings.setDefaultTotalMode(SearchTotalModeEnum.ESTIMATED);
+
+		Bundle outcome = myClient
+			.search()
+			.forResource(Patient.class)
+			.where(Patient.ACTIVE.exactly().code("true"))
+			.returnBundle(Bundle.class)
+			.execute();
+
+		assertEquals(new Integer(104), outcome.getTotalElement().getValue());
+		assertTrue(outcome.getTotalElement().hasExtension(HapiExtensions.EXT_BUNDLE_TOTAL_ESTIMATED));
+		assertEquals(10, outcome.getEntry().size());
+	}
+
+	/**
+	 * Estimated total for an offset search, which is performed synchronously
+	 */
+	@Test
+	public void testOffsetSearchWithTotalEstimated() {
+		SearchParameterMap map = SearchParameterMap.newSynchronous(Patient.SP_ACTIVE, new TokenParam("true"));
+		map.setOffset(0);
+		map.setCount(10);
+		map.setSearchTotalMode(SearchTotalModeEnum.ESTIMATED);
+
+		IBundleProvider outcome = myPatientDao.search(map, mySrd);
+		assertNull(outcome.size());
+		assertEquals(104, outcome.getEstimatedSize());
+		assertEquals(10, outcome.getResources(0, 10).size());
+
+		// Last page, so the actual size is known
+		map.setCount(200);
+		outcome = myPatientDao.search(map, mySrd);
+		assertEquals(104, outcome.size());
+		assertNull(outcome.getEstimatedSize());
+	}
+
+	/**
+	 * Estimated total for a resource type which isn't in the cached resource counts -
+	 * Nothing is known about the search, so there is no estimate
+	 */
+	@Test
+	public void testOffsetSearchWithTotalEstimatedForUncountedType() {
+		myResourceCountsCache.clear();
+		myResourceCountsCache.update();
+		assertFalse(myResourceCountsCache.get().containsKey("Observation"));
+		for (int i = 0; i < 15; i++) {
+			createObservation(withStatus("final"));
+		}
+
+		SearchParameterMap map = SearchParameterMap.newSynchronous();
+		map.setOffset(0);
+		map.setCount(10);
+		map.setSearchTotalMode(SearchTotalModeEnum.ESTIMATED);
+
+		IBundleProvider outcome = myObservationDao.search(map, mySrd);
+		assertEquals(10, outcome.getResources(0, 10).size());
+		assertNull(outcome.size());
+		assertNull(outcome.getEstimatedSize());
+	}
+
 	/**
 	 * No summary mode - Should return the first page of results but not
 	 * have the total available yet
@@ -0,0 +1,103 @@
+package ca.uhn.fhir.jpa.provider.r4;
+
+import ca.uhn.fhir.jpa.model.util.JpaConstants;
+import ca.uhn.fhir.jpa.provider.BaseResourceProviderR4Test;
+import ca.uhn.fhir.jpa.provider.SearchExplainProvider;
+import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
+import ca.uhn.fhir.util.ParametersUtil;
+import org.hl7.fhir.instance.model.api.IIdType;
+import org.hl7.fhir.r4.model.Parameters;
+import org.hl7.fhir.r4.model.Patient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.not;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class SearchExplainProviderR4Test extends BaseResourceProviderR4Test {
+
+	@Autowired
+	private SearchExplainProvider mySearchExplainProvider;
+
+	@BeforeEach
+	public void beforeRegisterProvider() {
+		myServer.getRestfulServer().registerProvider(mySearchExplainProvider);
+	}
+
+	@AfterEach
+	public void afterUnregisterProvider() {
+		myServer.getRestfulServer().unregisterProvider(mySearchExplainProvider);
+	}
+
+	@Test
+	public void testExplain() {
+		IIdType orgId = createOrganization(withName("Springfield General"));
+		createPatient(withFamily("Simpson"), withOrganization(orgId));
+		createPatient(withFamily("Simpson"), withOrganization(orgId));
+		createPatient(withFamily("Flanders"));
+
+		Parameters response = myClient
+			.fetchResourceFromUrl(Parameters.class, myServerBase + "/Patient/" + JpaConstants.OPERATION_EXPLAIN + "?family=simpson&_include=Patient:organization&_count=10");
+
+		assertEquals("Patient", getValue(response, "resourceType"));
+		assertThat(getValue(response, "query"), containsString("family=simpson"));
+		String sql = getValue(response, "sql");
+		assertNotNull(sql);
+		assertThat(sql, containsString("HFJ_SPIDX_STRING"));
+		assertThat(sql, containsString("'SIMPSON%'"));
+		List<String> plan = ParametersUtil.getNamedParameterValuesAsString(myFhirContext, response, "plan");
+		assertThat(plan, not(empty()));
+		assertEquals("2", getValue(response, "matchCount"));
+		assertEquals("1", getValue(response, "includeCount"));
+		assertThat(Integer.parseInt(getValue(response, "serializedBytes")), greaterThan(0));
+		for (String next : List.of("pidQueryMillis", "includeLoadMillis", "resourceFetchMillis", "parseMillis", "serializationMillis", "totalMillis")) {
+			assertNotNull(getValue(response, next), next);
+		}
+	}
+
+	@Test
+	public void testExplainCountLimitedToMaximumPageSize() {
+		createPatient(withFamily("Simpson"));
+		createPatient(withFamily("Simpson"));
+		createPatient(withFamily("Simpson"));
+
+		Integer maximumPageSize = myServer.getRestfulServer().getMaximumPageSize();
+		myServer.getRestfulServer().setMaximumPageSize(2);
+		try {
+			Parameters response = myClient
+				.fetchResourceFromUrl(Parameters.class, myServerBase + "/Patient/" + JpaConstants.OPERATION_EXPLAIN + "?family=simpson&_count=1000000");
+			assertEquals("2", getValue(response, "matchCount"));
+		} finally {
+			myServer.getRestfulServer().setMaximumPageSize(maximumPageSize);
+		}
+	}
+
+	@Test
+	public void testExplainNotAllowedOnInstance() {
+		IIdType id = createPatient(withFamily("Simpson"));
+
+		InvalidRequestException e = assertThrows(InvalidRequestException.class, () -> myClient
+			.operation()
+			.onInstance(id)
+			.named(JpaConstants.OPERATION_EXPLAIN)
+			.withNoParameters(Parameters.class)
+			.useHttpGet()
+			.execute());
+		assertThat(e.getMessage(), containsString("can only be invoked at the type level"));
+	}
+
+	private String getValue(Parameters theResponse, String theName) {
+		return ParametersUtil.getNamedParameterValueAsString(myFhirContext, theResponse, theName).orElse(null);
+	}
+
+}
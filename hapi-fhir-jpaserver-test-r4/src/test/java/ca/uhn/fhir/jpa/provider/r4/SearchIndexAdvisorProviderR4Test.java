@@ -0,0 +1,137 @@
+package ca.uhn.fhir.jpa.provider.r4;
+
+import ca.uhn.fhir.jpa.api.config.JpaStorageSettings;
+import ca.uhn.fhir.jpa.model.util.JpaConstants;
+import ca.uhn.fhir.jpa.provider.BaseResourceProviderR4Test;
+import ca.uhn.fhir.jpa.provider.SearchIndexAdvisorProvider;
+import ca.uhn.fhir.jpa.search.SearchWorkloadCollector;
+import ca.uhn.fhir.jpa.search.SearchWorkloadCollector.SearchWorkloadEntry;
+import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
+import ca.uhn.fhir.rest.param.DateParam;
+import ca.uhn.fhir.util.HapiExtensions;
+import ca.uhn.fhir.util.ParametersUtil;
+import org.hl7.fhir.r4.model.BooleanType;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Enumerations;
+import org.hl7.fhir.r4.model.IdType;
+import org.hl7.fhir.r4.model.IntegerType;
+import org.hl7.fhir.r4.model.Parameters;
+import org.hl7.fhir.r4.model.Patient;
+import org.hl7.fhir.r4.model.SearchParameter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class SearchIndexAdvisorProviderR4Test extends BaseResourceProviderR4Test {
+
+	@Autowired
+	private SearchIndexAdvisorProvider mySearchIndexAdvisorProvider;
+	@Autowired
+	private SearchWorkloadCollector mySearchWorkloadCollector;
+
+	@BeforeEach
+	public void beforeRegisterProvider() {
+		myServer.getRestfulServer().registerProvider(mySearchIndexAdvisorProvider);
+		myStorageSettings.setSearchWorkloadCollectionEnabled(true);
+		mySearchWorkloadCollector.clear();
+	}
+
+	@AfterEach
+	public void afterUnregisterProvider() {
+		myServer.getRestfulServer().unregisterProvider(mySearchIndexAdvisorProvider);
+		myStorageSettings.setSearchWorkloadCollectionEnabled(new JpaStorageSettings().isSearchWorkloadCollectionEnabled());
+		mySearchWorkloadCollector.clear();
+	}
+
+	@Test
+	public void testCollectWorkload() {
+		createPatient(withFamily("Simpson"), withGender("male"));
+
+		for (int i = 0; i < 3; i++) {
+			myClient.search().forResource("Patient").where(Patient.GENDER.exactly().code("male")).and(Patient.FAMILY.matches().value("Simpson")).returnBundle(Bundle.class).execute();
+		}
+		myClient.search().forResource("Patient").where(Patient.FAMILY.matches().values("Simpson", "Flanders")).and(Patient.GENDER.exactly().code("male")).returnBundle(Bundle.class).execute();
+		myPatientDao.search(SearchParameterMap.newSynchronous(Patient.SP_BIRTHDATE, new DateParam("2020")), mySrd);
+		myPatientDao.search(SearchParameterMap.newSynchronous(), mySrd);
+
+		List<SearchWorkloadEntry> entries = mySearchWorkloadCollector.getEntries();
+		assertEquals(2, entries.size());
+		SearchWorkloadEntry entry = entries.stream().filter(t -> t.getParamNames().size() == 2).findFirst().orElseThrow();
+		assertEquals("Patient", entry.getResourceType());
+		assertThat(entry.getParamNames(), contains("family", "gender"));
+		assertEquals(4, entry.getSearchCount());
+		assertEquals(3, entry.getComboEligibleSearchCount());
+
+		// Collection disabled
+		myStorageSettings.setSearchWorkloadCollectionEnabled(false);
+		myClient.search().forResource("Patient").where(Patient.GENDER.exactly().code("male")).and(Patient.FAMILY.matches().value("Simpson")).returnBundle(Bundle.class).execute();
+		assertEquals(4, mySearchWorkloadCollector.getEntries().stream().filter(t -> t.getParamNames().size() == 2).findFirst().orElseThrow().getSearchCount());
+	}
+
+	@Test
+	public void testRecommendAndCreate() {
+		createPatient(withFamily("Simpson"), withGender("male"));
+		createPatient(withFamily("Flanders"), withGender("male"));
+
+		for (int i = 0; i < 5; i++) {
+			myClient.search().forResource("Patient").where(Patient.GENDER.exactly().code("male")).and(Patient.FAMILY.matches().value("Simpson")).returnBundle(Bundle.class).execute();
+		}
+
+		// Below the minimum search count
+		Parameters response = invokeAdvisor(10, false);
+		assertThat(response.getParameter(), empty());
+
+		response = invokeAdvisor(5, false);
+		assertEquals(1, response.getParameter().size());
+		Parameters.ParametersParameterComponent candidate = response.getParameterFirstRep();
+		assertEquals("Patient", ParametersUtil.getParameterPartValueAsString(myFhirContext, candidate, "resourceType"));
+		assertThat(getParts(candidate, "parameter"), contains("family", "gender"));
+		assertEquals("5", ParametersUtil.getParameterPartValueAsString(myFhirContext, candidate, "searchCount"));
+		assertNull(ParametersUtil.getParameterPartValueAsString(myFhirContext, candidate, "searchParameter"));
+
+		// Create the combo search parameter
+		response = invokeAdvisor(5, true);
+		String searchParameterId = ParametersUtil.getParameterPartValueAsString(myFhirContext, response.getParameterFirstRep(), "searchParameter");
+		SearchParameter searchParameter = mySearchParameterDao.read(new IdType(searchParameterId), mySrd);
+		assertEquals(Enumerations.SearchParamType.COMPOSITE, searchParameter.getType());
+		assertEquals(Enumerations.PublicationStatus.ACTIVE, searchParameter.getStatus());
+		assertEquals("Patient", searchParameter.getBase().get(0).getValue());
+		assertEquals(2, searchParameter.getComponent().size());
+		assertEquals("false", searchParameter.getExtensionByUrl(HapiExtensions.EXT_SP_UNIQUE).getValueAsPrimitive().getValueAsString());
+
+		// Once the combo exists it is no longer recommended
+		mySearchParamRegistry.forceRefresh();
+		response = invokeAdvisor(5, false);
+		assertThat(response.getParameter(), empty());
+	}
+
+	private Parameters invokeAdvisor(int theMinimumSearchCount, boolean theCreate) {
+		return myClient
+			.operation()
+			.onServer()
+			.named(JpaConstants.OPERATION_SEARCH_INDEX_ADVISOR)
+			.withParameter(Parameters.class, "minimumSearchCount", new IntegerType(theMinimumSearchCount))
+			.andParameter("create", new BooleanType(theCreate))
+			.execute();
+	}
+
+	private List<String> getParts(Parameters.ParametersParameterComponent theCandidate, String theName) {
+		return theCandidate
+			.getPart()
+			.stream()
+			.filter(t -> t.getName().equals(theName))
+			.map(t -> t.getValue().primitiveValue())
+			.collect(Collectors.toList());
+	}
+
+}
@@ -9,6 +9,7 @@ import ca.uhn.fhir.interceptor.api.IAnonymousInterceptor;
 import ca.uhn.fhir.interceptor.api.IPointcut;
 import ca.uhn.fhir.interceptor.api.Pointcut;
 import ca.uhn.fhir.jpa.api.config.JpaStorageSettings;
+import ca.uhn.fhir.jpa.dao.BaseTransactionProcessor;
 import ca.uhn.fhir.jpa.rp.r4.BinaryResourceProvider;
 import ca.uhn.fhir.jpa.rp.r4.DiagnosticReportResourceProvider;
 import ca.uhn.fhir.jpa.rp.r4.LocationResourceProvider;
@@ -579,6 +580,51 @@ public class SystemProviderR4Test extends BaseJpaR4Test {
 		}
 	}
 
+	@Test
+	public void testBatchWithIncrementalBundleEntryParsing() {
+		ourRestServer.setIncrementalBundleEntryParsing(true);
+		try {
+			// More entries than are processed together, so that several groups are processed
+			int entryCount = BaseTransactionProcessor.INCREMENTAL_BATCH_CHUNK_SIZE * 2 + 50;
+			Bundle input = new Bundle();
+			input.setType(Bundle.BundleType.BATCH);
+			for (int i = 0; i < entryCount; i++) {
+				if (i == 150) {
+					input.addEntry().getRequest().setMethod(Bundle.HTTPVerb.GET).setUrl("Patient/DOES-NOT-EXIST");
+				} else {
+					Patient patient = new Patient();
+					patient.addIdentifier().setSystem("sys").setValue("p" + i);
+					input.addEntry().setResource(patient).getRequest().setMethod(Bundle.HTTPVerb.POST).setUrl("Patient");
+				}
+			}
+
+			Bundle output = myClient.transaction().withBundle(input).encodedJson().execute();
+
+			assertEquals(entryCount, output.getEntry().size());
+			for (int i = 0; i < entryCount; i++) {
+				String status = output.getEntry().get(i).getResponse().getStatus();
+				if (i == 150) {
+					assertThat(status, startsWith("404"));
+				} else {
+					assertThat(status, startsWith("201"));
+					Patient patient = myPatientDao.read(new IdType(output.getEntry().get(i).getResponse().getLocation()), mySrd);
+					assertEquals("p" + i, patient.getIdentifierFirstRep().getValue());
+				}
+			}
+
+			// Transactions need the complete Bundle, and are processed as usual
+			BundleBuilder bb = new BundleBuilder(myFhirContext);
+			Patient patient = new Patient();
+			patient.setActive(true);
+			bb.addTransactionCreateEntry(patient);
+			output = myClient.transaction().withBundle((Bundle) bb.getBundle()).encodedJson().execute();
+			assertEquals(Bundle.BundleType.TRANSACTIONRESPONSE, output.getType());
+			assertThat(output.getEntry().get(0).getResponse().getStatus(), startsWith("201"));
+		} finally {
+			ourRestServer.setIncrementalBundleEntryParsing(new RestfulServer().isIncrementalBundleEntryParsing());
+		}
+	}
+
 
 	@Test
 	public void testTransactionWithModifyingInterceptor() {
@@ -9,11 +9,14 @@ import ca.uhn.fhir.jpa.model.entity.ResourceIndexedSearchParamString;
 import ca.uhn.fhir.jpa.model.util.UcumServiceUtil;
 import ca.uhn.fhir.jpa.searchparam.MatchUrlService;
 import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
+import ca.uhn.fhir.jpa.searchparam.extractor.ResourceIndexedSearchParams;
 import ca.uhn.fhir.jpa.searchparam.matcher.InMemoryMatchResult;
 import ca.uhn.fhir.jpa.searchparam.matcher.SearchParamMatcher;
+import ca.uhn.fhir.jpa.subscription.match.matcher.matching.CompiledSubscriptionCriteria;
 import ca.uhn.fhir.jpa.subscription.match.matcher.matching.InMemorySubscriptionMatcher;
 import ca.uhn.fhir.jpa.subscription.match.matcher.matching.SubscriptionMatchingStrategy;
 import ca.uhn.fhir.jpa.subscription.match.matcher.matching.SubscriptionStrategyEvaluator;
+import ca.uhn.fhir.jpa.subscription.match.registry.ActiveSubscription;
 import ca.uhn.fhir.jpa.subscription.model.CanonicalSubscription;
 import ca.uhn.fhir.jpa.subscription.model.ResourceModifiedMessage;
 import ca.uhn.fhir.jpa.test.config.TestHSearchAddInConfig;
@@ -39,6 +42,7 @@ import ca.uhn.fhir.rest.param.TokenParam;
 import ca.uhn.fhir.rest.param.TokenParamModifier;
 import ca.uhn.fhir.rest.param.UriParam;
 import ca.uhn.fhir.rest.param.UriParamQualifierEnum;
+import ca.uhn.fhir.rest.server.util.ISearchParamRegistry;
 import org.apache.commons.io.Charsets;
 import org.apache.commons.lang3.StringUtils;
 import org.hl7.fhir.instance.model.api.IBaseResource;
@@ -95,10 +99,17 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.TimeZone;
+import java.util.stream.Collectors;
 
 import static org.apache.commons.lang3.StringUtils.isBlank;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
@@ -1179,4 +1190,83 @@ public class InMemorySubscriptionMatcherR4Test {
 		assertNotMatched(pr, params);
 	}
 
+	@Autowired
+	private ISearchParamRegistry mySearchParamRegistry;
+
+	@Test
+	public void testCompiledCriteriaAndSharedSearchParams() {
+		Observation obs = new Observation();
+		obs.setId("Observation/123");
+		obs.setStatus(Observation.ObservationStatus.FINAL);
+		obs.getCode().addCoding().setSystem("http://loinc.org").setCode("1234-5");
+		obs.getSubject().setReference("Patient/123");
+		ResourceModifiedMessage msg = new ResourceModifiedMessage(myFhirContext, obs, ResourceModifiedMessage.OperationTypeEnum.CREATE);
+
+		ActiveSubscription matching = newActiveSubscription(1L, "Observation?code=http://loinc.org|1234-5&status=final");
+		ActiveSubscription notMatching = newActiveSubscription(2L, "Observation?patient=Patient/456");
+
+		// The search params needed by both subscriptions are extracted once
+		ResourceIndexedSearchParams params = myInMemorySubscriptionMatcher.extractIndexedSearchParams(msg, List.of(matching, notMatching));
+		assertNotNull(params);
+		assertThat(params.myTokenParams.stream().map(t -> t.getParamName()).distinct().collect(Collectors.toList()), containsInAnyOrder("code", "status"));
+		assertThat(params.myLinks.stream().map(t -> t.getTargetResourceId()).distinct().collect(Collectors.toList()), containsInAnyOrder("123"));
+
+		CompiledSubscriptionCriteria compiled = matching.getCompiledCriteria();
+		assertNotNull(compiled);
+		assertTrue(myInMemorySubscriptionMatcher.match(matching, msg, params).matched());
+		assertFalse(myInMemorySubscriptionMatcher.match(notMatching, msg, params).matched());
+		assertSame(compiled, matching.getCompiledCriteria());
+
+		// Without shared params they are extracted for the subscription
+		assertTrue(myInMemorySubscriptionMatcher.match(matching, msg, null).matched());
+
+		// Changing the subscription discards the compiled criteria
+		CanonicalSubscription subscription = newCanonicalSubscription(1L, "Observation?status=amended");
+		matching.setSubscription(subscription);
+		assertNull(matching.getCompiledCriteria());
+		assertFalse(myInMemorySubscriptionMatcher.match(matching, msg, null).matched());
+		assertNotSame(compiled, matching.getCompiledCriteria());
+	}
+
+	@Test
+	public void testCompiledCriteriaRecompiledWhenSearchParameterChanges() {
+		SearchParameter sp = new SearchParameter();
+		sp.setId("compiled-active");
+		sp.setCode("compiled-active");
+		sp.setStatus(Enumerations.PublicationStatus.ACTIVE);
+		sp.addBase("PractitionerRole");
+		sp.setType(Enumerations.SearchParamType.TOKEN);
+		sp.setExpression("PractitionerRole.active");
+		mySearchParameterDao.update(sp, new SystemRequestDetails());
+		mySearchParamRegistry.forceRefresh();
+
+		PractitionerRole pr = new PractitionerRole();
+		pr.setId("PractitionerRole/123");
+		pr.setActive(true);
+		ResourceModifiedMessage msg = new ResourceModifiedMessage(myFhirContext, pr, ResourceModifiedMessage.OperationTypeEnum.CREATE);
+
+		ActiveSubscription subscription = newActiveSubscription(1L, "PractitionerRole?compiled-active=true");
+		assertTrue(myInMemorySubscriptionMatcher.match(subscription, msg, null).matched());
+		CompiledSubscriptionCriteria compiled = subscription.getCompiledCriteria();
+		assertTrue(myInMemorySubscriptionMatcher.match(subscription, msg, null).matched());
+		assertSame(compiled, subscription.getCompiledCriteria());
+
+		sp.setDescription("Changed");
+		mySearchParameterDao.update(sp, new SystemRequestDetails());
+		mySearchParamRegistry.forceRefresh();
+		assertTrue(myInMemorySubscriptionMatcher.match(subscription, msg, null).matched());
+		assertNotSame(compiled, subscription.getCompiledCriteria());
+	}
+
+	private ActiveSubscription newActiveSubscription(long theId, String theCriteria) {
+		return new ActiveSubscription(newCanonicalSubscription(theId, theCriteria), "channel");
+	}
+
+	private CanonicalSubscription newCanonicalSubscription(long theId, String theCriteria) {
+		CanonicalSubscription subscription = new CanonicalSubscription();
+		subscription.setCriteriaString(theCriteria);
+		subscription.setIdElement(new IdType("Subscription", theId));
+		return subscription;
+	}
+
 }
@@ -49,6 +49,7 @@ import static org.awaitility.Awaitility.await;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.lessThan;
 import static org.hamcrest.Matchers.matchesPattern;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
@@ -77,6 +78,8 @@ public class RestHookTestR4Test extends BaseSubscriptionsR4Test {
 		myStoppableSubscriptionDeliveringRestHookSubscriber.setCountDownLatch(null);
 		myStoppableSubscriptionDeliveringRestHookSubscriber.unPause();
 		myStorageSettings.setTriggerSubscriptionsForNonVersioningChanges(new JpaStorageSettings().isTriggerSubscriptionsForNonVersioningChanges());
+		myStorageSettings.setRestHookDeliveryQueueSize(new JpaStorageSettings().getRestHookDeliveryQueueSize());
+		myStorageSettings.setRestHookDeliveryCoalesceMillis(new JpaStorageSettings().getRestHookDeliveryCoalesceMillis());
 	}
 
 	@Test
@@ -302,6 +305,50 @@ public class RestHookTestR4Test extends BaseSubscriptionsR4Test {
 		ourObservationProvider.waitForUpdateCount(100);
 	}
 
+	@Test
+	public void testRepeatedDeliveriesAsync() throws Exception {
+		myStorageSettings.setRestHookDeliveryQueueSize(10);
+
+		createSubscription("Observation?", "application/fhir+json");
+		waitForActivatedSubscriptionCount(1);
+
+		for (int i = 0; i < 20; i++) {
+			Observation observation = new Observation();
+			observation.getIdentifierFirstRep().setSystem("foo").setValue("ID" + i);
+			observation.setStatus(Observation.ObservationStatus.FINAL);
+			myObservationDao.create(observation);
+		}
+
+		ourObservationProvider.waitForUpdateCount(20);
+		assertEquals(0, ourTransactionProvider.getTransactions().size());
+	}
+
+	@Test
+	public void testRepeatedDeliveriesCoalesced() throws Exception {
+		myStorageSettings.setRestHookDeliveryQueueSize(10);
+		myStorageSettings.setRestHookDeliveryCoalesceMillis(1000);
+
+		createSubscription("Observation?", "application/fhir+json");
+		waitForActivatedSubscriptionCount(1);
+
+		for (int i = 0; i < 20; i++) {
+			Observation observation = new Observation();
+			observation.getIdentifierFirstRep().setSystem("foo").setValue("ID" + i);
+			observation.setStatus(Observation.ObservationStatus.FINAL);
+			myObservationDao.create(observation);
+		}
+
+		// The notifications are delivered as batch Bundles instead of individual updates
+		await().until(() -> ourTransactionProvider.getTransactions().stream().mapToInt(t -> t.getEntry().size()).sum() == 20);
+		List<Bundle> batches = ourTransactionProvider.getTransactions();
+		assertThat(batches.size(), lessThan(20));
+		for (Bundle next : batches) {
+			assertEquals(Bundle.BundleType.BATCH, next.getType());
+			assertEquals(Bundle.HTTPVerb.PUT, next.getEntryFirstRep().getRequest().getMethod());
+		}
+		assertEquals(0, ourObservationProvider.getCountUpdate());
+	}
+
 
 	@Test
 	public void testSubscriptionRegistryLoadsSubscriptionsFromDatabase() throws Exception {
@@ -194,6 +194,21 @@ public interface IBundleProvider {
 	@Nullable
 	Integer size();
 
+	/**
+	 * Returns an estimate of the total number of results which match the given query, for use
+	 * when {@link #size()} returns {@literal null} (e.g. because the client requested
+	 * <code>_total=estimated</code> and an exact count would be too expensive to calculate).
+	 * The server will return this value in <code>Bundle.total</code>, marked as an estimate,
+	 * but it is never used to decide whether further pages exist.
+	 *
+	 * @return The estimated total, or {@literal null} if no estimate is available (this is the default)
+	 * @since 6.8.0
+	 */
+	@Nullable
+	default Integer getEstimatedSize() {
+		return null;
+	}
+
 	/**
 	 * This method returns <code>false</code> if the bundle provider knows that at least
 	 * one result exists.
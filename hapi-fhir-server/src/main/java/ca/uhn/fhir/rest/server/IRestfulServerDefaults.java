@@ -87,6 +87,32 @@ public interface IRestfulServerDefaults {
 		return null;
 	}
 
+	/**
+	 * If set to a value greater than 0, search result pages containing more than this many
+	 * results are loaded and written to the client in chunks of this many results, instead of
+	 * being loaded completely before the response is written. See
+	 * {@link ca.uhn.fhir.rest.server.method.StreamingBundleEncoder} for the conditions under
+	 * which this applies. The default is <code>0</code> (disabled).
+	 *
+	 * @since 6.8.0
+	 */
+	default int getBundleStreamingChunkSize() {
+		return 0;
+	}
+
+	/**
+	 * If set to <code>true</code>, operations which accept a
+	 * {@link ca.uhn.fhir.parser.IBundleEntryIterator} as their
+	 * {@link ca.uhn.fhir.rest.annotation.TransactionParam} receive the entries of the request
+	 * Bundle as they are parsed from the request body, instead of after the whole Bundle has been
+	 * parsed. The default is <code>false</code>.
+	 *
+	 * @since 6.8.0
+	 */
+	default boolean isIncrementalBundleEntryParsing() {
+		return false;
+	}
+
 	/**
 	 * Should the server "pretty print" responses by default (requesting clients can always override this default by
 	 * supplying an <code>Accept</code> header in the request, or a <code>_pretty</code>
@@ -157,6 +157,8 @@ public class RestfulServer extends HttpServlet implements IRestfulServer<Servlet
 	private IPagingProvider myPagingProvider;
 	private Integer myDefaultPageSize;
 	private Integer myMaximumPageSize;
+	private int myBundleStreamingChunkSize;
+	private boolean myIncrementalBundleEntryParsing;
 	private boolean myStatelessPagingDefault = false;
 	private Lock myProviderRegistrationMutex = new ReentrantLock();
 	private Map<String, ResourceBinding> myResourceNameToBinding = new HashMap<>();
@@ -785,6 +787,48 @@ public class RestfulServer extends HttpServlet implements IRestfulServer<Servlet
 		myMaximumPageSize = theMaximumPageSize;
 	}
 
+	@Override
+	public int getBundleStreamingChunkSize() {
+		return myBundleStreamingChunkSize;
+	}
+
+	/**
+	 * If set to a value greater than 0, search result pages containing more than this many
+	 * results are loaded and written to the client in chunks of this many results, instead of
+	 * being loaded completely before the response is written. This keeps the memory used by
+	 * requests for very large pages bounded, and lets the client start receiving the response
+	 * sooner. See {@link ca.uhn.fhir.rest.server.method.StreamingBundleEncoder} for the conditions
+	 * under which this applies. The default is <code>0</code> (disabled).
+	 *
+	 * @since 6.8.0
+	 */
+	public void setBundleStreamingChunkSize(int theBundleStreamingChunkSize) {
+		Validate.isTrue(theBundleStreamingChunkSize >= 0, "theBundleStreamingChunkSize must not be negative");
+		myBundleStreamingChunkSize = theBundleStreamingChunkSize;
+	}
+
+	@Override
+	public boolean isIncrementalBundleEntryParsing() {
+		return myIncrementalBundleEntryParsing;
+	}
+
+	/**
+	 * If set to <code>true</code>, operations which accept a
+	 * {@link ca.uhn.fhir.parser.IBundleEntryIterator} as their
+	 * {@link ca.uhn.fhir.rest.annotation.TransactionParam} receive the entries of the request
+	 * Bundle as they are parsed from the request body, instead of after the whole Bundle has been
+	 * parsed. This lets very large batch Bundles be processed without holding the whole request
+	 * Bundle in memory. Note that interceptors which inspect the request Bundle (for example the
+	 * AuthorizationInterceptor) only see the Bundle without its entries when this applies.
+	 * Requests with a gzip-compressed body are always parsed completely. The default is
+	 * <code>false</code>.
+	 *
+	 * @since 6.8.0
+	 */
+	public void setIncrementalBundleEntryParsing(boolean theIncrementalBundleEntryParsing) {
+		myIncrementalBundleEntryParsing = theIncrementalBundleEntryParsing;
+	}
+
 	/**
 	 * Provides the non-resource specific providers which implement method calls on this server
 	 *
@@ -36,7 +36,9 @@ import ca.uhn.fhir.rest.api.server.RequestDetails;
 import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
 import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
 import ca.uhn.fhir.rest.server.method.ElementsParameter;
+import ca.uhn.fhir.rest.server.method.StreamingBundleEncoder;
 import ca.uhn.fhir.rest.server.method.SummaryEnumParameter;
+import ca.uhn.fhir.rest.server.util.ResourceBodyPassthroughUtil;
 import ca.uhn.fhir.rest.server.servlet.ServletRequestDetails;
 import ca.uhn.fhir.util.BinaryUtil;
 import ca.uhn.fhir.util.DateUtils;
@@ -807,6 +809,13 @@ public class RestfulServerUtils {
 		throws IOException {
 		IRestfulResponse response = theRequestDetails.getResponse();
 
+		// A resource carrying its stored body can only be passed through as-is for plain JSON reads
+		if (ResourceBodyPassthroughUtil.getPassthroughBody(theResource) != null) {
+			if (theResource instanceof IBaseBinary || !ResourceBodyPassthroughUtil.isPassthroughPossible(theRequestDetails)) {
+				theResource = ResourceBodyPassthroughUtil.toFullResource(theServer.getFhirContext(), theResource);
+			}
+		}
+
 		// Determine response encoding
 		ResponseEncoding responseEncoding = RestfulServerUtils.determineResponseEncodingNoDefault(theRequestDetails, theServer.getDefaultResponseEncoding());
 
@@ -954,7 +963,13 @@ public class RestfulServerUtils {
 		} else {
 			FhirVersionEnum forVersion = theResource.getStructureFhirVersionEnum();
 			IParser parser = getNewParser(theServer.getFhirContext(), forVersion, theRequestDetails);
-			parser.encodeResourceToWriter(theResource, writer);
+			if (ResourceBodyPassthroughUtil.getPassthroughBody(theResource) != null) {
+				writer.append(ResourceBodyPassthroughUtil.encodeWithPassthroughBody(theServer.getFhirContext(), parser, theResource));
+			} else if (StreamingBundleEncoder.getEncoder(theResource) != null) {
+				StreamingBundleEncoder.getEncoder(theResource).encodeToWriter(parser, (IBaseBundle) theResource, theRequestDetails, writer);
+			} else {
+				parser.encodeResourceToWriter(theResource, writer);
+			}
 		}
 
 		return response.commitResponse(writer);
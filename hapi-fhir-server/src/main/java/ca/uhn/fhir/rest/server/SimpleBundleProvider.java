@@ -36,6 +36,7 @@ public class SimpleBundleProvider implements IBundleProvider {
 	private final String myUuid;
 	private Integer myPreferredPageSize;
 	private Integer mySize;
+	private Integer myEstimatedSize;
 	private IPrimitiveType<Date> myPublished = InstantDt.withCurrentTime();
 	private Integer myCurrentPageOffset;
 	private Integer myCurrentPageSize;
@@ -168,6 +169,22 @@ public class SimpleBundleProvider implements IBundleProvider {
 		return mySize;
 	}
 
+	/**
+	 * Sets the estimated total number of results to be returned by {@link #getEstimatedSize()}.
+	 * Default is <code>null</code>.
+	 *
+	 * @since 6.8.0
+	 */
+	public SimpleBundleProvider setEstimatedSize(Integer theEstimatedSize) {
+		myEstimatedSize = theEstimatedSize;
+		return this;
+	}
+
+	@Override
+	public Integer getEstimatedSize() {
+		return myEstimatedSize;
+	}
+
 	@Override
 	public String toString() {
 		return new ToStringBuilder(this)
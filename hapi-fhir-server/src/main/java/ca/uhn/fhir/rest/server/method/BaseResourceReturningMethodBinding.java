@@ -131,6 +131,15 @@ public abstract class BaseResourceReturningMethodBinding extends BaseMethodBindi
 	}
 
 	public IBaseResource doInvokeServer(IRestfulServer<?> theServer, RequestDetails theRequest) {
+		return doInvokeServer(theServer, theRequest, false);
+	}
+
+	/**
+	 * @param theStreamingPermitted Can the entries of a returned search result bundle be loaded while
+	 *                              the response is being written (see {@link StreamingBundleEncoder})? This
+	 *                              is only permitted if the returned resource is written directly to the client.
+	 */
+	protected IBaseResource doInvokeServer(IRestfulServer<?> theServer, RequestDetails theRequest, boolean theStreamingPermitted) {
 		Object[] params = createMethodParams(theRequest);
 
 		Object resultObj = invokeServer(theServer, theRequest, params);
@@ -175,7 +184,7 @@ public abstract class BaseResourceReturningMethodBinding extends BaseMethodBindi
 
 					responseObject = resource;
 				} else {
-					ResponseBundleRequest responseBundleRequest = buildResponseBundleRequest(theServer, theRequest, params, (IBundleProvider) resultObj, count, responseBundleType, linkSelf);
+					ResponseBundleRequest responseBundleRequest = buildResponseBundleRequest(theServer, theRequest, params, (IBundleProvider) resultObj, count, responseBundleType, linkSelf, theStreamingPermitted);
 					responseObject = myResponseBundleBuilder.buildResponseBundle(responseBundleRequest);
 				}
 				break;
@@ -198,7 +207,7 @@ public abstract class BaseResourceReturningMethodBinding extends BaseMethodBindi
 		return responseObject;
 	}
 
-	private ResponseBundleRequest buildResponseBundleRequest(IRestfulServer<?> theServer, RequestDetails theRequest, Object[] theParams, IBundleProvider theBundleProvider, Integer theCount, BundleTypeEnum theBundleTypeEnum, String theLinkSelf) {
+	private ResponseBundleRequest buildResponseBundleRequest(IRestfulServer<?> theServer, RequestDetails theRequest, Object[] theParams, IBundleProvider theBundleProvider, Integer theCount, BundleTypeEnum theBundleTypeEnum, String theLinkSelf, boolean theStreamingPermitted) {
 		Set<Include> includes = getRequestIncludesFromParams(theParams);
 
 		if (theCount == null) {
@@ -207,7 +216,7 @@ public abstract class BaseResourceReturningMethodBinding extends BaseMethodBindi
 
 		int offset = OffsetCalculator.calculateOffset(theRequest, theBundleProvider);
 
-		return new ResponseBundleRequest(theServer, theBundleProvider, theRequest, offset, theCount, theLinkSelf, includes, theBundleTypeEnum, null);
+		return new ResponseBundleRequest(theServer, theBundleProvider, theRequest, offset, theCount, theLinkSelf, includes, theBundleTypeEnum, null, theStreamingPermitted);
 	}
 
 	public MethodReturnTypeEnum getMethodReturnType() {
@@ -232,7 +241,7 @@ public abstract class BaseResourceReturningMethodBinding extends BaseMethodBindi
 
 	@Override
 	public Object invokeServer(IRestfulServer<?> theServer, RequestDetails theRequest) throws BaseServerResponseException, IOException {
-		IBaseResource response = doInvokeServer(theServer, theRequest);
+		IBaseResource response = doInvokeServer(theServer, theRequest, true);
 		/*
 		 When we write directly to an HttpServletResponse, the invocation returns null. However, we still want to invoke
 		 the SERVER_OUTGOING_RESPONSE pointcut.
@@ -144,6 +144,13 @@ public class OperationMethodBinding extends BaseResourceReturningMethodBinding {
 			myOtherOperationType = RestOperationTypeEnum.EXTENDED_OPERATION_SERVER;
 			if (myIdParamIndex != null) {
 				myCanOperateAtInstanceLevel = true;
+				if (theGlobal) {
+					for (Annotation next : theMethod.getParameterAnnotations()[myIdParamIndex]) {
+						if (next instanceof IdParam) {
+							myCanOperateAtTypeLevel = ((IdParam) next).optional();
+						}
+					}
+				}
 			} else {
 				myCanOperateAtServerLevel = true;
 			}
@@ -72,15 +72,15 @@ public class PageMethodBinding extends BaseResourceReturningMethodBinding {
 
 	@Override
 	public Object invokeServer(IRestfulServer<?> theServer, RequestDetails theRequest, Object[] theMethodParams) throws InvalidRequestException, InternalErrorException {
-		return handlePagingRequest(theServer, theRequest, theRequest.getParameters().get(Constants.PARAM_PAGINGACTION)[0]);
+		return handlePagingRequest(theServer, theRequest, theRequest.getParameters().get(Constants.PARAM_PAGINGACTION)[0], false);
 	}
 
 	@Override
-	public IBaseResource doInvokeServer(IRestfulServer<?> theServer, RequestDetails theRequest) {
-		return handlePagingRequest(theServer, theRequest, theRequest.getParameters().get(Constants.PARAM_PAGINGACTION)[0]);
+	protected IBaseResource doInvokeServer(IRestfulServer<?> theServer, RequestDetails theRequest, boolean theStreamingPermitted) {
+		return handlePagingRequest(theServer, theRequest, theRequest.getParameters().get(Constants.PARAM_PAGINGACTION)[0], theStreamingPermitted);
 	}
 
-	private IBaseResource handlePagingRequest(IRestfulServer<?> theServer, RequestDetails theRequest, String thePagingAction) {
+	private IBaseResource handlePagingRequest(IRestfulServer<?> theServer, RequestDetails theRequest, String thePagingAction, boolean theStreamingPermitted) {
 		IPagingProvider pagingProvider = theServer.getPagingProvider();
 		if (pagingProvider == null) {
 			throw new InvalidRequestException(Msg.code(416) + "This server does not support paging");
@@ -90,11 +90,11 @@ public class PageMethodBinding extends BaseResourceReturningMethodBinding {
 		populateRequestDetailsForInterceptor(theRequest, ReflectionUtil.EMPTY_OBJECT_ARRAY);
 		callPreHandledHooks(theRequest);
 
-		ResponseBundleRequest responseBundleRequest = buildResponseBundleRequest(theServer, theRequest, thePagingAction, pagingProvider);
+		ResponseBundleRequest responseBundleRequest = buildResponseBundleRequest(theServer, theRequest, thePagingAction, pagingProvider, theStreamingPermitted);
 		return myResponseBundleBuilder.buildResponseBundle(responseBundleRequest);
 	}
 
-	private ResponseBundleRequest buildResponseBundleRequest(IRestfulServer<?> theServer, RequestDetails theRequest, String thePagingAction, IPagingProvider thePagingProvider) {
+	private ResponseBundleRequest buildResponseBundleRequest(IRestfulServer<?> theServer, RequestDetails theRequest, String thePagingAction, IPagingProvider thePagingProvider, boolean theStreamingPermitted) {
 		int offset = 0;
 		IBundleProvider bundleProvider;
 
@@ -151,7 +151,7 @@ public class PageMethodBinding extends BaseResourceReturningMethodBinding {
 			count = thePagingProvider.getMaximumPageSize();
 		}
 
-		ResponseBundleRequest responseBundleRequest = new ResponseBundleRequest(theServer, bundleProvider, theRequest, offset, count, linkSelf, includes, bundleType, thePagingAction);
+		ResponseBundleRequest responseBundleRequest = new ResponseBundleRequest(theServer, bundleProvider, theRequest, offset, count, linkSelf, includes, bundleType, thePagingAction, theStreamingPermitted);
 		return responseBundleRequest;
 	}
 
@@ -1,5 +1,6 @@
 package ca.uhn.fhir.rest.server.method;
 
+import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.i18n.Msg;
 import ca.uhn.fhir.rest.api.BundleLinks;
 import ca.uhn.fhir.rest.api.IVersionSpecificBundleFactory;
@@ -10,9 +11,14 @@ import ca.uhn.fhir.rest.api.server.RequestDetails;
 import ca.uhn.fhir.rest.server.IPagingProvider;
 import ca.uhn.fhir.rest.server.RestfulServerUtils;
 import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
+import ca.uhn.fhir.util.BundleUtil;
+import ca.uhn.fhir.util.ExtensionUtil;
+import ca.uhn.fhir.util.HapiExtensions;
 import org.apache.commons.lang3.ObjectUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.hl7.fhir.instance.model.api.IBase;
 import org.hl7.fhir.instance.model.api.IBaseBundle;
+import org.hl7.fhir.instance.model.api.IBaseHasExtensions;
 import org.hl7.fhir.instance.model.api.IBaseOperationOutcome;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.slf4j.Logger;
@@ -52,9 +58,41 @@ public class ResponseBundleBuilder {
 		final IBundleProvider bundleProvider = theResponseBundleRequest.bundleProvider;
 
 		bundleFactory.addRootPropertiesToBundle(bundleProvider.getUuid(), links, bundleProvider.size(), bundleProvider.getPublished());
-		bundleFactory.addResourcesToBundle(new ArrayList<>(pageResponse.resourceList), theResponseBundleRequest.bundleType, links.serverBase, server.getBundleInclusionRule(), theResponseBundleRequest.includes);
+		if (pageResponse.streamingChunkSize == 0) {
+			bundleFactory.addResourcesToBundle(new ArrayList<>(pageResponse.resourceList), theResponseBundleRequest.bundleType, links.serverBase, server.getBundleInclusionRule(), theResponseBundleRequest.includes);
+		}
+
+		IBaseBundle bundle = (IBaseBundle) bundleFactory.getResourceBundle();
+		if (pageResponse.streamingChunkSize > 0) {
+			int fromIndex = theResponseBundleRequest.offset + pageResponse.streamingChunkSize;
+			int toIndex = theResponseBundleRequest.offset + pageResponse.numToReturn;
+			StreamingBundleEncoder encoder = new StreamingBundleEncoder(server.getFhirContext(), bundleProvider, pageResponse.resourceList, fromIndex, toIndex, pageResponse.streamingChunkSize, theResponseBundleRequest.bundleType, links.serverBase, server.getBundleInclusionRule(), theResponseBundleRequest.includes);
+			bundle.setUserData(StreamingBundleEncoder.USER_DATA_KEY, encoder);
+		}
+		if (bundleProvider.size() == null) {
+			Integer estimatedSize = bundleProvider.getEstimatedSize();
+			if (estimatedSize != null) {
+				addEstimatedTotal(server.getFhirContext(), bundle, estimatedSize);
+			}
+		}
+		return bundle;
+	}
 
-		return (IBaseBundle) bundleFactory.getResourceBundle();
+	/**
+	 * Populates <code>Bundle.total</code> with an estimated total, and marks it as
+	 * such using the {@link HapiExtensions#EXT_BUNDLE_TOTAL_ESTIMATED} extension
+	 */
+	private static void addEstimatedTotal(FhirContext theContext, IBaseBundle theBundle, int theEstimatedSize) {
+		BundleUtil.setTotal(theContext, theBundle, theEstimatedSize);
+		IBase total = theContext
+			.getResourceDefinition(theBundle)
+			.getChildByName("total")
+			.getAccessor()
+			.getFirstValueOrNull(theBundle)
+			.orElse(null);
+		if (total instanceof IBaseHasExtensions) {
+			ExtensionUtil.setExtension(theContext, total, HapiExtensions.EXT_BUNDLE_TOTAL_ESTIMATED, "boolean", true);
+		}
 	}
 
 	private ResponsePage buildResponsePage(ResponseBundleRequest theResponseBundleRequest) {
@@ -64,6 +102,7 @@ public class ResponseBundleBuilder {
 		final RequestedPage requestedPage = theResponseBundleRequest.requestedPage;
 		final List<IBaseResource> resourceList;
 		final int pageSize;
+		int streamingChunkSize = 0;
 
 		int numToReturn;
 		String searchId = null;
@@ -83,13 +122,40 @@ public class ResponseBundleBuilder {
 				numToReturn = Math.min(pageSize, bundleProviderSize - theResponseBundleRequest.offset);
 			}
 
-			resourceList = pagingBuildResourceList(theResponseBundleRequest, bundleProvider, numToReturn);
+			streamingChunkSize = determineStreamingChunkSize(theResponseBundleRequest, numToReturn);
+			if (streamingChunkSize > 0) {
+				resourceList = bundleProvider.getResources(theResponseBundleRequest.offset, theResponseBundleRequest.offset + streamingChunkSize);
+			} else {
+				resourceList = pagingBuildResourceList(theResponseBundleRequest, bundleProvider, numToReturn);
+			}
 			RestfulServerUtils.validateResourceListNotNull(resourceList);
 
 			searchId = pagingBuildSearchId(theResponseBundleRequest, numToReturn, bundleProviderSize);
 		}
 
-		return new ResponsePage(searchId, resourceList, pageSize, numToReturn, bundleProviderSize);
+		return new ResponsePage(searchId, resourceList, pageSize, numToReturn, bundleProviderSize, streamingChunkSize);
+	}
+
+	/**
+	 * Returns the number of results to load per chunk if the page should be written using a
+	 * {@link StreamingBundleEncoder}, or <code>0</code> if the page should be loaded completely
+	 */
+	private static int determineStreamingChunkSize(ResponseBundleRequest theResponseBundleRequest, int theNumToReturn) {
+		int chunkSize = theResponseBundleRequest.server.getBundleStreamingChunkSize();
+		if (!theResponseBundleRequest.streamingPermitted || chunkSize <= 0 || theNumToReturn <= chunkSize) {
+			return 0;
+		}
+
+		// Providers which return a fixed page can't be asked for parts of it
+		IBundleProvider bundleProvider = theResponseBundleRequest.bundleProvider;
+		if (bundleProvider.getCurrentPageId() != null || bundleProvider.getCurrentPageOffset() != null) {
+			return 0;
+		}
+
+		if (!StreamingBundleEncoder.isStreamingPossible(theResponseBundleRequest.requestDetails)) {
+			return 0;
+		}
+		return chunkSize;
 	}
 
 	private static String pagingBuildSearchId(ResponseBundleRequest theResponseBundleRequest, int theNumToReturn, Integer theNumTotalResults) {
@@ -155,7 +221,7 @@ public class ResponseBundleBuilder {
 		return retval;
 	}
 
-	private static void validateIds(List<IBaseResource> theResourceList) {
+	static void validateIds(List<IBaseResource> theResourceList) {
 		/*
 		 * Make sure all returned resources have an ID (if not, this is a bug
 		 * in the user server code)
@@ -169,7 +235,7 @@ public class ResponseBundleBuilder {
 		}
 	}
 
-	private static void removeNulls(List<IBaseResource> resourceList) {
+	static void removeNulls(List<IBaseResource> resourceList) {
 		/*
 		 * Remove any null entries in the list - This generally shouldn't happen but can if
 		 * data has been manually purged from the JPA database
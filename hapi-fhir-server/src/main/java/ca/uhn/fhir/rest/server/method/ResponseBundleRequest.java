@@ -50,8 +50,17 @@ public class ResponseBundleRequest {
 	 */
 	public final String searchId;
 	public final RequestedPage requestedPage;
+	/**
+	 * Can the entries of the returned bundle be loaded while the response is being written, using a
+	 * {@link StreamingBundleEncoder}? This is only permitted when the bundle is written directly to the client.
+	 */
+	public final boolean streamingPermitted;
 
 	public ResponseBundleRequest(IRestfulServer<?> theServer, IBundleProvider theBundleProvider, RequestDetails theRequest, int theOffset, Integer theLimit, String theLinkSelf, Set<Include> theIncludes, BundleTypeEnum theBundleType, String theSearchId) {
+		this(theServer, theBundleProvider, theRequest, theOffset, theLimit, theLinkSelf, theIncludes, theBundleType, theSearchId, false);
+	}
+
+	public ResponseBundleRequest(IRestfulServer<?> theServer, IBundleProvider theBundleProvider, RequestDetails theRequest, int theOffset, Integer theLimit, String theLinkSelf, Set<Include> theIncludes, BundleTypeEnum theBundleType, String theSearchId, boolean theStreamingPermitted) {
 		server = theServer;
 		bundleProvider = theBundleProvider;
 		requestDetails = theRequest;
@@ -61,6 +70,7 @@ public class ResponseBundleRequest {
 		bundleType = theBundleType;
 		searchId = theSearchId;
 		requestedPage = getRequestedPage(theLimit);
+		streamingPermitted = theStreamingPermitted;
 	}
 
 	public Map<String, String[]> getRequestParameters() {
@@ -29,13 +29,23 @@ public class ResponsePage {
 	 * has fewer results than the page size.
 	 */
 	public final int numToReturn;
+	/**
+	 * If greater than 0, {@link #resourceList} only contains the first chunk of this many results, and the
+	 * remaining results are loaded by a {@link StreamingBundleEncoder} while the response is written
+	 */
+	public final int streamingChunkSize;
 
 	public ResponsePage(String theSearchId, List<IBaseResource> theResourceList, int thePageSize, int theNumToReturn, Integer theNumTotalResults) {
+		this(theSearchId, theResourceList, thePageSize, theNumToReturn, theNumTotalResults, 0);
+	}
+
+	public ResponsePage(String theSearchId, List<IBaseResource> theResourceList, int thePageSize, int theNumToReturn, Integer theNumTotalResults, int theStreamingChunkSize) {
 		searchId = theSearchId;
 		resourceList = theResourceList;
 		pageSize = thePageSize;
 		numToReturn = theNumToReturn;
 		numTotalResults = theNumTotalResults;
+		streamingChunkSize = theStreamingChunkSize;
 	}
 
 	public int size() {
@@ -0,0 +1,287 @@
+/*-
+ * #%L
+ * HAPI FHIR - Server Framework
+ * %%
+ * Copyright (C) 2014 - 2023 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ca.uhn.fhir.rest.server.method;
+
+import ca.uhn.fhir.context.BaseRuntimeChildDefinition;
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.RuntimeResourceDefinition;
+import ca.uhn.fhir.context.api.BundleInclusionRule;
+import ca.uhn.fhir.i18n.Msg;
+import ca.uhn.fhir.interceptor.api.Pointcut;
+import ca.uhn.fhir.model.api.Include;
+import ca.uhn.fhir.model.api.ResourceMetadataKeyEnum;
+import ca.uhn.fhir.model.valueset.BundleEntrySearchModeEnum;
+import ca.uhn.fhir.model.valueset.BundleTypeEnum;
+import ca.uhn.fhir.parser.IParser;
+import ca.uhn.fhir.rest.api.BundleLinks;
+import ca.uhn.fhir.rest.api.EncodingEnum;
+import ca.uhn.fhir.rest.api.IVersionSpecificBundleFactory;
+import ca.uhn.fhir.rest.api.SummaryEnum;
+import ca.uhn.fhir.rest.api.server.IBundleProvider;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.server.RestfulServerUtils;
+import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
+import org.hl7.fhir.instance.model.api.IBase;
+import org.hl7.fhir.instance.model.api.IBaseBundle;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.instance.model.api.IIdType;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Writes a search result page whose entries are loaded from the {@link IBundleProvider}
+ * in chunks while the response is being written, instead of being loaded completely
+ * before encoding starts. This bounds the number of resources held in memory for large
+ * pages, and lets the client start receiving entries before the last chunk is loaded.
+ * <p>
+ * An encoder is attached to the (entry-less) response bundle as user data under
+ * {@link #USER_DATA_KEY} by {@link ResponseBundleBuilder} if
+ * {@link ca.uhn.fhir.rest.server.RestfulServer#setBundleStreamingChunkSize(int) streaming is enabled}
+ * and the page is larger than a single chunk. It is then used by
+ * {@link RestfulServerUtils#streamResponseAsResource} to write the bundle.
+ * </p>
+ * <p>
+ * The bundle is first encoded without its entries, and is left open after its last element.
+ * Each entry is then written by the parser as a standalone element, so entries are encoded
+ * exactly as the parser would encode them within the complete bundle.
+ * </p>
+ * <p>
+ * Because the response status has already been sent when later chunks are loaded, a
+ * failure while loading a chunk results in a truncated response.
+ * </p>
+ *
+ * @since 6.8.0
+ */
+public class StreamingBundleEncoder {
+
+	/**
+	 * User data key holding the encoder on the response bundle
+	 */
+	public static final String USER_DATA_KEY = StreamingBundleEncoder.class.getName();
+	private static final String ENTRY_ARRAY_START = "\"entry\":[";
+
+	private final FhirContext myContext;
+	private final IBundleProvider myBundleProvider;
+	private final List<IBaseResource> myFirstChunk;
+	private final int myFromIndex;
+	private final int myToIndex;
+	private final int myChunkSize;
+	private final BundleTypeEnum myBundleType;
+	private final String myServerBase;
+	private final BundleInclusionRule myBundleInclusionRule;
+	private final Set<Include> myIncludes;
+
+	/**
+	 * Constructor
+	 *
+	 * @param theFirstChunk The resources which have already been loaded for the start of the page
+	 * @param theFromIndex  The index of the first resource to load from the bundle provider after the first chunk
+	 * @param theToIndex    The index after the last resource to load from the bundle provider
+	 * @param theChunkSize  The number of resources to load from the bundle provider at a time
+	 */
+	public StreamingBundleEncoder(@Nonnull FhirContext theContext, @Nonnull IBundleProvider theBundleProvider, @Nonnull List<IBaseResource> theFirstChunk, int theFromIndex, int theToIndex, int theChunkSize, BundleTypeEnum theBundleType, String theServerBase, @Nullable BundleInclusionRule theBundleInclusionRule, @Nullable Set<Include> theIncludes) {
+		myContext = theContext;
+		myBundleProvider = theBundleProvider;
+		myFirstChunk = theFirstChunk;
+		myFromIndex = theFromIndex;
+		myToIndex = theToIndex;
+		myChunkSize = theChunkSize;
+		myBundleType = theBundleType;
+		myServerBase = theServerBase;
+		myBundleInclusionRule = theBundleInclusionRule;
+		myIncludes = theIncludes;
+	}
+
+	/**
+	 * Returns <code>true</code> if the response to the given request could be written by a
+	 * streaming encoder, meaning that it is plain JSON with no pretty printing, no <code>_summary</code>
+	 * or <code>_elements</code>, and no {@link Pointcut#SERVER_OUTGOING_RESPONSE} hooks which may
+	 * need to inspect or modify the complete bundle.
+	 */
+	public static boolean isStreamingPossible(@Nullable RequestDetails theRequestDetails) {
+		if (theRequestDetails == null || theRequestDetails.getServer() == null) {
+			return false;
+		}
+
+		if (theRequestDetails.getInterceptorBroadcaster() != null && theRequestDetails.getInterceptorBroadcaster().hasHooks(Pointcut.SERVER_OUTGOING_RESPONSE)) {
+			return false;
+		}
+
+		if (RestfulServerUtils.determineResponseEncodingWithDefault(theRequestDetails).getEncoding() != EncodingEnum.JSON) {
+			return false;
+		}
+
+		if (RestfulServerUtils.prettyPrintResponse(theRequestDetails.getServer(), theRequestDetails)) {
+			return false;
+		}
+
+		if (!RestfulServerUtils.determineSummaryMode(theRequestDetails).equals(Collections.singleton(SummaryEnum.FALSE))) {
+			return false;
+		}
+
+		return ElementsParameter.getElementsValueOrNull(theRequestDetails, false) == null
+			&& ElementsParameter.getElementsValueOrNull(theRequestDetails, true) == null;
+	}
+
+	/**
+	 * Returns the encoder attached to the given resource, or <code>null</code>
+	 */
+	@Nullable
+	public static StreamingBundleEncoder getEncoder(@Nullable IBaseResource theResource) {
+		if (theResource == null) {
+			return null;
+		}
+		return (StreamingBundleEncoder) theResource.getUserData(USER_DATA_KEY);
+	}
+
+	/**
+	 * Writes the given bundle, followed by the entries loaded by this encoder, to the given writer
+	 *
+	 * @param theParser  The parser to use. If this is not a non-pretty-printing JSON parser, all
+	 *                   entries are loaded into the bundle before it is encoded normally.
+	 * @param theBundle  The bundle this encoder is attached to
+	 * @param theRequest The request being responded to
+	 * @param theWriter  The writer to write the response to
+	 */
+	public void encodeToWriter(@Nonnull IParser theParser, @Nonnull IBaseBundle theBundle, @Nonnull RequestDetails theRequest, @Nonnull Writer theWriter) throws IOException {
+		theBundle.setUserData(USER_DATA_KEY, null);
+
+		if (theParser.getEncoding() != EncodingEnum.JSON || RestfulServerUtils.prettyPrintResponse(theRequest.getServer(), theRequest) || hasElementsAfterEntry(theBundle)) {
+			theParser.encodeResourceToWriter(materialize(theBundle), theWriter);
+			return;
+		}
+
+		String shell = theParser.encodeResourceToString(theBundle);
+		if (!shell.endsWith("}") || shell.contains(ENTRY_ARRAY_START)) {
+			throw new InternalErrorException(Msg.code(2404) + "Unable to stream bundle entries");
+		}
+		theWriter.write(shell, 0, shell.length() - 1);
+		theWriter.flush();
+
+		Set<String> writtenIds = new HashSet<>();
+		boolean wroteEntry = false;
+		List<IBaseResource> chunk = myFirstChunk;
+		int nextIndex = myFromIndex;
+		while (true) {
+			for (IBase nextEntry : createEntries(filterChunk(chunk, writtenIds))) {
+				theWriter.write(wroteEntry ? "," : "," + ENTRY_ARRAY_START);
+				theParser.encodeToWriter(nextEntry, theWriter);
+				wroteEntry = true;
+			}
+			theWriter.flush();
+
+			if (nextIndex >= myToIndex) {
+				break;
+			}
+			int chunkEnd = Math.min(nextIndex + myChunkSize, myToIndex);
+			chunk = myBundleProvider.getResources(nextIndex, chunkEnd);
+			RestfulServerUtils.validateResourceListNotNull(chunk);
+			nextIndex = chunkEnd;
+		}
+
+		if (wroteEntry) {
+			theWriter.write("]");
+		}
+		theWriter.write("}");
+	}
+
+	/**
+	 * Creates the bundle entries for the given resources, in the same way as they would be
+	 * created for the complete bundle. Each entry is then written by the parser as a
+	 * standalone element.
+	 */
+	private List<? extends IBase> createEntries(List<IBaseResource> theResources) {
+		if (theResources.isEmpty()) {
+			return Collections.emptyList();
+		}
+
+		IVersionSpecificBundleFactory bundleFactory = myContext.newBundleFactory();
+		bundleFactory.addRootPropertiesToBundle(null, new BundleLinks(myServerBase, myIncludes, false, myBundleType), null, null);
+		bundleFactory.addResourcesToBundle(theResources, myBundleType, myServerBase, myBundleInclusionRule, myIncludes);
+		IBaseResource bundle = bundleFactory.getResourceBundle();
+		return myContext.getResourceDefinition(bundle).getChildByName("entry").getAccessor().getValues(bundle);
+	}
+
+	/**
+	 * Removes nulls from the given chunk, as well as included resources which have already
+	 * been written as part of an earlier chunk
+	 */
+	private List<IBaseResource> filterChunk(List<IBaseResource> theChunk, Set<String> theWrittenIds) {
+		List<IBaseResource> retVal = new ArrayList<>(theChunk);
+		ResponseBundleBuilder.removeNulls(retVal);
+		ResponseBundleBuilder.validateIds(retVal);
+
+		retVal.removeIf(t -> {
+			IIdType id = t.getIdElement();
+			if (id == null || !id.hasIdPart()) {
+				return false;
+			}
+			String key = myContext.getResourceType(t) + "/" + id.getIdPart();
+			boolean isNew = theWrittenIds.add(key);
+			return !isNew && ResourceMetadataKeyEnum.ENTRY_SEARCH_MODE.get(t) == BundleEntrySearchModeEnum.INCLUDE;
+		});
+		return retVal;
+	}
+
+	/**
+	 * Loads the remaining entries into the given bundle
+	 */
+	private IBaseBundle materialize(IBaseBundle theBundle) {
+		List<IBaseResource> resources = new ArrayList<>(myFirstChunk);
+		if (myFromIndex < myToIndex) {
+			List<IBaseResource> remaining = myBundleProvider.getResources(myFromIndex, myToIndex);
+			RestfulServerUtils.validateResourceListNotNull(remaining);
+			resources.addAll(remaining);
+		}
+
+		IVersionSpecificBundleFactory bundleFactory = myContext.newBundleFactory();
+		bundleFactory.initializeWithBundleResource(theBundle);
+		bundleFactory.addRootPropertiesToBundle(null, new BundleLinks(myServerBase, myIncludes, false, myBundleType), null, null);
+		bundleFactory.addResourcesToBundle(filterChunk(resources, new HashSet<>()), myBundleType, myServerBase, myBundleInclusionRule, myIncludes);
+		return (IBaseBundle) bundleFactory.getResourceBundle();
+	}
+
+	/**
+	 * The entries are written at the end of the encoded bundle, so any populated elements which
+	 * would be encoded after them (e.g. <code>Bundle.signature</code>) prevent streaming
+	 */
+	private boolean hasElementsAfterEntry(IBaseBundle theBundle) {
+		RuntimeResourceDefinition definition = myContext.getResourceDefinition(theBundle);
+		boolean afterEntry = false;
+		for (BaseRuntimeChildDefinition next : definition.getChildren()) {
+			if (afterEntry && !next.getAccessor().getValues(theBundle).isEmpty()) {
+				return true;
+			}
+			if ("entry".equals(next.getElementName())) {
+				afterEntry = true;
+			}
+		}
+		return false;
+	}
+
+}
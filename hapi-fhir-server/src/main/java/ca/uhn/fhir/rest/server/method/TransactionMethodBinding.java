@@ -24,6 +24,7 @@ import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.i18n.Msg;
 import ca.uhn.fhir.model.base.resource.BaseOperationOutcome;
 import ca.uhn.fhir.model.valueset.BundleTypeEnum;
+import ca.uhn.fhir.parser.IBundleEntryIterator;
 import ca.uhn.fhir.rest.annotation.Transaction;
 import ca.uhn.fhir.rest.annotation.TransactionParam;
 import ca.uhn.fhir.rest.api.RequestTypeEnum;
@@ -110,7 +111,7 @@ public class TransactionMethodBinding extends BaseResourceReturningMethodBinding
 		 * bunch of resources (because that's what it was), but in DSTU2 transaction has become much more broad, so we
 		 * no longer hold the user's hand much here.
 		 */
-		if (myTransactionParamStyle == ParamStyle.RESOURCE_BUNDLE) {
+		if (myTransactionParamStyle == ParamStyle.RESOURCE_BUNDLE || myTransactionParamStyle == ParamStyle.BUNDLE_ENTRY_ITERATOR) {
 			// This is the DSTU2 style
 			Object response = invokeServerMethod(theRequest, theMethodParams);
 			return response;
@@ -148,7 +149,13 @@ public class TransactionMethodBinding extends BaseResourceReturningMethodBinding
 		 * If the method has no parsed resource parameter, we parse here in order to have something for the interceptor.
 		 */
 		IBaseResource resource;
-		if (myTransactionParamIndex != -1) {
+		if (myTransactionParamStyle == ParamStyle.BUNDLE_ENTRY_ITERATOR) {
+			// If the entries are being parsed incrementally, interceptors only see the Bundle without its entries
+			resource = theRequestDetails.getResource();
+			if (resource == null) {
+				resource = ((IBundleEntryIterator<?>) theMethodParams[myTransactionParamIndex]).getBundle();
+			}
+		} else if (myTransactionParamIndex != -1) {
 			resource = (IBaseResource) theMethodParams[myTransactionParamIndex];
 		} else {
 			Class<? extends IBaseResource> resourceType = getContext().getResourceDefinition("Bundle").getImplementingClass();
@@ -24,19 +24,31 @@ import ca.uhn.fhir.context.ConfigurationException;
 import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.context.RuntimeResourceDefinition;
 import ca.uhn.fhir.model.api.IResource;
+import ca.uhn.fhir.parser.DataFormatException;
+import ca.uhn.fhir.parser.IBundleEntryIterator;
+import ca.uhn.fhir.parser.IParser;
 import ca.uhn.fhir.rest.annotation.TransactionParam;
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.api.EncodingEnum;
 import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.server.RestfulServerUtils;
 import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
 import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
 import ca.uhn.fhir.util.BundleUtil;
+import org.hl7.fhir.instance.model.api.IBase;
 import org.hl7.fhir.instance.model.api.IBaseBundle;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.Collection;
 import java.util.List;
 
+import static org.apache.commons.lang3.StringUtils.isNotBlank;
+
 public class TransactionParameter implements IParameter {
 
 	// private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(TransactionParameter.class);
@@ -50,7 +62,7 @@ public class TransactionParameter implements IParameter {
 
 	private String createParameterTypeError(Method theMethod) {
 		return "Method '" + theMethod.getName() + "' in type '" + theMethod.getDeclaringClass().getCanonicalName() + "' is annotated with @" + TransactionParam.class.getName()
-			+ " but is not of type Bundle, IBaseResource, IBaseBundle, or List<" + IResource.class.getCanonicalName() + ">";
+			+ " but is not of type Bundle, IBaseResource, IBaseBundle, IBundleEntryIterator, or List<" + IResource.class.getCanonicalName() + ">";
 	}
 
 	@Override
@@ -72,6 +84,10 @@ public class TransactionParameter implements IParameter {
 			myParamStyle = ParamStyle.RESOURCE_BUNDLE;
 			myResourceBundleType = myContext.getResourceDefinition("Bundle").getImplementingClass();
 			return;
+		} else if (theParameterType.equals(IBundleEntryIterator.class)) {
+			myParamStyle = ParamStyle.BUNDLE_ENTRY_ITERATOR;
+			myResourceBundleType = myContext.getResourceDefinition("Bundle").getImplementingClass();
+			return;
 		} else if (theInnerCollectionType != null) {
 			if (theInnerCollectionType.equals(List.class) == false) {
 				throw new ConfigurationException(Msg.code(430) + createParameterTypeError(theMethod));
@@ -88,11 +104,20 @@ public class TransactionParameter implements IParameter {
 
 	@Override
 	public Object translateQueryParametersIntoServerArgument(RequestDetails theRequest, BaseMethodBinding theMethodBinding) throws InternalErrorException, InvalidRequestException {
+		if (myParamStyle == ParamStyle.BUNDLE_ENTRY_ITERATOR && theRequest.getResource() == null && theRequest.getServer().isIncrementalBundleEntryParsing()) {
+			IBundleEntryIterator<?> retVal = parseBundleEntriesFromRequest(theRequest);
+			if (retVal != null) {
+				return retVal;
+			}
+		}
+
 		IBaseResource parsedBundle = ResourceParameter.parseResourceFromRequest(theRequest, theMethodBinding, myResourceBundleType);
 
 		switch (myParamStyle) {
 			case RESOURCE_LIST:
 				return BundleUtil.toListOfResources(myContext, (IBaseBundle) parsedBundle);
+			case BUNDLE_ENTRY_ITERATOR:
+				return BundleUtil.toBundleEntryIterator(myContext, (IBaseBundle) parsedBundle);
 			case RESOURCE_BUNDLE:
 			default:
 				assert myParamStyle == ParamStyle.RESOURCE_BUNDLE;
@@ -102,6 +127,69 @@ public class TransactionParameter implements IParameter {
 		return parsedBundle;
 	}
 
+	/**
+	 * Returns an iterator which parses the entries of the request Bundle as they are read from the
+	 * request body, or <code>null</code> if the request must be parsed completely instead.
+	 */
+	@SuppressWarnings("unchecked")
+	private IBundleEntryIterator<?> parseBundleEntriesFromRequest(RequestDetails theRequest) {
+		EncodingEnum encoding = RestfulServerUtils.determineRequestEncodingNoDefault(theRequest);
+		if (encoding == null || isNotBlank(theRequest.getHeader(Constants.HEADER_CONTENT_ENCODING))) {
+			return null;
+		}
+
+		Reader requestReader;
+		if (theRequest.getRequestContentsIfLoaded() != null) {
+			requestReader = ResourceParameter.createRequestReader(theRequest);
+		} else {
+			try {
+				requestReader = new InputStreamReader(theRequest.getInputStream(), ResourceParameter.determineRequestCharset(theRequest));
+			} catch (IOException e) {
+				throw new InvalidRequestException(Msg.code(2412) + "Could not load request resource: " + e.getMessage());
+			}
+		}
+
+		IParser parser = encoding.newParser(myContext);
+		parser.setServerBaseUrl(theRequest.getFhirServerBase());
+		IBundleEntryIterator<?> entryIterator;
+		try {
+			entryIterator = parser.parseBundleEntries((Class<? extends IBaseBundle>) myResourceBundleType, requestReader);
+		} catch (DataFormatException e) {
+			throw newParseFailureException(encoding, e);
+		}
+
+		// Entries are parsed as the iterator advances, so parse failures can happen at any point
+		return new IBundleEntryIterator<IBaseBundle>() {
+			@Override
+			public IBaseBundle getBundle() {
+				return entryIterator.getBundle();
+			}
+
+			@Override
+			public boolean hasNext() {
+				try {
+					return entryIterator.hasNext();
+				} catch (DataFormatException e) {
+					throw newParseFailureException(encoding, e);
+				}
+			}
+
+			@Override
+			public IBase next() {
+				try {
+					return entryIterator.next();
+				} catch (DataFormatException e) {
+					throw newParseFailureException(encoding, e);
+				}
+			}
+		};
+	}
+
+	private InvalidRequestException newParseFailureException(EncodingEnum theEncoding, DataFormatException theCause) {
+		String msg = myContext.getLocalizer().getMessage(ResourceParameter.class, "failedToParseRequest", theEncoding.name(), theCause.getMessage());
+		return new InvalidRequestException(Msg.code(2413) + msg);
+	}
+
 	ParamStyle getParamStyle() {
 		return myParamStyle;
 	}
@@ -114,7 +202,11 @@ public class TransactionParameter implements IParameter {
 		/**
 		 * List of resources
 		 */
-		RESOURCE_LIST
+		RESOURCE_LIST,
+		/**
+		 * Iterator over the entries of the bundle
+		 */
+		BUNDLE_ENTRY_ITERATOR
 	}
 
 }
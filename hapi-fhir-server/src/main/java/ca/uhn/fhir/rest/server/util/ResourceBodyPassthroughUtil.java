@@ -0,0 +1,197 @@
+/*-
+ * #%L
+ * HAPI FHIR - Server Framework
+ * %%
+ * Copyright (C) 2014 - 2023 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ca.uhn.fhir.rest.server.util;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.i18n.Msg;
+import ca.uhn.fhir.interceptor.api.Pointcut;
+import ca.uhn.fhir.parser.IParser;
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.api.EncodingEnum;
+import ca.uhn.fhir.rest.api.RestOperationTypeEnum;
+import ca.uhn.fhir.rest.api.SummaryEnum;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.server.RestfulServerUtils;
+import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
+import ca.uhn.fhir.rest.server.method.ElementsParameter;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Collections;
+
+import static org.apache.commons.lang3.StringUtils.isNotBlank;
+
+/**
+ * Utilities for serving a stored resource body to a client without parsing and
+ * re-encoding it.
+ * <p>
+ * A storage module which supports this returns a resource instance containing only
+ * the resource ID and <code>Resource.meta</code>, with the stored JSON body (which must
+ * not contain an ID or meta) attached as user data under {@link #RESOURCE_BODY_USER_DATA_KEY}.
+ * {@link RestfulServerUtils#streamResponseAsResource} then writes the stored body
+ * directly, splicing in the encoded ID and meta.
+ * </p>
+ *
+ * @since 6.8.0
+ */
+public class ResourceBodyPassthroughUtil {
+
+	/**
+	 * User data key holding the raw stored JSON body for a resource
+	 */
+	public static final String RESOURCE_BODY_USER_DATA_KEY = ResourceBodyPassthroughUtil.class.getName() + "_RESOURCE_BODY";
+
+	/**
+	 * Non instantiable
+	 */
+	private ResourceBodyPassthroughUtil() {
+		super();
+	}
+
+	/**
+	 * Returns <code>true</code> if the response to the given request could be streamed from a stored
+	 * body, meaning that it is a plain JSON read/vread with no pretty printing, no <code>_summary</code>
+	 * or <code>_elements</code>, and no {@link Pointcut#SERVER_OUTGOING_RESPONSE} hooks which may
+	 * need to inspect or modify the resource.
+	 */
+	public static boolean isPassthroughPossible(@Nullable RequestDetails theRequestDetails) {
+		if (theRequestDetails == null || theRequestDetails.getServer() == null) {
+			return false;
+		}
+
+		RestOperationTypeEnum operationType = theRequestDetails.getRestOperationType();
+		if (operationType != RestOperationTypeEnum.READ && operationType != RestOperationTypeEnum.VREAD) {
+			return false;
+		}
+
+		if (theRequestDetails.getInterceptorBroadcaster() != null && theRequestDetails.getInterceptorBroadcaster().hasHooks(Pointcut.SERVER_OUTGOING_RESPONSE)) {
+			return false;
+		}
+
+		if (RestfulServerUtils.determineResponseEncodingWithDefault(theRequestDetails).getEncoding() != EncodingEnum.JSON) {
+			return false;
+		}
+
+		if (RestfulServerUtils.prettyPrintResponse(theRequestDetails.getServer(), theRequestDetails)) {
+			return false;
+		}
+
+		if (!RestfulServerUtils.determineSummaryMode(theRequestDetails).equals(Collections.singleton(SummaryEnum.FALSE))) {
+			return false;
+		}
+
+		return ElementsParameter.getElementsValueOrNull(theRequestDetails, false) == null
+			&& ElementsParameter.getElementsValueOrNull(theRequestDetails, true) == null;
+	}
+
+	/**
+	 * Returns <code>true</code> if the given stored JSON body can be spliced together with a resource
+	 * ID and meta. The body must have been produced by the HAPI FHIR JSON encoder with pretty
+	 * printing disabled, and with the resource ID and <code>Resource.meta</code> excluded. It must
+	 * also not contain the server base URL, since the response encoder would otherwise
+	 * relativize references pointing to the server.
+	 */
+	public static boolean isPassthroughBody(@Nonnull RequestDetails theRequestDetails, @Nonnull String theResourceType, @Nullable String theBody) {
+		if (theBody == null) {
+			return false;
+		}
+
+		String prefix = createPrefix(theResourceType);
+		if (!theBody.startsWith(prefix) || theBody.length() <= prefix.length()) {
+			return false;
+		}
+
+		char next = theBody.charAt(prefix.length());
+		if (next == ',') {
+			if (theBody.startsWith(",\"id\":", prefix.length()) || theBody.startsWith(",\"meta\":", prefix.length())) {
+				return false;
+			}
+		} else if (next != '}') {
+			return false;
+		}
+
+		String serverBase = theRequestDetails.getFhirServerBase();
+		return !isNotBlank(serverBase) || !theBody.contains(serverBase);
+	}
+
+	/**
+	 * Returns the stored body attached to the given resource, or <code>null</code>
+	 */
+	@Nullable
+	public static String getPassthroughBody(@Nullable IBaseResource theResource) {
+		if (theResource == null) {
+			return null;
+		}
+		return (String) theResource.getUserData(RESOURCE_BODY_USER_DATA_KEY);
+	}
+
+	/**
+	 * Encodes the ID and meta of the given resource using the given parser, and splices the
+	 * stored body attached to the resource after them.
+	 *
+	 * @param theContext  The FHIR context
+	 * @param theParser   The parser to encode the ID and meta with. Must be a JSON parser.
+	 * @param theResource The resource, which must have a stored body attached
+	 */
+	@Nonnull
+	public static String encodeWithPassthroughBody(@Nonnull FhirContext theContext, @Nonnull IParser theParser, @Nonnull IBaseResource theResource) {
+		String body = getPassthroughBody(theResource);
+		String resourceType = theContext.getResourceType(theResource);
+		String prefix = createPrefix(resourceType);
+		if (body == null || !body.startsWith(prefix)) {
+			throw new InternalErrorException(Msg.code(2382) + "Resource " + resourceType + " has no valid passthrough body");
+		}
+
+		String header = theParser.encodeResourceToString(theResource);
+		if (!header.endsWith("}")) {
+			throw new InternalErrorException(Msg.code(2383) + "Unable to splice passthrough body for resource " + resourceType);
+		}
+
+		String remainder = body.substring(prefix.length());
+		if (remainder.startsWith("}")) {
+			return header;
+		}
+
+		StringBuilder b = new StringBuilder(header.length() + remainder.length());
+		b.append(header, 0, header.length() - 1);
+		b.append(remainder);
+		return b.toString();
+	}
+
+	/**
+	 * Converts a resource holding a stored body into a fully populated resource instance. This
+	 * is used when a resource with a stored body ends up being returned in a context where the
+	 * body can not be passed through as-is.
+	 */
+	@Nonnull
+	public static IBaseResource toFullResource(@Nonnull FhirContext theContext, @Nonnull IBaseResource theResource) {
+		IParser parser = theContext.newJsonParser();
+		String encoded = encodeWithPassthroughBody(theContext, parser, theResource);
+		IBaseResource retVal = parser.parseResource(theResource.getClass(), encoded);
+		retVal.setUserData(Constants.RESOURCE_PARTITION_ID, theResource.getUserData(Constants.RESOURCE_PARTITION_ID));
+		return retVal;
+	}
+
+	private static String createPrefix(String theResourceType) {
+		return "{\"resourceType\":\"" + theResourceType + "\"";
+	}
+
+}
@@ -0,0 +1,54 @@
+/*-
+ * #%L
+ * hapi-fhir-storage-batch2-jobs
+ * %%
+ * Copyright (C) 2014 - 2023 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ca.uhn.fhir.batch2.jobs.compressiondictionary;
+
+import ca.uhn.fhir.batch2.api.IFirstJobStepWorker;
+import ca.uhn.fhir.batch2.api.IJobDataSink;
+import ca.uhn.fhir.batch2.api.JobExecutionFailedException;
+import ca.uhn.fhir.batch2.api.RunOutcome;
+import ca.uhn.fhir.batch2.api.StepExecutionDetails;
+import ca.uhn.fhir.batch2.api.VoidModel;
+import ca.uhn.fhir.context.FhirContext;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+
+public class GenerateResourceTypesStep implements IFirstJobStepWorker<TrainCompressionDictionaryJobParameters, CompressionDictionaryResourceTypeJson> {
+
+	@Autowired
+	private FhirContext myFhirContext;
+
+	@Nonnull
+	@Override
+	public RunOutcome run(@Nonnull StepExecutionDetails<TrainCompressionDictionaryJobParameters, VoidModel> theStepExecutionDetails, @Nonnull IJobDataSink<CompressionDictionaryResourceTypeJson> theDataSink) throws JobExecutionFailedException {
+		List<String> resourceTypes = theStepExecutionDetails.getParameters().getResourceTypes();
+		if (resourceTypes.isEmpty()) {
+			resourceTypes = new ArrayList<>(myFhirContext.getResourceTypes());
+		}
+
+		for (String next : resourceTypes) {
+			theDataSink.accept(new CompressionDictionaryResourceTypeJson().setResourceType(next));
+		}
+
+		return RunOutcome.SUCCESS;
+	}
+}
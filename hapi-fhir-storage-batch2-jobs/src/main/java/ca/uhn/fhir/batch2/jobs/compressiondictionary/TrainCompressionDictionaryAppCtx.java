@@ -0,0 +1,70 @@
+/*-
+ * #%L
+ * hapi-fhir-storage-batch2-jobs
+ * %%
+ * Copyright (C) 2014 - 2023 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ca.uhn.fhir.batch2.jobs.compressiondictionary;
+
+import ca.uhn.fhir.batch2.api.IJobStepWorker;
+import ca.uhn.fhir.batch2.api.VoidModel;
+import ca.uhn.fhir.batch2.model.JobDefinition;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Maintenance job which trains the per resource type compression dictionaries used
+ * by the JSOND resource encoding.
+ *
+ * @since 6.8.0
+ */
+@Configuration
+public class TrainCompressionDictionaryAppCtx {
+
+	public static final String JOB_TRAIN_COMPRESSION_DICTIONARY = "TRAIN_COMPRESSION_DICTIONARY";
+	public static final int PARAM_SAMPLE_SIZE_DEFAULT = 1000;
+
+	@Bean
+	public JobDefinition trainCompressionDictionaryJobDefinition() {
+		return JobDefinition
+			.newBuilder()
+			.setJobDefinitionId(JOB_TRAIN_COMPRESSION_DICTIONARY)
+			.setJobDescription("Train resource compression dictionaries")
+			.setJobDefinitionVersion(1)
+			.setParametersType(TrainCompressionDictionaryJobParameters.class)
+			.addFirstStep(
+				"generate-resource-types",
+				"Generate the list of resource types to train dictionaries for",
+				CompressionDictionaryResourceTypeJson.class,
+				trainCompressionDictionaryGenerateResourceTypesStep())
+			.addLastStep(
+				"train-dictionary",
+				"Train a compression dictionary for a resource type",
+				trainCompressionDictionaryStep())
+			.build();
+	}
+
+	@Bean
+	public IJobStepWorker<TrainCompressionDictionaryJobParameters, VoidModel, CompressionDictionaryResourceTypeJson> trainCompressionDictionaryGenerateResourceTypesStep() {
+		return new GenerateResourceTypesStep();
+	}
+
+	@Bean
+	public IJobStepWorker<TrainCompressionDictionaryJobParameters, CompressionDictionaryResourceTypeJson, VoidModel> trainCompressionDictionaryStep() {
+		return new TrainCompressionDictionaryStep();
+	}
+
+}
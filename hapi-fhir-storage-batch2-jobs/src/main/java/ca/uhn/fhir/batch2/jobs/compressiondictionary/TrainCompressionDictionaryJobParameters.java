@@ -0,0 +1,73 @@
+/*-
+ * #%L
+ * hapi-fhir-storage-batch2-jobs
+ * %%
+ * Copyright (C) 2014 - 2023 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ca.uhn.fhir.batch2.jobs.compressiondictionary;
+
+import ca.uhn.fhir.model.api.IModelJson;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.apache.commons.lang3.Validate;
+
+import javax.annotation.Nullable;
+import javax.validation.constraints.Min;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class is the parameters model object for starting a
+ * compression dictionary training job.
+ */
+public class TrainCompressionDictionaryJobParameters implements IModelJson {
+
+	/**
+	 * If empty, dictionaries are trained for all resource types
+	 */
+	@JsonProperty(value = "resourceTypes", required = false)
+	private List<String> myResourceTypes;
+
+	@JsonProperty(value = "sampleSize", required = false)
+	@Min(1)
+	@Nullable
+	private Integer mySampleSize;
+
+	public List<String> getResourceTypes() {
+		if (myResourceTypes == null) {
+			myResourceTypes = new ArrayList<>();
+		}
+		return myResourceTypes;
+	}
+
+	public TrainCompressionDictionaryJobParameters addResourceType(String theResourceType) {
+		Validate.notBlank(theResourceType, "theResourceType must not be blank or null");
+		getResourceTypes().add(theResourceType);
+		return this;
+	}
+
+	/**
+	 * The maximum number of recent resource versions of each type to train from
+	 */
+	@Nullable
+	public Integer getSampleSize() {
+		return mySampleSize;
+	}
+
+	public TrainCompressionDictionaryJobParameters setSampleSize(@Nullable Integer theSampleSize) {
+		mySampleSize = theSampleSize;
+		return this;
+	}
+}
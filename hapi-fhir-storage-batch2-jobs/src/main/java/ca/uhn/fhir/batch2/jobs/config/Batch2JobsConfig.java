@@ -19,6 +19,7 @@
  */
 package ca.uhn.fhir.batch2.jobs.config;
 
+import ca.uhn.fhir.batch2.jobs.compressiondictionary.TrainCompressionDictionaryAppCtx;
 import ca.uhn.fhir.batch2.jobs.export.BulkExportAppCtx;
 import ca.uhn.fhir.batch2.jobs.expunge.DeleteExpungeAppCtx;
 import ca.uhn.fhir.batch2.jobs.importpull.BulkImportPullConfig;
@@ -38,6 +39,7 @@ import org.springframework.context.annotation.Import;
 	BulkExportAppCtx.class,
 	TermCodeSystemJobConfig.class,
 	BulkImportPullConfig.class,
+	TrainCompressionDictionaryAppCtx.class,
 })
 public class Batch2JobsConfig {
 
@@ -90,6 +90,12 @@ public class JpaStorageSettings extends StorageSettings {
 	public static final int DEFAULT_BUNDLE_BATCH_QUEUE_CAPACITY = 200;
 
 	public static final int DEFAULT_BULK_EXPORT_FILE_MAXIMUM_CAPACITY = 1_000;
+	/**
+	 * Default value for {@link #setSearchResourceLoadBatchSize(int)}
+	 *
+	 * @since 6.8.0
+	 */
+	public static final int DEFAULT_SEARCH_RESOURCE_LOAD_BATCH_SIZE = 100;
 	/**
 	 * Default value for {@link #setMaximumSearchResultCountInTransaction(Integer)}
 	 *
@@ -316,6 +322,58 @@ public class JpaStorageSettings extends StorageSettings {
 	 */
 	private boolean myNonResourceDbHistoryEnabled = true;
 
+	/**
+	 * Since 6.8.0
+	 */
+	private boolean myResourceBodyPassthroughEnabled = false;
+
+	/**
+	 * Since 6.8.0
+	 */
+	private int mySearchResourceLoadThreadCount = 1;
+	private int mySearchResourceLoadBatchSize = DEFAULT_SEARCH_RESOURCE_LOAD_BATCH_SIZE;
+
+	/**
+	 * Since 6.8.0
+	 */
+	private long myParsedResourceCacheMaximumSize = 0;
+
+	/**
+	 * Since 6.8.0
+	 */
+	private boolean myBatchIndexWritesEnabled = false;
+
+	/**
+	 * Since 6.8.0
+	 */
+	private boolean mySearchIndexDigestEnabled = false;
+
+	/**
+	 * Since 6.8.0
+	 */
+	private boolean mySearchResultChunkStorageEnabled = false;
+	private boolean myKeysetPagingEnabled = false;
+	/**
+	 * Since 6.8.0
+	 */
+	private int mySearchIncludeThreadCount = 1;
+	/**
+	 * Since 6.8.0
+	 */
+	private boolean mySelectivityBasedPredicateOrderingEnabled = false;
+	/**
+	 * Since 6.8.0
+	 */
+	private boolean mySearchWorkloadCollectionEnabled = false;
+	/**
+	 * Since 6.8.0
+	 */
+	private long mySynchronousSearchResultCacheMaximumSize = 0;
+	/**
+	 * Since 6.8.0
+	 */
+	private int mySearchPagePrefetchMaximumSize = 0;
+
 	/**
 	 * Constructor
 	 */
@@ -950,10 +1008,36 @@ public class JpaStorageSettings extends StorageSettings {
 		myExpungeThreadCount = Math.max(myExpungeThreadCount, 1); // Minimum of 1
 	}
 
+	/**
+	 * Specifies the encoding used to store the text of new resource versions (default is
+	 * {@link ResourceEncodingEnum#JSONC}). {@link ResourceEncodingEnum#BJSON} stores a compact
+	 * binary form which is smaller than JSON and does not need to be decompressed in order
+	 * to be read. {@link ResourceEncodingEnum#JSOND} compresses using a dictionary trained for
+	 * the resource type by the <code>TRAIN_COMPRESSION_DICTIONARY</code> batch job, and falls back
+	 * to {@link ResourceEncodingEnum#JSONC} for resource types with no trained dictionary.
+	 * <p>
+	 * Changing this setting does not affect previously stored resource versions. These can be
+	 * converted to the configured encoding by running the <code>$reindex</code> operation with
+	 * <code>optimizeStorage</code> set to <code>ALL_VERSIONS</code>.
+	 * </p>
+	 */
 	public ResourceEncodingEnum getResourceEncoding() {
 		return myResourceEncoding;
 	}
 
+	/**
+	 * Specifies the encoding used to store the text of new resource versions (default is
+	 * {@link ResourceEncodingEnum#JSONC}). {@link ResourceEncodingEnum#BJSON} stores a compact
+	 * binary form which is smaller than JSON and does not need to be decompressed in order
+	 * to be read. {@link ResourceEncodingEnum#JSOND} compresses using a dictionary trained for
+	 * the resource type by the <code>TRAIN_COMPRESSION_DICTIONARY</code> batch job, and falls back
+	 * to {@link ResourceEncodingEnum#JSONC} for resource types with no trained dictionary.
+	 * <p>
+	 * Changing this setting does not affect previously stored resource versions. These can be
+	 * converted to the configured encoding by running the <code>$reindex</code> operation with
+	 * <code>optimizeStorage</code> set to <code>ALL_VERSIONS</code>.
+	 * </p>
+	 */
 	public void setResourceEncoding(ResourceEncodingEnum theResourceEncoding) {
 		myResourceEncoding = theResourceEncoding;
 	}
@@ -2309,6 +2393,492 @@ public class JpaStorageSettings extends StorageSettings {
 		myNonResourceDbHistoryEnabled = theNonResourceDbHistoryEnabled;
 	}
 
+	/**
+	 * If enabled (default is <code>false</code>), a plain JSON read or vread through the REST server
+	 * streams the stored resource body directly to the client instead of parsing it
+	 * into a model object and encoding it again. The resource ID and <code>Resource.meta</code>
+	 * are spliced into the stored body.
+	 * <p>
+	 * This only applies when the stored body is JSON, the client requests JSON without pretty
+	 * printing, <code>_summary</code> or <code>_elements</code>, and no interceptors are registered
+	 * against the {@link ca.uhn.fhir.interceptor.api.Pointcut#STORAGE_PREACCESS_RESOURCES},
+	 * {@link ca.uhn.fhir.interceptor.api.Pointcut#STORAGE_PRESHOW_RESOURCES} or
+	 * {@link ca.uhn.fhir.interceptor.api.Pointcut#SERVER_OUTGOING_RESPONSE} pointcuts.
+	 * The body is only passed through for reads made using
+	 * {@link ca.uhn.fhir.jpa.api.dao.IFhirResourceDao#readAllowingBodyPassthrough(org.hl7.fhir.instance.model.api.IIdType, ca.uhn.fhir.rest.api.server.RequestDetails)},
+	 * which is what the read method of the JPA resource provider uses. Any other DAO read returns a
+	 * fully populated resource.
+	 * </p>
+	 *
+	 * @since 6.8.0
+	 */
+	public boolean isResourceBodyPassthroughEnabled() {
+		return myResourceBodyPassthroughEnabled;
+	}
+
+	/**
+	 * If enabled (default is <code>false</code>), a plain JSON read or vread through the REST server
+	 * streams the stored resource body directly to the client instead of parsing it
+	 * into a model object and encoding it again. The resource ID and <code>Resource.meta</code>
+	 * are spliced into the stored body.
+	 * <p>
+	 * This only applies when the stored body is JSON, the client requests JSON without pretty
+	 * printing, <code>_summary</code> or <code>_elements</code>, and no interceptors are registered
+	 * against the {@link ca.uhn.fhir.interceptor.api.Pointcut#STORAGE_PREACCESS_RESOURCES},
+	 * {@link ca.uhn.fhir.interceptor.api.Pointcut#STORAGE_PRESHOW_RESOURCES} or
+	 * {@link ca.uhn.fhir.interceptor.api.Pointcut#SERVER_OUTGOING_RESPONSE} pointcuts.
+	 * The body is only passed through for reads made using
+	 * {@link ca.uhn.fhir.jpa.api.dao.IFhirResourceDao#readAllowingBodyPassthrough(org.hl7.fhir.instance.model.api.IIdType, ca.uhn.fhir.rest.api.server.RequestDetails)},
+	 * which is what the read method of the JPA resource provider uses. Any other DAO read returns a
+	 * fully populated resource.
+	 * </p>
+	 *
+	 * @since 6.8.0
+	 */
+	public void setResourceBodyPassthroughEnabled(boolean theResourceBodyPassthroughEnabled) {
+		myResourceBodyPassthroughEnabled = theResourceBodyPassthroughEnabled;
+	}
+
+	/**
+	 * Specifies the number of threads used to load and parse the resources for a page of search
+	 * results (default is <code>1</code>). If set to a value greater than <code>1</code>, the
+	 * resource IDs on a page are split into sub-batches of {@link #getSearchResourceLoadBatchSize()}
+	 * IDs, and each sub-batch is fetched and parsed concurrently in its own read-only database
+	 * transaction. The order of the results is not affected.
+	 * <p>
+	 * Each thread uses its own database connection, so this value should be set with the size
+	 * of the connection pool in mind. The thread pool is created the first time it is needed, so
+	 * changes to this setting after that point have no effect.
+	 * </p>
+	 *
+	 * @since 6.8.0
+	 */
+	public int getSearchResourceLoadThreadCount() {
+		return mySearchResourceLoadThreadCount;
+	}
+
+	/**
+	 * Specifies the number of threads used to load and parse the resources for a page of search
+	 * results (default is <code>1</code>). If set to a value greater than <code>1</code>, the
+	 * resource IDs on a page are split into sub-batches of {@link #getSearchResourceLoadBatchSize()}
+	 * IDs, and each sub-batch is fetched and parsed concurrently in its own read-only database
+	 * transaction. The order of the results is not affected.
+	 * <p>
+	 * Each thread uses its own database connection, so this value should be set with the size
+	 * of the connection pool in mind. The thread pool is created the first time it is needed, so
+	 * changes to this setting after that point have no effect.
+	 * </p>
+	 *
+	 * @since 6.8.0
+	 */
+	public void setSearchResourceLoadThreadCount(int theSearchResourceLoadThreadCount) {
+		Validate.isTrue(theSearchResourceLoadThreadCount >= 1, "theSearchResourceLoadThreadCount must be at least 1");
+		mySearchResourceLoadThreadCount = theSearchResourceLoadThreadCount;
+	}
+
+	/**
+	 * Specifies the maximum number of resources loaded by a single thread when search result
+	 * resources are being loaded in parallel (default is {@value #DEFAULT_SEARCH_RESOURCE_LOAD_BATCH_SIZE}).
+	 * This setting has no effect unless {@link #setSearchResourceLoadThreadCount(int)} is set to a
+	 * value greater than <code>1</code>, and pages smaller than this size are always loaded on the
+	 * calling thread.
+	 *
+	 * @since 6.8.0
+	 */
+	public int getSearchResourceLoadBatchSize() {
+		return mySearchResourceLoadBatchSize;
+	}
+
+	/**
+	 * Specifies the maximum number of resources loaded by a single thread when search result
+	 * resources are being loaded in parallel (default is {@value #DEFAULT_SEARCH_RESOURCE_LOAD_BATCH_SIZE}).
+	 * This setting has no effect unless {@link #setSearchResourceLoadThreadCount(int)} is set to a
+	 * value greater than <code>1</code>, and pages smaller than this size are always loaded on the
+	 * calling thread.
+	 *
+	 * @since 6.8.0
+	 */
+	public void setSearchResourceLoadBatchSize(int theSearchResourceLoadBatchSize) {
+		Validate.isTrue(theSearchResourceLoadBatchSize >= 1, "theSearchResourceLoadBatchSize must be at least 1");
+		mySearchResourceLoadBatchSize = theSearchResourceLoadBatchSize;
+	}
+
+	/**
+	 * Specifies the maximum number of parsed resource bodies to keep in an in-memory cache keyed
+	 * by resource ID and version (default is <code>0</code>, meaning that the cache is disabled).
+	 * When enabled, reads and searches that load a resource version which has recently been loaded
+	 * use a copy of the cached model object instead of decoding and parsing the stored resource text.
+	 * <p>
+	 * Because the stored body for a given resource version does not change (other than through an
+	 * update with history rewrite, which removes the entry), cached entries do not become stale.
+	 * This is most useful for resources which are read very frequently but rarely updated, such as
+	 * Practitioner, Organization or Location resources. Entries expire ten minutes after they were
+	 * added.
+	 * </p>
+	 *
+	 * @since 6.8.0
+	 */
+	public long getParsedResourceCacheMaximumSize() {
+		return myParsedResourceCacheMaximumSize;
+	}
+
+	/**
+	 * Specifies the maximum number of parsed resource bodies to keep in an in-memory cache keyed
+	 * by resource ID and version (default is <code>0</code>, meaning that the cache is disabled).
+	 * When enabled, reads and searches that load a resource version which has recently been loaded
+	 * use a copy of the cached model object instead of decoding and parsing the stored resource text.
+	 * <p>
+	 * Because the stored body for a given resource version does not change (other than through an
+	 * update with history rewrite, which removes the entry), cached entries do not become stale.
+	 * This is most useful for resources which are read very frequently but rarely updated, such as
+	 * Practitioner, Organization or Location resources. Entries expire ten minutes after they were
+	 * added.
+	 * </p>
+	 *
+	 * @since 6.8.0
+	 */
+	public void setParsedResourceCacheMaximumSize(long theParsedResourceCacheMaximumSize) {
+		Validate.isTrue(theParsedResourceCacheMaximumSize >= 0, "theParsedResourceCacheMaximumSize must not be negative");
+		myParsedResourceCacheMaximumSize = theParsedResourceCacheMaximumSize;
+	}
+
+	/**
+	 * If enabled (default is <code>false</code>), new search index rows (string, token, date,
+	 * quantity, number, URI, coords, combo and resource link rows) are not persisted through
+	 * Hibernate one entity at a time. Instead, the rows for all resources written in a database
+	 * transaction are collected and written when the session is flushed, using a single
+	 * multi-row <code>INSERT</code> statement per index table. Index rows which are no longer
+	 * needed are removed using a single <code>DELETE ... WHERE ... IN (...)</code> statement
+	 * per index table.
+	 * <p>
+	 * On databases which do not support multi-row <code>INSERT</code> statements (e.g. Oracle),
+	 * the rows are written using JDBC batches instead.
+	 * </p>
+	 *
+	 * @since 6.8.0
+	 */
+	public boolean isBatchIndexWritesEnabled() {
+		return myBatchIndexWritesEnabled;
+	}
+
+	/**
+	 * If enabled (default is <code>false</code>), new search index rows (string, token, date,
+	 * quantity, number, URI, coords, combo and resource link rows) are not persisted through
+	 * Hibernate one entity at a time. Instead, the rows for all resources written in a database
+	 * transaction are collected and written when the session is flushed, using a single
+	 * multi-row <code>INSERT</code> statement per index table. Index rows which are no longer
+	 * needed are removed using a single <code>DELETE ... WHERE ... IN (...)</code> statement
+	 * per index table.
+	 * <p>
+	 * On databases which do not support multi-row <code>INSERT</code> statements (e.g. Oracle),
+	 * the rows are written using JDBC batches instead.
+	 * </p>
+	 *
+	 * @since 6.8.0
+	 */
+	public void setBatchIndexWritesEnabled(boolean theBatchIndexWritesEnabled) {
+		myBatchIndexWritesEnabled = theBatchIndexWritesEnabled;
+	}
+
+	/**
+	 * If enabled (default is <code>false</code>), a digest of the extracted search index values
+	 * is stored with each resource. When a resource is updated and the digest of the newly
+	 * extracted index values matches the stored digest, the existing index rows are not loaded
+	 * or compared and index synchronization is skipped entirely. This makes updates which only
+	 * change elements that are not indexed (e.g. most changes to <code>Resource.meta</code> or
+	 * to extensions) considerably cheaper.
+	 * <p>
+	 * Reindexing a resource always synchronizes its index rows, regardless of this setting.
+	 * </p>
+	 *
+	 * @since 6.8.0
+	 */
+	public boolean isSearchIndexDigestEnabled() {
+		return mySearchIndexDigestEnabled;
+	}
+
+	/**
+	 * If enabled (default is <code>false</code>), a digest of the extracted search index values
+	 * is stored with each resource. When a resource is updated and the digest of the newly
+	 * extracted index values matches the stored digest, the existing index rows are not loaded
+	 * or compared and index synchronization is skipped entirely. This makes updates which only
+	 * change elements that are not indexed (e.g. most changes to <code>Resource.meta</code> or
+	 * to extensions) considerably cheaper.
+	 * <p>
+	 * Reindexing a resource always synchronizes its index rows, regardless of this setting.
+	 * </p>
+	 *
+	 * @since 6.8.0
+	 */
+	public void setSearchIndexDigestEnabled(boolean theSearchIndexDigestEnabled) {
+		mySearchIndexDigestEnabled = theSearchIndexDigestEnabled;
+	}
+
+	/**
+	 * If enabled (default is <code>false</code>), the resource PIDs matched by a search are stored
+	 * in the search result cache as a small number of chunks, each holding many PIDs in a compact
+	 * encoded form (in the <code>HFJ_SEARCH_RESULT_CHUNK</code> table), instead of as one row per PID
+	 * (in the <code>HFJ_SEARCH_RESULT</code> table). This greatly reduces the number of rows which
+	 * are written when large searches are performed, and deleted again when they expire.
+	 * <p>
+	 * This setting must be enabled when the server starts in order for chunk storage to be available.
+	 * It may then be disabled and re-enabled at runtime, and each search keeps storing its results in
+	 * the form it started with. Searches whose results were stored as chunks are treated as expired if
+	 * the server is later restarted with this setting disabled.
+	 * </p>
+	 *
+	 * @since 6.8.0
+	 */
+	public boolean isSearchResultChunkStorageEnabled() {
+		return mySearchResultChunkStorageEnabled;
+	}
+
+	/**
+	 * If enabled (default is <code>false</code>), the resource PIDs matched by a search are stored
+	 * in the search result cache as a small number of chunks, each holding many PIDs in a compact
+	 * encoded form (in the <code>HFJ_SEARCH_RESULT_CHUNK</code> table), instead of as one row per PID
+	 * (in the <code>HFJ_SEARCH_RESULT</code> table). This greatly reduces the number of rows which
+	 * are written when large searches are performed, and deleted again when they expire.
+	 * <p>
+	 * This setting must be enabled when the server starts in order for chunk storage to be available.
+	 * It may then be disabled and re-enabled at runtime, and each search keeps storing its results in
+	 * the form it started with. Searches whose results were stored as chunks are treated as expired if
+	 * the server is later restarted with this setting disabled.
+	 * </p>
+	 *
+	 * @since 6.8.0
+	 */
+	public void setSearchResultChunkStorageEnabled(boolean theSearchResultChunkStorageEnabled) {
+		mySearchResultChunkStorageEnabled = theSearchResultChunkStorageEnabled;
+	}
+
+	/**
+	 * If enabled (default is <code>false</code>), searches which are paged using <code>_offset</code> and
+	 * sorted on <code>_lastUpdated</code> or on a single date search parameter use keyset paging where possible.
+	 * The sort value and resource ID of the last result on each page are remembered, and the query for the
+	 * following page continues after that position instead of asking the database to skip over all of the
+	 * earlier results. This makes the cost of fetching a page independent of how deep into the results it is.
+	 * <p>
+	 * Positions are recorded against the UUID of the search which served the previous page, which is added to
+	 * the paging links, and are only used for the exact offset and search they were recorded for. They are held
+	 * in memory on the server which served the previous page, so a page which is requested out of order, without
+	 * the paging links or from a different server falls back to regular offset paging.
+	 * </p>
+	 *
+	 * @since 6.8.0
+	 */
+	public boolean isKeysetPagingEnabled() {
+		return myKeysetPagingEnabled;
+	}
+
+	/**
+	 * If enabled (default is <code>false</code>), searches which are paged using <code>_offset</code> and
+	 * sorted on <code>_lastUpdated</code> or on a single date search parameter use keyset paging where possible.
+	 *
+	 * @see #isKeysetPagingEnabled()
+	 * @since 6.8.0
+	 */
+	public void setKeysetPagingEnabled(boolean theKeysetPagingEnabled) {
+		myKeysetPagingEnabled = theKeysetPagingEnabled;
+	}
+
+	/**
+	 * Specifies the number of threads used to resolve <code>_include</code> and <code>_revinclude</code>
+	 * parameters (default is <code>1</code>). If set to a value greater than <code>1</code> and a search
+	 * requests more than one include or revinclude, the queries for the different parameters in each
+	 * round of include resolution are performed concurrently, each in its own read-only database
+	 * transaction, and the results are then merged.
+	 * <p>
+	 * Each thread uses its own database connection, so this value should be set with the size
+	 * of the connection pool in mind. The thread pool is created the first time it is needed, so
+	 * changes to this setting after that point have no effect.
+	 * </p>
+	 *
+	 * @since 6.8.0
+	 */
+	public int getSearchIncludeThreadCount() {
+		return mySearchIncludeThreadCount;
+	}
+
+	/**
+	 * Specifies the number of threads used to resolve <code>_include</code> and <code>_revinclude</code>
+	 * parameters (default is <code>1</code>). If set to a value greater than <code>1</code> and a search
+	 * requests more than one include or revinclude, the queries for the different parameters in each
+	 * round of include resolution are performed concurrently, each in its own read-only database
+	 * transaction, and the results are then merged.
+	 * <p>
+	 * Each thread uses its own database connection, so this value should be set with the size
+	 * of the connection pool in mind. The thread pool is created the first time it is needed, so
+	 * changes to this setting after that point have no effect.
+	 * </p>
+	 *
+	 * @since 6.8.0
+	 */
+	public void setSearchIncludeThreadCount(int theSearchIncludeThreadCount) {
+		Validate.isTrue(theSearchIncludeThreadCount >= 1, "theSearchIncludeThreadCount must be at least 1");
+		mySearchIncludeThreadCount = theSearchIncludeThreadCount;
+	}
+
+	/**
+	 * If enabled (default is <code>false</code>), the predicates for the parameters of a search are ordered
+	 * using an estimate of the number of index rows matching each parameter, instead of in the order in which
+	 * the parameters appear in the request. The most selective parameter becomes the root of the generated
+	 * SQL and other parameters are joined to it, and token parameters which match a very large number of rows
+	 * are expressed as an <code>IN (subselect)</code> instead of as a join.
+	 * <p>
+	 * Estimates are obtained with a limited <code>COUNT</code> query over the matching index rows and are cached in memory.
+	 * Cached estimates which are a few minutes old are refreshed in the background, so searches do not wait for them
+	 * to be recounted. Searches with fewer than two parameters which can be estimated are left as they are, and no
+	 * rows are counted for them. The chosen plan is reported through the
+	 * {@link ca.uhn.fhir.interceptor.api.Pointcut#JPA_PERFTRACE_INFO} pointcut.
+	 * </p>
+	 *
+	 * @since 6.8.0
+	 */
+	public boolean isSelectivityBasedPredicateOrderingEnabled() {
+		return mySelectivityBasedPredicateOrderingEnabled;
+	}
+
+	/**
+	 * If enabled (default is <code>false</code>), the predicates for the parameters of a search are ordered
+	 * using an estimate of the number of index rows matching each parameter, instead of in the order in which
+	 * the parameters appear in the request. The most selective parameter becomes the root of the generated
+	 * SQL and other parameters are joined to it, and token parameters which match a very large number of rows
+	 * are expressed as an <code>IN (subselect)</code> instead of as a join.
+	 * <p>
+	 * Estimates are obtained with a limited <code>COUNT</code> query over the matching index rows and are cached in memory.
+	 * Cached estimates which are a few minutes old are refreshed in the background, so searches do not wait for them
+	 * to be recounted. Searches with fewer than two parameters which can be estimated are left as they are, and no
+	 * rows are counted for them. The chosen plan is reported through the
+	 * {@link ca.uhn.fhir.interceptor.api.Pointcut#JPA_PERFTRACE_INFO} pointcut.
+	 * </p>
+	 *
+	 * @since 6.8.0
+	 */
+	public void setSelectivityBasedPredicateOrderingEnabled(boolean theSelectivityBasedPredicateOrderingEnabled) {
+		mySelectivityBasedPredicateOrderingEnabled = theSelectivityBasedPredicateOrderingEnabled;
+	}
+
+	/**
+	 * If enabled (default is <code>false</code>), the server records the combination of search parameters
+	 * used by each search, along with how often each combination is used and how long the searches take. The
+	 * collected workload is used by the <code>$search-index-advisor</code> operation to recommend combo search
+	 * parameters.
+	 * <p>
+	 * Statistics are held in memory on each server and are lost on restart. When enabled, the time taken to load
+	 * the first page of results of an asynchronous search is measured before the search is returned.
+	 * </p>
+	 *
+	 * @since 6.8.0
+	 */
+	public boolean isSearchWorkloadCollectionEnabled() {
+		return mySearchWorkloadCollectionEnabled;
+	}
+
+	/**
+	 * If enabled (default is <code>false</code>), the server records the combination of search parameters
+	 * used by each search, along with how often each combination is used and how long the searches take. The
+	 * collected workload is used by the <code>$search-index-advisor</code> operation to recommend combo search
+	 * parameters.
+	 * <p>
+	 * Statistics are held in memory on each server and are lost on restart. When enabled, the time taken to load
+	 * the first page of results of an asynchronous search is measured before the search is returned.
+	 * </p>
+	 *
+	 * @since 6.8.0
+	 */
+	public void setSearchWorkloadCollectionEnabled(boolean theSearchWorkloadCollectionEnabled) {
+		mySearchWorkloadCollectionEnabled = theSearchWorkloadCollectionEnabled;
+	}
+
+	/**
+	 * Specifies the maximum number of synchronous search results to keep in an in-memory cache
+	 * (default is <code>0</code>, meaning that the cache is disabled). When enabled, the resource IDs
+	 * matched by a synchronous search are cached, keyed by the normalized search URL and the request
+	 * partition, and a repeat of the same search loads the cached resources instead of querying the
+	 * search indexes again. Includes, revincludes and resource access interceptors are still applied
+	 * to every search.
+	 * <p>
+	 * Cached results for a resource type are discarded as soon as a resource of that type is created,
+	 * updated or deleted on this server, and within a minute when the change is made on another server.
+	 * Changes on other servers are detected by checking the most recent update and deletion times for
+	 * the resource type. Searches whose results can depend on other resource types (e.g. chained or
+	 * <code>_has</code> parameters) are not cached. Entries expire ten minutes after they were added,
+	 * which bounds staleness caused by changes which are not made through the DAOs (e.g. reindexing).
+	 * </p>
+	 *
+	 * @since 6.8.0
+	 */
+	public long getSynchronousSearchResultCacheMaximumSize() {
+		return mySynchronousSearchResultCacheMaximumSize;
+	}
+
+	/**
+	 * Specifies the maximum number of synchronous search results to keep in an in-memory cache
+	 * (default is <code>0</code>, meaning that the cache is disabled). When enabled, the resource IDs
+	 * matched by a synchronous search are cached, keyed by the normalized search URL and the request
+	 * partition, and a repeat of the same search loads the cached resources instead of querying the
+	 * search indexes again. Includes, revincludes and resource access interceptors are still applied
+	 * to every search.
+	 * <p>
+	 * Cached results for a resource type are discarded as soon as a resource of that type is created,
+	 * updated or deleted on this server, and within a minute when the change is made on another server.
+	 * Changes on other servers are detected by checking the most recent update and deletion times for
+	 * the resource type. Searches whose results can depend on other resource types (e.g. chained or
+	 * <code>_has</code> parameters) are not cached. Entries expire ten minutes after they were added,
+	 * which bounds staleness caused by changes which are not made through the DAOs (e.g. reindexing).
+	 * </p>
+	 *
+	 * @since 6.8.0
+	 */
+	public void setSynchronousSearchResultCacheMaximumSize(long theSynchronousSearchResultCacheMaximumSize) {
+		Validate.isTrue(theSynchronousSearchResultCacheMaximumSize >= 0, "theSynchronousSearchResultCacheMaximumSize must not be negative");
+		mySynchronousSearchResultCacheMaximumSize = theSynchronousSearchResultCacheMaximumSize;
+	}
+
+	/**
+	 * Specifies the maximum number of prefetched pages of search results to hold in memory
+	 * (default is <code>0</code>, meaning that pages are not prefetched). When enabled, each time a
+	 * client fetches a page of a persisted (paged) search, the matching resources for the following
+	 * page of the same size are loaded and parsed in the background, so that they are ready when the
+	 * client asks for that page. Clients which read through a large result set page by page then only
+	 * wait for the includes of each page to be loaded.
+	 * <p>
+	 * Pages are only prefetched once the search has found enough results to fill them, so prefetching
+	 * never causes a paused search to be resumed. A prefetched page is discarded if any of its resources
+	 * have been changed by the time it is requested, and includes, revincludes and resource access
+	 * interceptors are always applied to the request which actually fetches the page. Prefetched pages
+	 * expire one minute after they were loaded.
+	 * </p>
+	 *
+	 * @since 6.8.0
+	 */
+	public int getSearchPagePrefetchMaximumSize() {
+		return mySearchPagePrefetchMaximumSize;
+	}
+
+	/**
+	 * Specifies the maximum number of prefetched pages of search results to hold in memory
+	 * (default is <code>0</code>, meaning that pages are not prefetched). When enabled, each time a
+	 * client fetches a page of a persisted (paged) search, the matching resources for the following
+	 * page of the same size are loaded and parsed in the background, so that they are ready when the
+	 * client asks for that page. Clients which read through a large result set page by page then only
+	 * wait for the includes of each page to be loaded.
+	 * <p>
+	 * Pages are only prefetched once the search has found enough results to fill them, so prefetching
+	 * never causes a paused search to be resumed. A prefetched page is discarded if any of its resources
+	 * have been changed by the time it is requested, and includes, revincludes and resource access
+	 * interceptors are always applied to the request which actually fetches the page. Prefetched pages
+	 * expire one minute after they were loaded.
+	 * </p>
+	 *
+	 * @since 6.8.0
+	 */
+	public void setSearchPagePrefetchMaximumSize(int theSearchPagePrefetchMaximumSize) {
+		Validate.isTrue(theSearchPagePrefetchMaximumSize >= 0, "theSearchPagePrefetchMaximumSize must not be negative");
+		mySearchPagePrefetchMaximumSize = theSearchPagePrefetchMaximumSize;
+	}
+
 	public enum StoreMetaSourceInformationEnum {
 		NONE(false, false),
 		SOURCE_URI(true, false),
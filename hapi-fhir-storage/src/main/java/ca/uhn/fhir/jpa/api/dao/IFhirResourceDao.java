@@ -246,6 +246,23 @@ public interface IFhirResourceDao<T extends IBaseResource> extends IDao {
 	 */
 	T read(IIdType theId, RequestDetails theRequestDetails, boolean theDeletedOk);
 
+	/**
+	 * Read a resource which will be written by itself as the response to a client read. If
+	 * {@link ca.uhn.fhir.jpa.api.config.JpaStorageSettings#setResourceBodyPassthroughEnabled(boolean) resource body passthrough}
+	 * is enabled and nothing needs to inspect the resource contents before it is written, the returned
+	 * resource may only hold its ID, its meta and the stored resource body (see
+	 * {@link ca.uhn.fhir.rest.server.util.ResourceBodyPassthroughUtil}). Otherwise this behaves exactly
+	 * like {@link #read(IIdType, RequestDetails)}.
+	 *
+	 * @param theRequestDetails The request details including permissions and partitioning information
+	 * @throws ResourceNotFoundException If the ID is not known to the server
+	 * @throws ResourceGoneException     If the resource has been deleted
+	 * @since 6.8.0
+	 */
+	default T readAllowingBodyPassthrough(IIdType theId, RequestDetails theRequestDetails) {
+		return read(theId, theRequestDetails);
+	}
+
 	/**
 	 * Read an entity from the database, and return it. Note that here we're talking about whatever the
 	 * native database representation is, not the parsed {@link IBaseResource} instance.
@@ -22,6 +22,7 @@ package ca.uhn.fhir.jpa.api.dao;
 import ca.uhn.fhir.i18n.Msg;
 import ca.uhn.fhir.jpa.api.model.ExpungeOptions;
 import ca.uhn.fhir.jpa.api.model.ExpungeOutcome;
+import ca.uhn.fhir.parser.IBundleEntryIterator;
 import ca.uhn.fhir.rest.api.server.IBundleProvider;
 import ca.uhn.fhir.rest.api.server.RequestDetails;
 import ca.uhn.fhir.rest.api.server.storage.IResourcePersistentId;
@@ -85,6 +86,17 @@ public interface IFhirSystemDao<T, MT> extends IDao {
 		throw new UnsupportedOperationException(Msg.code(570));
 	}
 
+	/**
+	 * Executes a FHIR batch whose entries are supplied incrementally (e.g. as they are
+	 * parsed from the request body), committing each entry as it is processed. This
+	 * method must not be called from within a DB transaction.
+	 *
+	 * @since 6.8.0
+	 */
+	default T batchIncrementally(RequestDetails theRequestDetails, IBundleEntryIterator<?> theRequestEntries) {
+		throw new UnsupportedOperationException(Msg.code(2414));
+	}
+
 	/**
 	 * Preload resources from the database in batch. This method is purely
 	 * a performance optimization and must be purely idempotent.
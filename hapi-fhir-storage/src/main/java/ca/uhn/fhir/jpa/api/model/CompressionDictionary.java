@@ -0,0 +1,58 @@
+/*-
+ * #%L
+ * HAPI FHIR Storage api
+ * %%
+ * Copyright (C) 2014 - 2023 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ca.uhn.fhir.jpa.api.model;
+
+import org.apache.commons.lang3.Validate;
+
+/**
+ * A trained compression dictionary, used by the <code>JSOND</code> resource encoding
+ *
+ * @see ca.uhn.fhir.jpa.api.svc.IResourceCompressionDictionarySvc
+ * @since 6.8.0
+ */
+public class CompressionDictionary {
+
+	private final long myId;
+	private final String myResourceType;
+	private final byte[] myDictionary;
+
+	public CompressionDictionary(long theId, String theResourceType, byte[] theDictionary) {
+		Validate.notNull(theDictionary, "theDictionary must not be null");
+		myId = theId;
+		myResourceType = theResourceType;
+		myDictionary = theDictionary;
+	}
+
+	public long getId() {
+		return myId;
+	}
+
+	public String getResourceType() {
+		return myResourceType;
+	}
+
+	/**
+	 * Returns the dictionary contents. The returned array must not be modified.
+	 */
+	public byte[] getDictionary() {
+		return myDictionary;
+	}
+
+}
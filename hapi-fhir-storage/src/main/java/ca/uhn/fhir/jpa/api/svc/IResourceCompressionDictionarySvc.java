@@ -0,0 +1,62 @@
+/*-
+ * #%L
+ * HAPI FHIR Storage api
+ * %%
+ * Copyright (C) 2014 - 2023 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ca.uhn.fhir.jpa.api.svc;
+
+import ca.uhn.fhir.jpa.api.model.CompressionDictionary;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Stores and trains the per resource type compression dictionaries used by the
+ * <code>JSOND</code> resource encoding. Dictionaries are never modified once stored,
+ * since existing resource versions refer to them by ID.
+ *
+ * @since 6.8.0
+ */
+public interface IResourceCompressionDictionarySvc {
+
+	/**
+	 * Returns the most recently trained dictionary for the given resource type, or
+	 * <code>null</code> if no dictionary has been trained for it yet
+	 */
+	@Nullable
+	CompressionDictionary getCurrentDictionary(@Nonnull String theResourceType);
+
+	/**
+	 * Returns the dictionary with the given ID
+	 *
+	 * @throws ca.uhn.fhir.rest.server.exceptions.InternalErrorException If no dictionary exists with the given ID
+	 */
+	@Nonnull
+	CompressionDictionary getDictionary(long theDictionaryId);
+
+	/**
+	 * Trains a new dictionary for the given resource type using the most recently stored
+	 * versions of resources of that type, and makes it the current dictionary for the type.
+	 *
+	 * @param theResourceType The resource type
+	 * @param theSampleSize   The maximum number of resource versions to sample
+	 * @return The new dictionary, or <code>null</code> if not enough resources of the given type exist to train one
+	 */
+	@Nullable
+	CompressionDictionary trainDictionary(@Nonnull String theResourceType, int theSampleSize);
+
+}
@@ -51,6 +51,7 @@ import ca.uhn.fhir.jpa.searchparam.matcher.InMemoryResourceMatcher;
 import ca.uhn.fhir.jpa.searchparam.matcher.SearchParamMatcher;
 import ca.uhn.fhir.model.api.ResourceMetadataKeyEnum;
 import ca.uhn.fhir.parser.DataFormatException;
+import ca.uhn.fhir.parser.IBundleEntryIterator;
 import ca.uhn.fhir.parser.IParser;
 import ca.uhn.fhir.rest.api.Constants;
 import ca.uhn.fhir.rest.api.PatchTypeEnum;
@@ -138,6 +139,10 @@ public abstract class BaseTransactionProcessor {
 	public static final String URN_PREFIX_ESCAPED = UrlUtil.escapeUrlParam(URN_PREFIX);
 	public static final Pattern UNQUALIFIED_MATCH_URL_START = Pattern.compile("^[a-zA-Z0-9_-]+=");
 	public static final Pattern INVALID_PLACEHOLDER_PATTERN = Pattern.compile("[a-zA-Z]+:.*");
+	/**
+	 * The number of entries read and processed together by {@link #batchIncrementally(RequestDetails, IBundleEntryIterator)}
+	 */
+	public static final int INCREMENTAL_BATCH_CHUNK_SIZE = 100;
 	private static final Logger ourLog = LoggerFactory.getLogger(BaseTransactionProcessor.class);
 	@Autowired
 	private PlatformTransactionManager myTxManager;
@@ -383,28 +388,75 @@ public abstract class BaseTransactionProcessor {
 		AsyncUtil.awaitLatchAndIgnoreInterrupt(completionLatch, 300L, TimeUnit.SECONDS);
 
 		// Now, create the bundle response in original order
-		Object nextResponseEntry;
 		for (int i = 0; i < requestEntriesSize; i++) {
+			addBatchResponseEntry(response, responseMap.get(i));
+		}
 
-			nextResponseEntry = responseMap.get(i);
-			if (nextResponseEntry instanceof ServerResponseExceptionHolder) {
-				ServerResponseExceptionHolder caughtEx = (ServerResponseExceptionHolder) nextResponseEntry;
-				if (caughtEx.getException() != null) {
-					IBase nextEntry = myVersionAdapter.addEntry(response);
-					populateEntryWithOperationOutcome(caughtEx.getException(), nextEntry);
-					myVersionAdapter.setResponseStatus(nextEntry, toStatusString(caughtEx.getException().getStatusCode()));
-				}
-			} else {
+		long delay = System.currentTimeMillis() - start;
+		ourLog.info("Batch completed in {}ms", delay);
+
+		return response;
+	}
+
+	/**
+	 * Processes a batch Bundle whose entries are supplied incrementally, e.g. by
+	 * {@link ca.uhn.fhir.parser.IParser#parseBundleEntries(Class, java.io.InputStream)}.
+	 * Entries are read in groups of {@link #INCREMENTAL_BATCH_CHUNK_SIZE}, and each group is
+	 * processed exactly as a batch processed by {@link #transaction(RequestDetails, IBaseBundle, boolean)}
+	 * would be (each entry is committed in its own database transaction) before the next group
+	 * is read, so the request Bundle never needs to be held in memory in its entirety.
+	 * <p>
+	 * Because entries are committed as they are read, <code>Bundle.type</code> must be
+	 * <code>batch</code> and must appear before <code>Bundle.entry</code> in the request.
+	 * </p>
+	 *
+	 * @since 6.8.0
+	 */
+	public IBaseBundle batchIncrementally(RequestDetails theRequestDetails, IBundleEntryIterator<?> theRequestEntries) {
+		validateDependencies();
+
+		String bundleType = myVersionAdapter.getBundleType(theRequestEntries.getBundle());
+		if (!org.hl7.fhir.r4.model.Bundle.BundleType.BATCH.toCode().equals(bundleType)) {
+			throw new InvalidRequestException(Msg.code(2381) + "Unable to process incremental batch where incoming Bundle.type = " + bundleType + " (Bundle.type must be batch and must precede Bundle.entry)");
+		}
+
+		ourLog.info("Beginning incremental batch");
+		StopWatch sw = new StopWatch();
+
+		IBaseBundle response = myVersionAdapter.createBundle(org.hl7.fhir.r4.model.Bundle.BundleType.BATCHRESPONSE.toCode());
+
+		int count = 0;
+		while (theRequestEntries.hasNext()) {
+			IBaseBundle chunk = myVersionAdapter.createBundle(org.hl7.fhir.r4.model.Bundle.BundleType.BATCH.toCode());
+			for (int i = 0; i < INCREMENTAL_BATCH_CHUNK_SIZE && theRequestEntries.hasNext(); i++) {
+				myVersionAdapter.addEntry(chunk, theRequestEntries.next());
+				count++;
+			}
+
+			IBaseBundle chunkResponse = batch(theRequestDetails, chunk, false);
+			for (Object nextResponseEntry : myVersionAdapter.getEntries(chunkResponse)) {
 				myVersionAdapter.addEntry(response, (IBase) nextResponseEntry);
 			}
 		}
 
-		long delay = System.currentTimeMillis() - start;
-		ourLog.info("Batch completed in {}ms", delay);
+		ourLog.info("Incremental batch with {} entries completed in {}", count, sw);
 
 		return response;
 	}
 
+	private void addBatchResponseEntry(IBaseBundle theResponse, Object theResponseEntry) {
+		if (theResponseEntry instanceof ServerResponseExceptionHolder) {
+			ServerResponseExceptionHolder caughtEx = (ServerResponseExceptionHolder) theResponseEntry;
+			if (caughtEx.getException() != null) {
+				IBase nextEntry = myVersionAdapter.addEntry(theResponse);
+				populateEntryWithOperationOutcome(caughtEx.getException(), nextEntry);
+				myVersionAdapter.setResponseStatus(nextEntry, toStatusString(caughtEx.getException().getStatusCode()));
+			}
+		} else {
+			myVersionAdapter.addEntry(theResponse, (IBase) theResponseEntry);
+		}
+	}
+
 	@VisibleForTesting
 	public void setHapiTransactionService(HapiTransactionService theHapiTransactionService) {
 		myHapiTransactionService = theHapiTransactionService;
@@ -0,0 +1,433 @@
+/*
+ * #%L
+ * HAPI FHIR Storage api
+ * %%
+ * Copyright (C) 2014 - 2023 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ca.uhn.fhir.jpa.dao;
+
+import ca.uhn.fhir.i18n.Msg;
+import ca.uhn.fhir.parser.DataFormatException;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import org.apache.commons.io.IOUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Converts compact JSON text (as produced by the HAPI FHIR JSON encoder) to and from
+ * a compact binary form, used by the <code>BJSON</code> resource encoding.
+ * <p>
+ * The binary form is a stream of single byte tokens. Element names found in a shared
+ * dictionary of FHIR element names are written as a dictionary index, and any other
+ * element name, as well as any short string value, is written only once per document
+ * and referred to by index after that. Integers are written as variable length numbers,
+ * and decimals are kept as text so that their precision is preserved. Unlike JSONC,
+ * no decompression is needed in order to read the stored body.
+ * </p>
+ *
+ * @since 6.8.0
+ */
+public class BinaryJsonUtil {
+
+	/**
+	 * The first byte of every encoded body. This must be incremented if the format
+	 * ever changes in a way that is not backwards compatible.
+	 */
+	static final byte FORMAT_VERSION = 1;
+
+	private static final String DICTIONARY_RESOURCE = "/ca/uhn/fhir/jpa/dao/binary-json-dictionary.txt";
+	private static final int MAX_BACKREF_STRING_LENGTH = 64;
+
+	private static final int TOKEN_NULL = 0x00;
+	private static final int TOKEN_FALSE = 0x01;
+	private static final int TOKEN_TRUE = 0x02;
+	private static final int TOKEN_START_OBJECT = 0x03;
+	private static final int TOKEN_END_OBJECT = 0x04;
+	private static final int TOKEN_START_ARRAY = 0x05;
+	private static final int TOKEN_END_ARRAY = 0x06;
+	private static final int TOKEN_STRING = 0x07;
+	private static final int TOKEN_STRING_BACKREF = 0x08;
+	private static final int TOKEN_INTEGER = 0x09;
+	private static final int TOKEN_NUMBER_TEXT = 0x0A;
+	private static final int TOKEN_NAME_DICTIONARY = 0x0B;
+	private static final int TOKEN_NAME = 0x0C;
+	private static final int TOKEN_NAME_BACKREF = 0x0D;
+
+	private static final JsonFactory ourJsonFactory = new JsonFactory();
+	private static volatile Dictionary ourDictionary;
+
+	/**
+	 * Non instantiable
+	 */
+	private BinaryJsonUtil() {
+		super();
+	}
+
+	/**
+	 * Converts JSON text to the binary form
+	 */
+	public static byte[] encode(String theJson) {
+		Dictionary dictionary = getDictionary();
+		Writer writer = new Writer(theJson.length() / 2);
+		writer.writeByte(FORMAT_VERSION);
+
+		try (JsonParser parser = ourJsonFactory.createParser(theJson)) {
+			for (JsonToken token = parser.nextToken(); token != null; token = parser.nextToken()) {
+				switch (token) {
+					case START_OBJECT:
+						writer.writeByte(TOKEN_START_OBJECT);
+						break;
+					case END_OBJECT:
+						writer.writeByte(TOKEN_END_OBJECT);
+						break;
+					case START_ARRAY:
+						writer.writeByte(TOKEN_START_ARRAY);
+						break;
+					case END_ARRAY:
+						writer.writeByte(TOKEN_END_ARRAY);
+						break;
+					case FIELD_NAME:
+						writer.writeName(dictionary, parser.getCurrentName());
+						break;
+					case VALUE_STRING:
+						writer.writeStringValue(parser.getText());
+						break;
+					case VALUE_NUMBER_INT:
+						writer.writeInteger(parser.getText());
+						break;
+					case VALUE_NUMBER_FLOAT:
+						writer.writeString(TOKEN_NUMBER_TEXT, parser.getText());
+						break;
+					case VALUE_TRUE:
+						writer.writeByte(TOKEN_TRUE);
+						break;
+					case VALUE_FALSE:
+						writer.writeByte(TOKEN_FALSE);
+						break;
+					case VALUE_NULL:
+						writer.writeByte(TOKEN_NULL);
+						break;
+					default:
+						throw new DataFormatException(Msg.code(2386) + "Unexpected JSON token: " + token);
+				}
+			}
+		} catch (IOException e) {
+			throw new DataFormatException(Msg.code(2387) + "Failed to encode contents: " + e.getMessage(), e);
+		}
+
+		return writer.toByteArray();
+	}
+
+	/**
+	 * Converts the binary form back to compact JSON text
+	 */
+	public static String decode(byte[] theBytes) {
+		if (theBytes.length == 0 || theBytes[0] != FORMAT_VERSION) {
+			throw new DataFormatException(Msg.code(2388) + "Unknown binary JSON format version");
+		}
+
+		Dictionary dictionary = getDictionary();
+		Reader reader = new Reader(theBytes);
+		StringBuilder b = new StringBuilder(theBytes.length * 2);
+		JsonStringEncoder stringEncoder = JsonStringEncoder.getInstance();
+		List<String> names = new ArrayList<>();
+		List<String> strings = new ArrayList<>();
+		boolean needComma = false;
+
+		try {
+			while (reader.hasMore()) {
+				int token = reader.readByte();
+				switch (token) {
+					case TOKEN_START_OBJECT:
+					case TOKEN_START_ARRAY:
+						if (needComma) {
+							b.append(',');
+						}
+						b.append(token == TOKEN_START_OBJECT ? '{' : '[');
+						needComma = false;
+						continue;
+					case TOKEN_END_OBJECT:
+						b.append('}');
+						break;
+					case TOKEN_END_ARRAY:
+						b.append(']');
+						break;
+					case TOKEN_NAME_DICTIONARY:
+					case TOKEN_NAME:
+					case TOKEN_NAME_BACKREF:
+						String name;
+						if (token == TOKEN_NAME_DICTIONARY) {
+							name = dictionary.getName(reader.readVarInt());
+						} else if (token == TOKEN_NAME) {
+							name = reader.readString();
+							names.add(name);
+						} else {
+							name = names.get(reader.readVarInt());
+						}
+						if (needComma) {
+							b.append(',');
+						}
+						b.append('"').append(stringEncoder.quoteAsString(name)).append("\":");
+						needComma = false;
+						continue;
+					default:
+						if (needComma) {
+							b.append(',');
+						}
+						appendValue(token, reader, b, stringEncoder, strings);
+						break;
+				}
+				needComma = true;
+			}
+		} catch (IndexOutOfBoundsException e) {
+			throw new DataFormatException(Msg.code(2389) + "Invalid binary JSON contents", e);
+		}
+
+		return b.toString();
+	}
+
+	private static void appendValue(int theToken, Reader theReader, StringBuilder theBuilder, JsonStringEncoder theStringEncoder, List<String> theStrings) {
+		switch (theToken) {
+			case TOKEN_NULL:
+				theBuilder.append("null");
+				break;
+			case TOKEN_FALSE:
+				theBuilder.append("false");
+				break;
+			case TOKEN_TRUE:
+				theBuilder.append("true");
+				break;
+			case TOKEN_STRING:
+			case TOKEN_STRING_BACKREF:
+				String value;
+				if (theToken == TOKEN_STRING) {
+					value = theReader.readString();
+					if (value.length() <= MAX_BACKREF_STRING_LENGTH) {
+						theStrings.add(value);
+					}
+				} else {
+					value = theStrings.get(theReader.readVarInt());
+				}
+				theBuilder.append('"').append(theStringEncoder.quoteAsString(value)).append('"');
+				break;
+			case TOKEN_INTEGER:
+				theBuilder.append(theReader.readVarLong());
+				break;
+			case TOKEN_NUMBER_TEXT:
+				theBuilder.append(theReader.readString());
+				break;
+			default:
+				throw new DataFormatException(Msg.code(2390) + "Invalid binary JSON token: " + theToken);
+		}
+	}
+
+	private static Dictionary getDictionary() {
+		Dictionary retVal = ourDictionary;
+		if (retVal == null) {
+			synchronized (BinaryJsonUtil.class) {
+				retVal = ourDictionary;
+				if (retVal == null) {
+					retVal = new Dictionary(loadDictionaryNames());
+					ourDictionary = retVal;
+				}
+			}
+		}
+		return retVal;
+	}
+
+	private static List<String> loadDictionaryNames() {
+		try (InputStream is = BinaryJsonUtil.class.getResourceAsStream(DICTIONARY_RESOURCE)) {
+			if (is == null) {
+				throw new DataFormatException(Msg.code(2391) + "Unable to load " + DICTIONARY_RESOURCE);
+			}
+			List<String> retVal = new ArrayList<>();
+			for (String next : IOUtils.readLines(is, StandardCharsets.UTF_8)) {
+				next = next.trim();
+				if (!next.isEmpty() && !next.startsWith("#")) {
+					retVal.add(next);
+				}
+			}
+			return retVal;
+		} catch (IOException e) {
+			throw new DataFormatException(Msg.code(2392) + "Unable to load " + DICTIONARY_RESOURCE, e);
+		}
+	}
+
+	private static class Dictionary {
+
+		private final List<String> myNames;
+		private final Map<String, Integer> myNameToIndex;
+
+		private Dictionary(List<String> theNames) {
+			myNames = Collections.unmodifiableList(theNames);
+			myNameToIndex = new HashMap<>(theNames.size() * 2);
+			for (int i = 0; i < theNames.size(); i++) {
+				myNameToIndex.putIfAbsent(theNames.get(i), i);
+			}
+		}
+
+		private Integer getIndex(String theName) {
+			return myNameToIndex.get(theName);
+		}
+
+		private String getName(int theIndex) {
+			return myNames.get(theIndex);
+		}
+	}
+
+	private static class Writer extends ByteArrayOutputStream {
+
+		private final Map<String, Integer> myNames = new HashMap<>();
+		private final Map<String, Integer> myStrings = new HashMap<>();
+
+		private Writer(int theInitialSize) {
+			super(Math.max(theInitialSize, 32));
+		}
+
+		private void writeByte(int theByte) {
+			write(theByte);
+		}
+
+		private void writeName(Dictionary theDictionary, String theName) {
+			Integer index = theDictionary.getIndex(theName);
+			if (index != null) {
+				writeByte(TOKEN_NAME_DICTIONARY);
+				writeVarInt(index);
+				return;
+			}
+			index = myNames.get(theName);
+			if (index != null) {
+				writeByte(TOKEN_NAME_BACKREF);
+				writeVarInt(index);
+				return;
+			}
+			myNames.put(theName, myNames.size());
+			writeString(TOKEN_NAME, theName);
+		}
+
+		private void writeStringValue(String theValue) {
+			if (theValue.length() <= MAX_BACKREF_STRING_LENGTH) {
+				Integer index = myStrings.get(theValue);
+				if (index != null) {
+					writeByte(TOKEN_STRING_BACKREF);
+					writeVarInt(index);
+					return;
+				}
+				myStrings.put(theValue, myStrings.size());
+			}
+			writeString(TOKEN_STRING, theValue);
+		}
+
+		private void writeInteger(String theText) {
+			// Values which don't survive a round trip through a long (e.g. very large numbers) are kept as text
+			try {
+				long value = Long.parseLong(theText);
+				if (Long.toString(value).equals(theText)) {
+					writeByte(TOKEN_INTEGER);
+					writeVarLong((value << 1) ^ (value >> 63));
+					return;
+				}
+			} catch (NumberFormatException e) {
+				// fall through
+			}
+			writeString(TOKEN_NUMBER_TEXT, theText);
+		}
+
+		private void writeString(int theToken, String theValue) {
+			byte[] bytes = theValue.getBytes(StandardCharsets.UTF_8);
+			writeByte(theToken);
+			writeVarInt(bytes.length);
+			write(bytes, 0, bytes.length);
+		}
+
+		private void writeVarInt(int theValue) {
+			writeVarLong(theValue);
+		}
+
+		private void writeVarLong(long theValue) {
+			long value = theValue;
+			while ((value & ~0x7FL) != 0) {
+				write((int) ((value & 0x7F) | 0x80));
+				value >>>= 7;
+			}
+			write((int) value);
+		}
+	}
+
+	private static class Reader {
+
+		private final byte[] myBytes;
+		private int myPosition = 1;
+
+		private Reader(byte[] theBytes) {
+			myBytes = theBytes;
+		}
+
+		private boolean hasMore() {
+			return myPosition < myBytes.length;
+		}
+
+		private int readByte() {
+			if (myPosition >= myBytes.length) {
+				throw new IndexOutOfBoundsException();
+			}
+			return myBytes[myPosition++] & 0xFF;
+		}
+
+		private int readVarInt() {
+			return (int) readUnsignedVarLong();
+		}
+
+		private long readVarLong() {
+			long value = readUnsignedVarLong();
+			return (value >>> 1) ^ -(value & 1);
+		}
+
+		private long readUnsignedVarLong() {
+			long retVal = 0;
+			for (int shift = 0; shift < 64; shift += 7) {
+				int next = readByte();
+				retVal |= (long) (next & 0x7F) << shift;
+				if ((next & 0x80) == 0) {
+					return retVal;
+				}
+			}
+			throw new IndexOutOfBoundsException();
+		}
+
+		private String readString() {
+			int length = readVarInt();
+			if (length < 0 || myPosition + length > myBytes.length) {
+				throw new IndexOutOfBoundsException();
+			}
+			String retVal = new String(myBytes, myPosition, length, StandardCharsets.UTF_8);
+			myPosition += length;
+			return retVal;
+		}
+	}
+
+}
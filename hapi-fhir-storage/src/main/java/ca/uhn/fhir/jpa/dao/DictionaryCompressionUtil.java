@@ -0,0 +1,205 @@
+/*
+ * #%L
+ * HAPI FHIR Storage api
+ * %%
+ * Copyright (C) 2014 - 2023 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ca.uhn.fhir.jpa.dao;
+
+import ca.uhn.fhir.i18n.Msg;
+import ca.uhn.fhir.parser.DataFormatException;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses resource text using deflate with a preset dictionary, and trains such
+ * dictionaries from a sample of resource bodies.
+ * <p>
+ * Compressing each resource body on its own (as the JSONC encoding does) works poorly for
+ * small resources, since the compressor starts every body with no history to refer back to.
+ * A preset dictionary containing text which is common to many resources of a given type
+ * (element names, code systems, common values, etc.) gives the compressor that history.
+ * </p>
+ *
+ * @since 6.8.0
+ */
+public class DictionaryCompressionUtil {
+
+	/**
+	 * Deflate can only refer back 32 KB, so a larger dictionary would not be used
+	 */
+	public static final int MAXIMUM_DICTIONARY_SIZE = 32 * 1024;
+
+	private static final int MAX_SEGMENTS_PER_FRAGMENT = 4;
+	private static final int MIN_FRAGMENT_LENGTH = 4;
+	private static final int MAX_FRAGMENT_LENGTH = 256;
+	private static final int MAX_CANDIDATES_TO_CONSIDER = 10000;
+
+	/**
+	 * Non instantiable
+	 */
+	private DictionaryCompressionUtil() {
+		super();
+	}
+
+	/**
+	 * Compresses the given text using the given dictionary
+	 */
+	public static byte[] compress(String theText, byte[] theDictionary) {
+		byte[] input = theText.getBytes(StandardCharsets.UTF_8);
+		Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+		try {
+			deflater.setDictionary(theDictionary);
+			deflater.setInput(input);
+			deflater.finish();
+			ByteArrayOutputStream os = new ByteArrayOutputStream(Math.max(input.length / 4, 32));
+			byte[] buffer = new byte[8192];
+			while (!deflater.finished()) {
+				int count = deflater.deflate(buffer);
+				os.write(buffer, 0, count);
+			}
+			return os.toByteArray();
+		} finally {
+			deflater.end();
+		}
+	}
+
+	/**
+	 * Decompresses text which was compressed using {@link #compress(String, byte[])} with the same dictionary
+	 */
+	public static String decompress(byte[] theCompressed, byte[] theDictionary) {
+		Inflater inflater = new Inflater(true);
+		try {
+			inflater.setDictionary(theDictionary);
+			inflater.setInput(theCompressed);
+			ByteArrayOutputStream os = new ByteArrayOutputStream(theCompressed.length * 4);
+			byte[] buffer = new byte[8192];
+			while (!inflater.finished()) {
+				int count = inflater.inflate(buffer);
+				if (count == 0 && !inflater.finished() && (inflater.needsInput() || inflater.needsDictionary())) {
+					throw new DataFormatException(Msg.code(2393) + "Failed to decompress contents: Unexpected end of input");
+				}
+				os.write(buffer, 0, count);
+			}
+			return os.toString(StandardCharsets.UTF_8);
+		} catch (java.util.zip.DataFormatException e) {
+			throw new DataFormatException(Msg.code(2394) + "Failed to decompress contents", e);
+		} finally {
+			inflater.end();
+		}
+	}
+
+	/**
+	 * Builds a dictionary from a sample of resource bodies (typically of a single resource type).
+	 * <p>
+	 * Each body is split into fragments at JSON structural boundaries (e.g.
+	 * <code>"system":"http://loinc.org",</code>), and fragments which appear in more than one
+	 * body are scored by the number of bodies they appear in multiplied by their length. The
+	 * highest scoring fragments are placed in the dictionary, with the most valuable ones at the
+	 * end since deflate can refer to nearby text more cheaply.
+	 * </p>
+	 *
+	 * @param theSamples        The sample resource bodies
+	 * @param theMaximumSize    The maximum size of the dictionary in bytes
+	 * @return The dictionary, which may be empty if the samples have nothing in common
+	 */
+	public static byte[] trainDictionary(Collection<String> theSamples, int theMaximumSize) {
+		int maximumSize = Math.min(theMaximumSize, MAXIMUM_DICTIONARY_SIZE);
+
+		Map<String, Integer> documentFrequencies = new HashMap<>();
+		for (String nextSample : theSamples) {
+			List<String> segments = splitIntoSegments(nextSample);
+			Set<String> fragments = new HashSet<>();
+			for (int start = 0; start < segments.size(); start++) {
+				StringBuilder fragment = new StringBuilder();
+				for (int end = start; end < segments.size() && end < start + MAX_SEGMENTS_PER_FRAGMENT; end++) {
+					fragment.append(segments.get(end));
+					if (fragment.length() > MAX_FRAGMENT_LENGTH) {
+						break;
+					}
+					if (fragment.length() >= MIN_FRAGMENT_LENGTH) {
+						fragments.add(fragment.toString());
+					}
+				}
+			}
+			for (String next : fragments) {
+				documentFrequencies.merge(next, 1, Integer::sum);
+			}
+		}
+
+		List<Map.Entry<String, Integer>> candidates = new ArrayList<>();
+		for (Map.Entry<String, Integer> next : documentFrequencies.entrySet()) {
+			if (next.getValue() > 1) {
+				candidates.add(next);
+			}
+		}
+		candidates.sort((o1, o2) -> {
+			long score1 = (long) o1.getValue() * o1.getKey().length();
+			long score2 = (long) o2.getValue() * o2.getKey().length();
+			int retVal = Long.compare(score2, score1);
+			if (retVal == 0) {
+				retVal = o1.getKey().compareTo(o2.getKey());
+			}
+			return retVal;
+		});
+
+		List<String> selected = new ArrayList<>();
+		StringBuilder selectedText = new StringBuilder();
+		int selectedSize = 0;
+		for (int i = 0; i < candidates.size() && i < MAX_CANDIDATES_TO_CONSIDER && selectedSize < maximumSize; i++) {
+			String next = candidates.get(i).getKey();
+			int size = next.getBytes(StandardCharsets.UTF_8).length;
+			if (selectedSize + size > maximumSize || selectedText.indexOf(next) != -1) {
+				continue;
+			}
+			selected.add(next);
+			selectedText.append(next);
+			selectedSize += size;
+		}
+
+		// Most valuable fragments go last
+		Collections.reverse(selected);
+		return String.join("", selected).getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static List<String> splitIntoSegments(String theText) {
+		List<String> retVal = new ArrayList<>();
+		int start = 0;
+		for (int i = 0; i < theText.length(); i++) {
+			char next = theText.charAt(i);
+			if (next == ',' || next == '{' || next == '[' || next == ':') {
+				retVal.add(theText.substring(start, i + 1));
+				start = i + 1;
+			}
+		}
+		if (start < theText.length()) {
+			retVal.add(theText.substring(start));
+		}
+		return retVal;
+	}
+
+}
@@ -31,6 +31,7 @@ import ca.uhn.fhir.rest.param.DateRangeParam;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import javax.persistence.EntityManager;
 import java.util.Collection;
 import java.util.List;
@@ -43,6 +44,29 @@ public interface ISearchBuilder<T extends IResourcePersistentId> {
 
 	Long createCountQuery(SearchParameterMap theParams, String theSearchUuid, RequestDetails theRequest, RequestPartitionId theRequestPartitionId);
 
+	/**
+	 * Returns a quick estimate of the number of resources matching the given parameters,
+	 * for use with <code>_total=estimated</code>. Unlike {@link #createCountQuery(SearchParameterMap, String, RequestDetails, RequestPartitionId)}
+	 * this method should not need to visit every matching row.
+	 *
+	 * @return The estimated count, or {@literal null} if no estimate could be produced
+	 * @since 6.8.0
+	 */
+	@Nullable
+	default Long createEstimatedCountQuery(SearchParameterMap theParams, String theSearchUuid, RequestDetails theRequest, RequestPartitionId theRequestPartitionId) {
+		return null;
+	}
+
+	/**
+	 * Returns the name of the resource type being searched, or {@literal null} if not known
+	 *
+	 * @since 6.8.0
+	 */
+	@Nullable
+	default String getResourceName() {
+		return null;
+	}
+
 	void setMaxResultsToFetch(Integer theMaxResultsToFetch);
 
 	void loadResourcesByPid(Collection<T> thePids, Collection<T> theIncludedPids, List<IBaseResource> theResourceListToPopulate, boolean theForHistoryOperation, RequestDetails theDetails);
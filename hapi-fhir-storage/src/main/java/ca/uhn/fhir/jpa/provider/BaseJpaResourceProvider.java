@@ -159,7 +159,7 @@ public abstract class BaseJpaResourceProvider<T extends IBaseResource> extends B
 	public T read(HttpServletRequest theRequest, @IdParam IIdType theId, RequestDetails theRequestDetails) {
 		startRequest(theRequest);
 		try {
-			return myDao.read(theId, theRequestDetails);
+			return myDao.readAllowingBodyPassthrough(theId, theRequestDetails);
 		} finally {
 			endRequest(theRequest);
 		}
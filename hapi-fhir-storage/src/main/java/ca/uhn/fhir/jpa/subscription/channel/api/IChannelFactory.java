@@ -55,6 +55,19 @@ public interface IChannelFactory {
 	 */
 	IChannelProducer getOrCreateProducer(String theChannelName, Class<?> theMessageType, ChannelProducerSettings theChannelSettings);
 
+	/**
+	 * Deletes any messages which are stored for a channel, because nothing will use the channel any more
+	 * (e.g. because the subscription using it has been deleted). This is not called when the channel is
+	 * only closed because the server is stopping. The default implementation does nothing, which is
+	 * appropriate for channels which do not store their messages.
+	 *
+	 * @param theChannelName The channel name, as passed to {@link #getOrCreateReceiver(String, Class, ChannelConsumerSettings)}
+	 * @since 6.8.0
+	 */
+	default void deleteChannel(String theChannelName) {
+		// nothing
+	}
+
 	/**
 	 * @return the IChannelNamer used by this factory
 	 */
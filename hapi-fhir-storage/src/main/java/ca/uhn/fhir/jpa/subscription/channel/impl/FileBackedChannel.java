@@ -0,0 +1,267 @@
+/*-
+ * #%L
+ * HAPI FHIR Storage api
+ * %%
+ * Copyright (C) 2014 - 2023 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ca.uhn.fhir.jpa.subscription.channel.impl;
+
+import ca.uhn.fhir.i18n.Msg;
+import ca.uhn.fhir.jpa.subscription.channel.api.IChannelReceiver;
+import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
+import ca.uhn.fhir.util.JsonUtil;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Channel which stores the messages sent to it in a {@link FileSegmentLog}, so that messages which have not
+ * been processed when the server stops are delivered again when it restarts. Messages are delivered to the
+ * subscribers by a fixed number of consumer threads, and a message is only marked as processed once its
+ * subscribers have returned, so delivery is at-least-once.
+ * <p>
+ * A message which still fails once its delivery has been retried is moved to a separate dead letter log
+ * before it is marked as processed. If it can not be moved, it is left unprocessed and is delivered again
+ * when the channel is reopened.
+ * </p>
+ * <p>
+ * If the sync interval is greater than zero, the log is forced to disk by a background thread at that
+ * interval, and messages sent within the last interval may be lost if the host fails. Otherwise the
+ * log is forced to disk every time a message is sent.
+ * </p>
+ *
+ * @see FileBackedChannelFactory
+ * @since 6.8.0
+ */
+public class FileBackedChannel extends ExecutorSubscribableChannel implements IChannelReceiver {
+	private static final Logger ourLog = LoggerFactory.getLogger(FileBackedChannel.class);
+	private static final long POLL_TIMEOUT_MILLIS = 100;
+
+	private final String myName;
+	private final FileSegmentLog myLog;
+	private final FileSegmentLog myDeadLetterLog;
+	private final FileBackedChannelFactory myFactory;
+	private final Class<?> myMessageType;
+	private final long mySyncIntervalMillis;
+	private final ExecutorService myConsumerExecutor;
+	private final ScheduledExecutorService mySyncExecutor;
+	private volatile boolean myStopped;
+
+	/**
+	 * Constructor
+	 *
+	 * @param theName               The channel name
+	 * @param theLog                The log holding the messages sent to this channel
+	 * @param theDeadLetterLog      The log holding the messages which could not be delivered
+	 * @param theFactory            The factory which created this channel, and is notified when it is destroyed
+	 * @param theMessageType        The type the messages are deserialized to before they are delivered
+	 * @param theConcurrentConsumers The number of threads delivering messages to the subscribers
+	 * @param theSyncIntervalMillis The interval at which the log is forced to disk, or 0 to force it on every send
+	 */
+	FileBackedChannel(String theName, FileSegmentLog theLog, FileSegmentLog theDeadLetterLog, FileBackedChannelFactory theFactory, Class<?> theMessageType, int theConcurrentConsumers, long theSyncIntervalMillis) {
+		super(null);
+		myName = theName;
+		myLog = theLog;
+		myDeadLetterLog = theDeadLetterLog;
+		myFactory = theFactory;
+		myMessageType = theMessageType;
+		mySyncIntervalMillis = theSyncIntervalMillis;
+
+		BasicThreadFactory consumerThreadFactory = new BasicThreadFactory.Builder()
+			.namingPattern(theName + "-%d")
+			.daemon(true)
+			.build();
+		myConsumerExecutor = Executors.newFixedThreadPool(theConcurrentConsumers, consumerThreadFactory);
+		for (int i = 0; i < theConcurrentConsumers; i++) {
+			myConsumerExecutor.execute(this::consume);
+		}
+
+		if (theSyncIntervalMillis > 0) {
+			BasicThreadFactory syncThreadFactory = new BasicThreadFactory.Builder()
+				.namingPattern(theName + "-sync-%d")
+				.daemon(true)
+				.build();
+			mySyncExecutor = Executors.newSingleThreadScheduledExecutor(syncThreadFactory);
+			mySyncExecutor.scheduleWithFixedDelay(this::sync, theSyncIntervalMillis, theSyncIntervalMillis, TimeUnit.MILLISECONDS);
+		} else {
+			mySyncExecutor = null;
+		}
+	}
+
+	@Override
+	public String getName() {
+		return myName;
+	}
+
+	/**
+	 * Returns the number of messages which have been sent to this channel but not yet processed
+	 */
+	public long getPendingMessageCount() {
+		return myLog.getPendingCount();
+	}
+
+	/**
+	 * Returns the number of messages which could not be delivered, and have been moved to the dead letter log
+	 */
+	public long getDeadLetterMessageCount() {
+		return myDeadLetterLog.getPendingCount();
+	}
+
+	@Override
+	public boolean sendInternal(@Nonnull Message<?> theMessage, long theTimeout) {
+		byte[] record = JsonUtil.serialize(theMessage, false).getBytes(StandardCharsets.UTF_8);
+		try {
+			myLog.append(record);
+			if (mySyncIntervalMillis <= 0) {
+				myLog.sync();
+			}
+		} catch (IOException e) {
+			throw new InternalErrorException(Msg.code(2409) + "Failed to write message to channel " + myName + ": " + e, e);
+		}
+		return true;
+	}
+
+	private void consume() {
+		while (!myStopped) {
+			try {
+				if (getSubscribers().isEmpty()) {
+					// Leave the messages in the log until something subscribes
+					Thread.sleep(100);
+					continue;
+				}
+
+				FileSegmentLog.LogRecord record = myLog.poll(POLL_TIMEOUT_MILLIS);
+				if (record == null) {
+					continue;
+				}
+				boolean processed;
+				try {
+					String json = new String(record.getContents(), StandardCharsets.UTF_8);
+					super.sendInternal((Message<?>) JsonUtil.deserialize(json, myMessageType), -1);
+					processed = true;
+				} catch (Exception e) {
+					ourLog.error("Failure delivering message at offset {} from channel {}", record.getOffset(), myName, e);
+					processed = moveToDeadLetterLog(record);
+				}
+				if (processed) {
+					myLog.complete(record.getOffset());
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	private boolean moveToDeadLetterLog(FileSegmentLog.LogRecord theRecord) {
+		try {
+			myDeadLetterLog.append(theRecord.getContents());
+			myDeadLetterLog.sync();
+			ourLog.warn("Moved message at offset {} from channel {} to the dead letter log", theRecord.getOffset(), myName);
+			return true;
+		} catch (Exception e) {
+			ourLog.error("Failed to move message at offset {} from channel {} to the dead letter log, it will be delivered again when the channel is reopened", theRecord.getOffset(), myName, e);
+			return false;
+		}
+	}
+
+	private void sync() {
+		try {
+			myLog.sync();
+		} catch (Exception e) {
+			ourLog.error("Failed to sync channel {}", myName, e);
+		}
+	}
+
+	@Override
+	public boolean hasSubscription(@Nonnull MessageHandler handler) {
+		return getSubscribers()
+			.stream()
+			.map(t -> (RetryingMessageHandlerWrapper) t)
+			.anyMatch(t -> t.getWrappedHandler() == handler);
+	}
+
+	@Override
+	public boolean subscribe(@Nonnull MessageHandler theHandler) {
+		return super.subscribe(new RetryingMessageHandlerWrapper(theHandler, getName()));
+	}
+
+	@Override
+	public boolean unsubscribe(@Nonnull MessageHandler handler) {
+		Optional<RetryingMessageHandlerWrapper> match = getSubscribers()
+			.stream()
+			.map(t -> (RetryingMessageHandlerWrapper) t)
+			.filter(t -> t.getWrappedHandler() == handler)
+			.findFirst();
+		match.ifPresent(super::unsubscribe);
+		return match.isPresent();
+	}
+
+	/**
+	 * Releases the receiver's reference to this channel. The channel is closed by the factory once its
+	 * producers have been destroyed too.
+	 */
+	@Override
+	public void destroy() {
+		myFactory.releaseReceiver(this);
+	}
+
+	/**
+	 * Stops the consumer threads, waiting for the messages being delivered, and then syncs and closes the logs
+	 */
+	public void close() {
+		myStopped = true;
+		if (mySyncExecutor != null) {
+			mySyncExecutor.shutdownNow();
+			awaitTermination(mySyncExecutor, "sync thread");
+		}
+		myConsumerExecutor.shutdown();
+		awaitTermination(myConsumerExecutor, "consumers");
+		closeLog(myLog);
+		closeLog(myDeadLetterLog);
+	}
+
+	private void closeLog(FileSegmentLog theLog) {
+		try {
+			theLog.close();
+		} catch (IOException e) {
+			ourLog.error("Failed to close channel {}", myName, e);
+		}
+	}
+
+	private void awaitTermination(ExecutorService theExecutor, String theDescription) {
+		try {
+			if (!theExecutor.awaitTermination(30, TimeUnit.SECONDS)) {
+				ourLog.warn("Timed out waiting for {} of channel {} to stop", theDescription, myName);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
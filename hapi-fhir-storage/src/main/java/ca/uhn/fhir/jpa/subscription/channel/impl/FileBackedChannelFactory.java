@@ -0,0 +1,282 @@
+/*-
+ * #%L
+ * HAPI FHIR Storage api
+ * %%
+ * Copyright (C) 2014 - 2023 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ca.uhn.fhir.jpa.subscription.channel.impl;
+
+import ca.uhn.fhir.i18n.Msg;
+import ca.uhn.fhir.jpa.subscription.channel.api.ChannelConsumerSettings;
+import ca.uhn.fhir.jpa.subscription.channel.api.ChannelProducerSettings;
+import ca.uhn.fhir.jpa.subscription.channel.api.IChannelFactory;
+import ca.uhn.fhir.jpa.subscription.channel.api.IChannelProducer;
+import ca.uhn.fhir.jpa.subscription.channel.api.IChannelReceiver;
+import ca.uhn.fhir.jpa.subscription.channel.api.IChannelSettings;
+import ca.uhn.fhir.jpa.subscription.channel.subscription.IChannelNamer;
+import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Channel factory which creates {@link FileBackedChannel durable channels}, each of which stores its messages
+ * in a subdirectory of the given directory. Messages which have not been processed when the server stops
+ * are delivered again when it restarts, so this factory can be used in place of
+ * {@link LinkedBlockingChannelFactory} by single-server deployments which cannot lose subscription messages
+ * but do not have an external message broker. To use it, create a <code>@Primary</code> {@link IChannelFactory}
+ * bean.
+ * <p>
+ * Once the receiver and all of the producers of a channel have been destroyed, the channel is closed, but its
+ * messages are kept so that they are delivered when the channel is created again. The messages of a channel
+ * are only deleted by {@link #deleteChannel(String)}, which is called when the subscription using the
+ * channel is removed. Messages which could not be delivered are kept in a separate dead letter directory,
+ * which is not deleted with the channel.
+ * </p>
+ *
+ * @since 6.8.0
+ */
+public class FileBackedChannelFactory implements IChannelFactory {
+	public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+	public static final long DEFAULT_SYNC_INTERVAL_MILLIS = 100;
+	static final String CHANNEL_DIRECTORY_NAME = "channels";
+	static final String DEAD_LETTER_DIRECTORY_NAME = "dead-letter";
+	private static final Logger ourLog = LoggerFactory.getLogger(FileBackedChannelFactory.class);
+
+	private final IChannelNamer myChannelNamer;
+	private final File myDirectory;
+	private final Map<String, ChannelReferences> myChannels = new HashMap<>();
+	private int mySegmentSize = DEFAULT_SEGMENT_SIZE;
+	private long mySyncIntervalMillis = DEFAULT_SYNC_INTERVAL_MILLIS;
+
+	/**
+	 * Constructor
+	 *
+	 * @param theChannelNamer The channel namer
+	 * @param theDirectory    The directory the channel logs are stored in
+	 */
+	public FileBackedChannelFactory(IChannelNamer theChannelNamer, File theDirectory) {
+		myChannelNamer = theChannelNamer;
+		myDirectory = theDirectory;
+	}
+
+	/**
+	 * The size of each segment file in the channel logs. Messages larger than this can not be sent.
+	 * This only affects channels created after it is set.
+	 * <p>
+	 * Default is {@link #DEFAULT_SEGMENT_SIZE} (64MB)
+	 * </p>
+	 */
+	public int getSegmentSize() {
+		return mySegmentSize;
+	}
+
+	/**
+	 * The size of each segment file in the channel logs. Messages larger than this can not be sent.
+	 * This only affects channels created after it is set.
+	 * <p>
+	 * Default is {@link #DEFAULT_SEGMENT_SIZE} (64MB)
+	 * </p>
+	 */
+	public void setSegmentSize(int theSegmentSize) {
+		Validate.isTrue(theSegmentSize > 0, "theSegmentSize must be greater than 0");
+		mySegmentSize = theSegmentSize;
+	}
+
+	/**
+	 * The interval at which the channel logs are forced to disk. Messages sent within the last interval
+	 * may be lost if the host fails. If this is 0, the log is forced to disk every time a message is sent,
+	 * which is much slower. This only affects channels created after it is set.
+	 * <p>
+	 * Default is {@link #DEFAULT_SYNC_INTERVAL_MILLIS}
+	 * </p>
+	 */
+	public long getSyncIntervalMillis() {
+		return mySyncIntervalMillis;
+	}
+
+	/**
+	 * The interval at which the channel logs are forced to disk. Messages sent within the last interval
+	 * may be lost if the host fails. If this is 0, the log is forced to disk every time a message is sent,
+	 * which is much slower. This only affects channels created after it is set.
+	 * <p>
+	 * Default is {@link #DEFAULT_SYNC_INTERVAL_MILLIS}
+	 * </p>
+	 */
+	public void setSyncIntervalMillis(long theSyncIntervalMillis) {
+		mySyncIntervalMillis = theSyncIntervalMillis;
+	}
+
+	@Override
+	public IChannelReceiver getOrCreateReceiver(String theChannelName, Class<?> theMessageType, ChannelConsumerSettings theChannelSettings) {
+		synchronized (myChannels) {
+			ChannelReferences references = getOrCreateChannel(theChannelName, theMessageType, theChannelSettings.getConcurrentConsumers(), theChannelSettings);
+			references.myReceiverReferenced = true;
+			return references.myChannel;
+		}
+	}
+
+	@Override
+	public IChannelProducer getOrCreateProducer(String theChannelName, Class<?> theMessageType, ChannelProducerSettings theChannelSettings) {
+		synchronized (myChannels) {
+			ChannelReferences references = getOrCreateChannel(theChannelName, theMessageType, theChannelSettings.getConcurrentConsumers(), theChannelSettings);
+			references.myProducerCount++;
+			return new FileBackedChannelProducer(references.myChannel, this);
+		}
+	}
+
+	@Override
+	public IChannelNamer getChannelNamer() {
+		return myChannelNamer;
+	}
+
+	/**
+	 * Deletes the messages stored for a channel, apart from its dead letters. If the channel is still open,
+	 * its messages are deleted once its receiver and all of its producers have been destroyed.
+	 */
+	@Override
+	public void deleteChannel(String theChannelName) {
+		String channelName = myChannelNamer.getChannelName(theChannelName, new ChannelConsumerSettings());
+		synchronized (myChannels) {
+			ChannelReferences references = myChannels.get(channelName);
+			if (references != null) {
+				references.myDeleteOnRelease = true;
+			} else {
+				deleteChannelDirectory(channelName);
+			}
+		}
+	}
+
+	private ChannelReferences getOrCreateChannel(String theChannelName, Class<?> theMessageType, int theConcurrentConsumers, IChannelSettings theChannelSettings) {
+		final String channelName = myChannelNamer.getChannelName(theChannelName, theChannelSettings);
+
+		return myChannels.computeIfAbsent(channelName, t -> new ChannelReferences(buildFileBackedChannel(channelName, theMessageType, theConcurrentConsumers)));
+	}
+
+	@Nonnull
+	private FileBackedChannel buildFileBackedChannel(String theChannelName, Class<?> theMessageType, int theConcurrentConsumers) {
+		File channelDirectory = getChannelDirectory(theChannelName);
+		FileSegmentLog log = null;
+		FileSegmentLog deadLetterLog;
+		try {
+			log = new FileSegmentLog(channelDirectory, mySegmentSize);
+			deadLetterLog = new FileSegmentLog(getDeadLetterDirectory(theChannelName), mySegmentSize);
+		} catch (IOException e) {
+			if (log != null) {
+				try {
+					log.close();
+				} catch (IOException closeException) {
+					ourLog.warn("Failed to close channel {}: {}", theChannelName, closeException.toString());
+				}
+			}
+			throw new InternalErrorException(Msg.code(2410) + "Failed to open channel " + theChannelName + " in directory " + channelDirectory + ": " + e, e);
+		}
+		return new FileBackedChannel(theChannelName, log, deadLetterLog, this, theMessageType, theConcurrentConsumers, mySyncIntervalMillis);
+	}
+
+	private File getChannelDirectory(String theChannelName) {
+		return new File(new File(myDirectory, CHANNEL_DIRECTORY_NAME), toDirectoryName(theChannelName));
+	}
+
+	private File getDeadLetterDirectory(String theChannelName) {
+		return new File(new File(myDirectory, DEAD_LETTER_DIRECTORY_NAME), toDirectoryName(theChannelName));
+	}
+
+	private static String toDirectoryName(String theChannelName) {
+		return theChannelName.replaceAll("[^a-zA-Z0-9._-]", "_");
+	}
+
+	private void deleteChannelDirectory(String theChannelName) {
+		File channelDirectory = getChannelDirectory(theChannelName);
+		try {
+			FileUtils.deleteDirectory(channelDirectory);
+		} catch (IOException e) {
+			ourLog.warn("Failed to delete directory {} of channel {}: {}", channelDirectory, theChannelName, e.toString());
+		}
+	}
+
+	void releaseReceiver(FileBackedChannel theChannel) {
+		release(theChannel, t -> t.myReceiverReferenced = false);
+	}
+
+	void releaseProducer(FileBackedChannel theChannel) {
+		release(theChannel, t -> t.myProducerCount--);
+	}
+
+	/**
+	 * Releases a reference to a channel, and if nothing references the channel any more, closes it. If the
+	 * channel has been deleted, its directory is deleted too. This is done while holding the lock so that the
+	 * channel can not be reopened until its directory has been deleted.
+	 */
+	private void release(FileBackedChannel theChannel, Consumer<ChannelReferences> theRelease) {
+		synchronized (myChannels) {
+			ChannelReferences references = myChannels.get(theChannel.getName());
+			if (references == null || references.myChannel != theChannel) {
+				// The channel has already been closed
+				return;
+			}
+
+			theRelease.accept(references);
+			if (references.myProducerCount > 0 || references.myReceiverReferenced) {
+				return;
+			}
+
+			myChannels.remove(theChannel.getName());
+			theChannel.close();
+			if (references.myDeleteOnRelease) {
+				deleteChannelDirectory(theChannel.getName());
+			}
+		}
+	}
+
+	/**
+	 * Stops all channels, syncing their logs to disk. Messages which have not been processed are delivered
+	 * when the channels are created again.
+	 */
+	@PreDestroy
+	public void stop() {
+		List<ChannelReferences> channels;
+		synchronized (myChannels) {
+			channels = new ArrayList<>(myChannels.values());
+			myChannels.clear();
+		}
+		channels.forEach(t -> t.myChannel.close());
+	}
+
+	private static class ChannelReferences {
+
+		private final FileBackedChannel myChannel;
+		private int myProducerCount;
+		private boolean myReceiverReferenced;
+		private boolean myDeleteOnRelease;
+
+		private ChannelReferences(FileBackedChannel theChannel) {
+			myChannel = theChannel;
+		}
+	}
+
+}
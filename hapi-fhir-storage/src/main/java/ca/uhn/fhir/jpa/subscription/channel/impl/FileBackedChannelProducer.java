@@ -0,0 +1,91 @@
+/*-
+ * #%L
+ * HAPI FHIR Storage api
+ * %%
+ * Copyright (C) 2014 - 2023 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ca.uhn.fhir.jpa.subscription.channel.impl;
+
+import ca.uhn.fhir.jpa.subscription.channel.api.IChannelProducer;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.ChannelInterceptor;
+
+import javax.annotation.Nonnull;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Producer returned by {@link FileBackedChannelFactory}, which sends messages to a {@link FileBackedChannel}.
+ * Destroying the producer releases its reference to the channel.
+ */
+class FileBackedChannelProducer implements IChannelProducer, DisposableBean {
+
+	private final FileBackedChannel myChannel;
+	private final FileBackedChannelFactory myFactory;
+	private final AtomicBoolean myDestroyed = new AtomicBoolean();
+
+	FileBackedChannelProducer(FileBackedChannel theChannel, FileBackedChannelFactory theFactory) {
+		myChannel = theChannel;
+		myFactory = theFactory;
+	}
+
+	FileBackedChannel getChannel() {
+		return myChannel;
+	}
+
+	@Override
+	public boolean send(@Nonnull Message<?> theMessage, long theTimeout) {
+		return myChannel.send(theMessage, theTimeout);
+	}
+
+	@Override
+	public void setInterceptors(List<ChannelInterceptor> theInterceptors) {
+		myChannel.setInterceptors(theInterceptors);
+	}
+
+	@Override
+	public void addInterceptor(ChannelInterceptor theInterceptor) {
+		myChannel.addInterceptor(theInterceptor);
+	}
+
+	@Override
+	public void addInterceptor(int theIndex, ChannelInterceptor theInterceptor) {
+		myChannel.addInterceptor(theIndex, theInterceptor);
+	}
+
+	@Override
+	public List<ChannelInterceptor> getInterceptors() {
+		return myChannel.getInterceptors();
+	}
+
+	@Override
+	public boolean removeInterceptor(ChannelInterceptor theInterceptor) {
+		return myChannel.removeInterceptor(theInterceptor);
+	}
+
+	@Override
+	public ChannelInterceptor removeInterceptor(int theIndex) {
+		return myChannel.removeInterceptor(theIndex);
+	}
+
+	@Override
+	public void destroy() {
+		if (myDestroyed.compareAndSet(false, true)) {
+			myFactory.releaseProducer(myChannel);
+		}
+	}
+}
@@ -0,0 +1,401 @@
+/*-
+ * #%L
+ * HAPI FHIR Storage api
+ * %%
+ * Copyright (C) 2014 - 2023 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ca.uhn.fhir.jpa.subscription.channel.impl;
+
+import ca.uhn.fhir.i18n.Msg;
+import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only log of records, stored in memory-mapped segment files in a directory, together with the offset
+ * of the first record which has not yet been completely processed by the consumers of the log. Records are read
+ * in the order they were appended, and records after the committed offset are read again when the log is reopened.
+ * <p>
+ * Each record consists of its length, the CRC32 of its contents and its contents. The offset of a record is its
+ * position within the log, and segment files are named after the offset of their first record. Records never span
+ * segments, and segments are deleted once all of their records have been consumed.
+ * </p>
+ */
+class FileSegmentLog {
+	static final String SEGMENT_SUFFIX = ".segment";
+	static final String OFFSET_FILE_NAME = "consumer.offset";
+	private static final int HEADER_SIZE = 8;
+	private static final int END_OF_SEGMENT = -1;
+	private static final Logger ourLog = LoggerFactory.getLogger(FileSegmentLog.class);
+
+	private final File myDirectory;
+	private final int mySegmentSize;
+	private final TreeMap<Long, Segment> mySegments = new TreeMap<>();
+	private final Set<Segment> myUnsyncedSegments = new HashSet<>();
+	private final TreeSet<Long> myInFlightOffsets = new TreeSet<>();
+	private long myWriteOffset;
+	private long myReadOffset;
+	private long myPendingCount;
+	private long myLastSyncedCommittedOffset = -1;
+	private boolean myClosed;
+
+	/**
+	 * Opens the log in the given directory, creating it if it does not exist
+	 *
+	 * @param theDirectory   The directory holding the segment files
+	 * @param theSegmentSize The size of newly created segment files
+	 */
+	FileSegmentLog(File theDirectory, int theSegmentSize) throws IOException {
+		myDirectory = theDirectory;
+		mySegmentSize = theSegmentSize;
+		Files.createDirectories(theDirectory.toPath());
+		open();
+	}
+
+	private void open() throws IOException {
+		File[] segmentFiles = myDirectory.listFiles((dir, name) -> name.endsWith(SEGMENT_SUFFIX));
+		if (segmentFiles != null) {
+			for (File next : segmentFiles) {
+				long baseOffset = Long.parseLong(next.getName().substring(0, next.getName().length() - SEGMENT_SUFFIX.length()));
+				mySegments.put(baseOffset, new Segment(next, baseOffset, map(next, next.length())));
+			}
+		}
+
+		long committedOffset = readCommittedOffset();
+		if (!mySegments.isEmpty() && committedOffset < mySegments.firstKey()) {
+			committedOffset = mySegments.firstKey();
+		}
+
+		// Find the end of the log, counting the records which have not been consumed
+		long offset = committedOffset;
+		while (true) {
+			Map.Entry<Long, Segment> entry = mySegments.floorEntry(offset);
+			if (entry == null || offset >= entry.getValue().getEndOffset()) {
+				break;
+			}
+			Segment segment = entry.getValue();
+			int position = (int) (offset - segment.myBaseOffset);
+			if (segment.mySize - position < HEADER_SIZE || segment.myBuffer.getInt(position) == END_OF_SEGMENT) {
+				offset = segment.getEndOffset();
+				continue;
+			}
+			if (readRecord(segment, position) == null) {
+				break;
+			}
+			offset += HEADER_SIZE + segment.myBuffer.getInt(position);
+			myPendingCount++;
+		}
+
+		// Anything after the last complete record was not completely written before the log was closed
+		for (Segment next : new ArrayList<>(mySegments.tailMap(offset, false).values())) {
+			mySegments.remove(next.myBaseOffset);
+			deleteSegmentFile(next);
+		}
+
+		myReadOffset = committedOffset;
+		myWriteOffset = offset;
+		myLastSyncedCommittedOffset = committedOffset;
+		if (myPendingCount > 0) {
+			ourLog.info("Opened log {} with {} unconsumed records", myDirectory, myPendingCount);
+		}
+	}
+
+	/**
+	 * Appends a record to the end of the log. The record is not guaranteed to be durable until {@link #sync()}
+	 * has been called.
+	 */
+	synchronized void append(byte[] theRecord) throws IOException {
+		if (myClosed) {
+			throw new InternalErrorException(Msg.code(2406) + "Log " + myDirectory + " is closed");
+		}
+		int recordSize = HEADER_SIZE + theRecord.length;
+		if (recordSize > mySegmentSize) {
+			throw new InternalErrorException(Msg.code(2407) + "Record of " + theRecord.length + " bytes is larger than the maximum of " + (mySegmentSize - HEADER_SIZE) + " bytes for log " + myDirectory);
+		}
+
+		Segment segment = getSegmentForWrite(recordSize);
+		int position = (int) (myWriteOffset - segment.myBaseOffset);
+
+		CRC32 crc = new CRC32();
+		crc.update(theRecord);
+		ByteBuffer buffer = segment.myBuffer.duplicate();
+		buffer.position(position + 4);
+		buffer.putInt((int) crc.getValue());
+		buffer.put(theRecord);
+
+		// The length is written last so that a partially written record is never considered complete
+		segment.myBuffer.putInt(position, theRecord.length);
+
+		myUnsyncedSegments.add(segment);
+		myWriteOffset += recordSize;
+		myPendingCount++;
+		notifyAll();
+	}
+
+	private Segment getSegmentForWrite(int theRecordSize) throws IOException {
+		Map.Entry<Long, Segment> entry = mySegments.floorEntry(myWriteOffset);
+		if (entry != null && myWriteOffset < entry.getValue().getEndOffset()) {
+			Segment segment = entry.getValue();
+			int position = (int) (myWriteOffset - segment.myBaseOffset);
+			int remaining = segment.mySize - position;
+			if (remaining >= theRecordSize) {
+				return segment;
+			}
+			if (remaining >= 4) {
+				segment.myBuffer.putInt(position, END_OF_SEGMENT);
+				myUnsyncedSegments.add(segment);
+			}
+			myWriteOffset = segment.getEndOffset();
+		}
+
+		File file = new File(myDirectory, String.format("%020d", myWriteOffset) + SEGMENT_SUFFIX);
+		Files.deleteIfExists(file.toPath());
+		Segment retVal = new Segment(file, myWriteOffset, map(file, mySegmentSize));
+		mySegments.put(myWriteOffset, retVal);
+		return retVal;
+	}
+
+	/**
+	 * Returns the next record which has not been read, waiting up to the given time for one to be appended. The
+	 * record is considered in-flight until {@link #complete(long)} is called with its offset.
+	 *
+	 * @return Returns <code>null</code> if no record was appended in time
+	 */
+	@Nullable
+	synchronized LogRecord poll(long theTimeoutMillis) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(theTimeoutMillis);
+		while (myReadOffset >= myWriteOffset) {
+			long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+			if (myClosed || remainingMillis <= 0) {
+				return null;
+			}
+			wait(remainingMillis);
+		}
+
+		while (true) {
+			Segment segment = mySegments.floorEntry(myReadOffset).getValue();
+			int position = (int) (myReadOffset - segment.myBaseOffset);
+			if (segment.mySize - position < HEADER_SIZE || segment.myBuffer.getInt(position) == END_OF_SEGMENT) {
+				myReadOffset = segment.getEndOffset();
+				if (myReadOffset >= myWriteOffset) {
+					return null;
+				}
+				continue;
+			}
+
+			byte[] contents = readRecord(segment, position);
+			if (contents == null) {
+				throw new InternalErrorException(Msg.code(2408) + "Corrupt record at offset " + myReadOffset + " in log " + myDirectory);
+			}
+			LogRecord retVal = new LogRecord(myReadOffset, contents);
+			myInFlightOffsets.add(myReadOffset);
+			myReadOffset += HEADER_SIZE + contents.length;
+			return retVal;
+		}
+	}
+
+	/**
+	 * Marks a record returned by {@link #poll(long)} as processed
+	 */
+	synchronized void complete(long theOffset) {
+		if (myInFlightOffsets.remove(theOffset)) {
+			myPendingCount--;
+		}
+	}
+
+	/**
+	 * The offset of the first record which has not been completely processed. Records from this offset onwards are
+	 * read again if the log is reopened.
+	 */
+	synchronized long getCommittedOffset() {
+		return myInFlightOffsets.isEmpty() ? myReadOffset : myInFlightOffsets.first();
+	}
+
+	/**
+	 * The number of records which have been appended but not completely processed
+	 */
+	synchronized long getPendingCount() {
+		return myPendingCount;
+	}
+
+	/**
+	 * Forces the appended records and the committed offset to disk, and deletes segments which only hold
+	 * records which have been processed
+	 */
+	void sync() throws IOException {
+		List<Segment> unsyncedSegments;
+		long committedOffset;
+		synchronized (this) {
+			if (myClosed) {
+				return;
+			}
+			unsyncedSegments = new ArrayList<>(myUnsyncedSegments);
+			myUnsyncedSegments.clear();
+			committedOffset = getCommittedOffset();
+		}
+
+		// Forcing the segments is the slow part, so it is done without holding the lock
+		for (Segment next : unsyncedSegments) {
+			next.myBuffer.force();
+		}
+
+		if (committedOffset != myLastSyncedCommittedOffset) {
+			writeCommittedOffset(committedOffset);
+			myLastSyncedCommittedOffset = committedOffset;
+
+			List<Segment> consumedSegments = new ArrayList<>();
+			synchronized (this) {
+				for (Segment next : mySegments.values()) {
+					if (next.getEndOffset() <= committedOffset && next.getEndOffset() <= myWriteOffset) {
+						consumedSegments.add(next);
+					}
+				}
+				consumedSegments.forEach(t -> mySegments.remove(t.myBaseOffset));
+				consumedSegments.forEach(myUnsyncedSegments::remove);
+			}
+			for (Segment next : consumedSegments) {
+				deleteSegmentFile(next);
+			}
+		}
+	}
+
+	/**
+	 * Syncs and closes the log. Threads waiting in {@link #poll(long)} return immediately.
+	 */
+	void close() throws IOException {
+		sync();
+		synchronized (this) {
+			myClosed = true;
+			mySegments.clear();
+			myUnsyncedSegments.clear();
+			notifyAll();
+		}
+	}
+
+	@Nullable
+	private byte[] readRecord(Segment theSegment, int thePosition) {
+		int length = theSegment.myBuffer.getInt(thePosition);
+		if (length <= 0 || length > theSegment.mySize - thePosition - HEADER_SIZE) {
+			return null;
+		}
+		int expectedCrc = theSegment.myBuffer.getInt(thePosition + 4);
+		byte[] retVal = new byte[length];
+		ByteBuffer buffer = theSegment.myBuffer.duplicate();
+		buffer.position(thePosition + HEADER_SIZE);
+		buffer.get(retVal);
+
+		CRC32 crc = new CRC32();
+		crc.update(retVal);
+		if ((int) crc.getValue() != expectedCrc) {
+			return null;
+		}
+		return retVal;
+	}
+
+	private long readCommittedOffset() throws IOException {
+		File file = new File(myDirectory, OFFSET_FILE_NAME);
+		if (!file.exists()) {
+			return 0;
+		}
+		ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+		return buffer.remaining() >= 8 ? buffer.getLong() : 0;
+	}
+
+	private void writeCommittedOffset(long theOffset) throws IOException {
+		File tempFile = new File(myDirectory, OFFSET_FILE_NAME + ".tmp");
+		try (FileChannel channel = FileChannel.open(tempFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer buffer = ByteBuffer.allocate(8);
+			buffer.putLong(theOffset);
+			buffer.flip();
+			channel.write(buffer);
+			channel.force(true);
+		}
+		Files.move(tempFile.toPath(), new File(myDirectory, OFFSET_FILE_NAME).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private static MappedByteBuffer map(File theFile, long theSize) throws IOException {
+		try (RandomAccessFile file = new RandomAccessFile(theFile, "rw")) {
+			return file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, theSize);
+		}
+	}
+
+	private static void deleteSegmentFile(Segment theSegment) {
+		try {
+			Files.deleteIfExists(theSegment.myFile.toPath());
+		} catch (IOException e) {
+			ourLog.warn("Failed to delete segment file {}: {}", theSegment.myFile, e.toString());
+		}
+	}
+
+	private static class Segment {
+
+		private final File myFile;
+		private final long myBaseOffset;
+		private final int mySize;
+		private final MappedByteBuffer myBuffer;
+
+		private Segment(File theFile, long theBaseOffset, MappedByteBuffer theBuffer) {
+			myFile = theFile;
+			myBaseOffset = theBaseOffset;
+			mySize = theBuffer.capacity();
+			myBuffer = theBuffer;
+		}
+
+		private long getEndOffset() {
+			return myBaseOffset + mySize;
+		}
+	}
+
+	static class LogRecord {
+
+		private final long myOffset;
+		private final byte[] myContents;
+
+		private LogRecord(long theOffset, byte[] theContents) {
+			myOffset = theOffset;
+			myContents = theContents;
+		}
+
+		long getOffset() {
+			return myOffset;
+		}
+
+		byte[] getContents() {
+			return myContents;
+		}
+	}
+
+}
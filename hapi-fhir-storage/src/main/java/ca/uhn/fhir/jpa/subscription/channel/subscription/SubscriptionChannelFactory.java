@@ -52,6 +52,15 @@ public class SubscriptionChannelFactory {
 		return new BroadcastingSubscribableChannelWrapper(channel);
 	}
 
+	/**
+	 * Deletes any messages stored for a delivery channel which is no longer used by any subscription
+	 *
+	 * @see IChannelFactory#deleteChannel(String)
+	 */
+	public void deleteDeliveryChannel(String theChannelName) {
+		myChannelFactory.deleteChannel(theChannelName);
+	}
+
 	public IChannelProducer newMatchingSendingChannel(String theChannelName, ChannelProducerSettings theChannelSettings) {
 		ChannelProducerSettings config = newProducerConfigForMatchingChannel(theChannelSettings);
 		return myChannelFactory.getOrCreateProducer(theChannelName, ResourceModifiedJsonMessage.class, config);
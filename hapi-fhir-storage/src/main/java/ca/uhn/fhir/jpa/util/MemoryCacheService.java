@@ -69,6 +69,11 @@ public class MemoryCacheService {
 					timeoutSeconds = SECONDS.convert(myStorageSettings.getTranslationCachesExpireAfterWriteInMinutes(), MINUTES);
 					maximumSize = 10000;
 					break;
+				case KEYSET_PAGING_POSITION:
+				case SEARCH_PARAM_SELECTIVITY:
+					timeoutSeconds = SECONDS.convert(10, MINUTES);
+					maximumSize = 10000;
+					break;
 				case PID_TO_FORCED_ID:
 				case FORCED_ID_TO_PID:
 				case MATCH_URL:
@@ -197,7 +202,27 @@ public class MemoryCacheService {
 		MATCH_URL(String.class),
 		CONCEPT_TRANSLATION_REVERSE(TranslationQuery.class),
 		RESOURCE_CONDITIONAL_CREATE_VERSION(Long.class),
-		HISTORY_COUNT(HistoryCountKey.class);
+		HISTORY_COUNT(HistoryCountKey.class),
+		/**
+		 * Key type: {@literal Long}
+		 * Value type: {@literal CompressionDictionary}
+		 */
+		COMPRESSION_DICTIONARY(Long.class),
+		/**
+		 * Key type: {@literal String} (resource type)
+		 * Value type: {@literal Optional<CompressionDictionary>}
+		 */
+		CURRENT_COMPRESSION_DICTIONARY(String.class),
+		/**
+		 * Key type: {@literal String} (search UUID and offset)
+		 * Value type: {@literal SearchKeysetPagingSvc.KeysetPosition}
+		 */
+		KEYSET_PAGING_POSITION(String.class),
+		/**
+		 * Key type: {@literal String} (index table, hash column, hash value and request partition)
+		 * Value type: {@literal SearchParamSelectivitySvc.RowCount}
+		 */
+		SEARCH_PARAM_SELECTIVITY(String.class);
 
 		public Class<?> getKeyType() {
 			return myKeyType;
@@ -0,0 +1,102 @@
+package ca.uhn.fhir.jpa.dao;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.DataFormatException;
+import org.hl7.fhir.r4.model.DecimalType;
+import org.hl7.fhir.r4.model.Enumerations;
+import org.hl7.fhir.r4.model.Extension;
+import org.hl7.fhir.r4.model.Observation;
+import org.hl7.fhir.r4.model.Patient;
+import org.hl7.fhir.r4.model.Quantity;
+import org.hl7.fhir.r4.model.StringType;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class BinaryJsonUtilTest {
+
+	private static final Logger ourLog = LoggerFactory.getLogger(BinaryJsonUtilTest.class);
+	private static final FhirContext ourCtx = FhirContext.forR4Cached();
+
+	@ParameterizedTest
+	@ValueSource(strings = {
+		"{}",
+		"[]",
+		"{\"a\":{},\"b\":[],\"c\":[{},[]]}",
+		"{\"resourceType\":\"Patient\",\"active\":true,\"deceasedBoolean\":false,\"foo\":null}",
+		"{\"unknownName\":1,\"nested\":{\"unknownName\":2,\"unknownName2\":[3,4]}}",
+		"{\"value\":0,\"a\":-1,\"b\":9223372036854775807,\"c\":-9223372036854775808,\"d\":123456789012345678901234567890}",
+		"{\"value\":1.50,\"a\":-0.000,\"b\":1E+10,\"c\":6.02e23}",
+		"{\"text\":\"quote \\\" backslash \\\\ newline \\n tab \\t control \\u0001\",\"b\":\"\"}",
+		"{\"text\":\"unicode \u00e9\u4e2d\ud83d\ude00\",\"\u00e9\":\"x\"}",
+		"[\"http://loinc.org\",\"http://loinc.org\",\"http://loinc.org\"]"
+	})
+	public void testRoundTrip(String theJson) {
+		byte[] encoded = BinaryJsonUtil.encode(theJson);
+		assertEquals(theJson, BinaryJsonUtil.decode(encoded));
+	}
+
+	@Test
+	public void testRoundTripEncodedResource() {
+		Observation obs = new Observation();
+		obs.setStatus(Observation.ObservationStatus.FINAL);
+		obs.getCode().addCoding().setSystem("http://loinc.org").setCode("789-8").setDisplay("Erythrocytes [#/volume] in Blood by Automated count");
+		obs.getSubject().setReference("Patient/123");
+		obs.setValue(new Quantity().setValueElement(new DecimalType("4.120")).setUnit("10*12/L").setSystem("http://unitsofmeasure.org").setCode("10*12/L"));
+		obs.addComponent().setValue(new StringType("a")).getCode().addCoding().setSystem("http://loinc.org").setCode("1");
+		obs.addComponent().setValue(new StringType("b")).getCode().addCoding().setSystem("http://loinc.org").setCode("2");
+		obs.addExtension(new Extension("http://example.com/ext", new StringType("value")));
+		String json = ourCtx.newJsonParser().encodeResourceToString(obs);
+
+		byte[] encoded = BinaryJsonUtil.encode(json);
+		ourLog.info("JSON: {} bytes - BJSON: {} bytes - JSONC: {} bytes", json.getBytes(StandardCharsets.UTF_8).length, encoded.length, GZipUtil.compress(json).length);
+
+		String decoded = BinaryJsonUtil.decode(encoded);
+		assertEquals(json, decoded);
+		assertThat(encoded.length, lessThan(json.getBytes(StandardCharsets.UTF_8).length * 6 / 10));
+
+		Observation parsed = ourCtx.newJsonParser().parseResource(Observation.class, decoded);
+		assertEquals("4.120", parsed.getValueQuantity().getValueElement().getValueAsString());
+	}
+
+	@Test
+	public void testRoundTripSmallResource() {
+		Patient patient = new Patient();
+		patient.setActive(true);
+		patient.setGender(Enumerations.AdministrativeGender.MALE);
+		patient.addName().setFamily("Simpson").addGiven("Homer");
+		String json = ourCtx.newJsonParser().encodeResourceToString(patient);
+
+		byte[] encoded = BinaryJsonUtil.encode(json);
+		assertEquals(json, BinaryJsonUtil.decode(encoded));
+		assertThat(encoded.length, lessThan(GZipUtil.compress(json).length));
+	}
+
+	@Test
+	public void testDecodeInvalid() {
+		DataFormatException e = assertThrows(DataFormatException.class, () -> BinaryJsonUtil.decode("{}".getBytes(StandardCharsets.UTF_8)));
+		assertThat(e.getMessage(), containsString("Unknown binary JSON format version"));
+
+		byte[] truncated = BinaryJsonUtil.encode("{\"text\":\"hello\"}");
+		byte[] bytes = new byte[truncated.length - 3];
+		System.arraycopy(truncated, 0, bytes, 0, bytes.length);
+		e = assertThrows(DataFormatException.class, () -> BinaryJsonUtil.decode(bytes));
+		assertThat(e.getMessage(), containsString("Invalid binary JSON contents"));
+	}
+
+	@Test
+	public void testEncodeInvalid() {
+		assertThrows(DataFormatException.class, () -> BinaryJsonUtil.encode("{\"a\":"));
+	}
+
+}
@@ -0,0 +1,136 @@
+package ca.uhn.fhir.jpa.dao;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.DataFormatException;
+import ca.uhn.fhir.util.StopWatch;
+import org.hl7.fhir.r4.model.DecimalType;
+import org.hl7.fhir.r4.model.Observation;
+import org.hl7.fhir.r4.model.Quantity;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class DictionaryCompressionUtilTest {
+
+	private static final Logger ourLog = LoggerFactory.getLogger(DictionaryCompressionUtilTest.class);
+	private static final FhirContext ourCtx = FhirContext.forR4Cached();
+
+	@Test
+	public void testRoundTrip() {
+		byte[] dictionary = "\"resourceType\":\"Patient\",".getBytes(StandardCharsets.UTF_8);
+		for (String next : Arrays.asList("", "{}", "{\"resourceType\":\"Patient\",\"active\":true}", "unicode é中😀")) {
+			byte[] compressed = DictionaryCompressionUtil.compress(next, dictionary);
+			assertEquals(next, DictionaryCompressionUtil.decompress(compressed, dictionary));
+		}
+	}
+
+	@Test
+	public void testRoundTripEmptyDictionary() {
+		String text = "{\"resourceType\":\"Patient\",\"active\":true}";
+		byte[] compressed = DictionaryCompressionUtil.compress(text, new byte[0]);
+		assertEquals(text, DictionaryCompressionUtil.decompress(compressed, new byte[0]));
+	}
+
+	@Test
+	public void testTrainDictionary() {
+		List<String> samples = createObservations(200);
+
+		byte[] dictionary = DictionaryCompressionUtil.trainDictionary(samples, 4096);
+		String dictionaryText = new String(dictionary, StandardCharsets.UTF_8);
+		assertThat(dictionary.length, lessThanOrEqualTo(4096));
+		assertThat(dictionary.length, greaterThan(0));
+		assertThat(dictionaryText, containsString("http://loinc.org"));
+		assertThat(dictionaryText, containsString("\"resourceType\":\"Observation\""));
+
+		assertEquals(0, DictionaryCompressionUtil.trainDictionary(Arrays.asList("{\"a\":1}", "[\"b\"]"), 4096).length);
+	}
+
+	/**
+	 * Compares the size and decode time of dictionary compressed resources to the JSONC
+	 * (gzip) encoding. Small resources should compress much better with a dictionary.
+	 */
+	@Test
+	public void testCompareToGzip() {
+		List<String> samples = createObservations(500);
+		byte[] dictionary = DictionaryCompressionUtil.trainDictionary(samples.subList(0, 250), DictionaryCompressionUtil.MAXIMUM_DICTIONARY_SIZE);
+
+		List<String> resources = samples.subList(250, 500);
+		long jsonSize = 0;
+		long gzipSize = 0;
+		long dictionarySize = 0;
+		List<byte[]> gzipped = new ArrayList<>();
+		List<byte[]> compressed = new ArrayList<>();
+		for (String next : resources) {
+			jsonSize += next.getBytes(StandardCharsets.UTF_8).length;
+			byte[] gzip = GZipUtil.compress(next);
+			gzipped.add(gzip);
+			gzipSize += gzip.length;
+			byte[] dict = DictionaryCompressionUtil.compress(next, dictionary);
+			compressed.add(dict);
+			dictionarySize += dict.length;
+			assertEquals(next, DictionaryCompressionUtil.decompress(dict, dictionary));
+		}
+
+		StopWatch sw = new StopWatch();
+		for (int pass = 0; pass < 10; pass++) {
+			gzipped.forEach(GZipUtil::decompress);
+		}
+		long gzipMillis = sw.getMillisAndRestart();
+		for (int pass = 0; pass < 10; pass++) {
+			compressed.forEach(t -> DictionaryCompressionUtil.decompress(t, dictionary));
+		}
+		long dictionaryMillis = sw.getMillis();
+
+		ourLog.info("{} resources - JSON: {} bytes - JSONC: {} bytes / decode {}ms - JSOND: {} bytes / decode {}ms",
+			resources.size(), jsonSize, gzipSize, gzipMillis, dictionarySize, dictionaryMillis);
+		assertThat(dictionarySize, lessThan(gzipSize / 2));
+	}
+
+	@Test
+	public void testDecompressInvalid() {
+		byte[] dictionary = "\"resourceType\":\"Patient\",".getBytes(StandardCharsets.UTF_8);
+		byte[] compressed = DictionaryCompressionUtil.compress("{\"resourceType\":\"Patient\",\"active\":true}", dictionary);
+		byte[] truncated = Arrays.copyOf(compressed, compressed.length - 3);
+		DataFormatException e = assertThrows(DataFormatException.class, () -> DictionaryCompressionUtil.decompress(truncated, dictionary));
+		assertThat(e.getMessage(), containsString("Unexpected end of input"));
+
+		e = assertThrows(DataFormatException.class, () -> DictionaryCompressionUtil.decompress(new byte[]{(byte) 0xff, (byte) 0xff, 0, 0}, dictionary));
+		assertThat(e.getMessage(), containsString("Failed to decompress contents"));
+	}
+
+	private static List<String> createObservations(int theCount) {
+		List<String> retVal = new ArrayList<>();
+		for (int i = 0; i < theCount; i++) {
+			Observation obs = new Observation();
+			obs.setId("Observation/" + i);
+			obs.getMeta().setVersionId("1").setLastUpdated(new java.util.Date(1690000000000L + i * 1000L));
+			obs.setStatus(Observation.ObservationStatus.FINAL);
+			obs.addCategory().addCoding().setSystem("http://terminology.hl7.org/CodeSystem/observation-category").setCode("vital-signs").setDisplay("Vital Signs");
+			if (i % 2 == 0) {
+				obs.getCode().addCoding().setSystem("http://loinc.org").setCode("8867-4").setDisplay("Heart rate");
+				obs.setValue(new Quantity().setValueElement(new DecimalType(60 + (i % 40))).setUnit("beats/minute").setSystem("http://unitsofmeasure.org").setCode("/min"));
+			} else {
+				obs.getCode().addCoding().setSystem("http://loinc.org").setCode("8310-5").setDisplay("Body temperature");
+				obs.setValue(new Quantity().setValueElement(new DecimalType("36." + (i % 10))).setUnit("C").setSystem("http://unitsofmeasure.org").setCode("Cel"));
+			}
+			obs.getSubject().setReference("Patient/" + (i % 37));
+			obs.getEffectiveDateTimeType().setValueAsString("2023-07-" + String.format("%02d", 1 + (i % 28)) + "T10:00:00Z");
+			retVal.add(ourCtx.newJsonParser().encodeResourceToString(obs));
+		}
+		return retVal;
+	}
+
+}
@@ -0,0 +1,254 @@
+package ca.uhn.fhir.jpa.subscription.channel.impl;
+
+import ca.uhn.fhir.jpa.subscription.channel.api.ChannelConsumerSettings;
+import ca.uhn.fhir.jpa.subscription.channel.api.ChannelProducerSettings;
+import ca.uhn.fhir.jpa.subscription.channel.api.IChannelProducer;
+import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
+import ca.uhn.fhir.rest.server.messaging.json.BaseJsonMessage;
+import ca.uhn.fhir.util.BaseUnrecoverableRuntimeException;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.messaging.MessageDeliveryException;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FileBackedChannelFactoryTest {
+
+	private static final String TEST_CHANNEL_NAME = "test-channel-name";
+	@TempDir
+	File myDirectory;
+	private final List<FileBackedChannelFactory> myFactories = new ArrayList<>();
+	private final List<String> myReceivedPayloads = Collections.synchronizedList(new ArrayList<>());
+
+	@AfterEach
+	public void after() {
+		myFactories.forEach(FileBackedChannelFactory::stop);
+	}
+
+	@Test
+	void testDeliverMessages() {
+		FileBackedChannel channel = getOrCreateChannel(newFactory(), 1);
+		channel.subscribe(msg -> myReceivedPayloads.add((String) msg.getPayload()));
+
+		channel.send(new TestMessage("A"));
+		channel.send(new TestMessage("B"));
+		channel.send(new TestMessage("C"));
+
+		await().until(() -> myReceivedPayloads.size() == 3);
+		assertThat(myReceivedPayloads, contains("A", "B", "C"));
+		await().until(() -> channel.getPendingMessageCount() == 0);
+	}
+
+	@Test
+	void testUnprocessedMessagesDeliveredAfterRestart() {
+		FileBackedChannelFactory factory = newFactory();
+		FileBackedChannel channel = getOrCreateChannel(factory, 2);
+		channel.send(new TestMessage("A"));
+		channel.send(new TestMessage("B"));
+		assertEquals(2, channel.getPendingMessageCount());
+		factory.stop();
+
+		FileBackedChannel reopenedChannel = getOrCreateChannel(newFactory(), 2);
+		assertEquals(2, reopenedChannel.getPendingMessageCount());
+		reopenedChannel.subscribe(msg -> myReceivedPayloads.add((String) msg.getPayload()));
+
+		await().until(() -> myReceivedPayloads.size() == 2);
+		assertThat(myReceivedPayloads, containsInAnyOrder("A", "B"));
+		await().until(() -> reopenedChannel.getPendingMessageCount() == 0);
+	}
+
+	@Test
+	void testProcessedMessagesNotDeliveredAfterRestart() {
+		FileBackedChannelFactory factory = newFactory();
+		FileBackedChannel channel = getOrCreateChannel(factory, 1);
+		channel.subscribe(msg -> myReceivedPayloads.add((String) msg.getPayload()));
+		channel.send(new TestMessage("A"));
+		await().until(() -> channel.getPendingMessageCount() == 0);
+		factory.stop();
+
+		FileBackedChannel reopenedChannel = getOrCreateChannel(newFactory(), 1);
+		assertEquals(0, reopenedChannel.getPendingMessageCount());
+		reopenedChannel.subscribe(msg -> myReceivedPayloads.add((String) msg.getPayload()));
+		reopenedChannel.send(new TestMessage("B"));
+
+		await().until(() -> myReceivedPayloads.size() == 2);
+		assertThat(myReceivedPayloads, contains("A", "B"));
+	}
+
+	@Test
+	void testConsumedSegmentsDeleted() {
+		FileBackedChannelFactory factory = newFactory();
+		factory.setSegmentSize(1024);
+		FileBackedChannel channel = getOrCreateChannel(factory, 1);
+		channel.subscribe(msg -> myReceivedPayloads.add((String) msg.getPayload()));
+
+		List<String> expected = new ArrayList<>();
+		for (int i = 0; i < 50; i++) {
+			String payload = "message-" + i;
+			expected.add(payload);
+			channel.send(new TestMessage(payload));
+		}
+
+		await().until(() -> myReceivedPayloads.size() == 50);
+		assertEquals(expected, myReceivedPayloads);
+		await().until(() -> countSegmentFiles() == 1);
+
+		// Messages larger than a segment can never be written
+		TestMessage tooLarge = new TestMessage(StringUtils.repeat('a', 2000));
+		MessageDeliveryException e = assertThrows(MessageDeliveryException.class, () -> channel.send(tooLarge));
+		assertThat(e.getCause(), instanceOf(InternalErrorException.class));
+		assertThat(e.getCause().getMessage(), containsString("HAPI-2407"));
+	}
+
+	@Test
+	void testFailedMessageMovedToDeadLetterLog() {
+		FileBackedChannelFactory factory = newFactory();
+		FileBackedChannel channel = getOrCreateChannel(factory, 1);
+		channel.subscribe(msg -> {
+			String payload = (String) msg.getPayload();
+			if (payload.equals("FAIL")) {
+				throw new UnrecoverableTestException();
+			}
+			myReceivedPayloads.add(payload);
+		});
+
+		channel.send(new TestMessage("FAIL"));
+		channel.send(new TestMessage("A"));
+
+		await().until(() -> myReceivedPayloads.size() == 1);
+		await().until(() -> channel.getPendingMessageCount() == 0);
+		assertEquals(1, channel.getDeadLetterMessageCount());
+		factory.stop();
+
+		// The failed message is not delivered again, but is kept in the dead letter log
+		FileBackedChannel reopenedChannel = getOrCreateChannel(newFactory(), 1);
+		assertEquals(0, reopenedChannel.getPendingMessageCount());
+		assertEquals(1, reopenedChannel.getDeadLetterMessageCount());
+	}
+
+	@Test
+	void testChannelClosedOnceProducerAndReceiverDestroyed() throws Exception {
+		FileBackedChannelFactory factory = newFactory();
+		IChannelProducer producer = factory.getOrCreateProducer(TEST_CHANNEL_NAME, TestMessage.class, new ChannelProducerSettings());
+		FileBackedChannel receiver = (FileBackedChannel) factory.getOrCreateReceiver(TEST_CHANNEL_NAME, TestMessage.class, new ChannelConsumerSettings());
+		producer.send(new TestMessage("A"));
+
+		// Destroying the receiver twice still leaves the producer's reference
+		receiver.destroy();
+		receiver.destroy();
+		producer.send(new TestMessage("B"));
+		assertEquals(2, receiver.getPendingMessageCount());
+
+		((FileBackedChannelProducer) producer).destroy();
+		assertTrue(getChannelDirectory().exists());
+
+		// A channel with the same name is a new channel, which delivers the messages of the closed one
+		FileBackedChannel recreatedChannel = getOrCreateChannel(factory, 1);
+		assertNotSame(receiver, recreatedChannel);
+		assertEquals(2, recreatedChannel.getPendingMessageCount());
+		recreatedChannel.subscribe(msg -> myReceivedPayloads.add((String) msg.getPayload()));
+		await().until(() -> myReceivedPayloads.size() == 2);
+		assertThat(myReceivedPayloads, contains("A", "B"));
+	}
+
+	@Test
+	void testDeleteChannelKeepsDeadLetters() throws Exception {
+		FileBackedChannelFactory factory = newFactory();
+		FileBackedChannel channel = getOrCreateChannel(factory, 1);
+		channel.subscribe(msg -> {
+			throw new UnrecoverableTestException();
+		});
+		channel.send(new TestMessage("FAIL"));
+		await().until(() -> channel.getDeadLetterMessageCount() == 1);
+		factory.stop();
+
+		factory = newFactory();
+		IChannelProducer producer = factory.getOrCreateProducer(TEST_CHANNEL_NAME, TestMessage.class, new ChannelProducerSettings());
+		FileBackedChannel receiver = (FileBackedChannel) factory.getOrCreateReceiver(TEST_CHANNEL_NAME, TestMessage.class, new ChannelConsumerSettings());
+		producer.send(new TestMessage("A"));
+		assertEquals(1, receiver.getPendingMessageCount());
+
+		// Deleting an open channel deletes its messages once it is closed
+		factory.deleteChannel(TEST_CHANNEL_NAME);
+		assertTrue(getChannelDirectory().exists());
+		receiver.destroy();
+		((FileBackedChannelProducer) producer).destroy();
+		assertFalse(getChannelDirectory().exists());
+		assertTrue(new File(new File(myDirectory, FileBackedChannelFactory.DEAD_LETTER_DIRECTORY_NAME), TEST_CHANNEL_NAME).exists());
+
+		// A channel with the same name starts empty, but still has the dead letters
+		FileBackedChannel recreatedChannel = getOrCreateChannel(factory, 1);
+		assertEquals(0, recreatedChannel.getPendingMessageCount());
+		assertEquals(1, recreatedChannel.getDeadLetterMessageCount());
+	}
+
+	private File getChannelDirectory() {
+		return new File(new File(myDirectory, FileBackedChannelFactory.CHANNEL_DIRECTORY_NAME), TEST_CHANNEL_NAME);
+	}
+
+	private int countSegmentFiles() {
+		File[] files = getChannelDirectory().listFiles((dir, name) -> name.endsWith(FileSegmentLog.SEGMENT_SUFFIX));
+		return files != null ? files.length : 0;
+	}
+
+	private FileBackedChannelFactory newFactory() {
+		FileBackedChannelFactory retVal = new FileBackedChannelFactory((name, settings) -> name, myDirectory);
+		retVal.setSyncIntervalMillis(10);
+		myFactories.add(retVal);
+		return retVal;
+	}
+
+	private FileBackedChannel getOrCreateChannel(FileBackedChannelFactory theFactory, int theConcurrentConsumers) {
+		ChannelProducerSettings producerSettings = new ChannelProducerSettings();
+		producerSettings.setConcurrentConsumers(theConcurrentConsumers);
+		FileBackedChannelProducer producer = (FileBackedChannelProducer) theFactory.getOrCreateProducer(TEST_CHANNEL_NAME, TestMessage.class, producerSettings);
+		FileBackedChannel retVal = (FileBackedChannel) theFactory.getOrCreateReceiver(TEST_CHANNEL_NAME, TestMessage.class, new ChannelConsumerSettings());
+		assertSame(retVal, producer.getChannel());
+		return retVal;
+	}
+
+	private static class UnrecoverableTestException extends BaseUnrecoverableRuntimeException {
+
+		UnrecoverableTestException() {
+			super("FAIL");
+		}
+	}
+
+	public static class TestMessage extends BaseJsonMessage<String> {
+
+		@JsonProperty("payload")
+		private String myPayload;
+
+		public TestMessage() {
+			super();
+		}
+
+		TestMessage(String thePayload) {
+			myPayload = thePayload;
+		}
+
+		@Override
+		public String getPayload() {
+			return myPayload;
+		}
+	}
+}
@@ -9,6 +9,7 @@ import ca.uhn.fhir.rest.api.Constants;
 import ca.uhn.fhir.test.BaseTest;
 import ca.uhn.fhir.util.StopWatch;
 import ca.uhn.fhir.util.TestUtil;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.output.NullWriter;
@@ -55,6 +56,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashSet;
@@ -67,6 +69,7 @@ import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.is;
@@ -100,6 +103,7 @@ public class JsonParserR4Test extends BaseTest {
 	@AfterEach
 	public void afterEach() {
 		ourCtx.getParserOptions().setAutoContainReferenceTargetsWithNoId(true);
+		ourCtx.getParserOptions().setStreamingJsonParse(false);
 	}
 
 	@Test
@@ -1052,6 +1056,212 @@ public class JsonParserR4Test extends BaseTest {
 
 	}
 
+	@Test
+	public void testParseStreaming_BigBundle() {
+		Bundle b = createBigBundle();
+		IParser parser = ourCtx.newJsonParser();
+		String input = parser.encodeResourceToString(b);
+
+		String expected = parser.encodeResourceToString(parser.parseResource(Bundle.class, input));
+		ourCtx.getParserOptions().setStreamingJsonParse(true);
+		String actual = parser.encodeResourceToString(parser.parseResource(Bundle.class, input));
+
+		assertEquals(expected, actual);
+	}
+
+	@Test
+	public void testParseStreaming_PrimitiveAlternatesAndExtensions() {
+		String input = "{\n" +
+			"  \"resourceType\": \"Patient\",\n" +
+			"  \"_birthDate\": { \"id\": \"BD\", \"extension\": [ { \"url\": \"http://foo\", \"valueString\": \"BAR\" } ] },\n" +
+			"  \"birthDate\": \"2020-01-01\",\n" +
+			"  \"name\": [ {\n" +
+			"    \"given\": [ \"A\", null, \"C\" ],\n" +
+			"    \"_given\": [ null, { \"extension\": [ { \"url\": \"http://foo\", \"valueString\": \"B\" } ] }, { \"id\": \"C\" } ]\n" +
+			"  } ],\n" +
+			"  \"extension\": [ { \"url\": \"http://ext\", \"valueReference\": { \"reference\": \"Patient/1\" } } ],\n" +
+			"  \"_gender\": { \"extension\": [ { \"url\": \"http://foo\", \"valueCode\": \"X\" } ] }\n" +
+			"}";
+		IParser parser = ourCtx.newJsonParser();
+
+		String expected = parser.encodeResourceToString(parser.parseResource(Patient.class, input));
+		ourCtx.getParserOptions().setStreamingJsonParse(true);
+		Patient actualPatient = parser.parseResource(Patient.class, input);
+		String actual = parser.encodeResourceToString(actualPatient);
+
+		assertEquals(expected, actual);
+		assertEquals("BD", actualPatient.getBirthDateElement().getId());
+		assertEquals("B", actualPatient.getNameFirstRep().getGiven().get(1).getExtensionString("http://foo"));
+		assertEquals("C", actualPatient.getNameFirstRep().getGiven().get(2).getId());
+	}
+
+	@Test
+	public void testParseStreaming_ResourceTypeNotFirst() {
+		String input = "{\n" +
+			"  \"type\": \"collection\",\n" +
+			"  \"entry\": [ {\n" +
+			"    \"fullUrl\": \"http://foo/Patient/123\",\n" +
+			"    \"resource\": {\n" +
+			"      \"active\": true,\n" +
+			"      \"resourceType\": \"Patient\"\n" +
+			"    }\n" +
+			"  } ],\n" +
+			"  \"resourceType\": \"Bundle\"\n" +
+			"}";
+		ourCtx.getParserOptions().setStreamingJsonParse(true);
+
+		Bundle bundle = ourCtx.newJsonParser().parseResource(Bundle.class, input);
+
+		assertEquals(Bundle.BundleType.COLLECTION, bundle.getType());
+		Patient patient = (Patient) bundle.getEntryFirstRep().getResource();
+		assertTrue(patient.getActive());
+		assertEquals("http://foo/Patient/123", patient.getIdElement().getValue());
+	}
+
+	@Test
+	public void testParseStreaming_ContainedResources() {
+		String input = "{\n" +
+			"  \"resourceType\": \"Observation\",\n" +
+			"  \"contained\": [ {\n" +
+			"    \"resourceType\": \"Patient\",\n" +
+			"    \"id\": \"1\",\n" +
+			"    \"active\": true\n" +
+			"  } ],\n" +
+			"  \"status\": \"final\",\n" +
+			"  \"subject\": {\n" +
+			"    \"reference\": \"#1\"\n" +
+			"  }\n" +
+			"}";
+		ourCtx.getParserOptions().setStreamingJsonParse(true);
+
+		Observation obs = ourCtx.newJsonParser().parseResource(Observation.class, input);
+
+		assertEquals(Observation.ObservationStatus.FINAL, obs.getStatus());
+		Patient patient = (Patient) obs.getSubject().getResource();
+		assertTrue(patient.getActive());
+	}
+
+	@Test
+	public void testParseStreaming_ErrorHandlersBehaveTheSame() {
+		List<String> inputs = Lists.newArrayList(
+			"{\"resourceType\": \"Patient\", \"contact\": [ { \"foo\": { \"bar\": \"baz\" } } ] }",
+			"{\"resourceType\": \"Patient\", \"maritalStatus\": [ { \"text\": \"A\" }, { \"text\": \"B\" } ] }",
+			"{\"resourceType\": \"Patient\", \"name\": { \"family\": \"A\" } }",
+			"{\"resourceType\": \"Patient\", \"foo\": \"bar\", \"active\": true }",
+			"{\"resourceType\": \"Patient\", \"extension\": [ { \"valueString\": \"A\" } ] }"
+		);
+
+		for (String input : inputs) {
+			ourCtx.getParserOptions().setStreamingJsonParse(false);
+			String expectedLenient = ourCtx.newJsonParser().encodeResourceToString(ourCtx.newJsonParser().parseResource(Patient.class, input));
+			String expectedStrict = null;
+			try {
+				ourCtx.newJsonParser().setParserErrorHandler(new StrictErrorHandler()).parseResource(Patient.class, input);
+			} catch (DataFormatException e) {
+				expectedStrict = e.getMessage();
+			}
+			assertNotNull(expectedStrict, input);
+
+			ourCtx.getParserOptions().setStreamingJsonParse(true);
+			String actualLenient = ourCtx.newJsonParser().encodeResourceToString(ourCtx.newJsonParser().parseResource(Patient.class, input));
+			String actualStrict = null;
+			try {
+				ourCtx.newJsonParser().setParserErrorHandler(new StrictErrorHandler()).parseResource(Patient.class, input);
+			} catch (DataFormatException e) {
+				actualStrict = e.getMessage();
+			}
+
+			assertEquals(expectedLenient, actualLenient, input);
+			assertEquals(expectedStrict, actualStrict, input);
+		}
+	}
+
+	@Test
+	public void testParseStreaming_InvalidContent() {
+		ourCtx.getParserOptions().setStreamingJsonParse(true);
+		IParser parser = ourCtx.newJsonParser();
+
+		try {
+			parser.parseResource(Patient.class, "{\"resourceType\": \"Patient\" } { }");
+			fail();
+		} catch (DataFormatException e) {
+			assertThat(e.getMessage(), containsString(Msg.code(2372)));
+		}
+
+		try {
+			parser.parseResource(Patient.class, "[ ]");
+			fail();
+		} catch (DataFormatException e) {
+			assertThat(e.getMessage(), containsString(Msg.code(2370)));
+		}
+
+		try {
+			parser.parseResource(Bundle.class, "{\"resourceType\": \"Bundle\", \"entry\": [ { \"resource\": { \"active\": true } } ] }");
+			fail();
+		} catch (DataFormatException e) {
+			assertEquals(Msg.code(2375) + "Missing required element 'resourceType' from JSON resource object, unable to parse", e.getMessage());
+		}
+	}
+
+	@Test
+	public void testParseBundleEntries() {
+		Bundle input = new Bundle();
+		input.setType(Bundle.BundleType.BATCH);
+		for (int i = 0; i < 5; i++) {
+			Patient patient = new Patient();
+			patient.setActive(true);
+			patient.addName().setFamily("FAM" + i);
+			input.addEntry()
+				.setFullUrl("urn:uuid:00000000-0000-0000-0000-00000000000" + i)
+				.setResource(patient)
+				.getRequest().setMethod(Bundle.HTTPVerb.POST).setUrl("Patient");
+		}
+		input.setTotal(5);
+		String encoded = ourCtx.newJsonParser().encodeResourceToString(input);
+
+		IBundleEntryIterator<Bundle> iter = ourCtx.newJsonParser().parseBundleEntries(Bundle.class, new StringReader(encoded));
+		assertEquals(Bundle.BundleType.BATCH, iter.getBundle().getType());
+
+		List<String> families = new ArrayList<>();
+		while (iter.hasNext()) {
+			Bundle.BundleEntryComponent entry = (Bundle.BundleEntryComponent) iter.next();
+			Patient patient = (Patient) entry.getResource();
+			assertEquals("urn:uuid:00000000-0000-0000-0000-00000000000" + families.size(), patient.getIdElement().getValue());
+			assertEquals(Bundle.HTTPVerb.POST, entry.getRequest().getMethod());
+			families.add(patient.getNameFirstRep().getFamily());
+		}
+
+		assertThat(families, contains("FAM0", "FAM1", "FAM2", "FAM3", "FAM4"));
+		assertEquals(5, iter.getBundle().getTotal());
+		assertTrue(iter.getBundle().getEntry().isEmpty());
+	}
+
+	@Test
+	public void testParseBundleEntries_NoEntries() {
+		String input = "{\"resourceType\": \"Bundle\", \"type\": \"batch\"}";
+
+		IBundleEntryIterator<Bundle> iter = ourCtx.newJsonParser().parseBundleEntries(Bundle.class, new StringReader(input));
+
+		assertFalse(iter.hasNext());
+		assertEquals(Bundle.BundleType.BATCH, iter.getBundle().getType());
+	}
+
+	@Test
+	public void testParseBundleEntries_Xml() {
+		Bundle input = new Bundle();
+		input.setType(Bundle.BundleType.BATCH);
+		input.addEntry().setResource(new Patient().setActive(true));
+		input.addEntry().setResource(new Patient().setActive(false));
+		String encoded = ourCtx.newXmlParser().encodeResourceToString(input);
+
+		IBundleEntryIterator<Bundle> iter = ourCtx.newXmlParser().parseBundleEntries(Bundle.class, new StringReader(encoded));
+
+		assertEquals(Bundle.BundleType.BATCH, iter.getBundle().getType());
+		assertTrue(((Patient) ((Bundle.BundleEntryComponent) iter.next()).getResource()).getActive());
+		assertFalse(((Patient) ((Bundle.BundleEntryComponent) iter.next()).getResource()).getActive());
+		assertFalse(iter.hasNext());
+	}
+
 
 	private Bundle createBigBundle() {
 		Observation obs = new Observation();
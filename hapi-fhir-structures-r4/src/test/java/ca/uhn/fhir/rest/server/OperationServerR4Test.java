@@ -229,6 +229,31 @@ public class OperationServerR4Test {
 		assertEquals(RestOperationTypeEnum.EXTENDED_OPERATION_INSTANCE, ourLastRestOperation);
 	}
 
+	@Test
+	public void testTypeOnPlainProvider() throws Exception {
+		HttpGet httpGet = new HttpGet(ourServer.getBaseUrl() + "/Patient/$OP_PLAIN_PROVIDER_ON_TYPE" );
+		try (CloseableHttpResponse status = ourClient.execute(httpGet)) {
+			assertEquals(200, status.getStatusLine().getStatusCode());
+		}
+
+		assertEquals("$OP_PLAIN_PROVIDER_ON_TYPE", ourLastMethod);
+		assertEquals(null, ourLastId);
+		assertEquals(RestOperationTypeEnum.EXTENDED_OPERATION_TYPE, ourLastRestOperation);
+
+		httpGet = new HttpGet(ourServer.getBaseUrl() + "/Patient/123/$OP_PLAIN_PROVIDER_ON_TYPE" );
+		try (CloseableHttpResponse status = ourClient.execute(httpGet)) {
+			assertEquals(200, status.getStatusLine().getStatusCode());
+		}
+		assertEquals("Patient/123", ourLastId.toUnqualifiedVersionless().getValue());
+		assertEquals(RestOperationTypeEnum.EXTENDED_OPERATION_INSTANCE, ourLastRestOperation);
+
+		// Not available at the server level
+		httpGet = new HttpGet(ourServer.getBaseUrl() + "/$OP_PLAIN_PROVIDER_ON_TYPE" );
+		try (CloseableHttpResponse status = ourClient.execute(httpGet)) {
+			assertEquals(400, status.getStatusLine().getStatusCode());
+		}
+	}
+
 	@Test
 	public void testInstanceEverythingHapiClient() {
 		ourCtx.newRestfulGenericClient(ourServer.getBaseUrl()).operation().onInstance(new IdType("Patient/123" )).named("$everything" ).withParameters(new Parameters()).execute();
@@ -899,6 +924,14 @@ public class OperationServerR4Test {
 		}
 
 
+		@Operation(name = "$OP_PLAIN_PROVIDER_ON_TYPE", idempotent = true, global = true)
+		public Parameters opPlainProviderOnType(@IdParam(optional = true) IdType theId, RequestDetails theRequestDetails) {
+			ourLastMethod = "$OP_PLAIN_PROVIDER_ON_TYPE";
+			ourLastId = theId;
+			ourLastRestOperation = theRequestDetails.getRestOperationType();
+			return new Parameters();
+		}
+
 		@Operation(name = "$OP_SERVER_BUNDLE_PROVIDER", idempotent = true)
 		public IBundleProvider opInstanceReturnsBundleProvider() {
 			ourLastMethod = "$OP_SERVER_BUNDLE_PROVIDER";
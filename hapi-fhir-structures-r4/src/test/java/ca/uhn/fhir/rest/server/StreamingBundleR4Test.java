@@ -0,0 +1,158 @@
+package ca.uhn.fhir.rest.server;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.model.api.ResourceMetadataKeyEnum;
+import ca.uhn.fhir.model.valueset.BundleEntrySearchModeEnum;
+import ca.uhn.fhir.rest.annotation.Search;
+import ca.uhn.fhir.rest.api.EncodingEnum;
+import ca.uhn.fhir.rest.api.server.IBundleProvider;
+import ca.uhn.fhir.rest.server.method.StreamingBundleEncoder;
+import ca.uhn.fhir.test.utilities.HttpClientExtension;
+import ca.uhn.fhir.test.utilities.server.RestfulServerExtension;
+import org.apache.commons.io.IOUtils;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Organization;
+import org.hl7.fhir.r4.model.Patient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class StreamingBundleR4Test {
+
+	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(StreamingBundleR4Test.class);
+	private static final FhirContext ourCtx = FhirContext.forR4Cached();
+	private static final List<String> ourRequestedRanges = Collections.synchronizedList(new ArrayList<>());
+	@RegisterExtension
+	private static final RestfulServerExtension ourServer = new RestfulServerExtension(ourCtx)
+		.registerProvider(new PatientProvider())
+		.withPagingProvider(new FifoMemoryPagingProvider(10).setDefaultPageSize(25).setMaximumPageSize(100))
+		.withDefaultResponseEncoding(EncodingEnum.JSON)
+		.withServer(t -> t.setDefaultPrettyPrint(false));
+	@RegisterExtension
+	private static final HttpClientExtension ourClient = new HttpClientExtension();
+
+	@BeforeEach
+	public void before() {
+		ourServer.getRestfulServer().setBundleStreamingChunkSize(10);
+		ourRequestedRanges.clear();
+	}
+
+	@AfterEach
+	public void after() {
+		ourServer.getRestfulServer().setBundleStreamingChunkSize(0);
+	}
+
+	@Test
+	public void testStreamedBundleMatchesNonStreamed() throws IOException {
+		String streamed = executeSearch("Patient?_count=25");
+		assertThat(ourRequestedRanges, contains("0-10", "10-20", "20-25"));
+
+		ourServer.getRestfulServer().setBundleStreamingChunkSize(0);
+		ourRequestedRanges.clear();
+		String nonStreamed = executeSearch("Patient?_count=25");
+		assertThat(ourRequestedRanges, contains("0-25"));
+
+		Bundle streamedBundle = ourCtx.newJsonParser().parseResource(Bundle.class, streamed);
+		Bundle nonStreamedBundle = ourCtx.newJsonParser().parseResource(Bundle.class, nonStreamed);
+
+		// The organization included by every chunk is only returned once, after the first chunk
+		assertEquals(26, streamedBundle.getEntry().size());
+		assertThat(toEntrySummaries(streamedBundle), containsInAnyOrder(toEntrySummaries(nonStreamedBundle).toArray()));
+		assertEquals("Organization/ORG", streamedBundle.getEntry().get(10).getResource().getIdElement().toUnqualifiedVersionless().getValue());
+		assertEquals(nonStreamedBundle.getTotal(), streamedBundle.getTotal());
+		assertEquals(nonStreamedBundle.getLink("next").getUrl().replaceAll("_getpages=[^&]*", ""), streamedBundle.getLink("next").getUrl().replaceAll("_getpages=[^&]*", ""));
+		assertEquals("Patient?_count=25", nonStreamedBundle.getLink("self").getUrl().replace(ourServer.getBaseUrl() + "/", ""));
+		assertEquals(nonStreamedBundle.getLink("self").getUrl(), streamedBundle.getLink("self").getUrl());
+		assertNull(streamedBundle.getUserData(StreamingBundleEncoder.USER_DATA_KEY));
+	}
+
+	@Test
+	public void testSmallPageNotStreamed() throws IOException {
+		executeSearch("Patient?_count=5");
+		assertThat(ourRequestedRanges, contains("0-5"));
+	}
+
+	@Test
+	public void testPrettyPrintedOrXmlNotStreamed() throws IOException {
+		String response = executeSearch("Patient?_count=25&_pretty=true");
+		assertThat(ourRequestedRanges, contains("0-25"));
+		assertEquals(26, ourCtx.newJsonParser().parseResource(Bundle.class, response).getEntry().size());
+
+		ourRequestedRanges.clear();
+		response = executeSearch("Patient?_count=25&_format=xml");
+		assertThat(ourRequestedRanges, contains("0-25"));
+		assertEquals(26, ourCtx.newXmlParser().parseResource(Bundle.class, response).getEntry().size());
+	}
+
+	private String executeSearch(String theUrl) throws IOException {
+		HttpGet httpGet = new HttpGet(ourServer.getBaseUrl() + "/" + theUrl);
+		try (CloseableHttpResponse status = ourClient.execute(httpGet)) {
+			String responseContent = IOUtils.toString(status.getEntity().getContent(), StandardCharsets.UTF_8);
+			ourLog.info(responseContent);
+			assertEquals(200, status.getStatusLine().getStatusCode());
+			return responseContent;
+		}
+	}
+
+	private static List<String> toEntrySummaries(Bundle theBundle) {
+		return theBundle
+			.getEntry()
+			.stream()
+			.map(t -> t.getFullUrl() + " " + t.getSearch().getMode() + " " + ourCtx.newJsonParser().encodeResourceToString(t.getResource()))
+			.collect(Collectors.toList());
+	}
+
+	public static class PatientProvider implements IResourceProvider {
+
+		@Override
+		public Class<Patient> getResourceType() {
+			return Patient.class;
+		}
+
+		@Search
+		public IBundleProvider search() {
+			return new SimpleBundleProvider(30) {
+				@Override
+				public List<IBaseResource> getResources(int theFromIndex, int theToIndex) {
+					ourRequestedRanges.add(theFromIndex + "-" + theToIndex);
+
+					List<IBaseResource> retVal = new ArrayList<>();
+					for (int i = theFromIndex; i < theToIndex; i++) {
+						Patient patient = new Patient();
+						patient.setId("Patient/" + i);
+						patient.addName().setFamily("Family " + i);
+						patient.getManagingOrganization().setReference("Organization/ORG");
+						retVal.add(patient);
+					}
+
+					// Every call returns the same included resource, as a JPA server would
+					Organization organization = new Organization();
+					organization.setId("Organization/ORG");
+					organization.setName("Org");
+					ResourceMetadataKeyEnum.ENTRY_SEARCH_MODE.put(organization, BundleEntrySearchModeEnum.INCLUDE);
+					retVal.add(organization);
+					return retVal;
+				}
+			};
+		}
+
+	}
+
+}